@@ -0,0 +1,276 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.repo.domain.node.AuditablePropertiesEntity;
+import org.alfresco.repo.domain.node.NodeCacheValueSerializer;
+import org.alfresco.repo.domain.node.NodeEntity;
+import org.alfresco.repo.domain.node.StoreEntity;
+import org.alfresco.repo.domain.node.TransactionEntity;
+import org.alfresco.repo.domain.propval.CompactSerializableCodec;
+import org.alfresco.repo.domain.qname.InMemoryQNameDAO;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.QName;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the {@link OffHeapSimpleCache} with the on-heap {@link DefaultSimpleCache} for the values of
+ * the node and property caches, with each cache given the same number of bytes.
+ * <p>
+ * The caches are read with a skewed (Zipf) distribution of node IDs, a miss being followed by a put
+ * as the entity lookup cache does.  The hit rate, the number of entries held and the bytes used per
+ * entry are printed when each trial ends; <tt>getHit</tt> gives the cost of reading a value that is
+ * held by the cache.
+ * <p>
+ * Run with the <tt>main</tt> method or with the <tt>benchmarks</tt> profile.
+ *
+ * @since 7.110
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-XX:MaxDirectMemorySize=256m"})
+public class OffHeapSimpleCacheBenchmark
+{
+    private static final long MAX_BYTES = 16L * 1024L * 1024L;
+    private static final int NODE_COUNT = 200000;
+    private static final int SEQUENCE_LENGTH = 1 << 20;
+    private static final int HOT_KEYS = 1024;
+    private static final double ZIPF_EXPONENT = 0.99;
+
+    /**
+     * <ul>
+     *   <li><b>onHeap</b>: a {@link DefaultSimpleCache} bounded by the estimated size of its entries</li>
+     *   <li><b>offHeapJava</b>: an {@link OffHeapSimpleCache} writing its values with Java serialization</li>
+     *   <li><b>offHeapCompact</b>: an {@link OffHeapSimpleCache} writing its values with the {@link NodeCacheValueSerializer}</li>
+     * </ul>
+     */
+    @Param({"onHeap", "offHeapJava", "offHeapCompact"})
+    public String cache;
+
+    /**
+     * <ul>
+     *   <li><b>nodes</b>: node rows, as held by the nodes cache</li>
+     *   <li><b>properties</b>: unmodifiable property maps, as held by the properties cache</li>
+     * </ul>
+     */
+    @Param({"nodes", "properties"})
+    public String shape;
+
+    private SimpleCache<Long, Serializable> simpleCache;
+    private long[] sequence;
+    private int next;
+    private long hits;
+    private long misses;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        InMemoryQNameDAO qnameDAO = new InMemoryQNameDAO();
+        for (String localName : new String[] {"name", "title", "description", "creator", "created", "modifier", "modified", "versionLabel", "sizeCurrent", "owner"})
+        {
+            qnameDAO.getOrCreateQName(QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, localName));
+        }
+        CompactSerializableCodec codec = new CompactSerializableCodec();
+        codec.setQnameDAO(qnameDAO);
+        NodeCacheValueSerializer nodeSerializer = new NodeCacheValueSerializer();
+        nodeSerializer.setCodec(codec);
+
+        if ("onHeap".equals(cache))
+        {
+            simpleCache = new DefaultSimpleCache<Long, Serializable>(MAX_BYTES, new DefaultCacheEntrySizeEstimator(), 0, 0, cache);
+        }
+        else if ("offHeapJava".equals(cache))
+        {
+            simpleCache = new OffHeapSimpleCache<Long, Serializable>(
+                        MAX_BYTES, OffHeapSimpleCache.DEFAULT_SEGMENTS, 0, 0, cache, new OffHeapSimpleCache.JavaValueSerializer());
+        }
+        else if ("offHeapCompact".equals(cache))
+        {
+            simpleCache = new OffHeapSimpleCache<Long, Serializable>(
+                        MAX_BYTES, OffHeapSimpleCache.DEFAULT_SEGMENTS, 0, 0, cache, nodeSerializer);
+        }
+        else
+        {
+            throw new IllegalArgumentException("Unknown cache: " + cache);
+        }
+
+        sequence = zipfSequence(new Random(42L));
+        // Bring the cache to its steady state and make sure that the hottest keys are held
+        for (int i = 0; i < SEQUENCE_LENGTH; i++)
+        {
+            getOrPut();
+        }
+        for (long id = 1; id <= HOT_KEYS; id++)
+        {
+            simpleCache.put(id, createValue(id));
+        }
+        hits = 0L;
+        misses = 0L;
+
+        Serializable sample = createValue(1L);
+        System.out.println("\n" + shape + ": Java serialization " + new OffHeapSimpleCache.JavaValueSerializer().serialize(sample).length +
+                " bytes, compact encoding " + nodeSerializer.serialize(sample).length + " bytes");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        CacheSizeStats stats = (CacheSizeStats) simpleCache;
+        long size = stats.getSize();
+        long lookups = hits + misses;
+        System.out.println("\n" + cache + "/" + shape + ": hit rate " +
+                (lookups == 0 ? "n/a" : String.format("%.1f%%", 100.0 * hits / lookups)) +
+                ", " + size + " entries, " + (size == 0 ? 0 : stats.getUsedBytes() / size) + " bytes per entry");
+        simpleCache.clear();
+    }
+
+    /**
+     * @return          IDs from 1 to {@link #NODE_COUNT}, ID <i>n</i> being drawn with a probability
+     *                  proportional to <i>1/n<sup>s</sup></i>
+     */
+    private static long[] zipfSequence(Random random)
+    {
+        double[] cumulative = new double[NODE_COUNT];
+        double total = 0.0;
+        for (int i = 0; i < NODE_COUNT; i++)
+        {
+            total += 1.0 / Math.pow(i + 1, ZIPF_EXPONENT);
+            cumulative[i] = total;
+        }
+        long[] sequence = new long[SEQUENCE_LENGTH];
+        for (int i = 0; i < SEQUENCE_LENGTH; i++)
+        {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+            sequence[i] = (index < 0 ? -index - 1 : index) + 1;
+        }
+        return sequence;
+    }
+
+    private Serializable createValue(long id)
+    {
+        if ("nodes".equals(shape))
+        {
+            StoreEntity store = new StoreEntity();
+            store.setId(6L);
+            store.setVersion(1L);
+            store.setProtocol("workspace");
+            store.setIdentifier("SpacesStore");
+            TransactionEntity txn = new TransactionEntity();
+            txn.setId(1000L + id / 10);
+            txn.setChangeTxnId(new UUID(id / 10, 17L).toString());
+            AuditablePropertiesEntity auditableProperties = new AuditablePropertiesEntity();
+            auditableProperties.setAuditValues("admin", new Date(1565000000000L + id * 1000L), true, 1000L);
+            NodeEntity node = new NodeEntity();
+            node.setId(id);
+            node.setVersion(1L + id % 5);
+            node.setStore(store);
+            node.setUuid(new UUID(id, 31L).toString());
+            node.setTypeQNameId(24L);
+            node.setLocaleId(1L);
+            node.setAclId(5L + id % 100);
+            node.setTransaction(txn);
+            node.setAuditableProperties(auditableProperties);
+            node.lock();
+            return node;
+        }
+        else if ("properties".equals(shape))
+        {
+            Map<QName, Serializable> properties = new HashMap<QName, Serializable>();
+            properties.put(QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, "name"), "Document " + id + ".pdf");
+            properties.put(QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, "title"), "Quarterly report " + id);
+            properties.put(QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, "description"), "Figures for the third quarter");
+            properties.put(QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, "creator"), "admin");
+            properties.put(QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, "created"), new Date(1565000000000L + id * 1000L));
+            properties.put(QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, "modifier"), "admin");
+            properties.put(QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, "modified"), new Date(1566000000000L + id * 1000L));
+            properties.put(QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, "versionLabel"), "1." + (id % 5));
+            properties.put(QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, "sizeCurrent"), Long.valueOf(id * 4096L));
+            properties.put(QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, "owner"),
+                        new NodeRef("workspace", "SpacesStore", new UUID(id % 50, 7L).toString()));
+            return (Serializable) Collections.unmodifiableMap(properties);
+        }
+        throw new IllegalArgumentException("Unknown shape: " + shape);
+    }
+
+    @Benchmark
+    public Serializable getOrPut()
+    {
+        long id = sequence[next];
+        next = (next + 1) & (SEQUENCE_LENGTH - 1);
+        Serializable value = simpleCache.get(id);
+        if (value == null)
+        {
+            misses++;
+            value = createValue(id);
+            simpleCache.put(id, value);
+        }
+        else
+        {
+            hits++;
+        }
+        return value;
+    }
+
+    @Benchmark
+    public Serializable getHit()
+    {
+        long id = (next++ & (HOT_KEYS - 1)) + 1;
+        return simpleCache.get(id);
+    }
+
+    public static void main(String ... args) throws Exception
+    {
+        new Runner(new OptionsBuilder().include(OffHeapSimpleCacheBenchmark.class.getSimpleName()).build()).run();
+    }
+}
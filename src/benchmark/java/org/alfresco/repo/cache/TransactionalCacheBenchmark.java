@@ -0,0 +1,162 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import java.io.Serializable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.repo.transaction.InMemoryTransactionManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Gets and puts against a {@link TransactionalCache} from several threads at once, each in
+ * its own transaction, as the node and property caches are used by concurrent requests.
+ * The shared cache is a {@link DefaultSimpleCache} that holds all the keys used.
+ *
+ * @since 7.110
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class TransactionalCacheBenchmark
+{
+    private static final int KEY_COUNT = 10000;
+    private static final int GETS_PER_TXN = 20;
+
+    /** Whether read-only transactions read the shared cache directly */
+    @Param({"false", "true"})
+    public boolean readOnlyFastPath;
+
+    private TransactionalCache<Long, String> cache;
+    private TransactionTemplate readOnlyTxn;
+    private TransactionTemplate readWriteTxn;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        cache = new TransactionalCache<Long, String>();
+        cache.setName("benchmark.transactionalCache");
+        cache.setSharedCache(new DefaultSimpleCache<Serializable, TransactionalCache.ValueHolder<String>>(
+                KEY_COUNT * 2, "benchmark.sharedCache"));
+        cache.setTenantAware(false);
+        cache.setMaxCacheSize(GETS_PER_TXN * 2);
+        cache.setReadOnlyFastPath(readOnlyFastPath);
+        cache.afterPropertiesSet();
+
+        InMemoryTransactionManager transactionManager = new InMemoryTransactionManager();
+        readWriteTxn = new TransactionTemplate(transactionManager);
+        readOnlyTxn = new TransactionTemplate(transactionManager);
+        readOnlyTxn.setReadOnly(true);
+
+        // Fill the shared cache
+        readWriteTxn.execute(new TransactionCallback<Void>()
+        {
+            @Override
+            public Void doInTransaction(TransactionStatus status)
+            {
+                for (long key = 0L; key < KEY_COUNT; key++)
+                {
+                    cache.put(key, "value-" + key);
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * A read-only transaction that only reads
+     */
+    @Benchmark
+    public int getInReadOnlyTxn()
+    {
+        return readOnlyTxn.execute(new TransactionCallback<Integer>()
+        {
+            @Override
+            public Integer doInTransaction(TransactionStatus status)
+            {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                int found = 0;
+                for (int i = 0; i < GETS_PER_TXN; i++)
+                {
+                    if (cache.get((long) random.nextInt(KEY_COUNT)) != null)
+                    {
+                        found++;
+                    }
+                }
+                return found;
+            }
+        });
+    }
+
+    /**
+     * A read-write transaction that updates one of the entries it reads, so that commits
+     * contend on the shared cache
+     */
+    @Benchmark
+    public int getAndPutInReadWriteTxn()
+    {
+        return readWriteTxn.execute(new TransactionCallback<Integer>()
+        {
+            @Override
+            public Integer doInTransaction(TransactionStatus status)
+            {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                int found = 0;
+                long key = 0L;
+                for (int i = 0; i < GETS_PER_TXN; i++)
+                {
+                    key = random.nextInt(KEY_COUNT);
+                    if (cache.get(key) != null)
+                    {
+                        found++;
+                    }
+                }
+                cache.put(key, "value-" + key);
+                return found;
+            }
+        });
+    }
+}
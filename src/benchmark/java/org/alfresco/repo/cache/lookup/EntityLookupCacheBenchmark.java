@@ -0,0 +1,166 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache.lookup;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.repo.cache.DefaultSimpleCache;
+import org.alfresco.repo.cache.lookup.EntityLookupCache.EntityLookupBatchCallbackDAO;
+import org.alfresco.repo.cache.lookup.EntityLookupCache.EntityLookupCallbackDAOAdaptor;
+import org.alfresco.util.Pair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lookups by key, by value and by batches of keys through an {@link EntityLookupCache}.
+ * <p>
+ * The entities are held in memory by the callback, so a cache miss costs a map lookup rather
+ * than a query and the figures show the overhead of the cache itself.  With a cache that holds
+ * half of the entities, about half of the lookups miss.
+ *
+ * @since 7.110
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class EntityLookupCacheBenchmark
+{
+    private static final int ENTITY_COUNT = 10000;
+    private static final int BATCH_SIZE = 50;
+
+    /** The number of entries the shared cache holds; each entity takes two (by key and by value) */
+    @Param({"40000", "10000"})
+    public int cacheSize;
+
+    private EntityLookupCache<Long, String, String> lookupCache;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        DefaultSimpleCache<Serializable, Object> cache = new DefaultSimpleCache<Serializable, Object>(cacheSize, "benchmark.entityLookupCache");
+        lookupCache = new EntityLookupCache<Long, String, String>(cache, new InMemoryCallbackDAO());
+        for (long id = 0L; id < ENTITY_COUNT; id++)
+        {
+            lookupCache.getByKey(id);
+        }
+    }
+
+    private static String valueFor(long id)
+    {
+        return "entity-" + id;
+    }
+
+    @Benchmark
+    public Pair<Long, String> getByKey()
+    {
+        return lookupCache.getByKey((long) ThreadLocalRandom.current().nextInt(ENTITY_COUNT));
+    }
+
+    @Benchmark
+    public Pair<Long, String> getByValue()
+    {
+        return lookupCache.getByValue(valueFor(ThreadLocalRandom.current().nextInt(ENTITY_COUNT)));
+    }
+
+    @Benchmark
+    public List<Pair<Long, String>> getByKeys()
+    {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<Long> ids = new ArrayList<Long>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++)
+        {
+            ids.add((long) random.nextInt(ENTITY_COUNT));
+        }
+        return lookupCache.getByKeys(ids);
+    }
+
+    /**
+     * Entities whose value is derived from the ID
+     */
+    private static class InMemoryCallbackDAO
+            extends EntityLookupCallbackDAOAdaptor<Long, String, String>
+            implements EntityLookupBatchCallbackDAO<Long, String, String>
+    {
+        @Override
+        public String getValueKey(String value)
+        {
+            return value;
+        }
+
+        @Override
+        public Pair<Long, String> findByKey(Long id)
+        {
+            return (id >= 0L && id < ENTITY_COUNT) ? new Pair<Long, String>(id, valueFor(id)) : null;
+        }
+
+        @Override
+        public List<Pair<Long, String>> findByKeys(List<Long> ids)
+        {
+            List<Pair<Long, String>> found = new ArrayList<Pair<Long, String>>(ids.size());
+            for (Long id : ids)
+            {
+                Pair<Long, String> entityPair = findByKey(id);
+                if (entityPair != null)
+                {
+                    found.add(entityPair);
+                }
+            }
+            return found;
+        }
+
+        @Override
+        public Pair<Long, String> findByValue(String value)
+        {
+            long id = Long.parseLong(value.substring("entity-".length()));
+            return findByKey(id);
+        }
+
+        @Override
+        public Pair<Long, String> createValue(String value)
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
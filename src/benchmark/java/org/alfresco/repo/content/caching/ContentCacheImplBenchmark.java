@@ -0,0 +1,132 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.caching;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.repo.cache.DefaultSimpleCache;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reads of content that is already held in the content cache, i.e. the lookup of the cache
+ * file for a content URL followed by streaming the whole file.
+ * <p>
+ * The cache files are written to a temporary directory that is removed afterwards.  With a
+ * hot tier, small content is read from memory once it has been read from its file.
+ *
+ * @since 7.110
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContentCacheImplBenchmark
+{
+    private static final int CONTENT_COUNT = 100;
+
+    @Param({"4096", "1048576"})
+    public int contentSize;
+
+    /** The size of the in-memory copies of small cache files, 0 to always read from disk */
+    @Param({"0", "64"})
+    public long hotTierMaxSizeMB;
+
+    private File cacheRoot;
+    private ContentCacheImpl contentCache;
+    private String[] contentUrls;
+    private byte[] buffer;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException
+    {
+        cacheRoot = Files.createTempDirectory("ContentCacheImplBenchmark").toFile();
+        contentCache = new ContentCacheImpl();
+        contentCache.setCacheRoot(cacheRoot);
+        contentCache.setHotTierMaxSizeMB(hotTierMaxSizeMB);
+        contentCache.setMemoryStore(new DefaultSimpleCache<Key, String>(CONTENT_COUNT * 2, "contentCacheBenchmark"));
+
+        byte[] content = new byte[contentSize];
+        new Random(42L).nextBytes(content);
+        contentUrls = new String[CONTENT_COUNT];
+        for (int i = 0; i < CONTENT_COUNT; i++)
+        {
+            contentUrls[i] = "store://2019/10/16/12/0/benchmark-" + i + ".bin";
+            contentCache.getWriter(contentUrls[i]).putContent(new ByteArrayInputStream(content));
+        }
+        buffer = new byte[8192];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException
+    {
+        contentCache.removeAll();
+        FileUtils.deleteDirectory(cacheRoot);
+    }
+
+    @Benchmark
+    public long readCachedContent() throws IOException
+    {
+        String contentUrl = contentUrls[next];
+        next = (next + 1) % CONTENT_COUNT;
+        long total = 0L;
+        InputStream is = contentCache.getReader(contentUrl).getContentInputStream();
+        try
+        {
+            int read;
+            while ((read = is.read(buffer)) != -1)
+            {
+                total += read;
+            }
+        }
+        finally
+        {
+            is.close();
+        }
+        return total;
+    }
+}
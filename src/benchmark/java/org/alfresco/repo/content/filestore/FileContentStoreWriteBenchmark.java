@@ -0,0 +1,125 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.filestore;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.repo.content.ContentStore;
+import org.alfresco.repo.content.filestore.FileContentSyncer.SyncMode;
+import org.alfresco.repo.transaction.InMemoryTransactionManager;
+import org.alfresco.service.cmr.repository.ContentWriter;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Many small uploads from several threads at once, each written to a {@link FileContentStore}
+ * in its own transaction, with content left for the operating system to flush, forced onto disk
+ * as each writer is closed, or forced in groups before each transaction commits.
+ * <p>
+ * The content is written to a temporary directory that is removed afterwards.  The directory
+ * must be on the disk of interest, e.g. <tt>-Djava.io.tmpdir=/mnt/contentstore/tmp</tt>.
+ *
+ * @since 7.110
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(16)
+@Fork(1)
+public class FileContentStoreWriteBenchmark
+{
+    @Param({"NONE", "IMMEDIATE", "WRITE_BEHIND"})
+    public SyncMode syncMode;
+
+    @Param({"4096"})
+    public int contentSize;
+
+    private File storeRoot;
+    private FileContentSyncer syncer;
+    private FileContentStore store;
+    private TransactionTemplate txn;
+    private byte[] content;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException
+    {
+        storeRoot = Files.createTempDirectory("FileContentStoreWriteBenchmark").toFile();
+        syncer = new FileContentSyncer();
+        syncer.setSyncMode(syncMode);
+        syncer.init();
+        store = new FileContentStore(storeRoot.getAbsolutePath());
+        store.setFileContentSyncer(syncer);
+        txn = new TransactionTemplate(new InMemoryTransactionManager());
+
+        content = new byte[contentSize];
+        new Random(42L).nextBytes(content);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException
+    {
+        syncer.destroy();
+        FileUtils.deleteDirectory(storeRoot);
+    }
+
+    @Benchmark
+    public String writeInTxn()
+    {
+        return txn.execute(new TransactionCallback<String>()
+        {
+            @Override
+            public String doInTransaction(TransactionStatus status)
+            {
+                ContentWriter writer = store.getWriter(ContentStore.NEW_CONTENT_CONTEXT);
+                writer.putContent(new ByteArrayInputStream(content));
+                return writer.getContentUrl();
+            }
+        });
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.locale;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.alfresco.repo.cache.DefaultSimpleCache;
+
+/**
+ * {@link LocaleDAO} that keeps the <b>alf_locale</b> rows in memory, for benchmarks that must
+ * not depend on a database.
+ *
+ * @since 7.110
+ */
+public class InMemoryLocaleDAO extends AbstractLocaleDAOImpl
+{
+    private final Map<Long, LocaleEntity> localesById = new ConcurrentHashMap<Long, LocaleEntity>();
+    private final Map<String, LocaleEntity> localesByStr = new ConcurrentHashMap<String, LocaleEntity>();
+    private long nextId = 1L;
+
+    public InMemoryLocaleDAO()
+    {
+        setLocaleEntityCache(new DefaultSimpleCache<Long, String>(1000, "benchmark.localeCache"));
+    }
+
+    @Override
+    protected LocaleEntity getLocaleEntity(Long id)
+    {
+        return localesById.get(id);
+    }
+
+    @Override
+    protected LocaleEntity getLocaleEntity(String localeStr)
+    {
+        return localesByStr.get(localeStr);
+    }
+
+    @Override
+    protected synchronized LocaleEntity createLocaleEntity(String localeStr)
+    {
+        LocaleEntity entity = new LocaleEntity();
+        entity.setId(nextId++);
+        entity.setVersion(LocaleEntity.CONST_LONG_ZERO);
+        entity.setLocaleStr(localeStr);
+        localesById.put(entity.getId(), entity);
+        localesByStr.put(localeStr, entity);
+        return entity;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.node;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.dictionary.InMemoryDictionary;
+import org.alfresco.repo.domain.locale.InMemoryLocaleDAO;
+import org.alfresco.repo.domain.qname.InMemoryQNameDAO;
+import org.alfresco.service.cmr.repository.MLText;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.namespace.QName;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Conversion of the properties of a typical document between the public form and the form
+ * persisted in <b>alf_node_properties</b>, as done for every node read and written.
+ * <p>
+ * The property definitions come from the content model; the QName and locale IDs are held in
+ * memory.
+ *
+ * @since 7.110
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NodePropertyHelperBenchmark
+{
+    private NodePropertyHelper helper;
+    private Map<QName, Serializable> publicProperties;
+    private Map<NodePropertyKey, NodePropertyValue> persistentProperties;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        // Content data needs no DAO as there is no content property
+        helper = new NodePropertyHelper(
+                InMemoryDictionary.create(),
+                new InMemoryQNameDAO(),
+                new InMemoryLocaleDAO(),
+                null);
+
+        MLText title = new MLText();
+        title.put(Locale.ENGLISH, "Quarterly report");
+        title.put(Locale.FRENCH, "Rapport trimestriel");
+        MLText description = new MLText();
+        description.put(Locale.ENGLISH, "Figures for the third quarter");
+        List<Serializable> categories = new ArrayList<Serializable>();
+        for (int i = 0; i < 3; i++)
+        {
+            categories.add(new NodeRef("workspace", "SpacesStore", "category-" + i));
+        }
+        List<Serializable> keywords = new ArrayList<Serializable>();
+        keywords.add("finance");
+        keywords.add("quarterly");
+
+        publicProperties = new HashMap<QName, Serializable>();
+        publicProperties.put(ContentModel.PROP_NAME, "Quarterly report.pdf");
+        publicProperties.put(ContentModel.PROP_TITLE, title);
+        publicProperties.put(ContentModel.PROP_DESCRIPTION, description);
+        publicProperties.put(ContentModel.PROP_CREATED, new Date());
+        publicProperties.put(ContentModel.PROP_CREATOR, "admin");
+        publicProperties.put(ContentModel.PROP_MODIFIED, new Date());
+        publicProperties.put(ContentModel.PROP_MODIFIER, "admin");
+        publicProperties.put(ContentModel.PROP_AUTHOR, "Finance team");
+        publicProperties.put(ContentModel.PROP_VERSION_LABEL, "1.3");
+        publicProperties.put(ContentModel.PROP_CATEGORIES, (Serializable) categories);
+        // Residual properties, with no definition
+        publicProperties.put(QName.createQName("http://www.example.com/model/custom/1.0", "keywords"), (Serializable) keywords);
+        publicProperties.put(QName.createQName("http://www.example.com/model/custom/1.0", "pageCount"), Integer.valueOf(42));
+
+        persistentProperties = helper.convertToPersistentProperties(publicProperties);
+    }
+
+    @Benchmark
+    public Map<NodePropertyKey, NodePropertyValue> toPersistent()
+    {
+        return helper.convertToPersistentProperties(publicProperties);
+    }
+
+    @Benchmark
+    public Map<QName, Serializable> toPublic()
+    {
+        return helper.convertToPublicProperties(persistentProperties);
+    }
+}
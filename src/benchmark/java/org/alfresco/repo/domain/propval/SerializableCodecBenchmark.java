@@ -0,0 +1,193 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.propval;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.repo.domain.qname.InMemoryQNameDAO;
+import org.alfresco.service.cmr.repository.MLText;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.QName;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the {@link CompactSerializableCodec} with Java serialization for the values
+ * typically held in serializable properties.  The size of each encoding is printed when
+ * the benchmark state is set up.
+ * <p>
+ * Run with the <tt>main</tt> method or with the <tt>benchmarks</tt> profile.
+ *
+ * @since 7.110
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializableCodecBenchmark
+{
+    /**
+     * <ul>
+     *   <li><b>map</b>: a map of QNames to the common value types, as stored for aspect-like properties</li>
+     *   <li><b>nodeRefs</b>: a list of 50 node references, as stored for multi-valued association properties</li>
+     *   <li><b>mlText</b>: text in several locales</li>
+     * </ul>
+     */
+    @Param({"map", "nodeRefs", "mlText"})
+    public String shape;
+
+    private CompactSerializableCodec codec;
+    private Serializable value;
+    private byte[] javaBytes;
+    private byte[] compactBytes;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException
+    {
+        // QNames in the content model namespace are taken to be persisted
+        InMemoryQNameDAO qnameDAO = new InMemoryQNameDAO();
+        for (String localName : new String[] {"title", "description", "author", "created", "versionLabel", "locale"})
+        {
+            qnameDAO.getOrCreateQName(QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, localName));
+        }
+        codec = new CompactSerializableCodec();
+        codec.setQnameDAO(qnameDAO);
+
+        value = createValue(shape);
+        javaBytes = javaEncode(value);
+        compactBytes = compactEncode(value);
+        System.out.println("\n" + shape + ": Java serialization " + javaBytes.length +
+                " bytes, compact encoding " + compactBytes.length + " bytes");
+    }
+
+    private static Serializable createValue(String shape)
+    {
+        if ("map".equals(shape))
+        {
+            HashMap<Serializable, Serializable> map = new HashMap<Serializable, Serializable>();
+            map.put(QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, "title"), "Quarterly report");
+            map.put(QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, "description"), "Figures for the third quarter");
+            map.put(QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, "author"), "admin");
+            map.put(QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, "created"), new Date());
+            map.put(QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, "versionLabel"), "1.3");
+            map.put(QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, "locale"), Locale.UK);
+            map.put(QName.createQName("http://www.example.com/model/custom/1.0", "pageCount"), Integer.valueOf(42));
+            map.put(QName.createQName("http://www.example.com/model/custom/1.0", "approved"), Boolean.TRUE);
+            map.put(QName.createQName("http://www.example.com/model/custom/1.0", "size"), Long.valueOf(1048576L));
+            return map;
+        }
+        else if ("nodeRefs".equals(shape))
+        {
+            ArrayList<NodeRef> nodeRefs = new ArrayList<NodeRef>();
+            for (int i = 0; i < 50; i++)
+            {
+                nodeRefs.add(new NodeRef("workspace", "SpacesStore", UUID.randomUUID().toString()));
+            }
+            return nodeRefs;
+        }
+        else if ("mlText".equals(shape))
+        {
+            MLText mlText = new MLText();
+            mlText.put(Locale.ENGLISH, "Quarterly report");
+            mlText.put(Locale.FRENCH, "Rapport trimestriel");
+            mlText.put(Locale.GERMAN, "Quartalsbericht");
+            mlText.put(Locale.ITALIAN, "Relazione trimestrale");
+            return mlText;
+        }
+        throw new IllegalArgumentException("Unknown shape: " + shape);
+    }
+
+    private static byte[] javaEncode(Serializable value) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+        ObjectOutputStream oos = new ObjectOutputStream(out);
+        oos.writeObject(value);
+        oos.close();
+        return out.toByteArray();
+    }
+
+    private byte[] compactEncode(Serializable value) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+        codec.encode(value, out);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] encodeJava() throws IOException
+    {
+        return javaEncode(value);
+    }
+
+    @Benchmark
+    public byte[] encodeCompact() throws IOException
+    {
+        return compactEncode(value);
+    }
+
+    @Benchmark
+    public Object decodeJava() throws IOException, ClassNotFoundException
+    {
+        return new ObjectInputStream(new ByteArrayInputStream(javaBytes)).readObject();
+    }
+
+    @Benchmark
+    public Object decodeCompact() throws IOException
+    {
+        return codec.decode(new ByteArrayInputStream(compactBytes));
+    }
+
+    public static void main(String ... args) throws Exception
+    {
+        new Runner(new OptionsBuilder().include(SerializableCodecBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.qname;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.alfresco.repo.cache.DefaultSimpleCache;
+import org.alfresco.service.namespace.QName;
+
+/**
+ * {@link QNameDAO} that keeps the <b>alf_namespace</b> and <b>alf_qname</b> rows in memory, for
+ * benchmarks that must not depend on a database.  The entity caches are used as they are by
+ * the database-backed implementation.
+ *
+ * @since 7.110
+ */
+public class InMemoryQNameDAO extends AbstractQNameDAOImpl
+{
+    private final Map<Long, NamespaceEntity> namespacesById = new ConcurrentHashMap<Long, NamespaceEntity>();
+    private final Map<String, NamespaceEntity> namespacesByUri = new ConcurrentHashMap<String, NamespaceEntity>();
+    private final Map<Long, QNameEntity> qnamesById = new ConcurrentHashMap<Long, QNameEntity>();
+    private final Map<String, QNameEntity> qnamesByName = new ConcurrentHashMap<String, QNameEntity>();
+    private long nextId = 1L;
+
+    public InMemoryQNameDAO()
+    {
+        setNamespaceCache(new DefaultSimpleCache<Long, String>(1000, "benchmark.namespaceCache"));
+        setQnameCache(new DefaultSimpleCache<Long, QName>(10000, "benchmark.qnameCache"));
+    }
+
+    private static String qnameKey(Long nsId, String localName)
+    {
+        return nsId + "/" + localName;
+    }
+
+    @Override
+    protected NamespaceEntity findNamespaceEntityById(Long id)
+    {
+        return namespacesById.get(id);
+    }
+
+    @Override
+    protected NamespaceEntity findNamespaceEntityByUri(String uri)
+    {
+        return namespacesByUri.get(uri);
+    }
+
+    @Override
+    protected synchronized NamespaceEntity createNamespaceEntity(String uri)
+    {
+        NamespaceEntity entity = new NamespaceEntity();
+        entity.setId(nextId++);
+        entity.setVersion(NamespaceEntity.CONST_LONG_ZERO);
+        entity.setUriSafe(uri);
+        namespacesById.put(entity.getId(), entity);
+        namespacesByUri.put(uri, entity);
+        return entity;
+    }
+
+    @Override
+    protected synchronized int updateNamespaceEntity(NamespaceEntity entity, String uri)
+    {
+        namespacesByUri.remove(entity.getUriSafe());
+        entity.setUriSafe(uri);
+        entity.incrementVersion();
+        namespacesById.put(entity.getId(), entity);
+        namespacesByUri.put(uri, entity);
+        return 1;
+    }
+
+    @Override
+    protected QNameEntity findQNameEntityById(Long id)
+    {
+        return qnamesById.get(id);
+    }
+
+    @Override
+    protected QNameEntity findQNameEntityByNamespaceAndLocalName(Long nsId, String localName)
+    {
+        return qnamesByName.get(qnameKey(nsId, localName));
+    }
+
+    @Override
+    protected synchronized QNameEntity createQNameEntity(Long nsId, String localName)
+    {
+        QNameEntity entity = new QNameEntity();
+        entity.setId(nextId++);
+        entity.setVersion(QNameEntity.CONST_LONG_ZERO);
+        entity.setNamespaceId(nsId);
+        entity.setLocalNameSafe(localName);
+        qnamesById.put(entity.getId(), entity);
+        qnamesByName.put(qnameKey(nsId, localName), entity);
+        return entity;
+    }
+
+    @Override
+    protected synchronized int updateQNameEntity(QNameEntity entity, Long nsId, String localName)
+    {
+        qnamesByName.remove(qnameKey(entity.getNamespaceId(), entity.getLocalNameSafe()));
+        entity.setNamespaceId(nsId);
+        entity.setLocalNameSafe(localName);
+        entity.incrementVersion();
+        qnamesByName.put(qnameKey(nsId, localName), entity);
+        return 1;
+    }
+
+    @Override
+    protected synchronized int deleteQNameEntity(QNameEntity entity)
+    {
+        qnamesByName.remove(qnameKey(entity.getNamespaceId(), entity.getLocalNameSafe()));
+        return (qnamesById.remove(entity.getId()) == null) ? 0 : 1;
+    }
+}
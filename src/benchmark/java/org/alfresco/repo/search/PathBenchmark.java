@@ -0,0 +1,135 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.search;
+
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.transfer.PathHelper;
+import org.alfresco.service.cmr.repository.ChildAssociationRef;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.Path;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.namespace.DynamicNamespacePrefixResolver;
+import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.ISO9075;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * QName parsing, ISO9075 encoding of names and conversion of a node path to and from its
+ * string forms, as done when building search queries and display paths.
+ *
+ * @since 7.110
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathBenchmark
+{
+    private static final String NAME = "2019 Budget (draft) - Q3 & Q4 figures.xlsx";
+
+    private DynamicNamespacePrefixResolver namespaceResolver;
+    private String encodedName;
+    private String prefixedQName;
+    private Path path;
+    private String pathString;
+
+    @Setup(Level.Trial)
+    public void setUp()
+    {
+        namespaceResolver = new DynamicNamespacePrefixResolver(null);
+        namespaceResolver.registerNamespace(NamespaceService.APP_MODEL_PREFIX, NamespaceService.APP_MODEL_1_0_URI);
+        namespaceResolver.registerNamespace(NamespaceService.CONTENT_MODEL_PREFIX, NamespaceService.CONTENT_MODEL_1_0_URI);
+        namespaceResolver.registerNamespace(NamespaceService.SYSTEM_MODEL_PREFIX, NamespaceService.SYSTEM_MODEL_1_0_URI);
+
+        encodedName = ISO9075.encode(NAME);
+        prefixedQName = NamespaceService.CONTENT_MODEL_PREFIX + ":" + encodedName;
+
+        // /app:company_home/cm:Sites/cm:finance/cm:documentLibrary/cm:Reports/cm:<name>
+        StoreRef storeRef = StoreRef.STORE_REF_WORKSPACE_SPACESSTORE;
+        NodeRef parentRef = new NodeRef(storeRef, "root");
+        path = new Path();
+        path.append(new Path.ChildAssocElement(new ChildAssociationRef(null, null, null, parentRef)));
+        QName[] names = new QName[] {
+                QName.createQName(NamespaceService.APP_MODEL_1_0_URI, "company_home"),
+                QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, "Sites"),
+                QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, "finance"),
+                QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, "documentLibrary"),
+                QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, "Reports"),
+                QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, encodedName) };
+        for (int i = 0; i < names.length; i++)
+        {
+            NodeRef childRef = new NodeRef(storeRef, "node-" + i);
+            path.append(new Path.ChildAssocElement(new ChildAssociationRef(ContentModel.ASSOC_CONTAINS, parentRef, names[i], childRef)));
+            parentRef = childRef;
+        }
+        pathString = path.toString();
+    }
+
+    @Benchmark
+    public String encodeName()
+    {
+        return ISO9075.encode(NAME);
+    }
+
+    @Benchmark
+    public String decodeName()
+    {
+        return ISO9075.decode(encodedName);
+    }
+
+    @Benchmark
+    public QName parsePrefixedQName()
+    {
+        return QName.createQName(prefixedQName, namespaceResolver);
+    }
+
+    @Benchmark
+    public String pathToPrefixString()
+    {
+        return path.toPrefixString(namespaceResolver);
+    }
+
+    @Benchmark
+    public Path stringToPath()
+    {
+        return PathHelper.stringToPath(pathString);
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.security.permissions.impl;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.cache.DefaultSimpleCache;
+import org.alfresco.repo.dictionary.InMemoryDictionary;
+import org.alfresco.repo.domain.permissions.AclDAO;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.security.permissions.ACEType;
+import org.alfresco.repo.security.permissions.ACLType;
+import org.alfresco.repo.security.permissions.AccessControlEntry;
+import org.alfresco.repo.security.permissions.PermissionReference;
+import org.alfresco.repo.security.permissions.SimpleAccessControlEntry;
+import org.alfresco.repo.security.permissions.SimpleAccessControlList;
+import org.alfresco.repo.security.permissions.SimpleAccessControlListProperties;
+import org.alfresco.repo.security.permissions.impl.model.PermissionModel;
+import org.alfresco.service.cmr.security.AccessStatus;
+import org.alfresco.service.cmr.security.AuthorityService;
+import org.alfresco.service.cmr.security.PermissionContext;
+import org.alfresco.service.cmr.security.PermissionService;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * ACL evaluation for a user that is a member of a number of groups, against an ACL
+ * where only the last entry applies to the user.
+ * <p>
+ * The permission model is the one shipped with the repository; the ACL and the user's
+ * authorities are held in memory.  The entries are either walked for each check or
+ * evaluated against {@link CompiledAcl compiled ACLs}, in which case the checks are made
+ * within a transaction as the user's authorities are kept for the length of one.
+ *
+ * @since 7.110
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HasPermissionBenchmark
+{
+    private static final Long ACL_ID = 1L;
+    private static final String USER = "benchmark";
+
+    @Param({"10", "100"})
+    public int aclEntries;
+
+    @Param({"20", "500"})
+    public int userGroups;
+
+    @Param({"walk", "compiled"})
+    public String evaluator;
+
+    private PermissionServiceImpl permissionService;
+    private PermissionContext context;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        PermissionModel permissionModel = new PermissionModel();
+        permissionModel.setModel("alfresco/model/permissionDefinitions.xml");
+        permissionModel.setDtdSchema("alfresco/model/permissionSchema.dtd");
+        permissionModel.setValidate(false);
+        permissionModel.setDictionaryService(InMemoryDictionary.create());
+        permissionModel.init();
+
+        final Set<String> authorities = new HashSet<String>();
+        authorities.add(PermissionService.ALL_AUTHORITIES);
+        for (int i = 0; i < userGroups; i++)
+        {
+            authorities.add("GROUP_member-" + i);
+        }
+        // The evaluation adds to the set it is given
+        AuthorityService authorityService = mock(AuthorityService.class);
+        when(authorityService.getAuthoritiesForUser(anyString())).thenAnswer(new Answer<Set<String>>()
+        {
+            @Override
+            public Set<String> answer(InvocationOnMock invocation) throws Throwable
+            {
+                return new HashSet<String>(authorities);
+            }
+        });
+
+        PermissionReference consumer = permissionModel.getPermissionReference(null, PermissionService.CONSUMER);
+        List<AccessControlEntry> entries = new ArrayList<AccessControlEntry>();
+        for (int i = 0; i < aclEntries; i++)
+        {
+            // Only the last entry is for one of the user's groups
+            String authority = (i == aclEntries - 1) ? "GROUP_member-" + (userGroups - 1) : "GROUP_other-" + i;
+            SimpleAccessControlEntry entry = new SimpleAccessControlEntry();
+            entry.setAccessStatus(AccessStatus.ALLOWED);
+            entry.setAceType(ACEType.ALL);
+            entry.setAuthority(authority);
+            entry.setPermission(consumer);
+            entry.setPosition(0);
+            entries.add(entry);
+        }
+        SimpleAccessControlListProperties properties = new SimpleAccessControlListProperties();
+        properties.setId(ACL_ID);
+        properties.setAclType(ACLType.DEFINING);
+        properties.setInherits(true);
+        SimpleAccessControlList acl = new SimpleAccessControlList();
+        acl.setEntries(entries);
+        acl.setProperties(properties);
+        AclDAO aclDAO = mock(AclDAO.class);
+        when(aclDAO.getAccessControlList(ACL_ID)).thenReturn(acl);
+
+        permissionService = new PermissionServiceImpl();
+        permissionService.setModelDAO(permissionModel);
+        permissionService.setAuthorityService(authorityService);
+        permissionService.setAclDAO(aclDAO);
+        if ("compiled".equals(evaluator))
+        {
+            permissionService.setCompiledAclCache(new DefaultSimpleCache<Serializable, CompiledAcl>());
+            permissionService.setCompileAcls(true);
+            TransactionSynchronizationManager.initSynchronization();
+        }
+
+        context = new PermissionContext(ContentModel.TYPE_CONTENT);
+
+        AuthenticationUtil.setFullyAuthenticatedUser(USER);
+        if (permissionService.hasPermission(ACL_ID, context, PermissionService.READ) != AccessStatus.ALLOWED)
+        {
+            throw new IllegalStateException("Read should be allowed by the last ACL entry");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        if (TransactionSynchronizationManager.isSynchronizationActive())
+        {
+            TransactionSynchronizationManager.clear();
+        }
+        AuthenticationUtil.clearCurrentSecurityContext();
+    }
+
+    @Benchmark
+    public AccessStatus readAllowed()
+    {
+        return permissionService.hasPermission(ACL_ID, context, PermissionService.READ);
+    }
+
+    @Benchmark
+    public AccessStatus writeDenied()
+    {
+        return permissionService.hasPermission(ACL_ID, context, PermissionService.WRITE);
+    }
+}
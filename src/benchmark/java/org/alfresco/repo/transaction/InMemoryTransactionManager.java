@@ -0,0 +1,63 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.transaction;
+
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+
+/**
+ * Transaction manager with no resources, so that code relying on transaction synchronization
+ * (the transactional caches, transaction listeners and resources bound through
+ * {@link AlfrescoTransactionSupport}) can be benchmarked without a database.
+ *
+ * @since 7.110
+ */
+public class InMemoryTransactionManager extends AbstractPlatformTransactionManager
+{
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected Object doGetTransaction()
+    {
+        return new Object();
+    }
+
+    @Override
+    protected void doBegin(Object transaction, TransactionDefinition definition)
+    {
+    }
+
+    @Override
+    protected void doCommit(DefaultTransactionStatus status)
+    {
+    }
+
+    @Override
+    protected void doRollback(DefaultTransactionStatus status)
+    {
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.ibatis;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+
+/**
+ * Encoding of <tt>java.io.Serializable</tt> values as an alternative to Java serialization.
+ * <p>
+ * An encoding must not start with the Java serialization stream magic (<tt>0xACED</tt>) so
+ * that values written by Java serialization can still be told apart and read.
+ *
+ * @see SerializableTypeHandler#setSerializableCodec(SerializableCodec, boolean)
+ * @since 7.110
+ */
+public interface SerializableCodec
+{
+    /**
+     * Write a value to the stream
+     *
+     * @param value             the value to write (may be <tt>null</tt>)
+     * @param out               the stream to write to, which is not closed
+     */
+    void encode(Serializable value, OutputStream out) throws IOException;
+
+    /**
+     * Read a value written by {@link #encode(Serializable, OutputStream)}
+     *
+     * @param in                the stream to read from, which is not closed
+     * @return                  the value read (may be <tt>null</tt>)
+     */
+    Serializable decode(InputStream in) throws IOException;
+}
@@ -27,9 +27,12 @@ package org.alfresco.ibatis;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.ObjectStreamConstants;
+import java.io.PushbackInputStream;
 import java.io.Serializable;
 import java.sql.CallableStatement;
 import java.sql.PreparedStatement;
@@ -41,6 +44,11 @@ import org.apache.ibatis.type.TypeHandler;
 
 /**
  * MyBatis 3.x TypeHandler for <tt>java.io.Serializable</tt> to <b>BLOB</b> types.
+ * <p>
+ * Values are written using Java serialization unless a {@link SerializableCodec} has been
+ * {@link #setSerializableCodec(SerializableCodec, boolean) set} for writing.  Values written
+ * by Java serialization are always readable, and values written by the codec are readable
+ * for as long as the codec is set, whether or not it is used for writing.
  * 
  * @author Derek Hulley, janv
  * @since 4.0
@@ -49,6 +57,8 @@ public class SerializableTypeHandler implements TypeHandler
 {
     public static final int DEFAULT_SERIALIZABLE_TYPE = Types.LONGVARBINARY;
     private static volatile int serializableType = DEFAULT_SERIALIZABLE_TYPE;
+    private static volatile SerializableCodec serializableCodec;
+    private static volatile boolean serializableCodecWrites;
 
     /**
      * @see Types
@@ -66,6 +76,34 @@ public class SerializableTypeHandler implements TypeHandler
         return serializableType;
     }
 
+    /**
+     * @param codec             the codec to read values that were not written by Java serialization
+     *                          (<tt>null</tt> to read only Java serialization)
+     * @param writes            <tt>true</tt> to write values using the codec rather than Java serialization
+     */
+    public static void setSerializableCodec(SerializableCodec codec, boolean writes)
+    {
+        SerializableTypeHandler.serializableCodec = codec;
+        SerializableTypeHandler.serializableCodecWrites = (codec != null && writes);
+    }
+
+    /**
+     * @return      Returns the codec set for serializable columns or <tt>null</tt> if there is none
+     */
+    public static SerializableCodec getSerializableCodec()
+    {
+        return serializableCodec;
+    }
+
+    /**
+     * @return      Returns <tt>true</tt> if values are written using the {@link #getSerializableCodec() codec}
+     *              rather than Java serialization
+     */
+    public static boolean isSerializableCodecWrites()
+    {
+        return serializableCodecWrites;
+    }
+
     /**
      * @throws DeserializationException if the object could not be deserialized
      */
@@ -80,10 +118,7 @@ public class SerializableTypeHandler implements TypeHandler
                 return null;
             }
             // Get the stream and deserialize
-            ObjectInputStream ois = new ObjectInputStream(is);
-            Object obj = ois.readObject();
-            // Success
-            ret = (Serializable) obj;
+            ret = deserialize(is);
         }
         catch (Throwable e)
         {
@@ -104,10 +139,7 @@ public class SerializableTypeHandler implements TypeHandler
                 return null;
             }
             // Get the stream and deserialize
-            ObjectInputStream ois = new ObjectInputStream(is);
-            Object obj = ois.readObject();
-            // Success
-            ret = (Serializable) obj;
+            ret = deserialize(is);
         }
         catch (Throwable e)
         {
@@ -127,8 +159,17 @@ public class SerializableTypeHandler implements TypeHandler
             try
             {
                 ByteArrayOutputStream baos = new ByteArrayOutputStream(1024);
-                ObjectOutputStream oos = new ObjectOutputStream(baos);
-                oos.writeObject(parameter);
+                SerializableCodec codec = serializableCodec;
+                if (codec != null && serializableCodecWrites)
+                {
+                    codec.encode((Serializable) parameter, baos);
+                }
+                else
+                {
+                    ObjectOutputStream oos = new ObjectOutputStream(baos);
+                    oos.writeObject(parameter);
+                    oos.flush();
+                }
                 byte[] bytes = baos.toByteArray();
                 ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
                 ps.setBinaryStream(i, bais, bytes.length);
@@ -140,6 +181,39 @@ public class SerializableTypeHandler implements TypeHandler
         }
     }
     
+    /**
+     * Read a value written by Java serialization or, failing that, by the codec
+     */
+    private static Serializable deserialize(InputStream is) throws IOException, ClassNotFoundException
+    {
+        PushbackInputStream pis = new PushbackInputStream(is, 2);
+        byte[] header = new byte[2];
+        int read = 0;
+        while (read < header.length)
+        {
+            int count = pis.read(header, read, header.length - read);
+            if (count < 0)
+            {
+                break;
+            }
+            read += count;
+        }
+        pis.unread(header, 0, read);
+        
+        boolean javaSerialized = (read == 2) &&
+                (((header[0] & 0xFF) << 8) | (header[1] & 0xFF)) == (ObjectStreamConstants.STREAM_MAGIC & 0xFFFF);
+        SerializableCodec codec = serializableCodec;
+        if (javaSerialized || codec == null)
+        {
+            ObjectInputStream ois = new ObjectInputStream(pis);
+            return (Serializable) ois.readObject();
+        }
+        else
+        {
+            return codec.decode(pis);
+        }
+    }
+    
     public Object getResult(CallableStatement cs, int columnIndex) throws SQLException 
     {
         throw new UnsupportedOperationException("Unsupported");
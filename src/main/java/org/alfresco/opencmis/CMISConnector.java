@@ -1757,7 +1757,7 @@ public class CMISConnector implements ApplicationContextAware, ApplicationListen
                     len = contentReader.getSize() - off;
                 }
 
-                result.setStream(new RangeInputStream(contentReader.getContentInputStream(), off, len));
+                result.setStream(new RangeInputStream(contentReader.getReadableChannel(), off, len));
                 result.setLength(BigInteger.valueOf(len));
                 publishReadEvent(streamNodeRef, info.getName(), result.getMimeType(), contentSize, contentReader.getEncoding(), off+" - "+len);
             }
@@ -25,8 +25,13 @@
  */
 package org.alfresco.opencmis;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
 
 public class RangeInputStream extends InputStream
 {
@@ -50,6 +55,24 @@ public class RangeInputStream extends InputStream
         }
     }
 
+    /**
+     * Reads a range from a content channel.  A {@link FileChannel} or other {@link SeekableByteChannel}
+     * is positioned at the offset directly instead of the content before the range being read and discarded.
+     */
+    public RangeInputStream(ReadableByteChannel channel, long offset, long length) throws IOException
+    {
+        this(positionedStream(channel, offset), (channel instanceof SeekableByteChannel) ? 0L : offset, length);
+    }
+
+    private static InputStream positionedStream(ReadableByteChannel channel, long offset) throws IOException
+    {
+        if (channel instanceof SeekableByteChannel)
+        {
+            ((SeekableByteChannel) channel).position(offset);
+        }
+        return new BufferedInputStream(Channels.newInputStream(channel));
+    }
+
     @Override
     public int read() throws IOException
     {
@@ -54,6 +54,56 @@ public abstract class AbstractCacheFactory<K extends Serializable, V> implements
         return value;
     }
     
+    /**
+     * Get a size in bytes, which may be given as a plain number of bytes or with one of the
+     * (case-insensitive) suffixes <tt>KB</tt>, <tt>MB</tt> or <tt>GB</tt>, e.g. <tt>512MB</tt>.
+     * The <tt>B</tt> may be omitted, e.g. <tt>512M</tt>.
+     * 
+     * @return the size in bytes or the default value if the property is not set
+     * @throws IllegalArgumentException if the property is not a valid size
+     * 
+     * @since 7.110
+     */
+    public long getBytesProperty(String cacheName, String propName, long defaultValue)
+    {
+        String value = getProperty(cacheName, propName, null);
+        if (value == null)
+        {
+            return defaultValue;
+        }
+        String size = value.toUpperCase();
+        if (size.endsWith("B"))
+        {
+            size = size.substring(0, size.length() - 1);
+        }
+        long multiplier = 1L;
+        if (size.endsWith("K"))
+        {
+            multiplier = 1024L;
+        }
+        else if (size.endsWith("M"))
+        {
+            multiplier = 1024L * 1024L;
+        }
+        else if (size.endsWith("G"))
+        {
+            multiplier = 1024L * 1024L * 1024L;
+        }
+        if (multiplier > 1L)
+        {
+            size = size.substring(0, size.length() - 1);
+        }
+        try
+        {
+            return Long.parseLong(size.trim()) * multiplier;
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException(
+                    "Invalid size for " + cacheName + PROP_SEPERATOR + propName + ": " + value, e);
+        }
+    }
+    
     /**
      * Provide properties to parameterize cache creation. Cache properties are prefixed
      * with the cacheName supplied when invoking {@link DefaultCacheFactory#createCache(String)}.
@@ -0,0 +1,61 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Extension of the {@link SimpleCache} for implementations that are able to read and write
+ * many entries in a single call.  Callers that look up large numbers of keys together, such
+ * as the node bulk loader, use these methods to avoid paying the per-call overheads of the
+ * cache (transaction resource lookups, lock acquisition, statistics) for every key.
+ * <p>
+ * Code that is handed a plain {@link SimpleCache} should check for this interface and fall
+ * back to single-key calls when it is not available.
+ *
+ * @since 7.110
+ */
+public interface BulkCache<K extends Serializable, V extends Object> extends SimpleCache<K, V>
+{
+    /**
+     * Fetch the values for a number of keys.
+     *
+     * @param keys          the keys to look up
+     * @return              the values found, keyed by the given keys.  Keys for which there is
+     *                      no entry or for which the value is <tt>null</tt> are not present in the map.
+     */
+    Map<K, V> getAll(Collection<K> keys);
+
+    /**
+     * Store a number of values.  The effect is the same as calling {@link #put(Serializable, Object)}
+     * for each of the entries.
+     *
+     * @param entries       the keys and values to store
+     */
+    void putAll(Map<K, V> entries);
+}
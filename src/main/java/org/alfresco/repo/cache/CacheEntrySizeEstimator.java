@@ -0,0 +1,46 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+/**
+ * Estimates the amount of heap retained by a cache entry.  Used by caches that are bounded
+ * by size in bytes rather than by number of items.
+ * <p>
+ * Estimates need not be exact but must be cheap to calculate and must always give the same
+ * result for the same (unchanged) key and value.
+ * 
+ * @see DefaultCacheEntrySizeEstimator
+ * @since 7.110
+ */
+public interface CacheEntrySizeEstimator
+{
+    /**
+     * @param key           the cache key
+     * @param value         the cached value (may be <tt>null</tt>)
+     * @return              the estimated number of bytes retained by the entry, including the key and value
+     */
+    long estimateSize(Object key, Object value);
+}
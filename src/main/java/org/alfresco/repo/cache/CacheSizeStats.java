@@ -0,0 +1,63 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+/**
+ * Implemented by {@link SimpleCache shared caches} that are able to report on the
+ * size of their underlying storage.  Where a {@link TransactionalCache} has statistics
+ * enabled and wraps a shared cache of this type, the figures are made available through
+ * {@link CacheStatistics#sizeStats(String)} under the name of the transactional cache.
+ * <p>
+ * Implementations must allow the figures to be read from any thread at any time; the
+ * values are a best-effort snapshot and need not be consistent with each other.
+ *
+ * @since 7.110
+ */
+public interface CacheSizeStats
+{
+    /**
+     * @return the number of entries currently held by the cache
+     */
+    long getSize();
+
+    /**
+     * @return the number of bytes currently used by the cache entries or <tt>-1</tt>
+     *         if the cache does not track the size of its entries
+     */
+    long getUsedBytes();
+
+    /**
+     * @return the maximum number of bytes that the cache may use or <tt>-1</tt> if the
+     *         cache is not bounded by size in bytes
+     */
+    long getMaxBytes();
+
+    /**
+     * @return the number of entries that have been evicted to make room for new entries
+     *         since the cache was created or <tt>-1</tt> if evictions are not counted
+     */
+    long getEvictionCount();
+}
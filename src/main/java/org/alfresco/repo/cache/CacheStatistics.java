@@ -25,8 +25,11 @@
  */
 package org.alfresco.repo.cache;
 
+import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
 
+import org.alfresco.repo.cache.TenantPartitionedSimpleCache.PartitionStats;
 import org.alfresco.repo.cache.TransactionStats.OpType;
 
 /**
@@ -93,4 +96,55 @@ public interface CacheStatistics
      * @return Map of OpType to OperationStats
      */
     Map<OpType, OperationStats> allStats(String cacheName);
+
+    /**
+     * Register the source of size and eviction figures for the given cache.  This is
+     * typically the shared cache that sits behind a {@link TransactionalCache}.  By
+     * default the figures are not kept.
+     *
+     * @param cacheName  The cache name.
+     * @param sizeStats  The live size figures for the cache.
+     */
+    default void registerSizeStats(String cacheName, CacheSizeStats sizeStats)
+    {
+    }
+
+    /**
+     * Retrieve the size and eviction figures for the given cache.  The figures are
+     * live and reflect the state of the cache at the time each value is read.
+     *
+     * @param cacheName  The cache name.
+     * @return the size figures registered with {@link #registerSizeStats(String, CacheSizeStats)}
+     * @throws NoStatsForCache if no size figures have been registered for the cache
+     */
+    default CacheSizeStats sizeStats(String cacheName)
+    {
+        throw new NoStatsForCache(cacheName);
+    }
+
+    /**
+     * Retrieve a snapshot of the size, quota, hit and miss figures of each tenant for a cache
+     * that is {@link TenantPartitionedSimpleCache partitioned by tenant}.
+     *
+     * @param cacheName  The cache name.
+     * @return the figures keyed by tenant domain, where the default domain is an empty string
+     * @throws NoStatsForCache if the size figures registered for the cache are not kept by tenant
+     * @since 7.110
+     */
+    default Map<String, PartitionStats> tenantStats(String cacheName)
+    {
+        throw new NoStatsForCache(cacheName);
+    }
+
+    /**
+     * Retrieve the names of the caches for which {@link #tenantStats(String) figures are kept by tenant}.
+     * By default there are none.
+     *
+     * @return the cache names, in order
+     * @since 7.110
+     */
+    default Set<String> tenantPartitionedCacheNames()
+    {
+        return Collections.emptySet();
+    }
 }
@@ -0,0 +1,250 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.alfresco.repo.cache.TransactionalCache.ValueHolder;
+import org.alfresco.repo.cache.lookup.CacheRegionKey;
+import org.alfresco.repo.cache.lookup.CacheRegionValueKey;
+import org.alfresco.repo.domain.node.AuditablePropertiesEntity;
+import org.alfresco.repo.domain.node.Node;
+import org.alfresco.repo.domain.node.NodeVersionKey;
+import org.alfresco.repo.domain.node.TransactionEntity;
+import org.alfresco.service.cmr.repository.ContentData;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.namespace.QName;
+
+/**
+ * Size estimator for the values held in the repository caches, with specific estimates for
+ * the node caches: {@link Node nodes}, node properties (<tt>Map&lt;QName, Serializable&gt;</tt>,
+ * including {@link org.alfresco.service.cmr.repository.MLText MLText} values) and node aspects
+ * (<tt>Set&lt;QName&gt;</tt>).  Values that have been wrapped by the {@link TransactionalCache}
+ * are unwrapped first.
+ * <p>
+ * The figures assume a 64-bit JVM with compressed references.  {@link QName QNames},
+ * {@link Locale locales} and stores are counted as references only, as the instances are shared
+ * between cache entries.  Types that are not recognised are given a flat estimate.
+ * 
+ * @since 7.110
+ */
+public class DefaultCacheEntrySizeEstimator implements CacheEntrySizeEstimator
+{
+    protected static final int OBJECT_HEADER = 16;
+    protected static final int REFERENCE = 4;
+    /** Size of each entry in a <tt>HashMap</tt>, including its share of the table */
+    protected static final int HASH_MAP_ENTRY = 32 + REFERENCE * 2;
+    protected static final int HASH_MAP = 48;
+    protected static final int BOXED_VALUE = 16;
+    protected static final int UNKNOWN_VALUE = 64;
+    /** Limit on the depth of nested values that are examined */
+    private static final int MAX_DEPTH = 8;
+
+    @Override
+    public long estimateSize(Object key, Object value)
+    {
+        return estimate(key, 0) + estimate(value, 0);
+    }
+
+    /**
+     * Estimate the size of a value, dispatching to the type-specific estimates
+     * 
+     * @param depth         the level of nesting of the value
+     */
+    protected long estimate(Object value, int depth)
+    {
+        if (value == null || value instanceof QName || value instanceof Locale || value instanceof Boolean)
+        {
+            return REFERENCE;
+        }
+        else if (depth > MAX_DEPTH)
+        {
+            return UNKNOWN_VALUE;
+        }
+        else if (value instanceof ValueHolder)
+        {
+            return OBJECT_HEADER + 8 + estimate(((ValueHolder<?>) value).getValue(), depth + 1);
+        }
+        else if (value instanceof String)
+        {
+            return estimateString((String) value);
+        }
+        else if (value instanceof Number)
+        {
+            return BOXED_VALUE + 8;
+        }
+        else if (value instanceof Date)
+        {
+            return OBJECT_HEADER + 8;
+        }
+        else if (value instanceof Node)
+        {
+            return estimateNode((Node) value);
+        }
+        else if (value instanceof NodeRef)
+        {
+            return estimateNodeRef((NodeRef) value);
+        }
+        else if (value instanceof ContentData)
+        {
+            return estimateContentData((ContentData) value);
+        }
+        else if (value instanceof Map)
+        {
+            return estimateMap((Map<?, ?>) value, depth);
+        }
+        else if (value instanceof Set)
+        {
+            return estimateSet((Set<?>) value, depth);
+        }
+        else if (value instanceof Collection)
+        {
+            return estimateCollection((Collection<?>) value, depth);
+        }
+        else if (value instanceof byte[])
+        {
+            return OBJECT_HEADER + ((byte[]) value).length;
+        }
+        else if (value instanceof CacheRegionKey)
+        {
+            return OBJECT_HEADER + REFERENCE * 2 + 4 + estimate(((CacheRegionKey) value).getCacheKey(), depth + 1);
+        }
+        else if (value instanceof CacheRegionValueKey)
+        {
+            return OBJECT_HEADER + REFERENCE * 2 + 4 + estimate(((CacheRegionValueKey) value).getCacheValueKey(), depth + 1);
+        }
+        else if (value instanceof TransactionalCache.CacheRegionKey)
+        {
+            return OBJECT_HEADER + REFERENCE * 2 + 4 + estimate(((TransactionalCache.CacheRegionKey) value).getCacheKey(), depth + 1);
+        }
+        else if (value instanceof NodeVersionKey)
+        {
+            return OBJECT_HEADER + REFERENCE * 2 + BOXED_VALUE * 2;
+        }
+        else
+        {
+            return UNKNOWN_VALUE;
+        }
+    }
+
+    protected long estimateString(String value)
+    {
+        // The string and its backing array
+        return OBJECT_HEADER + 8 + OBJECT_HEADER + 2L * value.length();
+    }
+
+    /**
+     * Node properties are held in hash maps keyed by shared {@link QName} instances.
+     * {@link org.alfresco.service.cmr.repository.MLText MLText} values are maps, too.
+     */
+    protected long estimateMap(Map<?, ?> map, int depth)
+    {
+        long size = HASH_MAP;
+        for (Map.Entry<?, ?> entry : map.entrySet())
+        {
+            size += HASH_MAP_ENTRY + estimate(entry.getKey(), depth + 1) + estimate(entry.getValue(), depth + 1);
+        }
+        return size;
+    }
+
+    /**
+     * Node aspects are held in hash sets of shared {@link QName} instances.
+     */
+    protected long estimateSet(Set<?> set, int depth)
+    {
+        long size = OBJECT_HEADER + REFERENCE + HASH_MAP + (long) HASH_MAP_ENTRY * set.size();
+        for (Object element : set)
+        {
+            size += estimate(element, depth + 1);
+        }
+        return size;
+    }
+
+    protected long estimateCollection(Collection<?> collection, int depth)
+    {
+        long size = OBJECT_HEADER + 8 + OBJECT_HEADER + (long) REFERENCE * collection.size();
+        for (Object element : collection)
+        {
+            size += estimate(element, depth + 1);
+        }
+        return size;
+    }
+
+    /**
+     * A node entity with its transaction and auditable properties; the store is shared.
+     */
+    protected long estimateNode(Node node)
+    {
+        long size = OBJECT_HEADER + 12 * REFERENCE + 8;
+        // id, version, type, locale, ACL
+        size += 5 * (BOXED_VALUE + 8);
+        size += estimateNullable(node.getUuid());
+        size += estimateNullable(node.getShardKey());
+        TransactionEntity txn = node.getTransaction();
+        if (txn != null)
+        {
+            size += OBJECT_HEADER + 4 * REFERENCE + 3 * (BOXED_VALUE + 8) + estimateNullable(txn.getChangeTxnId());
+        }
+        AuditablePropertiesEntity auditableProperties = node.getAuditableProperties();
+        if (auditableProperties != null)
+        {
+            size += OBJECT_HEADER + 6 * REFERENCE + 8;
+            size += estimateNullable(auditableProperties.getAuditCreator());
+            size += estimateNullable(auditableProperties.getAuditCreated());
+            size += estimateNullable(auditableProperties.getAuditModifier());
+            size += estimateNullable(auditableProperties.getAuditModified());
+            size += estimateNullable(auditableProperties.getAuditAccessed());
+        }
+        return size;
+    }
+
+    /**
+     * A node reference; the store reference is usually shared but is counted anyway.
+     */
+    protected long estimateNodeRef(NodeRef nodeRef)
+    {
+        return OBJECT_HEADER + 2 * REFERENCE
+                + OBJECT_HEADER + 2 * REFERENCE
+                + estimateString(nodeRef.getId());
+    }
+
+    protected long estimateContentData(ContentData contentData)
+    {
+        return OBJECT_HEADER + 4 * REFERENCE + 8
+                + estimateNullable(contentData.getContentUrl())
+                + estimateNullable(contentData.getMimetype())
+                + estimateNullable(contentData.getEncoding());
+    }
+
+    private long estimateNullable(String value)
+    {
+        return value == null ? 0 : estimateString(value);
+    }
+}
@@ -35,6 +35,26 @@ import org.apache.commons.logging.LogFactory;
  * The caches are created with a capacity specified by the property {name}.maxItems.
  * For example, a cache named <tt>cache.ticketsCache</tt> would have a capacity specified
  * by the property <tt>cache.ticketsCache.maxItems</tt>
+ * <p>
+ * Where the property {name}.offHeap.maxBytes is set to a positive value, an
+ * {@link OffHeapSimpleCache} of that size is created instead, split into
+ * {name}.offHeap.segments segments.  Its values are written by the
+ * {@link #setOffHeapValueSerializer(OffHeapSimpleCache.ValueSerializer) off-heap value serializer}.
+ * <p>
+ * Otherwise, where the property {name}.maxBytes is set to a positive value, the cache
+ * is bounded by the estimated size of its entries rather than by {name}.maxItems.
+ * The estimates are provided by the {@link #setSizeEstimator(CacheEntrySizeEstimator) size estimator}.
+ * Sizes may be given with a unit, e.g. <tt>512MB</tt>.
+ * <p>
+ * Where the property {name}.tenantPartitioned is <tt>true</tt>, a {@link TenantPartitionedSimpleCache}
+ * holding {name}.maxItems entries is created, with each tenant guaranteed
+ * {name}.tenantPartitioned.minItems entries and limited to {name}.tenantPartitioned.maxItems entries.
+ * The partitions are bounded by the number of entries and use LRU eviction only, so {name}.maxBytes,
+ * {name}.admission and expiry do not apply; a warning is logged when they are set.
+ * <p>
+ * Otherwise, where the property {name}.admission is <tt>TinyLFU</tt>, a {@link TinyLfuSimpleCache}
+ * holding {name}.maxItems entries is created.  It only admits a new entry when that is used more
+ * often than the entry it would displace, so that one-off scans do not flush the frequently used entries.
  * 
  * @author Matt Ward
  */
@@ -42,7 +62,33 @@ public class DefaultCacheFactory<K extends Serializable, V> extends AbstractCach
 {
     private static final Log log = LogFactory.getLog(DefaultCacheFactory.class);
     private static final String EVICT_NONE = "NONE";
+    private static final String ADMISSION_NONE = "none";
+    private static final String ADMISSION_TINY_LFU = "TinyLFU";
     
+    private CacheEntrySizeEstimator sizeEstimator = new DefaultCacheEntrySizeEstimator();
+    private OffHeapSimpleCache.ValueSerializer offHeapValueSerializer = new OffHeapSimpleCache.JavaValueSerializer();
+    
+    /**
+     * Set the estimator used by caches that are bounded by {name}.maxBytes.
+     * The default is a {@link DefaultCacheEntrySizeEstimator}.
+     * 
+     * @since 7.110
+     */
+    public void setSizeEstimator(CacheEntrySizeEstimator sizeEstimator)
+    {
+        this.sizeEstimator = sizeEstimator;
+    }
+    
+    /**
+     * Set the serializer used for the values of caches held off-heap, where {name}.offHeap.maxBytes is set.
+     * The default is a {@link OffHeapSimpleCache.JavaValueSerializer}.
+     * 
+     * @since 7.110
+     */
+    public void setOffHeapValueSerializer(OffHeapSimpleCache.ValueSerializer offHeapValueSerializer)
+    {
+        this.offHeapValueSerializer = offHeapValueSerializer;
+    }
     
     @Override
     public SimpleCache<K, V> createCache(String cacheName)
@@ -52,11 +98,50 @@ public class DefaultCacheFactory<K extends Serializable, V> extends AbstractCach
     
     private SimpleCache<K, V> createLocalCache(String cacheName)
     {
-        int maxItems = maxItems(cacheName);
-        boolean useMaxItems = useMaxItems(cacheName);
         int ttlSecs = ttlSeconds(cacheName);
         int maxIdleSeconds = maxIdleSeconds(cacheName);
-        DefaultSimpleCache<K, V> cache = new DefaultSimpleCache<K, V>(maxItems, useMaxItems, ttlSecs, maxIdleSeconds, cacheName);
+        long offHeapMaxBytes = offHeapMaxBytes(cacheName);
+        long maxBytes = maxBytes(cacheName);
+        SimpleCache<K, V> cache;
+        if (offHeapMaxBytes > 0)
+        {
+            int segments = offHeapSegments(cacheName);
+            cache = new OffHeapSimpleCache<K, V>(
+                        offHeapMaxBytes, segments, ttlSecs, maxIdleSeconds, cacheName, offHeapValueSerializer);
+        }
+        else if (tenantPartitioned(cacheName))
+        {
+            int maxItems = maxItems(cacheName);
+            if (ttlSecs > 0 || maxIdleSeconds > 0)
+            {
+                log.warn("Cache " + cacheName + " is partitioned by tenant: timeToLiveSeconds and maxIdleSeconds do not apply.");
+            }
+            if (maxBytes > 0 || tinyLfuAdmission(cacheName))
+            {
+                log.warn("Cache " + cacheName + " is partitioned by tenant: maxBytes and admission do not apply.");
+            }
+            cache = new TenantPartitionedSimpleCache<K, V>(
+                        maxItems, tenantMinItems(cacheName), tenantMaxItems(cacheName), cacheName);
+        }
+        else if (maxBytes > 0)
+        {
+            cache = new DefaultSimpleCache<K, V>(maxBytes, sizeEstimator, ttlSecs, maxIdleSeconds, cacheName);
+        }
+        else if (tinyLfuAdmission(cacheName))
+        {
+            int maxItems = maxItems(cacheName);
+            if (maxItems <= 0)
+            {
+                throw new IllegalArgumentException("Cache " + cacheName + " uses TinyLFU admission and requires a positive maxItems");
+            }
+            cache = new TinyLfuSimpleCache<K, V>(maxItems, ttlSecs, maxIdleSeconds, cacheName);
+        }
+        else
+        {
+            int maxItems = maxItems(cacheName);
+            boolean useMaxItems = useMaxItems(cacheName);
+            cache = new DefaultSimpleCache<K, V>(maxItems, useMaxItems, ttlSecs, maxIdleSeconds, cacheName);
+        }
         if (log.isDebugEnabled())
         {
             log.debug("Creating cache: " + cache);
@@ -90,4 +175,52 @@ public class DefaultCacheFactory<K extends Serializable, V> extends AbstractCach
         Integer maxIdleSecs = Integer.parseInt(maxIdleSecsStr);
         return maxIdleSecs;
     }
+    
+    private boolean tenantPartitioned(String cacheName)
+    {
+        return Boolean.parseBoolean(getProperty(cacheName, "tenantPartitioned", "false"));
+    }
+    
+    private int tenantMinItems(String cacheName)
+    {
+        String minItemsStr = getProperty(cacheName, "tenantPartitioned.minItems", "0");
+        return Integer.parseInt(minItemsStr);
+    }
+    
+    private int tenantMaxItems(String cacheName)
+    {
+        String maxItemsStr = getProperty(cacheName, "tenantPartitioned.maxItems", "0");
+        return Integer.parseInt(maxItemsStr);
+    }
+    
+    private boolean tinyLfuAdmission(String cacheName)
+    {
+        String admission = getProperty(cacheName, "admission", ADMISSION_NONE);
+        if (admission.equalsIgnoreCase(ADMISSION_TINY_LFU))
+        {
+            return true;
+        }
+        else if (!admission.equalsIgnoreCase(ADMISSION_NONE))
+        {
+            throw new IllegalArgumentException("Unknown admission policy '" + admission + "' for cache " + cacheName);
+        }
+        return false;
+    }
+    
+    private long maxBytes(String cacheName)
+    {
+        return getBytesProperty(cacheName, "maxBytes", 0L);
+    }
+    
+    private long offHeapMaxBytes(String cacheName)
+    {
+        return getBytesProperty(cacheName, "offHeap.maxBytes", 0L);
+    }
+    
+    private int offHeapSegments(String cacheName)
+    {
+        String segmentsStr = getProperty(cacheName, "offHeap.segments", Integer.toString(OffHeapSimpleCache.DEFAULT_SEGMENTS));
+        Integer segments = Integer.parseInt(segmentsStr);
+        return segments;
+    }
 }
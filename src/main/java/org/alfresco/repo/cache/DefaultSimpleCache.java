@@ -28,20 +28,31 @@ package org.alfresco.repo.cache;
 import java.io.Serializable;
 import java.util.AbstractMap;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.springframework.beans.factory.BeanNameAware;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
 
 /**
  * {@link SimpleCache} implementation backed by a Google {@link Cache} implementation.
+ * <p>
+ * The cache may be bounded by the number of items or, using a {@link CacheEntrySizeEstimator},
+ * by the estimated number of bytes held by its entries.  In the latter case the current
+ * weight of the cache is reported through {@link CacheSizeStats#getUsedBytes()}.
  * 
  * @author Matt Ward
  */
 public final class DefaultSimpleCache<K extends Serializable, V extends Object>
-    implements SimpleCache<K, V>, BeanNameAware
+    implements BulkCache<K, V>, CacheSizeStats, BeanNameAware
 {
     private static final int DEFAULT_CAPACITY = Integer.MAX_VALUE;
     private Cache<K, AbstractMap.SimpleImmutableEntry<K, V>> cache;
@@ -50,6 +61,11 @@ public final class DefaultSimpleCache<K extends Serializable, V extends Object>
     private final boolean useMaxItems;
     private final int ttlSecs;
     private final int maxIdleSecs;
+    /** The maximum estimated size in bytes or -1 if the cache is not bounded by size */
+    private final long maxBytes;
+    private final CacheEntrySizeEstimator sizeEstimator;
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
     
     /**
      * Construct a cache using the specified capacity and name.
@@ -73,6 +89,8 @@ public final class DefaultSimpleCache<K extends Serializable, V extends Object>
         this.useMaxItems = useMaxItems;
         this.ttlSecs = ttlSecs;
         this.maxIdleSecs = maxIdleSecs;
+        this.maxBytes = -1L;
+        this.sizeEstimator = null;
         setBeanName(cacheName);
         
         // The map will have a bounded size determined by the maxItems member variable.
@@ -83,6 +101,73 @@ public final class DefaultSimpleCache<K extends Serializable, V extends Object>
         {
             builder.maximumSize(maxItems);
         }
+        build(builder);
+    }
+    
+    /**
+     * Construct a cache that is bounded by the estimated size of its entries.
+     * <p>
+     * Note that the capacity is shared between the segments of the underlying cache, so an entry
+     * estimated to be larger than a fraction of <tt>maxBytes</tt> may be evicted immediately.
+     * 
+     * @param maxBytes The maximum estimated size of the entries in bytes (must be positive)
+     * @param sizeEstimator Used to estimate the size of each entry as it is put into the cache
+     * @param cacheName An arbitrary cache name.
+     * 
+     * @since 7.110
+     */
+    @SuppressWarnings("unchecked")
+    public DefaultSimpleCache(long maxBytes, CacheEntrySizeEstimator sizeEstimator, int ttlSecs, int maxIdleSecs, String cacheName)
+    {
+        if (maxBytes <= 0)
+        {
+            throw new IllegalArgumentException("maxBytes must be positive, but was " + maxBytes);
+        }
+        if (sizeEstimator == null)
+        {
+            throw new IllegalArgumentException("A sizeEstimator is required");
+        }
+        this.maxItems = DEFAULT_CAPACITY;
+        this.useMaxItems = false;
+        this.ttlSecs = ttlSecs;
+        this.maxIdleSecs = maxIdleSecs;
+        this.maxBytes = maxBytes;
+        this.sizeEstimator = sizeEstimator;
+        setBeanName(cacheName);
+        
+        @SuppressWarnings("rawtypes")
+        CacheBuilder builder = CacheBuilder.newBuilder();
+        builder.maximumWeight(maxBytes);
+        builder.weigher(new Weigher<K, WeighedEntry<K, V>>()
+        {
+            @Override
+            public int weigh(K key, WeighedEntry<K, V> entry)
+            {
+                return entry.weight;
+            }
+        });
+        builder.removalListener(new RemovalListener<K, WeighedEntry<K, V>>()
+        {
+            @Override
+            public void onRemoval(RemovalNotification<K, WeighedEntry<K, V>> notification)
+            {
+                WeighedEntry<K, V> entry = notification.getValue();
+                if (entry != null)
+                {
+                    usedBytes.addAndGet(-entry.weight);
+                }
+                if (notification.getCause() == RemovalCause.SIZE)
+                {
+                    evictionCount.incrementAndGet();
+                }
+            }
+        });
+        build(builder);
+    }
+    
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private void build(CacheBuilder builder)
+    {
         if (ttlSecs > 0)
         {
             builder.expireAfterWrite(ttlSecs, TimeUnit.SECONDS);
@@ -151,11 +236,53 @@ public final class DefaultSimpleCache<K extends Serializable, V extends Object>
      */
     public boolean putAndCheckUpdate(K key, V value)
     {
-        AbstractMap.SimpleImmutableEntry<K, V> kvp = new AbstractMap.SimpleImmutableEntry<K, V>(key, value);
+        AbstractMap.SimpleImmutableEntry<K, V> kvp = newEntry(key, value);
         AbstractMap.SimpleImmutableEntry<K, V> priorKVP = cache.asMap().put(key, kvp);
         return priorKVP != null && (! priorKVP.equals(kvp));
     }
     
+    /**
+     * Create the entry that holds the key and value in the cache.  Where the cache is bounded by
+     * size, the entry carries its estimated size, which is added to the current total.
+     */
+    private AbstractMap.SimpleImmutableEntry<K, V> newEntry(K key, V value)
+    {
+        if (sizeEstimator == null)
+        {
+            return new AbstractMap.SimpleImmutableEntry<K, V>(key, value);
+        }
+        long estimate = sizeEstimator.estimateSize(key, value);
+        int weight = (int) Math.max(1L, Math.min(Integer.MAX_VALUE, estimate));
+        usedBytes.addAndGet(weight);
+        return new WeighedEntry<K, V>(key, value, weight);
+    }
+    
+    @Override
+    public Map<K, V> getAll(Collection<K> keys)
+    {
+        Map<K, AbstractMap.SimpleImmutableEntry<K, V>> kvps = cache.getAllPresent(keys);
+        Map<K, V> values = new HashMap<K, V>(kvps.size() * 2);
+        for (AbstractMap.SimpleImmutableEntry<K, V> kvp : kvps.values())
+        {
+            if (kvp.getValue() != null)
+            {
+                values.put(kvp.getKey(), kvp.getValue());
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public void putAll(Map<K, V> entries)
+    {
+        Map<K, AbstractMap.SimpleImmutableEntry<K, V>> kvps = new HashMap<K, AbstractMap.SimpleImmutableEntry<K, V>>(entries.size() * 2);
+        for (Map.Entry<K, V> entry : entries.entrySet())
+        {
+            kvps.put(entry.getKey(), newEntry(entry.getKey(), entry.getValue()));
+        }
+        cache.putAll(kvps);
+    }
+
     @Override
     public void remove(K key)
     {
@@ -168,9 +295,45 @@ public final class DefaultSimpleCache<K extends Serializable, V extends Object>
         cache.invalidateAll();
     }
 
+    @Override
+    public long getSize()
+    {
+        return cache.size();
+    }
+
+    /**
+     * @return the estimated size of the entries in bytes or <tt>-1</tt> if the cache
+     *         is not bounded by size
+     */
+    @Override
+    public long getUsedBytes()
+    {
+        return sizeEstimator == null ? -1L : usedBytes.get();
+    }
+
+    @Override
+    public long getMaxBytes()
+    {
+        return maxBytes;
+    }
+
+    /**
+     * @return the number of entries evicted to keep within the size bound or <tt>-1</tt>
+     *         if the cache is not bounded by size
+     */
+    @Override
+    public long getEvictionCount()
+    {
+        return sizeEstimator == null ? -1L : evictionCount.get();
+    }
+
     @Override
     public String toString()
     {
+        if (sizeEstimator != null)
+        {
+            return "DefaultSimpleCache[maxBytes=" + maxBytes + ", cacheName=" + cacheName + "]";
+        }
         return "DefaultSimpleCache[maxItems=" + maxItems + ", useMaxItems=" + useMaxItems + ", cacheName=" + cacheName + "]";
     }
     
@@ -184,6 +347,16 @@ public final class DefaultSimpleCache<K extends Serializable, V extends Object>
         return maxItems;
     }
     
+    /**
+     * Is the cache bounded by the estimated size of its entries?
+     * 
+     * @return <tt>true</tt> if a {@link CacheEntrySizeEstimator} is in use
+     */
+    public boolean isUseMaxBytes()
+    {
+        return sizeEstimator != null;
+    }
+    
     /**
      * Is a size-cap in use?
      * 
@@ -248,4 +421,21 @@ public final class DefaultSimpleCache<K extends Serializable, V extends Object>
     {
         this.cacheName = cacheName;
     }
+    
+    /**
+     * Cache entry that carries its estimated size so that the same weight is removed
+     * from the total as was added, regardless of any later changes to the value.
+     */
+    private static class WeighedEntry<K, V> extends AbstractMap.SimpleImmutableEntry<K, V>
+    {
+        private static final long serialVersionUID = 1L;
+        
+        private final int weight;
+        
+        private WeighedEntry(K key, V value, int weight)
+        {
+            super(key, value);
+            this.weight = weight;
+        }
+    }
 }
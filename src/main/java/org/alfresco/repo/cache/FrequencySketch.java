@@ -0,0 +1,156 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+/**
+ * Count-min sketch of the recent access frequency of keys, used by {@link TinyLfuSimpleCache}
+ * to decide whether a new entry is worth keeping at the expense of an existing one.
+ * <p>
+ * Four rows of 4-bit counters are held, so a frequency saturates at 15.  After a number of
+ * increments proportional to the size of the sketch all counters are halved, so that the
+ * sketch reflects recent rather than all-time popularity.
+ * <p>
+ * The sketch is not thread-safe.
+ *
+ * @since 7.110
+ */
+final class FrequencySketch
+{
+    private static final int ROWS = 4;
+    private static final int MAX_COUNT = 15;
+    private static final int[] SEEDS = new int[] { 0x97cb3127, 0xb0b4a2b3, 0xc2b2ae35, 0x27d4eb2f };
+
+    /** Two 4-bit counters per byte, for each of the rows in turn */
+    private final byte[] table;
+    private final int widthMask;
+    private final int sampleSize;
+    private int additions;
+
+    /**
+     * @param capacity          the number of entries held by the cache
+     */
+    FrequencySketch(int capacity)
+    {
+        int width = Integer.highestOneBit(Math.max(16, Math.min(capacity, 1 << 24)) - 1) << 1;
+        this.widthMask = width - 1;
+        this.table = new byte[ROWS * width / 2];
+        this.sampleSize = 10 * Math.max(capacity, 1);
+    }
+
+    /**
+     * @return the estimated number of recent occurrences of the key, between 0 and 15
+     */
+    int frequency(Object key)
+    {
+        int hash = spread(key.hashCode());
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < ROWS; row++)
+        {
+            frequency = Math.min(frequency, getCount(indexOf(hash, row)));
+        }
+        return frequency;
+    }
+
+    /**
+     * Record an occurrence of the key.  Only the counters holding the current minimum are
+     * incremented, which reduces the over-estimates caused by collisions.
+     */
+    void increment(Object key)
+    {
+        int hash = spread(key.hashCode());
+        int[] indexes = new int[ROWS];
+        int min = MAX_COUNT;
+        for (int row = 0; row < ROWS; row++)
+        {
+            indexes[row] = indexOf(hash, row);
+            min = Math.min(min, getCount(indexes[row]));
+        }
+        if (min == MAX_COUNT)
+        {
+            return;
+        }
+        for (int row = 0; row < ROWS; row++)
+        {
+            if (getCount(indexes[row]) == min)
+            {
+                setCount(indexes[row], min + 1);
+            }
+        }
+        if (++additions >= sampleSize)
+        {
+            reset();
+        }
+    }
+
+    /**
+     * Halve all the counters so that old popularity fades
+     */
+    private void reset()
+    {
+        for (int i = 0; i < table.length; i++)
+        {
+            // Halve both 4-bit counters in the byte at once
+            table[i] = (byte) ((table[i] >>> 1) & 0x77);
+        }
+        additions /= 2;
+    }
+
+    private int indexOf(int hash, int row)
+    {
+        int h = (hash ^ SEEDS[row]) * SEEDS[row];
+        h ^= h >>> 16;
+        return row * (widthMask + 1) + (h & widthMask);
+    }
+
+    private int getCount(int index)
+    {
+        int b = table[index >>> 1];
+        return ((index & 1) == 0) ? (b & 0x0F) : ((b >>> 4) & 0x0F);
+    }
+
+    private void setCount(int index, int count)
+    {
+        int i = index >>> 1;
+        int b = table[i];
+        if ((index & 1) == 0)
+        {
+            b = (b & 0xF0) | count;
+        }
+        else
+        {
+            b = (b & 0x0F) | (count << 4);
+        }
+        table[i] = (byte) b;
+    }
+
+    private static int spread(int hash)
+    {
+        hash ^= hash >>> 17;
+        hash *= 0xed5ad4bb;
+        hash ^= hash >>> 11;
+        return hash;
+    }
+}
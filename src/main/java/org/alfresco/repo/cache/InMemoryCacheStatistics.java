@@ -27,12 +27,15 @@ package org.alfresco.repo.cache;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
 
+import org.alfresco.repo.cache.TenantPartitionedSimpleCache.PartitionStats;
 import org.alfresco.repo.cache.TransactionStats.OpType;
 import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
 import org.springframework.beans.BeansException;
@@ -51,6 +54,8 @@ public class InMemoryCacheStatistics implements CacheStatistics, ApplicationCont
     /** Read/Write locks by cache name */
     private final ConcurrentMap<String, ReentrantReadWriteLock> locks = new ConcurrentHashMap<>();
     private Map<String, Map<OpType, OperationStats>> cacheToStatsMap = new HashMap<>();
+    /** Size figures by cache name; the figures are live so need no locking */
+    private final ConcurrentMap<String, CacheSizeStats> cacheToSizeStatsMap = new ConcurrentHashMap<>();
     private ApplicationContext applicationContext;
     
     
@@ -209,6 +214,48 @@ public class InMemoryCacheStatistics implements CacheStatistics, ApplicationCont
         }
     }
 
+    @Override
+    public void registerSizeStats(String cacheName, CacheSizeStats sizeStats)
+    {
+        cacheToSizeStatsMap.put(cacheName, sizeStats);
+    }
+
+    @Override
+    public CacheSizeStats sizeStats(String cacheName)
+    {
+        CacheSizeStats sizeStats = cacheToSizeStatsMap.get(cacheName);
+        if (sizeStats == null)
+        {
+            throw new NoStatsForCache(cacheName);
+        }
+        return sizeStats;
+    }
+
+    @Override
+    public Map<String, PartitionStats> tenantStats(String cacheName)
+    {
+        CacheSizeStats sizeStats = cacheToSizeStatsMap.get(cacheName);
+        if (!(sizeStats instanceof TenantPartitionedSimpleCache))
+        {
+            throw new NoStatsForCache(cacheName);
+        }
+        return ((TenantPartitionedSimpleCache<?, ?>) sizeStats).getPartitionStats();
+    }
+
+    @Override
+    public Set<String> tenantPartitionedCacheNames()
+    {
+        Set<String> cacheNames = new TreeSet<>();
+        for (Map.Entry<String, CacheSizeStats> entry : cacheToSizeStatsMap.entrySet())
+        {
+            if (entry.getValue() instanceof TenantPartitionedSimpleCache)
+            {
+                cacheNames.add(entry.getKey());
+            }
+        }
+        return cacheNames;
+    }
+
     @Override
     public void setApplicationContext(ApplicationContext applicationContext) throws BeansException
     {
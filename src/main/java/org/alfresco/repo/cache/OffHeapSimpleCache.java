@@ -0,0 +1,1038 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.repo.cache.lookup.CacheRegionKey;
+import org.alfresco.repo.cache.lookup.CacheRegionValueKey;
+import org.alfresco.repo.domain.node.NodeVersionKey;
+import org.springframework.beans.factory.BeanNameAware;
+
+/**
+ * {@link SimpleCache} implementation that holds its entries outside of the Java heap.
+ * <p>
+ * Keys and values are stored in a compact binary form in direct memory, split into a number
+ * of independently locked segments.  Each segment is a circular log of entries with an
+ * open-addressing index made up of primitive arrays: the index holds a 64-bit hash of the
+ * key and the offset of the entry within the log, so that no objects are retained on the heap
+ * for the entries themselves.  This keeps very large caches, such as the node, aspect and
+ * property caches, out of the reach of the garbage collector.
+ * <p>
+ * The cache is bounded by the number of bytes it may use.  When a segment is full, entries are
+ * evicted from the tail of the log; entries that have been read since they were written are
+ * given a second chance and moved to the head of the log instead (a bounded number of times
+ * per write), which approximates LRU eviction.
+ * <p>
+ * The common cache key types (<tt>Long</tt>, <tt>String</tt>, the cache region keys and
+ * {@link NodeVersionKey}) are written using a compact encoding; other keys and all values are
+ * written with the {@link ValueSerializer}, which uses Java serialization by default.  Values
+ * are therefore copies: every {@link #get(Serializable) get} returns a new instance.
+ * <p>
+ * The total size of the direct memory used is bounded by the JVM's
+ * <tt>-XX:MaxDirectMemorySize</tt> setting, which must be large enough for all off-heap caches.
+ *
+ * @since 7.110
+ */
+public final class OffHeapSimpleCache<K extends Serializable, V extends Object>
+    implements BulkCache<K, V>, CacheSizeStats, BeanNameAware
+{
+    /**
+     * Converts values to and from the binary form held by the cache.
+     */
+    public interface ValueSerializer
+    {
+        /**
+         * @param value         the value to write (may be <tt>null</tt>)
+         * @return              the binary form of the value
+         */
+        byte[] serialize(Object value);
+
+        /**
+         * @param bytes         the binary form of a value as produced by {@link #serialize(Object)}
+         * @return              a new instance of the value
+         */
+        Object deserialize(byte[] bytes);
+    }
+
+    /**
+     * {@link ValueSerializer} using plain Java serialization.
+     */
+    public static final class JavaValueSerializer implements ValueSerializer
+    {
+        @Override
+        public byte[] serialize(Object value)
+        {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(256);
+            try (ObjectOutputStream oos = new ObjectOutputStream(bos))
+            {
+                oos.writeObject(value);
+            }
+            catch (IOException e)
+            {
+                throw new AlfrescoRuntimeException("Failed to serialize cache value: " + value, e);
+            }
+            return bos.toByteArray();
+        }
+
+        @Override
+        public Object deserialize(byte[] bytes)
+        {
+            try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes)))
+            {
+                return ois.readObject();
+            }
+            catch (IOException | ClassNotFoundException e)
+            {
+                throw new AlfrescoRuntimeException("Failed to deserialize cache value", e);
+            }
+        }
+    }
+
+    public static final int DEFAULT_SEGMENTS = 16;
+
+    /* Key encoding type tags */
+    private static final byte KEY_SERIALIZED = 0;
+    private static final byte KEY_LONG = 1;
+    private static final byte KEY_STRING = 2;
+    private static final byte KEY_REGION = 3;
+    private static final byte KEY_REGION_VALUE = 4;
+    private static final byte KEY_TENANT_REGION = 5;
+    private static final byte KEY_NODE_VERSION = 6;
+    /** Strings longer than this are not worth a compact encoding */
+    private static final int MAX_COMPACT_STRING_LENGTH = 8192;
+
+    private final Segment[] segments;
+    private final int segmentMask;
+    private final long maxBytes;
+    private final int ttlSecs;
+    private final int maxIdleSecs;
+    private final long createdMillis;
+    private final ValueSerializer valueSerializer;
+    private String cacheName;
+
+    /**
+     * Construct a cache with the given size in bytes.
+     *
+     * @param maxBytes          the number of bytes of direct memory that the cache may use
+     * @param segmentCount      the number of independently locked segments, rounded up to a power of two
+     * @param ttlSecs           the time-to-live of entries in seconds or 0 to keep entries indefinitely
+     * @param maxIdleSecs       the time-to-idle of entries in seconds or 0 to keep entries indefinitely
+     * @param cacheName         an arbitrary cache name
+     * @param valueSerializer   converts values to and from binary form
+     */
+    public OffHeapSimpleCache(
+            long maxBytes, int segmentCount, int ttlSecs, int maxIdleSecs,
+            String cacheName, ValueSerializer valueSerializer)
+    {
+        if (maxBytes <= 0)
+        {
+            throw new IllegalArgumentException("maxBytes must be positive, but was " + maxBytes);
+        }
+        if (segmentCount <= 0)
+        {
+            throw new IllegalArgumentException("segmentCount must be positive, but was " + segmentCount);
+        }
+        int segmentsPow2 = Integer.highestOneBit(segmentCount);
+        if (segmentsPow2 < segmentCount)
+        {
+            segmentsPow2 <<= 1;
+        }
+        long segmentBytes = maxBytes / segmentsPow2;
+        if (segmentBytes > Integer.MAX_VALUE)
+        {
+            throw new IllegalArgumentException(
+                    "Each segment is limited to " + Integer.MAX_VALUE + " bytes; increase the segment count for cache " + cacheName);
+        }
+        if (segmentBytes < Segment.HEADER_SIZE)
+        {
+            throw new IllegalArgumentException("maxBytes " + maxBytes + " is too small for " + segmentsPow2 + " segments");
+        }
+        this.maxBytes = segmentBytes * segmentsPow2;
+        this.ttlSecs = ttlSecs;
+        this.maxIdleSecs = maxIdleSecs;
+        this.createdMillis = System.currentTimeMillis();
+        this.valueSerializer = valueSerializer;
+        setBeanName(cacheName);
+
+        this.segments = new Segment[segmentsPow2];
+        for (int i = 0; i < segmentsPow2; i++)
+        {
+            segments[i] = new Segment((int) segmentBytes, ttlSecs, maxIdleSecs);
+        }
+        this.segmentMask = segmentsPow2 - 1;
+    }
+
+    /**
+     * Construct a cache with the given size in bytes, using Java serialization for values.
+     *
+     * @see #OffHeapSimpleCache(long, int, int, int, String, ValueSerializer)
+     */
+    public OffHeapSimpleCache(long maxBytes, int segmentCount, int ttlSecs, int maxIdleSecs, String cacheName)
+    {
+        this(maxBytes, segmentCount, ttlSecs, maxIdleSecs, cacheName, new JavaValueSerializer());
+    }
+
+    @Override
+    public boolean contains(K key)
+    {
+        byte[] keyBytes = encodeKey(key);
+        long hash = hash(keyBytes);
+        return segmentFor(hash).get(hash, keyBytes, now(), false) != null;
+    }
+
+    @Override
+    public Collection<K> getKeys()
+    {
+        List<byte[]> keyBytesList = new ArrayList<byte[]>();
+        for (Segment segment : segments)
+        {
+            segment.collectKeys(keyBytesList);
+        }
+        List<K> keys = new ArrayList<K>(keyBytesList.size());
+        for (byte[] keyBytes : keyBytesList)
+        {
+            keys.add(decodeKey(keyBytes));
+        }
+        return keys;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public V get(K key)
+    {
+        byte[] keyBytes = encodeKey(key);
+        long hash = hash(keyBytes);
+        byte[] valueBytes = segmentFor(hash).get(hash, keyBytes, now(), true);
+        if (valueBytes == null)
+        {
+            return null;
+        }
+        return (V) valueSerializer.deserialize(valueBytes);
+    }
+
+    @Override
+    public void put(K key, V value)
+    {
+        byte[] keyBytes = encodeKey(key);
+        byte[] valueBytes = valueSerializer.serialize(value);
+        long hash = hash(keyBytes);
+        segmentFor(hash).put(hash, keyBytes, valueBytes, now());
+    }
+
+    /**
+     * Keys are grouped by segment so that each segment is locked once for the whole batch.
+     * Keys are encoded and values decoded outside of the segment locks.
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public Map<K, V> getAll(Collection<K> keys)
+    {
+        List<List<K>> keysBySegment = new ArrayList<List<K>>(segments.length);
+        List<List<byte[]>> keyBytesBySegment = new ArrayList<List<byte[]>>(segments.length);
+        for (int i = 0; i < segments.length; i++)
+        {
+            keysBySegment.add(new ArrayList<K>());
+            keyBytesBySegment.add(new ArrayList<byte[]>());
+        }
+        for (K key : keys)
+        {
+            byte[] keyBytes = encodeKey(key);
+            int segmentIndex = ((int) (hash(keyBytes) >>> 32)) & segmentMask;
+            keysBySegment.get(segmentIndex).add(key);
+            keyBytesBySegment.get(segmentIndex).add(keyBytes);
+        }
+        int now = now();
+        Map<K, V> values = new HashMap<K, V>(keys.size() * 2);
+        for (int i = 0; i < segments.length; i++)
+        {
+            List<byte[]> segmentKeyBytes = keyBytesBySegment.get(i);
+            if (segmentKeyBytes.isEmpty())
+            {
+                continue;
+            }
+            byte[][] valueBytes = new byte[segmentKeyBytes.size()][];
+            Segment segment = segments[i];
+            synchronized (segment)
+            {
+                for (int j = 0; j < valueBytes.length; j++)
+                {
+                    byte[] keyBytes = segmentKeyBytes.get(j);
+                    valueBytes[j] = segment.get(hash(keyBytes), keyBytes, now, true);
+                }
+            }
+            List<K> segmentKeys = keysBySegment.get(i);
+            for (int j = 0; j < valueBytes.length; j++)
+            {
+                if (valueBytes[j] == null)
+                {
+                    continue;
+                }
+                V value = (V) valueSerializer.deserialize(valueBytes[j]);
+                if (value != null)
+                {
+                    values.put(segmentKeys.get(j), value);
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Entries are grouped by segment so that each segment is locked once for the whole batch.
+     */
+    @Override
+    public void putAll(Map<K, V> entries)
+    {
+        List<List<byte[]>> keyBytesBySegment = new ArrayList<List<byte[]>>(segments.length);
+        List<List<byte[]>> valueBytesBySegment = new ArrayList<List<byte[]>>(segments.length);
+        for (int i = 0; i < segments.length; i++)
+        {
+            keyBytesBySegment.add(new ArrayList<byte[]>());
+            valueBytesBySegment.add(new ArrayList<byte[]>());
+        }
+        for (Map.Entry<K, V> entry : entries.entrySet())
+        {
+            byte[] keyBytes = encodeKey(entry.getKey());
+            int segmentIndex = ((int) (hash(keyBytes) >>> 32)) & segmentMask;
+            keyBytesBySegment.get(segmentIndex).add(keyBytes);
+            valueBytesBySegment.get(segmentIndex).add(valueSerializer.serialize(entry.getValue()));
+        }
+        int now = now();
+        for (int i = 0; i < segments.length; i++)
+        {
+            List<byte[]> segmentKeyBytes = keyBytesBySegment.get(i);
+            if (segmentKeyBytes.isEmpty())
+            {
+                continue;
+            }
+            List<byte[]> segmentValueBytes = valueBytesBySegment.get(i);
+            Segment segment = segments[i];
+            synchronized (segment)
+            {
+                for (int j = 0; j < segmentKeyBytes.size(); j++)
+                {
+                    byte[] keyBytes = segmentKeyBytes.get(j);
+                    segment.put(hash(keyBytes), keyBytes, segmentValueBytes.get(j), now);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void remove(K key)
+    {
+        byte[] keyBytes = encodeKey(key);
+        long hash = hash(keyBytes);
+        segmentFor(hash).remove(hash, keyBytes);
+    }
+
+    @Override
+    public void clear()
+    {
+        for (Segment segment : segments)
+        {
+            segment.clear();
+        }
+    }
+
+    @Override
+    public long getSize()
+    {
+        long size = 0L;
+        for (Segment segment : segments)
+        {
+            size += segment.getCount();
+        }
+        return size;
+    }
+
+    @Override
+    public long getUsedBytes()
+    {
+        long usedBytes = 0L;
+        for (Segment segment : segments)
+        {
+            usedBytes += segment.getLiveBytes();
+        }
+        return usedBytes;
+    }
+
+    @Override
+    public long getMaxBytes()
+    {
+        return maxBytes;
+    }
+
+    @Override
+    public long getEvictionCount()
+    {
+        long evictions = 0L;
+        for (Segment segment : segments)
+        {
+            evictions += segment.getEvictions();
+        }
+        return evictions;
+    }
+
+    /**
+     * @return the number of independently locked segments
+     */
+    public int getSegmentCount()
+    {
+        return segments.length;
+    }
+
+    /**
+     * Get the time-to-live setting in seconds.
+     *
+     * @return ttlSecs
+     */
+    public int getTTLSecs()
+    {
+        return this.ttlSecs;
+    }
+
+    /**
+     * Get the time-to-idle setting in seconds.
+     *
+     * @return maxIdleSecs
+     */
+    public int getMaxIdleSecs()
+    {
+        return this.maxIdleSecs;
+    }
+
+    /**
+     * Retrieve the name of this cache.
+     *
+     * @return the cacheName
+     */
+    public String getCacheName()
+    {
+        return this.cacheName;
+    }
+
+    /**
+     * @param cacheName Set automatically by Spring, but can be set manually if required.
+     */
+    @Override
+    public void setBeanName(String cacheName)
+    {
+        this.cacheName = cacheName;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "OffHeapSimpleCache[maxBytes=" + maxBytes + ", segments=" + segments.length + ", cacheName=" + cacheName + "]";
+    }
+
+    private Segment segmentFor(long hash)
+    {
+        // The low bits are used by the segment index
+        return segments[((int) (hash >>> 32)) & segmentMask];
+    }
+
+    /**
+     * @return the number of seconds since the cache was created or 0 if entries do not expire
+     */
+    private int now()
+    {
+        if (ttlSecs <= 0 && maxIdleSecs <= 0)
+        {
+            return 0;
+        }
+        return (int) ((System.currentTimeMillis() - createdMillis) / 1000L);
+    }
+
+    /**
+     * 64-bit FNV-1a hash of the key bytes with a final avalanche step.
+     */
+    private static long hash(byte[] keyBytes)
+    {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : keyBytes)
+        {
+            h ^= (b & 0xff);
+            h *= 0x100000001b3L;
+        }
+        h ^= (h >>> 33);
+        h *= 0xff51afd7ed558ccdL;
+        h ^= (h >>> 33);
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= (h >>> 33);
+        return h;
+    }
+
+    private byte[] encodeKey(Serializable key)
+    {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(32);
+        DataOutputStream out = new DataOutputStream(bos);
+        try
+        {
+            writeKey(out, key);
+            out.flush();
+        }
+        catch (IOException e)
+        {
+            throw new AlfrescoRuntimeException("Failed to encode cache key: " + key, e);
+        }
+        return bos.toByteArray();
+    }
+
+    private void writeKey(DataOutputStream out, Serializable key) throws IOException
+    {
+        if (key instanceof Long)
+        {
+            out.writeByte(KEY_LONG);
+            out.writeLong((Long) key);
+        }
+        else if (key instanceof String && ((String) key).length() <= MAX_COMPACT_STRING_LENGTH)
+        {
+            out.writeByte(KEY_STRING);
+            out.writeUTF((String) key);
+        }
+        else if (key instanceof CacheRegionKey)
+        {
+            CacheRegionKey regionKey = (CacheRegionKey) key;
+            out.writeByte(KEY_REGION);
+            out.writeUTF(regionKey.getCacheRegion());
+            writeKey(out, regionKey.getCacheKey());
+        }
+        else if (key instanceof CacheRegionValueKey)
+        {
+            CacheRegionValueKey regionValueKey = (CacheRegionValueKey) key;
+            out.writeByte(KEY_REGION_VALUE);
+            out.writeUTF(regionValueKey.getCacheRegion());
+            writeKey(out, regionValueKey.getCacheValueKey());
+        }
+        else if (key instanceof TransactionalCache.CacheRegionKey)
+        {
+            TransactionalCache.CacheRegionKey tenantKey = (TransactionalCache.CacheRegionKey) key;
+            out.writeByte(KEY_TENANT_REGION);
+            out.writeUTF(tenantKey.getCacheRegion());
+            writeKey(out, tenantKey.getCacheKey());
+        }
+        else if (key instanceof NodeVersionKey
+                && ((NodeVersionKey) key).getNodeId() != null
+                && ((NodeVersionKey) key).getVersion() != null)
+        {
+            NodeVersionKey nodeVersionKey = (NodeVersionKey) key;
+            out.writeByte(KEY_NODE_VERSION);
+            out.writeLong(nodeVersionKey.getNodeId());
+            out.writeLong(nodeVersionKey.getVersion());
+        }
+        else
+        {
+            byte[] bytes = new JavaValueSerializer().serialize(key);
+            out.writeByte(KEY_SERIALIZED);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private K decodeKey(byte[] keyBytes)
+    {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(keyBytes));
+        try
+        {
+            return (K) readKey(in);
+        }
+        catch (IOException e)
+        {
+            throw new AlfrescoRuntimeException("Failed to decode cache key", e);
+        }
+    }
+
+    private Serializable readKey(DataInputStream in) throws IOException
+    {
+        byte type = in.readByte();
+        switch (type)
+        {
+            case KEY_LONG:
+                return in.readLong();
+            case KEY_STRING:
+                return in.readUTF();
+            case KEY_REGION:
+                return new CacheRegionKey(in.readUTF(), readKey(in));
+            case KEY_REGION_VALUE:
+                return new CacheRegionValueKey(in.readUTF(), readKey(in));
+            case KEY_TENANT_REGION:
+                return new TransactionalCache.CacheRegionKey(in.readUTF(), readKey(in));
+            case KEY_NODE_VERSION:
+                return new NodeVersionKey(in.readLong(), in.readLong());
+            case KEY_SERIALIZED:
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                return (Serializable) new JavaValueSerializer().deserialize(bytes);
+            default:
+                throw new IOException("Unknown cache key type: " + type);
+        }
+    }
+
+    /**
+     * A circular log of entries held in a single direct buffer, along with the index into it.
+     * <p>
+     * Entry layout: flags (1 byte), key length (4), value length (4), key hash (8),
+     * write time (4), access time (4), key bytes, value bytes.  The unusable space at the
+     * end of the buffer, when the log wraps, is marked as padding.
+     * <p>
+     * All access is synchronized on the segment.
+     */
+    private static final class Segment
+    {
+        private static final int FLAGS_OFFSET = 0;
+        private static final int KEY_LENGTH_OFFSET = 1;
+        private static final int VALUE_LENGTH_OFFSET = 5;
+        private static final int HASH_OFFSET = 9;
+        private static final int WRITE_TIME_OFFSET = 17;
+        private static final int ACCESS_TIME_OFFSET = 21;
+        private static final int HEADER_SIZE = 25;
+
+        private static final byte FLAG_DEAD = 0;
+        private static final byte FLAG_LIVE = 1;
+        private static final byte FLAG_ACCESSED = 2;
+        private static final byte FLAG_PAD = 4;
+
+        private static final int EMPTY = -1;
+        private static final int INITIAL_INDEX_SIZE = 1024;
+        /** The number of recently-read entries that may be moved to the head of the log per write */
+        private static final int MAX_SECOND_CHANCES = 16;
+
+        private final ByteBuffer data;
+        private final int capacity;
+        private final int ttlSecs;
+        private final int maxIdleSecs;
+        /** Position at which the next entry will be written */
+        private int head;
+        /** Position of the oldest entry */
+        private int tail;
+        /** Bytes between tail and head, including dead entries and padding */
+        private int used;
+        /** Bytes used by live entries */
+        private long liveBytes;
+        private int count;
+        private long evictions;
+
+        private long[] hashes;
+        private int[] offsets;
+        private int indexMask;
+        private int indexThreshold;
+
+        private Segment(int capacity, int ttlSecs, int maxIdleSecs)
+        {
+            this.capacity = capacity;
+            this.ttlSecs = ttlSecs;
+            this.maxIdleSecs = maxIdleSecs;
+            this.data = ByteBuffer.allocateDirect(capacity);
+            initIndex(INITIAL_INDEX_SIZE);
+        }
+
+        private void initIndex(int size)
+        {
+            hashes = new long[size];
+            offsets = new int[size];
+            Arrays.fill(offsets, EMPTY);
+            indexMask = size - 1;
+            indexThreshold = (int) (size * 0.75);
+        }
+
+        private synchronized int getCount()
+        {
+            return count;
+        }
+
+        private synchronized long getLiveBytes()
+        {
+            return liveBytes;
+        }
+
+        private synchronized long getEvictions()
+        {
+            return evictions;
+        }
+
+        /**
+         * @param now           the current time in seconds
+         * @param markAccessed  <tt>true</tt> to record the read against the entry
+         * @return              a copy of the value bytes or <tt>null</tt> if there is no live entry for the key
+         */
+        private synchronized byte[] get(long hash, byte[] keyBytes, int now, boolean markAccessed)
+        {
+            int slot = findSlot(hash, keyBytes);
+            if (slot == EMPTY)
+            {
+                return null;
+            }
+            int pos = offsets[slot];
+            if (isExpired(pos, now))
+            {
+                removeSlot(slot);
+                return null;
+            }
+            if (markAccessed)
+            {
+                data.put(pos + FLAGS_OFFSET, (byte) (FLAG_LIVE | FLAG_ACCESSED));
+                data.putInt(pos + ACCESS_TIME_OFFSET, now);
+            }
+            int keyLength = data.getInt(pos + KEY_LENGTH_OFFSET);
+            byte[] valueBytes = new byte[data.getInt(pos + VALUE_LENGTH_OFFSET)];
+            data.position(pos + HEADER_SIZE + keyLength);
+            data.get(valueBytes);
+            return valueBytes;
+        }
+
+        private synchronized void put(long hash, byte[] keyBytes, byte[] valueBytes, int now)
+        {
+            int existing = findSlot(hash, keyBytes);
+            if (existing != EMPTY)
+            {
+                removeSlot(existing);
+            }
+            long size = (long) HEADER_SIZE + keyBytes.length + valueBytes.length;
+            if (size > capacity)
+            {
+                // The entry can never fit; behave as if it was evicted immediately
+                evictions++;
+                return;
+            }
+            int entrySize = (int) size;
+            makeRoom(entrySize);
+
+            int pos = head;
+            data.put(pos + FLAGS_OFFSET, FLAG_LIVE);
+            data.putInt(pos + KEY_LENGTH_OFFSET, keyBytes.length);
+            data.putInt(pos + VALUE_LENGTH_OFFSET, valueBytes.length);
+            data.putLong(pos + HASH_OFFSET, hash);
+            data.putInt(pos + WRITE_TIME_OFFSET, now);
+            data.putInt(pos + ACCESS_TIME_OFFSET, now);
+            data.position(pos + HEADER_SIZE);
+            data.put(keyBytes);
+            data.put(valueBytes);
+            advanceHead(entrySize);
+
+            insertSlot(hash, pos);
+            liveBytes += entrySize;
+        }
+
+        private synchronized void remove(long hash, byte[] keyBytes)
+        {
+            int slot = findSlot(hash, keyBytes);
+            if (slot != EMPTY)
+            {
+                removeSlot(slot);
+            }
+        }
+
+        private synchronized void clear()
+        {
+            head = 0;
+            tail = 0;
+            used = 0;
+            liveBytes = 0L;
+            count = 0;
+            initIndex(INITIAL_INDEX_SIZE);
+        }
+
+        private synchronized void collectKeys(List<byte[]> keys)
+        {
+            for (int i = 0; i < offsets.length; i++)
+            {
+                int pos = offsets[i];
+                if (pos != EMPTY)
+                {
+                    byte[] keyBytes = new byte[data.getInt(pos + KEY_LENGTH_OFFSET)];
+                    data.position(pos + HEADER_SIZE);
+                    data.get(keyBytes);
+                    keys.add(keyBytes);
+                }
+            }
+        }
+
+        /**
+         * Times are held to the second, so entries live for up to a second longer than configured.
+         */
+        private boolean isExpired(int pos, int now)
+        {
+            if (ttlSecs > 0 && now - data.getInt(pos + WRITE_TIME_OFFSET) > ttlSecs)
+            {
+                return true;
+            }
+            if (maxIdleSecs > 0 && now - data.getInt(pos + ACCESS_TIME_OFFSET) > maxIdleSecs)
+            {
+                return true;
+            }
+            return false;
+        }
+
+        private int entrySize(int pos)
+        {
+            return HEADER_SIZE + data.getInt(pos + KEY_LENGTH_OFFSET) + data.getInt(pos + VALUE_LENGTH_OFFSET);
+        }
+
+        private void advanceHead(int size)
+        {
+            head += size;
+            used += size;
+            if (head == capacity)
+            {
+                head = 0;
+            }
+        }
+
+        private void advanceTail(int size)
+        {
+            tail += size;
+            used -= size;
+            if (tail == capacity)
+            {
+                tail = 0;
+            }
+        }
+
+        /**
+         * Ensure that there are at least <tt>size</tt> contiguous free bytes at the head of the log.
+         */
+        private void makeRoom(int size)
+        {
+            int secondChances = 0;
+            while (true)
+            {
+                if (used == 0)
+                {
+                    head = 0;
+                    tail = 0;
+                    return;
+                }
+                if (tail < head)
+                {
+                    // Free space runs from the head to the end of the buffer (and from the start to the tail)
+                    if (capacity - head >= size)
+                    {
+                        return;
+                    }
+                    // Pad out the end of the buffer and wrap around
+                    int padding = capacity - head;
+                    if (padding > 0)
+                    {
+                        data.put(head + FLAGS_OFFSET, FLAG_PAD);
+                    }
+                    used += padding;
+                    head = 0;
+                }
+                else
+                {
+                    // Free space runs from the head to the tail
+                    if (tail - head >= size)
+                    {
+                        return;
+                    }
+                    evictTail(secondChances++ < MAX_SECOND_CHANCES);
+                }
+            }
+        }
+
+        /**
+         * Reclaim the space used by the entry at the tail of the log.  Must only be called when the
+         * free space runs from the head to the tail, which guarantees that a moved entry fits at the head.
+         */
+        private void evictTail(boolean allowSecondChance)
+        {
+            if (capacity - tail < HEADER_SIZE || data.get(tail + FLAGS_OFFSET) == FLAG_PAD)
+            {
+                advanceTail(capacity - tail);
+                return;
+            }
+            int pos = tail;
+            int size = entrySize(pos);
+            byte flags = data.get(pos + FLAGS_OFFSET);
+            if ((flags & FLAG_LIVE) != 0)
+            {
+                long hash = data.getLong(pos + HASH_OFFSET);
+                int slot = slotForOffset(hash, pos);
+                if (allowSecondChance && (flags & FLAG_ACCESSED) != 0)
+                {
+                    // The entry has been read since it was last moved: give it another pass around the log
+                    byte[] entry = new byte[size];
+                    data.position(pos);
+                    data.get(entry);
+                    advanceTail(size);
+                    int newPos = head;
+                    data.position(newPos);
+                    data.put(entry);
+                    data.put(newPos + FLAGS_OFFSET, FLAG_LIVE);
+                    advanceHead(size);
+                    offsets[slot] = newPos;
+                    return;
+                }
+                deleteSlot(slot);
+                count--;
+                liveBytes -= size;
+                evictions++;
+            }
+            advanceTail(size);
+        }
+
+        private int findSlot(long hash, byte[] keyBytes)
+        {
+            int i = (int) hash & indexMask;
+            while (true)
+            {
+                int pos = offsets[i];
+                if (pos == EMPTY)
+                {
+                    return EMPTY;
+                }
+                if (hashes[i] == hash && keyEquals(pos, keyBytes))
+                {
+                    return i;
+                }
+                i = (i + 1) & indexMask;
+            }
+        }
+
+        private int slotForOffset(long hash, int pos)
+        {
+            int i = (int) hash & indexMask;
+            while (offsets[i] != pos)
+            {
+                i = (i + 1) & indexMask;
+            }
+            return i;
+        }
+
+        private boolean keyEquals(int pos, byte[] keyBytes)
+        {
+            if (data.getInt(pos + KEY_LENGTH_OFFSET) != keyBytes.length)
+            {
+                return false;
+            }
+            int keyPos = pos + HEADER_SIZE;
+            for (int i = 0; i < keyBytes.length; i++)
+            {
+                if (data.get(keyPos + i) != keyBytes[i])
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void insertSlot(long hash, int pos)
+        {
+            if (count + 1 > indexThreshold)
+            {
+                resizeIndex();
+            }
+            int i = (int) hash & indexMask;
+            while (offsets[i] != EMPTY)
+            {
+                i = (i + 1) & indexMask;
+            }
+            hashes[i] = hash;
+            offsets[i] = pos;
+            count++;
+        }
+
+        private void resizeIndex()
+        {
+            long[] oldHashes = hashes;
+            int[] oldOffsets = offsets;
+            initIndex(oldOffsets.length * 2);
+            for (int j = 0; j < oldOffsets.length; j++)
+            {
+                if (oldOffsets[j] != EMPTY)
+                {
+                    int i = (int) oldHashes[j] & indexMask;
+                    while (offsets[i] != EMPTY)
+                    {
+                        i = (i + 1) & indexMask;
+                    }
+                    hashes[i] = oldHashes[j];
+                    offsets[i] = oldOffsets[j];
+                }
+            }
+        }
+
+        /**
+         * Remove a live entry: the entry is marked as dead and its space is reclaimed when the
+         * tail of the log reaches it.
+         */
+        private void removeSlot(int slot)
+        {
+            int pos = offsets[slot];
+            data.put(pos + FLAGS_OFFSET, FLAG_DEAD);
+            liveBytes -= entrySize(pos);
+            count--;
+            deleteSlot(slot);
+        }
+
+        /**
+         * Remove an index slot, shifting back any following entries of the probe sequence.
+         */
+        private void deleteSlot(int slot)
+        {
+            int i = slot;
+            int j = slot;
+            while (true)
+            {
+                j = (j + 1) & indexMask;
+                if (offsets[j] == EMPTY)
+                {
+                    break;
+                }
+                int ideal = (int) hashes[j] & indexMask;
+                // The entry at j may only move back to i if its ideal slot is not cyclically within (i, j]
+                boolean stays = (i <= j) ? (i < ideal && ideal <= j) : (i < ideal || ideal <= j);
+                if (!stays)
+                {
+                    hashes[i] = hashes[j];
+                    offsets[i] = offsets[j];
+                    i = j;
+                }
+            }
+            hashes[i] = 0L;
+            offsets[i] = EMPTY;
+        }
+    }
+}
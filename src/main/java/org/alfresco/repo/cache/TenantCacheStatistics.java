@@ -0,0 +1,143 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import java.util.Map;
+import java.util.Set;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import org.alfresco.repo.cache.TenantPartitionedSimpleCache.PartitionStats;
+import org.alfresco.repo.management.DynamicMBeanExportOperations;
+import org.alfresco.repo.tenant.TenantService;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Exposes the figures of each tenant for the caches that are {@link TenantPartitionedSimpleCache
+ * partitioned by tenant} through JMX.  The figures are those of {@link CacheStatistics#tenantStats(String)},
+ * so they are only available for caches whose {@link TransactionalCache} has statistics enabled.
+ *
+ * @since 7.110
+ */
+public class TenantCacheStatistics implements TenantCacheStatisticsMBean
+{
+    private static final Log logger = LogFactory.getLog(TenantCacheStatistics.class);
+
+    private CacheStatistics cacheStatistics;
+    private DynamicMBeanExportOperations mbeanExporter;
+    private String objectName;
+    private ObjectName registeredObjectName;
+
+    public void setCacheStatistics(CacheStatistics cacheStatistics)
+    {
+        this.cacheStatistics = cacheStatistics;
+    }
+
+    /**
+     * @param mbeanExporter     optional exporter used to register the MBean
+     */
+    public void setMbeanExporter(DynamicMBeanExportOperations mbeanExporter)
+    {
+        this.mbeanExporter = mbeanExporter;
+    }
+
+    /**
+     * @param objectName        the name under which the MBean is registered
+     */
+    public void setObjectName(String objectName)
+    {
+        this.objectName = objectName;
+    }
+
+    /**
+     * Registers the MBean, if an exporter and object name are given
+     */
+    public synchronized void init()
+    {
+        if (mbeanExporter == null || objectName == null)
+        {
+            return;
+        }
+        try
+        {
+            registeredObjectName = mbeanExporter.registerMBean(this, new ObjectName(objectName));
+        }
+        catch (MalformedObjectNameException e)
+        {
+            logger.warn("Invalid object name for the tenant cache statistics MBean: " + objectName, e);
+        }
+    }
+
+    /**
+     * Unregisters the MBean
+     */
+    public synchronized void destroy()
+    {
+        if (registeredObjectName != null)
+        {
+            mbeanExporter.unregisterMBean(registeredObjectName);
+            registeredObjectName = null;
+        }
+    }
+
+    @Override
+    public String[] getTenantPartitionedCaches()
+    {
+        Set<String> cacheNames = cacheStatistics.tenantPartitionedCacheNames();
+        return cacheNames.toArray(new String[cacheNames.size()]);
+    }
+
+    @Override
+    public String[] getTenantStats(String cacheName)
+    {
+        Map<String, PartitionStats> tenantStats;
+        try
+        {
+            tenantStats = cacheStatistics.tenantStats(cacheName);
+        }
+        catch (NoStatsForCache e)
+        {
+            return new String[0];
+        }
+        String[] lines = new String[tenantStats.size()];
+        int i = 0;
+        for (PartitionStats stats : tenantStats.values())
+        {
+            String tenantDomain = stats.getTenantDomain();
+            lines[i++] = (TenantService.DEFAULT_DOMAIN.equals(tenantDomain) ? "default" : tenantDomain) +
+                    ": size=" + stats.getSize() +
+                    ", minItems=" + stats.getMinItems() +
+                    ", maxItems=" + stats.getMaxItems() +
+                    ", hits=" + stats.getHits() +
+                    ", misses=" + stats.getMisses() +
+                    String.format(", hitRatio=%.3f", stats.getHitRatio()) +
+                    ", evictions=" + stats.getEvictions();
+        }
+        return lines;
+    }
+}
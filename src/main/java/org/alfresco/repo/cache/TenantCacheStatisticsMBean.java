@@ -0,0 +1,47 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+/**
+ * Management interface for {@link TenantCacheStatistics}, reporting the figures of each tenant
+ * for the caches that are {@link TenantPartitionedSimpleCache partitioned by tenant}.
+ *
+ * @since 7.110
+ */
+public interface TenantCacheStatisticsMBean
+{
+    /**
+     * @return the names of the caches for which figures are kept by tenant
+     */
+    String[] getTenantPartitionedCaches();
+
+    /**
+     * @param cacheName the name of a cache partitioned by tenant
+     * @return one line per tenant giving its size, quota, hits, misses, hit ratio and evictions,
+     *         or no lines if the cache is not partitioned by tenant
+     */
+    String[] getTenantStats(String cacheName);
+}
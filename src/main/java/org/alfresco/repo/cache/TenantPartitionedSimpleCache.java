@@ -0,0 +1,470 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.repo.tenant.TenantService;
+import org.springframework.beans.factory.BeanNameAware;
+
+/**
+ * {@link SimpleCache} implementation that holds the entries of each tenant in a separate,
+ * bounded partition so that a busy tenant cannot evict the entries of the other tenants.
+ * <p>
+ * The tenant is taken from the key: a {@link TransactionalCache} that is
+ * {@link TransactionalCache#setTenantAware(boolean) tenant-aware} wraps the keys of all but the
+ * default domain in a {@link TransactionalCache.CacheRegionKey} naming the tenant domain.
+ * <p>
+ * The cache as a whole holds at most <tt>maxItems</tt> entries.  Each tenant is guaranteed room
+ * for <tt>tenantMinItems</tt> entries and may hold at most <tt>tenantMaxItems</tt> entries.
+ * Capacity not used by a tenant is lent to the others: when the cache is full, the entry that
+ * is evicted is the least recently used entry of the tenant that is furthest beyond its
+ * guaranteed share.  Hit and miss counts are kept for each tenant; see {@link #getPartitionStats()}.
+ * Where statistics are enabled for the {@link TransactionalCache}, the figures are also available
+ * through {@link CacheStatistics#tenantStats(String)} and JMX.
+ * <p>
+ * Entries do not expire.
+ *
+ * @since 7.110
+ */
+public final class TenantPartitionedSimpleCache<K extends Serializable, V>
+    implements SimpleCache<K, V>, CacheSizeStats, BeanNameAware
+{
+    private final int maxItems;
+    private final int tenantMinItems;
+    private final int tenantMaxItems;
+    private String cacheName;
+
+    private final ConcurrentMap<String, Partition> partitions = new ConcurrentHashMap<String, Partition>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * @param maxItems          the capacity of the cache as a whole (must be positive)
+     * @param tenantMinItems    the number of entries guaranteed to each tenant
+     * @param tenantMaxItems    the maximum number of entries of any one tenant; 0 to use <tt>maxItems</tt>
+     * @param cacheName         an arbitrary cache name
+     */
+    public TenantPartitionedSimpleCache(int maxItems, int tenantMinItems, int tenantMaxItems, String cacheName)
+    {
+        if (maxItems <= 0)
+        {
+            throw new IllegalArgumentException("maxItems must be positive, but was " + maxItems);
+        }
+        if (tenantMinItems < 0 || tenantMaxItems < 0)
+        {
+            throw new IllegalArgumentException(
+                    "Tenant limits may not be negative: min=" + tenantMinItems + ", max=" + tenantMaxItems);
+        }
+        this.maxItems = maxItems;
+        this.tenantMaxItems = (tenantMaxItems == 0) ? maxItems : Math.min(tenantMaxItems, maxItems);
+        this.tenantMinItems = Math.min(tenantMinItems, this.tenantMaxItems);
+        this.cacheName = cacheName;
+    }
+
+    /**
+     * @return the tenant domain that the key belongs to
+     */
+    private static String getTenantDomain(Serializable key)
+    {
+        if (key instanceof TransactionalCache.CacheRegionKey)
+        {
+            return ((TransactionalCache.CacheRegionKey) key).getCacheRegion();
+        }
+        return TenantService.DEFAULT_DOMAIN;
+    }
+
+    private Partition getPartition(K key, boolean create)
+    {
+        String tenantDomain = getTenantDomain(key);
+        Partition partition = partitions.get(tenantDomain);
+        if (partition == null && create)
+        {
+            partition = new Partition(tenantDomain);
+            Partition existing = partitions.putIfAbsent(tenantDomain, partition);
+            if (existing != null)
+            {
+                partition = existing;
+            }
+        }
+        return partition;
+    }
+
+    @Override
+    public boolean contains(K key)
+    {
+        Partition partition = getPartition(key, false);
+        if (partition == null)
+        {
+            return false;
+        }
+        synchronized (partition)
+        {
+            return partition.entries.containsKey(key);
+        }
+    }
+
+    @Override
+    public Collection<K> getKeys()
+    {
+        List<K> keys = new ArrayList<K>(size.get());
+        for (Partition partition : partitions.values())
+        {
+            synchronized (partition)
+            {
+                keys.addAll(partition.entries.keySet());
+            }
+        }
+        return keys;
+    }
+
+    @Override
+    public V get(K key)
+    {
+        Partition partition = getPartition(key, false);
+        if (partition == null)
+        {
+            return null;
+        }
+        synchronized (partition)
+        {
+            V value = partition.entries.get(key);
+            if (value != null || partition.entries.containsKey(key))
+            {
+                partition.hits++;
+            }
+            else
+            {
+                partition.misses++;
+            }
+            return value;
+        }
+    }
+
+    @Override
+    public void put(K key, V value)
+    {
+        Partition partition = getPartition(key, true);
+        synchronized (partition)
+        {
+            boolean added = !partition.entries.containsKey(key);
+            partition.entries.put(key, value);
+            if (added)
+            {
+                size.incrementAndGet();
+                partition.count = partition.entries.size();
+                // Keep within the tenant's own bound
+                if (partition.count > tenantMaxItems)
+                {
+                    partition.evictEldest();
+                }
+            }
+        }
+        // Keep within the overall bound, taking entries from the tenants using borrowed capacity
+        while (size.get() > maxItems)
+        {
+            Partition victim = chooseVictim(partition);
+            if (victim == null)
+            {
+                break;
+            }
+            synchronized (victim)
+            {
+                victim.evictEldest();
+            }
+        }
+    }
+
+    /**
+     * Choose the partition to evict from: the one furthest beyond the guaranteed size or, if no
+     * partition is beyond it, the partition that has just been written to.
+     */
+    private Partition chooseVictim(Partition written)
+    {
+        Partition victim = null;
+        int victimExcess = 0;
+        for (Partition partition : partitions.values())
+        {
+            int excess = partition.count - tenantMinItems;
+            if (excess > victimExcess)
+            {
+                victim = partition;
+                victimExcess = excess;
+            }
+        }
+        if (victim == null && written.count > 0)
+        {
+            victim = written;
+        }
+        return victim;
+    }
+
+    @Override
+    public void remove(K key)
+    {
+        Partition partition = getPartition(key, false);
+        if (partition == null)
+        {
+            return;
+        }
+        synchronized (partition)
+        {
+            if (partition.entries.containsKey(key))
+            {
+                partition.entries.remove(key);
+                partition.count = partition.entries.size();
+                size.decrementAndGet();
+            }
+        }
+    }
+
+    @Override
+    public void clear()
+    {
+        for (Partition partition : partitions.values())
+        {
+            synchronized (partition)
+            {
+                size.addAndGet(-partition.entries.size());
+                partition.entries.clear();
+                partition.count = 0;
+            }
+        }
+    }
+
+    @Override
+    public long getSize()
+    {
+        return size.get();
+    }
+
+    /**
+     * @return <tt>-1</tt> as the cache is bounded by the number of entries
+     */
+    @Override
+    public long getUsedBytes()
+    {
+        return -1L;
+    }
+
+    /**
+     * @return <tt>-1</tt> as the cache is bounded by the number of entries
+     */
+    @Override
+    public long getMaxBytes()
+    {
+        return -1L;
+    }
+
+    @Override
+    public long getEvictionCount()
+    {
+        return evictionCount.get();
+    }
+
+    /**
+     * Get a snapshot of the figures for each tenant that has used the cache
+     *
+     * @return the figures keyed by tenant domain, where the default domain is an empty string
+     */
+    public Map<String, PartitionStats> getPartitionStats()
+    {
+        Map<String, PartitionStats> stats = new TreeMap<String, PartitionStats>();
+        for (Partition partition : partitions.values())
+        {
+            synchronized (partition)
+            {
+                stats.put(partition.tenantDomain, new PartitionStats(
+                        partition.tenantDomain, partition.count, tenantMinItems, tenantMaxItems,
+                        partition.hits, partition.misses, partition.evictions));
+            }
+        }
+        return stats;
+    }
+
+    public int getMaxItems()
+    {
+        return maxItems;
+    }
+
+    public int getTenantMinItems()
+    {
+        return tenantMinItems;
+    }
+
+    public int getTenantMaxItems()
+    {
+        return tenantMaxItems;
+    }
+
+    public String getCacheName()
+    {
+        return cacheName;
+    }
+
+    @Override
+    public void setBeanName(String cacheName)
+    {
+        this.cacheName = cacheName;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "TenantPartitionedSimpleCache[maxItems=" + maxItems +
+                ", tenantMinItems=" + tenantMinItems + ", tenantMaxItems=" + tenantMaxItems +
+                ", cacheName=" + cacheName + "]";
+    }
+
+    /**
+     * The entries of one tenant, in least recently used order.  All access is synchronized
+     * on the partition apart from reads of the count, which are used to choose a partition
+     * to evict from.
+     */
+    private final class Partition
+    {
+        private final String tenantDomain;
+        private final LinkedHashMap<K, V> entries = new LinkedHashMap<K, V>(16, 0.75f, true);
+        private volatile int count;
+        private long hits;
+        private long misses;
+        private long evictions;
+
+        private Partition(String tenantDomain)
+        {
+            this.tenantDomain = tenantDomain;
+        }
+
+        private void evictEldest()
+        {
+            Iterator<K> iterator = entries.keySet().iterator();
+            if (iterator.hasNext())
+            {
+                iterator.next();
+                iterator.remove();
+                evictions++;
+                evictionCount.incrementAndGet();
+                size.decrementAndGet();
+            }
+            count = entries.size();
+        }
+    }
+
+    /**
+     * The figures for the entries of one tenant
+     */
+    public static final class PartitionStats
+    {
+        private final String tenantDomain;
+        private final int size;
+        private final int minItems;
+        private final int maxItems;
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+
+        private PartitionStats(
+                String tenantDomain, int size, int minItems, int maxItems, long hits, long misses, long evictions)
+        {
+            this.tenantDomain = tenantDomain;
+            this.size = size;
+            this.minItems = minItems;
+            this.maxItems = maxItems;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+        }
+
+        public String getTenantDomain()
+        {
+            return tenantDomain;
+        }
+
+        public int getSize()
+        {
+            return size;
+        }
+
+        /**
+         * @return the number of entries guaranteed to the tenant
+         */
+        public int getMinItems()
+        {
+            return minItems;
+        }
+
+        /**
+         * @return the maximum number of entries that the tenant may hold
+         */
+        public int getMaxItems()
+        {
+            return maxItems;
+        }
+
+        public long getHits()
+        {
+            return hits;
+        }
+
+        public long getMisses()
+        {
+            return misses;
+        }
+
+        public long getEvictions()
+        {
+            return evictions;
+        }
+
+        /**
+         * @return the proportion of gets that found an entry, or <tt>0</tt> if there have been no gets
+         */
+        public double getHitRatio()
+        {
+            long gets = hits + misses;
+            return (gets == 0L) ? 0.0 : (double) hits / gets;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "PartitionStats[tenantDomain=" + tenantDomain + ", size=" + size +
+                    ", minItems=" + minItems + ", maxItems=" + maxItems +
+                    ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + "]";
+        }
+    }
+}
@@ -0,0 +1,482 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.BeanNameAware;
+
+/**
+ * {@link SimpleCache} implementation with a W-TinyLFU eviction policy, which keeps the frequently
+ * used entries of a cache when it is swept by keys that are used only once, such as those of a
+ * hierarchy walk, a bulk export or an index rebuild.
+ * <p>
+ * New entries go into a small LRU <i>window</i>.  An entry leaving the window is admitted to
+ * the <i>main</i> area only if it has been used more often recently than the entry that would
+ * be evicted to make room for it; the recent frequencies are held in a {@link FrequencySketch}.
+ * The main area is a segmented LRU: entries used again while on <i>probation</i> are moved to the
+ * <i>protected</i> segment.
+ * <p>
+ * The cache is divided into independently locked segments, each with its own window, main
+ * area and sketch.  Entries that have expired are removed when they are next read.
+ *
+ * @since 7.110
+ */
+public final class TinyLfuSimpleCache<K extends Serializable, V>
+    implements BulkCache<K, V>, CacheSizeStats, BeanNameAware
+{
+    /** The percentage of the capacity given to the window */
+    private static final int WINDOW_PERCENT = 1;
+    /** The percentage of the main area given to the protected segment */
+    private static final int PROTECTED_PERCENT = 80;
+    /** The maximum number of segments; fewer are used for small caches */
+    private static final int MAX_SEGMENTS = 16;
+
+    private final int maxItems;
+    private final int ttlSecs;
+    private final int maxIdleSecs;
+    private String cacheName;
+    private final Segment<K, V>[] segments;
+    private final int segmentMask;
+
+    /**
+     * @param maxItems          the capacity of the cache (must be positive)
+     * @param ttlSecs           the time-to-live of entries or 0 for no limit
+     * @param maxIdleSecs       the time-to-idle of entries or 0 for no limit
+     * @param cacheName         an arbitrary cache name
+     */
+    @SuppressWarnings("unchecked")
+    public TinyLfuSimpleCache(int maxItems, int ttlSecs, int maxIdleSecs, String cacheName)
+    {
+        if (maxItems <= 0)
+        {
+            throw new IllegalArgumentException("maxItems must be positive, but was " + maxItems);
+        }
+        this.maxItems = maxItems;
+        this.ttlSecs = ttlSecs;
+        this.maxIdleSecs = maxIdleSecs;
+        this.cacheName = cacheName;
+
+        // Keep at least a thousand entries per segment so that the windows are useful
+        int segmentCount = 1;
+        while (segmentCount < MAX_SEGMENTS && maxItems / (segmentCount * 2) >= 1000)
+        {
+            segmentCount *= 2;
+        }
+        this.segmentMask = segmentCount - 1;
+        this.segments = new Segment[segmentCount];
+        int segmentCapacity = (maxItems + segmentCount - 1) / segmentCount;
+        for (int i = 0; i < segmentCount; i++)
+        {
+            segments[i] = new Segment<K, V>(segmentCapacity);
+        }
+    }
+
+    private Segment<K, V> segmentFor(Object key)
+    {
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        return segments[hash & segmentMask];
+    }
+
+    private boolean isExpired(Entry<V> entry, long now)
+    {
+        return (ttlSecs > 0 && now - entry.created > ttlSecs * 1000L)
+                || (maxIdleSecs > 0 && now - entry.accessed > maxIdleSecs * 1000L);
+    }
+
+    @Override
+    public boolean contains(K key)
+    {
+        Segment<K, V> segment = segmentFor(key);
+        long now = System.currentTimeMillis();
+        synchronized (segment)
+        {
+            Entry<V> entry = segment.find(key);
+            return entry != null && !isExpired(entry, now);
+        }
+    }
+
+    @Override
+    public Collection<K> getKeys()
+    {
+        List<K> keys = new ArrayList<K>(maxItems > 1024 ? 1024 : maxItems);
+        for (Segment<K, V> segment : segments)
+        {
+            synchronized (segment)
+            {
+                keys.addAll(segment.window.keySet());
+                keys.addAll(segment.probation.keySet());
+                keys.addAll(segment.protect.keySet());
+            }
+        }
+        return keys;
+    }
+
+    @Override
+    public V get(K key)
+    {
+        Segment<K, V> segment = segmentFor(key);
+        long now = System.currentTimeMillis();
+        synchronized (segment)
+        {
+            segment.sketch.increment(key);
+            Entry<V> entry = segment.access(key);
+            if (entry == null)
+            {
+                return null;
+            }
+            if (isExpired(entry, now))
+            {
+                segment.remove(key);
+                return null;
+            }
+            entry.accessed = now;
+            return entry.value;
+        }
+    }
+
+    @Override
+    public Map<K, V> getAll(Collection<K> keys)
+    {
+        Map<K, V> values = new HashMap<K, V>(keys.size() * 2);
+        for (K key : keys)
+        {
+            V value = get(key);
+            if (value != null)
+            {
+                values.put(key, value);
+            }
+        }
+        return values;
+    }
+
+    @Override
+    public void put(K key, V value)
+    {
+        Segment<K, V> segment = segmentFor(key);
+        long now = System.currentTimeMillis();
+        synchronized (segment)
+        {
+            segment.sketch.increment(key);
+            Entry<V> entry = segment.access(key);
+            if (entry != null)
+            {
+                entry.value = value;
+                entry.created = now;
+                entry.accessed = now;
+                return;
+            }
+            segment.window.put(key, new Entry<V>(value, now));
+            segment.evictFromWindow();
+        }
+    }
+
+    @Override
+    public void putAll(Map<K, V> entries)
+    {
+        for (Map.Entry<K, V> entry : entries.entrySet())
+        {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public void remove(K key)
+    {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment)
+        {
+            segment.remove(key);
+        }
+    }
+
+    @Override
+    public void clear()
+    {
+        for (Segment<K, V> segment : segments)
+        {
+            synchronized (segment)
+            {
+                segment.window.clear();
+                segment.probation.clear();
+                segment.protect.clear();
+            }
+        }
+    }
+
+    @Override
+    public long getSize()
+    {
+        long size = 0L;
+        for (Segment<K, V> segment : segments)
+        {
+            synchronized (segment)
+            {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return <tt>-1</tt> as the cache is bounded by the number of entries
+     */
+    @Override
+    public long getUsedBytes()
+    {
+        return -1L;
+    }
+
+    /**
+     * @return <tt>-1</tt> as the cache is bounded by the number of entries
+     */
+    @Override
+    public long getMaxBytes()
+    {
+        return -1L;
+    }
+
+    /**
+     * @return the number of entries removed to make room, including new entries that were not admitted
+     */
+    @Override
+    public long getEvictionCount()
+    {
+        long evictions = 0L;
+        for (Segment<K, V> segment : segments)
+        {
+            synchronized (segment)
+            {
+                evictions += segment.evictions;
+            }
+        }
+        return evictions;
+    }
+
+    /**
+     * @return the number of new entries that were not admitted to the main area of the cache
+     */
+    public long getRejectionCount()
+    {
+        long rejections = 0L;
+        for (Segment<K, V> segment : segments)
+        {
+            synchronized (segment)
+            {
+                rejections += segment.rejections;
+            }
+        }
+        return rejections;
+    }
+
+    public int getMaxItems()
+    {
+        return maxItems;
+    }
+
+    public int getTTLSecs()
+    {
+        return ttlSecs;
+    }
+
+    public int getMaxIdleSecs()
+    {
+        return maxIdleSecs;
+    }
+
+    int getSegmentCount()
+    {
+        return segments.length;
+    }
+
+    public String getCacheName()
+    {
+        return cacheName;
+    }
+
+    @Override
+    public void setBeanName(String cacheName)
+    {
+        this.cacheName = cacheName;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "TinyLfuSimpleCache[maxItems=" + maxItems + ", cacheName=" + cacheName + "]";
+    }
+
+    /**
+     * A cached value with the times used for expiry
+     */
+    private static final class Entry<V>
+    {
+        private V value;
+        private long created;
+        private long accessed;
+
+        private Entry(V value, long now)
+        {
+            this.value = value;
+            this.created = now;
+            this.accessed = now;
+        }
+    }
+
+    /**
+     * One independently locked part of the cache.  All access must be synchronized on the segment.
+     */
+    private static final class Segment<SK, SV>
+    {
+        private final int windowCapacity;
+        private final int protectedCapacity;
+        private final int mainCapacity;
+        private final FrequencySketch sketch;
+        /** The queues, each in least recently used order */
+        private final LinkedHashMap<SK, Entry<SV>> window = new LinkedHashMap<SK, Entry<SV>>(16, 0.75f, true);
+        private final LinkedHashMap<SK, Entry<SV>> probation = new LinkedHashMap<SK, Entry<SV>>(16, 0.75f, true);
+        private final LinkedHashMap<SK, Entry<SV>> protect = new LinkedHashMap<SK, Entry<SV>>(16, 0.75f, true);
+        private long evictions;
+        private long rejections;
+
+        private Segment(int capacity)
+        {
+            this.windowCapacity = Math.max(1, capacity * WINDOW_PERCENT / 100);
+            this.mainCapacity = Math.max(1, capacity - windowCapacity);
+            this.protectedCapacity = mainCapacity * PROTECTED_PERCENT / 100;
+            this.sketch = new FrequencySketch(capacity);
+        }
+
+        private int size()
+        {
+            return window.size() + probation.size() + protect.size();
+        }
+
+        /**
+         * Find an entry without promoting it, although it becomes the most recently used of its queue
+         */
+        private Entry<SV> find(Object key)
+        {
+            Entry<SV> entry = window.get(key);
+            if (entry == null)
+            {
+                entry = probation.get(key);
+            }
+            if (entry == null)
+            {
+                entry = protect.get(key);
+            }
+            return entry;
+        }
+
+        /**
+         * Find an entry, recording the access: an entry on probation is promoted to the protected segment
+         */
+        @SuppressWarnings("unchecked")
+        private Entry<SV> access(Object key)
+        {
+            Entry<SV> entry = window.get(key);
+            if (entry != null)
+            {
+                return entry;
+            }
+            entry = protect.get(key);
+            if (entry != null)
+            {
+                return entry;
+            }
+            entry = probation.remove(key);
+            if (entry != null)
+            {
+                protect.put((SK) key, entry);
+                if (protect.size() > protectedCapacity)
+                {
+                    // Demote the least recently used protected entry
+                    Map.Entry<SK, Entry<SV>> demoted = removeEldest(protect);
+                    probation.put(demoted.getKey(), demoted.getValue());
+                }
+            }
+            return entry;
+        }
+
+        private void remove(Object key)
+        {
+            if (window.remove(key) == null && probation.remove(key) == null)
+            {
+                protect.remove(key);
+            }
+        }
+
+        /**
+         * Move the eldest entry out of the window if it is full, admitting it to the main area
+         * only if it is used more often than the entry that it would displace.
+         */
+        private void evictFromWindow()
+        {
+            if (window.size() <= windowCapacity)
+            {
+                return;
+            }
+            Map.Entry<SK, Entry<SV>> candidate = removeEldest(window);
+            if (probation.size() + protect.size() < mainCapacity)
+            {
+                probation.put(candidate.getKey(), candidate.getValue());
+                return;
+            }
+            LinkedHashMap<SK, Entry<SV>> victimQueue = probation.isEmpty() ? protect : probation;
+            SK victimKey = victimQueue.keySet().iterator().next();
+            evictions++;
+            if (sketch.frequency(candidate.getKey()) > sketch.frequency(victimKey))
+            {
+                victimQueue.remove(victimKey);
+                probation.put(candidate.getKey(), candidate.getValue());
+            }
+            else
+            {
+                rejections++;
+            }
+        }
+
+        private Map.Entry<SK, Entry<SV>> removeEldest(LinkedHashMap<SK, Entry<SV>> queue)
+        {
+            Iterator<Map.Entry<SK, Entry<SV>>> iterator = queue.entrySet().iterator();
+            Map.Entry<SK, Entry<SV>> eldest = iterator.next();
+            // Copy the entry as the map may reuse it
+            Map.Entry<SK, Entry<SV>> copy = new AbstractMap.SimpleImmutableEntry<SK, Entry<SV>>(eldest);
+            iterator.remove();
+            return copy;
+        }
+    }
+}
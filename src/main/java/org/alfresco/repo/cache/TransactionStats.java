@@ -49,7 +49,13 @@ public class TransactionStats
         GET_MISS,
         PUT,
         REMOVE,
-        CLEAR
+        CLEAR,
+        /**
+         * A get served straight from the shared cache, without any transaction-local state,
+         * by a read-only transaction (see {@link TransactionalCache#setReadOnlyFastPath(boolean)}).
+         * These gets are also counted as {@link #GET_HIT hits} or {@link #GET_MISS misses}.
+         */
+        GET_READ_ONLY_FAST_PATH
     }
     
     public long getCount(OpType op)
@@ -58,6 +64,16 @@ public class TransactionStats
         return stats.getN();
     }
     
+    /**
+     * @return the number of gets that took the read-only fast path
+     * 
+     * @see OpType#GET_READ_ONLY_FAST_PATH
+     */
+    public long getReadOnlyFastPathCount()
+    {
+        return getCount(OpType.GET_READ_ONLY_FAST_PATH);
+    }
+    
     public SummaryStatistics getTimings(OpType op)
     {
         SummaryStatistics opTimings = timings.get(op);
@@ -78,6 +94,27 @@ public class TransactionStats
         double timeTaken = end - start;
         addTiming(op, timeTaken);
     }
+    
+    /**
+     * Record a number of operations of the same type that were performed in a single call,
+     * e.g. a bulk cache lookup.  The time taken is shared equally between the operations.
+     */
+    public void record(long start, long end, OpType op, int count)
+    {
+        if (end < start)
+        {
+            throw new IllegalArgumentException("End time [" + end + "] occurs before start time [" + start + "].");
+        }
+        if (count <= 0)
+        {
+            return;
+        }
+        double timeTaken = (double) (end - start) / count;
+        for (int i = 0; i < count; i++)
+        {
+            addTiming(op, timeTaken);
+        }
+    }
 
     private void addTiming(OpType op, double time)
     {
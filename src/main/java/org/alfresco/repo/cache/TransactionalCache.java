@@ -28,6 +28,7 @@ package org.alfresco.repo.cache;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -80,9 +81,10 @@ import org.springframework.transaction.support.TransactionSynchronizationManager
  * @author Derek Hulley
  */
 public class TransactionalCache<K extends Serializable, V extends Object>
-        implements LockingCache<K, V>, TransactionListener, InitializingBean
+        implements LockingCache<K, V>, BulkCache<K, V>, TransactionListener, InitializingBean
 {
     private static final String RESOURCE_KEY_TXN_DATA = "TransactionalCache.TxnData";
+    private static final String RESOURCE_KEY_TXN_STATS = "TransactionalCache.TxnStats";
     
     private Log logger;
     private boolean isDebugEnabled;
@@ -101,6 +103,10 @@ public class TransactionalCache<K extends Serializable, V extends Object>
     private int maxCacheSize = 500;
     /** a unique string identifying this instance when binding resources */
     private String resourceKeyTxnData;
+    /** a unique string identifying the statistics of read-only fast path gets when binding resources */
+    private String resourceKeyTxnStats;
+    /** can read-only transactions read the shared cache directly until they write to the cache */
+    private boolean readOnlyFastPath = false;
     /** Use of cacheStats is guarded by the cacheStatsEnabled flag */
     private CacheStatistics cacheStats;
     /** Enable collection of statistics? */
@@ -229,6 +235,27 @@ public class TransactionalCache<K extends Serializable, V extends Object>
         this.cacheStats = cacheStats;
     }
 
+    /**
+     * Allow read-only transactions to bypass the transaction-local caches for reads.
+     * <p>
+     * When enabled, a get in a read-only transaction goes straight to the shared cache for as long
+     * as the transaction has not done anything else with this cache (put, remove, lock, etc).  No
+     * transaction-local state is created for those reads, so they do not have repeatable-read
+     * semantics: a value changed by another transaction's commit will be seen by the next read.
+     * Once the transaction writes to the cache, the usual transaction-local caching applies.
+     * <p>
+     * The number of gets served this way is recorded against
+     * {@link TransactionStats.OpType#GET_READ_ONLY_FAST_PATH}.
+     * 
+     * @param readOnlyFastPath          <tt>true</tt> to enable the fast path (default: <tt>false</tt>)
+     * 
+     * @since 7.110
+     */
+    public void setReadOnlyFastPath(boolean readOnlyFastPath)
+    {
+        this.readOnlyFastPath = readOnlyFastPath;
+    }
+
     public void setCacheStatsEnabled(boolean cacheStatsEnabled)
     {
         this.cacheStatsEnabled = cacheStatsEnabled;
@@ -244,6 +271,7 @@ public class TransactionalCache<K extends Serializable, V extends Object>
         
         // generate the resource binding key
         resourceKeyTxnData = RESOURCE_KEY_TXN_DATA + "." + name;
+        resourceKeyTxnStats = RESOURCE_KEY_TXN_STATS + "." + name;
         // Refine the log category
         logger = LogFactory.getLog(TransactionalCache.class.getName() + "." + name);
         isDebugEnabled = logger.isDebugEnabled();
@@ -253,6 +281,15 @@ public class TransactionalCache<K extends Serializable, V extends Object>
         {
             sharedCache = NullCache.getInstance();
         }
+        if (sharedCache instanceof TenantPartitionedSimpleCache && !isTenantAware)
+        {
+            logger.warn("Cache " + name + " is not tenant-aware: all entries will share the default tenant's partition.");
+        }
+        // Expose the size of the shared cache, if it is able to report it
+        if (cacheStatsEnabled && sharedCache instanceof CacheSizeStats)
+        {
+            cacheStats.registerSizeStats(name, (CacheSizeStats) sharedCache);
+        }
     }
 
     /**
@@ -270,7 +307,9 @@ public class TransactionalCache<K extends Serializable, V extends Object>
             data.removedItemsCache = new HashSet<Serializable>(13);
             data.lockedItemsCache = new HashSet<Serializable>(13);
             data.isReadOnly = AlfrescoTransactionSupport.getTransactionReadState() == TxnReadState.TXN_READ_ONLY;
-            data.stats = new TransactionStats();
+            // Carry on with the stats of any read-only fast path gets
+            TransactionStats stats = (TransactionStats) AlfrescoTransactionSupport.getResource(resourceKeyTxnStats);
+            data.stats = (stats == null) ? new TransactionStats() : stats;
 
             // ensure that we get the transaction callbacks as we have bound the unique
             // transactional caches to a common manager
@@ -285,15 +324,68 @@ public class TransactionalCache<K extends Serializable, V extends Object>
         return data;
     }
     
+    /**
+     * To be used in a transaction only.
+     * 
+     * @return              <tt>true</tt> if a get can use the read-only fast path i.e. it is enabled,
+     *                      the transaction is read-only and this cache has no transaction-local state
+     * 
+     * @see #setReadOnlyFastPath(boolean)
+     */
+    private boolean isReadOnlyFastPath()
+    {
+        return readOnlyFastPath &&
+                AlfrescoTransactionSupport.getResource(resourceKeyTxnData) == null &&
+                AlfrescoTransactionSupport.getTransactionReadState() == TxnReadState.TXN_READ_ONLY;
+    }
+    
+    /**
+     * To be used in a transaction only.  The statistics of read-only fast path gets are bound to
+     * the transaction on their own so that they can be added to the cache statistics at the end of
+     * the transaction; they are taken over by the {@link TransactionData} if it is created later.
+     */
+    private TransactionStats getReadOnlyFastPathStats()
+    {
+        TransactionStats stats = (TransactionStats) AlfrescoTransactionSupport.getResource(resourceKeyTxnStats);
+        if (stats == null)
+        {
+            stats = new TransactionStats();
+            if (TransactionSynchronizationManager.isSynchronizationActive())
+            {
+                AlfrescoTransactionSupport.bindListener(this);
+            }
+            AlfrescoTransactionSupport.bindResource(resourceKeyTxnStats, stats);
+        }
+        return stats;
+    }
+    
+    /**
+     * Adds the statistics of read-only fast path gets to the cache statistics where no
+     * {@link TransactionData} was created in the transaction.
+     */
+    private void addReadOnlyFastPathStats()
+    {
+        if (cacheStatsEnabled)
+        {
+            TransactionStats stats = (TransactionStats) AlfrescoTransactionSupport.getResource(resourceKeyTxnStats);
+            if (stats != null)
+            {
+                cacheStats.add(name, stats);
+            }
+        }
+    }
+    
     /**
      * @see #setDisableSharedCacheReadForTransaction(boolean)
      */
+    @SuppressWarnings("unchecked")
     public boolean getDisableSharedCacheReadForTransaction()
     {
         if (AlfrescoTransactionSupport.getTransactionId() != null)
         {
-            TransactionData txnData = getTransactionData();
-            return txnData.noSharedCacheRead;
+            // Don't create the transaction data just to find the default
+            TransactionData txnData = (TransactionData) AlfrescoTransactionSupport.getResource(resourceKeyTxnData);
+            return txnData != null && txnData.noSharedCacheRead;
         }
         else
         {
@@ -486,6 +578,63 @@ public class TransactionalCache<K extends Serializable, V extends Object>
         }
     }
     
+    /**
+     * Fetches a number of values from the shared cache in one call, if the shared cache
+     * is a {@link BulkCache}, or key by key otherwise.  Values are unwrapped before being
+     * returned.
+     * <p>
+     * If a TransactionStats instance is passed in, then cache access stats
+     * are tracked, otherwise - if null is passed in then stats are not tracked.
+     * 
+     * @param keys          the keys to look up
+     * @return              Returns the values found, including <tt>null</tt> values that were
+     *                      put into the cache; keys not present in the cache are not present in the map
+     * 
+     * @since 7.110
+     */
+    @SuppressWarnings("unchecked")
+    public static <KEY extends Serializable, VAL> Map<KEY, VAL> getSharedCacheValues(SimpleCache<KEY, ValueHolder<VAL>> sharedCache, Collection<KEY> keys, TransactionStats stats)
+    {
+        final long startNanos = stats != null ? System.nanoTime() : 0;
+        Map<KEY, ?> possibleWrappers;
+        if (sharedCache instanceof BulkCache)
+        {
+            possibleWrappers = ((BulkCache<KEY, ValueHolder<VAL>>) sharedCache).getAll(keys);
+        }
+        else
+        {
+            Map<KEY, Object> found = new HashMap<KEY, Object>(keys.size() * 2);
+            for (KEY key : keys)
+            {
+                Object possibleWrapper = sharedCache.get(key);
+                if (possibleWrapper != null)
+                {
+                    found.put(key, possibleWrapper);
+                }
+            }
+            possibleWrappers = found;
+        }
+        final long endNanos = stats != null ? System.nanoTime() : 0;
+        Map<KEY, VAL> values = new HashMap<KEY, VAL>(possibleWrappers.size() * 2);
+        for (Map.Entry<KEY, ?> entry : possibleWrappers.entrySet())
+        {
+            Object possibleWrapper = entry.getValue();
+            if (!(possibleWrapper instanceof ValueHolder))
+            {
+                throw new IllegalStateException("All entries for TransactionalCache must be put using TransactionalCache.putSharedCacheValue.");
+            }
+            values.put(entry.getKey(), ((ValueHolder<VAL>) possibleWrapper).getValue());
+        }
+        if (stats != null)
+        {
+            // The time taken is shared between all the keys
+            long nanosPerKey = keys.isEmpty() ? 0L : (endNanos - startNanos) / keys.size();
+            stats.record(startNanos, startNanos + nanosPerKey * values.size(), OpType.GET_HIT, values.size());
+            stats.record(startNanos, startNanos + nanosPerKey * (keys.size() - values.size()), OpType.GET_MISS, keys.size() - values.size());
+        }
+        return values;
+    }
+    
     /**
      * Values written to the backing cache need proper wrapping and unwrapping
      * 
@@ -507,6 +656,40 @@ public class TransactionalCache<K extends Serializable, V extends Object>
         }
     }
     
+    /**
+     * Writes a number of values to the backing cache, in one call if the shared cache
+     * is a {@link BulkCache}.
+     * 
+     * @see #putSharedCacheValue(SimpleCache, Serializable, Object, TransactionStats)
+     * @since 7.110
+     */
+    @SuppressWarnings("unchecked")
+    public static <KEY extends Serializable, VAL> void putSharedCacheValues(SimpleCache<KEY, ValueHolder<VAL>> sharedCache, Map<KEY, VAL> values, TransactionStats stats)
+    {
+        final long startNanos = System.nanoTime();
+        if (sharedCache instanceof BulkCache)
+        {
+            Map<KEY, ValueHolder<VAL>> wrappers = new HashMap<KEY, ValueHolder<VAL>>(values.size() * 2);
+            for (Map.Entry<KEY, VAL> entry : values.entrySet())
+            {
+                wrappers.put(entry.getKey(), new ValueHolder<VAL>(entry.getValue()));
+            }
+            ((BulkCache<KEY, ValueHolder<VAL>>) sharedCache).putAll(wrappers);
+        }
+        else
+        {
+            for (Map.Entry<KEY, VAL> entry : values.entrySet())
+            {
+                sharedCache.put(entry.getKey(), new ValueHolder<VAL>(entry.getValue()));
+            }
+        }
+        final long endNanos = System.nanoTime();
+        if (stats != null)
+        {
+            stats.record(startNanos, endNanos, OpType.PUT, values.size());
+        }
+    }
+    
     /**
      * @param txnData       the existing data associated with the transaction
      * @param key           a tenant-aware key
@@ -588,6 +771,20 @@ public class TransactionalCache<K extends Serializable, V extends Object>
         // are we in a transaction?
         if (AlfrescoTransactionSupport.getTransactionId() != null)
         {
+            if (isReadOnlyFastPath())
+            {
+                // Nothing was written in the transaction: go straight to the shared cache
+                if (!cacheStatsEnabled)
+                {
+                    return TransactionalCache.getSharedCacheValue(sharedCache, key, null);
+                }
+                TransactionStats stats = getReadOnlyFastPathStats();
+                final long startNanos = System.nanoTime();
+                V value = TransactionalCache.getSharedCacheValue(sharedCache, key, stats);
+                final long endNanos = System.nanoTime();
+                stats.record(startNanos, endNanos, OpType.GET_READ_ONLY_FAST_PATH);
+                return value;
+            }
             TransactionData txnData = getTransactionData();
             if (txnData.isClosed)
             {
@@ -683,6 +880,133 @@ public class TransactionalCache<K extends Serializable, V extends Object>
         }
     }
 
+    /**
+     * Bulk form of {@link #get(Serializable)}.  The transaction-local caches are checked
+     * with a single lookup of the transaction resources and all keys that have to go to the
+     * shared cache are fetched from it in one call.  Values read from the shared cache are
+     * recorded against the transaction exactly as they are for {@link #get(Serializable)}.
+     * 
+     * @return              the values found; keys without a value are not present in the map
+     */
+    @Override
+    public Map<K, V> getAll(Collection<K> keysIn)
+    {
+        Map<K, V> values = new HashMap<K, V>(keysIn.size() * 2);
+        TransactionData txnData = null;
+        TransactionStats stats = null;
+        boolean readOnlyFastPath = false;
+        // are we in a transaction?
+        if (AlfrescoTransactionSupport.getTransactionId() != null)
+        {
+            if (isReadOnlyFastPath())
+            {
+                // Nothing was written in the transaction: go straight to the shared cache
+                readOnlyFastPath = true;
+                stats = cacheStatsEnabled ? getReadOnlyFastPathStats() : null;
+            }
+            else
+            {
+                txnData = getTransactionData();
+                if (txnData.isClosed)
+                {
+                    // Go to the shared cache, as for a single get
+                    txnData = null;
+                }
+                else if (cacheStatsEnabled)
+                {
+                    stats = txnData.stats;
+                }
+            }
+        }
+        // Tenant-aware keys to be fetched from the shared cache, mapped to the keys given
+        Map<Serializable, K> sharedCacheKeys = new LinkedHashMap<Serializable, K>(keysIn.size() * 2);
+        for (K keyIn : keysIn)
+        {
+            final Serializable key = getTenantAwareCacheKey(keyIn);
+            if (txnData != null)
+            {
+                if (!txnData.isClearOn && txnData.removedItemsCache.contains(key))
+                {
+                    // it has been removed in this transaction
+                    continue;
+                }
+                CacheBucket<V> bucket = (CacheBucket<V>) txnData.updatedItemsCache.get(key);
+                if (bucket != null)
+                {
+                    // element was found in transaction-specific updates/additions
+                    V value = bucket.getValue();
+                    if (value != null)
+                    {
+                        values.put(keyIn, value);
+                    }
+                    continue;
+                }
+                else if (txnData.isClearOn || txnData.noSharedCacheRead)
+                {
+                    // Can't use the shared cache
+                    continue;
+                }
+            }
+            sharedCacheKeys.put(key, keyIn);
+        }
+        if (sharedCacheKeys.isEmpty())
+        {
+            return values;
+        }
+        final long startNanos = stats != null ? System.nanoTime() : 0;
+        Map<Serializable, V> sharedValues = TransactionalCache.getSharedCacheValues(sharedCache, sharedCacheKeys.keySet(), stats);
+        if (readOnlyFastPath && stats != null)
+        {
+            stats.record(startNanos, System.nanoTime(), OpType.GET_READ_ONLY_FAST_PATH, sharedCacheKeys.size());
+        }
+        for (Map.Entry<Serializable, K> entry : sharedCacheKeys.entrySet())
+        {
+            V value = sharedValues.get(entry.getKey());
+            if (txnData != null)
+            {
+                txnData.updatedItemsCache.put(entry.getKey(), new ReadCacheBucket<V>(value));
+            }
+            if (value != null)
+            {
+                values.put(entry.getValue(), value);
+            }
+        }
+        if (isDebugEnabled)
+        {
+            logger.debug("Fetched " + sharedCacheKeys.size() + " items from shared cache: \n" +
+                    "   cache: " + this + "\n" +
+                    "   found: " + sharedValues.size());
+        }
+        return values;
+    }
+
+    /**
+     * Bulk form of {@link #put(Serializable, Object)}.  In the absence of a transaction the
+     * entries are written to the shared cache in one call; otherwise each entry is added to
+     * the transaction as for a single put.
+     */
+    @Override
+    public void putAll(Map<K, V> entries)
+    {
+        // are we in a transaction?
+        if (AlfrescoTransactionSupport.getTransactionId() == null)  // not in transaction
+        {
+            Map<Serializable, V> values = new HashMap<Serializable, V>(entries.size() * 2);
+            for (Map.Entry<K, V> entry : entries.entrySet())
+            {
+                values.put(getTenantAwareCacheKey(entry.getKey()), entry.getValue());
+            }
+            TransactionalCache.putSharedCacheValues(sharedCache, values, null);
+        }
+        else
+        {
+            for (Map.Entry<K, V> entry : entries.entrySet())
+            {
+                put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
     /**
      * Goes direct to the shared cache in the absence of a transaction.
      * <p>
@@ -952,6 +1276,7 @@ public class TransactionalCache<K extends Serializable, V extends Object>
     /**
      * Merge the transactional caches into the shared cache
      */
+    @SuppressWarnings("unchecked")
     public void beforeCommit(boolean readOnly)
     {
         if (isDebugEnabled)
@@ -959,7 +1284,12 @@ public class TransactionalCache<K extends Serializable, V extends Object>
             logger.debug("Processing before-commit");
         }
         
-        TransactionData txnData = getTransactionData();
+        TransactionData txnData = (TransactionData) AlfrescoTransactionSupport.getResource(resourceKeyTxnData);
+        if (txnData == null)
+        {
+            // Only read-only fast path gets were done: there is nothing to transfer
+            return;
+        }
         try
         {
             if (txnData.isClearOn)
@@ -1024,6 +1354,7 @@ public class TransactionalCache<K extends Serializable, V extends Object>
     /**
      * Merge the transactional caches into the shared cache
      */
+    @SuppressWarnings("unchecked")
     public void afterCommit()
     {
         if (isDebugEnabled)
@@ -1031,7 +1362,13 @@ public class TransactionalCache<K extends Serializable, V extends Object>
             logger.debug("Processing after-commit");
         }
         
-        TransactionData txnData = getTransactionData();
+        TransactionData txnData = (TransactionData) AlfrescoTransactionSupport.getResource(resourceKeyTxnData);
+        if (txnData == null)
+        {
+            // Only read-only fast path gets were done
+            addReadOnlyFastPathStats();
+            return;
+        }
         try
         {
             if (txnData.isClearOn)
@@ -1119,9 +1456,16 @@ public class TransactionalCache<K extends Serializable, V extends Object>
      * to the shared cache even in the event of rollback - useful if the cause of a problem is
      * the shared cache value.
      */
+    @SuppressWarnings("unchecked")
     public void afterRollback()
     {
-        TransactionData txnData = getTransactionData();
+        TransactionData txnData = (TransactionData) AlfrescoTransactionSupport.getResource(resourceKeyTxnData);
+        if (txnData == null)
+        {
+            // Only read-only fast path gets were done
+            addReadOnlyFastPathStats();
+            return;
+        }
         try
         {
             if (txnData.isClearOn)
@@ -27,7 +27,14 @@ package org.alfresco.repo.cache.lookup;
 
 import java.io.Serializable;
 import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
+import org.alfresco.repo.cache.BulkCache;
 import org.alfresco.repo.cache.SimpleCache;
 import org.alfresco.repo.domain.control.ControlDAO;
 import org.alfresco.repo.transaction.RetryingTransactionHelper;
@@ -161,6 +168,26 @@ public class EntityLookupCache<K extends Serializable, V extends Object, VK exte
         int deleteByValue(V1 value);
     }
     
+    /**
+     * Extension of the lookup callback for DAOs that are able to find many entities in one query.
+     * This is used by {@link EntityLookupCache#getByKeys(Collection)} to resolve all cache misses
+     * in a single round trip.
+     * 
+     * @since 7.110
+     */
+    public static interface EntityLookupBatchCallbackDAO<K1 extends Serializable, V1 extends Object, VK1 extends Serializable>
+            extends EntityLookupCallbackDAO<K1, V1, VK1>
+    {
+        /**
+         * Find the entities for a number of keys.
+         * 
+         * @param keys          the keys (IDs) used to identify the entities (never <tt>null</tt> or empty)
+         * @return              Returns the entities that exist, in any order; keys that do not
+         *                      reference an entity are left out
+         */
+        List<Pair<K1, V1>> findByKeys(List<K1> keys);
+    }
+    
     /**
      * Adaptor for implementations that support immutable entities.  The update and delete operations
      * throw {@link UnsupportedOperationException}.
@@ -353,6 +380,116 @@ public class EntityLookupCache<K extends Serializable, V extends Object, VK exte
         return entityPair;
     }
     
+    /**
+     * Find the entities associated with the given keys.  The cache is read in a single call, where
+     * it supports {@link BulkCache bulk operations}, and the keys that are not cached are resolved
+     * together using {@link EntityLookupBatchCallbackDAO#findByKeys(List)} if the entity callback
+     * supports it.  Otherwise the {@link EntityLookupCallbackDAO#findByKey(Serializable) entity callback}
+     * is used for each missing key.  The results are cached as for {@link #getByKey(Serializable)}.
+     * 
+     * @param keys                  The entity keys, which may be valid or invalid (<tt>null</tt> not allowed)
+     * @return                      Returns the key-value pairs for the keys that reference entities,
+     *                              in the order of the keys given
+     * 
+     * @since 7.110
+     */
+    @SuppressWarnings("unchecked")
+    public List<Pair<K, V>> getByKeys(Collection<K> keys)
+    {
+        Map<K, Pair<K, V>> entityPairs = new LinkedHashMap<K, Pair<K, V>>(keys.size() * 2);
+        List<K> missingKeys = new ArrayList<K>(keys.size());
+        if (cache == null)
+        {
+            for (K key : keys)
+            {
+                if (key == null)
+                {
+                    throw new IllegalArgumentException("An entity lookup key may not be null");
+                }
+                missingKeys.add(key);
+            }
+        }
+        else
+        {
+            Map<Serializable, Object> cachedValues = getCachedValues(keys);
+            for (K key : keys)
+            {
+                V value = (V) cachedValues.get(new CacheRegionKey(cacheRegion, key));
+                if (value == null)
+                {
+                    missingKeys.add(key);
+                    // Keep the order of the keys given
+                    entityPairs.put(key, null);
+                }
+                else if (value.equals(VALUE_NOT_FOUND))
+                {
+                    // We checked before
+                }
+                else if (value.equals(VALUE_NULL))
+                {
+                    entityPairs.put(key, new Pair<K, V>(key, null));
+                }
+                else
+                {
+                    entityPairs.put(key, new Pair<K, V>(key, value));
+                }
+            }
+        }
+        if (!missingKeys.isEmpty())
+        {
+            // Resolve them
+            Map<K, Pair<K, V>> foundPairs = new HashMap<K, Pair<K, V>>(missingKeys.size() * 2);
+            if (entityLookup instanceof EntityLookupBatchCallbackDAO)
+            {
+                List<Pair<K, V>> found = ((EntityLookupBatchCallbackDAO<K, V, VK>) entityLookup).findByKeys(missingKeys);
+                for (Pair<K, V> entityPair : found)
+                {
+                    foundPairs.put(entityPair.getFirst(), entityPair);
+                }
+            }
+            else
+            {
+                for (K key : missingKeys)
+                {
+                    Pair<K, V> entityPair = entityLookup.findByKey(key);
+                    if (entityPair != null)
+                    {
+                        foundPairs.put(key, entityPair);
+                    }
+                }
+            }
+            Map<Serializable, Object> toCache = new HashMap<Serializable, Object>(missingKeys.size() * 4);
+            for (K key : missingKeys)
+            {
+                Pair<K, V> entityPair = foundPairs.get(key);
+                if (entityPair == null)
+                {
+                    entityPairs.remove(key);
+                    // Cache "not found"
+                    toCache.put(new CacheRegionKey(cacheRegion, key), VALUE_NOT_FOUND);
+                    continue;
+                }
+                entityPairs.put(key, entityPair);
+                V value = entityPair.getSecond();
+                // Get the value key
+                VK valueKey = (value == null) ? (VK)VALUE_NULL : entityLookup.getValueKey(value);
+                // Check if the value has a good key
+                if (valueKey != null)
+                {
+                    // The key is good, so we can cache the value
+                    toCache.put(new CacheRegionValueKey(cacheRegion, valueKey), key);
+                }
+                toCache.put(new CacheRegionKey(cacheRegion, key), (value == null ? VALUE_NULL : value));
+            }
+            if (cache != null)
+            {
+                putCachedValues(toCache);
+            }
+        }
+        // Done
+        return new ArrayList<Pair<K, V>>(entityPairs.values());
+    }
+    
     /**
      * Find the entity associated with the given value.
      * The {@link EntityLookupCallbackDAO#findByValue(Object) entity callback} will be used if no entry exists in the cache.
@@ -631,6 +768,88 @@ public class EntityLookupCache<K extends Serializable, V extends Object, VK exte
         }
     }
     
+    /**
+     * Cache-only operation: Get the values for a number of keys in a single pass over the cache
+     * 
+     * @param keys                  The entity keys, which may be valid or invalid (<tt>null</tt> not allowed)
+     * @return                      The entity values that are cached, keyed by entity key; keys for which
+     *                              there is no cached value or for which the value is <tt>null</tt> are
+     *                              not present in the map
+     * 
+     * @since 7.110
+     */
+    @SuppressWarnings("unchecked")
+    public Map<K, V> getValues(Collection<K> keys)
+    {
+        Map<K, V> values = new HashMap<K, V>(keys.size() * 2);
+        // Handle missing cache
+        if (cache == null)
+        {
+            return values;
+        }
+        Map<Serializable, Object> cachedValues = getCachedValues(keys);
+        for (K key : keys)
+        {
+            V value = (V) cachedValues.get(new CacheRegionKey(cacheRegion, key));
+            if (value == null || value.equals(VALUE_NOT_FOUND) || value.equals(VALUE_NULL))
+            {
+                continue;
+            }
+            values.put(key, value);
+        }
+        return values;
+    }
+    
+    /**
+     * Read the cache entries for a number of entity keys, in one call where the cache supports it
+     * 
+     * @return                      the cached entries keyed by {@link CacheRegionKey}
+     */
+    @SuppressWarnings("unchecked")
+    private Map<Serializable, Object> getCachedValues(Collection<K> keys)
+    {
+        List<Serializable> keyCacheKeys = new ArrayList<Serializable>(keys.size());
+        for (K key : keys)
+        {
+            if (key == null)
+            {
+                throw new IllegalArgumentException("An entity lookup key may not be null");
+            }
+            keyCacheKeys.add(new CacheRegionKey(cacheRegion, key));
+        }
+        if (cache instanceof BulkCache)
+        {
+            return ((BulkCache<Serializable, Object>) cache).getAll(keyCacheKeys);
+        }
+        Map<Serializable, Object> cachedValues = new HashMap<Serializable, Object>(keys.size() * 2);
+        for (Serializable keyCacheKey : keyCacheKeys)
+        {
+            Object value = cache.get(keyCacheKey);
+            if (value != null)
+            {
+                cachedValues.put(keyCacheKey, value);
+            }
+        }
+        return cachedValues;
+    }
+    
+    /**
+     * Write a number of cache entries, in one call where the cache supports it
+     */
+    @SuppressWarnings("unchecked")
+    private void putCachedValues(Map<Serializable, Object> entries)
+    {
+        if (cache instanceof BulkCache)
+        {
+            ((BulkCache<Serializable, Object>) cache).putAll(entries);
+            return;
+        }
+        for (Map.Entry<Serializable, Object> entry : entries.entrySet())
+        {
+            cache.put(entry.getKey(), entry.getValue());
+        }
+    }
+    
     /**
      * Cache-only operation: Update the cache's value
      * 
@@ -0,0 +1,157 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache.snapshot;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.alfresco.repo.cache.SimpleCache;
+import org.alfresco.repo.cache.TransactionalCache;
+import org.alfresco.repo.cache.lookup.CacheRegionKey;
+import org.alfresco.repo.tenant.TenantService;
+import org.alfresco.util.PropertyCheck;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Base class for warmers that read the keys of shared caches.  Keys that were
+ * wrapped by the {@link TransactionalCache} or by an
+ * {@link org.alfresco.repo.cache.lookup.EntityLookupCache EntityLookupCache} are unwrapped
+ * before being passed to {@link #toSnapshotKey(Serializable)}.  Keys that belong to a
+ * tenant other than the default domain are ignored.
+ *
+ * @since 7.110
+ */
+public abstract class AbstractCacheKeyWarmer implements CacheKeyWarmer, InitializingBean
+{
+    private String name;
+    private List<SimpleCache<? extends Serializable, ?>> caches = Collections.emptyList();
+
+    /**
+     * @param name              the name under which the keys are stored in the snapshot
+     */
+    public void setName(String name)
+    {
+        this.name = name;
+    }
+
+    /**
+     * @param caches            the shared caches whose keys are collected
+     */
+    public void setCaches(List<SimpleCache<? extends Serializable, ?>> caches)
+    {
+        this.caches = caches;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception
+    {
+        PropertyCheck.mandatory(this, "name", name);
+        PropertyCheck.mandatory(this, "caches", caches);
+    }
+
+    @Override
+    public String getName()
+    {
+        return name;
+    }
+
+    @Override
+    public List<String> getKeys(int maxKeys)
+    {
+        Set<String> keys = new LinkedHashSet<String>();
+        for (SimpleCache<? extends Serializable, ?> cache : caches)
+        {
+            for (Serializable cacheKey : cache.getKeys())
+            {
+                if (keys.size() >= maxKeys)
+                {
+                    return new ArrayList<String>(keys);
+                }
+                Serializable key = unwrapKey(cacheKey);
+                String snapshotKey = (key == null) ? null : toSnapshotKey(key);
+                if (snapshotKey != null)
+                {
+                    keys.add(snapshotKey);
+                }
+            }
+        }
+        return new ArrayList<String>(keys);
+    }
+
+    /**
+     * @return                  the key as used by the DAO layer or <tt>null</tt> if the key
+     *                          belongs to another tenant
+     */
+    protected Serializable unwrapKey(Serializable key)
+    {
+        if (key instanceof TransactionalCache.CacheRegionKey)
+        {
+            TransactionalCache.CacheRegionKey tenantKey = (TransactionalCache.CacheRegionKey) key;
+            if (!TenantService.DEFAULT_DOMAIN.equals(tenantKey.getCacheRegion()))
+            {
+                return null;
+            }
+            key = tenantKey.getCacheKey();
+        }
+        if (key instanceof CacheRegionKey)
+        {
+            key = ((CacheRegionKey) key).getCacheKey();
+        }
+        return key;
+    }
+
+    /**
+     * Convert a cache key into the form held by the snapshot
+     *
+     * @param key               the unwrapped cache key
+     * @return                  the snapshot key or <tt>null</tt> to ignore the cache key
+     */
+    protected abstract String toSnapshotKey(Serializable key);
+
+    /**
+     * Helper to convert snapshot keys that are entity IDs
+     */
+    protected static List<Long> toIds(List<String> keys)
+    {
+        List<Long> ids = new ArrayList<Long>(keys.size());
+        for (String key : keys)
+        {
+            try
+            {
+                ids.add(Long.valueOf(key));
+            }
+            catch (NumberFormatException e)
+            {
+                // Not written by this version; ignore it
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache.snapshot;
+
+import java.io.Serializable;
+import java.util.List;
+
+import org.alfresco.repo.domain.permissions.AclDAO;
+import org.alfresco.repo.security.permissions.AccessControlListProperties;
+import org.alfresco.util.PropertyCheck;
+
+/**
+ * Warms the ACL caches using {@link AclDAO#cacheAccessControlLists(java.util.Collection)}, which loads
+ * both the ACL entities and the access control entries of a batch together.  The snapshot holds the ACL IDs.
+ *
+ * @since 7.110
+ */
+public class AclCacheKeyWarmer extends AbstractCacheKeyWarmer
+{
+    private AclDAO aclDAO;
+
+    public void setAclDAO(AclDAO aclDAO)
+    {
+        this.aclDAO = aclDAO;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception
+    {
+        super.afterPropertiesSet();
+        PropertyCheck.mandatory(this, "aclDAO", aclDAO);
+    }
+
+    @Override
+    protected String toSnapshotKey(Serializable key)
+    {
+        if (key instanceof Long)
+        {
+            return key.toString();
+        }
+        else if (key instanceof AccessControlListProperties)
+        {
+            Long id = ((AccessControlListProperties) key).getId();
+            return (id == null) ? null : id.toString();
+        }
+        return null;
+    }
+
+    @Override
+    public void warmKeys(List<String> keys)
+    {
+        List<Long> aclIds = toIds(keys);
+        aclDAO.cacheAccessControlLists(aclIds);
+        // Anything not loaded by the batch, e.g. an ACL that has since been replaced, is fetched individually
+        for (Long aclId : aclIds)
+        {
+            aclDAO.getAccessControlList(aclId);
+        }
+    }
+}
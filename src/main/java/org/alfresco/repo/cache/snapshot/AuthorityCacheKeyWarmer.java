@@ -0,0 +1,81 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache.snapshot;
+
+import java.io.Serializable;
+import java.util.List;
+
+import org.alfresco.repo.security.authority.AuthorityDAO;
+import org.alfresco.repo.tenant.TenantService;
+import org.alfresco.util.Pair;
+import org.alfresco.util.PropertyCheck;
+
+/**
+ * Warms the authority lookup cache using {@link AuthorityDAO#getAuthorityNodeRefOrNull(String)}.
+ * The cache is keyed by tenant domain and authority name; only the names of authorities in the
+ * default domain are held in the snapshot.
+ *
+ * @since 7.110
+ */
+public class AuthorityCacheKeyWarmer extends AbstractCacheKeyWarmer
+{
+    private AuthorityDAO authorityDAO;
+
+    public void setAuthorityDAO(AuthorityDAO authorityDAO)
+    {
+        this.authorityDAO = authorityDAO;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception
+    {
+        super.afterPropertiesSet();
+        PropertyCheck.mandatory(this, "authorityDAO", authorityDAO);
+    }
+
+    @Override
+    protected String toSnapshotKey(Serializable key)
+    {
+        if (key instanceof Pair)
+        {
+            Pair<?, ?> tenantAndName = (Pair<?, ?>) key;
+            if (TenantService.DEFAULT_DOMAIN.equals(tenantAndName.getFirst()) && tenantAndName.getSecond() instanceof String)
+            {
+                return (String) tenantAndName.getSecond();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void warmKeys(List<String> keys)
+    {
+        for (String authorityName : keys)
+        {
+            authorityDAO.getAuthorityNodeRefOrNull(authorityName);
+        }
+    }
+}
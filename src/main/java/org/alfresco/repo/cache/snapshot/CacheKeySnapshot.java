@@ -0,0 +1,515 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache.snapshot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.repo.management.DynamicMBeanExportOperations;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.extensions.surf.util.AbstractLifecycleBean;
+
+/**
+ * Saves the keys of selected caches to a local file when the server shuts down and reloads
+ * the data for those keys in a background thread when the server next starts.  This shortens
+ * the period after a restart during which the caches are cold.
+ * <p>
+ * Only keys are saved.  The data is reloaded by the {@link CacheKeyWarmer warmers} in read-only
+ * transactions, in batches of {@link #setBatchSize(int) batchSize} keys, so a snapshot cannot
+ * reintroduce stale values.  The server is available while the caches are warmed; the progress
+ * and the time taken are available through {@link CacheKeySnapshotMBean}.
+ * <p>
+ * The snapshot is a sample of the cached keys rather than the most recently used ones: the caches
+ * do not expose their access order, so each warmer saves the first {@link #setMaxKeys(int) maxKeys}
+ * keys in the order in which the caches list them.
+ * <p>
+ * If the server is stopped before the warm-up completes, the existing snapshot is kept.
+ * In a cluster, each server should use its own snapshot file.
+ *
+ * @since 7.110
+ */
+public class CacheKeySnapshot extends AbstractLifecycleBean implements CacheKeySnapshotMBean
+{
+    private static final Log logger = LogFactory.getLog(CacheKeySnapshot.class);
+
+    private static final int SNAPSHOT_MAGIC = 0x414B4559;
+    private static final int SNAPSHOT_VERSION = 1;
+
+    public enum State
+    {
+        IDLE, WARMING, COMPLETE, STOPPED
+    }
+
+    private boolean enabled;
+    private String snapshotFile;
+    private int maxKeys = 100000;
+    private int batchSize = 500;
+    private List<CacheKeyWarmer> warmers = Collections.emptyList();
+    private RetryingTransactionHelper transactionHelper;
+    private DynamicMBeanExportOperations mbeanExporter;
+    private String objectName;
+
+    private volatile State state = State.IDLE;
+    private volatile boolean stopRequested;
+    private Thread warmingThread;
+    private ObjectName registeredObjectName;
+    private volatile long keysToLoad;
+    private final AtomicLong keysLoaded = new AtomicLong();
+    private final AtomicLong keysFailed = new AtomicLong();
+    private volatile long warmStartMs = -1L;
+    private volatile long warmEndMs = -1L;
+    private volatile long keysSaved = -1L;
+
+    /**
+     * @param enabled           <tt>true</tt> to save and restore the snapshot
+     */
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @param snapshotFile      the local file that holds the snapshot
+     */
+    public void setSnapshotFile(String snapshotFile)
+    {
+        this.snapshotFile = snapshotFile;
+    }
+
+    /**
+     * @param maxKeys           the maximum number of keys saved for each warmer; when the caches hold
+     *                          more, an arbitrary sample of this size is saved
+     */
+    public void setMaxKeys(int maxKeys)
+    {
+        this.maxKeys = maxKeys;
+    }
+
+    /**
+     * @param batchSize         the number of keys reloaded in each transaction
+     */
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param warmers           the warmers, in the order in which the caches are warmed
+     */
+    public void setWarmers(List<CacheKeyWarmer> warmers)
+    {
+        this.warmers = warmers;
+    }
+
+    public void setTransactionHelper(RetryingTransactionHelper transactionHelper)
+    {
+        this.transactionHelper = transactionHelper;
+    }
+
+    /**
+     * @param mbeanExporter     optional exporter used to register the progress MBean
+     */
+    public void setMbeanExporter(DynamicMBeanExportOperations mbeanExporter)
+    {
+        this.mbeanExporter = mbeanExporter;
+    }
+
+    /**
+     * @param objectName        the name under which the progress MBean is registered
+     */
+    public void setObjectName(String objectName)
+    {
+        this.objectName = objectName;
+    }
+
+    @Override
+    protected void onBootstrap(ApplicationEvent event)
+    {
+        registerMBean();
+        if (!enabled)
+        {
+            return;
+        }
+        File file = new File(snapshotFile);
+        if (!file.exists())
+        {
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("No cache key snapshot found at " + file);
+            }
+            return;
+        }
+        Map<String, List<String>> keys;
+        try
+        {
+            keys = readSnapshot(file);
+        }
+        catch (IOException e)
+        {
+            logger.warn("Ignoring unreadable cache key snapshot: " + file, e);
+            return;
+        }
+        startWarming(keys);
+    }
+
+    @Override
+    protected void onShutdown(ApplicationEvent event)
+    {
+        stopWarming();
+        try
+        {
+            // A warm-up that is still running or was stopped has left the caches short of the snapshot
+            if (enabled && (state == State.WARMING || state == State.STOPPED))
+            {
+                logger.info("Cache warm-up did not complete; keeping the existing cache key snapshot.");
+            }
+            else if (enabled)
+            {
+                saveSnapshot();
+            }
+        }
+        catch (Throwable e)
+        {
+            logger.warn("Failed to save the cache key snapshot: " + snapshotFile, e);
+        }
+        finally
+        {
+            unregisterMBean();
+        }
+    }
+
+    /**
+     * Start reloading the given keys in a background thread
+     *
+     * @param keys              the snapshot keys by warmer name
+     */
+    protected synchronized void startWarming(final Map<String, List<String>> keys)
+    {
+        long count = 0L;
+        for (CacheKeyWarmer warmer : warmers)
+        {
+            List<String> warmerKeys = keys.get(warmer.getName());
+            count += (warmerKeys == null) ? 0 : warmerKeys.size();
+        }
+        keysToLoad = count;
+        keysLoaded.set(0L);
+        keysFailed.set(0L);
+        warmStartMs = System.currentTimeMillis();
+        warmEndMs = -1L;
+        stopRequested = false;
+        state = State.WARMING;
+        logger.info("Warming caches with " + count + " keys from snapshot " + snapshotFile);
+
+        warmingThread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                warm(keys);
+            }
+        }, "CacheKeySnapshotWarmer");
+        warmingThread.setDaemon(true);
+        warmingThread.start();
+    }
+
+    private void warm(Map<String, List<String>> keys)
+    {
+        boolean stopped = false;
+        for (final CacheKeyWarmer warmer : warmers)
+        {
+            List<String> warmerKeys = keys.get(warmer.getName());
+            if (warmerKeys == null)
+            {
+                continue;
+            }
+            for (int i = 0; i < warmerKeys.size() && !stopped; i += batchSize)
+            {
+                if (stopRequested)
+                {
+                    stopped = true;
+                    break;
+                }
+                final List<String> batch = warmerKeys.subList(i, Math.min(i + batchSize, warmerKeys.size()));
+                try
+                {
+                    transactionHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+                    {
+                        @Override
+                        public Void execute() throws Throwable
+                        {
+                            warmer.warmKeys(batch);
+                            return null;
+                        }
+                    }, true, true);
+                }
+                catch (Throwable e)
+                {
+                    keysFailed.addAndGet(batch.size());
+                    if (logger.isDebugEnabled())
+                    {
+                        logger.debug("Failed to warm " + batch.size() + " keys using " + warmer.getName(), e);
+                    }
+                }
+                keysLoaded.addAndGet(batch.size());
+            }
+        }
+        // Only this thread sets the final state, so a stop that comes too late cannot undo a completed warm-up
+        warmEndMs = System.currentTimeMillis();
+        if (stopped)
+        {
+            state = State.STOPPED;
+            logger.info("Cache warm-up stopped after " + keysLoaded.get() + " of " + keysToLoad + " keys");
+            return;
+        }
+        state = State.COMPLETE;
+        logger.info(
+                "Cache warm-up complete: " + keysLoaded.get() + " keys in " + getTimeToWarmMs() + " ms" +
+                " (" + keysFailed.get() + " failed)");
+    }
+
+    /**
+     * Stop any warm-up that is in progress, waiting briefly for the current batch.  The warm-up thread
+     * moves the state to <tt>STOPPED</tt> when it sees the request, so the state remains <tt>WARMING</tt>
+     * if the current batch takes longer than the wait.
+     */
+    protected synchronized void stopWarming()
+    {
+        if (warmingThread == null || !warmingThread.isAlive())
+        {
+            return;
+        }
+        stopRequested = true;
+        try
+        {
+            warmingThread.join(1000L);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public synchronized long saveSnapshot()
+    {
+        Map<String, List<String>> keys = new LinkedHashMap<String, List<String>>();
+        long count = 0L;
+        for (CacheKeyWarmer warmer : warmers)
+        {
+            List<String> warmerKeys = warmer.getKeys(maxKeys);
+            keys.put(warmer.getName(), warmerKeys);
+            count += warmerKeys.size();
+        }
+        File file = new File(snapshotFile);
+        try
+        {
+            writeSnapshot(file, keys);
+        }
+        catch (IOException e)
+        {
+            throw new AlfrescoRuntimeException("Failed to write cache key snapshot: " + file, e);
+        }
+        keysSaved = count;
+        logger.info("Saved " + count + " cache keys to snapshot " + file);
+        return count;
+    }
+
+    /**
+     * Write the snapshot to a temporary file that then replaces the snapshot file
+     */
+    static void writeSnapshot(File file, Map<String, List<String>> keys) throws IOException
+    {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs())
+        {
+            throw new IOException("Unable to create directory: " + dir);
+        }
+        File tempFile = new File(dir, file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile))))
+        {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeInt(keys.size());
+            for (Map.Entry<String, List<String>> entry : keys.entrySet())
+            {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue().size());
+                for (String key : entry.getValue())
+                {
+                    out.writeUTF(key);
+                }
+            }
+        }
+        try
+        {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException e)
+        {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * @return                  the snapshot keys by warmer name
+     */
+    static Map<String, List<String>> readSnapshot(File file) throws IOException
+    {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file))))
+        {
+            if (in.readInt() != SNAPSHOT_MAGIC)
+            {
+                throw new IOException("Not a cache key snapshot: " + file);
+            }
+            int version = in.readInt();
+            if (version != SNAPSHOT_VERSION)
+            {
+                throw new IOException("Unsupported cache key snapshot version " + version + ": " + file);
+            }
+            int warmerCount = in.readInt();
+            Map<String, List<String>> keys = new LinkedHashMap<String, List<String>>(warmerCount * 2);
+            for (int i = 0; i < warmerCount; i++)
+            {
+                String name = in.readUTF();
+                int keyCount = in.readInt();
+                List<String> warmerKeys = new ArrayList<String>(keyCount);
+                for (int j = 0; j < keyCount; j++)
+                {
+                    warmerKeys.add(in.readUTF());
+                }
+                keys.put(name, warmerKeys);
+            }
+            return keys;
+        }
+    }
+
+    private void registerMBean()
+    {
+        if (mbeanExporter == null || objectName == null)
+        {
+            return;
+        }
+        try
+        {
+            registeredObjectName = mbeanExporter.registerMBean(this, new ObjectName(objectName));
+        }
+        catch (MalformedObjectNameException e)
+        {
+            logger.warn("Invalid object name for the cache key snapshot MBean: " + objectName, e);
+        }
+    }
+
+    private void unregisterMBean()
+    {
+        if (registeredObjectName != null)
+        {
+            mbeanExporter.unregisterMBean(registeredObjectName);
+            registeredObjectName = null;
+        }
+    }
+
+    @Override
+    public String getState()
+    {
+        return state.name();
+    }
+
+    @Override
+    public String getSnapshotFile()
+    {
+        return snapshotFile;
+    }
+
+    @Override
+    public long getKeysToLoad()
+    {
+        return keysToLoad;
+    }
+
+    @Override
+    public long getKeysLoaded()
+    {
+        return keysLoaded.get();
+    }
+
+    @Override
+    public long getKeysFailed()
+    {
+        return keysFailed.get();
+    }
+
+    @Override
+    public int getPercentComplete()
+    {
+        long toLoad = keysToLoad;
+        if (toLoad == 0L)
+        {
+            return state == State.COMPLETE ? 100 : 0;
+        }
+        return (int) (keysLoaded.get() * 100L / toLoad);
+    }
+
+    @Override
+    public long getTimeToWarmMs()
+    {
+        long start = warmStartMs;
+        long end = warmEndMs;
+        if (start < 0L)
+        {
+            return -1L;
+        }
+        return (end < 0L ? System.currentTimeMillis() : end) - start;
+    }
+
+    @Override
+    public long getKeysSaved()
+    {
+        return keysSaved;
+    }
+}
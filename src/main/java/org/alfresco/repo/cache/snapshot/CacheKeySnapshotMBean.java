@@ -0,0 +1,83 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache.snapshot;
+
+/**
+ * Management interface for the {@link CacheKeySnapshot}, reporting the progress of the
+ * cache warm-up that follows a restart.
+ *
+ * @since 7.110
+ */
+public interface CacheKeySnapshotMBean
+{
+    /**
+     * @return <tt>IDLE</tt>, <tt>WARMING</tt>, <tt>COMPLETE</tt> or <tt>STOPPED</tt>
+     */
+    String getState();
+
+    /**
+     * @return the location of the snapshot file
+     */
+    String getSnapshotFile();
+
+    /**
+     * @return the number of keys read from the snapshot that are to be reloaded
+     */
+    long getKeysToLoad();
+
+    /**
+     * @return the number of keys reloaded so far, including those that failed
+     */
+    long getKeysLoaded();
+
+    /**
+     * @return the number of keys in batches that could not be reloaded
+     */
+    long getKeysFailed();
+
+    /**
+     * @return the percentage of the keys that have been reloaded
+     */
+    int getPercentComplete();
+
+    /**
+     * @return the time in milliseconds spent warming the caches so far, or the total time once
+     *         complete, or <tt>-1</tt> if no warm-up has been started
+     */
+    long getTimeToWarmMs();
+
+    /**
+     * @return the number of keys written by the last snapshot taken by this server, or <tt>-1</tt>
+     */
+    long getKeysSaved();
+
+    /**
+     * Write a snapshot of the current cache keys now, replacing any previous snapshot
+     *
+     * @return the number of keys written
+     */
+    long saveSnapshot();
+}
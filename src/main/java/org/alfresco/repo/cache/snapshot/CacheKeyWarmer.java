@@ -0,0 +1,63 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache.snapshot;
+
+import java.util.List;
+
+/**
+ * Collects the keys of one or more caches for a {@link CacheKeySnapshot} and reloads the
+ * cached data for those keys when the snapshot is restored.
+ * <p>
+ * Only keys are kept in the snapshot; the values are always reloaded from the database
+ * so that a snapshot can never reintroduce stale data.
+ *
+ * @since 7.110
+ */
+public interface CacheKeyWarmer
+{
+    /**
+     * @return the name under which the keys are stored in the snapshot, unique per snapshot
+     */
+    String getName();
+
+    /**
+     * Get the keys currently held by the caches in a form that can be written to the snapshot.
+     * The keys are taken in the order in which the caches list them, which is not the order
+     * of use, so when the caches hold more than <tt>maxKeys</tt> the result is only a sample.
+     *
+     * @param maxKeys           the maximum number of keys to return
+     * @return                  the keys as strings, without duplicates
+     */
+    List<String> getKeys(int maxKeys);
+
+    /**
+     * Load the data for the given keys into the caches.  This is called in a read-only
+     * transaction for each batch of keys read from the snapshot.
+     *
+     * @param keys              keys previously returned by {@link #getKeys(int)}
+     */
+    void warmKeys(List<String> keys);
+}
@@ -0,0 +1,77 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache.snapshot;
+
+import java.io.Serializable;
+import java.util.List;
+
+import org.alfresco.repo.domain.node.NodeVersionKey;
+import org.alfresco.repo.node.NodeBulkLoader;
+import org.alfresco.util.PropertyCheck;
+
+/**
+ * Warms the node, aspect and property caches using {@link NodeBulkLoader#cacheNodesById(List)}.
+ * The snapshot holds the IDs of the nodes found in any of the caches, whether keyed by node ID
+ * or by {@link NodeVersionKey}.
+ *
+ * @since 7.110
+ */
+public class NodeCacheKeyWarmer extends AbstractCacheKeyWarmer
+{
+    private NodeBulkLoader nodeBulkLoader;
+
+    public void setNodeBulkLoader(NodeBulkLoader nodeBulkLoader)
+    {
+        this.nodeBulkLoader = nodeBulkLoader;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception
+    {
+        super.afterPropertiesSet();
+        PropertyCheck.mandatory(this, "nodeBulkLoader", nodeBulkLoader);
+    }
+
+    @Override
+    protected String toSnapshotKey(Serializable key)
+    {
+        if (key instanceof Long)
+        {
+            return key.toString();
+        }
+        else if (key instanceof NodeVersionKey)
+        {
+            return ((NodeVersionKey) key).getNodeId().toString();
+        }
+        return null;
+    }
+
+    @Override
+    public void warmKeys(List<String> keys)
+    {
+        nodeBulkLoader.cacheNodesById(toIds(keys));
+    }
+}
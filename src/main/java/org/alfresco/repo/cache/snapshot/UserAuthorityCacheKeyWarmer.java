@@ -0,0 +1,72 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache.snapshot;
+
+import java.io.Serializable;
+import java.util.List;
+
+import org.alfresco.repo.security.authority.AuthorityDAO;
+import org.alfresco.util.PropertyCheck;
+
+/**
+ * Warms the cache of the authorities that contain each user using
+ * {@link AuthorityDAO#getContainingAuthorities(org.alfresco.service.cmr.security.AuthorityType, String, boolean)}.
+ * The cache is keyed by the user name, so the users who were active before a restart do not pay for
+ * working out their group membership on their first request.
+ *
+ * @since 7.110
+ */
+public class UserAuthorityCacheKeyWarmer extends AbstractCacheKeyWarmer
+{
+    private AuthorityDAO authorityDAO;
+
+    public void setAuthorityDAO(AuthorityDAO authorityDAO)
+    {
+        this.authorityDAO = authorityDAO;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception
+    {
+        super.afterPropertiesSet();
+        PropertyCheck.mandatory(this, "authorityDAO", authorityDAO);
+    }
+
+    @Override
+    protected String toSnapshotKey(Serializable key)
+    {
+        return (key instanceof String) ? (String) key : null;
+    }
+
+    @Override
+    public void warmKeys(List<String> keys)
+    {
+        for (String userName : keys)
+        {
+            authorityDAO.getContainingAuthorities(null, userName, false);
+        }
+    }
+}
@@ -34,9 +34,12 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.Reader;
+import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Timer;
@@ -77,6 +80,7 @@ public abstract class AbstractContentReader extends AbstractContentAccessor impl
 {
     private static final Log logger = LogFactory.getLog(AbstractContentReader.class);
     private static final Timer timer = new Timer(true); 
+    private static final int TRANSFER_BUFFER_SIZE = 8192;
     
     private List<ContentStreamListener> listeners;
     private ReadableByteChannel channel;
@@ -435,14 +439,154 @@ public abstract class AbstractContentReader extends AbstractContentAccessor impl
         }
     }
 
+    /**
+     * Transfers a range of the content to the given channel.  When the content is available
+     * through a {@link FileChannel}, as it is for file-backed readers and content cache hits,
+     * the transfer is done using {@link FileChannel#transferTo(long, long, WritableByteChannel)}
+     * so that the operating system can move the bytes without them being copied through the heap.
+     * Other content is copied through a buffer, as is content read with {@link #setLimits(TransformationOptionLimits) limits};
+     * a {@link SeekableByteChannel} is positioned rather than reading up to the position.
+     * <p>
+     * As with the other read methods, the reader's channel is closed once the transfer is complete.
+     * The target channel is left open and must be in blocking mode.
+     * 
+     * @param target        the channel to write the content to
+     * @param position      the position within the content at which to start
+     * @param count         the maximum number of bytes to transfer or <tt>-1</tt> to transfer the
+     *                      remainder of the content
+     * @return              Returns the number of bytes transferred
+     * 
+     * @since 7.110
+     */
+    public long transferTo(WritableByteChannel target, long position, long count) throws ContentIOException
+    {
+        if (position < 0L)
+        {
+            throw new IllegalArgumentException("Position may not be negative: " + position);
+        }
+        ReadableByteChannel channel = (limits == null) ? getReadableChannel() : Channels.newChannel(getContentInputStream());
+        try
+        {
+            long transferred;
+            if (channel instanceof FileChannel)
+            {
+                transferred = transferFromFile((FileChannel) channel, target, position, count);
+            }
+            else
+            {
+                transferred = transferFromChannel(channel, target, position, count);
+            }
+            // done
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Transferred content to channel: \n" +
+                        "   reader: " + this + "\n" +
+                        "   zero-copy: " + (channel instanceof FileChannel) + "\n" +
+                        "   position: " + position + "\n" +
+                        "   transferred: " + transferred);
+            }
+            return transferred;
+        }
+        catch (IOException e)
+        {
+            throw new ContentIOException("Failed to transfer content to channel: \n" +
+                    "   accessor: " + this + "\n" +
+                    "   target: " + target,
+                    e);
+        }
+        finally
+        {
+            try { channel.close(); } catch (IOException e) { logger.error(e); }
+        }
+    }
+
+    private long transferFromFile(FileChannel channel, WritableByteChannel target, long position, long count) throws IOException
+    {
+        long remaining = Math.max(0L, channel.size() - position);
+        if (count >= 0L && count < remaining)
+        {
+            remaining = count;
+        }
+        long transferred = 0L;
+        while (remaining > 0L)
+        {
+            // Large transfers are done in several calls
+            long written = channel.transferTo(position + transferred, remaining, target);
+            if (written <= 0L)
+            {
+                break;
+            }
+            transferred += written;
+            remaining -= written;
+        }
+        return transferred;
+    }
+
+    private long transferFromChannel(ReadableByteChannel channel, WritableByteChannel target, long position, long count) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(TRANSFER_BUFFER_SIZE);
+        // skip to the position
+        long skipped = 0L;
+        if (channel instanceof SeekableByteChannel && position > 0L)
+        {
+            ((SeekableByteChannel) channel).position(position);
+            skipped = position;
+        }
+        while (skipped < position)
+        {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), position - skipped));
+            int read = channel.read(buffer);
+            if (read < 0)
+            {
+                return 0L;
+            }
+            skipped += read;
+        }
+        long transferred = 0L;
+        while (count < 0L || transferred < count)
+        {
+            buffer.clear();
+            if (count >= 0L)
+            {
+                buffer.limit((int) Math.min(buffer.capacity(), count - transferred));
+            }
+            int read = channel.read(buffer);
+            if (read < 0)
+            {
+                break;
+            }
+            buffer.flip();
+            while (buffer.hasRemaining())
+            {
+                target.write(buffer);
+            }
+            transferred += read;
+        }
+        return transferred;
+    }
+
     /**
      * Copies the {@link #getContentInputStream() input stream} to the given
-     * <code>OutputStream</code>
+     * <code>OutputStream</code>.  Content written to a <code>FileOutputStream</code>
+     * is {@link #transferTo(WritableByteChannel, long, long) transferred} between the channels.
      */
     public final void getContent(OutputStream os) throws ContentIOException
     {
         try
         {
+            if (os instanceof FileOutputStream)
+            {
+                try
+                {
+                    transferTo(((FileOutputStream) os).getChannel(), 0L, -1L);
+                }
+                finally
+                {
+                    os.close();
+                }
+                return;
+            }
             InputStream is = getContentInputStream();
             FileCopyUtils.copy(is, os);  // both streams are closed
             // done
@@ -459,9 +603,15 @@ public abstract class AbstractContentReader extends AbstractContentAccessor impl
     {
         try
         {
-            InputStream is = getContentInputStream();
             FileOutputStream os = new FileOutputStream(file);
-            FileCopyUtils.copy(is, os);  // both streams are closed
+            try
+            {
+                transferTo(os.getChannel(), 0L, -1L);
+            }
+            finally
+            {
+                os.close();
+            }
             // done
         }
         catch (IOException e)
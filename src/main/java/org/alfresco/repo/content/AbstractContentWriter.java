@@ -77,6 +77,7 @@ public abstract class AbstractContentWriter extends AbstractContentAccessor impl
     private ContentReader existingContentReader;
     private MimetypeService mimetypeService;
     private DoGuessingOnCloseListener guessingOnCloseListener;
+    private ContentDigester digester;
     
     /**
      * This object provides a maximum size limit for content.
@@ -108,6 +109,49 @@ public abstract class AbstractContentWriter extends AbstractContentAccessor impl
         this.limitProvider = limitProvider;
     }
     
+    /**
+     * Digest the content as it is written.  The digest is available from {@link #getContentDigest()}
+     * once the channel has been closed, before the listeners are called.
+     * 
+     * @param digestAlgorithm       the name of a <tt>MessageDigest</tt> algorithm e.g. <tt>SHA-256</tt>
+     * @see ContentDigester
+     * @since 7.110
+     */
+    public synchronized void setDigestAlgorithm(String digestAlgorithm)
+    {
+        if (channel != null)
+        {
+            throw new RuntimeException("Channel is already in use");
+        }
+        if (digester == null)
+        {
+            // Keep the digest for the transaction before the listeners record the content URL
+            listeners.add(0, new ContentStreamListener()
+            {
+                public void contentStreamClosed() throws ContentIOException
+                {
+                    String contentDigest = getContentDigest();
+                    if (contentDigest != null)
+                    {
+                        ContentDigester.bindContentDigest(getContentUrl(), contentDigest);
+                    }
+                }
+            });
+        }
+        digester = new ContentDigester(digestAlgorithm);
+    }
+    
+    /**
+     * @return Returns the digest of the content written, or <tt>null</tt> if no digest was requested,
+     *      the content has not been completely written or the content was not written in order
+     * @see #setDigestAlgorithm(String)
+     * @since 7.110
+     */
+    public String getContentDigest()
+    {
+        return digester == null ? null : digester.getContentDigest();
+    }
+    
     /**
      * Supplies the Mimetype Service to be used when guessing
      *  encoding and mimetype information. 
@@ -285,6 +329,10 @@ public abstract class AbstractContentWriter extends AbstractContentAccessor impl
             throw new ContentIOException("A channel has already been opened");
         }
         WritableByteChannel directChannel = getDirectWritableChannel();
+        if (digester != null)
+        {
+            directChannel = digester.wrap(directChannel);
+        }
         channel = getCallbackWritableChannel(directChannel, listeners);
 
         // notify that the channel was opened
@@ -0,0 +1,431 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport.TxnReadState;
+import org.alfresco.repo.transaction.TransactionalResourceHelper;
+import org.alfresco.service.cmr.repository.ContentIOException;
+import org.apache.commons.codec.binary.Hex;
+
+/**
+ * Digests content as it is written, so that a digest of the content can be kept without
+ * reading the content a second time.
+ * <p>
+ * The channels returned by {@link #wrap(WritableByteChannel)} pass the bytes to the digest as they
+ * are written.  Content written out of order, e.g. through the random access methods of a
+ * {@link FileChannel}, cannot be digested in a single pass and leaves the content without a digest.
+ * <p>
+ * Digests take the form <tt>ALGORITHM:hex</tt> e.g. <tt>SHA-256:9f86d0...</tt>, so that the
+ * algorithm can be changed without invalidating the digests that have already been recorded.
+ * The digests of content written in a read-write transaction are bound to the transaction
+ * against the content URL until the URL is recorded in the database.
+ *
+ * @since 7.110
+ */
+public class ContentDigester
+{
+    /** Separates the algorithm from the digest value */
+    public static final String ALGORITHM_SEPARATOR = ":";
+    private static final String KEY_CONTENT_DIGESTS = "ContentDigester.ContentDigests";
+
+    private final String algorithm;
+    private final MessageDigest digest;
+    private long size;
+    private boolean valid;
+    private String contentDigest;
+
+    /**
+     * @param algorithm         the name of a {@link MessageDigest} algorithm e.g. <tt>SHA-256</tt>
+     * @throws ContentIOException if the algorithm is not available
+     */
+    public ContentDigester(String algorithm)
+    {
+        this.algorithm = algorithm;
+        try
+        {
+            this.digest = MessageDigest.getInstance(algorithm);
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new ContentIOException("Digest algorithm not available: " + algorithm, e);
+        }
+        this.valid = true;
+    }
+
+    /**
+     * @return              Returns the algorithm of the digest
+     */
+    public String getAlgorithm()
+    {
+        return algorithm;
+    }
+
+    /**
+     * Add bytes that follow on from the bytes already digested
+     *
+     * @param buffer        the bytes between the position and the limit of the buffer, which are all consumed
+     */
+    public synchronized void update(ByteBuffer buffer)
+    {
+        if (valid)
+        {
+            size += buffer.remaining();
+            digest.update(buffer);
+        }
+        else
+        {
+            buffer.position(buffer.limit());
+        }
+    }
+
+    /**
+     * Discard the digest as the content is not being written in order
+     */
+    public synchronized void invalidate()
+    {
+        valid = false;
+    }
+
+    /**
+     * @return              Returns the number of bytes digested
+     */
+    public synchronized long getSize()
+    {
+        return size;
+    }
+
+    /**
+     * Complete the digest.  Further bytes are ignored.
+     *
+     * @return              Returns the digest of the content or <tt>null</tt> if the content was not
+     *                      written in order
+     */
+    public synchronized String finish()
+    {
+        if (valid)
+        {
+            contentDigest = algorithm + ALGORITHM_SEPARATOR + new String(Hex.encodeHex(digest.digest()));
+            valid = false;
+        }
+        return contentDigest;
+    }
+
+    /**
+     * @return              Returns the completed digest or <tt>null</tt> if the content has not been
+     *                      completely written or was not written in order
+     */
+    public synchronized String getContentDigest()
+    {
+        return contentDigest;
+    }
+
+    /**
+     * Wrap a channel so that the bytes written to it are digested.  The digest is completed when
+     * the channel is closed.
+     *
+     * @param channel       the channel to which the content is written
+     * @return              Returns a channel of the same kind that digests the content
+     */
+    public WritableByteChannel wrap(WritableByteChannel channel)
+    {
+        if (channel instanceof FileChannel)
+        {
+            return new DigestingFileChannel((FileChannel) channel);
+        }
+        if (channel instanceof SeekableByteChannel)
+        {
+            // The position could be moved and is not tracked
+            invalidate();
+            return channel;
+        }
+        return new DigestingChannel(channel);
+    }
+
+    /**
+     * @param contentDigest a digest as given by {@link #finish()}
+     * @return              Returns the algorithm of the digest
+     */
+    public static String getAlgorithm(String contentDigest)
+    {
+        int index = contentDigest.indexOf(ALGORITHM_SEPARATOR);
+        if (index < 1)
+        {
+            throw new IllegalArgumentException("Not a content digest: " + contentDigest);
+        }
+        return contentDigest.substring(0, index);
+    }
+
+    /**
+     * Keep the digest of newly-written content until the content URL is recorded in the database.
+     * Nothing is kept outside of a read-write transaction.
+     *
+     * @param contentUrl    the URL of the content
+     * @param contentDigest the digest of the content
+     */
+    public static void bindContentDigest(String contentUrl, String contentDigest)
+    {
+        if (AlfrescoTransactionSupport.getTransactionReadState() != TxnReadState.TXN_READ_WRITE)
+        {
+            return;
+        }
+        Map<String, String> contentDigests = TransactionalResourceHelper.getMap(KEY_CONTENT_DIGESTS);
+        contentDigests.put(contentUrl, contentDigest);
+    }
+
+    /**
+     * @param contentUrl    the URL of the content
+     * @return              Returns the digest of content written in the current transaction or <tt>null</tt>
+     */
+    public static String getBoundContentDigest(String contentUrl)
+    {
+        if (AlfrescoTransactionSupport.getTransactionReadState() != TxnReadState.TXN_READ_WRITE)
+        {
+            return null;
+        }
+        Map<String, String> contentDigests = TransactionalResourceHelper.getMap(KEY_CONTENT_DIGESTS);
+        return contentDigests.get(contentUrl);
+    }
+
+    /**
+     * Digests the bytes written to a channel.
+     */
+    private class DigestingChannel implements WritableByteChannel
+    {
+        private final WritableByteChannel delegate;
+
+        private DigestingChannel(WritableByteChannel delegate)
+        {
+            this.delegate = delegate;
+        }
+
+        public int write(ByteBuffer src) throws IOException
+        {
+            ByteBuffer written = src.duplicate();
+            int count = delegate.write(src);
+            written.limit(written.position() + count);
+            update(written);
+            return count;
+        }
+
+        public boolean isOpen()
+        {
+            return delegate.isOpen();
+        }
+
+        public void close() throws IOException
+        {
+            delegate.close();
+            finish();
+        }
+
+        @Override
+        public String toString()
+        {
+            return "DigestingChannel[ " + delegate + "]";
+        }
+    }
+
+    /**
+     * Digests the bytes written to a file channel at its current position.  Anything that could
+     * write elsewhere, or move the position, discards the digest.
+     */
+    private class DigestingFileChannel extends FileChannel
+    {
+        private final FileChannel delegate;
+
+        private DigestingFileChannel(FileChannel delegate)
+        {
+            this.delegate = delegate;
+            try
+            {
+                if (delegate.position() != 0L)
+                {
+                    invalidate();
+                }
+            }
+            catch (IOException e)
+            {
+                invalidate();
+            }
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException
+        {
+            delegate.close();
+            finish();
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException
+        {
+            ByteBuffer written = src.duplicate();
+            int count = delegate.write(src);
+            written.limit(written.position() + count);
+            update(written);
+            return count;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException
+        {
+            ByteBuffer[] written = new ByteBuffer[length];
+            for (int i = 0; i < length; i++)
+            {
+                written[i] = srcs[offset + i].duplicate();
+            }
+            long count = delegate.write(srcs, offset, length);
+            long remaining = count;
+            for (int i = 0; i < length && remaining > 0L; i++)
+            {
+                int bytes = (int) Math.min(written[i].remaining(), remaining);
+                written[i].limit(written[i].position() + bytes);
+                update(written[i]);
+                remaining -= bytes;
+            }
+            return count;
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException
+        {
+            invalidate();
+            return delegate.write(src, position);
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException
+        {
+            // Moves the position
+            invalidate();
+            return delegate.read(dst);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException
+        {
+            invalidate();
+            return delegate.read(dsts, offset, length);
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException
+        {
+            return delegate.read(dst, position);
+        }
+
+        @Override
+        public long position() throws IOException
+        {
+            return delegate.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException
+        {
+            if (newPosition != delegate.position())
+            {
+                invalidate();
+            }
+            delegate.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException
+        {
+            return delegate.size();
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException
+        {
+            invalidate();
+            delegate.truncate(size);
+            return this;
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException
+        {
+            delegate.force(metaData);
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException
+        {
+            return delegate.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException
+        {
+            invalidate();
+            return delegate.transferFrom(src, position, count);
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException
+        {
+            if (mode != MapMode.READ_ONLY)
+            {
+                invalidate();
+            }
+            return delegate.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException
+        {
+            return delegate.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException
+        {
+            return delegate.tryLock(position, size, shared);
+        }
+
+        @Override
+        public String toString()
+        {
+            return "DigestingFileChannel[ " + delegate + "]";
+        }
+    }
+}
@@ -47,6 +47,7 @@ import org.alfresco.repo.content.transform.ContentTransformerRegistry;
 import org.alfresco.repo.content.transform.TransformerDebug;
 import org.alfresco.repo.content.transform.UnimportantTransformException;
 import org.alfresco.repo.content.transform.UnsupportedTransformationException;
+import org.alfresco.repo.domain.contentdata.ContentDataDAO;
 import org.alfresco.repo.node.NodeServicePolicies;
 import org.alfresco.repo.policy.ClassPolicyDelegate;
 import org.alfresco.repo.policy.JavaBehaviour;
@@ -107,6 +108,8 @@ public class ContentServiceImpl implements ContentService, ApplicationContextAwa
     private ContentTransformerRegistry transformerRegistry;
     /** The cleaner that will ensure that rollbacks clean up after themselves */
     private EagerContentStoreCleaner eagerContentStoreCleaner;
+    /** Holds the content that is kept in the database */
+    private ContentDataDAO contentDataDAO;
     /** the store to use.  Any multi-store support is provided by the store implementation. */
     private ContentStore store;
     /** the store for all temporarily created content */
@@ -115,6 +118,10 @@ public class ContentServiceImpl implements ContentService, ApplicationContextAwa
     private ContentTransformer imageMagickContentTransformer;
     /** Should we consider zero byte content to be the same as no content? */
     private boolean ignoreEmptyContent;
+    /** Content of up to this many bytes is held in the database rather than in the store */
+    private int inlineContentMaxSize = -1;
+    /** Written content is digested with this algorithm, if set */
+    private String contentDigestAlgorithm;
     private boolean transformerFailover = true;
     
     /**
@@ -163,6 +170,11 @@ public class ContentServiceImpl implements ContentService, ApplicationContextAwa
         this.eagerContentStoreCleaner = eagerContentStoreCleaner;
     }
 
+    public void setContentDataDAO(ContentDataDAO contentDataDAO)
+    {
+        this.contentDataDAO = contentDataDAO;
+    }
+
     public void setStore(ContentStore store)
     {
         this.store = store;
@@ -188,6 +200,45 @@ public class ContentServiceImpl implements ContentService, ApplicationContextAwa
         this.ignoreEmptyContent = ignoreEmptyContent;
     }
 
+    /**
+     * Set the size of content that is small enough to be held {@link InlineContentWriter inline},
+     * in the database, when written to a node.  Inline content is never written to the store and
+     * is only read through this service.  Sizes above {@link InlineContentWriter#MAX_INLINE_SIZE}
+     * are reduced to that size.
+     * 
+     * @param inlineContentMaxSize  the largest content, in bytes, to inline, or <tt>-1</tt> (the default)
+     *                              to keep all content in the store
+     */
+    public void setInlineContentMaxSize(int inlineContentMaxSize)
+    {
+        if (inlineContentMaxSize > InlineContentWriter.MAX_INLINE_SIZE)
+        {
+            logger.warn("Inline content is limited to " + InlineContentWriter.MAX_INLINE_SIZE + " bytes, not " + inlineContentMaxSize);
+            inlineContentMaxSize = InlineContentWriter.MAX_INLINE_SIZE;
+        }
+        this.inlineContentMaxSize = inlineContentMaxSize;
+    }
+
+    /**
+     * Set the algorithm used to {@link ContentDigester digest} content as it is written.  The digest
+     * is recorded along with the content URL, allowing the content to be verified later.
+     * 
+     * @param contentDigestAlgorithm    the name of a <tt>MessageDigest</tt> algorithm e.g. <tt>SHA-256</tt>,
+     *                                  or empty (the default) to record no digest
+     */
+    public void setContentDigestAlgorithm(String contentDigestAlgorithm)
+    {
+        if (contentDigestAlgorithm != null && contentDigestAlgorithm.trim().length() > 0)
+        {
+            // Fail now if the algorithm is not available
+            this.contentDigestAlgorithm = new ContentDigester(contentDigestAlgorithm.trim()).getAlgorithm();
+        }
+        else
+        {
+            this.contentDigestAlgorithm = null;
+        }
+    }
+
     /**
      * Allows fail over form one transformer to another when there is
      * more than one transformer available. The cost is that the output
@@ -398,7 +449,7 @@ public class ContentServiceImpl implements ContentService, ApplicationContextAwa
         ContentReader reader = null;
         try
         {
-            reader = store.getReader(contentUrl);
+            reader = getStoreReader(contentUrl);
         }
         catch (UnsupportedContentUrlException e)
         {
@@ -475,7 +526,7 @@ public class ContentServiceImpl implements ContentService, ApplicationContextAwa
         String contentUrl = contentData.getContentUrl();
         
         // The context of the read is entirely described by the URL
-        ContentReader reader = store.getReader(contentUrl);
+        ContentReader reader = getStoreReader(contentUrl);
         if (reader == null)
         {
             throw new AlfrescoRuntimeException("ContentStore implementations may not return null ContentReaders");
@@ -501,6 +552,19 @@ public class ContentServiceImpl implements ContentService, ApplicationContextAwa
         return reader;
     }
 
+    /**
+     * Get a reader from the store, unless the content is held in the database
+     */
+    private ContentReader getStoreReader(String contentUrl)
+    {
+        if (InlineContentReader.isInlineContentUrl(contentUrl))
+        {
+            byte[] content = contentDataDAO.getContentUrlInline(contentUrl);
+            return (content == null) ? new EmptyContentReader(contentUrl) : new InlineContentReader(contentUrl, content);
+        }
+        return store.getReader(contentUrl);
+    }
+
     public ContentWriter getWriter(NodeRef nodeRef, QName propertyQName, boolean update)
     {
         if (nodeRef == null)
@@ -510,6 +574,7 @@ public class ContentServiceImpl implements ContentService, ApplicationContextAwa
             ContentWriter writer = store.getWriter(ctx);
             // Register the new URL for rollback cleanup
             eagerContentStoreCleaner.registerNewContentUrl(writer.getContentUrl());
+            setDigestAlgorithm(writer);
             // done
             return writer;
         }
@@ -520,9 +585,19 @@ public class ContentServiceImpl implements ContentService, ApplicationContextAwa
         // get the content using the (potentially) existing content - the new content
         // can be wherever the store decides.
         ContentContext ctx = new NodeContentContext(existingContentReader, null, nodeRef, propertyQName);
-        ContentWriter writer = store.getWriter(ctx);
-        // Register the new URL for rollback cleanup
-        eagerContentStoreCleaner.registerNewContentUrl(writer.getContentUrl());
+        ContentWriter writer;
+        if (update && inlineContentMaxSize >= 0)
+        {
+            // Small content is held in the database and only larger content goes to the store
+            writer = new InlineContentWriter(store, ctx, eagerContentStoreCleaner, inlineContentMaxSize);
+        }
+        else
+        {
+            writer = store.getWriter(ctx);
+            // Register the new URL for rollback cleanup
+            eagerContentStoreCleaner.registerNewContentUrl(writer.getContentUrl());
+        }
+        setDigestAlgorithm(writer);
 
         Serializable contentValue = nodeService.getProperty(nodeRef, propertyQName);
 
@@ -555,6 +630,17 @@ public class ContentServiceImpl implements ContentService, ApplicationContextAwa
         return writer;
     }
 
+    /**
+     * Have the writer digest the content, if digests are recorded
+     */
+    private void setDigestAlgorithm(ContentWriter writer)
+    {
+        if (contentDigestAlgorithm != null && writer instanceof AbstractContentWriter)
+        {
+            ((AbstractContentWriter) writer).setDigestAlgorithm(contentDigestAlgorithm);
+        }
+    }
+
     /**
      * @return Returns a writer to an anonymous location
      */
@@ -995,6 +1081,15 @@ public class ContentServiceImpl implements ContentService, ApplicationContextAwa
         {
             try
             {
+                if (writer instanceof InlineContentWriter)
+                {
+                    byte[] inlineContent = ((InlineContentWriter) writer).getInlineContent();
+                    if (inlineContent != null)
+                    {
+                        // Bind on every attempt, as the binding is lost if the transaction is retried
+                        InlineContentWriter.bindInlineContent(writer.getContentUrl(), inlineContent);
+                    }
+                }
                 // set the full content property
                 ContentData contentData = writer.getContentData();
                 nodeService.setProperty(nodeRef, propertyQName, contentData);
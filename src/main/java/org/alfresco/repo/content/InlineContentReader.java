@@ -0,0 +1,102 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content;
+
+import java.io.ByteArrayInputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentReader;
+
+/**
+ * Reader onto content that is held in the database rather than in a content store.
+ * <p>
+ * Inline content has a URL of the form <b>inline://ID</b>, which does not hold any content.
+ * The content is written by an {@link InlineContentWriter} and recorded along with the URL.
+ * Content stores do not support the inline protocol, so there is nothing to delete from any
+ * store when the URL is orphaned.
+ *
+ * @since 7.110
+ */
+public class InlineContentReader extends AbstractContentReader
+{
+    public static final String INLINE_PROTOCOL = "inline";
+    private static final String INLINE_URL_PREFIX = INLINE_PROTOCOL + ContentStore.PROTOCOL_DELIMITER;
+
+    private final byte[] content;
+
+    /**
+     * @param contentUrl    an inline content URL
+     * @param content       the content held for the URL
+     */
+    public InlineContentReader(String contentUrl, byte[] content)
+    {
+        super(contentUrl);
+        this.content = content;
+    }
+
+    /**
+     * @return          Returns <tt>true</tt> if the URL is for content held in the database
+     */
+    public static boolean isInlineContentUrl(String contentUrl)
+    {
+        return contentUrl != null && contentUrl.startsWith(INLINE_URL_PREFIX);
+    }
+
+    @Override
+    protected ContentReader createReader() throws ContentIOException
+    {
+        return new InlineContentReader(getContentUrl(), content);
+    }
+
+    @Override
+    protected ReadableByteChannel getDirectReadableChannel() throws ContentIOException
+    {
+        return Channels.newChannel(new ByteArrayInputStream(content));
+    }
+
+    /**
+     * @return      Returns <tt>true</tt> always
+     */
+    public boolean exists()
+    {
+        return true;
+    }
+
+    /**
+     * @return      Returns <tt>0</tt> always, as the content has no modification time of its own
+     */
+    public long getLastModified()
+    {
+        return 0L;
+    }
+
+    public long getSize()
+    {
+        return content.length;
+    }
+}
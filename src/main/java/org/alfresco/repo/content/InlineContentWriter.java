@@ -0,0 +1,236 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Map;
+
+import org.alfresco.repo.content.cleanup.EagerContentStoreCleaner;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport.TxnReadState;
+import org.alfresco.repo.transaction.TransactionalResourceHelper;
+import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.ContentWriter;
+import org.alfresco.util.GUID;
+
+/**
+ * Writer that holds small content in memory so that it can be kept in the database
+ * rather than in a content store.
+ * <p>
+ * The writer starts with a URL of the form <b>inline://ID</b>, which does not hold any content.
+ * Content up to the given size is buffered.  Larger content is passed on to a writer from the
+ * content store, in which case this writer takes on the URL of the store's writer.  Once the
+ * channel is closed, {@link #getInlineContent()} gives the content to
+ * {@link #bindInlineContent(String, byte[]) bind to the transaction}, so that the content is
+ * recorded with the URL.  The content is then only available through the content service.
+ *
+ * @since 7.110
+ */
+public class InlineContentWriter extends AbstractContentWriter
+{
+    /** The largest content, in bytes, that may be held in the database */
+    public static final int MAX_INLINE_SIZE = 4096;
+    private static final String KEY_INLINE_CONTENT = "InlineContentWriter.InlineContent";
+
+    private final ContentStore store;
+    private final ContentContext context;
+    private final EagerContentStoreCleaner eagerContentStoreCleaner;
+    private final int maxSize;
+    private ContentWriter storeWriter;
+    private byte[] content;
+
+    /**
+     * @param store                     the store to write content that is too large to inline
+     * @param context                   the context of the content, used to get a writer from the store
+     * @param eagerContentStoreCleaner  registers the URL of content written to the store for rollback cleanup
+     * @param maxSize                   the largest content, in bytes, to inline
+     */
+    public InlineContentWriter(
+            ContentStore store,
+            ContentContext context,
+            EagerContentStoreCleaner eagerContentStoreCleaner,
+            int maxSize)
+    {
+        super(createContentUrl(), context.getExistingContentReader());
+        if (maxSize < 0 || maxSize > MAX_INLINE_SIZE)
+        {
+            throw new IllegalArgumentException("Inline content must be between 0 and " + MAX_INLINE_SIZE + " bytes: " + maxSize);
+        }
+        this.store = store;
+        this.context = context;
+        this.eagerContentStoreCleaner = eagerContentStoreCleaner;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return      Returns a new, unique inline content URL
+     */
+    private static String createContentUrl()
+    {
+        return InlineContentReader.INLINE_PROTOCOL + ContentStore.PROTOCOL_DELIMITER + GUID.generate();
+    }
+
+    /**
+     * Keep inline content until its content URL is recorded in the database.
+     * Nothing is kept outside of a read-write transaction.
+     *
+     * @param contentUrl    the inline URL of the content
+     * @param content       the content
+     */
+    public static void bindInlineContent(String contentUrl, byte[] content)
+    {
+        if (AlfrescoTransactionSupport.getTransactionReadState() != TxnReadState.TXN_READ_WRITE)
+        {
+            return;
+        }
+        Map<String, byte[]> inlineContent = TransactionalResourceHelper.getMap(KEY_INLINE_CONTENT);
+        inlineContent.put(contentUrl, content);
+    }
+
+    /**
+     * @param contentUrl    the URL of the content
+     * @return              Returns the inline content written in the current transaction or <tt>null</tt>
+     */
+    public static byte[] getBoundInlineContent(String contentUrl)
+    {
+        if (AlfrescoTransactionSupport.getTransactionReadState() != TxnReadState.TXN_READ_WRITE)
+        {
+            return null;
+        }
+        Map<String, byte[]> inlineContent = TransactionalResourceHelper.getMap(KEY_INLINE_CONTENT);
+        return inlineContent.get(contentUrl);
+    }
+
+    /**
+     * @return      Returns the content written, or <tt>null</tt> if the channel has not been closed
+     *              or the content was too large and was written to the store
+     */
+    public byte[] getInlineContent()
+    {
+        return content;
+    }
+
+    @Override
+    protected ContentReader createReader() throws ContentIOException
+    {
+        if (storeWriter != null)
+        {
+            return storeWriter.getReader();
+        }
+        return new InlineContentReader(getContentUrl(), content);
+    }
+
+    @Override
+    protected WritableByteChannel getDirectWritableChannel() throws ContentIOException
+    {
+        return new InlineChannel();
+    }
+
+    public long getSize()
+    {
+        if (storeWriter != null)
+        {
+            return storeWriter.getSize();
+        }
+        return (content == null) ? 0L : content.length;
+    }
+
+    /**
+     * Buffers the content until it becomes too large, after which it is written to the store.
+     */
+    private class InlineChannel implements WritableByteChannel
+    {
+        private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private WritableByteChannel storeChannel;
+        private boolean open = true;
+
+        public int write(ByteBuffer src) throws IOException
+        {
+            if (!open)
+            {
+                throw new IOException("Channel is closed");
+            }
+            if (storeChannel == null && buffer.size() + src.remaining() > maxSize)
+            {
+                spill();
+            }
+            if (storeChannel != null)
+            {
+                return storeChannel.write(src);
+            }
+            int count = src.remaining();
+            byte[] bytes = new byte[count];
+            src.get(bytes);
+            buffer.write(bytes);
+            return count;
+        }
+
+        /**
+         * Move the content written so far to a writer from the store
+         */
+        private void spill() throws IOException
+        {
+            storeWriter = store.getWriter(context);
+            // Register the new URL for rollback cleanup
+            eagerContentStoreCleaner.registerNewContentUrl(storeWriter.getContentUrl());
+            setContentUrl(storeWriter.getContentUrl());
+            storeChannel = storeWriter.getWritableChannel();
+            ByteBuffer buffered = ByteBuffer.wrap(buffer.toByteArray());
+            while (buffered.hasRemaining())
+            {
+                storeChannel.write(buffered);
+            }
+            buffer = null;
+        }
+
+        public boolean isOpen()
+        {
+            return open;
+        }
+
+        public void close() throws IOException
+        {
+            if (!open)
+            {
+                return;
+            }
+            open = false;
+            if (storeChannel != null)
+            {
+                storeChannel.close();
+            }
+            else
+            {
+                content = buffer.toByteArray();
+                buffer = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.caching;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+
+import org.alfresco.repo.content.AbstractContentReader;
+import org.alfresco.repo.content.ContentStore;
+import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentReader;
+
+/**
+ * Reader onto content that a {@link CachingContentStore} caches in fixed-size blocks.
+ * <p>
+ * The channel is a {@link SeekableByteChannel}, so a range can be read by positioning it.
+ * Only the blocks that are actually read are fetched into the cache, and the data of each
+ * block is available as soon as the block itself has been cached.  The size, existence and
+ * modification time of the content are taken from the backing store.
+ *
+ * @since 7.110
+ */
+class BlockCachingContentReader extends AbstractContentReader
+{
+    private final CachingContentStore store;
+    private final ContentStore backingStore;
+    private ContentReader backingStoreReader;
+
+    BlockCachingContentReader(CachingContentStore store, ContentStore backingStore, String contentUrl)
+    {
+        super(contentUrl);
+        this.store = store;
+        this.backingStore = backingStore;
+    }
+
+    private synchronized ContentReader getBackingStoreReader()
+    {
+        if (backingStoreReader == null)
+        {
+            backingStoreReader = backingStore.getReader(getContentUrl());
+        }
+        return backingStoreReader;
+    }
+
+    @Override
+    public boolean exists()
+    {
+        return getBackingStoreReader().exists();
+    }
+
+    @Override
+    public long getSize()
+    {
+        return getBackingStoreReader().getSize();
+    }
+
+    @Override
+    public long getLastModified()
+    {
+        return getBackingStoreReader().getLastModified();
+    }
+
+    @Override
+    protected ContentReader createReader() throws ContentIOException
+    {
+        return new BlockCachingContentReader(store, backingStore, getContentUrl());
+    }
+
+    @Override
+    protected ReadableByteChannel getDirectReadableChannel() throws ContentIOException
+    {
+        if (!exists())
+        {
+            throw new ContentIOException("Content does not exist in the backing store: " + this);
+        }
+        return new BlockChannel();
+    }
+
+    /**
+     * Reads the content one block at a time, fetching blocks that are not in the cache.
+     */
+    private class BlockChannel implements SeekableByteChannel
+    {
+        private final BlockSource source = new BlockSource(backingStore, getContentUrl());
+        private final long blockSize = store.getBlockSize();
+        private long position;
+        private long size = -1L;
+        private boolean open = true;
+        private long blockIndex = -1L;
+        private FileChannel block;
+        private int blocksRead;
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException
+        {
+            checkOpen();
+            if (position >= size())
+            {
+                return -1;
+            }
+            if (!dst.hasRemaining())
+            {
+                return 0;
+            }
+            long index = position / blockSize;
+            if (index != blockIndex)
+            {
+                closeBlock();
+                ContentReader blockReader = store.getBlock(getContentUrl(), index, source);
+                if (blockReader == null)
+                {
+                    return -1;
+                }
+                block = blockReader.getFileChannel();
+                blockIndex = index;
+                blocksRead++;
+            }
+            int read = block.read(dst, position - (index * blockSize));
+            if (read > 0)
+            {
+                position += read;
+            }
+            return read;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException
+        {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public long position() throws IOException
+        {
+            checkOpen();
+            return position;
+        }
+
+        @Override
+        public SeekableByteChannel position(long newPosition) throws IOException
+        {
+            checkOpen();
+            if (newPosition < 0L)
+            {
+                throw new IllegalArgumentException("Position may not be negative: " + newPosition);
+            }
+            position = newPosition;
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException
+        {
+            checkOpen();
+            if (size < 0L)
+            {
+                size = getSize();
+            }
+            return size;
+        }
+
+        @Override
+        public SeekableByteChannel truncate(long size) throws IOException
+        {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public boolean isOpen()
+        {
+            return open;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            if (!open)
+            {
+                return;
+            }
+            open = false;
+            closeBlock();
+            source.close();
+            int misses = source.getBlocksFetched();
+            store.blocksRead(getContentUrl(), Math.max(0, blocksRead - misses), misses);
+        }
+
+        private void checkOpen() throws IOException
+        {
+            if (!open)
+            {
+                throw new ClosedChannelException();
+            }
+        }
+
+        private void closeBlock() throws IOException
+        {
+            if (block != null)
+            {
+                block.close();
+                block = null;
+                blockIndex = -1L;
+            }
+        }
+    }
+}
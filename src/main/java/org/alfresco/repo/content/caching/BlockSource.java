@@ -0,0 +1,124 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.caching;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+
+import org.alfresco.repo.content.ContentStore;
+
+/**
+ * Reads the backing store content of a URL so that it can be copied into cache blocks.
+ * <p>
+ * The backing store channel is only opened when the first block is fetched and is then kept
+ * open, so that a run of missing blocks is read in a single pass.  Seekable channels are
+ * positioned at the start of each block; other channels are read forward and are only
+ * reopened if an earlier block is requested.
+ *
+ * @since 7.110
+ */
+class BlockSource
+{
+    private static final int SKIP_BUFFER_SIZE = 8192;
+
+    private final ContentStore backingStore;
+    private final String url;
+    private ReadableByteChannel channel;
+    private long position;
+    private int blocksFetched;
+
+    BlockSource(ContentStore backingStore, String url)
+    {
+        this.backingStore = backingStore;
+        this.url = url;
+    }
+
+    /**
+     * Moves to the start of a block that is about to be copied from the backing store.
+     *
+     * @param offset        the offset of the block within the content
+     */
+    void startBlock(long offset) throws IOException
+    {
+        blocksFetched++;
+        if (channel != null && position > offset && !(channel instanceof SeekableByteChannel))
+        {
+            close();
+        }
+        if (channel == null)
+        {
+            channel = backingStore.getReader(url).getReadableChannel();
+            position = 0L;
+        }
+        if (channel instanceof SeekableByteChannel)
+        {
+            ((SeekableByteChannel) channel).position(offset);
+            position = offset;
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(SKIP_BUFFER_SIZE);
+        while (position < offset)
+        {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), offset - position));
+            int read = channel.read(buffer);
+            if (read < 0)
+            {
+                break;
+            }
+            position += read;
+        }
+    }
+
+    int read(ByteBuffer dst) throws IOException
+    {
+        int read = channel.read(dst);
+        if (read > 0)
+        {
+            position += read;
+        }
+        return read;
+    }
+
+    /**
+     * @return          Returns the number of blocks that have been copied from the backing store
+     */
+    int getBlocksFetched()
+    {
+        return blocksFetched;
+    }
+
+    void close()
+    {
+        if (channel != null)
+        {
+            try { channel.close(); } catch (Throwable e) {}
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.caching;
+
+/**
+ * Event fired when a reader onto content cached in blocks by a {@link CachingContentStore}
+ * is closed, giving the number of blocks that were found in the cache and the number that
+ * had to be fetched from the backing store.
+ *
+ * @since 7.110
+ */
+public class CachedContentBlocksReadEvent extends CachingContentStoreEvent
+{
+    private static final long serialVersionUID = 1L;
+
+    private final String contentUrl;
+    private final int blockHits;
+    private final int blockMisses;
+
+    public CachedContentBlocksReadEvent(CachingContentStore source, String contentUrl, int blockHits, int blockMisses)
+    {
+        super(source);
+        this.contentUrl = contentUrl;
+        this.blockHits = blockHits;
+        this.blockMisses = blockMisses;
+    }
+
+    public CachingContentStore getCachingContentStore()
+    {
+        return (CachingContentStore) source;
+    }
+
+    public String getContentUrl()
+    {
+        return contentUrl;
+    }
+
+    public int getBlockHits()
+    {
+        return blockHits;
+    }
+
+    public int getBlockMisses()
+    {
+        return blockMisses;
+    }
+}
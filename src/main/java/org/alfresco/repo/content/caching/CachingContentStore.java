@@ -25,6 +25,15 @@
  */
 package org.alfresco.repo.content.caching;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
@@ -34,11 +43,13 @@ import org.alfresco.repo.content.ContentStore;
 import org.alfresco.repo.content.caching.quota.QuotaManagerStrategy;
 import org.alfresco.repo.content.caching.quota.UnlimitedQuotaStrategy;
 import org.alfresco.repo.content.filestore.FileContentStore;
+import org.alfresco.repo.content.filestore.FileContentWriter;
 import org.alfresco.repo.content.filestore.SpoofedTextContentReader;
 import org.alfresco.service.cmr.repository.ContentIOException;
 import org.alfresco.service.cmr.repository.ContentReader;
 import org.alfresco.service.cmr.repository.ContentStreamListener;
 import org.alfresco.service.cmr.repository.ContentWriter;
+import org.alfresco.util.TempFileProvider;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.BeanNameAware;
@@ -57,6 +68,12 @@ import org.springframework.context.ApplicationEventPublisherAware;
  * <p>
  * This store handles the {@link FileContentStore#SPOOF_PROTOCOL} and can be used to wrap stores
  * that do not handle the protocol out of the box e.g. the S3 connector's store.
+ * <p>
+ * When a {@link #setBlockSize(long) block size} is set, content that is not already cached is
+ * cached in blocks of that size rather than as a whole.  Each block is a separate cache entry,
+ * so a reader positioned within large content only waits for the blocks it reads.  The remaining
+ * blocks are filled by the {@link #setBlockFillExecutor(Executor) block fill executor}, if there
+ * is one, once a reader that missed blocks has been closed.
  * 
  * @author Matt Ward
  */
@@ -66,6 +83,8 @@ public class CachingContentStore implements ContentStore, ApplicationEventPublis
     // NUM_LOCKS absolutely must be a power of 2 for the use of locks to be evenly balanced
     private final static int numLocks = 256;
     private final static ReentrantReadWriteLock[] locks; 
+    private final static String BLOCK_URL_SEPARATOR = "#block-";
+    private final static int BLOCK_BUFFER_SIZE = 65536;
     private ContentStore backingStore;
     private ContentCache cache;
     private QuotaManagerStrategy quota = new UnlimitedQuotaStrategy();
@@ -73,6 +92,11 @@ public class CachingContentStore implements ContentStore, ApplicationEventPublis
     private int maxCacheTries = 2;
     private ApplicationEventPublisher eventPublisher;
     private String beanName;
+    private long blockSize;
+    private Executor blockFillExecutor;
+    private final Set<String> blockFills = ConcurrentHashMap.newKeySet();
+    private final AtomicLong blockHits = new AtomicLong();
+    private final AtomicLong blockMisses = new AtomicLong();
     
     static
     {
@@ -186,6 +210,10 @@ public class CachingContentStore implements ContentStore, ApplicationEventPublis
             readLock.unlock();
         }
         
+        if (blockSize > 0L)
+        {
+            return new BlockCachingContentReader(this, backingStore, contentUrl);
+        }
         return cacheAndRead(contentUrl);
     }    
     
@@ -279,6 +307,251 @@ public class CachingContentStore implements ContentStore, ApplicationEventPublis
         return reader;
     }
     
+    /**
+     * Get a reader onto a block of content, caching the block if it is not already in the cache.
+     * The block is copied from the given source, which is left positioned after the block.
+     * 
+     * @param url the content URL
+     * @param index the index of the block
+     * @param source the source of the backing store content
+     * @return a reader onto the block or <tt>null</tt> if the block is beyond the end of the content
+     */
+    ContentReader getBlock(String url, long index, BlockSource source)
+    {
+        return getBlock(url, index, source, true);
+    }
+    
+    /**
+     * @param forReader <tt>true</tt> if the block is to be read even if the quota does not allow it
+     *            to be cached, in which case it is kept in a temporary file until its reader is closed
+     * @return a reader onto the block or <tt>null</tt> if the block is beyond the end of the content
+     *            or is not for a reader and cannot be cached
+     * @see #getBlock(String, long, BlockSource)
+     */
+    private ContentReader getBlock(String url, long index, BlockSource source, boolean forReader)
+    {
+        String blockUrl = getBlockUrl(url, index);
+        ReentrantReadWriteLock readWriteLock = readWriteLock(blockUrl);
+        ReadLock readLock = readWriteLock.readLock();
+        readLock.lock();
+        try
+        {
+            if (cache.contains(blockUrl))
+            {
+                return cache.getReader(blockUrl);
+            }
+        }
+        catch(CacheMissException e)
+        {
+            // Fall through to cache the block
+        }
+        finally
+        {
+            readLock.unlock();
+        }
+        
+        WriteLock writeLock = readWriteLock.writeLock();
+        writeLock.lock();
+        try
+        {
+            // Double check, as another reader may have cached the block
+            try
+            {
+                if (cache.contains(blockUrl))
+                {
+                    return cache.getReader(blockUrl);
+                }
+            }
+            catch(CacheMissException e)
+            {
+                cache.remove(blockUrl);
+            }
+            return cacheBlock(blockUrl, index, source, forReader);
+        }
+        catch (IOException e)
+        {
+            throw new ContentIOException("Failed to cache content block: \n" +
+                    "   url: " + url + "\n" +
+                    "   block: " + index,
+                    e);
+        }
+        finally
+        {
+            writeLock.unlock();
+        }
+    }
+    
+    private ContentReader cacheBlock(String blockUrl, long index, BlockSource source, boolean forReader) throws IOException
+    {
+        source.startBlock(index * blockSize);
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(blockSize, BLOCK_BUFFER_SIZE));
+        int read = source.read(buffer);
+        if (read < 0)
+        {
+            return null;
+        }
+        
+        // If the quota does not allow the block to be cached then it is only kept for the reader
+        boolean cached = quota.beforeWritingCacheFile(blockSize);
+        if (!cached && !forReader)
+        {
+            return null;
+        }
+        final File tempFile = cached ? null : TempFileProvider.createTempFile("cached_block_", ".bin");
+        ContentWriter writer = cached ? cache.getWriter(blockUrl) : new FileContentWriter(tempFile);
+        long written = 0L;
+        WritableByteChannel channel = writer.getWritableChannel();
+        boolean success = false;
+        try
+        {
+            while (read >= 0)
+            {
+                buffer.flip();
+                while (buffer.hasRemaining())
+                {
+                    channel.write(buffer);
+                }
+                written += read;
+                if (written >= blockSize)
+                {
+                    break;
+                }
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), blockSize - written));
+                read = source.read(buffer);
+            }
+            success = true;
+        }
+        finally
+        {
+            channel.close();
+            if (!success && tempFile != null)
+            {
+                tempFile.delete();
+            }
+        }
+        
+        if (!cached)
+        {
+            // The temporary file is deleted once the reader is done with it
+            ContentReader reader = writer.getReader();
+            reader.addListener(new ContentStreamListener()
+            {
+                @Override
+                public void contentStreamClosed() throws ContentIOException
+                {
+                    tempFile.delete();
+                }
+            });
+            return reader;
+        }
+        ContentReader reader = cache.getReader(blockUrl);
+        if (!quota.afterWritingCacheFile(written))
+        {
+            // Quota strategy has requested the cache file not to be kept,
+            // the file is left for the reader and the cleaner.
+            cache.remove(blockUrl);
+        }
+        return reader;
+    }
+    
+    /**
+     * Called when a reader onto content cached in blocks is closed.  The block statistics are
+     * updated and, if blocks were missing, the rest of the content is cached in the background.
+     */
+    void blocksRead(String url, int hits, int misses)
+    {
+        blockHits.addAndGet(hits);
+        blockMisses.addAndGet(misses);
+        if (eventPublisher != null)
+        {
+            eventPublisher.publishEvent(new CachedContentBlocksReadEvent(this, url, hits, misses));
+        }
+        if (misses > 0)
+        {
+            fillBlocks(url);
+        }
+    }
+    
+    private void fillBlocks(final String url)
+    {
+        if (blockFillExecutor == null || !blockFills.add(url))
+        {
+            return;
+        }
+        try
+        {
+            blockFillExecutor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    BlockSource source = new BlockSource(backingStore, url);
+                    try
+                    {
+                        long size = backingStore.getReader(url).getSize();
+                        for (long index = 0L; index * blockSize < size; index++)
+                        {
+                            if (!quota.beforeWritingCacheFile(blockSize))
+                            {
+                                break;
+                            }
+                            if (getBlock(url, index, source, false) == null)
+                            {
+                                break;
+                            }
+                        }
+                    }
+                    catch (Throwable e)
+                    {
+                        if (log.isWarnEnabled())
+                        {
+                            log.warn("Failed to fill cache blocks [url=" + url + "]", e);
+                        }
+                    }
+                    finally
+                    {
+                        source.close();
+                        blockFills.remove(url);
+                    }
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            blockFills.remove(url);
+        }
+    }
+    
+    /**
+     * Get the URL under which a block of content is cached.
+     * 
+     * @param url the content URL
+     * @param index the index of the block
+     * @return the block URL
+     */
+    static String getBlockUrl(String url, long index)
+    {
+        return url + BLOCK_URL_SEPARATOR + index;
+    }
+    
+    /**
+     * Removes the blocks of the given content from the cache lookup table.
+     */
+    private void removeBlocks(String url)
+    {
+        ContentReader reader = backingStore.getReader(url);
+        if (!reader.exists())
+        {
+            return;
+        }
+        long size = reader.getSize();
+        for (long index = 0L; index * blockSize < size; index++)
+        {
+            cache.remove(getBlockUrl(url, index));
+        }
+    }
+    
     @Override
     public ContentWriter getWriter(final ContentContext context)
     {
@@ -343,6 +616,11 @@ public class CachingContentStore implements ContentStore, ApplicationEventPublis
             return false;
         }
 
+        if (blockSize > 0L)
+        {
+            removeBlocks(contentUrl);
+        }
+
         ReentrantReadWriteLock readWriteLock = readWriteLock(contentUrl);
         ReadLock readLock = readWriteLock.readLock();
         readLock.lock();
@@ -459,6 +737,49 @@ public class CachingContentStore implements ContentStore, ApplicationEventPublis
         return this.quota;
     }
 
+    /**
+     * Sets the size of the blocks in which content is cached, <tt>0</tt> (the default)
+     * caches each content item as a whole.
+     * 
+     * @param blockSize the block size in bytes
+     */
+    public void setBlockSize(long blockSize)
+    {
+        this.blockSize = blockSize;
+    }
+
+    public long getBlockSize()
+    {
+        return this.blockSize;
+    }
+
+    /**
+     * Sets the executor used to cache the remaining blocks of content that was only partly
+     * read.  Without an executor, only the blocks that are read are cached.
+     * 
+     * @param blockFillExecutor Executor
+     */
+    public void setBlockFillExecutor(Executor blockFillExecutor)
+    {
+        this.blockFillExecutor = blockFillExecutor;
+    }
+
+    /**
+     * @return the number of blocks read from the cache by closed readers
+     */
+    public long getBlockHits()
+    {
+        return blockHits.get();
+    }
+
+    /**
+     * @return the number of blocks read from the backing store by closed readers
+     */
+    public long getBlockMisses()
+    {
+        return blockMisses.get();
+    }
+
     @Override
     public void setApplicationEventPublisher(ApplicationEventPublisher applicationEventPublisher)
     {
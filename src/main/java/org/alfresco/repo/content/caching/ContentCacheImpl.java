@@ -26,14 +26,18 @@
 package org.alfresco.repo.content.caching;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.GregorianCalendar;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.alfresco.repo.cache.SimpleCache;
+import org.alfresco.repo.content.caching.HotContentTier.HotContent;
 import org.alfresco.repo.content.filestore.FileContentReader;
 import org.alfresco.repo.content.filestore.FileContentWriter;
 import org.alfresco.service.cmr.repository.ContentIOException;
@@ -49,6 +53,11 @@ import org.apache.commons.logging.LogFactory;
  * is stored on disk in the location specified by {@link #cacheRoot}.
  * <p>
  * The in-memory lookup table is provided by a SimpleCache implementation.
+ * <p>
+ * Optionally, copies of small cache files are held in memory once they are read a second time, up
+ * to a {@link #setHotTierMaxSizeMB(long) total size}, so that frequently-read content such as
+ * thumbnails is served without going to disk.  A copy is only served while its content URL
+ * is in the lookup table, and is dropped as its cache file is removed or deleted.
  * 
  * @author Matt Ward
  */
@@ -59,6 +68,10 @@ public class ContentCacheImpl implements ContentCache
     private static final String CACHE_FILE_TEMP_EXT = ".tmp";
     private File cacheRoot;
     private SimpleCache<Key, String> memoryStore;
+    private HotContentTier hotTier;
+    private long hotTierMaxFileSizeBytes = 64L * 1024L;
+    private final AtomicLong hotTierHits = new AtomicLong();
+    private final AtomicLong hotTierMisses = new AtomicLong();
     
     
     @Override
@@ -125,6 +138,16 @@ public class ContentCacheImpl implements ContentCache
             // cache file path to URL mapping is also kept in the cache.
             memoryStore.get(Key.forCacheFile(path));
             
+            HotContentTier hotTier = this.hotTier;
+            if (hotTier != null)
+            {
+                ContentReader reader = getHotReader(hotTier, path, contentUrl);
+                if (reader != null)
+                {
+                    return reader;
+                }
+            }
+            
             File cacheFile = new File(path);
             if (cacheFile.exists())
             {
@@ -135,6 +158,51 @@ public class ContentCacheImpl implements ContentCache
         throw new CacheMissException(contentUrl);
     }
     
+    /**
+     * Get a reader onto the in-memory copy of a cache file, first copying the file into memory
+     * if it is small enough and has been read recently.
+     * 
+     * @return a reader, or <tt>null</tt> if the cache file is too large, missing or not yet admitted
+     */
+    private ContentReader getHotReader(HotContentTier hotTier, String path, String contentUrl)
+    {
+        File cacheFile = new File(path);
+        HotContent content = hotTier.get(path);
+        if (content != null)
+        {
+            hotTierHits.incrementAndGet();
+            return new HotContentReader(content, cacheFile, contentUrl);
+        }
+        long size = cacheFile.length();
+        if (size == 0L || size > hotTierMaxFileSizeBytes)
+        {
+            return null;
+        }
+        hotTierMisses.incrementAndGet();
+        if (!hotTier.admit(path))
+        {
+            // Only read once so far
+            return null;
+        }
+        try
+        {
+            long lastModified = cacheFile.lastModified();
+            content = new HotContent(Files.readAllBytes(cacheFile.toPath()), lastModified);
+        }
+        catch (IOException e)
+        {
+            // Most likely deleted by the cleaner
+            return null;
+        }
+        hotTier.put(path, content);
+        if (!cacheFile.exists())
+        {
+            // The cleaner deleted the file while it was being copied
+            hotTier.remove(path);
+        }
+        return new HotContentReader(content, cacheFile, contentUrl);
+    }
+    
     @Override
     public boolean put(String contentUrl, ContentReader source)
     {
@@ -179,14 +247,23 @@ public class ContentCacheImpl implements ContentCache
         String path = getCacheFilePath(contentUrl);
         memoryStore.remove(Key.forUrl(contentUrl));
         memoryStore.remove(Key.forCacheFile(path));
+        if (path != null)
+        {
+            removeHotContent(path);
+        }
     }
     
     /**
-     * Remove all items from the lookup table. Cached content files are not removed. 
+     * Remove all items from the lookup table and from memory. Cached content files are not removed. 
      */
     public void removeAll()
     {
         memoryStore.clear();
+        HotContentTier hotTier = this.hotTier;
+        if (hotTier != null)
+        {
+            hotTier.clear();
+        }
     }
     
     @Override
@@ -194,6 +271,26 @@ public class ContentCacheImpl implements ContentCache
     {
         File cacheFile = new File(getCacheFilePath(url));
         cacheFile.delete();
+        removeHotContent(cacheFile.getAbsolutePath());
+    }
+    
+    /**
+     * Drop the in-memory copy, if there is one, of a cache file that has been deleted.
+     * 
+     * @param cacheFile the deleted cache file
+     */
+    public void removeHotContent(File cacheFile)
+    {
+        removeHotContent(cacheFile.getAbsolutePath());
+    }
+    
+    private void removeHotContent(String path)
+    {
+        HotContentTier hotTier = this.hotTier;
+        if (hotTier != null)
+        {
+            hotTier.remove(path);
+        }
     }
 
     @Override
@@ -307,6 +404,60 @@ public class ContentCacheImpl implements ContentCache
         this.memoryStore = memoryStore;
     }
     
+    /**
+     * Set the total size of the in-memory copies of small cache files.
+     * 
+     * @param hotTierMaxSizeMB the total size in MB, or <tt>0</tt> (the default) to always read from disk
+     */
+    public void setHotTierMaxSizeMB(long hotTierMaxSizeMB)
+    {
+        this.hotTier = (hotTierMaxSizeMB > 0L) ? new HotContentTier(hotTierMaxSizeMB * 1024L * 1024L) : null;
+    }
+    
+    /**
+     * Set the size of the largest cache file that is copied into memory.
+     * 
+     * @param hotTierMaxFileSizeKB the size in KB (default: 64)
+     */
+    public void setHotTierMaxFileSizeKB(long hotTierMaxFileSizeKB)
+    {
+        this.hotTierMaxFileSizeBytes = hotTierMaxFileSizeKB * 1024L;
+    }
+    
+    /**
+     * @return the number of reads served from the in-memory copies of cache files
+     */
+    public long getHotTierHits()
+    {
+        return hotTierHits.get();
+    }
+    
+    /**
+     * @return the number of reads of small cache files that were not served from memory
+     */
+    public long getHotTierMisses()
+    {
+        return hotTierMisses.get();
+    }
+    
+    /**
+     * @return the total size in bytes of the in-memory copies of cache files
+     */
+    public long getHotTierSizeBytes()
+    {
+        HotContentTier hotTier = this.hotTier;
+        return (hotTier == null) ? 0L : hotTier.getSizeBytes();
+    }
+    
+    /**
+     * @return the number of cache files copied in memory
+     */
+    public int getHotTierCount()
+    {
+        HotContentTier hotTier = this.hotTier;
+        return (hotTier == null) ? 0 : hotTier.getCount();
+    }
+    
     /**
      * Specify the directory where cache files will be written.
      * 
@@ -0,0 +1,138 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.caching;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.alfresco.repo.content.AbstractContentReader;
+import org.alfresco.repo.content.caching.HotContentTier.HotContent;
+import org.alfresco.repo.content.filestore.FileContentReader;
+import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.ContentStreamListener;
+
+/**
+ * Reader onto the in-memory copy of a cache file held by the {@link HotContentTier}.
+ * <p>
+ * Streams are read from memory.  {@link #getFileChannel() File channels} and
+ * {@link #transferTo(WritableByteChannel, long, long) transfers} are served by the cache file
+ * itself while it exists, rather than by spooling the copy to a temporary file.
+ *
+ * @since 7.110
+ */
+class HotContentReader extends AbstractContentReader
+{
+    private final HotContent content;
+    private final File cacheFile;
+    /** Listeners to pass on to a reader onto the cache file */
+    private final List<ContentStreamListener> listeners = new ArrayList<ContentStreamListener>(1);
+
+    HotContentReader(HotContent content, File cacheFile, String contentUrl)
+    {
+        super(contentUrl);
+        this.content = content;
+        this.cacheFile = cacheFile;
+    }
+
+    @Override
+    protected ContentReader createReader() throws ContentIOException
+    {
+        return new HotContentReader(content, cacheFile, getContentUrl());
+    }
+
+    /**
+     * @return      Returns a reader onto the cache file, or <tt>null</tt> if it has been deleted
+     */
+    private FileContentReader getFileReader()
+    {
+        if (!cacheFile.exists())
+        {
+            return null;
+        }
+        FileContentReader fileReader = new FileContentReader(cacheFile, getContentUrl());
+        fileReader.setMimetype(getMimetype());
+        fileReader.setEncoding(getEncoding());
+        fileReader.setLocale(getLocale());
+        fileReader.setLimits(getLimits());
+        for (ContentStreamListener listener : listeners)
+        {
+            fileReader.addListener(listener);
+        }
+        return fileReader;
+    }
+
+    @Override
+    public synchronized void addListener(ContentStreamListener listener)
+    {
+        super.addListener(listener);
+        listeners.add(listener);
+    }
+
+    @Override
+    public FileChannel getFileChannel() throws ContentIOException
+    {
+        FileContentReader fileReader = getFileReader();
+        return (fileReader == null) ? super.getFileChannel() : fileReader.getFileChannel();
+    }
+
+    @Override
+    public long transferTo(WritableByteChannel target, long position, long count) throws ContentIOException
+    {
+        FileContentReader fileReader = getFileReader();
+        return (fileReader == null) ? super.transferTo(target, position, count) : fileReader.transferTo(target, position, count);
+    }
+
+    @Override
+    protected ReadableByteChannel getDirectReadableChannel() throws ContentIOException
+    {
+        return Channels.newChannel(new ByteArrayInputStream(content.getContent()));
+    }
+
+    /**
+     * @return      Returns <tt>true</tt> always
+     */
+    public boolean exists()
+    {
+        return true;
+    }
+
+    public long getLastModified()
+    {
+        return content.getLastModified();
+    }
+
+    public long getSize()
+    {
+        return content.getContent().length;
+    }
+}
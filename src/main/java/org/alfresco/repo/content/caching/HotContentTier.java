@@ -0,0 +1,173 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.caching;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In-memory copies of small cache files, held in front of the {@link ContentCacheImpl} cache files
+ * so that frequently-read content such as thumbnails is served without going to disk.
+ * <p>
+ * The copies are keyed by the absolute path of their cache file.  The total size of the copies is
+ * bounded and the least recently read copies are dropped first.  A cache file is only
+ * {@link #admit(String) admitted} on its second read, so that content read once does not push
+ * frequently-read content out of the tier.
+ *
+ * @since 7.110
+ */
+class HotContentTier
+{
+    /** The number of cache files read once that are remembered */
+    private static final int MAX_CANDIDATES = 10000;
+    
+    private final long maxSizeBytes;
+    /** Copies in least recently read order, guarded by this */
+    private final LinkedHashMap<String, HotContent> contents;
+    private long sizeBytes;
+    /** Cache files read once and not yet held, in least recently read order, guarded by this */
+    private final LinkedHashMap<String, Boolean> candidates;
+
+    /**
+     * @param maxSizeBytes      the total size of the copies that may be held
+     */
+    HotContentTier(long maxSizeBytes)
+    {
+        this.maxSizeBytes = maxSizeBytes;
+        this.contents = new LinkedHashMap<String, HotContent>(256, 0.75f, true);
+        this.candidates = new LinkedHashMap<String, Boolean>(256, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest)
+            {
+                return size() > MAX_CANDIDATES;
+            }
+        };
+    }
+
+    /**
+     * Record a read of a cache file that is not held
+     * 
+     * @return          Returns <tt>true</tt> if the cache file was read recently and should now be
+     *                  held, otherwise <tt>false</tt>
+     */
+    synchronized boolean admit(String path)
+    {
+        if (candidates.remove(path) != null)
+        {
+            return true;
+        }
+        candidates.put(path, Boolean.TRUE);
+        return false;
+    }
+
+    /**
+     * @return          Returns the copy of the cache file, or <tt>null</tt> if it is not held
+     */
+    synchronized HotContent get(String path)
+    {
+        return contents.get(path);
+    }
+
+    /**
+     * Hold a copy of a cache file, dropping the least recently read copies to make room for it
+     */
+    synchronized void put(String path, HotContent content)
+    {
+        long size = content.getContent().length;
+        if (size > maxSizeBytes)
+        {
+            return;
+        }
+        HotContent previous = contents.put(path, content);
+        if (previous != null)
+        {
+            sizeBytes -= previous.getContent().length;
+        }
+        sizeBytes += size;
+        Iterator<Map.Entry<String, HotContent>> eldest = contents.entrySet().iterator();
+        while (sizeBytes > maxSizeBytes)
+        {
+            sizeBytes -= eldest.next().getValue().getContent().length;
+            eldest.remove();
+        }
+    }
+
+    synchronized void remove(String path)
+    {
+        candidates.remove(path);
+        HotContent content = contents.remove(path);
+        if (content != null)
+        {
+            sizeBytes -= content.getContent().length;
+        }
+    }
+
+    synchronized void clear()
+    {
+        contents.clear();
+        candidates.clear();
+        sizeBytes = 0L;
+    }
+
+    synchronized int getCount()
+    {
+        return contents.size();
+    }
+
+    synchronized long getSizeBytes()
+    {
+        return sizeBytes;
+    }
+
+    /**
+     * The content of a cache file along with its modification time
+     */
+    static class HotContent
+    {
+        private final byte[] content;
+        private final long lastModified;
+
+        HotContent(byte[] content, long lastModified)
+        {
+            this.content = content;
+            this.lastModified = lastModified;
+        }
+
+        byte[] getContent()
+        {
+            return content;
+        }
+
+        long getLastModified()
+        {
+            return lastModified;
+        }
+    }
+}
@@ -331,6 +331,7 @@ public class CachedContentCleaner extends Thread implements FileHandler, Applica
             }
             numFilesDeleted++;
             sizeFilesDeleted += fileSize;
+            cache.removeHotContent(cacheFile);
             Deleter.deleteEmptyParents(cacheFile, cache.getCacheRoot());
         }
         else
@@ -26,28 +26,41 @@
 package org.alfresco.repo.content.cleanup;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
-import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.repo.batch.BatchProcessWorkProvider;
+import org.alfresco.repo.batch.BatchProcessor;
+import org.alfresco.repo.batch.BatchProcessor.BatchProcessWorkerAdaptor;
 import org.alfresco.repo.domain.contentdata.ContentDataDAO;
 import org.alfresco.repo.domain.contentdata.ContentDataDAO.ContentUrlHandler;
 import org.alfresco.repo.lock.JobLockService;
 import org.alfresco.repo.lock.JobLockService.JobLockRefreshCallback;
 import org.alfresco.repo.lock.LockAcquisitionException;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
 import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.repo.transaction.TransactionListenerAdapter;
+import org.alfresco.service.cmr.attributes.AttributeService;
 import org.alfresco.service.cmr.dictionary.DictionaryService;
 import org.alfresco.service.cmr.repository.ContentService;
 import org.alfresco.service.namespace.NamespaceService;
 import org.alfresco.service.namespace.QName;
 import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.util.Pair;
 import org.alfresco.util.PropertyCheck;
 import org.alfresco.util.VmShutdownListener;
 import org.alfresco.util.VmShutdownListener.VmShutdownException;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
 
 /**
  * This component is responsible cleaning up orphaned content.
@@ -77,10 +90,16 @@ import org.apache.commons.logging.LogFactory;
  * Lazy cleanup protects the content for a given period (e.g. 7 days) giving plenty of
  * time for a backup to be taken; this allows hot backup without needing metadata-content
  * consistency to be enforced.
+ * <p/>
+ * The orphaned URLs are paged through in order of ID and handed out in batches to a
+ * {@link BatchProcessor} with a configurable number of {@link #setWorkerThreads(int) worker threads}.
+ * Each batch deletes its URL rows with a single statement before the binaries are deleted.
+ * If an {@link #setAttributeService(AttributeService) attribute service} is set, the ID below which
+ * all orphans have been handled is recorded so that an interrupted run resumes from there.
  * 
  * @author Derek Hulley
  */
-public class ContentStoreCleaner
+public class ContentStoreCleaner implements ApplicationEventPublisherAware
 {
     /*
      * TODO: Use the ScheduledJobLockExecuter, which borrows (and fixes) some of the code use here
@@ -112,6 +131,8 @@ public class ContentStoreCleaner
     
     private static final QName LOCK_QNAME = QName.createQName(NamespaceService.SYSTEM_MODEL_1_0_URI, "ContentStoreCleaner"); 
     private static final long LOCK_TTL = 30000L;
+    private static final String ATTR_KEY_CONTENT_STORE_CLEANER = ".ContentStoreCleaner";
+    private static final String ATTR_KEY_CHECKPOINT = "checkpoint";
     
     private static Log logger = LogFactory.getLog(ContentStoreCleaner.class);
     
@@ -124,13 +145,19 @@ public class ContentStoreCleaner
     private DictionaryService dictionaryService;
     private ContentService contentService;
     private TransactionService transactionService;
+    private AttributeService attributeService;
+    private ApplicationEventPublisher applicationEventPublisher;
     private int protectDays;
     private DeleteFailureAction deletionFailureAction;
+    private int workerThreads;
+    private int batchSize;
     
     public ContentStoreCleaner()
     {
         this.protectDays = 7;
         this.deletionFailureAction = DeleteFailureAction.IGNORE;
+        this.workerThreads = 1;
+        this.batchSize = 1000;
     }
 
     /**
@@ -181,6 +208,43 @@ public class ContentStoreCleaner
         this.transactionService = transactionService;
     }
 
+    /**
+     * @param attributeService  used to record where an interrupted cleanup should resume (optional)
+     */
+    public void setAttributeService(AttributeService attributeService)
+    {
+        this.attributeService = attributeService;
+    }
+
+    /**
+     * @param applicationEventPublisher used to publish the progress of the cleanup for monitoring
+     */
+    @Override
+    public void setApplicationEventPublisher(ApplicationEventPublisher applicationEventPublisher)
+    {
+        this.applicationEventPublisher = applicationEventPublisher;
+    }
+
+    /**
+     * Set the number of threads that delete orphaned content in parallel.  The default is 1.
+     * 
+     * @param workerThreads     the number of worker threads
+     */
+    public void setWorkerThreads(int workerThreads)
+    {
+        this.workerThreads = workerThreads;
+    }
+
+    /**
+     * Set the number of orphaned content URLs deleted in each transaction.  The default is 1000.
+     * 
+     * @param batchSize         the number of URLs per batch
+     */
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = batchSize;
+    }
+
     /**
      * Set the minimum number of days old that orphaned content must be
      *      before deletion is possible.  The default is 7 days.
@@ -223,6 +287,10 @@ public class ContentStoreCleaner
         PropertyCheck.mandatory(this, "transactionService", transactionService);
         PropertyCheck.mandatory(this, "eagerContentStoreCleaner", eagerContentStoreCleaner);
         
+        if (workerThreads < 1 || batchSize < 1)
+        {
+            throw new AlfrescoRuntimeException("Properties 'workerThreads' and 'batchSize' must be 1 or greater");
+        }
         // check the protect days
         if (protectDays < 0)
         {
@@ -292,7 +360,7 @@ public class ContentStoreCleaner
         {
             logger.debug("Content store cleanup started.");
             lockToken = acquireLock(lockCallback);
-            executeInternal();
+            executeInternal(lockCallback);
             // Done
             if (logger.isDebugEnabled())
             {
@@ -321,36 +389,216 @@ public class ContentStoreCleaner
         }
     }
     
-    private void executeInternal()
+    private void executeInternal(LockCallback lockCallback)
     {
         final long maxOrphanTime = System.currentTimeMillis() - (protectDays * 24 * 3600 * 1000L);
-        // execute in READ-WRITE txn
-        RetryingTransactionCallback<Long> getAndDeleteWork = new RetryingTransactionCallback<Long>()
+        final OrphanWorkProvider workProvider = new OrphanWorkProvider(maxOrphanTime, lockCallback, loadCheckpoint());
+        BatchProcessor<List<Pair<Long, String>>> batchProcessor = new BatchProcessor<List<Pair<Long, String>>>(
+                "ContentStoreCleaner",
+                transactionService.getRetryingTransactionHelper(),
+                workProvider,
+                workerThreads,
+                1,
+                applicationEventPublisher,
+                logger,
+                100);
+        BatchProcessWorkerAdaptor<List<Pair<Long, String>>> worker = new BatchProcessWorkerAdaptor<List<Pair<Long, String>>>()
         {
-            public Long execute() throws Exception
+            @Override
+            public String getIdentifier(List<Pair<Long, String>> orphans)
             {
-                return cleanBatch(maxOrphanTime, 1000);
-            };
+                return "Orphaned content URL IDs " + orphans.get(0).getFirst() + " to " + orphans.get(orphans.size() - 1).getFirst();
+            }
+
+            @Override
+            public void beforeProcess() throws Throwable
+            {
+                AuthenticationUtil.setRunAsUserSystem();
+            }
+
+            @Override
+            public void afterProcess() throws Throwable
+            {
+                AuthenticationUtil.clearCurrentSecurityContext();
+            }
+
+            @Override
+            public void process(final List<Pair<Long, String>> orphans) throws Throwable
+            {
+                cleanBatch(orphans);
+                AlfrescoTransactionSupport.bindListener(new TransactionListenerAdapter()
+                {
+                    @Override
+                    public void afterCommit()
+                    {
+                        workProvider.processed(orphans);
+                    }
+                });
+            }
         };
-        while (true)
+        
+        long startTime = System.currentTimeMillis();
+        batchProcessor.process(worker, true);
+        long duration = Math.max(1L, System.currentTimeMillis() - startTime);
+        
+        // Record where to carry on from, unless everything was processed
+        saveCheckpoint(workProvider.isExhausted() ? null : workProvider.getCheckpoint());
+        if (logger.isInfoEnabled())
+        {
+            long deleted = workProvider.deletedCount.get();
+            logger.info(
+                    "Content store cleanup removed " + deleted + " orphaned content URLs in " + duration + "ms " +
+                    "(" + (deleted * 1000L / duration) + " per second, " + workerThreads + " worker threads" +
+                    (workProvider.isExhausted() ? "" : ", stopped at ID " + workProvider.getCheckpoint()) + ")");
+        }
+        if (vmShutdownListener.isVmShuttingDown())
         {
-            Long lastProcessedOrphanId = transactionService.getRetryingTransactionHelper().doInTransaction(getAndDeleteWork);
-            if (vmShutdownListener.isVmShuttingDown())
+            throw new VmShutdownException();
+        }
+    }
+    
+    /**
+     * @return          the ID to resume an interrupted cleanup from or <tt>0</tt> to start from the beginning
+     */
+    private long loadCheckpoint()
+    {
+        if (attributeService == null)
+        {
+            return 0L;
+        }
+        Long checkpoint = transactionService.getRetryingTransactionHelper().doInTransaction(new RetryingTransactionCallback<Long>()
+        {
+            public Long execute() throws Throwable
             {
-                throw new VmShutdownException();
+                return (Long) attributeService.getAttribute(ATTR_KEY_CONTENT_STORE_CLEANER, ATTR_KEY_CHECKPOINT);
             }
-            if (lastProcessedOrphanId == null)
+        }, true, true);
+        if (checkpoint == null)
+        {
+            return 0L;
+        }
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("   Resuming content store cleanup from content URL ID " + checkpoint);
+        }
+        return checkpoint;
+    }
+    
+    /**
+     * @param checkpoint    the ID below which all orphans have been handled or <tt>null</tt> to remove the checkpoint
+     */
+    private void saveCheckpoint(final Long checkpoint)
+    {
+        if (attributeService == null)
+        {
+            return;
+        }
+        transactionService.getRetryingTransactionHelper().doInTransaction(new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
             {
-                // There is no more to process
-                break;
+                if (checkpoint == null)
+                {
+                    attributeService.removeAttribute(ATTR_KEY_CONTENT_STORE_CLEANER, ATTR_KEY_CHECKPOINT);
+                }
+                else
+                {
+                    attributeService.setAttribute(checkpoint, ATTR_KEY_CONTENT_STORE_CLEANER, ATTR_KEY_CHECKPOINT);
+                }
+                return null;
             }
-            // There is still more to delete, so continue
-            if (logger.isDebugEnabled())
+        }, false, true);
+    }
+    
+    /**
+     * Pages through the orphaned content URLs in order of ID, handing them out in batches.
+     * The first IDs of the batches that have not yet been committed are tracked so that the
+     * checkpoint never passes an orphan that has not been handled.
+     */
+    private class OrphanWorkProvider implements BatchProcessWorkProvider<List<Pair<Long, String>>>
+    {
+        private final long maxOrphanTime;
+        private final LockCallback lockCallback;
+        private final TreeSet<Long> pending = new TreeSet<Long>();
+        private final AtomicLong deletedCount = new AtomicLong();
+        private long nextId;
+        private long savedCheckpoint;
+        private boolean exhausted;
+        
+        private OrphanWorkProvider(long maxOrphanTime, LockCallback lockCallback, long startId)
+        {
+            this.maxOrphanTime = maxOrphanTime;
+            this.lockCallback = lockCallback;
+            this.nextId = startId;
+            this.savedCheckpoint = startId;
+        }
+
+        @Override
+        public int getTotalEstimatedWorkSize()
+        {
+            return -1;
+        }
+
+        @Override
+        public Collection<List<Pair<Long, String>>> getNextWork()
+        {
+            if (vmShutdownListener.isVmShuttingDown() || !lockCallback.isActive())
             {
-                logger.debug("   Removed orphaned content URLs up orphan time " + new Date(lastProcessedOrphanId));
+                // Stop handing out work; the checkpoint records where to resume from
+                return Collections.emptyList();
             }
+            long checkpoint = getCheckpoint();
+            if (checkpoint != savedCheckpoint)
+            {
+                saveCheckpoint(checkpoint);
+                savedCheckpoint = checkpoint;
+            }
+            
+            final List<Pair<Long, String>> orphans = new ArrayList<Pair<Long, String>>(batchSize * workerThreads);
+            ContentUrlHandler contentUrlHandler = new ContentUrlHandler()
+            {
+                @Override
+                public void handle(Long id, String contentUrl, Long orphanTime)
+                {
+                    orphans.add(new Pair<Long, String>(id, contentUrl));
+                }
+            };
+            contentDataDAO.getContentUrlsOrphaned(contentUrlHandler, maxOrphanTime, nextId, batchSize * workerThreads);
+            
+            List<List<Pair<Long, String>>> batches = new ArrayList<List<Pair<Long, String>>>(workerThreads);
+            synchronized (this)
+            {
+                if (orphans.isEmpty())
+                {
+                    exhausted = true;
+                    return batches;
+                }
+                nextId = orphans.get(orphans.size() - 1).getFirst() + 1L;
+                for (int i = 0; i < orphans.size(); i += batchSize)
+                {
+                    List<Pair<Long, String>> batch = orphans.subList(i, Math.min(i + batchSize, orphans.size()));
+                    pending.add(batch.get(0).getFirst());
+                    batches.add(batch);
+                }
+            }
+            return batches;
+        }
+        
+        private synchronized void processed(List<Pair<Long, String>> orphans)
+        {
+            pending.remove(orphans.get(0).getFirst());
+            deletedCount.addAndGet(orphans.size());
+        }
+        
+        private synchronized long getCheckpoint()
+        {
+            return pending.isEmpty() ? nextId : pending.first();
+        }
+        
+        private synchronized boolean isExhausted()
+        {
+            return exhausted;
         }
-        // Done
     }
     
     private class LockCallback implements JobLockRefreshCallback
@@ -375,42 +623,25 @@ public class ContentStoreCleaner
     }
     
     /**
+     * Deletes a batch of orphaned content URLs; the rows are deleted before the binaries.
      * 
-     * @param maxTimeExclusive      the max orphan time (exclusive)
-     * @param batchSize             the maximum number of orphans to process
-     * @return                      Returns the last processed orphan ID or <tt>null</tt> if nothing was processed
+     * @param orphans               the IDs and URLs of the orphans, in order of ID
      */
-    private Long cleanBatch(final long maxTimeExclusive, final int batchSize)
+    private void cleanBatch(List<Pair<Long, String>> orphans)
     {
-        // Get a bunch of cleanable URLs
-        final TreeMap<Long, String> urlsById = new TreeMap<Long, String>();
-        ContentUrlHandler contentUrlHandler = new ContentUrlHandler()
-        {
-            @Override
-            public void handle(Long id, String contentUrl, Long orphanTime)
-            {
-                urlsById.put(id, contentUrl);
-            }
-        };
-        // Get a bunch of cleanable URLs
-        contentDataDAO.getContentUrlsOrphaned(contentUrlHandler, maxTimeExclusive, batchSize);
-        
-        // Shortcut, if necessary
-        if (urlsById.size() == 0)
+        // Do a mass delete of the URL rows
+        List<Long> ids = new ArrayList<Long>(orphans.size());
+        for (Pair<Long, String> orphan : orphans)
         {
-            return null;
+            ids.add(orphan.getFirst());
         }
-        
-        // Compile list of IDs and do a mass delete, recording the IDs to find the largest
-        Long lastId = urlsById.lastKey();
-        List<Long> ids = new ArrayList<Long>(urlsById.keySet());
         contentDataDAO.deleteContentUrls(ids);
         // No problems, so far (ALF-1998: contentStoreCleanerJob leads to foreign key exception)
 
         // Now attempt to physically delete the URLs
-        for (Long id : ids)
+        for (Pair<Long, String> orphan : orphans)
         {
-            String contentUrl = urlsById.get(id);
+            String contentUrl = orphan.getSecond();
             // Handle failures
             boolean deleted = eagerContentStoreCleaner.deleteFromStores(contentUrl);
             if (!deleted)
@@ -427,8 +658,5 @@ public class ContentStoreCleaner
                 }
             }
         }
-        
-        // Done
-        return lastId;
     }
 }
@@ -178,6 +178,12 @@ public class ContentStoreCleanerScalabilityRunner extends Repository
         eagerCleaner.setStores(Collections.singletonList(contentStore));
         cleaner = (ContentStoreCleaner) ctx.getBean("contentStoreCleaner");
         cleaner.setProtectDays(0);
+        // Compare throughput with e.g. -DworkerThreads=1; otherwise the configured number of threads is used
+        Integer workerThreads = Integer.getInteger("workerThreads");
+        if (workerThreads != null)
+        {
+            cleaner.setWorkerThreads(workerThreads);
+        }
         
         // The cleaner has its own txns
         cleaner.execute();
@@ -32,6 +32,7 @@ import java.io.IOException;
 import java.io.OutputStream;
 
 import org.alfresco.repo.content.ContentStore;
+import org.alfresco.repo.content.filestore.DeduplicatingFileContentStore;
 import org.alfresco.repo.content.filestore.FileContentReader;
 import org.alfresco.service.cmr.repository.ContentIOException;
 import org.alfresco.service.cmr.repository.ContentReader;
@@ -101,6 +102,9 @@ public class FileWipingContentCleanerListener implements ContentStoreCleanerList
     /**
      * Override to perform shredding on disparate forms of readers.  This implementation will,
      * by default, identify more specific readers and make calls for those.
+     * <p>
+     * Blobs of a {@link DeduplicatingFileContentStore} that are still used by other content
+     * URLs are left alone.
      * 
      * @param reader            the reader to the content needing shredding
      * @exception IOException   any IO error
@@ -111,6 +115,14 @@ public class FileWipingContentCleanerListener implements ContentStoreCleanerList
         {
             FileContentReader fileReader = (FileContentReader) reader;
             File file = fileReader.getFile();
+            if (DeduplicatingFileContentStore.isSharedBlob(file))
+            {
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug("Not shredding blob still used by other content: " + file);
+                }
+                return;
+            }
             shred(file);
         }
     }
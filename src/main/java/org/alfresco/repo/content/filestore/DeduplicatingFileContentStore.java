@@ -0,0 +1,537 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.filestore;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.ContentWriter;
+import org.alfresco.util.Deleter;
+import org.alfresco.util.Pair;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * A {@link FileContentStore} that keeps only one copy of identical content.
+ * <p>
+ * Content is digested as it is written.  Once the writer is closed, the content is moved to a
+ * <b>blob</b> named after its digest, unless such a blob already exists, in which case the
+ * newly written copy is discarded.  The file for the content URL is then replaced by a small
+ * <b>link</b> holding the digest, kept under its own extension so that it can never be mistaken
+ * for content.  Every content URL still gets its own, unique URL of the form
+ * <b>store://dedup/year/month/day/hour/minute/GUID.bin</b>, so nothing above the store needs to
+ * know that the content is shared:
+ * <pre>
+ *    root/dedup/2019/10/16/12/30/GUID.bin.dedup    link holding the digest
+ *    root/blobs/ab/cd/abcd...ef/abcd...ef.bin      the content
+ *    root/blobs/ab/cd/abcd...ef/GUID.bin.ref       one reference for each link
+ *    root/blobs/ab.lock                            locked while blobs starting with ab are updated
+ * </pre>
+ * The references count the content URLs using a blob.  {@link #delete(String) Deleting} a
+ * content URL, as the {@link org.alfresco.repo.content.cleanup.ContentStoreCleaner cleaner} does
+ * for orphaned URLs, removes its link and reference and only removes the blob along with the
+ * last reference.
+ * <p>
+ * Content written to a specific URL, and any content already in the store, is kept in plain
+ * files as by the {@link FileContentStore}.
+ * <p>
+ * Updates to the blobs are serialized by locking the lock files with {@link FileChannel#lock()}, so
+ * processes sharing the store root don't lose each other's references.  A store root shared between
+ * servers must be on a file system that honours such locks across machines, e.g. NFSv4; otherwise
+ * it must only be written to by one server.
+ *
+ * @since 7.110
+ */
+public class DeduplicatingFileContentStore extends FileContentStore
+{
+    /** The algorithm used to digest the content */
+    static final String DIGEST_ALGORITHM = "SHA-256";
+    /** The directory below the root holding the links of deduplicated content URLs */
+    public static final String DEDUPLICATED_DIRECTORY = "dedup";
+    /** The directory below the root holding the blobs */
+    public static final String BLOB_DIRECTORY = "blobs";
+
+    private static final String DEDUPLICATED_URL_PREFIX = STORE_PROTOCOL + PROTOCOL_DELIMITER + DEDUPLICATED_DIRECTORY + "/";
+    private static final String BLOB_EXT = ".bin";
+    private static final String REFERENCE_EXT = ".ref";
+    private static final String LINK_EXT = ".dedup";
+    private static final String TEMP_EXT = ".tmp";
+    private static final String LOCK_EXT = ".lock";
+    /** The length of a hex-encoded SHA-256 digest */
+    private static final int HASH_LENGTH = 64;
+    /** One lock for each value of the first byte of the digest, matching the lock files */
+    private static final int numLocks = 256;
+
+    private static final Log logger = LogFactory.getLog(DeduplicatingFileContentStore.class);
+
+    private final ReentrantLock[] locks;
+    private FileContentUrlProvider fileContentUrlProvider = new TimeBasedFileContentUrlProvider();
+    private boolean allowRandomAccess = true;
+
+    /**
+     * Public constructor for programmatic use.
+     *
+     * @param context
+     *            application context through which events can be published
+     * @param rootDirectory
+     *            the root under which files will be stored. The directory will be created if it does not exist.
+     */
+    public DeduplicatingFileContentStore(ApplicationContext context, File rootDirectory)
+    {
+        super(context, rootDirectory);
+        locks = createLocks();
+    }
+
+    /**
+     * Public constructor for programmatic use.
+     *
+     * @param context
+     *            application context through which events can be published
+     * @param rootDirectory
+     *            the root under which files will be stored. The directory will be created if it does not exist.
+     * @param extendedEventParams
+     *            additional parameters of the store creation event
+     */
+    public DeduplicatingFileContentStore(ApplicationContext context, File rootDirectory, Map<String, Serializable> extendedEventParams)
+    {
+        super(context, rootDirectory, extendedEventParams);
+        locks = createLocks();
+    }
+
+    private static ReentrantLock[] createLocks()
+    {
+        ReentrantLock[] locks = new ReentrantLock[numLocks];
+        for (int i = 0; i < numLocks; i++)
+        {
+            locks[i] = new ReentrantLock();
+        }
+        return locks;
+    }
+
+    @Override
+    public void setAllowRandomAccess(boolean allowRandomAccess)
+    {
+        super.setAllowRandomAccess(allowRandomAccess);
+        this.allowRandomAccess = allowRandomAccess;
+    }
+
+    /*package*/ boolean isAllowRandomAccess()
+    {
+        return allowRandomAccess;
+    }
+
+    @Override
+    public void setFileContentUrlProvider(FileContentUrlProvider fileContentUrlProvider)
+    {
+        super.setFileContentUrlProvider(fileContentUrlProvider);
+        this.fileContentUrlProvider = fileContentUrlProvider;
+    }
+
+    /**
+     * @return          Returns <tt>true</tt> if the URL is one generated for deduplicated content
+     */
+    public static boolean isDeduplicatedUrl(String contentUrl)
+    {
+        return contentUrl.startsWith(DEDUPLICATED_URL_PREFIX);
+    }
+
+    /**
+     * Check if a file is a blob that is still used by more than one content URL.  Cleanup
+     * listeners that alter content before it is deleted must leave such files alone.
+     *
+     * @param file      the file backing a content reader
+     * @return          Returns <tt>true</tt> if the file is a blob that will remain after one of its
+     *                  content URLs is deleted
+     */
+    public static boolean isSharedBlob(File file)
+    {
+        File dir = file.getParentFile();
+        if (dir == null || !file.getName().equals(dir.getName() + BLOB_EXT))
+        {
+            return false;
+        }
+        return countReferences(dir) > 1;
+    }
+
+    private static int countReferences(File dir)
+    {
+        File[] references = dir.listFiles(new FileFilter()
+        {
+            public boolean accept(File file)
+            {
+                return file.getName().endsWith(REFERENCE_EXT);
+            }
+        });
+        return (references == null) ? 0 : references.length;
+    }
+
+    /**
+     * Lock the blobs sharing the first byte of a digest, first against other threads and then against other
+     * processes.  The lock file is only ever locked by the thread holding the matching lock, as a
+     * {@link FileChannel} lock is held by the whole process.
+     *
+     * @return          Returns the channel holding the lock on the lock file, to be passed to {@link #unlock}
+     */
+    private FileChannel lock(String hash)
+    {
+        String prefix = hash.substring(0, 2);
+        File lockFile = makeFile(STORE_PROTOCOL + PROTOCOL_DELIMITER + BLOB_DIRECTORY + "/" + prefix + LOCK_EXT);
+        ReentrantLock lock = locks[Integer.parseInt(prefix, 16)];
+        lock.lock();
+        FileChannel channel = null;
+        try
+        {
+            File dir = lockFile.getParentFile();
+            if (!dir.exists() && !dir.mkdirs() && !dir.exists())
+            {
+                throw new IOException("Failed to create directory: " + dir);
+            }
+            channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            channel.lock();
+            return channel;
+        }
+        catch (IOException e)
+        {
+            closeQuietly(channel);
+            lock.unlock();
+            throw new ContentIOException("Failed to lock blobs: " + lockFile, e);
+        }
+        catch (RuntimeException e)
+        {
+            closeQuietly(channel);
+            lock.unlock();
+            throw e;
+        }
+    }
+
+    /**
+     * Release a lock taken by {@link #lock(String)}
+     */
+    private void unlock(String hash, FileChannel channel)
+    {
+        // Closing the channel releases the lock on the file
+        closeQuietly(channel);
+        locks[Integer.parseInt(hash.substring(0, 2), 16)].unlock();
+    }
+
+    private static void closeQuietly(FileChannel channel)
+    {
+        if (channel == null)
+        {
+            return;
+        }
+        try
+        {
+            channel.close();
+        }
+        catch (IOException e)
+        {
+            logger.warn("Failed to release blob lock", e);
+        }
+    }
+
+    /**
+     * @return          Returns the blob file for the digest; it may or may not exist
+     */
+    private File getBlobFile(String hash)
+    {
+        String blobUrl = STORE_PROTOCOL + PROTOCOL_DELIMITER + BLOB_DIRECTORY + "/" +
+                hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash + "/" + hash + BLOB_EXT;
+        return makeFile(blobUrl);
+    }
+
+    /*package*/ File getReferenceFile(File blob, File file)
+    {
+        return new File(blob.getParentFile(), file.getName() + REFERENCE_EXT);
+    }
+
+    /**
+     * @param file      the file for a deduplicated content URL
+     * @return          Returns the link that replaces the file once the content is kept in a blob
+     */
+    /*package*/ File getLinkFile(File file)
+    {
+        return new File(file.getPath() + LINK_EXT);
+    }
+
+    /**
+     * Read the digest from a link
+     *
+     * @param link      the link for a deduplicated content URL
+     * @return          Returns the digest, or <tt>null</tt> if there is no link e.g. the content is
+     *                  still being written
+     */
+    private String readHash(File link)
+    {
+        if (!link.exists())
+        {
+            return null;
+        }
+        if (link.length() != HASH_LENGTH)
+        {
+            throw new ContentIOException("Invalid content link: " + link);
+        }
+        try
+        {
+            String hash = new String(Files.readAllBytes(link.toPath()), StandardCharsets.US_ASCII);
+            for (int i = 0; i < HASH_LENGTH; i++)
+            {
+                if (Character.digit(hash.charAt(i), 16) < 0)
+                {
+                    throw new ContentIOException("Invalid content link: " + link);
+                }
+            }
+            return hash;
+        }
+        catch (IOException e)
+        {
+            throw new ContentIOException("Failed to read content link: " + link, e);
+        }
+    }
+
+    /**
+     * @return          Returns the existing blob for a deduplicated content URL or <tt>null</tt> if the
+     *                  content is not in a blob
+     */
+    private File getExistingBlobFile(String contentUrl)
+    {
+        if (!isDeduplicatedUrl(contentUrl))
+        {
+            return null;
+        }
+        String hash = readHash(getLinkFile(makeFile(contentUrl)));
+        if (hash == null)
+        {
+            return null;
+        }
+        File blob = getBlobFile(hash);
+        return blob.exists() ? blob : null;
+    }
+
+    /**
+     * Keep the content written to the file for a content URL as a blob and replace the file
+     * with a link to the blob.  The link is written before the file is moved or discarded, so
+     * the content can still be found if the process stops in between.
+     *
+     * @param file          the file that the content was written to
+     * @param contentUrl    the content URL
+     * @param hash          the hex-encoded digest of the content
+     * @return              Returns the blob holding the content
+     */
+    /*package*/ File storeBlob(File file, String contentUrl, String hash)
+    {
+        File blob = getBlobFile(hash);
+        File dir = blob.getParentFile();
+        File reference = getReferenceFile(blob, file);
+        File link = getLinkFile(file);
+        File linkTemp = new File(link.getPath() + TEMP_EXT);
+        FileChannel lock = lock(hash);
+        try
+        {
+            if (!dir.exists() && !dir.mkdirs() && !dir.exists())
+            {
+                throw new ContentIOException("Failed to create directory for blob: " + dir);
+            }
+            // The reference is added before the link so that a link never points to an unreferenced blob
+            if (!reference.createNewFile())
+            {
+                throw new ContentIOException("Blob reference already exists: " + reference);
+            }
+            Files.write(linkTemp.toPath(), hash.getBytes(StandardCharsets.US_ASCII));
+            Files.move(linkTemp.toPath(), link.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            boolean duplicate = blob.exists();
+            if (duplicate)
+            {
+                Files.delete(file.toPath());
+            }
+            else
+            {
+                Files.move(file.toPath(), blob.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            }
+            // done
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Linked content to blob: \n" +
+                        "   url: " + contentUrl + "\n" +
+                        "   blob: " + blob + "\n" +
+                        "   duplicate: " + duplicate);
+            }
+            return blob;
+        }
+        catch (IOException e)
+        {
+            throw new ContentIOException("Failed to link content to blob: \n" +
+                    "   url: " + contentUrl + "\n" +
+                    "   blob: " + blob,
+                    e);
+        }
+        finally
+        {
+            unlock(hash, lock);
+        }
+    }
+
+    /**
+     * Content without a specific URL is written to a deduplicated content URL; otherwise
+     * the content is written to a plain file.
+     */
+    @Override
+    public ContentWriter getWriterInternal(ContentReader existingContentReader, String newContentUrl)
+    {
+        if (newContentUrl != null)
+        {
+            return super.getWriterInternal(existingContentReader, newContentUrl);
+        }
+        Pair<String, String> urlParts = getContentUrlParts(fileContentUrlProvider.createNewFileStoreUrl());
+        String contentUrl = DEDUPLICATED_URL_PREFIX + urlParts.getSecond();
+        try
+        {
+            File file = createNewFile(contentUrl);
+            DeduplicatingFileContentWriter writer = new DeduplicatingFileContentWriter(this, file, contentUrl, existingContentReader);
+            if (contentLimitProvider != null)
+            {
+                writer.setContentLimitProvider(contentLimitProvider);
+            }
+            syncOnClose(writer);
+            // done
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Created content writer: \n" +
+                        "   writer: " + writer);
+            }
+            return writer;
+        }
+        catch (IOException e)
+        {
+            throw new ContentIOException("Failed to get writer", e);
+        }
+    }
+
+    @Override
+    public boolean exists(String contentUrl)
+    {
+        return getExistingBlobFile(contentUrl) != null || super.exists(contentUrl);
+    }
+
+    @Override
+    public ContentReader getReader(String contentUrl)
+    {
+        File blob = getExistingBlobFile(contentUrl);
+        if (blob != null)
+        {
+            FileContentReader reader = new FileContentReader(blob, contentUrl);
+            reader.setAllowRandomAccess(allowRandomAccess);
+            return reader;
+        }
+        return super.getReader(contentUrl);
+    }
+
+    /**
+     * Deleting a deduplicated content URL removes its link and its reference to the blob.  The
+     * blob is only deleted once no references to it remain.
+     *
+     * @throws UnsupportedOperationException        if the store is read-only
+     */
+    @Override
+    public boolean delete(String contentUrl)
+    {
+        if (!isDeduplicatedUrl(contentUrl))
+        {
+            return super.delete(contentUrl);
+        }
+        if (!isWriteSupported())
+        {
+            throw new UnsupportedOperationException("This store is currently read-only: " + this);
+        }
+        File file = makeFile(contentUrl);
+        File link = getLinkFile(file);
+        String hash = readHash(link);
+        if (hash == null)
+        {
+            // Never linked to a blob
+            return super.delete(contentUrl);
+        }
+        File blob = getBlobFile(hash);
+        File dir = blob.getParentFile();
+        File reference = getReferenceFile(blob, file);
+        FileChannel lock = lock(hash);
+        try
+        {
+            // The link goes before its reference, along with any copy of the content left behind
+            if (!link.delete() && link.exists())
+            {
+                return false;
+            }
+            if (!super.delete(contentUrl))
+            {
+                logger.warn("Failed to delete content file after its link: " + file);
+            }
+            if (reference.exists() && !reference.delete())
+            {
+                logger.warn("Failed to delete blob reference: " + reference);
+                return true;
+            }
+            int references = countReferences(dir);
+            if (references == 0)
+            {
+                if (!blob.exists() || blob.delete())
+                {
+                    dir.delete();
+                    Deleter.deleteEmptyParents(dir, getRootLocation());
+                }
+                else
+                {
+                    logger.warn("Failed to delete unreferenced blob: " + blob);
+                }
+            }
+            // done
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Deleted deduplicated content: \n" +
+                        "   url: " + contentUrl + "\n" +
+                        "   blob: " + blob + "\n" +
+                        "   remaining references: " + references);
+            }
+            return true;
+        }
+        finally
+        {
+            unlock(hash, lock);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.filestore;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.ContentStreamListener;
+import org.apache.commons.codec.binary.Hex;
+
+/**
+ * Writer for the {@link DeduplicatingFileContentStore}.  The content is digested as it is
+ * streamed to the file and, once the stream is closed, the file is handed to the store to
+ * be kept as a shared blob.
+ * <p>
+ * Random access is always spoofed so that the content passes through the digest in order.
+ *
+ * @since 7.110
+ */
+class DeduplicatingFileContentWriter extends FileContentWriter
+{
+    private final DeduplicatingFileContentStore store;
+    private final MessageDigest digest;
+    private File blob;
+
+    /**
+     * @param store                     the store that will keep the blob
+     * @param file                      the file for the content URL, to which the content is first written
+     * @param url                       the content URL
+     * @param existingContentReader     a reader of a previous version of this content
+     */
+    DeduplicatingFileContentWriter(
+            DeduplicatingFileContentStore store,
+            File file,
+            String url,
+            ContentReader existingContentReader)
+    {
+        super(file, url, existingContentReader);
+        this.store = store;
+        try
+        {
+            digest = MessageDigest.getInstance(DeduplicatingFileContentStore.DIGEST_ALGORITHM);
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new ContentIOException("Digest algorithm not available: " + DeduplicatingFileContentStore.DIGEST_ALGORITHM, e);
+        }
+        setAllowRandomAccess(false);
+        // Runs after the mimetype and encoding guessing, which reads the file as written
+        addListener(new ContentStreamListener()
+        {
+            public void contentStreamClosed() throws ContentIOException
+            {
+                String hash = new String(Hex.encodeHex(digest.digest()));
+                blob = DeduplicatingFileContentWriter.this.store.storeBlob(getFile(), getContentUrl(), hash);
+            }
+        });
+    }
+
+    /**
+     * @return          Returns the shared blob once the content has been written, otherwise the file being written
+     */
+    private File getContentFile()
+    {
+        return (blob == null) ? getFile() : blob;
+    }
+
+    /**
+     * Once the content has been written, the file has been replaced by a link, so the files to
+     * force onto disk are the link, the reference to the blob and the blob.  The blob is last so
+     * that its directory is forced after the blob was moved into it.
+     * 
+     * @return          Returns the link, the reference and the blob once the content has been written,
+     *                  otherwise the file being written
+     */
+    @Override
+    List<File> getWrittenFiles()
+    {
+        if (blob == null)
+        {
+            return Collections.singletonList(getFile());
+        }
+        File file = getFile();
+        return Arrays.asList(store.getLinkFile(file), store.getReferenceFile(blob, file), blob);
+    }
+
+    @Override
+    public long getSize()
+    {
+        File file = getContentFile();
+        return file.exists() ? file.length() : 0L;
+    }
+
+    @Override
+    protected ContentReader createReader() throws ContentIOException
+    {
+        FileContentReader reader = new FileContentReader(getContentFile(), getContentUrl());
+        reader.setAllowRandomAccess(store.isAllowRandomAccess());
+        return reader;
+    }
+
+    @Override
+    protected WritableByteChannel getDirectWritableChannel() throws ContentIOException
+    {
+        final WritableByteChannel channel = super.getDirectWritableChannel();
+        return new WritableByteChannel()
+        {
+            public int write(ByteBuffer src) throws IOException
+            {
+                ByteBuffer written = src.duplicate();
+                int count = channel.write(src);
+                written.limit(written.position() + count);
+                digest.update(written);
+                return count;
+            }
+
+            public boolean isOpen()
+            {
+                return channel.isOpen();
+            }
+
+            public void close() throws IOException
+            {
+                channel.close();
+            }
+        };
+    }
+}
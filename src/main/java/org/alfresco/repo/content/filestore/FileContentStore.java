@@ -41,6 +41,7 @@ import org.alfresco.repo.content.EmptyContentReader;
 import org.alfresco.repo.content.UnsupportedContentUrlException;
 import org.alfresco.service.cmr.repository.ContentIOException;
 import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.ContentStreamListener;
 import org.alfresco.service.cmr.repository.ContentWriter;
 import org.alfresco.util.Deleter;
 import org.alfresco.util.Pair;
@@ -89,6 +90,7 @@ public class FileContentStore
     private ApplicationContext applicationContext;
     private boolean deleteEmptyDirs = true;
     private FileContentUrlProvider fileContentUrlProvider = new TimeBasedFileContentUrlProvider();
+    private FileContentSyncer fileContentSyncer;
 
     /**
      * Private: for Spring-constructed instances only.
@@ -211,6 +213,41 @@ public class FileContentStore
         this.fileContentUrlProvider = fileContentUrlProvider;
     }
 
+    /**
+     * Set the component that forces written content onto disk.  Without one, content
+     * files are left for the operating system to flush.
+     * 
+     * @param fileContentSyncer     forces content files onto disk as writers are closed
+     * 
+     * @since 7.110
+     */
+    public void setFileContentSyncer(FileContentSyncer fileContentSyncer)
+    {
+        this.fileContentSyncer = fileContentSyncer;
+    }
+
+    /**
+     * Have the {@link #setFileContentSyncer(FileContentSyncer) syncer} force the content
+     * onto disk once the writer has been closed.
+     */
+    /*package*/ void syncOnClose(final FileContentWriter writer)
+    {
+        if (fileContentSyncer == null || fileContentSyncer.getSyncMode() == FileContentSyncer.SyncMode.NONE)
+        {
+            return;
+        }
+        writer.addListener(new ContentStreamListener()
+        {
+            public void contentStreamClosed() throws ContentIOException
+            {
+                for (File file : writer.getWrittenFiles())
+                {
+                    fileContentSyncer.sync(file);
+                }
+            }
+        });
+    }
+
     /**
      * Generates a new URL and file appropriate to it.
      * 
@@ -309,6 +346,14 @@ public class FileContentStore
         throw new ContentIOException("Failed to create directory for file storage: " +  dir);
     }
     
+    /**
+     * @return Returns the absolute root directory of the store
+     */
+    /*package*/ File getRootDirectory()
+    {
+        return rootDirectory;
+    }
+    
     /**
      * Takes the file absolute path, strips off the root path of the store
      * and appends the store URL prefix.
@@ -519,6 +564,7 @@ public class FileContentStore
                 writer.setContentLimitProvider(contentLimitProvider);
             }
             writer.setAllowRandomAccess(allowRandomAccess);
+            syncOnClose(writer);
             
             // done
             if (logger.isDebugEnabled())
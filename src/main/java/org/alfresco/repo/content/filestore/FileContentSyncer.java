@@ -0,0 +1,494 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.filestore;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport.TxnReadState;
+import org.alfresco.repo.transaction.TransactionListenerAdapter;
+import org.alfresco.repo.transaction.TransactionalResourceHelper;
+import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.util.TraceableThreadFactory;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Forces the content files written by a {@link FileContentStore} onto disk, so that content
+ * is durable once the transaction referencing it has committed.
+ * <p>
+ * The {@link SyncMode sync mode} determines when files are forced:
+ * <ul>
+ *   <li><b>{@link SyncMode#NONE NONE}</b>: Files are left for the operating system to flush.</li>
+ *   <li><b>{@link SyncMode#IMMEDIATE IMMEDIATE}</b>: Each file, and its directory, is forced
+ *       by the writing thread as the writer is closed.</li>
+ *   <li><b>{@link SyncMode#WRITE_BEHIND WRITE_BEHIND}</b>: Files are queued as writers are closed
+ *       and forced in groups by a background thread.  A group is forced once it holds
+ *       {@link #setMaxBatchSize(int) maxBatchSize} files or once its first file has waited
+ *       {@link #setMaxDelayMs(long) maxDelayMs}.  The files of a group are forced concurrently
+ *       and each directory only once.  Within a transaction, the writing thread carries on and
+ *       the transaction waits for its files before it commits; otherwise the writer waits as
+ *       it is closed.</li>
+ * </ul>
+ * Failure to force a file fails the writer or, in write-behind mode, the transaction.
+ *
+ * @since 7.110
+ */
+public class FileContentSyncer
+{
+    public enum SyncMode
+    {
+        NONE,
+        IMMEDIATE,
+        WRITE_BEHIND
+    }
+
+    private static final String KEY_PENDING_SYNCS = FileContentSyncer.class.getName() + ".pendingSyncs";
+
+    private static final Log logger = LogFactory.getLog(FileContentSyncer.class);
+
+    private SyncMode syncMode;
+    private long maxDelayMs;
+    private int maxBatchSize;
+    private int syncThreads;
+
+    /** Files waiting to be forced, guarded by itself */
+    private final LinkedList<PendingSync> queue;
+    private final SyncTransactionListener transactionListener;
+    private final AtomicLong filesSynced;
+    private final AtomicLong batchesSynced;
+    private Thread batchThread;
+    private ExecutorService syncExecutor;
+    private volatile boolean running;
+
+    public FileContentSyncer()
+    {
+        this.syncMode = SyncMode.NONE;
+        this.maxDelayMs = 5L;
+        this.maxBatchSize = 256;
+        this.syncThreads = 4;
+        this.queue = new LinkedList<PendingSync>();
+        this.transactionListener = new SyncTransactionListener();
+        this.filesSynced = new AtomicLong();
+        this.batchesSynced = new AtomicLong();
+    }
+
+    /**
+     * @param syncMode          when to force content files onto disk (default: <tt>NONE</tt>)
+     */
+    public void setSyncMode(SyncMode syncMode)
+    {
+        this.syncMode = syncMode;
+    }
+
+    /**
+     * @param maxDelayMs        the longest time, in milliseconds, that a queued file waits for others
+     *                          to join its group (default: <tt>5</tt>)
+     */
+    public void setMaxDelayMs(long maxDelayMs)
+    {
+        this.maxDelayMs = maxDelayMs;
+    }
+
+    /**
+     * @param maxBatchSize      the number of queued files that are forced without further delay
+     *                          (default: <tt>256</tt>)
+     */
+    public void setMaxBatchSize(int maxBatchSize)
+    {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * @param syncThreads       the number of threads forcing the files of a group concurrently
+     *                          (default: <tt>4</tt>)
+     */
+    public void setSyncThreads(int syncThreads)
+    {
+        this.syncThreads = syncThreads;
+    }
+
+    public SyncMode getSyncMode()
+    {
+        return syncMode;
+    }
+
+    /**
+     * @return              Returns the number of content files forced onto disk
+     */
+    public long getFilesSynced()
+    {
+        return filesSynced.get();
+    }
+
+    /**
+     * @return              Returns the number of groups of files forced in write-behind mode
+     */
+    public long getBatchesSynced()
+    {
+        return batchesSynced.get();
+    }
+
+    /**
+     * Starts the background threads if files are forced in write-behind mode
+     */
+    public synchronized void init()
+    {
+        if (maxDelayMs < 0L || maxBatchSize < 1 || syncThreads < 1)
+        {
+            throw new AlfrescoRuntimeException(
+                    "Property 'maxDelayMs' must not be negative; 'maxBatchSize' and 'syncThreads' must be 1 or greater");
+        }
+        if (syncMode != SyncMode.WRITE_BEHIND || running)
+        {
+            return;
+        }
+        TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+        threadFactory.setThreadDaemon(true);
+        threadFactory.setNamePrefix("FileContentSyncer");
+        syncExecutor = Executors.newFixedThreadPool(syncThreads, threadFactory);
+        running = true;
+        batchThread = threadFactory.newThread(new Runnable()
+        {
+            public void run()
+            {
+                runBatches();
+            }
+        });
+        batchThread.start();
+    }
+
+    /**
+     * Stops the background threads, once the files already queued have been forced
+     */
+    public synchronized void destroy()
+    {
+        if (!running)
+        {
+            if (syncExecutor != null)
+            {
+                // The batch thread stopped on its own after being interrupted
+                syncExecutor.shutdown();
+            }
+            return;
+        }
+        synchronized (queue)
+        {
+            running = false;
+            queue.notifyAll();
+        }
+        try
+        {
+            batchThread.join();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        syncExecutor.shutdown();
+    }
+
+    /**
+     * Force a newly-written content file onto disk, according to the {@link SyncMode sync mode}.
+     * In write-behind mode, the file may still be queued when this method returns, but it will
+     * have been forced before the current transaction commits.
+     *
+     * @param file              the content file, which has been closed
+     * @throws ContentIOException if the file could not be forced
+     */
+    public void sync(File file)
+    {
+        switch (syncMode)
+        {
+            case IMMEDIATE:
+                forceFile(file);
+                forceDirectory(file.getParentFile());
+                filesSynced.incrementAndGet();
+                break;
+            case WRITE_BEHIND:
+                PendingSync pendingSync = new PendingSync(file);
+                synchronized (queue)
+                {
+                    // Checked under the lock so that nothing is queued once the batch thread has stopped
+                    if (!running)
+                    {
+                        throw new ContentIOException("The content file syncer is not running: " + file);
+                    }
+                    queue.add(pendingSync);
+                    queue.notifyAll();
+                }
+                if (AlfrescoTransactionSupport.getTransactionReadState() == TxnReadState.TXN_READ_WRITE)
+                {
+                    List<PendingSync> pendingSyncs = TransactionalResourceHelper.getList(KEY_PENDING_SYNCS);
+                    pendingSyncs.add(pendingSync);
+                    AlfrescoTransactionSupport.bindListener(transactionListener);
+                }
+                else
+                {
+                    pendingSync.await();
+                }
+                break;
+            default:
+                // The operating system will write the file out in its own time
+        }
+    }
+
+    /**
+     * Takes groups of files off the queue and forces them, until stopped and the queue is empty
+     */
+    private void runBatches()
+    {
+        while (true)
+        {
+            if (Thread.currentThread().isInterrupted())
+            {
+                abandonQueued();
+                return;
+            }
+            List<PendingSync> batch = new ArrayList<PendingSync>();
+            synchronized (queue)
+            {
+                try
+                {
+                    while (queue.isEmpty() && running)
+                    {
+                        queue.wait();
+                    }
+                    if (queue.isEmpty())
+                    {
+                        // Stopped
+                        return;
+                    }
+                    // Give other writers a chance to join the group
+                    long deadline = queue.getFirst().queuedAt + maxDelayMs;
+                    long wait;
+                    while (queue.size() < maxBatchSize && running &&
+                            (wait = deadline - System.currentTimeMillis()) > 0L)
+                    {
+                        queue.wait(wait);
+                    }
+                }
+                catch (InterruptedException e)
+                {
+                    // Force whatever has been queued
+                }
+                while (!queue.isEmpty() && batch.size() < maxBatchSize)
+                {
+                    batch.add(queue.removeFirst());
+                }
+            }
+            syncBatch(batch);
+        }
+    }
+
+    /**
+     * Stop taking files after the batch thread has been interrupted, failing the files still queued
+     */
+    private void abandonQueued()
+    {
+        synchronized (queue)
+        {
+            running = false;
+            ContentIOException interrupted = new ContentIOException("Interrupted while forcing content files onto disk");
+            for (PendingSync pendingSync : queue)
+            {
+                pendingSync.error = interrupted;
+                pendingSync.done.countDown();
+            }
+            queue.clear();
+        }
+        logger.warn("The content file syncer was interrupted and has stopped; writes that need forcing onto disk will fail.");
+    }
+
+    private void syncBatch(final List<PendingSync> batch)
+    {
+        long start = System.nanoTime();
+        final CountDownLatch filesForced = new CountDownLatch(batch.size());
+        for (final PendingSync pendingSync : batch)
+        {
+            syncExecutor.execute(new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        forceFile(pendingSync.file);
+                    }
+                    catch (Throwable e)
+                    {
+                        pendingSync.error = e;
+                    }
+                    finally
+                    {
+                        filesForced.countDown();
+                    }
+                }
+            });
+        }
+        try
+        {
+            filesForced.await();
+        }
+        catch (InterruptedException e)
+        {
+            // Nothing in the batch is known to be on disk, so the waiting transactions must fail
+            ContentIOException interrupted = new ContentIOException("Interrupted while forcing content files onto disk", e);
+            for (PendingSync pendingSync : batch)
+            {
+                if (pendingSync.error == null)
+                {
+                    pendingSync.error = interrupted;
+                }
+                pendingSync.done.countDown();
+            }
+            Thread.currentThread().interrupt();
+            return;
+        }
+        // The directory entries of new files are only durable once their directories are forced
+        Set<File> directories = new LinkedHashSet<File>();
+        for (PendingSync pendingSync : batch)
+        {
+            directories.add(pendingSync.file.getParentFile());
+        }
+        for (File directory : directories)
+        {
+            forceDirectory(directory);
+        }
+        for (PendingSync pendingSync : batch)
+        {
+            pendingSync.done.countDown();
+        }
+        filesSynced.addAndGet(batch.size());
+        batchesSynced.incrementAndGet();
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Forced content files onto disk: \n" +
+                    "   files:       " + batch.size() + "\n" +
+                    "   directories: " + directories.size() + "\n" +
+                    "   time (ms):   " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+    }
+
+    private static void forceFile(File file)
+    {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE))
+        {
+            channel.force(true);
+        }
+        catch (IOException e)
+        {
+            throw new ContentIOException("Failed to force content file onto disk: " + file, e);
+        }
+    }
+
+    /**
+     * Directories cannot be opened for forcing on all platforms, so failures are ignored
+     */
+    private static void forceDirectory(File directory)
+    {
+        try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ))
+        {
+            channel.force(true);
+        }
+        catch (IOException e)
+        {
+            if (logger.isTraceEnabled())
+            {
+                logger.trace("Unable to force directory onto disk: " + directory, e);
+            }
+        }
+    }
+
+    /**
+     * A file queued to be forced, which a writer or a transaction waits for
+     */
+    private static class PendingSync
+    {
+        private final File file;
+        private final long queuedAt;
+        private final CountDownLatch done;
+        private volatile Throwable error;
+
+        private PendingSync(File file)
+        {
+            this.file = file;
+            this.queuedAt = System.currentTimeMillis();
+            this.done = new CountDownLatch(1);
+        }
+
+        private void await()
+        {
+            try
+            {
+                done.await();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new ContentIOException("Interrupted while forcing content file onto disk: " + file, e);
+            }
+            if (error instanceof ContentIOException)
+            {
+                throw (ContentIOException) error;
+            }
+            else if (error != null)
+            {
+                throw new ContentIOException("Failed to force content file onto disk: " + file, error);
+            }
+        }
+    }
+
+    /**
+     * Holds up the commit of a transaction until the content files it wrote are on disk
+     */
+    private class SyncTransactionListener extends TransactionListenerAdapter
+    {
+        @Override
+        public void beforeCommit(boolean readOnly)
+        {
+            List<PendingSync> pendingSyncs = TransactionalResourceHelper.getList(KEY_PENDING_SYNCS);
+            for (PendingSync pendingSync : pendingSyncs)
+            {
+                pendingSync.await();
+            }
+            pendingSyncs.clear();
+        }
+    }
+}
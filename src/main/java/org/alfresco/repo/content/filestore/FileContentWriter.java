@@ -32,6 +32,8 @@ import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.nio.channels.Channels;
 import java.nio.channels.WritableByteChannel;
+import java.util.Collections;
+import java.util.List;
 
 import org.alfresco.api.AlfrescoPublicApi;     
 import org.alfresco.repo.content.AbstractContentWriter;
@@ -111,6 +113,15 @@ public class FileContentWriter extends AbstractContentWriter
         return file;
     }
 
+    /**
+     * @return Returns the files holding the written content, which are forced onto disk
+     *         once the writer is closed
+     */
+    /* package */ List<File> getWrittenFiles()
+    {
+        return Collections.singletonList(file);
+    }
+
     /**
      * @return Returns the size of the underlying file or 
      */
@@ -0,0 +1,59 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.filestore;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.quartz.Job;
+import org.quartz.JobDataMap;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+
+/**
+ * Quartz job to migrate cold and large content from the fast to the slow tier of a
+ * {@link TieredFileContentStore}.
+ * <p>
+ * <b>tieredContentStore</b>: The tiered store to migrate
+ *
+ * @since 7.110
+ */
+public class TieredContentMigrationJob implements Job
+{
+    public static final String KEY_TIERED_CONTENT_STORE = "tieredContentStore";
+
+    @Override
+    public void execute(JobExecutionContext context) throws JobExecutionException
+    {
+        JobDataMap jobData = context.getJobDetail().getJobDataMap();
+        Object storeObj = jobData.get(KEY_TIERED_CONTENT_STORE);
+        if (storeObj == null || !(storeObj instanceof TieredFileContentStore))
+        {
+            throw new AlfrescoRuntimeException(
+                    "TieredContentMigrationJob requires a valid '" + KEY_TIERED_CONTENT_STORE + "' reference");
+        }
+        TieredFileContentStore store = (TieredFileContentStore) storeObj;
+        store.migrate();
+    }
+}
@@ -0,0 +1,680 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.filestore;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.repo.cache.DefaultSimpleCache;
+import org.alfresco.repo.cache.SimpleCache;
+import org.alfresco.repo.content.AbstractContentStore;
+import org.alfresco.repo.content.ContentContext;
+import org.alfresco.repo.lock.JobLockService;
+import org.alfresco.repo.lock.LockAcquisitionException;
+import org.alfresco.repo.management.DynamicMBeanExportOperations;
+import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.ContentWriter;
+import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.PropertyCheck;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A content store that keeps content on a <b>fast</b> and a <b>slow</b> {@link FileContentStore}.
+ * <p>
+ * New content is always written to the fast tier.  Readers are served from the fast tier where
+ * the content is still there and from the slow tier otherwise, and the time at which content is
+ * read from the fast tier is recorded.  A {@link #migrate() migration}, normally run by the
+ * {@link TieredContentMigrationJob}, copies content from the fast tier to the slow tier if
+ * <ul>
+ *   <li>it is larger than the {@link #setMaxFastFileSizeMB(long) maximum size} kept on the fast tier, or</li>
+ *   <li>it has been neither read nor written for the {@link #setColdAgeMinutes(long) cold age}.</li>
+ * </ul>
+ * Both tiers use the same <b>store://</b> URLs, so the content URLs recorded against nodes never
+ * change.  The fast copy of migrated content is only removed by the following migration, which
+ * gives readers that were handed the fast copy time to finish with it.  A copy that is found to
+ * be incomplete, after a failure or restart, is discarded and made again.
+ * <p>
+ * Access times are recorded as the last access time of the fast tier files, so that they survive
+ * restarts and are seen by the other servers of a cluster that share the fast tier.  They are
+ * written at most once a minute per content URL, as tracked by the {@link #setAccessTimes(SimpleCache)
+ * access time cache}.  Other programs that read the fast tier files, such as backups, may also
+ * update their access times unless the file system is mounted with <tt>noatime</tt>.  The tiers
+ * must be plain file stores that are not used by any other content store.
+ *
+ * @since 7.110
+ */
+public class TieredFileContentStore extends AbstractContentStore implements TieredFileContentStoreMBean
+{
+    private static final QName LOCK_QNAME = QName.createQName(NamespaceService.SYSTEM_MODEL_1_0_URI, "TieredFileContentStoreMigration");
+    private static final long LOCK_TTL = 60000L;
+    /** The number of files examined between refreshes of the migration lock */
+    private static final int LOCK_REFRESH_COUNT = 1000;
+    /** The time for which a recorded access time is not written again */
+    private static final long ACCESS_TIME_RESOLUTION = 60000L;
+    // NUM_LOCKS absolutely must be a power of 2 for the use of locks to be evenly balanced
+    private static final int numLocks = 256;
+
+    private static final Log logger = LogFactory.getLog(TieredFileContentStore.class);
+
+    private FileContentStore fastStore;
+    private FileContentStore slowStore;
+    private SimpleCache<String, Long> accessTimes = new DefaultSimpleCache<String, Long>(100000, "tieredFileContentStore.accessTimes");
+    private long coldAgeMillis = 7L * 24L * 3600L * 1000L;
+    private long maxFastFileSize = 0L;
+    private long minFileAgeMillis = 60000L;
+    private JobLockService jobLockService;
+    private DynamicMBeanExportOperations mbeanExporter;
+    private String objectName;
+    private ObjectName registeredObjectName;
+
+    private final ReentrantLock[] locks;
+    private final AtomicBoolean migrationRunning = new AtomicBoolean(false);
+    private final AtomicLong fastTierHits = new AtomicLong();
+    private final AtomicLong slowTierHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong filesMigrated = new AtomicLong();
+    private final AtomicLong bytesMigrated = new AtomicLong();
+    private volatile long lastMigrationFiles;
+    private volatile long lastMigrationDurationMs = -1L;
+    private volatile double lastMigrationBytesPerSecond;
+
+    public TieredFileContentStore()
+    {
+        locks = new ReentrantLock[numLocks];
+        for (int i = 0; i < numLocks; i++)
+        {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * @param fastStore         the store to which new content is written
+     */
+    public void setFastStore(FileContentStore fastStore)
+    {
+        this.fastStore = fastStore;
+    }
+
+    /**
+     * @param slowStore         the store to which cold and large content is migrated
+     */
+    public void setSlowStore(FileContentStore slowStore)
+    {
+        this.slowStore = slowStore;
+    }
+
+    /**
+     * @param accessTimes       cache of the last time that content URLs were read from the fast tier,
+     *                          used to limit how often access times are written to the files
+     */
+    public void setAccessTimes(SimpleCache<String, Long> accessTimes)
+    {
+        this.accessTimes = accessTimes;
+    }
+
+    /**
+     * @param coldAgeMinutes    the time for which content must be neither read nor written before
+     *                          it is migrated to the slow tier
+     */
+    public void setColdAgeMinutes(long coldAgeMinutes)
+    {
+        this.coldAgeMillis = coldAgeMinutes * 60L * 1000L;
+    }
+
+    /**
+     * @param maxFastFileSizeMB content larger than this is migrated to the slow tier regardless of
+     *                          how often it is read, or <tt>0</tt> to keep content of any size
+     */
+    public void setMaxFastFileSizeMB(long maxFastFileSizeMB)
+    {
+        this.maxFastFileSize = maxFastFileSizeMB * 1024L * 1024L;
+    }
+
+    /**
+     * @param minFileAgeMillis  the time since content was last written before it may be migrated,
+     *                          so that content that is still being written is left alone
+     */
+    public void setMinFileAgeMillis(long minFileAgeMillis)
+    {
+        this.minFileAgeMillis = minFileAgeMillis;
+    }
+
+    /**
+     * @param jobLockService    optional service used to run only one migration across the cluster
+     */
+    public void setJobLockService(JobLockService jobLockService)
+    {
+        this.jobLockService = jobLockService;
+    }
+
+    /**
+     * @param mbeanExporter     optional exporter used to register the statistics MBean
+     */
+    public void setMbeanExporter(DynamicMBeanExportOperations mbeanExporter)
+    {
+        this.mbeanExporter = mbeanExporter;
+    }
+
+    /**
+     * @param objectName        the name under which the statistics MBean is registered
+     */
+    public void setObjectName(String objectName)
+    {
+        this.objectName = objectName;
+    }
+
+    /**
+     * Checks the tiers and registers the statistics MBean
+     */
+    public void init()
+    {
+        PropertyCheck.mandatory(this, "fastStore", fastStore);
+        PropertyCheck.mandatory(this, "slowStore", slowStore);
+        PropertyCheck.mandatory(this, "accessTimes", accessTimes);
+        if (fastStore instanceof DeduplicatingFileContentStore || slowStore instanceof DeduplicatingFileContentStore)
+        {
+            throw new AlfrescoRuntimeException("Deduplicated content can't be moved between tiers: " + this);
+        }
+        if (fastStore.getRootDirectory().equals(slowStore.getRootDirectory()))
+        {
+            throw new AlfrescoRuntimeException("The fast and slow tiers must use different directories: " + this);
+        }
+        if (!slowStore.isWriteSupported())
+        {
+            throw new AlfrescoRuntimeException("Content can't be migrated to a read-only slow tier: " + this);
+        }
+        registerMBean();
+    }
+
+    /**
+     * Unregisters the statistics MBean
+     */
+    public void destroy()
+    {
+        if (registeredObjectName != null)
+        {
+            mbeanExporter.unregisterMBean(registeredObjectName);
+            registeredObjectName = null;
+        }
+    }
+
+    private void registerMBean()
+    {
+        if (mbeanExporter == null || objectName == null)
+        {
+            return;
+        }
+        try
+        {
+            registeredObjectName = mbeanExporter.registerMBean(this, new ObjectName(objectName));
+        }
+        catch (MalformedObjectNameException e)
+        {
+            logger.warn("Invalid object name for the tiered content store MBean: " + objectName, e);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "TieredFileContentStore[fast=" + fastStore + ", slow=" + slowStore + "]";
+    }
+
+    /**
+     * @return      Returns <tt>true</tt> if the fast tier supports writing
+     */
+    @Override
+    public boolean isWriteSupported()
+    {
+        return fastStore.isWriteSupported();
+    }
+
+    @Override
+    public boolean isContentUrlSupported(String contentUrl)
+    {
+        return fastStore.isContentUrlSupported(contentUrl);
+    }
+
+    /**
+     * @return      Returns the root location of the fast tier
+     */
+    @Override
+    public String getRootLocation()
+    {
+        return fastStore.getRootLocation();
+    }
+
+    /**
+     * @return      Returns the space free on the fast tier, to which new content is written
+     */
+    @Override
+    public long getSpaceFree()
+    {
+        return fastStore.getSpaceFree();
+    }
+
+    /**
+     * @return      Returns the size of the fast tier, to which new content is written
+     */
+    @Override
+    public long getSpaceTotal()
+    {
+        return fastStore.getSpaceTotal();
+    }
+
+    @Override
+    public boolean exists(String contentUrl)
+    {
+        return fastStore.exists(contentUrl) || slowStore.exists(contentUrl);
+    }
+
+    /**
+     * Gets a reader from the fast tier if the content is there, or from the slow tier otherwise.
+     */
+    @Override
+    public ContentReader getReader(String contentUrl) throws ContentIOException
+    {
+        ContentReader fastReader = fastStore.getReader(contentUrl);
+        if (fastReader.exists())
+        {
+            fastTierHits.incrementAndGet();
+            recordAccess(contentUrl);
+            return fastReader;
+        }
+        ContentReader slowReader = slowStore.getReader(contentUrl);
+        if (slowReader.exists())
+        {
+            slowTierHits.incrementAndGet();
+            return slowReader;
+        }
+        misses.incrementAndGet();
+        return fastReader;
+    }
+
+    /**
+     * Records that content was read from the fast tier, on its file as well as in memory
+     */
+    private void recordAccess(String contentUrl)
+    {
+        long now = System.currentTimeMillis();
+        Long accessTime = accessTimes.get(contentUrl);
+        if (accessTime != null && now - accessTime < ACCESS_TIME_RESOLUTION)
+        {
+            return;
+        }
+        accessTimes.put(contentUrl, now);
+        setLastAccessTime(fastStore.makeFile(contentUrl), now);
+    }
+
+    private static long getLastAccessTime(File file)
+    {
+        try
+        {
+            return Files.readAttributes(file.toPath(), BasicFileAttributes.class).lastAccessTime().toMillis();
+        }
+        catch (IOException e)
+        {
+            // Deleted since it was listed
+            return 0L;
+        }
+    }
+
+    private static void setLastAccessTime(File file, long accessTime)
+    {
+        try
+        {
+            Files.getFileAttributeView(file.toPath(), BasicFileAttributeView.class).setTimes(null, FileTime.fromMillis(accessTime), null);
+        }
+        catch (IOException e)
+        {
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Failed to record the access time of content: " + file, e);
+            }
+        }
+    }
+
+    /**
+     * Gets a writer onto the fast tier
+     */
+    @Override
+    protected ContentWriter getWriterInternal(ContentReader existingContentReader, String newContentUrl)
+    {
+        return fastStore.getWriter(new ContentContext(existingContentReader, newContentUrl));
+    }
+
+    /**
+     * Deletes the content from both tiers
+     */
+    @Override
+    public boolean delete(String contentUrl) throws ContentIOException
+    {
+        ReentrantLock lock = getLock(contentUrl);
+        lock.lock();
+        try
+        {
+            accessTimes.remove(contentUrl);
+            boolean deletedFast = fastStore.delete(contentUrl);
+            boolean deletedSlow = slowStore.delete(contentUrl);
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Deleted tiered content: \n" +
+                        "   url: " + contentUrl + "\n" +
+                        "   fast: " + deletedFast + "\n" +
+                        "   slow: " + deletedSlow);
+            }
+            return deletedFast && deletedSlow;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    private ReentrantLock getLock(String contentUrl)
+    {
+        return locks[contentUrl.hashCode() & (numLocks - 1)];
+    }
+
+    /**
+     * Copies cold and large content from the fast tier to the slow tier and removes the fast
+     * copies of content copied by the previous migration.  Only one migration runs at a time;
+     * other calls return immediately.
+     *
+     * @return      Returns the number of content files copied to the slow tier
+     */
+    @Override
+    public long migrate()
+    {
+        if (!migrationRunning.compareAndSet(false, true))
+        {
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Content migration is already running: " + this);
+            }
+            return 0L;
+        }
+        String lockToken = null;
+        try
+        {
+            if (jobLockService != null)
+            {
+                lockToken = jobLockService.getLock(LOCK_QNAME, LOCK_TTL);
+            }
+            return migrateInternal(lockToken);
+        }
+        catch (LockAcquisitionException e)
+        {
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Content migration skipped or stopped: " + e.getMessage());
+            }
+            return 0L;
+        }
+        finally
+        {
+            if (lockToken != null)
+            {
+                jobLockService.releaseLock(lockToken, LOCK_QNAME);
+            }
+            migrationRunning.set(false);
+        }
+    }
+
+    private long migrateInternal(String lockToken)
+    {
+        long startTime = System.currentTimeMillis();
+        long files = 0L;
+        long bytes = 0L;
+        long examined = 0L;
+        Deque<File> directories = new ArrayDeque<File>();
+        directories.push(fastStore.getRootDirectory());
+        while (!directories.isEmpty())
+        {
+            File[] children = directories.pop().listFiles();
+            if (children == null)
+            {
+                continue;
+            }
+            for (File file : children)
+            {
+                if (file.isDirectory())
+                {
+                    directories.push(file);
+                    continue;
+                }
+                if (lockToken != null && ++examined % LOCK_REFRESH_COUNT == 0)
+                {
+                    jobLockService.refreshLock(lockToken, LOCK_QNAME, LOCK_TTL);
+                }
+                long copied = migrateFile(file, startTime);
+                if (copied >= 0L)
+                {
+                    files++;
+                    bytes += copied;
+                }
+            }
+        }
+        long duration = System.currentTimeMillis() - startTime;
+        filesMigrated.addAndGet(files);
+        bytesMigrated.addAndGet(bytes);
+        lastMigrationFiles = files;
+        lastMigrationDurationMs = duration;
+        lastMigrationBytesPerSecond = (duration == 0L) ? bytes * 1000.0 : bytes * 1000.0 / duration;
+        if (logger.isInfoEnabled())
+        {
+            logger.info("Migrated content to the slow tier: \n" +
+                    "   files: " + files + "\n" +
+                    "   bytes: " + bytes + "\n" +
+                    "   time:  " + duration + "ms\n" +
+                    "   rate:  " + (long) lastMigrationBytesPerSecond + " bytes/s");
+        }
+        return files;
+    }
+
+    /**
+     * Moves a single file of the fast tier on towards the slow tier.
+     *
+     * @return      Returns the number of bytes copied, or <tt>-1</tt> if the content was not copied
+     */
+    private long migrateFile(File file, long now)
+    {
+        String contentUrl = fastStore.makeContentUrl(file);
+        ReentrantLock lock = getLock(contentUrl);
+        lock.lock();
+        try
+        {
+            if (!file.exists())
+            {
+                // Deleted since the directory was listed
+                return -1L;
+            }
+            long size = file.length();
+            File target = slowStore.makeFile(contentUrl);
+            if (target.exists())
+            {
+                if (target.length() == size)
+                {
+                    if (!isCold(contentUrl, file, size, now))
+                    {
+                        // Read again since it was copied, so both copies are kept
+                        return -1L;
+                    }
+                    // Copied by an earlier migration, so readers have had time to finish with the fast copy
+                    fastStore.delete(contentUrl);
+                    accessTimes.remove(contentUrl);
+                    return -1L;
+                }
+                // Left over from a copy that did not complete
+                slowStore.delete(contentUrl);
+            }
+            if (!isCold(contentUrl, file, size, now))
+            {
+                return -1L;
+            }
+            long accessTime = getLastAccessTime(file);
+            try
+            {
+                target = slowStore.createNewFile(contentUrl);
+                new FileContentReader(file, contentUrl).getContent(target);
+                target.setLastModified(file.lastModified());
+            }
+            catch (Throwable e)
+            {
+                logger.warn("Failed to copy content to the slow tier: " + contentUrl, e);
+                slowStore.delete(contentUrl);
+                return -1L;
+            }
+            finally
+            {
+                if (accessTime > 0L)
+                {
+                    // Copying is not an access
+                    setLastAccessTime(file, accessTime);
+                }
+            }
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Copied content to the slow tier: \n" +
+                        "   url: " + contentUrl + "\n" +
+                        "   size: " + size);
+            }
+            return size;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    private boolean isCold(String contentUrl, File file, long size, long now)
+    {
+        long lastModified = file.lastModified();
+        if (now - lastModified < minFileAgeMillis)
+        {
+            return false;
+        }
+        if (maxFastFileSize > 0L && size > maxFastFileSize)
+        {
+            return true;
+        }
+        long lastUsed = Math.max(lastModified, getLastAccessTime(file));
+        Long accessTime = accessTimes.get(contentUrl);
+        if (accessTime != null)
+        {
+            lastUsed = Math.max(lastUsed, accessTime);
+        }
+        return now - lastUsed >= coldAgeMillis;
+    }
+
+    @Override
+    public long getFastTierHits()
+    {
+        return fastTierHits.get();
+    }
+
+    @Override
+    public long getSlowTierHits()
+    {
+        return slowTierHits.get();
+    }
+
+    @Override
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    @Override
+    public double getFastTierHitRatio()
+    {
+        return getHitRatio(fastTierHits.get());
+    }
+
+    @Override
+    public double getSlowTierHitRatio()
+    {
+        return getHitRatio(slowTierHits.get());
+    }
+
+    private double getHitRatio(long hits)
+    {
+        long reads = fastTierHits.get() + slowTierHits.get() + misses.get();
+        return (reads == 0L) ? 0.0 : (double) hits / reads;
+    }
+
+    @Override
+    public boolean isMigrationRunning()
+    {
+        return migrationRunning.get();
+    }
+
+    @Override
+    public long getFilesMigrated()
+    {
+        return filesMigrated.get();
+    }
+
+    @Override
+    public long getBytesMigrated()
+    {
+        return bytesMigrated.get();
+    }
+
+    @Override
+    public long getLastMigrationFiles()
+    {
+        return lastMigrationFiles;
+    }
+
+    @Override
+    public long getLastMigrationDurationMs()
+    {
+        return lastMigrationDurationMs;
+    }
+
+    @Override
+    public double getLastMigrationBytesPerSecond()
+    {
+        return lastMigrationBytesPerSecond;
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.filestore;
+
+/**
+ * Management interface for the {@link TieredFileContentStore}, reporting where content is read
+ * from and how content is migrated between the tiers.
+ *
+ * @since 7.110
+ */
+public interface TieredFileContentStoreMBean
+{
+    /**
+     * @return the number of readers served from the fast tier
+     */
+    long getFastTierHits();
+
+    /**
+     * @return the number of readers served from the slow tier
+     */
+    long getSlowTierHits();
+
+    /**
+     * @return the number of readers requested for content found in neither tier
+     */
+    long getMisses();
+
+    /**
+     * @return the fraction of readers served from the fast tier, or <tt>0</tt> if nothing has been read
+     */
+    double getFastTierHitRatio();
+
+    /**
+     * @return the fraction of readers served from the slow tier, or <tt>0</tt> if nothing has been read
+     */
+    double getSlowTierHitRatio();
+
+    /**
+     * @return <tt>true</tt> if a migration is running on this server
+     */
+    boolean isMigrationRunning();
+
+    /**
+     * @return the number of content files copied to the slow tier since startup
+     */
+    long getFilesMigrated();
+
+    /**
+     * @return the number of bytes copied to the slow tier since startup
+     */
+    long getBytesMigrated();
+
+    /**
+     * @return the number of content files copied to the slow tier by the last migration
+     */
+    long getLastMigrationFiles();
+
+    /**
+     * @return the time in milliseconds taken by the last migration, or <tt>-1</tt> if none has completed
+     */
+    long getLastMigrationDurationMs();
+
+    /**
+     * @return the rate, in bytes per second, at which the last migration copied content
+     */
+    double getLastMigrationBytesPerSecond();
+
+    /**
+     * Migrate cold and large content to the slow tier now
+     *
+     * @return the number of content files copied to the slow tier
+     */
+    long migrate();
+}
@@ -25,19 +25,37 @@
  */
 package org.alfresco.repo.content.replication;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
 
 import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.repo.content.AbstractContentStore;
 import org.alfresco.repo.content.ContentContext;
 import org.alfresco.repo.content.ContentStore;
 import org.alfresco.repo.content.caching.CachingContentStore;
+import org.alfresco.repo.management.DynamicMBeanExportOperations;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.security.authentication.AuthenticationUtil.RunAsWork;
 import org.alfresco.service.cmr.repository.ContentIOException;
 import org.alfresco.service.cmr.repository.ContentReader;
 import org.alfresco.service.cmr.repository.ContentWriter;
+import org.alfresco.util.TraceableThreadFactory;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -55,19 +73,38 @@ import org.apache.commons.logging.LogFactory;
  * Content is written to the primary store only.  The other stores are
  * only used to retrieve content and the primary store is not updated with
  * the content.
+ * <p>
+ * The stores are normally asked for content one after another, so a store that is slow to
+ * answer delays every read behind it.  When a {@link #setHedgeDelayMs(long) hedge delay} is set,
+ * the stores are asked on background threads and the next store is asked as well whenever no
+ * store has answered within the delay.  The first store to answer that it has the content wins;
+ * the primary reader is returned, as before, when no store has the content.  A read is not
+ * hedged when all the {@link #setHedgedReadThreads(int) threads} are busy: the stores that have
+ * not yet been asked are then asked one after another on the calling thread.  The time taken by
+ * each store to answer is kept in a {@link LatencyHistogram} and reported through JMX.
  * 
  * @author Derek Hulley
  * @author Mark Rogers
  * @see CachingContentStore
  */
-public class AggregatingContentStore extends AbstractContentStore
+public class AggregatingContentStore extends AbstractContentStore implements AggregatingContentStoreMBean
 {    
     private static Log logger = LogFactory.getLog(AggregatingContentStore.class);
     
     private ContentStore primaryStore;
     private List<ContentStore> secondaryStores;
+    private long hedgeDelayMs;
+    private int hedgedReadThreads = 16;
+    private DynamicMBeanExportOperations mbeanExporter;
+    private String objectName;
+    private ObjectName registeredObjectName;
     
     private Lock readLock;
+    private volatile ThreadPoolExecutor hedgedReadExecutor;
+    /** The time taken to answer by the primary store followed by each secondary store */
+    private volatile LatencyHistogram[] readLatencies = new LatencyHistogram[0];
+    private final AtomicLong hedgedReads = new AtomicLong();
+    private final AtomicLong hedgedReadWins = new AtomicLong();
 
     /**
      * Default constructor 
@@ -86,6 +123,7 @@ public class AggregatingContentStore extends AbstractContentStore
     public void setPrimaryStore(ContentStore primaryStore)
     {
         this.primaryStore = primaryStore;
+        resetReadLatencies();
     }
 
     /**
@@ -96,6 +134,174 @@ public class AggregatingContentStore extends AbstractContentStore
     public void setSecondaryStores(List<ContentStore> secondaryStores)
     {
         this.secondaryStores = secondaryStores;
+        resetReadLatencies();
+    }
+
+    /**
+     * Set the time allowed for a store to answer before the next store is asked as well.
+     * The default of <tt>0</tt> asks the stores one after another on the calling thread.
+     * 
+     * @param hedgeDelayMs the time in milliseconds after which reads are hedged, or <tt>0</tt>
+     */
+    public void setHedgeDelayMs(long hedgeDelayMs)
+    {
+        this.hedgeDelayMs = hedgeDelayMs;
+    }
+
+    /**
+     * Set the number of threads that may ask the stores for content at the same time.  When
+     * they are all busy, e.g. because a store has stopped answering, the read is not hedged:
+     * it waits for the stores already asked and then asks the remaining stores in turn on the
+     * calling thread.
+     * 
+     * @param hedgedReadThreads the maximum number of threads used to hedge reads
+     */
+    public void setHedgedReadThreads(int hedgedReadThreads)
+    {
+        this.hedgedReadThreads = hedgedReadThreads;
+    }
+
+    /**
+     * @param mbeanExporter     optional exporter used to register the statistics MBean
+     */
+    public void setMbeanExporter(DynamicMBeanExportOperations mbeanExporter)
+    {
+        this.mbeanExporter = mbeanExporter;
+    }
+
+    /**
+     * @param objectName        the name under which the statistics MBean is registered
+     */
+    public void setObjectName(String objectName)
+    {
+        this.objectName = objectName;
+    }
+
+    private void resetReadLatencies()
+    {
+        int count = 1 + (secondaryStores == null ? 0 : secondaryStores.size());
+        LatencyHistogram[] histograms = new LatencyHistogram[count];
+        for (int i = 0; i < count; i++)
+        {
+            histograms[i] = new LatencyHistogram();
+        }
+        readLatencies = histograms;
+    }
+
+    /**
+     * Checks the hedging properties, starts the threads used to hedge reads and registers the
+     * statistics MBean.  Stores declared without this init-method still hedge reads, starting
+     * the threads on the first read, but do not register the MBean.
+     */
+    public synchronized void init()
+    {
+        if (hedgeDelayMs < 0L || hedgedReadThreads < 1)
+        {
+            throw new AlfrescoRuntimeException(
+                    "Property 'hedgeDelayMs' must not be negative and 'hedgedReadThreads' must be 1 or greater");
+        }
+        if (hedgeDelayMs > 0L)
+        {
+            getHedgedReadExecutor();
+        }
+        if (mbeanExporter != null && objectName != null && registeredObjectName == null)
+        {
+            try
+            {
+                registeredObjectName = mbeanExporter.registerMBean(this, new ObjectName(objectName));
+            }
+            catch (MalformedObjectNameException e)
+            {
+                logger.warn("Invalid object name for the aggregating content store MBean: " + objectName, e);
+            }
+        }
+    }
+
+    /**
+     * Stops the threads used to hedge reads and unregisters the statistics MBean
+     */
+    public synchronized void destroy()
+    {
+        if (hedgedReadExecutor != null)
+        {
+            hedgedReadExecutor.shutdownNow();
+            hedgedReadExecutor = null;
+        }
+        if (registeredObjectName != null)
+        {
+            mbeanExporter.unregisterMBean(registeredObjectName);
+            registeredObjectName = null;
+        }
+    }
+
+    /**
+     * @return                  the threads used to hedge reads, started on first use
+     */
+    private ThreadPoolExecutor getHedgedReadExecutor()
+    {
+        ThreadPoolExecutor executor = hedgedReadExecutor;
+        if (executor != null)
+        {
+            return executor;
+        }
+        synchronized (this)
+        {
+            if (hedgedReadExecutor == null)
+            {
+                TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+                threadFactory.setThreadDaemon(true);
+                threadFactory.setNamePrefix("AggregatingContentStore");
+                hedgedReadExecutor = new ThreadPoolExecutor(
+                        0, Math.max(1, hedgedReadThreads),
+                        60L, TimeUnit.SECONDS,
+                        new SynchronousQueue<Runnable>(),
+                        threadFactory,
+                        new ThreadPoolExecutor.AbortPolicy());
+            }
+            return hedgedReadExecutor;
+        }
+    }
+
+    @Override
+    public long getHedgeDelayMs()
+    {
+        return hedgeDelayMs;
+    }
+
+    @Override
+    public long getHedgedReads()
+    {
+        return hedgedReads.get();
+    }
+
+    @Override
+    public long getHedgedReadWins()
+    {
+        return hedgedReadWins.get();
+    }
+
+    @Override
+    public String[] getReadLatencyHistograms()
+    {
+        LatencyHistogram[] histograms = readLatencies;
+        String[] lines = new String[histograms.length];
+        for (int i = 0; i < histograms.length; i++)
+        {
+            lines[i] = (i == 0 ? "primary" : "secondary " + i) + ": " + histograms[i];
+        }
+        return lines;
+    }
+
+    @Override
+    public long[] getReadLatency99thPercentilesMs()
+    {
+        LatencyHistogram[] histograms = readLatencies;
+        long[] percentiles = new long[histograms.length];
+        for (int i = 0; i < histograms.length; i++)
+        {
+            percentiles[i] = histograms[i].getPercentileMs(99.0);
+        }
+        return percentiles;
     }
     
     /**
@@ -138,27 +344,32 @@ public class AggregatingContentStore extends AbstractContentStore
         readLock.lock();
         try
         {
+            if (hedgeDelayMs > 0L && !secondaryStores.isEmpty())
+            {
+                return getReaderHedged(contentUrl, getHedgedReadExecutor());
+            }
+            
             // get a reader from the primary store
-            ContentReader primaryReader = primaryStore.getReader(contentUrl);
+            StoreAnswer primaryAnswer = ask(0, primaryStore, contentUrl);
             
             // give it straight back if the content is there
-            if (primaryReader.exists())
+            if (primaryAnswer.exists)
             {
-                return primaryReader;
+                return primaryAnswer.reader;
             }
 
             // the content is not in the primary reader so we have to go looking for it
-            for (ContentStore store : secondaryStores)
+            for (int i = 0; i < secondaryStores.size(); i++)
             {
-                ContentReader reader = store.getReader(contentUrl);
-                if (reader.exists())
+                StoreAnswer answer = ask(i + 1, secondaryStores.get(i), contentUrl);
+                if (answer.exists)
                 {
                     // found the content in a secondary store
-                    return reader;
+                    return answer.reader;
                 }
             }
 
-            return primaryReader;
+            return primaryAnswer.reader;
         }
         finally
         {
@@ -166,6 +377,239 @@ public class AggregatingContentStore extends AbstractContentStore
         }     
     }
 
+    /**
+     * Ask the stores, in order, for the content on background threads.  A store is asked as soon
+     * as the one before it answers that it does not have the content or, failing an answer, once
+     * the hedge delay has passed.  Stores that are still being asked when the content is found
+     * are left to answer in the background.
+     * <p>
+     * When no thread is free to ask a store, no more stores are asked in the background.  The
+     * stores already asked are waited for and the remaining stores are then asked in turn on
+     * the calling thread, as they would be without a hedge delay.
+     */
+    private ContentReader getReaderHedged(final String contentUrl, ThreadPoolExecutor executor)
+    {
+        List<ContentStore> stores = new ArrayList<ContentStore>(1 + secondaryStores.size());
+        stores.add(primaryStore);
+        stores.addAll(secondaryStores);
+        
+        CompletionService<StoreAnswer> completionService = new ExecutorCompletionService<StoreAnswer>(executor);
+        List<Future<StoreAnswer>> futures = new ArrayList<Future<StoreAnswer>>(stores.size());
+        boolean[] hedged = new boolean[stores.size()];
+        ContentReader primaryReader = null;
+        RuntimeException failure = null;
+        int answered = 0;
+        boolean saturated = false;
+        try
+        {
+            saturated = !submit(completionService, futures, 0, primaryStore, contentUrl);
+            while (answered < futures.size())
+            {
+                Future<StoreAnswer> future;
+                if (!saturated && futures.size() < stores.size())
+                {
+                    future = completionService.poll(hedgeDelayMs, TimeUnit.MILLISECONDS);
+                    if (future == null)
+                    {
+                        // nothing has answered in time so ask the next store as well
+                        int index = futures.size();
+                        if (!submit(completionService, futures, index, stores.get(index), contentUrl))
+                        {
+                            saturated = true;
+                            continue;
+                        }
+                        hedged[index] = true;
+                        hedgedReads.incrementAndGet();
+                        if (logger.isDebugEnabled())
+                        {
+                            logger.debug("Hedging read after " + hedgeDelayMs + "ms: \n" +
+                                    "   URL:   " + contentUrl + "\n" +
+                                    "   Store: " + stores.get(index));
+                        }
+                        continue;
+                    }
+                }
+                else
+                {
+                    future = completionService.take();
+                }
+                answered++;
+                try
+                {
+                    StoreAnswer answer = future.get();
+                    if (answer.exists)
+                    {
+                        if (hedged[answer.index])
+                        {
+                            hedgedReadWins.incrementAndGet();
+                        }
+                        return answer.reader;
+                    }
+                    if (answer.index == 0)
+                    {
+                        primaryReader = answer.reader;
+                    }
+                }
+                catch (ExecutionException e)
+                {
+                    Throwable cause = e.getCause();
+                    if (failure == null)
+                    {
+                        failure = (cause instanceof RuntimeException)
+                                ? (RuntimeException) cause
+                                : new ContentIOException("Failed to get reader for URL: " + contentUrl, cause);
+                    }
+                    if (logger.isDebugEnabled())
+                    {
+                        logger.debug("Store failed to answer for URL: " + contentUrl, cause);
+                    }
+                }
+                // the store does not have the content so move on to the next
+                if (!saturated && futures.size() < stores.size())
+                {
+                    int index = futures.size();
+                    saturated = !submit(completionService, futures, index, stores.get(index), contentUrl);
+                }
+            }
+            // no thread was free so ask the remaining stores on this thread
+            for (int index = futures.size(); index < stores.size(); index++)
+            {
+                try
+                {
+                    StoreAnswer answer = ask(index, stores.get(index), contentUrl);
+                    if (answer.exists)
+                    {
+                        return answer.reader;
+                    }
+                    if (index == 0)
+                    {
+                        primaryReader = answer.reader;
+                    }
+                }
+                catch (RuntimeException e)
+                {
+                    if (failure == null)
+                    {
+                        failure = e;
+                    }
+                    if (logger.isDebugEnabled())
+                    {
+                        logger.debug("Store failed to answer for URL: " + contentUrl, e);
+                    }
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new ContentIOException("Interrupted while getting reader for URL: " + contentUrl, e);
+        }
+        finally
+        {
+            // let slow stores finish in the background: an interrupt could close their channels
+            for (Future<StoreAnswer> future : futures)
+            {
+                future.cancel(false);
+            }
+        }
+        
+        // no store has the content
+        if (failure != null)
+        {
+            throw failure;
+        }
+        return primaryReader;
+    }
+
+    /**
+     * Ask a store for the content on a background thread
+     * 
+     * @param futures       the answers being waited for, to which the store's answer is added
+     * @return              <tt>true</tt> if the store is being asked or <tt>false</tt> if no thread is free
+     */
+    private boolean submit(
+            CompletionService<StoreAnswer> completionService,
+            List<Future<StoreAnswer>> futures,
+            final int index,
+            final ContentStore store,
+            final String contentUrl)
+    {
+        // stores such as the tenant routing stores need the caller's authentication
+        final String runAsUser = AuthenticationUtil.getRunAsUser();
+        Callable<StoreAnswer> task = new Callable<StoreAnswer>()
+        {
+            public StoreAnswer call() throws Exception
+            {
+                if (runAsUser == null)
+                {
+                    return ask(index, store, contentUrl);
+                }
+                return AuthenticationUtil.runAs(new RunAsWork<StoreAnswer>()
+                {
+                    public StoreAnswer doWork() throws Exception
+                    {
+                        return ask(index, store, contentUrl);
+                    }
+                }, runAsUser);
+            }
+        };
+        try
+        {
+            futures.add(completionService.submit(task));
+            return true;
+        }
+        catch (RejectedExecutionException e)
+        {
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("All " + hedgedReadThreads + " hedged read threads are busy; reading in turn: \n" +
+                        "   URL:   " + contentUrl + "\n" +
+                        "   Store: " + store);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Get a reader from a store and check whether the content is there, recording the time taken
+     * 
+     * @param index         the index of the store, starting with the primary store at <tt>0</tt>
+     */
+    private StoreAnswer ask(int index, ContentStore store, String contentUrl)
+    {
+        long start = System.nanoTime();
+        try
+        {
+            ContentReader reader = store.getReader(contentUrl);
+            return new StoreAnswer(index, reader, reader.exists());
+        }
+        finally
+        {
+            LatencyHistogram[] histograms = readLatencies;
+            if (index < histograms.length)
+            {
+                histograms[index].record(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * A store's answer to whether it has some content
+     */
+    private static class StoreAnswer
+    {
+        private final int index;
+        private final ContentReader reader;
+        private final boolean exists;
+
+        private StoreAnswer(int index, ContentReader reader, boolean exists)
+        {
+            this.index = index;
+            this.reader = reader;
+            this.exists = exists;
+        }
+    }
+
     public ContentWriter getWriter(ContentContext ctx)
     {
         // get the writer
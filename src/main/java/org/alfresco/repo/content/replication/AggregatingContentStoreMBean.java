@@ -0,0 +1,64 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.replication;
+
+/**
+ * Management interface for the {@link AggregatingContentStore}, reporting how long each store
+ * takes to answer for content and how often reads are hedged.
+ *
+ * @since 7.110
+ */
+public interface AggregatingContentStoreMBean
+{
+    /**
+     * @return the time in milliseconds allowed for a store to answer before the next store is
+     *         also asked, or <tt>0</tt> if the stores are asked one after another
+     */
+    long getHedgeDelayMs();
+
+    /**
+     * @return the number of times that a further store was asked because a store was slow to answer
+     */
+    long getHedgedReads();
+
+    /**
+     * @return the number of readers served by a store that was asked because an earlier store was
+     *         slow to answer
+     */
+    long getHedgedReadWins();
+
+    /**
+     * @return a histogram of the time taken by each store to answer, one line per store
+     *         beginning with the primary store
+     */
+    String[] getReadLatencyHistograms();
+
+    /**
+     * @return the 99th percentile, in milliseconds, of the time taken by each store to answer,
+     *         beginning with the primary store
+     */
+    long[] getReadLatency99thPercentilesMs();
+}
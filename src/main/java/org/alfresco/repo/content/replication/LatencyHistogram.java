@@ -0,0 +1,161 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.replication;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies with buckets that double in width, from under a millisecond up to
+ * the {@link #BUCKETS last bucket} which holds everything of 16 seconds and longer.
+ * <p>
+ * Recording is lock-free, so a histogram can be shared by any number of threads.
+ *
+ * @since 7.110
+ */
+public class LatencyHistogram
+{
+    /** The number of buckets: bucket <tt>i</tt> holds latencies below <tt>2^i</tt> milliseconds */
+    public static final int BUCKETS = 16;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * @param nanos         a latency in nanoseconds
+     */
+    public void record(long nanos)
+    {
+        counts.incrementAndGet(getBucket(TimeUnit.NANOSECONDS.toMillis(nanos)));
+    }
+
+    private static int getBucket(long millis)
+    {
+        if (millis <= 0L)
+        {
+            return 0;
+        }
+        // 1ms goes in bucket 1, 2-3ms in bucket 2, 4-7ms in bucket 3, ...
+        int bucket = 64 - Long.numberOfLeadingZeros(millis);
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    /**
+     * @param bucket        the index of a bucket
+     * @return              Returns the latency in milliseconds below which the bucket's latencies fall,
+     *                      or <tt>Long.MAX_VALUE</tt> for the last bucket
+     */
+    public static long getUpperBoundMs(int bucket)
+    {
+        return bucket < BUCKETS - 1 ? 1L << bucket : Long.MAX_VALUE;
+    }
+
+    /**
+     * @return              Returns the number of latencies recorded in each bucket
+     */
+    public long[] getCounts()
+    {
+        long[] result = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            result[i] = counts.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * @return              Returns the number of latencies recorded
+     */
+    public long getCount()
+    {
+        long count = 0L;
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * @param percentile    a percentile between <tt>0</tt> and <tt>100</tt> e.g. <tt>99</tt>
+     * @return              Returns the upper bound in milliseconds of the bucket holding the
+     *                      percentile, or <tt>0</tt> if nothing has been recorded
+     */
+    public long getPercentileMs(double percentile)
+    {
+        long[] snapshot = getCounts();
+        long count = 0L;
+        for (long bucketCount : snapshot)
+        {
+            count += bucketCount;
+        }
+        if (count == 0L)
+        {
+            return 0L;
+        }
+        long rank = (long) Math.ceil(count * percentile / 100.0);
+        long seen = 0L;
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            seen += snapshot[i];
+            if (seen >= rank && snapshot[i] > 0L)
+            {
+                return getUpperBoundMs(i);
+            }
+        }
+        return getUpperBoundMs(BUCKETS - 1);
+    }
+
+    /**
+     * @return              Returns the non-empty buckets e.g. <tt>&lt;1ms=120, &lt;4ms=3, &gt;=16384ms=1</tt>
+     */
+    @Override
+    public String toString()
+    {
+        long[] snapshot = getCounts();
+        StringBuilder sb = new StringBuilder(128);
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            if (snapshot[i] == 0L)
+            {
+                continue;
+            }
+            if (sb.length() > 0)
+            {
+                sb.append(", ");
+            }
+            if (i < BUCKETS - 1)
+            {
+                sb.append("<").append(getUpperBoundMs(i)).append("ms");
+            }
+            else
+            {
+                sb.append(">=").append(getUpperBoundMs(BUCKETS - 2)).append("ms");
+            }
+            sb.append("=").append(snapshot[i]);
+        }
+        return sb.toString();
+    }
+}
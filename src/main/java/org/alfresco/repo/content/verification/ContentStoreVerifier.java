@@ -0,0 +1,595 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.verification;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.repo.batch.BatchProcessWorkProvider;
+import org.alfresco.repo.batch.BatchProcessor;
+import org.alfresco.repo.batch.BatchProcessor.BatchProcessWorkerAdaptor;
+import org.alfresco.repo.content.ContentDigester;
+import org.alfresco.repo.content.ContentStore;
+import org.alfresco.repo.content.InlineContentReader;
+import org.alfresco.repo.domain.contentdata.ContentDataDAO;
+import org.alfresco.repo.domain.contentdata.ContentUrlEntity;
+import org.alfresco.repo.lock.JobLockService;
+import org.alfresco.repo.lock.JobLockService.JobLockRefreshCallback;
+import org.alfresco.repo.lock.LockAcquisitionException;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.util.PropertyCheck;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.quartz.Job;
+import org.quartz.JobDataMap;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Checks the content held in the content stores against the sizes and digests recorded in the
+ * database, e.g. after the content stores have been copied or migrated.
+ * <p>
+ * The content URLs that are in use are paged through in order of ID and handed out to a
+ * {@link BatchProcessor} with a configurable number of {@link #setWorkerThreads(int) worker threads}.
+ * The content is read from the {@link #setStores(List) stores} being verified, e.g. the stores that are
+ * cleaned, rather than through the content service, so that a {@link org.alfresco.repo.content.caching.CachingContentStore
+ * cache} in front of a store cannot answer for it.
+ * Content with a recorded {@link ContentDigester digest} is read in full and digested again.
+ * Content without one is only checked for its size, unless a {@link #setDigestAlgorithm(String) digest
+ * algorithm} is set, in which case the content is read and its digest recorded for the next run.
+ * <p>
+ * Reads are limited to {@link #setMaxReadMBPerSecond(int) maxReadMBPerSecond} across all the worker
+ * threads, so that verification does not starve the stores of bandwidth.  Missing or mismatched
+ * content is logged as a warning and counted in the {@link ContentVerificationResult result}; it is
+ * left as it is.
+ *
+ * @since 7.110
+ */
+public class ContentStoreVerifier implements ApplicationEventPublisherAware
+{
+    private static final QName LOCK_QNAME = QName.createQName(NamespaceService.SYSTEM_MODEL_1_0_URI, "ContentStoreVerifier");
+    private static final long LOCK_TTL = 60000L;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private static Log logger = LogFactory.getLog(ContentStoreVerifier.class);
+
+    private ContentDataDAO contentDataDAO;
+    private List<ContentStore> stores;
+    private JobLockService jobLockService;
+    private TransactionService transactionService;
+    private ApplicationEventPublisher applicationEventPublisher;
+    private int workerThreads;
+    private int batchSize;
+    private int maxReadMBPerSecond;
+    private String digestAlgorithm;
+    private RateLimiter rateLimiter;
+
+    public ContentStoreVerifier()
+    {
+        this.workerThreads = 2;
+        this.batchSize = 100;
+        this.maxReadMBPerSecond = 50;
+    }
+
+    /**
+     * @param contentDataDAO        DAO used for enumerating the content URLs
+     */
+    public void setContentDataDAO(ContentDataDAO contentDataDAO)
+    {
+        this.contentDataDAO = contentDataDAO;
+    }
+
+    /**
+     * @param stores                the stores holding the content, asked in turn for each content URL
+     */
+    public void setStores(List<ContentStore> stores)
+    {
+        this.stores = stores;
+    }
+
+    /**
+     * @param jobLockService        service used to ensure that verification runs are not duplicated
+     */
+    public void setJobLockService(JobLockService jobLockService)
+    {
+        this.jobLockService = jobLockService;
+    }
+
+    /**
+     * @param transactionService    the component to ensure proper transactional wrapping
+     */
+    public void setTransactionService(TransactionService transactionService)
+    {
+        this.transactionService = transactionService;
+    }
+
+    /**
+     * @param applicationEventPublisher used to publish the progress of the verification for monitoring
+     */
+    @Override
+    public void setApplicationEventPublisher(ApplicationEventPublisher applicationEventPublisher)
+    {
+        this.applicationEventPublisher = applicationEventPublisher;
+    }
+
+    /**
+     * Set the number of threads that verify content in parallel.  The default is 2.
+     */
+    public void setWorkerThreads(int workerThreads)
+    {
+        this.workerThreads = workerThreads;
+    }
+
+    /**
+     * Set the number of content URLs verified in each transaction.  The default is 100.
+     */
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Set the rate at which content may be read, shared by all the worker threads.  The default is 50.
+     *
+     * @param maxReadMBPerSecond    the maximum number of megabytes read per second, or 0 for no limit
+     */
+    public void setMaxReadMBPerSecond(int maxReadMBPerSecond)
+    {
+        this.maxReadMBPerSecond = maxReadMBPerSecond;
+    }
+
+    /**
+     * Set the algorithm with which to digest content that has no recorded digest.  By default no digest
+     * is recorded and such content is only checked for its size.
+     *
+     * @param digestAlgorithm       the name of a <tt>MessageDigest</tt> algorithm e.g. <tt>SHA-256</tt>,
+     *                              or empty to record no digests
+     */
+    public void setDigestAlgorithm(String digestAlgorithm)
+    {
+        if (digestAlgorithm != null && digestAlgorithm.trim().length() > 0)
+        {
+            // Fail now if the algorithm is not available
+            this.digestAlgorithm = new ContentDigester(digestAlgorithm.trim()).getAlgorithm();
+        }
+        else
+        {
+            this.digestAlgorithm = null;
+        }
+    }
+
+    /**
+     * Perform basic checks to ensure that the necessary dependencies were injected and create the
+     * rate limiter shared by all verification runs.  Called once, as the bean's <tt>init-method</tt>.
+     */
+    public void init()
+    {
+        PropertyCheck.mandatory(this, "contentDataDAO", contentDataDAO);
+        PropertyCheck.mandatory(this, "stores", stores);
+        PropertyCheck.mandatory(this, "jobLockService", jobLockService);
+        PropertyCheck.mandatory(this, "transactionService", transactionService);
+
+        if (workerThreads < 1 || batchSize < 1)
+        {
+            throw new AlfrescoRuntimeException("Properties 'workerThreads' and 'batchSize' must be 1 or greater");
+        }
+        if (maxReadMBPerSecond < 0)
+        {
+            throw new AlfrescoRuntimeException("Property 'maxReadMBPerSecond' must be 0 or greater");
+        }
+        rateLimiter = maxReadMBPerSecond > 0 ? RateLimiter.create(maxReadMBPerSecond * 1024.0 * 1024.0) : null;
+    }
+
+    /**
+     * Verifies the content, unless a verification is already underway.
+     *
+     * @return                  Returns the counts of content verified, missing and mismatched
+     */
+    public ContentVerificationResult execute()
+    {
+        final ContentVerificationResult result = new ContentVerificationResult();
+        // Bypass if the system is in read-only mode
+        if (transactionService.isReadOnly())
+        {
+            logger.debug("Content store verification bypassed; the system is read-only.");
+            return result;
+        }
+        JobLockRefreshCallback lockCallback = new JobLockRefreshCallback()
+        {
+            @Override
+            public void lockReleased()
+            {
+                result.inProgress.set(false);
+            }
+
+            @Override
+            public boolean isActive()
+            {
+                return result.inProgress.get();
+            }
+        };
+
+        String lockToken = null;
+        try
+        {
+            result.inProgress.set(true);
+            lockToken = jobLockService.getLock(LOCK_QNAME, LOCK_TTL);
+            jobLockService.refreshLock(lockToken, LOCK_QNAME, LOCK_TTL, lockCallback);
+
+            long startTime = System.currentTimeMillis();
+            verify(result);
+            long duration = Math.max(1L, System.currentTimeMillis() - startTime);
+            if (logger.isInfoEnabled())
+            {
+                logger.info(
+                        "Content store verification completed in " + duration + "ms " +
+                        "(" + (result.bytesRead.get() / 1024L * 1000L / duration) + "KB read per second, " +
+                        workerThreads + " worker threads): " + result);
+            }
+        }
+        catch (LockAcquisitionException e)
+        {
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("   Content store verification already underway.");
+            }
+        }
+        finally
+        {
+            result.inProgress.set(false);
+            if (lockToken != null)
+            {
+                jobLockService.releaseLock(lockToken, LOCK_QNAME);
+            }
+        }
+        return result;
+    }
+
+    private void verify(final ContentVerificationResult result)
+    {
+        BatchProcessor<ContentUrlEntity> batchProcessor = new BatchProcessor<ContentUrlEntity>(
+                "ContentStoreVerifier",
+                transactionService.getRetryingTransactionHelper(),
+                new ContentUrlWorkProvider(result),
+                workerThreads,
+                batchSize,
+                applicationEventPublisher,
+                logger,
+                10000);
+        BatchProcessWorkerAdaptor<ContentUrlEntity> worker = new BatchProcessWorkerAdaptor<ContentUrlEntity>()
+        {
+            @Override
+            public String getIdentifier(ContentUrlEntity contentUrl)
+            {
+                return contentUrl.getContentUrl();
+            }
+
+            @Override
+            public void beforeProcess() throws Throwable
+            {
+                AuthenticationUtil.setRunAsUserSystem();
+            }
+
+            @Override
+            public void afterProcess() throws Throwable
+            {
+                AuthenticationUtil.clearCurrentSecurityContext();
+            }
+
+            @Override
+            public void process(ContentUrlEntity contentUrl) throws Throwable
+            {
+                verify(contentUrl, rateLimiter, result);
+            }
+        };
+        batchProcessor.process(worker, true);
+    }
+
+    /**
+     * Check one piece of content against its size and digest
+     *
+     * @param rateLimiter       limits the rate at which content is read (may be <tt>null</tt>)
+     */
+    void verify(ContentUrlEntity contentUrl, RateLimiter rateLimiter, ContentVerificationResult result)
+    {
+        String url = contentUrl.getContentUrl();
+        if (InlineContentReader.isInlineContentUrl(url))
+        {
+            // Held in the database itself
+            result.skipped.incrementAndGet();
+            return;
+        }
+        ContentReader reader = getReader(url);
+        if (reader == null)
+        {
+            logger.warn("Content is missing: \n" +
+                    "   content URL: " + contentUrl);
+            result.missing.incrementAndGet();
+            return;
+        }
+
+        String recordedDigest = contentUrl.getContentDigest();
+        String algorithm = (recordedDigest == null) ? digestAlgorithm : ContentDigester.getAlgorithm(recordedDigest);
+        if (algorithm == null)
+        {
+            // Nothing to compare the content with but its size
+            if (reader.getSize() == contentUrl.getSize())
+            {
+                result.verified.incrementAndGet();
+            }
+            else
+            {
+                sizeMismatch(contentUrl, reader.getSize(), result);
+            }
+            return;
+        }
+
+        ContentDigester digester = digest(reader, algorithm, rateLimiter, result);
+        String contentDigest = digester.finish();
+        if (digester.getSize() != contentUrl.getSize())
+        {
+            sizeMismatch(contentUrl, digester.getSize(), result);
+        }
+        else if (recordedDigest == null)
+        {
+            if (contentDataDAO.updateContentUrlDigest(contentUrl.getId(), contentDigest))
+            {
+                result.digestsRecorded.incrementAndGet();
+            }
+            result.verified.incrementAndGet();
+        }
+        else if (recordedDigest.equals(contentDigest))
+        {
+            result.verified.incrementAndGet();
+        }
+        else
+        {
+            logger.warn("Content does not match its digest: \n" +
+                    "   content URL: " + contentUrl + "\n" +
+                    "   digest:      " + contentDigest);
+            result.digestMismatches.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return                  a reader from the first store that has the content, or <tt>null</tt> if none has it
+     */
+    private ContentReader getReader(String url)
+    {
+        for (ContentStore store : stores)
+        {
+            if (!store.isContentUrlSupported(url))
+            {
+                continue;
+            }
+            ContentReader reader = store.getReader(url);
+            if (reader.exists())
+            {
+                return reader;
+            }
+        }
+        return null;
+    }
+
+    private void sizeMismatch(ContentUrlEntity contentUrl, long size, ContentVerificationResult result)
+    {
+        logger.warn("Content does not match its size: \n" +
+                "   content URL: " + contentUrl + "\n" +
+                "   size:        " + size);
+        result.sizeMismatches.incrementAndGet();
+    }
+
+    /**
+     * Read the content through a digest, at no more than the permitted rate
+     */
+    private ContentDigester digest(ContentReader reader, String algorithm, RateLimiter rateLimiter, ContentVerificationResult result)
+    {
+        ContentDigester digester = new ContentDigester(algorithm);
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        ReadableByteChannel channel = reader.getReadableChannel();
+        try
+        {
+            int count;
+            while ((count = channel.read(buffer)) >= 0)
+            {
+                if (count == 0)
+                {
+                    continue;
+                }
+                if (rateLimiter != null)
+                {
+                    rateLimiter.acquire(count);
+                }
+                buffer.flip();
+                digester.update(buffer);
+                buffer.clear();
+                result.bytesRead.addAndGet(count);
+            }
+        }
+        catch (IOException e)
+        {
+            throw new ContentIOException("Failed to read content for verification: \n" +
+                    "   reader: " + reader,
+                    e);
+        }
+        finally
+        {
+            try { channel.close(); } catch (IOException e) {}
+        }
+        return digester;
+    }
+
+    /**
+     * Pages through the content URLs in use in order of ID.
+     */
+    private class ContentUrlWorkProvider implements BatchProcessWorkProvider<ContentUrlEntity>
+    {
+        private final ContentVerificationResult result;
+        private long nextId;
+
+        private ContentUrlWorkProvider(ContentVerificationResult result)
+        {
+            this.result = result;
+        }
+
+        @Override
+        public int getTotalEstimatedWorkSize()
+        {
+            return -1;
+        }
+
+        @Override
+        public Collection<ContentUrlEntity> getNextWork()
+        {
+            if (!result.inProgress.get())
+            {
+                // The lock was lost
+                return Collections.emptyList();
+            }
+            List<ContentUrlEntity> contentUrls = contentDataDAO.getContentUrlsInUse(nextId, batchSize * workerThreads);
+            if (!contentUrls.isEmpty())
+            {
+                nextId = contentUrls.get(contentUrls.size() - 1).getId() + 1L;
+            }
+            return contentUrls;
+        }
+    }
+
+    /**
+     * Thread-safe counts of the content checked by a verification run
+     */
+    public static class ContentVerificationResult
+    {
+        private final AtomicBoolean inProgress = new AtomicBoolean(false);
+        private final AtomicLong verified = new AtomicLong();
+        private final AtomicLong missing = new AtomicLong();
+        private final AtomicLong sizeMismatches = new AtomicLong();
+        private final AtomicLong digestMismatches = new AtomicLong();
+        private final AtomicLong digestsRecorded = new AtomicLong();
+        private final AtomicLong skipped = new AtomicLong();
+        private final AtomicLong bytesRead = new AtomicLong();
+
+        @Override
+        public String toString()
+        {
+            return "ContentVerificationResult" +
+                    "[ verified=" + verified +
+                    ", missing=" + missing +
+                    ", sizeMismatches=" + sizeMismatches +
+                    ", digestMismatches=" + digestMismatches +
+                    ", digestsRecorded=" + digestsRecorded +
+                    ", skipped=" + skipped +
+                    ", bytesRead=" + bytesRead +
+                    "]";
+        }
+
+        /**
+         * @return          Returns the number of pieces of content that matched their size and any digest
+         */
+        public long getVerified()
+        {
+            return verified.get();
+        }
+
+        public long getMissing()
+        {
+            return missing.get();
+        }
+
+        public long getSizeMismatches()
+        {
+            return sizeMismatches.get();
+        }
+
+        public long getDigestMismatches()
+        {
+            return digestMismatches.get();
+        }
+
+        /**
+         * @return          Returns the number of digests recorded for content that had none
+         */
+        public long getDigestsRecorded()
+        {
+            return digestsRecorded.get();
+        }
+
+        /**
+         * @return          Returns the number of pieces of content held inline, which are not checked
+         */
+        public long getSkipped()
+        {
+            return skipped.get();
+        }
+
+        public long getBytesRead()
+        {
+            return bytesRead.get();
+        }
+    }
+
+    /**
+     * Triggers a verification run of the content stores.
+     * <p>
+     * The following parameters are required:
+     * <ul>
+     *   <li><b>contentStoreVerifier</b>: The content store verifier bean</li>
+     * </ul>
+     */
+    public static class ContentStoreVerifierJob implements Job
+    {
+        public static final String JOB_DATA_VERIFIER = "contentStoreVerifier";
+
+        public void execute(JobExecutionContext context) throws JobExecutionException
+        {
+            JobDataMap jobData = context.getJobDetail().getJobDataMap();
+            Object verifierObj = jobData.get(JOB_DATA_VERIFIER);
+            if (verifierObj == null || !(verifierObj instanceof ContentStoreVerifier))
+            {
+                throw new AlfrescoRuntimeException(
+                        "ContentStoreVerifierJob data '" + JOB_DATA_VERIFIER + "' must reference a " + ContentStoreVerifier.class.getSimpleName());
+            }
+            ContentStoreVerifier verifier = (ContentStoreVerifier) verifierObj;
+            verifier.execute();
+        }
+    }
+}
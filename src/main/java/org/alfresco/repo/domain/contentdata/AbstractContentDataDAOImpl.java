@@ -34,6 +34,8 @@ import java.util.Set;
 import org.alfresco.repo.cache.SimpleCache;
 import org.alfresco.repo.cache.lookup.EntityLookupCache;
 import org.alfresco.repo.cache.lookup.EntityLookupCache.EntityLookupCallbackDAOAdaptor;
+import org.alfresco.repo.content.ContentDigester;
+import org.alfresco.repo.content.InlineContentWriter;
 import org.alfresco.repo.content.cleanup.EagerContentStoreCleaner;
 import org.alfresco.repo.domain.control.ControlDAO;
 import org.alfresco.repo.domain.encoding.EncodingDAO;
@@ -364,7 +366,23 @@ public abstract class AbstractContentDataDAOImpl implements ContentDataDAO
 
         public Pair<Long, ContentUrlEntity> createValue(ContentUrlEntity value)
         {
-            ContentUrlEntity contentUrlEntity = createContentUrlEntity(value.getContentUrl(), value.getSize(), value.getContentUrlKey());
+            String contentDigest = value.getContentDigest();
+            if (contentDigest == null)
+            {
+                // Pick up the digest of content that was written in this transaction
+                contentDigest = ContentDigester.getBoundContentDigest(value.getContentUrl());
+            }
+            ContentUrlEntity contentUrlEntity = createContentUrlEntity(
+                    value.getContentUrl(),
+                    value.getSize(),
+                    contentDigest,
+                    value.getContentUrlKey());
+            // Hold content that was written in this transaction to be kept in the database
+            byte[] inlineContent = InlineContentWriter.getBoundInlineContent(value.getContentUrl());
+            if (inlineContent != null)
+            {
+                createContentUrlInlineEntity(contentUrlEntity.getId(), inlineContent);
+            }
             // Done
             return new Pair<Long, ContentUrlEntity>(contentUrlEntity.getId(), contentUrlEntity);
         }
@@ -605,6 +623,27 @@ public abstract class AbstractContentDataDAOImpl implements ContentDataDAO
         return success;
     }
 
+    @Override
+    public boolean updateContentUrlDigest(Long id, String contentDigest)
+    {
+        int updated = updateContentUrlDigestEntity(id, contentDigest);
+        // The cached entity no longer matches the row
+        contentUrlCache.removeByKey(id);
+        return updated > 0;
+    }
+
+    @Override
+    public byte[] getContentUrlInline(String contentUrl)
+    {
+        ContentUrlEntity contentUrlEntity = getContentUrl(contentUrl);
+        if (contentUrlEntity == null)
+        {
+            return null;
+        }
+        ContentUrlInlineEntity contentUrlInlineEntity = getContentUrlInlineEntity(contentUrlEntity.getId());
+        return (contentUrlInlineEntity == null ? null : contentUrlInlineEntity.getContent());
+    }
+
     @Override
     public ContentUrlEntity getOrCreateContentUrl(String contentUrl)
     {
@@ -632,8 +671,9 @@ public abstract class AbstractContentDataDAOImpl implements ContentDataDAO
 
     /**
      * @param contentUrl    the content URL to create or search for
+     * @param contentDigest the digest of the content (may be <tt>null</tt>)
      */
-    protected abstract ContentUrlEntity createContentUrlEntity(String contentUrl, long size, ContentUrlKeyEntity contentUrlKey);
+    protected abstract ContentUrlEntity createContentUrlEntity(String contentUrl, long size, String contentDigest, ContentUrlKeyEntity contentUrlKey);
 
     /**
      * @param id            the ID of the <b>content url</b> entity
@@ -661,6 +701,29 @@ public abstract class AbstractContentDataDAOImpl implements ContentDataDAO
      */
     protected abstract int updateContentUrlOrphanTime(Long id, Long orphanTime, Long oldOrphanTime);
     
+    /**
+     * Set the digest of a content URL that does not have one
+     * 
+     * @param id            the unique ID of the entity
+     * @param contentDigest the digest of the content
+     * @return              Returns the number of rows updated
+     */
+    protected abstract int updateContentUrlDigestEntity(Long id, String contentDigest);
+    
+    /**
+     * Create the row holding content in the database
+     * 
+     * @param contentUrlId  the ID of the <b>content url</b> entity
+     * @param content       the content
+     */
+    protected abstract void createContentUrlInlineEntity(Long contentUrlId, byte[] content);
+    
+    /**
+     * @param contentUrlId  the ID of the <b>content url</b> entity
+     * @return              Returns the entity or <tt>null</tt> if no content is held in the database
+     */
+    protected abstract ContentUrlInlineEntity getContentUrlInlineEntity(Long contentUrlId);
+    
     /**
      * Create the row for the <b>alf_content_data</b>
      */
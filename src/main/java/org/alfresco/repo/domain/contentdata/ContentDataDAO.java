@@ -29,6 +29,7 @@ import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 
 import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.service.cmr.repository.ContentData;
@@ -122,6 +123,49 @@ public interface ContentDataDAO
             Long maxOrphanTimeExclusive,
             int maxResults);
     
+    /**
+     * Enumerate, in order of ID, the available content URLs that were orphaned on or before
+     * the given time, starting from the given ID.  This allows the orphans to be paged through
+     * while earlier pages are still being processed.  By default all the orphans are listed and
+     * the page is picked out of them; implementations should query for the page instead.
+     * 
+     * @param contentUrlHandler         the callback object to process the rows
+     * @param maxOrphanTimeExclusive    the maximum orphan time (exclusive)
+     * @param minIdInclusive            the minimum content URL ID (inclusive)
+     * @param maxResults                the maximum number of results (1 or greater)
+     * 
+     * @since 7.110
+     */
+    default void getContentUrlsOrphaned(
+            ContentUrlHandler contentUrlHandler,
+            Long maxOrphanTimeExclusive,
+            Long minIdInclusive,
+            int maxResults)
+    {
+        final TreeMap<Long, Pair<String, Long>> orphans = new TreeMap<Long, Pair<String, Long>>();
+        final long minId = (minIdInclusive == null) ? Long.MIN_VALUE : minIdInclusive;
+        getContentUrlsOrphaned(new ContentUrlHandler()
+        {
+            @Override
+            public void handle(Long id, String contentUrl, Long orphanTime)
+            {
+                if (id >= minId)
+                {
+                    orphans.put(id, new Pair<String, Long>(contentUrl, orphanTime));
+                }
+            }
+        }, maxOrphanTimeExclusive, Integer.MAX_VALUE);
+        int count = 0;
+        for (Map.Entry<Long, Pair<String, Long>> orphan : orphans.entrySet())
+        {
+            if (count++ >= maxResults)
+            {
+                break;
+            }
+            contentUrlHandler.handle(orphan.getKey(), orphan.getValue().getFirst(), orphan.getValue().getSecond());
+        }
+    }
+    
     /**
      * Enumerate all available content URLs that were orphaned and cleanup for these urls failed
      * 
@@ -137,6 +181,49 @@ public interface ContentDataDAO
      */
     int deleteContentUrls(List<Long> ids);
     
+    /**
+     * Get, in order of ID, the content URLs that have not been orphaned, starting from the given ID.
+     * 
+     * @param minIdInclusive            the minimum content URL ID (inclusive)
+     * @param maxResults                the maximum number of results (1 or greater)
+     * @return                          Returns the content URLs along with their sizes and digests
+     * 
+     * @since 7.110
+     */
+    List<ContentUrlEntity> getContentUrlsInUse(Long minIdInclusive, int maxResults);
+    
+    /**
+     * Record the digest of content that was written without one.  An existing digest is never replaced.
+     * By default digests are not recorded.
+     * 
+     * @param id                        the ID of the content URL
+     * @param contentDigest             the digest of the content, as <tt>ALGORITHM:hex</tt>
+     * @return                          Returns <tt>true</tt> if the digest was recorded
+     * 
+     * @since 7.110
+     */
+    default boolean updateContentUrlDigest(Long id, String contentDigest)
+    {
+        return false;
+    }
+    
+    /**
+     * Get content that is held in the database rather than in a content store.  The content is recorded
+     * along with its content URL, when the URL was bound to the transaction using
+     * {@link org.alfresco.repo.content.InlineContentWriter#bindInlineContent(String, byte[])}.
+     * By default no content is held in the database.
+     * 
+     * @param contentUrl                the URL of the content
+     * @return                          Returns the content or <tt>null</tt> if the URL is not recorded
+     *                                  or does not have content held in the database
+     * 
+     * @since 7.110
+     */
+    default byte[] getContentUrlInline(String contentUrl)
+    {
+        return null;
+    }
+    
     /**
      * Get a content url entity by contentUrl
      * 
@@ -55,6 +55,7 @@ public class ContentUrlEntity implements Serializable
     private long contentUrlCrc;
     private long size;
     private Long orphanTime;
+    private String contentDigest;
 
     private ContentUrlKeyEntity contentUrlKey;
 
@@ -97,6 +98,7 @@ public class ContentUrlEntity implements Serializable
           .append(", contentUrl=").append(contentUrl)
           .append(", size=").append(size)
           .append(", orphanTime=").append(orphanTime)
+          .append(", contentDigest=").append(contentDigest)
           .append("]");
         return sb.toString();
     }
@@ -144,6 +146,7 @@ public class ContentUrlEntity implements Serializable
         ret.setContentUrlKey(contentUrlKey);
         ret.setOrphanTime(existing == null ? null : existing.getOrphanTime());
         ret.setSize(existing == null ? null : existing.getSize());
+        ret.setContentDigest(existing == null ? null : existing.getContentDigest());
         ret.setId(existing == null ? null : existing.getId());
         // done
         return ret;
@@ -230,4 +233,19 @@ public class ContentUrlEntity implements Serializable
     {
         this.orphanTime = orphanTime;
     }
+
+    /**
+     * @return              Returns the digest of the content, as <tt>ALGORITHM:hex</tt>, or <tt>null</tt> if
+     *                      the content was not digested
+     * @since 7.110
+     */
+    public String getContentDigest()
+    {
+        return contentDigest;
+    }
+
+    public void setContentDigest(String contentDigest)
+    {
+        this.contentDigest = contentDigest;
+    }
 }
@@ -0,0 +1,73 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.contentdata;
+
+/**
+ * Entity bean for the <b>alf_content_url_inline</b> table, which holds content that is
+ * small enough to be kept in the database rather than in a content store.
+ * 
+ * @since 7.110
+ */
+public class ContentUrlInlineEntity
+{
+    private Long contentUrlId;
+    private byte[] content;
+    
+    public ContentUrlInlineEntity()
+    {
+    }
+    
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder(128);
+        sb.append("ContentUrlInlineEntity")
+          .append("[ contentUrlId=").append(contentUrlId)
+          .append(", size=").append(content == null ? null : content.length)
+          .append("]");
+        return sb.toString();
+    }
+
+    public Long getContentUrlId()
+    {
+        return contentUrlId;
+    }
+
+    public void setContentUrlId(Long contentUrlId)
+    {
+        this.contentUrlId = contentUrlId;
+    }
+
+    public byte[] getContent()
+    {
+        return content;
+    }
+
+    public void setContent(byte[] content)
+    {
+        this.content = content;
+    }
+}
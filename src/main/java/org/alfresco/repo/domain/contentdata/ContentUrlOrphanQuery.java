@@ -34,6 +34,7 @@ package org.alfresco.repo.domain.contentdata;
 public class ContentUrlOrphanQuery
 {
     private Long maxOrphanTimeExclusive;
+    private Long minIdInclusive;
     
     @Override
     public String toString()
@@ -41,6 +42,7 @@ public class ContentUrlOrphanQuery
         StringBuilder sb = new StringBuilder(512);
         sb.append("ContentUrlOrphanQuery")
           .append("[ maxOrphanTimeExclusive=").append(maxOrphanTimeExclusive)
+          .append(", minIdInclusive=").append(minIdInclusive)
           .append("]");
         return sb.toString();
     }
@@ -54,4 +56,18 @@ public class ContentUrlOrphanQuery
     {
         this.maxOrphanTimeExclusive = maxOrphanTimeExclusive;
     }
+
+    public Long getMinIdInclusive()
+    {
+        return minIdInclusive;
+    }
+
+    /**
+     * @param minIdInclusive        the minimum ID (inclusive), which also orders the results by ID
+     *                              or <tt>null</tt> for no minimum and no ordering
+     */
+    public void setMinIdInclusive(Long minIdInclusive)
+    {
+        this.minIdInclusive = minIdInclusive;
+    }
 }
\ No newline at end of file
@@ -38,6 +38,7 @@ import org.alfresco.ibatis.IdsEntity;
 import org.alfresco.repo.domain.contentdata.AbstractContentDataDAOImpl;
 import org.alfresco.repo.domain.contentdata.ContentDataEntity;
 import org.alfresco.repo.domain.contentdata.ContentUrlEntity;
+import org.alfresco.repo.domain.contentdata.ContentUrlInlineEntity;
 import org.alfresco.repo.domain.contentdata.ContentUrlKeyEntity;
 import org.alfresco.repo.domain.contentdata.ContentUrlOrphanQuery;
 import org.alfresco.repo.domain.contentdata.ContentUrlUpdateEntity;
@@ -65,16 +66,21 @@ public class ContentDataDAOImpl extends AbstractContentDataDAOImpl
     private static final String SELECT_CONTENT_URL_BY_KEY_UNREFERENCED = "alfresco.content.select_ContentUrlByKeyUnreferenced";
     private static final String SELECT_CONTENT_URLS_ORPHANED = "alfresco.content.select.select_ContentUrlsOrphaned";
     private static final String SELECT_CONTENT_URLS_KEEP_ORPHANED = "alfresco.content.select_ContentUrlsKeepOrphaned";
+    private static final String SELECT_CONTENT_URLS_IN_USE = "alfresco.content.select.select_ContentUrlsInUse";
     private static final String SELECT_CONTENT_DATA_BY_ID = "alfresco.content.select_ContentDataById";
     private static final String SELECT_CONTENT_DATA_BY_NODE_AND_QNAME = "alfresco.content.select_ContentDataByNodeAndQName";
     private static final String SELECT_CONTENT_DATA_BY_NODE_IDS = "alfresco.content.select_ContentDataByNodeIds";
     private static final String INSERT_CONTENT_URL = "alfresco.content.insert.insert_ContentUrl";
     private static final String INSERT_CONTENT_DATA = "alfresco.content.insert.insert_ContentData";
     private static final String UPDATE_CONTENT_URL_ORPHAN_TIME = "alfresco.content.update_ContentUrlOrphanTime";
+    private static final String UPDATE_CONTENT_URL_DIGEST = "alfresco.content.update_ContentUrlDigest";
+    private static final String INSERT_CONTENT_URL_INLINE = "alfresco.content.insert_ContentUrlInline";
+    private static final String SELECT_CONTENT_URL_INLINE = "alfresco.content.select_ContentUrlInline";
     private static final String UPDATE_CONTENT_DATA = "alfresco.content.update_ContentData";
     private static final String DELETE_CONTENT_DATA = "alfresco.content.delete_ContentData";
     private static final String DELETE_CONTENT_URLS = "alfresco.content.delete_ContentUrls";
     private static final String DELETE_CONTENT_URL_KEYS = "alfresco.content.delete_ContentUrlKeys";
+    private static final String DELETE_CONTENT_URL_INLINES = "alfresco.content.delete_ContentUrlInlines";
     private static final String DELETE_SYMMETRIC_KEY = "alfresco.content.delete_KeyData";
     private static final String UPDATE_SYMMETRIC_KEY = "alfresco.content.update_KeyData";
     private static final String INSERT_SYMMETRIC_KEY = "alfresco.content.insert.insert_KeyData";
@@ -103,12 +109,13 @@ public class ContentDataDAOImpl extends AbstractContentDataDAOImpl
     }
 
     @Override
-    protected ContentUrlEntity createContentUrlEntity(String contentUrl, long size, ContentUrlKeyEntity contentUrlKeyEntity)
+    protected ContentUrlEntity createContentUrlEntity(String contentUrl, long size, String contentDigest, ContentUrlKeyEntity contentUrlKeyEntity)
     {
         ContentUrlEntity contentUrlEntity = new ContentUrlEntity();
         contentUrlEntity.setContentUrl(contentUrl);
         contentUrlEntity.setSize(size);
         contentUrlEntity.setOrphanTime(null);
+        contentUrlEntity.setContentDigest(contentDigest);
         /* Long id = (Long) */ template.insert(INSERT_CONTENT_URL, contentUrlEntity);
         /*contentUrlEntity.setId(id);*/
 
@@ -150,11 +157,22 @@ public class ContentDataDAOImpl extends AbstractContentDataDAOImpl
             final ContentUrlHandler contentUrlHandler,
             final Long maxOrphanTimeExclusive,
             final int maxResults)
+    {
+        getContentUrlsOrphaned(contentUrlHandler, maxOrphanTimeExclusive, null, maxResults);
+    }
+    
+    @Override
+    public void getContentUrlsOrphaned(
+            final ContentUrlHandler contentUrlHandler,
+            final Long maxOrphanTimeExclusive,
+            final Long minIdInclusive,
+            final int maxResults)
     {
         ParameterCheck.mandatory("maxOrphanTimeExclusive", maxOrphanTimeExclusive);
         
         ContentUrlOrphanQuery query = new ContentUrlOrphanQuery();
         query.setMaxOrphanTimeExclusive(maxOrphanTimeExclusive);
+        query.setMinIdInclusive(minIdInclusive);
         List<ContentUrlEntity> results = template.selectList(SELECT_CONTENT_URLS_ORPHANED, 
                                                                                       query, 
                                                                                       new RowBounds(0, maxResults));
@@ -185,6 +203,42 @@ public class ContentDataDAOImpl extends AbstractContentDataDAOImpl
         }
     }
     
+    @Override
+    public List<ContentUrlEntity> getContentUrlsInUse(Long minIdInclusive, int maxResults)
+    {
+        ParameterCheck.mandatory("minIdInclusive", minIdInclusive);
+        
+        IdsEntity idsEntity = new IdsEntity();
+        idsEntity.setIdOne(minIdInclusive);
+        return template.selectList(SELECT_CONTENT_URLS_IN_USE, idsEntity, new RowBounds(0, maxResults));
+    }
+    
+    @Override
+    protected int updateContentUrlDigestEntity(Long id, String contentDigest)
+    {
+        ContentUrlEntity contentUrlEntity = new ContentUrlEntity();
+        contentUrlEntity.setId(id);
+        contentUrlEntity.setContentDigest(contentDigest);
+        return template.update(UPDATE_CONTENT_URL_DIGEST, contentUrlEntity);
+    }
+    
+    @Override
+    protected void createContentUrlInlineEntity(Long contentUrlId, byte[] content)
+    {
+        ContentUrlInlineEntity contentUrlInlineEntity = new ContentUrlInlineEntity();
+        contentUrlInlineEntity.setContentUrlId(contentUrlId);
+        contentUrlInlineEntity.setContent(content);
+        template.insert(INSERT_CONTENT_URL_INLINE, contentUrlInlineEntity);
+    }
+    
+    @Override
+    protected ContentUrlInlineEntity getContentUrlInlineEntity(Long contentUrlId)
+    {
+        ContentUrlInlineEntity contentUrlInlineEntity = new ContentUrlInlineEntity();
+        contentUrlInlineEntity.setContentUrlId(contentUrlId);
+        return template.selectOne(SELECT_CONTENT_URL_INLINE, contentUrlInlineEntity);
+    }
+    
     @Override
     public int updateContentUrlOrphanTime(Long id, Long orphanTime, Long oldOrphanTime)
     {
@@ -202,6 +256,7 @@ public class ContentDataDAOImpl extends AbstractContentDataDAOImpl
     public int deleteContentUrls(List<Long> ids)
     {
         template.delete(DELETE_CONTENT_URL_KEYS, ids);
+        template.delete(DELETE_CONTENT_URL_INLINES, ids);
         return template.delete(DELETE_CONTENT_URLS, ids);
     }
 
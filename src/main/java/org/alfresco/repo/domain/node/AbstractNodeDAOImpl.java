@@ -35,6 +35,7 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
@@ -55,6 +56,7 @@ import org.alfresco.repo.cache.NullCache;
 import org.alfresco.repo.cache.SimpleCache;
 import org.alfresco.repo.cache.TransactionalCache;
 import org.alfresco.repo.cache.lookup.EntityLookupCache;
+import org.alfresco.repo.cache.lookup.EntityLookupCache.EntityLookupBatchCallbackDAO;
 import org.alfresco.repo.cache.lookup.EntityLookupCache.EntityLookupCallbackDAOAdaptor;
 import org.alfresco.repo.domain.contentdata.ContentDataDAO;
 import org.alfresco.repo.domain.control.ControlDAO;
@@ -63,6 +65,7 @@ import org.alfresco.repo.domain.permissions.AccessControlListDAO;
 import org.alfresco.repo.domain.permissions.AclDAO;
 import org.alfresco.repo.domain.qname.QNameDAO;
 import org.alfresco.repo.domain.usage.UsageDAO;
+import org.alfresco.repo.node.NodeBulkLoader;
 import org.alfresco.repo.policy.BehaviourFilter;
 import org.alfresco.repo.security.permissions.AccessControlListProperties;
 import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
@@ -145,6 +148,8 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
     private UsageDAO usageDAO;
 
     private int cachingThreshold = 10;
+    private boolean prefetchParentAssocs = false;
+    private boolean prefetchAcls = false;
 
     /**
      * Cache for the Store root nodes by StoreRef:<br/>
@@ -238,6 +243,30 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
 		this.cachingThreshold = cachingThreshold;
 	}
 
+    /**
+     * @param prefetchParentAssocs  <tt>true</tt> to have the {@link NodeBulkLoader bulk loader} also load the
+     *                              parent associations of the nodes and of all their ancestors, level by level
+     *                              up to the root (default <tt>false</tt>)
+     * 
+     * @since 7.110
+     */
+    public void setPrefetchParentAssocs(boolean prefetchParentAssocs)
+    {
+        this.prefetchParentAssocs = prefetchParentAssocs;
+    }
+
+    /**
+     * @param prefetchAcls          <tt>true</tt> to have the {@link NodeBulkLoader bulk loader} also load the
+     *                              access control lists of the nodes and, if parent associations are prefetched,
+     *                              of their ancestors (default <tt>false</tt>)
+     * 
+     * @since 7.110
+     */
+    public void setPrefetchAcls(boolean prefetchAcls)
+    {
+        this.prefetchAcls = prefetchAcls;
+    }
+
     /**
      * @param policyBehaviourFilter     the service to determine the behaviour for <b>cm:auditable</b> and
      *                                  other inherent capabilities.
@@ -900,7 +929,9 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
      * @author Derek Hulley
      * @since 3.4
      */
-    private class NodesCacheCallbackDAO extends EntityLookupCallbackDAOAdaptor<Long, Node, NodeRef>
+    private class NodesCacheCallbackDAO
+            extends EntityLookupCallbackDAOAdaptor<Long, Node, NodeRef>
+            implements EntityLookupBatchCallbackDAO<Long, Node, NodeRef>
     {
         /**
          * @throws UnsupportedOperationException        Nodes are created externally
@@ -928,6 +959,35 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
             }
         }
 
+        /**
+         * Selects the nodes in batches of up to 256 IDs
+         * 
+         * @param nodeIds           the key node IDs
+         */
+        @Override
+        public List<Pair<Long, Node>> findByKeys(List<Long> nodeIds)
+        {
+            List<Pair<Long, Node>> nodePairs = new ArrayList<Pair<Long, Node>>(nodeIds.size());
+            int batchSize = 256;
+            SortedSet<Long> batch = new TreeSet<Long>();
+            Iterator<Long> nodeIdIterator = nodeIds.iterator();
+            while (nodeIdIterator.hasNext())
+            {
+                batch.add(nodeIdIterator.next());
+                if (batch.size() >= batchSize || !nodeIdIterator.hasNext())
+                {
+                    for (Node node : selectNodesByIds(batch))
+                    {
+                        // Lock it to prevent 'accidental' modification
+                        node.lock();
+                        nodePairs.add(new Pair<Long, Node>(node.getId(), node));
+                    }
+                    batch.clear();
+                }
+            }
+            return nodePairs;
+        }
+
         /**
          * @return                  Returns the Node's NodeRef
          */
@@ -4511,12 +4571,12 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
     {
         // First, make sure 'level 1' nodes and their parents are in the cache
         cacheNodesById(nodeIds);
-        for (Long nodeId : nodeIds)
+        for (Pair<Long, Node> nodePair : nodesCache.getByKeys(nodeIds))
         {
             // Filter out deleted nodes
-            if (exists(nodeId))
+            if (!nodePair.getSecond().getDeleted(qnameDAO))
             {
-                getParentAssocsCached(nodeId);
+                getParentAssocsCached(nodePair.getFirst());
             }
         }
         // Now recurse on all ancestors in the cache
@@ -4567,10 +4627,8 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
          * - and probably cheaper considering cache replication - so we start checking nodes to see
          * if they have entries before passing them over for batch loading.
          * 
-         * However, when running against a cold cache or doing a first-time query against some
-         * part of the repo, we will be checking for entries in the cache and consistently getting
-         * no results.  To avoid unnecessary checking when the cache is PROBABLY cold, we
-         * examine the ratio of hits/misses at regular intervals.
+         * The cache is checked for all the nodes in a single pass, so there is no longer any
+         * need to sample the ratio of hits/misses to skip the checks against a cold cache.
          */
         
         boolean disableSharedCacheReadForTransaction = false;
@@ -4586,42 +4644,37 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
             return;
         }
         
-        int foundCacheEntryCount = 0;
-        int missingCacheEntryCount = 0;
-        boolean forceBatch = false;
+        int size = cacheNodesNotCached(nodeIds);
+
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Pre-loaded " + size + " nodes.");
+        }
+        
+        prefetchParentAssocsAndAcls(nodeIds);
+    }
+    
+    /**
+     * Load the nodes that are not in the cache already
+     * 
+     * @return                  the number of nodes that were not cached
+     */
+    private int cacheNodesNotCached(List<Long> nodeIds)
+    {
+        // Which nodes are in the cache already?
+        Map<Long, Node> cachedNodes = nodesCache.getValues(nodeIds);
         
-        List<Long> batchLoadNodeIds = new ArrayList<Long>(nodeIds.size());
+        List<Long> batchLoadNodeIds = new ArrayList<Long>(nodeIds.size() - cachedNodes.size());
         for (Long nodeId : nodeIds)
         {
-            if (!forceBatch)
+            if (!cachedNodes.containsKey(nodeId))
             {
-                // Is this node in the cache?
-                if (nodesCache.getValue(nodeId) != null)
-                {
-                    foundCacheEntryCount++;                             // Don't add it to the batch
-                    continue;
-                }
-                else
-                {
-                    missingCacheEntryCount++;                           // Fall through and add it to the batch
-                }
-                if (foundCacheEntryCount + missingCacheEntryCount % 100 == 0)
-                {
-                    // We force the batch if the number of hits drops below the number of misses
-                    forceBatch = foundCacheEntryCount < missingCacheEntryCount;
-                }
+                batchLoadNodeIds.add(nodeId);
             }
-            
-            batchLoadNodeIds.add(nodeId);
         }
         
-        int size = batchLoadNodeIds.size();
         cacheNodesBatch(batchLoadNodeIds);
-
-        if (logger.isDebugEnabled())
-        {
-            logger.debug("Pre-loaded " + size + " nodes.");
-        }
+        return batchLoadNodeIds.size();
     }
 
 	/**
@@ -4690,6 +4743,7 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
             uuids.add(nodeRef.getId());
         }
         int size = nodeRefs.size();
+        List<NodeRef> prefetchNodeRefs = (prefetchParentAssocs || prefetchAcls) ? nodeRefs : null;
         nodeRefs = null;
         // Now load all the nodes
         for (Map.Entry<StoreRef, List<String>> entry : uuidsByStore.entrySet())
@@ -4702,6 +4756,148 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         {
             logger.debug("Pre-loaded " + size + " nodes.");
         }
+        
+        if (prefetchNodeRefs != null)
+        {
+            List<Long> nodeIds = new ArrayList<Long>(size);
+            for (NodeRef nodeRef : prefetchNodeRefs)
+            {
+                Long nodeId = nodesCache.getKey(nodeRef);
+                if (nodeId != null)
+                {
+                    nodeIds.add(nodeId);
+                }
+            }
+            prefetchParentAssocsAndAcls(nodeIds);
+        }
+    }
+    
+    /**
+     * Load the parent associations and the ACLs of the given nodes, as configured, using batched queries.
+     * Parent associations are loaded a level at a time, all the way up to the root, so that path building
+     * and permission checks for the nodes do not need to fault in their ancestors one at a time.
+     * <p/>
+     * The nodes must already be in the cache.
+     */
+    private void prefetchParentAssocsAndAcls(List<Long> nodeIds)
+    {
+        if (!prefetchParentAssocs && !prefetchAcls)
+        {
+            return;
+        }
+        SortedSet<Long> aclIds = new TreeSet<Long>();
+        Set<Long> visitedNodeIds = new HashSet<Long>(nodeIds.size() * 2);
+        List<Long> levelNodeIds = nodeIds;
+        int levels = 0;
+        while (!levelNodeIds.isEmpty())
+        {
+            // Filter out nodes that have been seen already (in case of cycles) and deleted nodes
+            List<Node> levelNodes = new ArrayList<Node>(levelNodeIds.size());
+            for (Node node : nodesCache.getValues(levelNodeIds).values())
+            {
+                if (visitedNodeIds.add(node.getId()) && !node.getDeleted(qnameDAO))
+                {
+                    levelNodes.add(node);
+                    if (node.getAclId() != null)
+                    {
+                        aclIds.add(node.getAclId());
+                    }
+                }
+            }
+            if (!prefetchParentAssocs || levelNodes.isEmpty())
+            {
+                break;
+            }
+            levels++;
+            SortedSet<Long> parentNodeIds = cacheParentAssocsBatch(levelNodes);
+            parentNodeIds.removeAll(visitedNodeIds);
+            levelNodeIds = new ArrayList<Long>(parentNodeIds);
+            // The parents must be cached before their own parents can be looked at
+            cacheNodesNotCached(levelNodeIds);
+        }
+        if (prefetchAcls && !aclIds.isEmpty())
+        {
+            aclDAO.cacheAccessControlLists(aclIds);
+        }
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Pre-loaded parent associations of " + visitedNodeIds.size() + " nodes over " + levels +
+                    " levels and " + (prefetchAcls ? aclIds.size() : 0) + " ACLs.");
+        }
+    }
+    
+    /**
+     * Cache the parent associations of nodes that do not have them cached yet, using batched queries
+     * 
+     * @param nodes             the nodes, which must not be deleted
+     * @return                  the IDs of the parents of all the nodes
+     */
+    private SortedSet<Long> cacheParentAssocsBatch(List<Node> nodes)
+    {
+        SortedSet<Long> parentNodeIds = new TreeSet<Long>();
+        Map<Long, Node> batch = new HashMap<Long, Node>(512);
+        for (Node node : nodes)
+        {
+            Pair<Long, String> cacheKey = new Pair<Long, String>(node.getId(), node.getTransaction().getChangeTxnId());
+            ParentAssocsInfo value = parentAssocsCache.get(cacheKey);
+            if (value != null)
+            {
+                for (ChildAssocEntity parentAssoc : value.getParentAssocs().values())
+                {
+                    parentNodeIds.add(parentAssoc.getParentNode().getId());
+                }
+                continue;
+            }
+            batch.put(node.getId(), node);
+            if (batch.size() >= 256)
+            {
+                cacheParentAssocsNoBatch(batch, parentNodeIds);
+                batch.clear();
+            }
+        }
+        if (batch.size() > 0)
+        {
+            cacheParentAssocsNoBatch(batch, parentNodeIds);
+        }
+        return parentNodeIds;
+    }
+    
+    private void cacheParentAssocsNoBatch(Map<Long, Node> nodesById, SortedSet<Long> parentNodeIds)
+    {
+        List<ChildAssocEntity> assocs = selectParentAssocsOfChildren(new TreeSet<Long>(nodesById.keySet()));
+        Map<Long, List<ChildAssocEntity>> assocsByChildId = new HashMap<Long, List<ChildAssocEntity>>(nodesById.size() * 2);
+        for (ChildAssocEntity assoc : assocs)
+        {
+            Long childNodeId = assoc.getChildNode().getId();
+            List<ChildAssocEntity> childAssocs = assocsByChildId.get(childNodeId);
+            if (childAssocs == null)
+            {
+                childAssocs = new ArrayList<ChildAssocEntity>(1);
+                assocsByChildId.put(childNodeId, childAssocs);
+            }
+            childAssocs.add(assoc);
+        }
+        for (Map.Entry<Long, List<ChildAssocEntity>> entry : assocsByChildId.entrySet())
+        {
+            Long nodeId = entry.getKey();
+            List<ChildAssocEntity> childAssocs = entry.getValue();
+            Node node = nodesById.get(nodeId);
+            // Leave stale nodes to be checked and reported when they are next used
+            NodeVersionKey nodeVersionKeyFromDb = childAssocs.get(0).getChildNode().getNodeVersionKey();
+            if (!nodeVersionKeyFromDb.equals(node.getNodeVersionKey()))
+            {
+                continue;
+            }
+            boolean isRoot = hasNodeAspect(nodeId, ContentModel.ASPECT_ROOT);
+            boolean isStoreRoot = getNodeType(nodeId).equals(ContentModel.TYPE_STOREROOT);
+            ParentAssocsInfo value = new ParentAssocsInfo(isRoot, isStoreRoot, childAssocs);
+            parentAssocsCache.put(new Pair<Long, String>(nodeId, node.getTransaction().getChangeTxnId()), value);
+            for (ChildAssocEntity parentAssoc : childAssocs)
+            {
+                parentNodeIds.add(parentAssoc.getParentNode().getId());
+            }
+        }
+        // Nodes without parents are roots or are inconsistent: they are left to be loaded individually
     }
     
     /**
@@ -4771,15 +4967,22 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
             NodeVersionKey nodeVersionKey = node.getNodeVersionKey();
             node.lock();                            // Prevent unexpected edits of values going into the cache
             nodesCache.setValue(nodeId, node);
-            if (propertiesCache.getValue(nodeVersionKey) == null)
+            nodeVersionKeysFromCache.put(nodeId, nodeVersionKey);
+        }
+        // Check the properties and aspects caches in one pass each
+        Collection<NodeVersionKey> nodeVersionKeys = nodeVersionKeysFromCache.values();
+        Map<NodeVersionKey, Map<QName, Serializable>> cachedProperties = propertiesCache.getValues(nodeVersionKeys);
+        Map<NodeVersionKey, Set<QName>> cachedAspects = aspectsCache.getValues(nodeVersionKeys);
+        for (NodeVersionKey nodeVersionKey : nodeVersionKeys)
+        {
+            if (!cachedProperties.containsKey(nodeVersionKey))
             {
-                propertiesNodeIds.add(nodeId);
+                propertiesNodeIds.add(nodeVersionKey.getNodeId());
             }
-            if (aspectsCache.getValue(nodeVersionKey) == null)
+            if (!cachedAspects.containsKey(nodeVersionKey))
             {
-                aspectNodeIds.add(nodeId);
+                aspectNodeIds.add(nodeVersionKey.getNodeId());
             }
-            nodeVersionKeysFromCache.put(nodeId, nodeVersionKey);
         }
         
         if(logger.isDebugEnabled())
@@ -5088,6 +5291,10 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
             Boolean isPrimary,
             ChildAssocRefQueryCallback resultsCallback);
     protected abstract List<ChildAssocEntity> selectParentAssocs(Long childNodeId);
+    /**
+     * @since 7.110
+     */
+    protected abstract List<ChildAssocEntity> selectParentAssocsOfChildren(SortedSet<Long> childNodeIds);
     /**
      * No DB constraint, so multiple returned
      */
@@ -0,0 +1,336 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.node;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.repo.cache.OffHeapSimpleCache;
+import org.alfresco.repo.domain.propval.CompactSerializableCodec;
+import org.springframework.beans.factory.ObjectFactory;
+
+/**
+ * {@link OffHeapSimpleCache.ValueSerializer} that writes cache values with the
+ * {@link CompactSerializableCodec} rather than with Java serialization.
+ * <p>
+ * The values of the node caches are given a compact form: a {@link NodeEntity} is written as the
+ * list of its column values, and the unmodifiable property maps and aspect sets are written as
+ * the maps and sets they wrap, so that they are read back as locked nodes and unmodifiable
+ * collections.  Property values and the IDs held for value lookups are written by the codec as
+ * they are, with <tt>QName</tt>s written as their IDs.  Any other value is left to the codec,
+ * which falls back to Java serialization for types it does not know.
+ * <p>
+ * The codec is looked up when the first value is written or read, as it depends on the
+ * QName DAO, whose own cache is created by the cache factory that uses this serializer.
+ *
+ * @since 7.110
+ */
+public class NodeCacheValueSerializer implements OffHeapSimpleCache.ValueSerializer
+{
+    private static final int TAG_VALUE = 0;
+    private static final int TAG_NODE = 1;
+    private static final int TAG_UNMODIFIABLE_MAP = 2;
+    private static final int TAG_UNMODIFIABLE_SET = 3;
+
+    private static final Class<?> UNMODIFIABLE_MAP_CLASS = Collections.unmodifiableMap(new HashMap<Object, Object>()).getClass();
+    private static final Class<?> UNMODIFIABLE_SET_CLASS = Collections.unmodifiableSet(new HashSet<Object>()).getClass();
+
+    private ObjectFactory<CompactSerializableCodec> codecFactory;
+    private volatile CompactSerializableCodec codec;
+
+    /**
+     * @param codecFactory      gives the codec used to write the values
+     */
+    public void setCodecFactory(ObjectFactory<CompactSerializableCodec> codecFactory)
+    {
+        this.codecFactory = codecFactory;
+    }
+
+    /**
+     * Use the given codec directly, e.g. where it has no dependency on the caches
+     *
+     * @param codec             the codec used to write the values
+     */
+    public void setCodec(CompactSerializableCodec codec)
+    {
+        this.codec = codec;
+    }
+
+    private CompactSerializableCodec getCodec()
+    {
+        CompactSerializableCodec codec = this.codec;
+        if (codec == null)
+        {
+            if (codecFactory == null)
+            {
+                throw new AlfrescoRuntimeException("NodeCacheValueSerializer requires a codec or a codecFactory");
+            }
+            codec = codecFactory.getObject();
+            this.codec = codec;
+        }
+        return codec;
+    }
+
+    @Override
+    public byte[] serialize(Object value)
+    {
+        if (value != null && !(value instanceof Serializable))
+        {
+            throw new AlfrescoRuntimeException("Cache value is not serializable: " + value.getClass().getName());
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(128);
+        try
+        {
+            if (value != null && value.getClass() == NodeEntity.class && isCompact((NodeEntity) value))
+            {
+                out.write(TAG_NODE);
+                getCodec().encode(nodeToList((NodeEntity) value), out);
+            }
+            else if (value != null && value.getClass() == UNMODIFIABLE_MAP_CLASS)
+            {
+                out.write(TAG_UNMODIFIABLE_MAP);
+                getCodec().encode(new HashMap<Object, Object>((Map<?, ?>) value), out);
+            }
+            else if (value != null && value.getClass() == UNMODIFIABLE_SET_CLASS)
+            {
+                out.write(TAG_UNMODIFIABLE_SET);
+                getCodec().encode(new HashSet<Object>((Set<?>) value), out);
+            }
+            else
+            {
+                out.write(TAG_VALUE);
+                getCodec().encode((Serializable) value, out);
+            }
+        }
+        catch (IOException e)
+        {
+            throw new AlfrescoRuntimeException("Failed to serialize cache value: " + value, e);
+        }
+        return out.toByteArray();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Object deserialize(byte[] bytes)
+    {
+        ByteArrayInputStream in = new ByteArrayInputStream(bytes);
+        try
+        {
+            int tag = in.read();
+            Serializable value = getCodec().decode(in);
+            switch (tag)
+            {
+                case TAG_VALUE:
+                    return value;
+                case TAG_NODE:
+                    return listToNode((List<Serializable>) value);
+                case TAG_UNMODIFIABLE_MAP:
+                    return Collections.unmodifiableMap((Map<Object, Object>) value);
+                case TAG_UNMODIFIABLE_SET:
+                    return Collections.unmodifiableSet((Set<Object>) value);
+                default:
+                    throw new AlfrescoRuntimeException("Unknown cache value tag: " + tag);
+            }
+        }
+        catch (IOException e)
+        {
+            throw new AlfrescoRuntimeException("Failed to deserialize cache value", e);
+        }
+    }
+
+    /**
+     * A node is only written as its columns when it holds no more than the node query reads back;
+     * a store that carries its root node is left to Java serialization.
+     */
+    private static boolean isCompact(NodeEntity node)
+    {
+        StoreEntity store = node.getStore();
+        return store == null || (store.getClass() == StoreEntity.class && store.getRootNode() == null);
+    }
+
+    private static ArrayList<Serializable> nodeToList(NodeEntity node)
+    {
+        ArrayList<Serializable> list = new ArrayList<Serializable>(12);
+        list.add(node.isLocked());
+        list.add(node.getId());
+        list.add(node.getVersion());
+        list.add(storeToList(node.getStore()));
+        list.add(node.getUuid());
+        list.add(node.getTypeQNameId());
+        list.add(node.getLocaleId());
+        list.add(node.getAclId());
+        list.add(transactionToList(node.getTransaction()));
+        list.add(auditablePropertiesToList(node.getAuditableProperties()));
+        list.add(node.getShardKey());
+        list.add(node.getExplicitShardId());
+        return list;
+    }
+
+    private static NodeEntity listToNode(List<Serializable> list)
+    {
+        NodeEntity node = new NodeEntity();
+        node.setId((Long) list.get(1));
+        node.setVersion((Long) list.get(2));
+        node.setStore(listToStore(list.get(3)));
+        node.setUuid((String) list.get(4));
+        node.setTypeQNameId((Long) list.get(5));
+        node.setLocaleId((Long) list.get(6));
+        node.setAclId((Long) list.get(7));
+        node.setTransaction(listToTransaction(list.get(8)));
+        node.setAuditableProperties(listToAuditableProperties(list.get(9)));
+        node.setShardKey((String) list.get(10));
+        node.setExplicitShardId((Integer) list.get(11));
+        if (Boolean.TRUE.equals(list.get(0)))
+        {
+            node.lock();
+        }
+        return node;
+    }
+
+    private static ArrayList<Serializable> storeToList(StoreEntity store)
+    {
+        if (store == null)
+        {
+            return null;
+        }
+        ArrayList<Serializable> list = new ArrayList<Serializable>(4);
+        list.add(store.getId());
+        list.add(store.getVersion());
+        list.add(store.getProtocol());
+        list.add(store.getIdentifier());
+        return list;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static StoreEntity listToStore(Serializable value)
+    {
+        if (value == null)
+        {
+            return null;
+        }
+        List<Serializable> list = (List<Serializable>) value;
+        StoreEntity store = new StoreEntity();
+        store.setId((Long) list.get(0));
+        store.setVersion((Long) list.get(1));
+        store.setProtocol((String) list.get(2));
+        store.setIdentifier((String) list.get(3));
+        return store;
+    }
+
+    private static ArrayList<Serializable> transactionToList(TransactionEntity txn)
+    {
+        if (txn == null)
+        {
+            return null;
+        }
+        ArrayList<Serializable> list = new ArrayList<Serializable>(5);
+        list.add(txn.getId());
+        list.add(txn.getVersion());
+        list.add(txn.getChangeTxnId());
+        list.add(txn.getCommitTimeMs());
+        ServerEntity server = txn.getServer();
+        if (server == null)
+        {
+            list.add(null);
+        }
+        else
+        {
+            ArrayList<Serializable> serverList = new ArrayList<Serializable>(3);
+            serverList.add(server.getId());
+            serverList.add(server.getVersion());
+            serverList.add(server.getIpAddress());
+            list.add(serverList);
+        }
+        return list;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static TransactionEntity listToTransaction(Serializable value)
+    {
+        if (value == null)
+        {
+            return null;
+        }
+        List<Serializable> list = (List<Serializable>) value;
+        TransactionEntity txn = new TransactionEntity();
+        txn.setId((Long) list.get(0));
+        txn.setVersion((Long) list.get(1));
+        txn.setChangeTxnId((String) list.get(2));
+        txn.setCommitTimeMs((Long) list.get(3));
+        List<Serializable> serverList = (List<Serializable>) list.get(4);
+        if (serverList != null)
+        {
+            ServerEntity server = new ServerEntity();
+            server.setId((Long) serverList.get(0));
+            server.setVersion((Long) serverList.get(1));
+            server.setIpAddress((String) serverList.get(2));
+            txn.setServer(server);
+        }
+        return txn;
+    }
+
+    private static ArrayList<Serializable> auditablePropertiesToList(AuditablePropertiesEntity auditableProperties)
+    {
+        if (auditableProperties == null)
+        {
+            return null;
+        }
+        ArrayList<Serializable> list = new ArrayList<Serializable>(5);
+        list.add(auditableProperties.getAuditCreator());
+        list.add(auditableProperties.getAuditCreated());
+        list.add(auditableProperties.getAuditModifier());
+        list.add(auditableProperties.getAuditModified());
+        list.add(auditableProperties.getAuditAccessed());
+        return list;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static AuditablePropertiesEntity listToAuditableProperties(Serializable value)
+    {
+        if (value == null)
+        {
+            return null;
+        }
+        List<Serializable> list = (List<Serializable>) value;
+        AuditablePropertiesEntity auditableProperties = new AuditablePropertiesEntity();
+        auditableProperties.setAuditCreator((String) list.get(0));
+        auditableProperties.setAuditCreated((String) list.get(1));
+        auditableProperties.setAuditModifier((String) list.get(2));
+        auditableProperties.setAuditModified((String) list.get(3));
+        auditableProperties.setAuditAccessed((String) list.get(4));
+        return auditableProperties;
+    }
+}
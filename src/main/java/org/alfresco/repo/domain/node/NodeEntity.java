@@ -174,6 +174,14 @@ public class NodeEntity implements Node, PermissionCheckValue, Serializable, Clo
         }
     }
     
+    /**
+     * @return          <tt>true</tt> if the entity is {@link #lock() locked} against updates
+     */
+    /* package */ synchronized boolean isLocked()
+    {
+        return locked;
+    }
+    
     private synchronized final void checkLock()
     {
         if (locked)
@@ -42,6 +42,8 @@ import java.util.Set;
 import javax.crypto.SealedObject;
 
 import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.ibatis.SerializableCodec;
+import org.alfresco.ibatis.SerializableTypeHandler;
 import org.alfresco.repo.domain.schema.SchemaBootstrap;
 import org.alfresco.service.cmr.dictionary.DataTypeDefinition;
 import org.alfresco.service.cmr.repository.AssociationRef;
@@ -1025,12 +1027,28 @@ public class NodePropertyValue implements Cloneable, Serializable
     
     /**
      * Clones a serializable object to disconnect the original instance from the persisted instance.
+     * The {@link SerializableTypeHandler#getSerializableCodec() codec} is used when values are
+     * written with it; otherwise Java serialization is used.
      * 
      * @param original          the original object
      * @return                  the new cloned object
      */
     private Serializable cloneSerializable(Serializable original)
     {
+       SerializableCodec codec = SerializableTypeHandler.getSerializableCodec();
+       if (codec != null && SerializableTypeHandler.isSerializableCodecWrites())
+       {
+           try
+           {
+               ByteArrayOutputStream byteOut = new ByteArrayOutputStream(256);
+               codec.encode(original, byteOut);
+               return codec.decode(new ByteArrayInputStream(byteOut.toByteArray()));
+           }
+           catch (Throwable e)
+           {
+               throw new AlfrescoRuntimeException("Failed to clone serializable object: " + original, e);
+           }
+       }
        ObjectOutputStream objectOut = null;
        ByteArrayOutputStream byteOut = null;
        ObjectInputStream objectIn = null;
@@ -26,7 +26,9 @@
 package org.alfresco.repo.domain.permissions;
 
 import java.io.Serializable;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -338,6 +340,85 @@ public class ADMAccessControlListDAO implements AccessControlListDAO
         return changes;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Unlike {@link #setFixedAcls(Long, Long, Long, Long, List, boolean, boolean, boolean)}, which walks the subtree
+     * depth first until it runs out of time, the subtree is split up by parent.  The parents that are left are
+     * marked as pending across the width of the subtree, so the {@link FixedAclUpdater} can update them in parallel.
+     */
+    public int setInheritanceForDescendants(Long nodeId, Long inheritFrom, Long sharedAclToReplace, int maxParents)
+    {
+        Long mergeFrom = aclDaoComponent.getInheritedAccessControlList(inheritFrom);
+        Deque<Long> parentIds = new ArrayDeque<Long>();
+        parentIds.add(nodeId);
+        int updated = 0;
+        boolean pending = false;
+        while (!parentIds.isEmpty())
+        {
+            Long parentId = parentIds.poll();
+            List<NodeIdAndAclId> children = nodeDAO.getPrimaryChildrenAcls(parentId);
+            if (children.isEmpty())
+            {
+                // Its own ACL was set with its siblings
+                continue;
+            }
+            if (updated >= maxParents)
+            {
+                addFixedAclPendingAspect(parentId, sharedAclToReplace, inheritFrom);
+                pending = true;
+                continue;
+            }
+            nodeDAO.setPrimaryChildrenSharedAclId(parentId, sharedAclToReplace, mergeFrom);
+            updated++;
+            for (NodeIdAndAclId child : children)
+            {
+                Long acl = child.getAclId();
+                if (acl == null || acl.equals(sharedAclToReplace))
+                {
+                    parentIds.add(child.getId());
+                }
+                else
+                {
+                    mergeInheritedAcl(acl, mergeFrom);
+                }
+            }
+        }
+        if (pending)
+        {
+            AlfrescoTransactionSupport.bindResource(FixedAclUpdater.FIXED_ACL_ASYNC_REQUIRED_KEY, true);
+        }
+        if (log.isDebugEnabled())
+        {
+            log.debug("Set inheritance for descendants of nodeId=" + nodeId + " parents=" + updated + " pending=" + pending);
+        }
+        return updated;
+    }
+
+    /**
+     * Merge a shared ACL into the defining ACL of a child that has one
+     */
+    private void mergeInheritedAcl(Long acl, Long mergeFrom)
+    {
+        Acl dbAcl = aclDaoComponent.getAcl(acl);
+        if (dbAcl.getAclType() == ACLType.LAYERED)
+        {
+            throw new UnsupportedOperationException();
+        }
+        else if (dbAcl.getAclType() == ACLType.DEFINING)
+        {
+            if (dbAcl.getInherits())
+            {
+                @SuppressWarnings("unused")
+                List<AclChange> newChanges = aclDaoComponent.mergeInheritedAccessControlList(mergeFrom, acl);
+            }
+        }
+        else if (dbAcl.getAclType() == ACLType.SHARED)
+        {
+            throw new ConcurrencyFailureException("setFixedAcls: unexpected shared acl: "+dbAcl);
+        }
+    }
+
     public void updateChangedAcls(NodeRef startingPoint, List<AclChange> changes)
     {
         // Nothing to do: no nodes change as a result of ACL changes
@@ -437,23 +518,7 @@ public class ADMAccessControlListDAO implements AccessControlListDAO
                     }
                     else
                     {
-                        Acl dbAcl = aclDaoComponent.getAcl(acl);
-                        if (dbAcl.getAclType() == ACLType.LAYERED)
-                        {
-                            throw new UnsupportedOperationException();
-                        }
-                        else if (dbAcl.getAclType() == ACLType.DEFINING)
-                        {
-                            if (dbAcl.getInherits())
-                            {
-                                @SuppressWarnings("unused")
-                                List<AclChange> newChanges = aclDaoComponent.mergeInheritedAccessControlList(mergeFrom, acl);
-                            }
-                        }
-                        else if (dbAcl.getAclType() == ACLType.SHARED)
-                        {
-                            throw new ConcurrencyFailureException("setFixedAcls: unexpected shared acl: "+dbAcl);
-                        }
+                        mergeInheritedAcl(acl, mergeFrom);
                     }
                 }
             }
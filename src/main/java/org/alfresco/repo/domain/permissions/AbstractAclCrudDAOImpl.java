@@ -27,6 +27,8 @@ package org.alfresco.repo.domain.permissions;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -35,6 +37,7 @@ import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.repo.cache.SimpleCache;
 import org.alfresco.repo.cache.TransactionalCache;
 import org.alfresco.repo.cache.lookup.EntityLookupCache;
+import org.alfresco.repo.cache.lookup.EntityLookupCache.EntityLookupBatchCallbackDAO;
 import org.alfresco.repo.cache.lookup.EntityLookupCache.EntityLookupCallbackDAO;
 import org.alfresco.repo.domain.CrcHelper;
 import org.alfresco.repo.domain.qname.QNameDAO;
@@ -205,6 +208,26 @@ public abstract class AbstractAclCrudDAOImpl implements AclCrudDAO
         return getAclImpl(id);
     }
     
+    public List<Acl> getAcls(Collection<Long> ids)
+    {
+        List<Acl> acls = new ArrayList<Acl>(ids.size());
+        List<Long> batchIds = new ArrayList<Long>(Math.min(ids.size(), batchSize));
+        Iterator<Long> idIterator = ids.iterator();
+        while (idIterator.hasNext())
+        {
+            batchIds.add(idIterator.next());
+            if (batchIds.size() == batchSize || (! idIterator.hasNext()))
+            {
+                for (Pair<Long, AclEntity> entityPair : aclEntityCache.getByKeys(batchIds))
+                {
+                    acls.add(entityPair.getSecond());
+                }
+                batchIds.clear();
+            }
+        }
+        return acls;
+    }
+    
     private AclEntity getAclImpl(Long id)
     {
         if (id == null)
@@ -302,7 +325,7 @@ public abstract class AbstractAclCrudDAOImpl implements AclCrudDAO
     /**
      * Callback for <b>alf_access_control_list</b> DAO
      */
-    private class AclEntityCallbackDAO implements EntityLookupCallbackDAO<Long, AclEntity, Serializable>
+    private class AclEntityCallbackDAO implements EntityLookupBatchCallbackDAO<Long, AclEntity, Serializable>
     {
         private final Pair<Long, AclEntity> convertEntityToPair(AclEntity entity)
         {
@@ -333,6 +356,17 @@ public abstract class AbstractAclCrudDAOImpl implements AclCrudDAO
             return convertEntityToPair(entity);
         }
         
+        public List<Pair<Long, AclEntity>> findByKeys(List<Long> keys)
+        {
+            List<AclEntity> entities = getAclEntities(keys);
+            List<Pair<Long, AclEntity>> entityPairs = new ArrayList<Pair<Long, AclEntity>>(entities.size());
+            for (AclEntity entity : entities)
+            {
+                entityPairs.add(convertEntityToPair(entity));
+            }
+            return entityPairs;
+        }
+        
         public Pair<Long, AclEntity> findByValue(AclEntity value)
         {
             if ((value != null) && (value.getId() != null))
@@ -360,6 +394,7 @@ public abstract class AbstractAclCrudDAOImpl implements AclCrudDAO
     
     protected abstract AclEntity createAclEntity(AclEntity entity);
     protected abstract AclEntity getAclEntity(long id);
+    protected abstract List<AclEntity> getAclEntities(List<Long> ids);
     protected abstract List<Long> getAclEntitiesThatInheritFromAcl(long idOfAcl);
     protected abstract Long getLatestAclEntityByGuid(String aclGuid);
     protected abstract int updateAclEntity(AclEntity entity);
@@ -612,6 +647,30 @@ public abstract class AbstractAclCrudDAOImpl implements AclCrudDAO
         return getAceAndAuthorityEntitiesByAcl(idOfAcl);
     }
     
+    public Map<Long, List<Map<String, Object>>> getAcesAndAuthoritiesByAcls(Collection<Long> idsOfAcls)
+    {
+        Map<Long, List<Map<String, Object>>> resultsByAcl = new HashMap<Long, List<Map<String, Object>>>(idsOfAcls.size() * 2);
+        for (Long idOfAcl : idsOfAcls)
+        {
+            resultsByAcl.put(idOfAcl, new ArrayList<Map<String, Object>>());
+        }
+        List<Long> batchIds = new ArrayList<Long>(Math.min(idsOfAcls.size(), batchSize));
+        Iterator<Long> idIterator = idsOfAcls.iterator();
+        while (idIterator.hasNext())
+        {
+            batchIds.add(idIterator.next());
+            if (batchIds.size() == batchSize || (! idIterator.hasNext()))
+            {
+                for (Map<String, Object> result : getAceAndAuthorityEntitiesByAcls(batchIds))
+                {
+                    resultsByAcl.get((Long) result.get("aclEntityId")).add(result);
+                }
+                batchIds.clear();
+            }
+        }
+        return resultsByAcl;
+    }
+    
     public int deleteAces(List<Long> aceIds)
     {
         int totalDeletedCount = 0;
@@ -652,6 +711,7 @@ public abstract class AbstractAclCrudDAOImpl implements AclCrudDAO
     protected abstract AceEntity getAceEntity(long permissionId, long authorityId, boolean allowed, ACEType type);
     protected abstract List<Ace> getAceEntitiesByAuthority(long authorityId);
     protected abstract List<Map<String, Object>> getAceAndAuthorityEntitiesByAcl(long idOfAcl);
+    protected abstract List<Map<String, Object>> getAceAndAuthorityEntitiesByAcls(List<Long> idsOfAcls);
     protected abstract int deleteAceEntities(List<Long> aceIds);
     
     //
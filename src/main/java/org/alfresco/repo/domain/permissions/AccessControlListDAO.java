@@ -91,6 +91,21 @@ public interface AccessControlListDAO
      */
     public List<AclChange> setInheritanceForChildren(NodeRef parent, Long inheritFrom, Long sharedAclToReplace, boolean asyncCall);
 
+    /**
+     * Set the inheritance on the descendants of a node, breadth first, with a single bulk update of the primary
+     * children of each parent.  Once the given number of parents have been updated, the parents left are marked
+     * with ASPECT_PENDING_FIX_ACL so that their parts of the subtree can be updated by other transactions.
+     * 
+     * @param nodeId                the node whose descendants inherit
+     * @param inheritFrom           the ACL to inherit from
+     * @param sharedAclToReplace    the shared ACL being replaced, if any
+     * @param maxParents            the maximum number of parents to update (1 or greater)
+     * @return                      Returns the number of parents updated
+     * 
+     * @since 7.110
+     */
+    public int setInheritanceForDescendants(Long nodeId, Long inheritFrom, Long sharedAclToReplace, int maxParents);
+
     public Long getIndirectAcl(NodeRef nodeRef);
 
     public Long getInheritedAcl(NodeRef nodeRef);
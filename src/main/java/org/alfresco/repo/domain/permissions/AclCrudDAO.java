@@ -25,6 +25,9 @@
  */
 package org.alfresco.repo.domain.permissions;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -64,6 +67,26 @@ public interface AclCrudDAO
     
     public Acl createAcl(AclEntity entity);
     public Acl getAcl(Long aclEntityId);
+    /**
+     * Get a number of ACLs, using batched queries for those that are not cached.  By default the
+     * ACLs are got one at a time.
+     * 
+     * @return the ACLs that exist, in the order of the IDs given
+     * @since 7.110
+     */
+    public default List<Acl> getAcls(Collection<Long> aclEntityIds)
+    {
+        List<Acl> acls = new ArrayList<Acl>(aclEntityIds.size());
+        for (Long aclEntityId : aclEntityIds)
+        {
+            Acl acl = getAcl(aclEntityId);
+            if (acl != null)
+            {
+                acls.add(acl);
+            }
+        }
+        return acls;
+    }
     public AclUpdateEntity getAclForUpdate(long aclEntityId);
     public List<Long> getAclsThatInheritFromAcl(long aclEntityId);
     public Long getLatestAclByGuid(String aclGuid);
@@ -80,6 +103,22 @@ public interface AclCrudDAO
     public Ace getOrCreateAce(Permission permission, Authority authority, ACEType type, AccessStatus accessStatus);
     public List<Ace> getAcesByAuthority(long authorityEntityId);
     public List<Map<String, Object>> getAcesAndAuthoritiesByAcl(long aclEntityId);
+    /**
+     * Get the entries of a number of ACLs, using batched queries.  By default the entries are got
+     * one ACL at a time.
+     * 
+     * @return the entries of each ACL, as given by {@link #getAcesAndAuthoritiesByAcl(long)}, keyed by ACL ID
+     * @since 7.110
+     */
+    public default Map<Long, List<Map<String, Object>>> getAcesAndAuthoritiesByAcls(Collection<Long> aclEntityIds)
+    {
+        Map<Long, List<Map<String, Object>>> aces = new HashMap<Long, List<Map<String, Object>>>(aclEntityIds.size() * 2);
+        for (Long aclEntityId : aclEntityIds)
+        {
+            aces.put(aclEntityId, getAcesAndAuthoritiesByAcl(aclEntityId));
+        }
+        return aces;
+    }
     public int deleteAces(List<Long> aceEntityIds);
     
     //
@@ -25,6 +25,7 @@
  */
 package org.alfresco.repo.domain.permissions;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.alfresco.repo.security.permissions.ACLCopyMode;
@@ -52,6 +53,22 @@ public interface AclDAO
      */
     public AccessControlList getAccessControlList(Long id);
     
+    /**
+     * Pre-cache a number of ACLs (including entries) so that they can be retrieved using
+     * {@link #getAccessControlList(Long)} without further queries.  The ACLs that are not
+     * cached already are loaded using batched queries.  By default the ACLs are got one at a time.
+     * 
+     * @param ids               the IDs of the ACLs
+     * @since 7.110
+     */
+    public default void cacheAccessControlLists(Collection<Long> ids)
+    {
+        for (Long id : ids)
+        {
+            getAccessControlList(id);
+        }
+    }
+    
     /**
      * Get an ACL
      */
@@ -27,6 +27,7 @@ package org.alfresco.repo.domain.permissions;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -1072,11 +1073,59 @@ public class AclDAOImpl implements AclDAO
             return aclCached;
         }
 
+        List<Map<String, Object>> results = aclCrudDAO.getAcesAndAuthoritiesByAcl(id);
+        AccessControlList acl = buildAccessControlList(properties, results);
+        
+        // Cache it for next time
+        aclCache.put((Serializable)properties, acl);
+
+        return acl;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void cacheAccessControlLists(Collection<Long> ids)
+    {
+        // Used the cached properties as our cache key
+        List<Acl> aclsToLoad = new ArrayList<Acl>(ids.size());
+        for (Acl properties : aclCrudDAO.getAcls(ids))
+        {
+            if (aclCache.get((Serializable)properties) == null)
+            {
+                aclsToLoad.add(properties);
+            }
+        }
+        if (aclsToLoad.isEmpty())
+        {
+            return;
+        }
+        List<Long> aclIdsToLoad = new ArrayList<Long>(aclsToLoad.size());
+        for (Acl properties : aclsToLoad)
+        {
+            aclIdsToLoad.add(properties.getId());
+        }
+        Map<Long, List<Map<String, Object>>> resultsByAcl = aclCrudDAO.getAcesAndAuthoritiesByAcls(aclIdsToLoad);
+        for (Acl properties : aclsToLoad)
+        {
+            AccessControlList acl = buildAccessControlList(properties, resultsByAcl.get(properties.getId()));
+            aclCache.put((Serializable)properties, acl);
+        }
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Pre-loaded " + aclsToLoad.size() + " ACLs.");
+        }
+    }
+
+    /**
+     * Build an ACL from its properties and the rows describing its entries
+     */
+    private AccessControlList buildAccessControlList(AccessControlListProperties properties, List<Map<String, Object>> results)
+    {
         SimpleAccessControlList acl = new SimpleAccessControlList();
         acl.setProperties(properties);
 
-        List<Map<String, Object>> results = aclCrudDAO.getAcesAndAuthoritiesByAcl(id);
-
         List<AccessControlEntry> entries = new ArrayList<AccessControlEntry>(results.size());
         for (Map<String, Object> result : results)
             // for (AclMemberEntity member : members)
@@ -1110,10 +1159,6 @@ public class AclDAOImpl implements AclDAO
 
         Collections.sort(entries);
         acl.setEntries(entries);
-        
-        // Cache it for next time
-        aclCache.put((Serializable)properties, acl);
-
         return acl;
     }
 
@@ -33,8 +33,13 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
 import org.alfresco.model.ContentModel;
 import org.alfresco.repo.batch.BatchProcessWorkProvider;
 import org.alfresco.repo.batch.BatchProcessor;
@@ -43,6 +48,7 @@ import org.alfresco.repo.domain.node.NodeDAO.NodeRefQueryCallback;
 import org.alfresco.repo.lock.JobLockService;
 import org.alfresco.repo.lock.JobLockService.JobLockRefreshCallback;
 import org.alfresco.repo.lock.LockAcquisitionException;
+import org.alfresco.repo.management.DynamicMBeanExportOperations;
 import org.alfresco.repo.policy.ClassPolicyDelegate;
 import org.alfresco.repo.policy.PolicyComponent;
 import org.alfresco.repo.security.authentication.AuthenticationUtil;
@@ -66,18 +72,35 @@ import org.springframework.context.ApplicationContextAware;
 
 /**
  * Finds nodes with ASPECT_PENDING_FIX_ACL aspect and sets fixed ACLs for them
+ * <p>
+ * Each pending node is the root of a part of the subtree whose inheritance was changed, and the pending
+ * nodes are processed in parallel, <tt>maxItemBatchSize</tt> to a transaction.
+ * <p>
+ * In streaming mode the subtree is partitioned by primary parent.  Each transaction updates the primary
+ * children of up to <tt>maxItemBatchSize</tt> parents, breadth first from its pending nodes, with one bulk
+ * update per parent, and marks the parents below them as pending.  A run keeps making passes over the pending
+ * nodes, in ID ranges of <tt>maxItemBatchSize</tt>, until none are left, so the width of the subtree is worked
+ * through by all of the threads at once.  The run that follows the commit of an asynchronous change is handed
+ * to the {@link #setStreamingExecutor(Executor) streaming executor}, so that the committing thread is not held
+ * up for the whole subtree.  Otherwise that run makes a single pass and the nodes it marks as pending are left
+ * to the scheduled job.
+ * <p>
+ * The progress of the run is reported through JMX.
  * 
  * @author Andreea Dragoi
  * @author sglover
  * @since 4.2.7
  */
-public class FixedAclUpdater extends TransactionListenerAdapter implements ApplicationContextAware
+public class FixedAclUpdater extends TransactionListenerAdapter implements ApplicationContextAware, FixedAclUpdaterMBean
 {
     private static final Log log = LogFactory.getLog(FixedAclUpdater.class);
     private static final Set<QName> PENDING_FIX_ACL_ASPECT_PROPS = pendingFixAclAspectProps();
 
     public static final String FIXED_ACL_ASYNC_REQUIRED_KEY = "FIXED_ACL_ASYNC_REQUIRED";
     public static final String FIXED_ACL_ASYNC_CALL_KEY = "FIXED_ACL_ASYNC_CALL";
+    private static final String KEY_PARENTS_UPDATED = FixedAclUpdater.class.getName() + ".parentsUpdated";
+    /** The number of times a run that follows a commit tries to get the lock, so that a run that is finishing does not miss its nodes */
+    private static final int STREAMING_LOCK_RETRIES = 3;
 
     private ApplicationContext applicationContext;
     private JobLockService jobLockService;
@@ -90,6 +113,22 @@ public class FixedAclUpdater extends TransactionListenerAdapter implements Appli
 
     private int maxItemBatchSize = 100;
     private int numThreads = 4;
+    private boolean streaming = false;
+    private Executor streamingExecutor;
+    private final AtomicBoolean streamingRunQueued = new AtomicBoolean(false);
+
+    private DynamicMBeanExportOperations mbeanExporter;
+    private String objectName;
+    private ObjectName registeredObjectName;
+
+    // progress of the current or last run
+    private volatile boolean running;
+    private volatile int passes;
+    private volatile long runStartTime = -1;
+    private volatile long runEndTime = -1;
+    private volatile long processedInEarlierPasses;
+    private volatile AclWorkProvider currentWork;
+    private volatile BatchProcessor<NodeRef> currentPass;
 
     private ClassPolicyDelegate<OnInheritPermissionsDisabled> onInheritPermissionsDisabledDelegate;    
     private PolicyComponent policyComponent;    
@@ -147,15 +186,68 @@ public class FixedAclUpdater extends TransactionListenerAdapter implements Appli
         this.policyIgnoreUtil = policyIgnoreUtil;
     }
 
+    /**
+     * @param streaming         <tt>true</tt> to partition the subtree by primary parent and keep making passes
+     *                          until no pending nodes are left
+     */
+    public void setStreaming(boolean streaming)
+    {
+        this.streaming = streaming;
+    }
+
+    /**
+     * @param streamingExecutor the executor that runs the updater after the commit of an asynchronous change
+     *                          in streaming mode
+     */
+    public void setStreamingExecutor(Executor streamingExecutor)
+    {
+        this.streamingExecutor = streamingExecutor;
+    }
+
+    /**
+     * @param mbeanExporter     optional exporter used to register the progress MBean
+     */
+    public void setMbeanExporter(DynamicMBeanExportOperations mbeanExporter)
+    {
+        this.mbeanExporter = mbeanExporter;
+    }
+
+    /**
+     * @param objectName        the name under which the progress MBean is registered
+     */
+    public void setObjectName(String objectName)
+    {
+        this.objectName = objectName;
+    }
+
     public void init()
     {
         onInheritPermissionsDisabledDelegate = policyComponent.registerClassPolicy(PermissionServicePolicies.OnInheritPermissionsDisabled.class);
+        if (mbeanExporter != null && objectName != null)
+        {
+            try
+            {
+                registeredObjectName = mbeanExporter.registerMBean(this, new ObjectName(objectName));
+            }
+            catch (MalformedObjectNameException e)
+            {
+                log.warn("Invalid object name for the fixed ACL updater MBean: " + objectName, e);
+            }
+        }
+    }
+
+    public void destroy()
+    {
+        if (registeredObjectName != null)
+        {
+            mbeanExporter.unregisterMBean(registeredObjectName);
+            registeredObjectName = null;
+        }
     }
 
     private class GetNodesWithAspects
     {
         private Set<QName> aspects;
-        private int workSize;
         private GetNodesWithAspectCallback getNodesCallback;
 
         GetNodesWithAspects(Set<QName> aspects)
@@ -163,12 +255,6 @@ public class FixedAclUpdater extends TransactionListenerAdapter implements Appli
             this.aspects = aspects;
 
             this.getNodesCallback = new GetNodesWithAspectCallback();
-            this.workSize = countNodesWithAspects();
-        }
-
-        int getWorkSize()
-        {
-            return workSize;
         }
 
         List<NodeRef> getNodesWithAspects()
@@ -188,54 +274,52 @@ public class FixedAclUpdater extends TransactionListenerAdapter implements Appli
                     }, false, true);
             return nodes;
         }
-
-        int countNodesWithAspects()
-        {
-            final CountNodesWithAspectCallback countNodesCallback = new CountNodesWithAspectCallback();
-            int count = transactionService.getRetryingTransactionHelper()
-                    .doInTransaction(new RetryingTransactionCallback<Integer>()
-                    {
-                        @Override
-                        public Integer execute() throws Throwable
-                        {
-                            nodeDAO.getNodesWithAspects(aspects, 0l, null, countNodesCallback);
-                            return countNodesCallback.getCount();
-                        }
-                    }, false, true);
-            return count;
-        }
     }
 
+    /**
+     * Pages through the pending nodes, counting them as it goes rather than counting them up front
+     */
     private class AclWorkProvider implements BatchProcessWorkProvider<NodeRef>
     {
         private GetNodesWithAspects getNodesWithAspects;
+        private volatile int workSize = -1;
 
         AclWorkProvider()
         {
             getNodesWithAspects = new GetNodesWithAspects(Collections.singleton(ContentModel.ASPECT_PENDING_FIX_ACL));
         }
 
+        /**
+         * @return          Returns the number of pending nodes found so far, or <tt>-1</tt> before the first page
+         */
         @Override
         public int getTotalEstimatedWorkSize()
         {
-            int workSize = getNodesWithAspects.getWorkSize();
             return workSize;
         }
 
         @Override
         public Collection<NodeRef> getNextWork()
         {
-            return getNodesWithAspects.getNodesWithAspects();
+            List<NodeRef> nodes = getNodesWithAspects.getNodesWithAspects();
+            workSize = Math.max(workSize, 0) + nodes.size();
+            return nodes;
         }
     }
 
     private class AclWorker implements BatchProcessor.BatchProcessWorker<NodeRef>
     {
         private Set<QName> aspects = new HashSet<>(1);
+        private final boolean partitioned;
 
-        AclWorker()
+        /**
+         * @param partitioned   <tt>true</tt> to update the subtrees of the pending nodes by primary parent, sharing
+         *                      <tt>maxItemBatchSize</tt> parents between the nodes of each transaction
+         */
+        AclWorker(boolean partitioned)
         {
             aspects.add(ContentModel.ASPECT_PENDING_FIX_ACL);
+            this.partitioned = partitioned;
         }
 
         public String getIdentifier(NodeRef nodeRef)
@@ -271,8 +355,21 @@ public class FixedAclUpdater extends TransactionListenerAdapter implements Appli
                             ContentModel.PROP_SHARED_ACL_TO_REPLACE);
 
                     // set inheritance using retrieved prop
-                    accessControlListDAO.setInheritanceForChildren(nodeRef, inheritFrom, sharedAclToReplace,
-                            true);
+                    if (partitioned)
+                    {
+                        Integer parentsUpdated = AlfrescoTransactionSupport.getResource(KEY_PARENTS_UPDATED);
+                        int updated = (parentsUpdated == null) ? 0 : parentsUpdated;
+                        // every pending node updates its own children, however many parents the transaction has updated
+                        int maxParents = Math.max(1, maxItemBatchSize - updated);
+                        updated += accessControlListDAO.setInheritanceForDescendants(nodeId, inheritFrom, sharedAclToReplace,
+                                maxParents);
+                        AlfrescoTransactionSupport.bindResource(KEY_PARENTS_UPDATED, updated);
+                    }
+                    else
+                    {
+                        accessControlListDAO.setInheritanceForChildren(nodeRef, inheritFrom, sharedAclToReplace,
+                                true);
+                    }
 
                     nodeDAO.removeNodeAspects(nodeId, aspects);
                     nodeDAO.removeNodeProperties(nodeId, PENDING_FIX_ACL_ASPECT_PROPS);
@@ -338,23 +435,6 @@ public class FixedAclUpdater extends TransactionListenerAdapter implements Appli
         }
     }
 
-    private class CountNodesWithAspectCallback implements NodeRefQueryCallback
-    {
-        private int count = 0;
-
-        @Override
-        public boolean handle(Pair<Long, NodeRef> nodePair)
-        {
-            count++;
-            return true;
-        }
-
-        public int getCount()
-        {
-            return count;
-        }
-    }
-
     private static class FixedAclUpdaterJobLockRefreshCallback implements JobLockRefreshCallback
     {
         public AtomicBoolean isActive = new AtomicBoolean(true);
@@ -380,26 +460,67 @@ public class FixedAclUpdater extends TransactionListenerAdapter implements Appli
         return props;
     }
 
+    /**
+     * Process the pending nodes, making passes until no pending nodes are left when streaming
+     * 
+     * @return      Returns the number of pending nodes processed
+     */
     public int execute()
+    {
+        return execute(streaming, 1);
+    }
+
+    /**
+     * @param multiplePasses    <tt>true</tt> to keep making passes while the nodes processed mark further nodes
+     *                          as pending, or <tt>false</tt> to make a single pass
+     * @param lockRetries       the number of times to try to get the lock
+     */
+    private int execute(boolean multiplePasses, int lockRetries)
     {
         String lockToken = null;
+        boolean started = false;
         FixedAclUpdaterJobLockRefreshCallback jobLockRefreshCallback = new FixedAclUpdaterJobLockRefreshCallback();
 
         try
         {
-            lockToken = jobLockService.getLock(lockQName, lockTimeToLive, 0, 1);
+            long retryWait = (lockRetries > 1) ? lockRefreshTime : 0;
+            lockToken = jobLockService.getLock(lockQName, lockTimeToLive, retryWait, lockRetries);
             jobLockService.refreshLock(lockToken, lockQName, lockRefreshTime, jobLockRefreshCallback);
 
-            AclWorkProvider provider = new AclWorkProvider();
-            AclWorker worker = new AclWorker();
-            BatchProcessor<NodeRef> bp = new BatchProcessor<>(
-                    "FixedAclUpdater",
-                    transactionService.getRetryingTransactionHelper(),
-                    provider,
-                    numThreads, maxItemBatchSize,
-                    applicationContext,
-                    log, 100);
-            int count = bp.process(worker, true);
+            started = true;
+            passes = 0;
+            processedInEarlierPasses = 0;
+            runEndTime = -1;
+            runStartTime = System.currentTimeMillis();
+            running = true;
+
+            // In streaming mode nodes marked as pending during a pass are picked up by the next pass;
+            // stop once a pass finds nothing it can process
+            int count = 0;
+            int processed;
+            do
+            {
+                AclWorkProvider provider = new AclWorkProvider();
+                AclWorker worker = new AclWorker(streaming);
+                BatchProcessor<NodeRef> bp = new BatchProcessor<>(
+                        "FixedAclUpdater",
+                        transactionService.getRetryingTransactionHelper(),
+                        provider,
+                        numThreads, maxItemBatchSize,
+                        applicationContext,
+                        log, 100);
+                currentWork = provider;
+                currentPass = bp;
+                bp.process(worker, true);
+
+                processed = bp.getSuccessfullyProcessedEntries();
+                count += processed;
+                currentPass = null;
+                currentWork = null;
+                processedInEarlierPasses += processed;
+                passes++;
+            }
+            while (multiplePasses && processed > 0 && jobLockRefreshCallback.isActive());
             return count;
         }
         catch (LockAcquisitionException e)
@@ -409,6 +530,20 @@ public class FixedAclUpdater extends TransactionListenerAdapter implements Appli
         }
         finally
         {
+            if (started)
+            {
+                currentPass = null;
+                currentWork = null;
+                runEndTime = System.currentTimeMillis();
+                running = false;
+                if (log.isDebugEnabled())
+                {
+                    log.debug("Fixed ACL updater run complete: \n" +
+                            "   passes: " + passes + "\n" +
+                            "   nodes:  " + processedInEarlierPasses + "\n" +
+                            "   time:   " + (runEndTime - runStartTime) + "ms");
+                }
+            }
             jobLockRefreshCallback.isActive.set(false);
             if(lockToken != null)
             {
@@ -417,9 +552,111 @@ public class FixedAclUpdater extends TransactionListenerAdapter implements Appli
         }
     }
 
+    /**
+     * In streaming mode, hand a run over to the streaming executor.  Otherwise make a single pass over the
+     * pending nodes, leaving any nodes that it marks as pending to the scheduled job rather than holding up
+     * the thread that committed the change.
+     */
     @Override
     public void afterCommit()
     {
-        execute();
+        if (!streaming || streamingExecutor == null)
+        {
+            execute(false, 1);
+            return;
+        }
+        if (!streamingRunQueued.compareAndSet(false, true))
+        {
+            // The queued run will pick up the nodes
+            return;
+        }
+        try
+        {
+            streamingExecutor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    streamingRunQueued.set(false);
+                    execute(true, STREAMING_LOCK_RETRIES);
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            streamingRunQueued.set(false);
+            log.warn("Fixed ACL updater run rejected, the pending nodes are left to the scheduled job", e);
+        }
+    }
+
+    @Override
+    public boolean isRunning()
+    {
+        return running;
+    }
+
+    @Override
+    public boolean isStreaming()
+    {
+        return streaming;
+    }
+
+    @Override
+    public int getPasses()
+    {
+        return passes;
+    }
+
+    @Override
+    public long getNodesProcessed()
+    {
+        BatchProcessor<NodeRef> bp = currentPass;
+        return processedInEarlierPasses + (bp == null ? 0 : bp.getSuccessfullyProcessedEntries());
+    }
+
+    /**
+     * @return      Returns the number of pending nodes found so far by the current pass that have not been
+     *              processed yet
+     */
+    @Override
+    public long getNodesPending()
+    {
+        BatchProcessor<NodeRef> bp = currentPass;
+        AclWorkProvider provider = currentWork;
+        if (bp == null || provider == null)
+        {
+            return 0;
+        }
+        return Math.max(0, provider.getTotalEstimatedWorkSize() - bp.getSuccessfullyProcessedEntries() - bp.getTotalErrors());
+    }
+
+    @Override
+    public double getNodesPerSecond()
+    {
+        long runTime = getRunTimeMs();
+        return runTime > 0 ? getNodesProcessed() * 1000.0 / runTime : 0;
+    }
+
+    @Override
+    public long getEstimatedSecondsRemaining()
+    {
+        long pending = getNodesPending();
+        if (pending == 0)
+        {
+            return 0;
+        }
+        double nodesPerSecond = getNodesPerSecond();
+        return nodesPerSecond > 0 ? (long) Math.ceil(pending / nodesPerSecond) : -1;
+    }
+
+    @Override
+    public long getRunTimeMs()
+    {
+        long start = runStartTime;
+        if (start < 0)
+        {
+            return -1;
+        }
+        return running ? System.currentTimeMillis() - start : runEndTime - start;
     }
 }
@@ -0,0 +1,77 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.permissions;
+
+/**
+ * Management interface for the {@link FixedAclUpdater}, reporting the progress of the current run, or of
+ * the last run if the updater is idle.
+ *
+ * @since 7.110
+ */
+public interface FixedAclUpdaterMBean
+{
+    /**
+     * @return <tt>true</tt> if this server is processing nodes with pending ACL updates
+     */
+    boolean isRunning();
+
+    /**
+     * @return <tt>true</tt> if each run keeps making passes until no nodes with pending ACL updates are left
+     */
+    boolean isStreaming();
+
+    /**
+     * @return the number of passes over the nodes with pending ACL updates made by the run
+     */
+    int getPasses();
+
+    /**
+     * @return the number of nodes with pending ACL updates processed by the run
+     */
+    long getNodesProcessed();
+
+    /**
+     * @return the estimated number of nodes with pending ACL updates still to be processed by the current
+     *         pass, not counting nodes that have been marked since the pass started
+     */
+    long getNodesPending();
+
+    /**
+     * @return the average number of nodes processed per second by the run
+     */
+    double getNodesPerSecond();
+
+    /**
+     * @return the estimated time in seconds until the current pass is complete, or <tt>-1</tt> if unknown
+     */
+    long getEstimatedSecondsRemaining();
+
+    /**
+     * @return the time in milliseconds spent on the current run, or the total time of the last run, or
+     *         <tt>-1</tt> if no run has been started
+     */
+    long getRunTimeMs();
+}
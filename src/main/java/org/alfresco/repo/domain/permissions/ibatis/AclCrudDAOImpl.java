@@ -56,6 +56,7 @@ public class AclCrudDAOImpl extends AbstractAclCrudDAOImpl
 {
     private static final String INSERT_ACL = "alfresco.permissions.insert.insert_Acl";
     private static final String SELECT_ACL_BY_ID = "alfresco.permissions.select_AclById";
+    private static final String SELECT_ACLS_BY_IDS = "alfresco.permissions.select_AclsByIds";
     private static final String SELECT_ACLS_THAT_INHERIT_FROM_ACL = "alfresco.permissions.select_AclsThatInheritFromAcl";
     private static final String SELECT_LATEST_ACL_BY_GUID = "alfresco.permissions.select_LatestAclByGuid";
     private static final String SELECT_ADM_NODES_BY_ACL = "alfresco.permissions.select_ADMNodesByAclId";
@@ -79,6 +80,7 @@ public class AclCrudDAOImpl extends AbstractAclCrudDAOImpl
     private static final String SELECT_ACE_BY_ID = "alfresco.permissions.select_AceById";
     private static final String SELECT_ACES_BY_AUTHORITY = "alfresco.permissions.select_AcesByAuthorityId";
     private static final String SELECT_ACES_AND_AUTHORIES_BY_ACL = "alfresco.permissions.select_AcesAndAuthoritiesByAclId";
+    private static final String SELECT_ACES_AND_AUTHORIES_BY_ACLS = "alfresco.permissions.select_AcesAndAuthoritiesByAclIds";
     private static final String SELECT_ACE_WITH_NO_CONTEXT = "alfresco.permissions.select_AceWithNoContext";
     private static final String DELETE_ACES_LIST = "alfresco.permissions.delete_AcesList";
     private static final String UPDATE_ACE = "alfresco.permissions.update_Ace";
@@ -131,6 +133,12 @@ public class AclCrudDAOImpl extends AbstractAclCrudDAOImpl
         return template.selectOne(SELECT_ACL_BY_ID, params);
     }
     
+    @Override
+    protected List<AclEntity> getAclEntities(List<Long> aclEntityIds)
+    {
+        return template.selectList(SELECT_ACLS_BY_IDS, aclEntityIds);
+    }
+    
     @SuppressWarnings("unchecked")
     @Override
     protected List<Long> getAclEntitiesThatInheritFromAcl(long aclEntityId)
@@ -357,6 +365,12 @@ public class AclCrudDAOImpl extends AbstractAclCrudDAOImpl
         return template.selectList(SELECT_ACES_AND_AUTHORIES_BY_ACL, params);
     }
     
+    @Override
+    protected List<Map<String, Object>> getAceAndAuthorityEntitiesByAcls(List<Long> aclEntityIds)
+    {
+        return template.selectList(SELECT_ACES_AND_AUTHORIES_BY_ACLS, aclEntityIds);
+    }
+    
     @Override
     protected int deleteAceEntities(List<Long> aceEntityIds)
     {
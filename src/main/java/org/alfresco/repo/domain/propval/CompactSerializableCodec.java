@@ -0,0 +1,613 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.propval;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.ibatis.SerializableCodec;
+import org.alfresco.ibatis.SerializableTypeHandler;
+import org.alfresco.repo.domain.qname.QNameDAO;
+import org.alfresco.service.cmr.repository.MLText;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.Pair;
+import org.springframework.dao.DataIntegrityViolationException;
+
+/**
+ * Compact encoding of the values held in <b>alf_prop_serializable_value</b> and in the
+ * serializable node properties, as an alternative to Java serialization.
+ * <p>
+ * Each value is written as a one-byte type tag followed by its data.  Integral values are
+ * written as variable-length integers and strings as UTF-8, with any lone surrogate written in
+ * the three bytes that modified UTF-8 uses for it.  The types commonly found in
+ * property values (strings, numbers, dates, booleans, {@link QName}s, {@link NodeRef}s,
+ * {@link Locale}s, {@link MLText} and the <tt>java.util</tt> lists, sets and maps of these)
+ * are encoded directly; any other value is written using Java serialization within the
+ * encoding.  When a {@link QNameDAO} is given, a <tt>QName</tt> that is already persisted
+ * is written as its ID.
+ * <p>
+ * An encoding starts with a header byte that cannot start a Java serialization stream, so the
+ * {@link SerializableTypeHandler} can read values written by either.  When the codec is
+ * {@link #init() initialised} it is given to the <tt>SerializableTypeHandler</tt>, which then
+ * reads values written by the codec and, if <tt>writeEnabled</tt>, writes new values with it.
+ *
+ * @since 7.110
+ */
+public class CompactSerializableCodec implements SerializableCodec
+{
+    /** The first byte of an encoding, which may not be <tt>0xAC</tt> as used by Java serialization */
+    public static final int MAGIC = 0xC5;
+    public static final int VERSION = 1;
+
+    private static final int TAG_NULL = 0;
+    private static final int TAG_STRING = 1;
+    private static final int TAG_INTEGER = 2;
+    private static final int TAG_LONG = 3;
+    private static final int TAG_TRUE = 4;
+    private static final int TAG_FALSE = 5;
+    private static final int TAG_FLOAT = 6;
+    private static final int TAG_DOUBLE = 7;
+    private static final int TAG_DATE = 8;
+    private static final int TAG_QNAME_ID = 9;
+    private static final int TAG_QNAME = 10;
+    private static final int TAG_NODEREF = 11;
+    private static final int TAG_LOCALE = 12;
+    private static final int TAG_MLTEXT = 13;
+    private static final int TAG_ARRAY_LIST = 14;
+    private static final int TAG_HASH_MAP = 15;
+    private static final int TAG_HASH_SET = 16;
+    private static final int TAG_JAVA = 17;
+
+    /** The initial capacity of a collection is limited so that a bad count cannot use up the heap */
+    private static final int MAX_INITIAL_CAPACITY = 1024;
+
+    private QNameDAO qnameDAO;
+    private boolean writeEnabled;
+
+    public CompactSerializableCodec()
+    {
+    }
+
+    /**
+     * @param qnameDAO          used to write persisted <tt>QName</tt>s as IDs; if not set,
+     *                          <tt>QName</tt>s are written in full and IDs cannot be read
+     */
+    public void setQnameDAO(QNameDAO qnameDAO)
+    {
+        this.qnameDAO = qnameDAO;
+    }
+
+    /**
+     * @param writeEnabled      <tt>true</tt> to write serializable column values with this codec;
+     *                          values already written with it are read regardless
+     */
+    public void setWriteEnabled(boolean writeEnabled)
+    {
+        this.writeEnabled = writeEnabled;
+    }
+
+    /**
+     * Give the codec to the {@link SerializableTypeHandler}
+     */
+    public void init()
+    {
+        SerializableTypeHandler.setSerializableCodec(this, writeEnabled);
+    }
+
+    /**
+     * Copy a value by encoding and decoding it, so that the copy shares no mutable state with
+     * the original
+     *
+     * @param value             the value to copy (may be <tt>null</tt>)
+     * @return                  a deep copy of the value
+     */
+    public Serializable copy(Serializable value)
+    {
+        try
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+            encode(value, out);
+            return decode(new ByteArrayInputStream(out.toByteArray()));
+        }
+        catch (IOException e)
+        {
+            throw new AlfrescoRuntimeException("Failed to copy serializable value: " + value, e);
+        }
+    }
+
+    @Override
+    public void encode(Serializable value, OutputStream out) throws IOException
+    {
+        DataOutputStream dos = new DataOutputStream(out);
+        dos.write(MAGIC);
+        dos.write(VERSION);
+        writeValue(dos, value);
+        dos.flush();
+    }
+
+    @Override
+    public Serializable decode(InputStream in) throws IOException
+    {
+        DataInputStream dis = new DataInputStream(in);
+        int magic = dis.read();
+        if (magic != MAGIC)
+        {
+            throw new StreamCorruptedException("Not a compact serializable value; header was " + magic);
+        }
+        int version = dis.read();
+        if (version != VERSION)
+        {
+            throw new StreamCorruptedException("Unsupported compact serializable version: " + version);
+        }
+        return readValue(dis);
+    }
+
+    private void writeValue(DataOutputStream out, Object value) throws IOException
+    {
+        if (value == null)
+        {
+            out.write(TAG_NULL);
+            return;
+        }
+        // Only the exact classes are encoded directly, so that a value is read back as the same type
+        Class<?> clazz = value.getClass();
+        if (clazz == String.class)
+        {
+            out.write(TAG_STRING);
+            writeString(out, (String) value);
+        }
+        else if (clazz == Integer.class)
+        {
+            out.write(TAG_INTEGER);
+            writeSignedVarLong(out, (Integer) value);
+        }
+        else if (clazz == Long.class)
+        {
+            out.write(TAG_LONG);
+            writeSignedVarLong(out, (Long) value);
+        }
+        else if (clazz == Boolean.class)
+        {
+            out.write(((Boolean) value).booleanValue() ? TAG_TRUE : TAG_FALSE);
+        }
+        else if (clazz == Float.class)
+        {
+            out.write(TAG_FLOAT);
+            out.writeFloat((Float) value);
+        }
+        else if (clazz == Double.class)
+        {
+            out.write(TAG_DOUBLE);
+            out.writeDouble((Double) value);
+        }
+        else if (clazz == Date.class)
+        {
+            out.write(TAG_DATE);
+            writeSignedVarLong(out, ((Date) value).getTime());
+        }
+        else if (clazz == QName.class)
+        {
+            writeQName(out, (QName) value);
+        }
+        else if (clazz == NodeRef.class)
+        {
+            NodeRef nodeRef = (NodeRef) value;
+            out.write(TAG_NODEREF);
+            writeString(out, nodeRef.getStoreRef().getProtocol());
+            writeString(out, nodeRef.getStoreRef().getIdentifier());
+            writeString(out, nodeRef.getId());
+        }
+        else if (clazz == Locale.class && isSimpleLocale((Locale) value))
+        {
+            out.write(TAG_LOCALE);
+            writeLocale(out, (Locale) value);
+        }
+        else if (clazz == MLText.class && isSimpleLocales(((MLText) value).keySet()))
+        {
+            MLText mlText = (MLText) value;
+            out.write(TAG_MLTEXT);
+            writeUnsignedVarLong(out, mlText.size());
+            for (Map.Entry<Locale, String> entry : mlText.entrySet())
+            {
+                writeLocale(out, entry.getKey());
+                writeValue(out, entry.getValue());
+            }
+        }
+        else if (clazz == ArrayList.class)
+        {
+            out.write(TAG_ARRAY_LIST);
+            writeValues(out, (Collection<?>) value);
+        }
+        else if (clazz == HashSet.class)
+        {
+            out.write(TAG_HASH_SET);
+            writeValues(out, (Collection<?>) value);
+        }
+        else if (clazz == HashMap.class)
+        {
+            Map<?, ?> map = (Map<?, ?>) value;
+            out.write(TAG_HASH_MAP);
+            writeUnsignedVarLong(out, map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet())
+            {
+                writeValue(out, entry.getKey());
+                writeValue(out, entry.getValue());
+            }
+        }
+        else if (value instanceof Serializable)
+        {
+            out.write(TAG_JAVA);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            ObjectOutputStream oos = new ObjectOutputStream(bytes);
+            oos.writeObject(value);
+            oos.close();
+            writeUnsignedVarLong(out, bytes.size());
+            bytes.writeTo(out);
+        }
+        else
+        {
+            throw new NotSerializableException(clazz.getName());
+        }
+    }
+
+    private void writeValues(DataOutputStream out, Collection<?> values) throws IOException
+    {
+        writeUnsignedVarLong(out, values.size());
+        for (Object value : values)
+        {
+            writeValue(out, value);
+        }
+    }
+
+    private void writeQName(DataOutputStream out, QName qname) throws IOException
+    {
+        Pair<Long, QName> qnamePair = (qnameDAO == null) ? null : qnameDAO.getQName(qname);
+        if (qnamePair != null)
+        {
+            out.write(TAG_QNAME_ID);
+            writeUnsignedVarLong(out, qnamePair.getFirst());
+        }
+        else
+        {
+            // Not persisted, and the codec must not create it
+            out.write(TAG_QNAME);
+            writeString(out, qname.getNamespaceURI());
+            writeString(out, qname.getLocalName());
+        }
+    }
+
+    /**
+     * @return          <tt>true</tt> if the locale is fully described by its language, country and variant
+     */
+    private static boolean isSimpleLocale(Locale locale)
+    {
+        return locale.getScript().isEmpty() && !locale.hasExtensions();
+    }
+
+    private static boolean isSimpleLocales(Set<Locale> locales)
+    {
+        for (Locale locale : locales)
+        {
+            if (locale == null || !isSimpleLocale(locale))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void writeLocale(DataOutputStream out, Locale locale) throws IOException
+    {
+        writeString(out, locale.getLanguage());
+        writeString(out, locale.getCountry());
+        writeString(out, locale.getVariant());
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException
+    {
+        byte[] bytes = encodeString(value);
+        writeUnsignedVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Encode a string as UTF-8.  UTF-8 cannot represent a surrogate that is not part of a pair, so
+     * each lone surrogate is written as the three bytes that modified UTF-8 uses for it.  Those bytes
+     * never occur in UTF-8, so strings without lone surrogates are encoded exactly as before.
+     */
+    private static byte[] encodeString(String value)
+    {
+        int length = value.length();
+        ByteArrayOutputStream bytes = null;
+        int start = 0;
+        for (int i = 0; i < length; i++)
+        {
+            char c = value.charAt(i);
+            if (!Character.isSurrogate(c))
+            {
+                continue;
+            }
+            if (Character.isHighSurrogate(c) && (i + 1 < length) && Character.isLowSurrogate(value.charAt(i + 1)))
+            {
+                i++;
+                continue;
+            }
+            if (bytes == null)
+            {
+                bytes = new ByteArrayOutputStream(length * 3);
+            }
+            byte[] preceding = value.substring(start, i).getBytes(StandardCharsets.UTF_8);
+            bytes.write(preceding, 0, preceding.length);
+            bytes.write(0xE0 | (c >> 12));
+            bytes.write(0x80 | ((c >> 6) & 0x3F));
+            bytes.write(0x80 | (c & 0x3F));
+            start = i + 1;
+        }
+        if (bytes == null)
+        {
+            return value.getBytes(StandardCharsets.UTF_8);
+        }
+        byte[] remaining = value.substring(start).getBytes(StandardCharsets.UTF_8);
+        bytes.write(remaining, 0, remaining.length);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Write a zig-zag encoded variable-length integer, so that small negative values are short too
+     */
+    private static void writeSignedVarLong(DataOutputStream out, long value) throws IOException
+    {
+        writeUnsignedVarLong(out, (value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * Write a variable-length integer, seven bits per byte with the low bits first
+     */
+    private static void writeUnsignedVarLong(DataOutputStream out, long value) throws IOException
+    {
+        while ((value & ~0x7FL) != 0L)
+        {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private Serializable readValue(DataInputStream in) throws IOException
+    {
+        int tag = in.read();
+        switch (tag)
+        {
+            case TAG_NULL:
+                return null;
+            case TAG_STRING:
+                return readString(in);
+            case TAG_INTEGER:
+                return Integer.valueOf((int) readSignedVarLong(in));
+            case TAG_LONG:
+                return Long.valueOf(readSignedVarLong(in));
+            case TAG_TRUE:
+                return Boolean.TRUE;
+            case TAG_FALSE:
+                return Boolean.FALSE;
+            case TAG_FLOAT:
+                return Float.valueOf(in.readFloat());
+            case TAG_DOUBLE:
+                return Double.valueOf(in.readDouble());
+            case TAG_DATE:
+                return new Date(readSignedVarLong(in));
+            case TAG_QNAME_ID:
+                return readQNameId(in);
+            case TAG_QNAME:
+                return QName.createQName(readString(in), readString(in));
+            case TAG_NODEREF:
+                return new NodeRef(readString(in), readString(in), readString(in));
+            case TAG_LOCALE:
+                return readLocale(in);
+            case TAG_MLTEXT:
+            {
+                int count = readCount(in);
+                MLText mlText = new MLText();
+                for (int i = 0; i < count; i++)
+                {
+                    Locale locale = readLocale(in);
+                    mlText.put(locale, (String) readValue(in));
+                }
+                return mlText;
+            }
+            case TAG_ARRAY_LIST:
+            {
+                int count = readCount(in);
+                List<Serializable> list = new ArrayList<Serializable>(Math.min(count, MAX_INITIAL_CAPACITY));
+                for (int i = 0; i < count; i++)
+                {
+                    list.add(readValue(in));
+                }
+                return (Serializable) list;
+            }
+            case TAG_HASH_SET:
+            {
+                int count = readCount(in);
+                Set<Serializable> set = new HashSet<Serializable>(Math.min(count, MAX_INITIAL_CAPACITY) * 4 / 3 + 1);
+                for (int i = 0; i < count; i++)
+                {
+                    set.add(readValue(in));
+                }
+                return (Serializable) set;
+            }
+            case TAG_HASH_MAP:
+            {
+                int count = readCount(in);
+                Map<Serializable, Serializable> map =
+                        new HashMap<Serializable, Serializable>(Math.min(count, MAX_INITIAL_CAPACITY) * 4 / 3 + 1);
+                for (int i = 0; i < count; i++)
+                {
+                    Serializable key = readValue(in);
+                    map.put(key, readValue(in));
+                }
+                return (Serializable) map;
+            }
+            case TAG_JAVA:
+            {
+                byte[] bytes = new byte[readCount(in)];
+                in.readFully(bytes);
+                ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+                try
+                {
+                    return (Serializable) ois.readObject();
+                }
+                catch (ClassNotFoundException e)
+                {
+                    throw new IOException("Failed to read serialized value", e);
+                }
+            }
+            case -1:
+                throw new EOFException();
+            default:
+                throw new StreamCorruptedException("Unknown compact serializable tag: " + tag);
+        }
+    }
+
+    private QName readQNameId(DataInputStream in) throws IOException
+    {
+        long qnameId = readUnsignedVarLong(in);
+        if (qnameDAO == null)
+        {
+            throw new IOException("A QName ID was read but there is no QNameDAO to resolve it: " + qnameId);
+        }
+        Pair<Long, QName> qnamePair;
+        try
+        {
+            qnamePair = qnameDAO.getQName(qnameId);
+        }
+        catch (DataIntegrityViolationException e)
+        {
+            qnamePair = null;
+        }
+        if (qnamePair == null)
+        {
+            throw new IOException("No QName exists for the ID that was read: " + qnameId);
+        }
+        return qnamePair.getSecond();
+    }
+
+    private static Locale readLocale(DataInputStream in) throws IOException
+    {
+        return new Locale(readString(in), readString(in), readString(in));
+    }
+
+    private static String readString(DataInputStream in) throws IOException
+    {
+        byte[] bytes = new byte[readCount(in)];
+        in.readFully(bytes);
+        return decodeString(bytes);
+    }
+
+    /**
+     * Decode a string written by {@link #encodeString(String)}, including any lone surrogates
+     */
+    private static String decodeString(byte[] bytes)
+    {
+        StringBuilder sb = null;
+        int start = 0;
+        for (int i = 0; i + 2 < bytes.length; i++)
+        {
+            // A lead byte of 0xED followed by 0xA0-0xBF is a surrogate, which UTF-8 never contains
+            if ((bytes[i] & 0xFF) != 0xED || (bytes[i + 1] & 0xE0) != 0xA0)
+            {
+                continue;
+            }
+            if (sb == null)
+            {
+                sb = new StringBuilder(bytes.length);
+            }
+            sb.append(new String(bytes, start, i - start, StandardCharsets.UTF_8));
+            sb.append((char) (0xD000 | ((bytes[i + 1] & 0x3F) << 6) | (bytes[i + 2] & 0x3F)));
+            i += 2;
+            start = i + 1;
+        }
+        if (sb == null)
+        {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        sb.append(new String(bytes, start, bytes.length - start, StandardCharsets.UTF_8));
+        return sb.toString();
+    }
+
+    private static int readCount(DataInputStream in) throws IOException
+    {
+        long count = readUnsignedVarLong(in);
+        if (count > Integer.MAX_VALUE)
+        {
+            throw new StreamCorruptedException("Invalid length: " + count);
+        }
+        return (int) count;
+    }
+
+    private static long readSignedVarLong(DataInputStream in) throws IOException
+    {
+        long value = readUnsignedVarLong(in);
+        return (value >>> 1) ^ -(value & 1L);
+    }
+
+    private static long readUnsignedVarLong(DataInputStream in) throws IOException
+    {
+        long value = 0L;
+        for (int shift = 0; shift < 64; shift += 7)
+        {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+            {
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("Variable-length integer is too long");
+    }
+}
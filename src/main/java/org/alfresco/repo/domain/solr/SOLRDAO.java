@@ -63,6 +63,19 @@ public interface SOLRDAO
      */
     public List<Acl> getAcls(List<Long> aclChangeSetIds, Long minAclId, int maxResults);
 
+    /**
+     * Get the ACLs (no rollup count) that are used by nodes, for a range of ACL IDs.  Unlike
+     * {@link #getAcls(List, Long, int)}, the shared ACLs that these inherit from are not added.
+     * 
+     * @param minAclId                  the minimum ACL ID - (inclusive and optional)
+     * @param maxAclId                  the maximum ACL ID - (exclusive and optional)
+     * @param maxResults                the maximum number of results (must be greater than zero and less than MAX)
+     * @return                          list of ACLs in ACL ID order
+     * 
+     * @since 7.110
+     */
+    public List<Acl> getAclsByIdRange(Long minAclId, Long maxAclId, int maxResults);
+
     /**
      * Get the transactions from either minTxnId or fromCommitTime, optionally limited to maxResults
      * 
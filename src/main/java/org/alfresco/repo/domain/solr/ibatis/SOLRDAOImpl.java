@@ -172,6 +172,29 @@ public class SOLRDAOImpl implements SOLRDAO
         return answer;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Acl> getAclsByIdRange(Long minAclId, Long maxAclId, int maxResults)
+    {
+        if (maxResults <= 0 || maxResults == Integer.MAX_VALUE)
+        {
+            throw new IllegalArgumentException("Maximum results must be a reasonable number.");
+        }
+
+        // We simulate an ID for the sys:deleted type
+        Pair<Long, QName> deletedTypeQNamePair = qnameDAO.getQName(ContentModel.TYPE_DELETED);
+        Long deletedTypeQNameId = deletedTypeQNamePair == null ? -1L : deletedTypeQNamePair.getFirst();
+
+        SOLRTrackingParameters params = new SOLRTrackingParameters(deletedTypeQNameId);
+        params.setFromIdInclusive(minAclId);
+        params.setToIdExclusive(maxAclId);
+
+        return template.selectList(SELECT_ACLS_BY_CHANGESET_IDS, params, new RowBounds(0, maxResults));
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -0,0 +1,553 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.security.authority;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.domain.node.NodeDAO;
+import org.alfresco.repo.domain.qname.QNameDAO;
+import org.alfresco.repo.tenant.TenantService;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.Pair;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.dao.ConcurrencyFailureException;
+
+/**
+ * Maintains the authority closure by counting paths.  Each row holds the number of distinct member paths from
+ * the ancestor down to the descendant, so that removing one association only removes the rows whose paths all
+ * went through it.  Adding the association from P to C adds, for every ancestor A of P (and P itself) and every
+ * descendant D of C (and C itself), the product of the path counts from A to P and from C to D to the count from
+ * A to D.  Removing it subtracts the same amounts, and deletes the rows that are left with no paths.  The
+ * amounts are added and subtracted within the database rather than written back as totals, so that concurrent
+ * membership changes do not lose each other's counts.
+ * <p>
+ * The amounts are worked out from the rows that a change reads, so two changes that each alter the rows read by the
+ * other must not overlap: adding P to A while removing C from P would otherwise leave A containing C.  Each change
+ * {@link #lockClosure(boolean) locks the closure} before it reads any rows.  Changes to the memberships of a person
+ * only alter the person's own rows, which are only read by changes to groups, so these share the lock; any other
+ * change, and verification, takes it exclusively.
+ * <p>
+ * An association that would close a cycle is left out of the closure, and a warning is logged.  When the closure is
+ * {@link #verifyMembers(List) verified}, the member associations are followed up from each authority and any that
+ * lead back to an authority already on the way are left out.
+ *
+ * @since 7.110
+ */
+public abstract class AbstractAuthorityClosureDAO implements AuthorityClosureDAO
+{
+    private static Log logger = LogFactory.getLog(AbstractAuthorityClosureDAO.class);
+
+    /** The most IDs or rows passed to a single statement */
+    private static final int BATCH_SIZE = 500;
+
+    /** Orders rows by ancestor and then descendant, so that concurrent changes take their row locks in the same order */
+    private static final Comparator<AuthorityClosureEntity> ROW_ORDER = new Comparator<AuthorityClosureEntity>()
+    {
+        @Override
+        public int compare(AuthorityClosureEntity row1, AuthorityClosureEntity row2)
+        {
+            int compare = row1.getAncestorId().compareTo(row2.getAncestorId());
+            return (compare != 0) ? compare : row1.getDescendantId().compareTo(row2.getDescendantId());
+        }
+    };
+
+    private NodeDAO nodeDAO;
+    private QNameDAO qnameDAO;
+    private TenantService tenantService;
+
+    /**
+     * @param nodeDAO
+     *            the nodeDAO to set
+     */
+    public void setNodeDAO(NodeDAO nodeDAO)
+    {
+        this.nodeDAO = nodeDAO;
+    }
+
+    /**
+     * @param qnameDAO
+     *            the qnameDAO to set
+     */
+    public void setQnameDAO(QNameDAO qnameDAO)
+    {
+        this.qnameDAO = qnameDAO;
+    }
+
+    /**
+     * @param tenantService
+     *            the tenantService to set
+     */
+    public void setTenantService(TenantService tenantService)
+    {
+        this.tenantService = tenantService;
+    }
+
+    @Override
+    public void addMember(NodeRef parentRef, NodeRef childRef)
+    {
+        Long parentId = getNodeId(parentRef);
+        Long childId = getNodeId(childRef);
+        if (parentId == null || childId == null)
+        {
+            return;
+        }
+        lockClosureFor(childId);
+        Map<Long, Long> ancestors = getAncestors(parentId);
+        if (ancestors.containsKey(childId))
+        {
+            logger.warn("The member association closes a cycle and is left out of the authority closure: " + parentRef + " -> " + childRef);
+            return;
+        }
+        List<AuthorityClosureEntity> paths = getPathsThrough(ancestors, getDescendants(childId));
+        addPathsInBatches(paths);
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Added member to authority closure: " + parentRef + " -> " + childRef + " (" + paths.size() + " rows)");
+        }
+    }
+
+    @Override
+    public boolean removeMember(NodeRef parentRef, NodeRef childRef)
+    {
+        Long parentId = getNodeId(parentRef);
+        Long childId = getNodeId(childRef);
+        if (parentId == null || childId == null)
+        {
+            return true;
+        }
+        lockClosureFor(childId);
+        Map<Long, Long> ancestors = getAncestors(parentId);
+        if (ancestors.containsKey(childId))
+        {
+            // The association was left out of the closure when it was added, but rows made by verifying the
+            // closure may still count paths through it
+            logger.warn("The member association is in a cycle; the authority closure is corrected when it is next verified: " + parentRef + " -> " + childRef);
+            return false;
+        }
+        List<AuthorityClosureEntity> paths = getPathsThrough(ancestors, getDescendants(childId));
+        removePathsInBatches(paths);
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Removed member from authority closure: " + parentRef + " -> " + childRef + " (" + paths.size() + " rows)");
+        }
+        return true;
+    }
+
+    @Override
+    public List<String> getContainingAuthorityNames(NodeRef authorityRef)
+    {
+        Long nodeId = getNodeId(authorityRef);
+        Pair<Long, QName> authorityNameQNamePair = qnameDAO.getQName(ContentModel.PROP_AUTHORITY_NAME);
+        if (nodeId == null || authorityNameQNamePair == null)
+        {
+            return Collections.<String> emptyList();
+        }
+        return selectAncestorNames(nodeId, authorityNameQNamePair.getFirst());
+    }
+
+    @Override
+    public List<String> getContainedUserNames(NodeRef authorityRef)
+    {
+        Long nodeId = getNodeId(authorityRef);
+        Pair<Long, QName> userNameQNamePair = qnameDAO.getQName(ContentModel.PROP_USERNAME);
+        if (nodeId == null || userNameQNamePair == null)
+        {
+            return Collections.<String> emptyList();
+        }
+        return selectDescendantNames(nodeId, userNameQNamePair.getFirst());
+    }
+
+    @Override
+    public List<Long> getMemberIds(Long afterNodeId, int maxResults)
+    {
+        Pair<Long, QName> memberQNamePair = qnameDAO.getQName(ContentModel.ASSOC_MEMBER);
+        // Without the association type there are no members, but rows may still be left in the closure
+        Long memberQNameId = (memberQNamePair == null) ? -1L : memberQNamePair.getFirst();
+        return selectMemberIds(memberQNameId, (afterNodeId == null) ? -1L : afterNodeId, maxResults);
+    }
+
+    @Override
+    public int verifyMembers(List<Long> nodeIds)
+    {
+        Pair<Long, QName> memberQNamePair = qnameDAO.getQName(ContentModel.ASSOC_MEMBER);
+        Pair<Long, QName> containerQNamePair = qnameDAO.getQName(ContentModel.TYPE_AUTHORITY_CONTAINER);
+        lockClosure(true);
+        Map<Long, Map<Long, Long>> rows = getAncestorRows(nodeIds);
+        Map<Long, List<Long>> containerParents = Collections.<Long, List<Long>> emptyMap();
+        Map<Long, List<Long>> memberParents = Collections.<Long, List<Long>> emptyMap();
+        if (memberQNamePair != null && containerQNamePair != null)
+        {
+            containerParents = getParents(selectContainerMembers(memberQNamePair.getFirst(), containerQNamePair.getFirst()));
+            List<AuthorityClosureEntity> members = new ArrayList<AuthorityClosureEntity>();
+            for (int i = 0; i < nodeIds.size(); i += BATCH_SIZE)
+            {
+                members.addAll(selectMembers(memberQNamePair.getFirst(), nodeIds.subList(i, Math.min(i + BATCH_SIZE, nodeIds.size()))));
+            }
+            memberParents = getParents(members);
+        }
+        // A membership change committed between the reads would make the rows look out of step
+        if (!rows.equals(getAncestorRows(nodeIds)))
+        {
+            throw new ConcurrencyFailureException("The authority closure was changed while it was being verified");
+        }
+
+        List<AuthorityClosureEntity> missing = new ArrayList<AuthorityClosureEntity>();
+        List<AuthorityClosureEntity> surplus = new ArrayList<AuthorityClosureEntity>();
+        Map<Long, Map<Long, Long>> containerAncestors = new HashMap<Long, Map<Long, Long>>();
+        for (Long nodeId : nodeIds)
+        {
+            Set<Long> visiting = new HashSet<Long>();
+            visiting.add(nodeId);
+            Map<Long, Long> expected = getExpectedAncestors(memberParents.get(nodeId), containerParents, containerAncestors, visiting);
+            Map<Long, Long> actual = rows.containsKey(nodeId) ? rows.get(nodeId) : Collections.<Long, Long> emptyMap();
+            Set<Long> ancestorIds = new TreeSet<Long>(expected.keySet());
+            ancestorIds.addAll(actual.keySet());
+            for (Long ancestorId : ancestorIds)
+            {
+                long difference = getCount(expected, ancestorId) - getCount(actual, ancestorId);
+                if (difference > 0)
+                {
+                    missing.add(new AuthorityClosureEntity(ancestorId, nodeId, difference));
+                }
+                else if (difference < 0)
+                {
+                    surplus.add(new AuthorityClosureEntity(ancestorId, nodeId, -difference));
+                }
+            }
+        }
+        if (logger.isDebugEnabled())
+        {
+            for (AuthorityClosureEntity row : missing)
+            {
+                logger.debug("Paths missing from the authority closure: " + row);
+            }
+            for (AuthorityClosureEntity row : surplus)
+            {
+                logger.debug("Paths left in the authority closure: " + row);
+            }
+        }
+        Collections.sort(missing, ROW_ORDER);
+        addPathsInBatches(missing);
+        Collections.sort(surplus, ROW_ORDER);
+        removePathsInBatches(surplus);
+        return missing.size() + surplus.size();
+    }
+
+    /**
+     * @param parentIds         the authorities that directly contain an authority
+     * @param visiting          the authorities whose ancestors are being worked out, and which close a cycle if
+     *                          they are met again
+     * @return                  Returns the number of member paths to the authority from each authority that contains it
+     */
+    private Map<Long, Long> getExpectedAncestors(
+            List<Long> parentIds,
+            Map<Long, List<Long>> containerParents,
+            Map<Long, Map<Long, Long>> containerAncestors,
+            Set<Long> visiting)
+    {
+        Map<Long, Long> ancestors = new HashMap<Long, Long>();
+        if (parentIds == null)
+        {
+            return ancestors;
+        }
+        for (Long parentId : parentIds)
+        {
+            if (visiting.contains(parentId))
+            {
+                continue;
+            }
+            addCount(ancestors, parentId, 1L);
+            Map<Long, Long> parentAncestors = containerAncestors.get(parentId);
+            if (parentAncestors == null)
+            {
+                visiting.add(parentId);
+                parentAncestors = getExpectedAncestors(containerParents.get(parentId), containerParents, containerAncestors, visiting);
+                visiting.remove(parentId);
+                containerAncestors.put(parentId, parentAncestors);
+            }
+            for (Map.Entry<Long, Long> ancestor : parentAncestors.entrySet())
+            {
+                if (!visiting.contains(ancestor.getKey()))
+                {
+                    addCount(ancestors, ancestor.getKey(), ancestor.getValue());
+                }
+            }
+        }
+        return ancestors;
+    }
+
+    private static void addCount(Map<Long, Long> counts, Long id, long count)
+    {
+        counts.put(id, getCount(counts, id) + count);
+    }
+
+    private static long getCount(Map<Long, Long> counts, Long id)
+    {
+        Long count = counts.get(id);
+        return (count == null) ? 0L : count;
+    }
+
+    /**
+     * @return              Returns the parents of each child in the rows
+     */
+    private static Map<Long, List<Long>> getParents(List<AuthorityClosureEntity> rows)
+    {
+        Map<Long, List<Long>> parents = new HashMap<Long, List<Long>>();
+        for (AuthorityClosureEntity row : rows)
+        {
+            List<Long> parentIds = parents.get(row.getDescendantId());
+            if (parentIds == null)
+            {
+                parentIds = new ArrayList<Long>(2);
+                parents.put(row.getDescendantId(), parentIds);
+            }
+            parentIds.add(row.getAncestorId());
+        }
+        return parents;
+    }
+
+    /**
+     * @return              Returns the path counts to each of the nodes, by node and then ancestor
+     */
+    private Map<Long, Map<Long, Long>> getAncestorRows(List<Long> nodeIds)
+    {
+        Map<Long, Map<Long, Long>> ancestors = new HashMap<Long, Map<Long, Long>>();
+        for (int i = 0; i < nodeIds.size(); i += BATCH_SIZE)
+        {
+            for (AuthorityClosureEntity row : selectAncestorsOf(nodeIds.subList(i, Math.min(i + BATCH_SIZE, nodeIds.size()))))
+            {
+                Map<Long, Long> nodeAncestors = ancestors.get(row.getDescendantId());
+                if (nodeAncestors == null)
+                {
+                    nodeAncestors = new HashMap<Long, Long>();
+                    ancestors.put(row.getDescendantId(), nodeAncestors);
+                }
+                nodeAncestors.put(row.getAncestorId(), row.getPathCount());
+            }
+        }
+        return ancestors;
+    }
+
+    private void addPathsInBatches(List<AuthorityClosureEntity> paths)
+    {
+        for (int i = 0; i < paths.size(); i += BATCH_SIZE)
+        {
+            addPaths(paths.subList(i, Math.min(i + BATCH_SIZE, paths.size())));
+        }
+    }
+
+    /**
+     * Take the paths away and delete the rows that are left with none
+     *
+     * @param paths         the paths, ordered by ancestor
+     */
+    private void removePathsInBatches(List<AuthorityClosureEntity> paths)
+    {
+        for (int i = 0; i < paths.size(); i += BATCH_SIZE)
+        {
+            removePaths(paths.subList(i, Math.min(i + BATCH_SIZE, paths.size())));
+        }
+        List<Long> descendantIds = new ArrayList<Long>();
+        Long ancestorId = null;
+        for (AuthorityClosureEntity path : paths)
+        {
+            if (!path.getAncestorId().equals(ancestorId) || descendantIds.size() == BATCH_SIZE)
+            {
+                if (!descendantIds.isEmpty())
+                {
+                    deleteEmptyPaths(ancestorId, descendantIds);
+                    descendantIds.clear();
+                }
+                ancestorId = path.getAncestorId();
+            }
+            descendantIds.add(path.getDescendantId());
+        }
+        if (!descendantIds.isEmpty())
+        {
+            deleteEmptyPaths(ancestorId, descendantIds);
+        }
+    }
+
+    /**
+     * Lock the closure before reading the rows that a change to the memberships of an authority is worked out from
+     *
+     * @param childId           the node ID of the member authority
+     */
+    private void lockClosureFor(Long childId)
+    {
+        // A person contains nothing, so the rows read by changes to its memberships are only altered by changes to groups
+        lockClosure(!ContentModel.TYPE_PERSON.equals(nodeDAO.getNodeType(childId)));
+    }
+
+    private Long getNodeId(NodeRef nodeRef)
+    {
+        Pair<Long, NodeRef> nodePair = nodeDAO.getNodePair(tenantService.getName(nodeRef));
+        return (nodePair == null) ? null : nodePair.getFirst();
+    }
+
+    /**
+     * @return              Returns the path counts to the node from each of its ancestors and from itself
+     */
+    private Map<Long, Long> getAncestors(Long nodeId)
+    {
+        Map<Long, Long> ancestors = new HashMap<Long, Long>();
+        ancestors.put(nodeId, 1L);
+        for (AuthorityClosureEntity row : selectAncestors(nodeId))
+        {
+            ancestors.put(row.getAncestorId(), row.getPathCount());
+        }
+        return ancestors;
+    }
+
+    /**
+     * @return              Returns the path counts from the node to each of its descendants and to itself
+     */
+    private Map<Long, Long> getDescendants(Long nodeId)
+    {
+        Map<Long, Long> descendants = new HashMap<Long, Long>();
+        descendants.put(nodeId, 1L);
+        for (AuthorityClosureEntity row : selectDescendants(nodeId))
+        {
+            descendants.put(row.getDescendantId(), row.getPathCount());
+        }
+        return descendants;
+    }
+
+    /**
+     * @return              Returns the number of paths that an association adds from each of the ancestors given to
+     *                      each of the descendants given, ordered by ancestor and then descendant so that concurrent
+     *                      changes take their row locks in the same order
+     */
+    private List<AuthorityClosureEntity> getPathsThrough(Map<Long, Long> ancestors, Map<Long, Long> descendants)
+    {
+        List<AuthorityClosureEntity> paths = new ArrayList<AuthorityClosureEntity>(ancestors.size() * descendants.size());
+        for (Map.Entry<Long, Long> ancestor : new TreeMap<Long, Long>(ancestors).entrySet())
+        {
+            for (Map.Entry<Long, Long> descendant : new TreeMap<Long, Long>(descendants).entrySet())
+            {
+                paths.add(new AuthorityClosureEntity(ancestor.getKey(), descendant.getKey(), ancestor.getValue() * descendant.getValue()));
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Lock the closure until the transaction ends.  A shared lock keeps out the changes that hold the lock
+     * exclusively, while an exclusive lock keeps out all other changes.
+     *
+     * @param exclusive         <tt>true</tt> to lock the closure exclusively, or <tt>false</tt> to share the lock
+     */
+    protected abstract void lockClosure(boolean exclusive);
+
+    /**
+     * @param descendantId      the node ID of an authority
+     * @return                  Returns the rows for the authorities that contain it
+     */
+    protected abstract List<AuthorityClosureEntity> selectAncestors(Long descendantId);
+
+    /**
+     * @param ancestorId        the node ID of an authority
+     * @return                  Returns the rows for the authorities within it
+     */
+    protected abstract List<AuthorityClosureEntity> selectDescendants(Long ancestorId);
+
+    /**
+     * @param descendantIds     the node IDs of some authorities
+     * @return                  Returns the rows for the authorities that contain them
+     */
+    protected abstract List<AuthorityClosureEntity> selectAncestorsOf(List<Long> descendantIds);
+
+    /**
+     * @param memberQNameId     the ID of {@link ContentModel#ASSOC_MEMBER}
+     * @param afterNodeId       the node ID after which to start
+     * @param maxResults        the most node IDs to return
+     * @return                  Returns, in order, the node IDs of authorities that are members or that have rows
+     */
+    protected abstract List<Long> selectMemberIds(Long memberQNameId, Long afterNodeId, int maxResults);
+
+    /**
+     * @param memberQNameId     the ID of {@link ContentModel#ASSOC_MEMBER}
+     * @param nodeIds           the node IDs of some authorities
+     * @return                  Returns the member associations of the authorities, as rows from parent to child
+     */
+    protected abstract List<AuthorityClosureEntity> selectMembers(Long memberQNameId, List<Long> nodeIds);
+
+    /**
+     * @param memberQNameId     the ID of {@link ContentModel#ASSOC_MEMBER}
+     * @param containerQNameId  the ID of {@link ContentModel#TYPE_AUTHORITY_CONTAINER}
+     * @return                  Returns the member associations between authority containers, as rows from parent
+     *                          to child
+     */
+    protected abstract List<AuthorityClosureEntity> selectContainerMembers(Long memberQNameId, Long containerQNameId);
+
+    /**
+     * Add to the path counts of the rows given, creating any rows that do not exist.  The counts are added within
+     * the database so that concurrent changes to the same rows are not lost.
+     *
+     * @param rows              the rows, each with the number of paths to add
+     */
+    protected abstract void addPaths(List<AuthorityClosureEntity> rows);
+
+    /**
+     * Take from the path counts of the rows given.  The counts are taken within the database so that concurrent
+     * changes to the same rows are not lost.
+     *
+     * @param rows              the rows, each with the number of paths to take away
+     */
+    protected abstract void removePaths(List<AuthorityClosureEntity> rows);
+
+    /**
+     * @param ancestorId        the node ID of an authority
+     * @param descendantIds     the node IDs of authorities whose rows are deleted if they are left with no paths
+     */
+    protected abstract void deleteEmptyPaths(Long ancestorId, List<Long> descendantIds);
+
+    /**
+     * @param descendantId          the node ID of an authority
+     * @param authorityNameQNameId  the ID of {@link ContentModel#PROP_AUTHORITY_NAME}
+     * @return                      Returns the names of the authorities that contain it
+     */
+    protected abstract List<String> selectAncestorNames(Long descendantId, Long authorityNameQNameId);
+
+    /**
+     * @param ancestorId            the node ID of an authority
+     * @param userNameQNameId       the ID of {@link ContentModel#PROP_USERNAME}
+     * @return                      Returns the user names of the people within it
+     */
+    protected abstract List<String> selectDescendantNames(Long ancestorId, Long userNameQNameId);
+}
@@ -0,0 +1,98 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.security.authority;
+
+import java.util.List;
+
+import org.alfresco.service.cmr.repository.NodeRef;
+
+/**
+ * Access to the closure of the {@link org.alfresco.model.ContentModel#ASSOC_MEMBER member} associations between
+ * authorities.  The closure holds a row for every authority that contains another, however deeply, so the groups
+ * of a user and the users of a group can each be read with a single query.
+ * <p>
+ * The closure is kept in step with the member associations within the transaction that changes them.  Changes
+ * that bypass this, such as those made with the authority behaviours disabled, are corrected when the closure is
+ * {@link #verifyMembers(List) verified} by the {@link AuthorityClosureVerifier}.  Changes that could affect each
+ * other's rows are applied one after another: each holds a lock on the closure until its transaction ends.
+ *
+ * @since 7.110
+ */
+public interface AuthorityClosureDAO
+{
+    /**
+     * Record a new member association.  The child, and everything within it, becomes contained by the parent
+     * and by everything that contains the parent.
+     *
+     * @param parentRef         the containing authority
+     * @param childRef          the member authority
+     */
+    void addMember(NodeRef parentRef, NodeRef childRef);
+
+    /**
+     * Record the removal of a member association, before it is removed.  Authorities that were only contained
+     * through the association are no longer contained.
+     *
+     * @param parentRef         the containing authority
+     * @param childRef          the member authority
+     * @return                  Returns <tt>true</tt> if the closure is up to date, or <tt>false</tt> if the removal
+     *                          could not be recorded and the closure is out of step until it is next verified
+     */
+    boolean removeMember(NodeRef parentRef, NodeRef childRef);
+
+    /**
+     * @param authorityRef      the authority
+     * @return                  Returns the names of the groups and roles that contain the authority at any depth
+     */
+    List<String> getContainingAuthorityNames(NodeRef authorityRef);
+
+    /**
+     * @param authorityRef      the authority
+     * @return                  Returns the user names of the people within the authority at any depth
+     */
+    List<String> getContainedUserNames(NodeRef authorityRef);
+
+    /**
+     * Page through the authorities whose rows could be out of step with the member associations.
+     *
+     * @param afterNodeId       the node ID after which to start, or <tt>null</tt> to start from the first
+     * @param maxResults        the most node IDs to return
+     * @return                  Returns, in order, the node IDs of the authorities that are members of others or
+     *                          that are still contained by others in the closure
+     */
+    List<Long> getMemberIds(Long afterNodeId, int maxResults);
+
+    /**
+     * Check the rows for the authorities that contain each of the authorities given against the member
+     * associations, and correct any that are out of step.  Associations that close a cycle are left out.
+     *
+     * @param nodeIds           the node IDs of authorities, as given by {@link #getMemberIds(Long, int)}
+     * @return                  Returns the number of rows corrected
+     * @throws org.springframework.dao.ConcurrencyFailureException
+     *                          if the rows were changed by another transaction while they were being checked
+     */
+    int verifyMembers(List<Long> nodeIds);
+}
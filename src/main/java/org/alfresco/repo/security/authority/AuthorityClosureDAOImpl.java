@@ -0,0 +1,162 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.security.authority;
+
+import java.util.List;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.ibatis.IdsEntity;
+import org.apache.ibatis.session.RowBounds;
+import org.mybatis.spring.SqlSessionTemplate;
+
+/**
+ * iBatis-specific implementation of the authority closure DAO, using the <b>alf_authority_closure</b> table.  The
+ * closure is locked by locking the single row of the <b>alf_authority_closure_lock</b> table.
+ *
+ * @since 7.110
+ */
+public class AuthorityClosureDAOImpl extends AbstractAuthorityClosureDAO
+{
+    private static final String SELECT_LOCK_SHARED = "alfresco.authority.closure.lock.select_AuthorityClosureLockShared";
+    private static final String SELECT_LOCK_EXCLUSIVE = "alfresco.authority.closure.lock.select_AuthorityClosureLockExclusive";
+    private static final String SELECT_ANCESTORS = "alfresco.authority.closure.select_AuthorityClosureAncestors";
+    private static final String SELECT_DESCENDANTS = "alfresco.authority.closure.select_AuthorityClosureDescendants";
+    private static final String SELECT_ANCESTORS_OF = "alfresco.authority.closure.select_AuthorityClosureAncestorsOf";
+    private static final String SELECT_MEMBER_IDS = "alfresco.authority.closure.select_AuthorityClosureMemberIds";
+    private static final String SELECT_MEMBERS = "alfresco.authority.closure.select_AuthorityClosureMembers";
+    private static final String SELECT_CONTAINER_MEMBERS = "alfresco.authority.closure.select_AuthorityClosureContainerMembers";
+    private static final String SELECT_ANCESTOR_NAMES = "alfresco.authority.closure.select_AuthorityClosureAncestorNames";
+    private static final String SELECT_DESCENDANT_NAMES = "alfresco.authority.closure.select_AuthorityClosureDescendantNames";
+    private static final String INSERT_PATHS = "alfresco.authority.closure.insert.insert_AuthorityClosurePaths";
+    private static final String UPDATE_REMOVE_PATHS = "alfresco.authority.closure.update_AuthorityClosureRemovePaths";
+    private static final String DELETE_EMPTY_PATHS = "alfresco.authority.closure.delete_AuthorityClosureEmptyPaths";
+
+    private SqlSessionTemplate template;
+
+    public void setSqlSessionTemplate(SqlSessionTemplate sqlSessionTemplate)
+    {
+        this.template = sqlSessionTemplate;
+    }
+
+    @Override
+    protected void lockClosure(boolean exclusive)
+    {
+        Long lockId = template.selectOne(exclusive ? SELECT_LOCK_EXCLUSIVE : SELECT_LOCK_SHARED);
+        if (lockId == null)
+        {
+            throw new AlfrescoRuntimeException("The lock row is missing from alf_authority_closure_lock");
+        }
+    }
+
+    @Override
+    protected List<AuthorityClosureEntity> selectAncestors(Long descendantId)
+    {
+        return template.selectList(SELECT_ANCESTORS, descendantId);
+    }
+
+    @Override
+    protected List<AuthorityClosureEntity> selectDescendants(Long ancestorId)
+    {
+        return template.selectList(SELECT_DESCENDANTS, ancestorId);
+    }
+
+    @Override
+    protected List<AuthorityClosureEntity> selectAncestorsOf(List<Long> descendantIds)
+    {
+        IdsEntity ids = new IdsEntity();
+        ids.setIds(descendantIds);
+        return template.selectList(SELECT_ANCESTORS_OF, ids);
+    }
+
+    @Override
+    protected List<Long> selectMemberIds(Long memberQNameId, Long afterNodeId, int maxResults)
+    {
+        IdsEntity ids = new IdsEntity();
+        ids.setIdOne(memberQNameId);
+        ids.setIdTwo(afterNodeId);
+        return template.selectList(SELECT_MEMBER_IDS, ids, new RowBounds(0, maxResults));
+    }
+
+    @Override
+    protected List<AuthorityClosureEntity> selectMembers(Long memberQNameId, List<Long> nodeIds)
+    {
+        IdsEntity ids = new IdsEntity();
+        ids.setIdOne(memberQNameId);
+        ids.setIds(nodeIds);
+        return template.selectList(SELECT_MEMBERS, ids);
+    }
+
+    @Override
+    protected List<AuthorityClosureEntity> selectContainerMembers(Long memberQNameId, Long containerQNameId)
+    {
+        IdsEntity ids = new IdsEntity();
+        ids.setIdOne(memberQNameId);
+        ids.setIdTwo(containerQNameId);
+        return template.selectList(SELECT_CONTAINER_MEMBERS, ids);
+    }
+
+    @Override
+    protected void addPaths(List<AuthorityClosureEntity> rows)
+    {
+        template.insert(INSERT_PATHS, rows);
+    }
+
+    @Override
+    protected void removePaths(List<AuthorityClosureEntity> rows)
+    {
+        for (AuthorityClosureEntity row : rows)
+        {
+            template.update(UPDATE_REMOVE_PATHS, row);
+        }
+    }
+
+    @Override
+    protected void deleteEmptyPaths(Long ancestorId, List<Long> descendantIds)
+    {
+        IdsEntity ids = new IdsEntity();
+        ids.setIdOne(ancestorId);
+        ids.setIds(descendantIds);
+        template.delete(DELETE_EMPTY_PATHS, ids);
+    }
+
+    @Override
+    protected List<String> selectAncestorNames(Long descendantId, Long authorityNameQNameId)
+    {
+        IdsEntity ids = new IdsEntity();
+        ids.setIdOne(descendantId);
+        ids.setIdTwo(authorityNameQNameId);
+        return template.selectList(SELECT_ANCESTOR_NAMES, ids);
+    }
+
+    @Override
+    protected List<String> selectDescendantNames(Long ancestorId, Long userNameQNameId)
+    {
+        IdsEntity ids = new IdsEntity();
+        ids.setIdOne(ancestorId);
+        ids.setIdTwo(userNameQNameId);
+        return template.selectList(SELECT_DESCENDANT_NAMES, ids);
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.security.authority;
+
+/**
+ * A row of the authority closure: the number of member paths from one authority down to another.
+ *
+ * @since 7.110
+ */
+public class AuthorityClosureEntity
+{
+    private Long ancestorId;
+    private Long descendantId;
+    private Long pathCount;
+
+    public AuthorityClosureEntity()
+    {
+    }
+
+    public AuthorityClosureEntity(Long ancestorId, Long descendantId, Long pathCount)
+    {
+        this.ancestorId = ancestorId;
+        this.descendantId = descendantId;
+        this.pathCount = pathCount;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "AuthorityClosureEntity[ancestorId=" + ancestorId + ", descendantId=" + descendantId + ", pathCount=" + pathCount + "]";
+    }
+
+    /**
+     * @return the node ID of the containing authority
+     */
+    public Long getAncestorId()
+    {
+        return ancestorId;
+    }
+
+    public void setAncestorId(Long ancestorId)
+    {
+        this.ancestorId = ancestorId;
+    }
+
+    /**
+     * @return the node ID of the contained authority
+     */
+    public Long getDescendantId()
+    {
+        return descendantId;
+    }
+
+    public void setDescendantId(Long descendantId)
+    {
+        this.descendantId = descendantId;
+    }
+
+    /**
+     * @return the number of distinct member paths from the ancestor to the descendant
+     */
+    public Long getPathCount()
+    {
+        return pathCount;
+    }
+
+    public void setPathCount(Long pathCount)
+    {
+        this.pathCount = pathCount;
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.security.authority;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.repo.cache.SimpleCache;
+import org.alfresco.repo.lock.JobLockService;
+import org.alfresco.repo.lock.JobLockService.JobLockRefreshCallback;
+import org.alfresco.repo.lock.LockAcquisitionException;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.util.Pair;
+import org.alfresco.util.PropertyCheck;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.quartz.Job;
+import org.quartz.JobDataMap;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+
+/**
+ * Checks the authority closure against the member associations and corrects any rows that are out of step.
+ * The closure is kept up to date by the behaviours on the member associations, so rows only drift when
+ * membership is changed with those behaviours disabled, or directly in the database.
+ * <p>
+ * The authorities are paged through in order of node ID, {@link #setBatchSize(int) batchSize} to a transaction.
+ * A page whose rows are changed by another transaction while it is being checked is checked again.  When rows
+ * are corrected, the cached authorities of users are cleared, as they may have been read from the wrong rows.
+ *
+ * @since 7.110
+ */
+public class AuthorityClosureVerifier
+{
+    private static final QName LOCK_QNAME = QName.createQName(NamespaceService.SYSTEM_MODEL_1_0_URI, "AuthorityClosureVerifier");
+    private static final long LOCK_TTL = 60000L;
+
+    private static Log logger = LogFactory.getLog(AuthorityClosureVerifier.class);
+
+    private AuthorityClosureDAO authorityClosureDAO;
+    private SimpleCache<String, Set<String>> userAuthorityCache;
+    private JobLockService jobLockService;
+    private TransactionService transactionService;
+    private int batchSize;
+
+    public AuthorityClosureVerifier()
+    {
+        this.batchSize = 1000;
+    }
+
+    /**
+     * @param authorityClosureDAO   the closure to verify
+     */
+    public void setAuthorityClosureDAO(AuthorityClosureDAO authorityClosureDAO)
+    {
+        this.authorityClosureDAO = authorityClosureDAO;
+    }
+
+    /**
+     * @param userAuthorityCache    the cached authorities of users, cleared when rows are corrected
+     */
+    public void setUserAuthorityCache(SimpleCache<String, Set<String>> userAuthorityCache)
+    {
+        this.userAuthorityCache = userAuthorityCache;
+    }
+
+    /**
+     * @param jobLockService        service used to ensure that verification runs are not duplicated
+     */
+    public void setJobLockService(JobLockService jobLockService)
+    {
+        this.jobLockService = jobLockService;
+    }
+
+    /**
+     * @param transactionService    the component to ensure proper transactional wrapping
+     */
+    public void setTransactionService(TransactionService transactionService)
+    {
+        this.transactionService = transactionService;
+    }
+
+    /**
+     * Set the number of authorities checked in each transaction.  The default is 1000.
+     */
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Perform basic checks to ensure that the necessary dependencies were injected.
+     */
+    public void init()
+    {
+        PropertyCheck.mandatory(this, "authorityClosureDAO", authorityClosureDAO);
+        PropertyCheck.mandatory(this, "userAuthorityCache", userAuthorityCache);
+        PropertyCheck.mandatory(this, "jobLockService", jobLockService);
+        PropertyCheck.mandatory(this, "transactionService", transactionService);
+        if (batchSize < 1)
+        {
+            throw new AlfrescoRuntimeException("Property 'batchSize' must be 1 or greater");
+        }
+    }
+
+    /**
+     * Verifies the authority closure, unless a verification is already underway.
+     *
+     * @return                  Returns the number of rows corrected
+     */
+    public int execute()
+    {
+        // Bypass if the system is in read-only mode
+        if (transactionService.isReadOnly())
+        {
+            logger.debug("Authority closure verification bypassed; the system is read-only.");
+            return 0;
+        }
+        final AtomicBoolean inProgress = new AtomicBoolean(true);
+        JobLockRefreshCallback lockCallback = new JobLockRefreshCallback()
+        {
+            @Override
+            public void lockReleased()
+            {
+                inProgress.set(false);
+            }
+
+            @Override
+            public boolean isActive()
+            {
+                return inProgress.get();
+            }
+        };
+
+        String lockToken = null;
+        try
+        {
+            lockToken = jobLockService.getLock(LOCK_QNAME, LOCK_TTL);
+            jobLockService.refreshLock(lockToken, LOCK_QNAME, LOCK_TTL, lockCallback);
+
+            long startTime = System.currentTimeMillis();
+            int authorities = 0;
+            int corrected = 0;
+            Long afterNodeId = null;
+            while (inProgress.get())
+            {
+                Pair<List<Long>, Integer> page = verifyPage(afterNodeId);
+                List<Long> nodeIds = page.getFirst();
+                if (nodeIds.isEmpty())
+                {
+                    break;
+                }
+                authorities += nodeIds.size();
+                corrected += page.getSecond();
+                afterNodeId = nodeIds.get(nodeIds.size() - 1);
+            }
+            long duration = System.currentTimeMillis() - startTime;
+            if (corrected > 0)
+            {
+                logger.warn(
+                        "The authority closure was out of step with the member associations: " +
+                        corrected + " rows corrected for " + authorities + " authorities checked in " + duration + "ms");
+            }
+            else if (logger.isInfoEnabled())
+            {
+                logger.info("Authority closure verification completed in " + duration + "ms: " + authorities + " authorities checked");
+            }
+            return corrected;
+        }
+        catch (LockAcquisitionException e)
+        {
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("   Authority closure verification already underway.");
+            }
+            return 0;
+        }
+        finally
+        {
+            inProgress.set(false);
+            if (lockToken != null)
+            {
+                jobLockService.releaseLock(lockToken, LOCK_QNAME);
+            }
+        }
+    }
+
+    /**
+     * @return                  Returns the node IDs of the authorities checked and the number of rows corrected
+     */
+    private Pair<List<Long>, Integer> verifyPage(final Long afterNodeId)
+    {
+        RetryingTransactionCallback<Pair<List<Long>, Integer>> verifyCallback = new RetryingTransactionCallback<Pair<List<Long>, Integer>>()
+        {
+            @Override
+            public Pair<List<Long>, Integer> execute() throws Throwable
+            {
+                List<Long> nodeIds = authorityClosureDAO.getMemberIds(afterNodeId, batchSize);
+                if (nodeIds.isEmpty())
+                {
+                    return new Pair<List<Long>, Integer>(nodeIds, 0);
+                }
+                int corrected = authorityClosureDAO.verifyMembers(nodeIds);
+                if (corrected > 0)
+                {
+                    userAuthorityCache.clear();
+                }
+                return new Pair<List<Long>, Integer>(nodeIds, corrected);
+            }
+        };
+        return transactionService.getRetryingTransactionHelper().doInTransaction(verifyCallback, false, true);
+    }
+
+    /**
+     * Triggers a verification run of the authority closure.
+     * <p>
+     * The following parameters are required:
+     * <ul>
+     *   <li><b>authorityClosureVerifier</b>: The authority closure verifier bean</li>
+     * </ul>
+     */
+    public static class AuthorityClosureVerifierJob implements Job
+    {
+        public static final String JOB_DATA_VERIFIER = "authorityClosureVerifier";
+
+        public void execute(JobExecutionContext context) throws JobExecutionException
+        {
+            JobDataMap jobData = context.getJobDetail().getJobDataMap();
+            Object verifierObj = jobData.get(JOB_DATA_VERIFIER);
+            if (verifierObj == null || !(verifierObj instanceof AuthorityClosureVerifier))
+            {
+                throw new AlfrescoRuntimeException(
+                        "AuthorityClosureVerifierJob data '" + JOB_DATA_VERIFIER + "' must reference a " + AuthorityClosureVerifier.class.getSimpleName());
+            }
+            AuthorityClosureVerifier verifier = (AuthorityClosureVerifier) verifierObj;
+            verifier.execute();
+        }
+    }
+}
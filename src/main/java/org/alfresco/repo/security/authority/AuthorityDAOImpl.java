@@ -49,8 +49,6 @@ import org.alfresco.query.CannedQueryResults;
 import org.alfresco.query.PagingRequest;
 import org.alfresco.query.PagingResults;
 import org.alfresco.repo.cache.AsynchronouslyRefreshedCache;
-import org.alfresco.util.cache.RefreshableCacheEvent;
-import org.alfresco.util.cache.RefreshableCacheListener;
 import org.alfresco.repo.cache.SimpleCache;
 import org.alfresco.repo.cache.TransactionalCache;
 import org.alfresco.repo.domain.permissions.AclDAO;
@@ -85,7 +83,6 @@ import org.alfresco.service.namespace.NamespacePrefixResolver;
 import org.alfresco.service.namespace.NamespaceService;
 import org.alfresco.service.namespace.QName;
 import org.alfresco.service.namespace.RegexQNamePattern;
-import org.alfresco.util.BridgeTable;
 import org.alfresco.util.EqualsHelper;
 import org.alfresco.util.ISO9075;
 import org.alfresco.util.Pair;
@@ -98,11 +95,15 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.InitializingBean;
 
-public class AuthorityDAOImpl implements AuthorityDAO, NodeServicePolicies.BeforeDeleteNodePolicy, NodeServicePolicies.OnUpdatePropertiesPolicy, RefreshableCacheListener, InitializingBean
+public class AuthorityDAOImpl implements AuthorityDAO, NodeServicePolicies.BeforeDeleteNodePolicy, NodeServicePolicies.OnUpdatePropertiesPolicy,
+        NodeServicePolicies.OnCreateChildAssociationPolicy, NodeServicePolicies.BeforeDeleteChildAssociationPolicy, InitializingBean
 {
     private static Log logger = LogFactory.getLog(AuthorityDAOImpl.class);
     
     private static String PARENTS_OF_DELETING_CHILDREN_SET_RESOURCE = "ParentsOfDeletingChildrenSetResource";
+    private static String UPDATED_USER_AUTHORITIES_SET_RESOURCE = "UpdatedUserAuthoritiesSetResource";
+    private static String USER_AUTHORITIES_CLEARED_RESOURCE = "UserAuthoritiesClearedResource";
+    private static String CLOSURE_OUT_OF_STEP_RESOURCE = "AuthorityClosureOutOfStepResource";
     
     private static final NodeRef NULL_NODEREF = new NodeRef("null", "null", "null");
     private static final String CANNED_QUERY_AUTHS_LIST = "authsGetAuthoritiesCannedQueryFactory"; // see authority-services-context.xml
@@ -140,13 +141,15 @@ public class AuthorityDAOImpl implements AuthorityDAO, NodeServicePolicies.Befor
     private boolean useBridgeTable = true;
     /** limits the findAuthorities search query */
     private int findAuthoritiesLimit = 100;
+    /** The most users whose cached authorities are updated in a transaction, rather than clearing the cache */
+    private int userAuthorityUpdateLimit = 100;
     
     private QNameDAO qnameDAO;
     private CannedQueryDAO cannedQueryDAO;
     private AclDAO aclDao;
     private PolicyComponent policyComponent;
     private NamedObjectRegistry<CannedQueryFactory<?>> cannedQueryRegistry;
-    private AuthorityBridgeDAO authorityBridgeDAO;
+    private AuthorityClosureDAO authorityClosureDAO;
     
     
     public AuthorityDAOImpl()
@@ -221,7 +224,8 @@ public class AuthorityDAOImpl implements AuthorityDAO, NodeServicePolicies.Befor
     }
     
     /**
-     * @param useBridgeTable the useBridgeTable to set
+     * @param useBridgeTable <tt>true</tt> to read the groups of users from the authority closure rather than
+     *                       by walking the member associations
      */
     public void setUseBridgeTable(boolean useBridgeTable)
     {
@@ -270,11 +274,12 @@ public class AuthorityDAOImpl implements AuthorityDAO, NodeServicePolicies.Befor
     }
     
     /**
-     * @param authorityBridgeDAO the authorityBridgeDAO to set
+     * @param authorityClosureDAO the authorityClosureDAO to set
+     * @since 7.110
      */
-    public void setAuthorityBridgeDAO(AuthorityBridgeDAO authorityBridgeDAO)
+    public void setAuthorityClosureDAO(AuthorityClosureDAO authorityClosureDAO)
     {
-        this.authorityBridgeDAO = authorityBridgeDAO;
+        this.authorityClosureDAO = authorityClosureDAO;
     }
 
     public void setFindAuthoritiesLimit(int findAuthoritiesLimit)
@@ -282,6 +287,21 @@ public class AuthorityDAOImpl implements AuthorityDAO, NodeServicePolicies.Befor
         this.findAuthoritiesLimit = findAuthoritiesLimit;
     }
 
+    /**
+     * Sets the most users whose cached authorities are updated one by one in a transaction that changes group
+     * membership.  Past this, the cached authorities of all users are cleared when the transaction commits.  This
+     * should match the number of items that the user authority cache holds in a transaction, which would otherwise
+     * overflow and clear the cache anyway.
+     * 
+     * @param userAuthorityUpdateLimit
+     *            the userAuthorityUpdateLimit to set
+     * @since 7.110
+     */
+    public void setUserAuthorityUpdateLimit(int userAuthorityUpdateLimit)
+    {
+        this.userAuthorityUpdateLimit = userAuthorityUpdateLimit;
+    }
+
     @Override
     public long getPersonCount()
     {
@@ -368,13 +388,8 @@ public class AuthorityDAOImpl implements AuthorityDAO, NodeServicePolicies.Befor
 
         nodeService.addChild(parentRefs, childRef, ContentModel.ASSOC_MEMBER, QName.createQName("cm", childName,
                 namespacePrefixResolver));
-        if (isUser)
-        {
-            userAuthorityCache.remove(childName);
-        }
-        else
+        if (!isUser)
         {
-            userAuthorityCache.clear();
             authorityBridgeTableCache.refresh();
         }
     }
@@ -435,7 +450,6 @@ public class AuthorityDAOImpl implements AuthorityDAO, NodeServicePolicies.Befor
         nodeService.deleteNode(nodeRef);
         
         authorityLookupCache.remove(cacheKey(name));
-        userAuthorityCache.clear();
         authorityBridgeTableCache.refresh();
     }
     
@@ -804,15 +818,8 @@ public class AuthorityDAOImpl implements AuthorityDAO, NodeServicePolicies.Befor
         }
         nodeService.removeChild(parentRef, childRef);
         childAuthorityCache.remove(parentRef);
-        if (AuthorityType.getAuthorityType(childName) == AuthorityType.USER)
+        if (AuthorityType.getAuthorityType(childName) != AuthorityType.USER)
         {
-            // Normalize the user name
-            childName = (String) nodeService.getProperty(childRef, ContentModel.PROP_USERNAME);
-            userAuthorityCache.remove(childName);
-        }
-        else
-        {
-            userAuthorityCache.clear();
             if (cacheRefresh)
             {
                 authorityBridgeTableCache.refresh();
@@ -821,44 +828,139 @@ public class AuthorityDAOImpl implements AuthorityDAO, NodeServicePolicies.Befor
     }
 
     /**
-     * Explicitly use the bridge table to list authorities.
+     * Keep the authority closure and the cached authorities of the users within the new member up to date.
+     * Each user gains everything that now contains the member, so the cached sets are extended in place rather
+     * than being worked out again on the users' next requests.
      */
-    private void listAuthoritiesByBridgeTable(Set<String> authorities, String name)
+    @Override
+    public void onCreateChildAssociation(ChildAssociationRef childAssocRef, boolean isNewNode)
     {
-        BridgeTable<String> bridgeTable = authorityBridgeTableCache.get();
-        
-        AuthorityType type = AuthorityType.getAuthorityType(name);
-        switch(type)
-        {
-        case WILDCARD:
-            // Dual use of the enum means that this value should not be received
-            logger.warn("Found an authority with type '" + AuthorityType.WILDCARD + "': " + name);
-        case ADMIN:
-        case GUEST:
-        case USER:
-        case EVERYONE:
-            NodeRef authRef = getAuthorityOrNull(name);
-            List<AuthorityBridgeLink> parents = authorityBridgeDAO.getDirectAuthoritiesForUser(authRef);
-            for(AuthorityBridgeLink parent : parents)
-            {
-                authorities.add(getPooledName(parent.getParentName()));
-                for (String ancestor : bridgeTable.getAncestors(parent.getParentName()))
-                {
-                    authorities.add(getPooledName(ancestor));
-                }
+        authorityClosureDAO.addMember(childAssocRef.getParentRef(), childAssocRef.getChildRef());
+
+        Set<String> users = getUsersWithin(childAssocRef);
+        if (users.isEmpty())
+        {
+            return;
+        }
+        Set<String> gained = new TreeSet<String>();
+        for (String authority : authorityClosureDAO.getContainingAuthorityNames(childAssocRef.getChildRef()))
+        {
+            gained.add(getPooledName(authority));
+        }
+        Map<String, Set<String>> updates = new HashMap<String, Set<String>>();
+        for (String user : users)
+        {
+            Set<String> authorities = userAuthorityCache.get(user);
+            if (authorities != null && !authorities.containsAll(gained))
+            {
+                Set<String> updated = new TreeSet<String>(authorities);
+                updated.addAll(gained);
+                updates.put(user, Collections.unmodifiableSet(updated));
             }
-            break;
-        case GROUP:
-        case OWNER:
-        case ROLE:
-            for (String ancestor : bridgeTable.getAncestors(name))
+        }
+        if (canUpdateUserAuthorities(updates.keySet()))
+        {
+            for (Map.Entry<String, Set<String>> update : updates.entrySet())
             {
-                authorities.add(getPooledName(ancestor));
+                userAuthorityCache.put(update.getKey(), update.getValue());
             }
-            break;
-        }        
+        }
     }
-    
+
+    /**
+     * Keep the authority closure up to date and drop the cached authorities of the users within the member.
+     * A user may still be in a group by another path, so the cached sets are worked out again rather than
+     * being edited.  Only the users that are cached are touched, so that the transactional cache holds no more
+     * entries than the shared cache.
+     * <p>
+     * If the closure cannot record the removal, the cached authorities of all users are cleared and, for the rest of
+     * the transaction, the groups of users are found by walking the member associations.
+     */
+    @Override
+    public void beforeDeleteChildAssociation(ChildAssociationRef childAssocRef)
+    {
+        if (!authorityClosureDAO.removeMember(childAssocRef.getParentRef(), childAssocRef.getChildRef()))
+        {
+            userAuthorityCache.clear();
+            AlfrescoTransactionSupport.bindResource(USER_AUTHORITIES_CLEARED_RESOURCE, Boolean.TRUE);
+            AlfrescoTransactionSupport.bindResource(CLOSURE_OUT_OF_STEP_RESOURCE, Boolean.TRUE);
+            return;
+        }
+        // The removal leaves the users within the member as they were, and they are read under the closure lock
+        Set<String> users = getUsersWithin(childAssocRef);
+        Set<String> removals = new HashSet<String>();
+        for (String user : users)
+        {
+            if (userAuthorityCache.contains(user))
+            {
+                removals.add(user);
+            }
+        }
+        if (canUpdateUserAuthorities(removals))
+        {
+            for (String user : removals)
+            {
+                userAuthorityCache.remove(user);
+            }
+        }
+    }
+
+    /**
+     * Count the users whose cached authorities the transaction updates.  Once there are more than
+     * {@link #setUserAuthorityUpdateLimit(int) the limit}, the user authority cache is cleared instead, once, rather
+     * than letting the transactional cache overflow.
+     * 
+     * @param users         the users whose cached authorities are about to be updated
+     * @return              <tt>true</tt> to update them, or <tt>false</tt> if the cache has been cleared
+     */
+    private boolean canUpdateUserAuthorities(Set<String> users)
+    {
+        if (users.isEmpty() || AlfrescoTransactionSupport.getResource(USER_AUTHORITIES_CLEARED_RESOURCE) != null)
+        {
+            return false;
+        }
+        Set<String> updatedUsers = TransactionalResourceHelper.getSet(UPDATED_USER_AUTHORITIES_SET_RESOURCE);
+        updatedUsers.addAll(users);
+        if (updatedUsers.size() <= userAuthorityUpdateLimit)
+        {
+            return true;
+        }
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Too many users to update their cached authorities; clearing the cache: \n" +
+                    "   users: " + updatedUsers.size() + "\n" +
+                    "   limit: " + userAuthorityUpdateLimit);
+        }
+        userAuthorityCache.clear();
+        AlfrescoTransactionSupport.bindResource(USER_AUTHORITIES_CLEARED_RESOURCE, Boolean.TRUE);
+        updatedUsers.clear();
+        return false;
+    }
+
+    /**
+     * @return              Returns the user names of the member, if it is a user, or of the users within it.  These
+     *                      are the keys of the users' cached authorities.
+     */
+    private Set<String> getUsersWithin(ChildAssociationRef childAssocRef)
+    {
+        String memberName = childAssocRef.getQName().getLocalName();
+        if (AuthorityType.getAuthorityType(memberName) == AuthorityType.USER)
+        {
+            // The association name keeps the case the user was added with, which need not match the cache key
+            return Collections.singleton(getUserName(memberName, childAssocRef.getChildRef()));
+        }
+        return new HashSet<String>(authorityClosureDAO.getContainedUserNames(childAssocRef.getChildRef()));
+    }
+
+    /**
+     * @return              the user name held by the person, which is the key of the user's cached authorities
+     */
+    private String getUserName(String authorityName, NodeRef personRef)
+    {
+        String userName = (String) nodeService.getProperty(personRef, ContentModel.PROP_USERNAME);
+        return userName == null ? authorityName : userName;
+    }
+
     @Override
     public Set<String> getContainingAuthorities(AuthorityType type, String name, boolean immediate)
     {
@@ -868,9 +970,10 @@ public class AuthorityDAOImpl implements AuthorityDAO, NodeServicePolicies.Befor
             // Get the unfiltered set of authorities from the cache or generate it
             Set<String> authorities = userAuthorityCache.get(name);
             // if not in the cache, normalize the user name and try again
+            NodeRef personRef = null;
             if (authorities == null)
             {
-            	NodeRef personRef = getAuthorityOrNull(name);
+            	personRef = getAuthorityOrNull(name);
             	if (personRef == null)
             	{
             		return new TreeSet<String>(); // don't worry about missing person nodes. Just return an empty set
@@ -881,9 +984,13 @@ public class AuthorityDAOImpl implements AuthorityDAO, NodeServicePolicies.Befor
             if (authorities == null)
             {
                 authorities = new TreeSet<String>();
-                if(useBridgeTable)
+                if (useBridgeTable && AlfrescoTransactionSupport.getResource(CLOSURE_OUT_OF_STEP_RESOURCE) == null)
                 {
-                    listAuthoritiesByBridgeTable(authorities, name);
+                    // The closure is kept up to date within the transaction that changes the groups
+                    for (String authority : authorityClosureDAO.getContainingAuthorityNames(personRef))
+                    {
+                        authorities.add(getPooledName(authority));
+                    }
                 }
                 else
                 {
@@ -1664,6 +1771,11 @@ public class AuthorityDAOImpl implements AuthorityDAO, NodeServicePolicies.Befor
         // Listen out for updates to persons and authority containers to handle renames
         this.policyComponent.bindClassBehaviour(QName.createQName(NamespaceService.ALFRESCO_URI, "onUpdateProperties"), ContentModel.TYPE_AUTHORITY, new JavaBehaviour(
                 this, "onUpdateProperties"));
+        // Listen out for changes to membership, however they are made, to keep the authority closure up to date
+        this.policyComponent.bindAssociationBehaviour(QName.createQName(NamespaceService.ALFRESCO_URI, "onCreateChildAssociation"), ContentModel.TYPE_AUTHORITY_CONTAINER,
+                ContentModel.ASSOC_MEMBER, new JavaBehaviour(this, "onCreateChildAssociation"));
+        this.policyComponent.bindAssociationBehaviour(QName.createQName(NamespaceService.ALFRESCO_URI, "beforeDeleteChildAssociation"), ContentModel.TYPE_AUTHORITY_CONTAINER,
+                ContentModel.ASSOC_MEMBER, new JavaBehaviour(this, "beforeDeleteChildAssociation"));
     }
     
     /**
@@ -1769,28 +1881,12 @@ public class AuthorityDAOImpl implements AuthorityDAO, NodeServicePolicies.Befor
         }
     }
 
-    @Override
-    public void onRefreshableCacheEvent(RefreshableCacheEvent refreshableCacheEvent)
-    {
-        if(logger.isDebugEnabled())
-        {
-            logger.debug("Bridge Table cache triggering userAuthorityCache.clear()");
-        }
-        userAuthorityCache.clear();
-    }
-
-    @Override
-    public String getCacheId()
-    {
-        return AuthorityDAOImpl.class.getName();
-    }
-
     @Override
     public void afterPropertiesSet() throws Exception
     {
         PropertyCheck.mandatory(this, "aclDao", aclDao);
-        PropertyCheck.mandatory(this, "authorityBridgeDAO", authorityBridgeDAO);
         PropertyCheck.mandatory(this, "authorityBridgeTableCache", authorityBridgeTableCache);
+        PropertyCheck.mandatory(this, "authorityClosureDAO", authorityClosureDAO);
         PropertyCheck.mandatory(this, "authorityLookupCache", authorityLookupCache);
         PropertyCheck.mandatory(this, "cannedQueryRegistry", cannedQueryRegistry);
         PropertyCheck.mandatory(this, "childAuthorityCache", childAuthorityCache);
@@ -1806,7 +1902,5 @@ public class AuthorityDAOImpl implements AuthorityDAO, NodeServicePolicies.Befor
         PropertyCheck.mandatory(this, "zoneAuthorityCache", zoneAuthorityCache);
         PropertyCheck.mandatory(this, "storeRef", storeRef);
         PropertyCheck.mandatory(this, "storeRef", storeRef);
-        authorityBridgeTableCache.register(this);
-        
     };
 }
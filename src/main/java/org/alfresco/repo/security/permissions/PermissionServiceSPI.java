@@ -25,6 +25,8 @@
  */
 package org.alfresco.repo.security.permissions;
 
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.Set;
 
 import org.alfresco.service.cmr.repository.NodeRef;
@@ -84,6 +86,54 @@ public interface PermissionServiceSPI extends PermissionService
      */
     public AccessStatus hasPermission(NodeRef nodeRef, PermissionReference perm);
 
+    /**
+     * Check a permission for a batch of nodes, as {@link #hasPermission(NodeRef, String)} does for
+     * each node.  Implementations may evaluate the nodes that share an ACL together, so that each
+     * distinct ACL is evaluated once for the batch rather than once for each node.  By default each
+     * node is checked on its own.
+     * 
+     * @param nodeRefs the nodes to check
+     * @param perm the permission
+     * @return the nodes of the batch for which the permission is not denied
+     * 
+     * @since 7.110
+     */
+    public default Set<NodeRef> getPermittedNodes(Collection<NodeRef> nodeRefs, String perm)
+    {
+        Set<NodeRef> permitted = new HashSet<NodeRef>(nodeRefs.size() * 2);
+        for (NodeRef nodeRef : nodeRefs)
+        {
+            if (hasPermission(nodeRef, perm) != AccessStatus.DENIED)
+            {
+                permitted.add(nodeRef);
+            }
+        }
+        return permitted;
+    }
+
+    /**
+     * Check read permission for a batch of nodes, as {@link #hasReadPermission(NodeRef)} does for
+     * each node.  Implementations may evaluate the readers of each distinct ACL once for the batch.
+     * By default each node is checked on its own.
+     * 
+     * @param nodeRefs the nodes to check
+     * @return the nodes of the batch that can be read
+     * 
+     * @since 7.110
+     */
+    public default Set<NodeRef> getReadableNodes(Collection<NodeRef> nodeRefs)
+    {
+        Set<NodeRef> readable = new HashSet<NodeRef>(nodeRefs.size() * 2);
+        for (NodeRef nodeRef : nodeRefs)
+        {
+            if (hasReadPermission(nodeRef) != AccessStatus.DENIED)
+            {
+                readable.add(nodeRef);
+            }
+        }
+        return readable;
+    }
+
     /**
      * Where is the permission set that controls the behaviour for the given
      * permission for the given authentication to access the specified name.
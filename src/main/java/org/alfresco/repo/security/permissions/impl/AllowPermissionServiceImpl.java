@@ -25,6 +25,10 @@
  */
 package org.alfresco.repo.security.permissions.impl;
 
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
 import org.alfresco.repo.security.permissions.PermissionReference;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.security.AccessStatus;
@@ -47,4 +51,10 @@ public class AllowPermissionServiceImpl extends PermissionServiceImpl
     {
        return AccessStatus.ALLOWED;
     }
+
+    @Override
+    public Set<NodeRef> getPermittedNodes(Collection<NodeRef> nodeRefs, String perm)
+    {
+       return new HashSet<NodeRef>(nodeRefs);
+    }
 }
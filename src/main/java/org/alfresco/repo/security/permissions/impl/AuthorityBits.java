@@ -0,0 +1,62 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.security.permissions.impl;
+
+/**
+ * The authorities of a user as a bitset of the ids interned by a {@link CompiledAclEvaluator}.
+ * <p>
+ * The user's own authorities are held as words, shared with the evaluator's per-transaction copy.
+ * Dynamic authorities such as <b>ROLE_OWNER</b>, which depend on the node, are held alongside.
+ *
+ * @since 7.110
+ */
+final class AuthorityBits
+{
+    private static final int[] NO_IDS = new int[0];
+
+    private final long[] words;
+    private final int[] dynamicIds;
+
+    /**
+     * @param words         the bits of the user's own authorities
+     * @param dynamicIds    the ids of the dynamic authorities of the user, or <tt>null</tt>
+     */
+    AuthorityBits(long[] words, int[] dynamicIds)
+    {
+        this.words = words;
+        this.dynamicIds = dynamicIds == null ? NO_IDS : dynamicIds;
+    }
+
+    long getWord(int index)
+    {
+        return index < words.length ? words[index] : 0L;
+    }
+
+    int[] getDynamicIds()
+    {
+        return dynamicIds;
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.security.permissions.impl;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.alfresco.repo.security.permissions.AccessControlEntry;
+import org.alfresco.repo.security.permissions.AccessControlList;
+import org.alfresco.repo.security.permissions.PermissionReference;
+import org.alfresco.service.cmr.security.AccessStatus;
+
+/**
+ * An {@link AccessControlList} compiled for evaluation against bitsets of authorities.
+ * <p>
+ * The entries are held in order with their authorities interned to dense ids by the
+ * {@link CompiledAclEvaluator}.  The authorities that the ACL allows or denies a permission are
+ * worked out the first time that the permission is checked and are kept as {@link Grant grants},
+ * so that later checks are a few word-wise ANDs against the bitset of the user's authorities.
+ * <p>
+ * Compiled ACLs are only meaningful to the evaluator that compiled them, and only while it still
+ * hands out ids from the same generation of its table of authorities.
+ *
+ * @since 7.110
+ */
+public class CompiledAcl
+{
+    private final int[] authorityIds;
+    private final String[] authorities;
+    private final PermissionReference[] permissions;
+    private final boolean[] allowed;
+    private final boolean allPermissionEntries;
+    private final int authorityGeneration;
+    /** Grants keyed by the interned permission and whether <b>All</b> covers it */
+    private final ConcurrentMap<Long, Grant> grants = new ConcurrentHashMap<Long, Grant>();
+
+    /**
+     * @param entries           the entries of the ACL, in order
+     * @param authorityIds      the interned ids of the authorities of the entries
+     * @param allPermissionEntries <tt>true</tt> if any entry is for the <b>All</b> permission
+     * @param authorityGeneration the generation of the table that the authority ids are from
+     */
+    CompiledAcl(List<AccessControlEntry> entries, int[] authorityIds, boolean allPermissionEntries, int authorityGeneration)
+    {
+        int size = entries.size();
+        this.authorityIds = authorityIds;
+        this.authorities = new String[size];
+        this.permissions = new PermissionReference[size];
+        this.allowed = new boolean[size];
+        for (int i = 0; i < size; i++)
+        {
+            AccessControlEntry entry = entries.get(i);
+            authorities[i] = entry.getAuthority();
+            permissions[i] = entry.getPermission();
+            allowed[i] = entry.getAccessStatus() == AccessStatus.ALLOWED;
+        }
+        this.allPermissionEntries = allPermissionEntries;
+        this.authorityGeneration = authorityGeneration;
+    }
+
+    int getAuthorityGeneration()
+    {
+        return authorityGeneration;
+    }
+
+    int size()
+    {
+        return authorities.length;
+    }
+
+    int getAuthorityId(int index)
+    {
+        return authorityIds[index];
+    }
+
+    String getAuthority(int index)
+    {
+        return authorities[index];
+    }
+
+    PermissionReference getPermission(int index)
+    {
+        return permissions[index];
+    }
+
+    boolean isAllowed(int index)
+    {
+        return allowed[index];
+    }
+
+    /**
+     * @return          Returns <tt>true</tt> if the ACL has an entry for the <b>All</b> permission, in which
+     *                  case its grants depend on the permissions available to the node
+     */
+    boolean hasAllPermissionEntries()
+    {
+        return allPermissionEntries;
+    }
+
+    Grant getGrant(Long key)
+    {
+        return grants.get(key);
+    }
+
+    Grant putGrant(Long key, Grant grant)
+    {
+        Grant existing = grants.putIfAbsent(key, grant);
+        return existing == null ? grant : existing;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "CompiledAcl[entries=" + authorities.length + ", grants=" + grants.size() + "]";
+    }
+
+    /**
+     * The authorities to which an ACL grants, and denies, a permission
+     */
+    static final class Grant
+    {
+        private final SparseBits allowed;
+        private final SparseBits denied;
+
+        Grant(BitSet allowed, BitSet denied)
+        {
+            this.allowed = new SparseBits(allowed);
+            this.denied = new SparseBits(denied);
+        }
+
+        /**
+         * @return      Returns <tt>true</tt> if the permission is allowed to any of the authorities
+         */
+        boolean isAllowed(AuthorityBits authorities)
+        {
+            return allowed.intersects(authorities);
+        }
+
+        /**
+         * @return      Returns <tt>true</tt> if the permission is denied to any of the authorities
+         */
+        boolean isDenied(AuthorityBits authorities)
+        {
+            return denied.intersects(authorities);
+        }
+
+        boolean isAllowedToAny()
+        {
+            return !allowed.isEmpty();
+        }
+
+        SparseBits getAllowed()
+        {
+            return allowed;
+        }
+
+        SparseBits getDenied()
+        {
+            return denied;
+        }
+    }
+
+    /**
+     * The non-zero words of a bitset, which keeps the size of a grant down to the number of its
+     * authorities however high their ids
+     */
+    static final class SparseBits
+    {
+        private final int[] wordIndexes;
+        private final long[] words;
+
+        SparseBits(BitSet bits)
+        {
+            long[] all = bits.toLongArray();
+            int count = 0;
+            for (long word : all)
+            {
+                if (word != 0L)
+                {
+                    count++;
+                }
+            }
+            wordIndexes = new int[count];
+            words = new long[count];
+            int next = 0;
+            for (int i = 0; i < all.length; i++)
+            {
+                if (all[i] != 0L)
+                {
+                    wordIndexes[next] = i;
+                    words[next] = all[i];
+                    next++;
+                }
+            }
+        }
+
+        boolean isEmpty()
+        {
+            return words.length == 0;
+        }
+
+        int size()
+        {
+            return words.length;
+        }
+
+        int getWordIndex(int index)
+        {
+            return wordIndexes[index];
+        }
+
+        long getWord(int index)
+        {
+            return words[index];
+        }
+
+        boolean get(int id)
+        {
+            int wordIndex = id >>> 6;
+            for (int i = 0; i < wordIndexes.length; i++)
+            {
+                if (wordIndexes[i] == wordIndex)
+                {
+                    return (words[i] & (1L << id)) != 0L;
+                }
+            }
+            return false;
+        }
+
+        boolean intersects(AuthorityBits authorities)
+        {
+            for (int i = 0; i < words.length; i++)
+            {
+                if ((authorities.getWord(wordIndexes[i]) & words[i]) != 0L)
+                {
+                    return true;
+                }
+            }
+            for (int id : authorities.getDynamicIds())
+            {
+                if (get(id))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,462 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.security.permissions.impl;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.sf.acegisecurity.Authentication;
+
+import org.alfresco.repo.cache.SimpleCache;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.security.permissions.AccessControlEntry;
+import org.alfresco.repo.security.permissions.AccessControlList;
+import org.alfresco.repo.security.permissions.AccessControlListProperties;
+import org.alfresco.repo.security.permissions.PermissionReference;
+import org.alfresco.repo.security.permissions.impl.CompiledAcl.Grant;
+import org.alfresco.repo.security.permissions.impl.CompiledAcl.SparseBits;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport.TxnReadState;
+import org.alfresco.repo.transaction.TransactionalResourceHelper;
+import org.alfresco.service.cmr.security.PermissionContext;
+import org.alfresco.util.Pair;
+
+/**
+ * Evaluates ACL entries for the {@link PermissionServiceImpl} using {@link CompiledAcl compiled ACLs}.
+ * <p>
+ * Authorities are interned to dense ids as ACLs are compiled, and each ACL is compiled once for
+ * each version.  Once the number of interned authorities reaches the limit, the ids are given out
+ * afresh from a new table and the compiled ACLs are cleared; compiled ACLs and users' bitsets that
+ * hold ids from an earlier table are not used again.  The user's own authorities are kept as a
+ * bitset of those ids for the length of a transaction.  The bitset is filled in as ACLs are
+ * checked: the first time an ACL names an authority that has not been looked up yet, the user's
+ * authorities are listed once through
+ * {@link PermissionServiceImpl#getCoreAuthorisations(Authentication)}, and from then on each new
+ * authority is looked up in that set.  A transaction that only meets ACLs already looked up does
+ * not list them again.  The result is the same as walking the entries:
+ * an entry allows the permission to its authority unless an earlier entry denies it and, where any
+ * deny denies, an entry denies the permission unless an earlier entry allows it.
+ *
+ * @since 7.110
+ */
+class CompiledAclEvaluator
+{
+    private static final String KEY_AUTHORITY_BITS = "CompiledAclEvaluator.authorityBits";
+
+    private final PermissionServiceImpl permissionService;
+    private final SimpleCache<Serializable, CompiledAcl> compiledAclCache;
+    private final int maxAuthorities;
+
+    private volatile AuthorityTable authorityTable = new AuthorityTable(0);
+    private final ConcurrentMap<PermissionReference, Integer> permissionIds = new ConcurrentHashMap<PermissionReference, Integer>(128);
+
+    /**
+     * @param permissionService     the service that provides the permission model and the user's authorities
+     * @param compiledAclCache      the cache of compiled ACLs
+     * @param maxAuthorities        the number of interned authorities at which the ids are given out afresh
+     */
+    CompiledAclEvaluator(PermissionServiceImpl permissionService, SimpleCache<Serializable, CompiledAcl> compiledAclCache, int maxAuthorities)
+    {
+        this.permissionService = permissionService;
+        this.compiledAclCache = compiledAclCache;
+        this.maxAuthorities = Math.max(1, maxAuthorities);
+    }
+
+    /**
+     * Forget the authorities of users worked out in the current transaction, e.g. when group
+     * membership changes
+     */
+    static void clearAuthorityBits()
+    {
+        if (AlfrescoTransactionSupport.getTransactionReadState() == TxnReadState.TXN_NONE)
+        {
+            return;
+        }
+        TransactionalResourceHelper.getMap(KEY_AUTHORITY_BITS).clear();
+    }
+
+    /**
+     * Does the ACL allow the permission to any of the authorities?
+     *
+     * @param acl               the ACL to check
+     * @param required          the permission required
+     * @param granters          the permissions that grant the required permission
+     * @param context           the context of the node, used when the ACL has entries for <b>All</b>
+     * @param authorisations    the current user's authorities, including dynamic authorities
+     * @param anyDenyDenies     <tt>true</tt> if a deny for any of the authorities denies the permission
+     * @return                  Returns <tt>true</tt> if the permission is allowed
+     */
+    boolean isAllowed(
+            AccessControlList acl,
+            PermissionReference required,
+            Set<PermissionReference> granters,
+            PermissionContext context,
+            Set<String> authorisations,
+            boolean anyDenyDenies)
+    {
+        AuthorityTable table = getAuthorityTable();
+        CompiledAcl compiledAcl = getCompiledAcl(acl, table);
+        boolean allCoversRequired = compiledAcl.hasAllPermissionEntries() &&
+                permissionService.modelDAO.getAllPermissions(context.getType(), context.getAspects()).contains(required);
+        Grant grant = getGrant(compiledAcl, required, granters, allCoversRequired);
+        if (!grant.isAllowedToAny())
+        {
+            return false;
+        }
+        AuthorityBits authorityBits = getAuthorityBits(grant, authorisations, context, table);
+        if (anyDenyDenies && grant.isDenied(authorityBits))
+        {
+            return false;
+        }
+        return grant.isAllowed(authorityBits);
+    }
+
+    /**
+     * Get the table of interned authorities, starting a new one if the current one is full
+     */
+    private AuthorityTable getAuthorityTable()
+    {
+        AuthorityTable table = authorityTable;
+        if (table.size() < maxAuthorities)
+        {
+            return table;
+        }
+        synchronized (this)
+        {
+            table = authorityTable;
+            if (table.size() >= maxAuthorities)
+            {
+                table = new AuthorityTable(table.generation + 1);
+                authorityTable = table;
+                // The compiled ACLs hold ids from the old table
+                compiledAclCache.clear();
+            }
+        }
+        return table;
+    }
+
+    private CompiledAcl getCompiledAcl(AccessControlList acl, AuthorityTable table)
+    {
+        AccessControlListProperties properties = acl.getProperties();
+        // The ACL cache is keyed by the ACL entity, which is equal for the same ID and version
+        Serializable key = (properties instanceof Serializable)
+                ? (Serializable) properties
+                : new Pair<Long, Long>(properties.getId(), properties.getAclVersion());
+        CompiledAcl compiledAcl = compiledAclCache.get(key);
+        if (compiledAcl == null || compiledAcl.getAuthorityGeneration() != table.generation)
+        {
+            compiledAcl = compile(acl, table);
+            compiledAclCache.put(key, compiledAcl);
+        }
+        return compiledAcl;
+    }
+
+    private CompiledAcl compile(AccessControlList acl, AuthorityTable table)
+    {
+        List<AccessControlEntry> entries = new ArrayList<AccessControlEntry>(acl.getEntries());
+        int[] ids = new int[entries.size()];
+        boolean allPermissionEntries = false;
+        for (int i = 0; i < ids.length; i++)
+        {
+            AccessControlEntry entry = entries.get(i);
+            ids[i] = table.getId(entry.getAuthority());
+            allPermissionEntries |= isAllPermission(entry.getPermission());
+        }
+        return new CompiledAcl(entries, ids, allPermissionEntries, table.generation);
+    }
+
+    private Grant getGrant(CompiledAcl compiledAcl, PermissionReference required, Set<PermissionReference> granters, boolean allCoversRequired)
+    {
+        Long key = (((long) getPermissionId(required)) << 1) | (allCoversRequired ? 1L : 0L);
+        Grant grant = compiledAcl.getGrant(key);
+        if (grant == null)
+        {
+            grant = compiledAcl.putGrant(key, compileGrant(compiledAcl, required, granters, allCoversRequired));
+        }
+        return grant;
+    }
+
+    /**
+     * Walk the entries once, as the {@link PermissionServiceImpl.AclTest} does for each check
+     */
+    private Grant compileGrant(CompiledAcl compiledAcl, PermissionReference required, Set<PermissionReference> granters, boolean allCoversRequired)
+    {
+        BitSet allowed = new BitSet();
+        BitSet denied = new BitSet();
+        Set<String> allowedAuthorities = new HashSet<String>();
+        Set<String> deniedAuthorities = new HashSet<String>();
+        for (int i = 0; i < compiledAcl.size(); i++)
+        {
+            String authority = compiledAcl.getAuthority(i);
+            PermissionReference permission = compiledAcl.getPermission(i);
+            boolean grants = granters.contains(permission);
+            boolean covers = covers(permission, required, allCoversRequired);
+            if (compiledAcl.isAllowed(i))
+            {
+                if (grants && !deniedAuthorities.contains(authority))
+                {
+                    allowed.set(compiledAcl.getAuthorityId(i));
+                }
+                if (covers)
+                {
+                    allowedAuthorities.add(authority);
+                }
+            }
+            else
+            {
+                if (grants && !allowedAuthorities.contains(authority))
+                {
+                    denied.set(compiledAcl.getAuthorityId(i));
+                }
+                if (covers)
+                {
+                    deniedAuthorities.add(authority);
+                }
+            }
+        }
+        return new Grant(allowed, denied);
+    }
+
+    /**
+     * @return          Returns <tt>true</tt> if an entry for the permission also applies to the required
+     *                  permission, so that a deny (or allow) of the permission masks a later allow (or deny)
+     */
+    private boolean covers(PermissionReference permission, PermissionReference required, boolean allCoversRequired)
+    {
+        ModelDAO modelDAO = permissionService.modelDAO;
+        if (permission.equals(required)
+                || modelDAO.getGrantingPermissions(permission).contains(required)
+                || modelDAO.getGranteePermissions(permission).contains(required))
+        {
+            return true;
+        }
+        return allCoversRequired && isAllPermission(permission);
+    }
+
+    private boolean isAllPermission(PermissionReference permission)
+    {
+        return permission.equals(permissionService.getAllPermissionReference())
+                || permission.equals(PermissionServiceImpl.OLD_ALL_PERMISSIONS_REFERENCE);
+    }
+
+    private int getPermissionId(PermissionReference permission)
+    {
+        Integer id = permissionIds.get(permission);
+        if (id == null)
+        {
+            synchronized (permissionIds)
+            {
+                id = permissionIds.get(permission);
+                if (id == null)
+                {
+                    id = permissionIds.size();
+                    permissionIds.put(permission, id);
+                }
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Get the bits of the current user's authorities, having made sure that the user has been asked
+     * about each authority of the grant.  The answers are kept for the rest of the transaction.
+     */
+    private AuthorityBits getAuthorityBits(Grant grant, Set<String> authorisations, PermissionContext context, AuthorityTable table)
+    {
+        String username = AuthenticationUtil.getRunAsUser();
+        Map<String, UserBits> txnUserBits = null;
+        UserBits userBits = null;
+        if (AlfrescoTransactionSupport.getTransactionReadState() != TxnReadState.TXN_NONE)
+        {
+            txnUserBits = TransactionalResourceHelper.getMap(KEY_AUTHORITY_BITS);
+            userBits = txnUserBits.get(username);
+        }
+        if (userBits == null || userBits.generation != table.generation)
+        {
+            userBits = new UserBits(table.generation);
+            if (txnUserBits != null)
+            {
+                txnUserBits.put(username, userBits);
+            }
+        }
+        probe(userBits, grant.getAllowed(), table);
+        probe(userBits, grant.getDenied(), table);
+        return new AuthorityBits(userBits.words, getDynamicAuthorityIds(authorisations, context, table));
+    }
+
+    /**
+     * Look up each of the authorities that has not been looked up yet in the user's authorities,
+     * listing those on first use
+     */
+    private void probe(UserBits userBits, SparseBits bits, AuthorityTable table)
+    {
+        String[] names = null;
+        for (int i = 0; i < bits.size(); i++)
+        {
+            int wordIndex = bits.getWordIndex(i);
+            userBits.ensureCapacity(wordIndex + 1);
+            long unprobed = bits.getWord(i) & ~userBits.probed[wordIndex];
+            if (unprobed == 0L)
+            {
+                continue;
+            }
+            if (names == null)
+            {
+                names = table.authorities;
+            }
+            if (userBits.coreAuthorisations == null)
+            {
+                Authentication auth = AuthenticationUtil.getRunAsAuthentication();
+                userBits.coreAuthorisations = permissionService.getCoreAuthorisations(auth);
+            }
+            for (long remaining = unprobed; remaining != 0L; remaining &= remaining - 1)
+            {
+                int id = (wordIndex << 6) + Long.numberOfTrailingZeros(remaining);
+                if (userBits.coreAuthorisations.contains(names[id]))
+                {
+                    userBits.words[wordIndex] |= 1L << id;
+                }
+            }
+            userBits.probed[wordIndex] |= unprobed;
+        }
+    }
+
+    /**
+     * @return          Returns the ids of the dynamic authorities assigned in the context that the user has
+     */
+    private int[] getDynamicAuthorityIds(Set<String> authorisations, PermissionContext context, AuthorityTable table)
+    {
+        if (context == null || context.getDynamicAuthorityAssignment().isEmpty())
+        {
+            return null;
+        }
+        int[] ids = new int[4];
+        int count = 0;
+        for (Set<String> dynamicAuthorities : context.getDynamicAuthorityAssignment().values())
+        {
+            if (dynamicAuthorities == null)
+            {
+                continue;
+            }
+            for (String dynamicAuthority : dynamicAuthorities)
+            {
+                Integer id = table.authorityIds.get(dynamicAuthority);
+                if (id != null && authorisations.contains(dynamicAuthority))
+                {
+                    if (count == ids.length)
+                    {
+                        ids = Arrays.copyOf(ids, count * 2);
+                    }
+                    ids[count++] = id;
+                }
+            }
+        }
+        return Arrays.copyOf(ids, count);
+    }
+
+    /**
+     * A user's own authorities, for the interned authorities that the user has been asked about
+     */
+    private static class UserBits
+    {
+        private final int generation;
+        private long[] words = new long[0];
+        private long[] probed = new long[0];
+        private Set<String> coreAuthorisations;
+
+        private UserBits(int generation)
+        {
+            this.generation = generation;
+        }
+
+        private void ensureCapacity(int wordCount)
+        {
+            if (words.length < wordCount)
+            {
+                int length = Math.max(wordCount, words.length * 2);
+                words = Arrays.copyOf(words, length);
+                probed = Arrays.copyOf(probed, length);
+            }
+        }
+    }
+
+    /**
+     * Authorities interned to dense ids
+     */
+    private static class AuthorityTable
+    {
+        private final int generation;
+        private final ConcurrentMap<String, Integer> authorityIds = new ConcurrentHashMap<String, Integer>(1024);
+        /** Authorities by id, guarded by this for writes */
+        private volatile String[] authorities = new String[1024];
+        private volatile int authorityCount;
+
+        private AuthorityTable(int generation)
+        {
+            this.generation = generation;
+        }
+
+        private int size()
+        {
+            return authorityCount;
+        }
+
+        private int getId(String authority)
+        {
+            Integer id = authorityIds.get(authority);
+            if (id == null)
+            {
+                synchronized (this)
+                {
+                    id = authorityIds.get(authority);
+                    if (id == null)
+                    {
+                        id = authorityCount;
+                        String[] names = authorities;
+                        if (id == names.length)
+                        {
+                            names = Arrays.copyOf(names, names.length * 2);
+                        }
+                        names[id] = authority;
+                        // Publish the name before the id
+                        authorities = names;
+                        authorityIds.put(authority, id);
+                        authorityCount = id + 1;
+                    }
+                }
+            }
+            return id;
+        }
+    }
+}
@@ -28,8 +28,13 @@ package org.alfresco.repo.security.permissions.impl;
 import static org.apache.commons.lang3.BooleanUtils.toBoolean;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -43,6 +48,7 @@ import org.alfresco.model.ContentModel;
 import org.alfresco.repo.cache.SimpleCache;
 import org.alfresco.repo.domain.permissions.AclDAO;
 import org.alfresco.repo.domain.permissions.FixedAclUpdater;
+import org.alfresco.repo.node.NodeBulkLoader;
 import org.alfresco.repo.policy.ClassPolicyDelegate;
 import org.alfresco.repo.policy.JavaBehaviour;
 import org.alfresco.repo.policy.PolicyComponent;
@@ -166,8 +172,18 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     
     protected FixedAclUpdater fixedAclUpdater;
 
+    protected NodeBulkLoader nodeBulkLoader;
+
     protected boolean anyDenyDenies = false;
 
+    protected SimpleCache<Serializable, CompiledAcl> compiledAclCache;
+
+    protected boolean compileAcls = false;
+
+    protected int compiledAclMaxAuthorities = 100000;
+
+    private volatile CompiledAclEvaluator compiledAclEvaluator;
+
     private final ExtendedTrait<PermissionServiceTrait> permissionServiceTrait;
     
     private ClassPolicyDelegate<OnGrantLocalPermission> onGrantLocalPermissionDelegate;
@@ -299,6 +315,17 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     {
         this.fixedAclUpdater = fixedAclUpdater;
     }
+
+    /**
+     * Set the loader used to load the nodes of a bulk permission check together.  If it is not set
+     * the nodes are loaded one at a time.
+     *
+     * @param nodeBulkLoader NodeBulkLoader
+     */
+    public void setNodeBulkLoader(NodeBulkLoader nodeBulkLoader)
+    {
+        this.nodeBulkLoader = nodeBulkLoader;
+    }
     
     /**
      * Set the permissions access cache.
@@ -327,6 +354,62 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     {
         this.readersDeniedCache = readersDeniedCache;
     }
+
+    /**
+     * Set the cache of compiled ACLs, keyed by ACL ID and version.  The compiled ACLs hold ids that
+     * are only meaningful to this instance, so the cache must not be shared across the cluster.
+     * 
+     * @param compiledAclCache a transactionally safe cache
+     */
+    public void setCompiledAclCache(SimpleCache<Serializable, CompiledAcl> compiledAclCache)
+    {
+        this.compiledAclCache = compiledAclCache;
+    }
+
+    /**
+     * @param compileAcls <tt>true</tt> to evaluate ACLs against compiled bitsets of authorities,
+     *            rather than walking the entries for each check.  The {@link #setCompiledAclCache(SimpleCache) cache}
+     *            must also be set.
+     */
+    public void setCompileAcls(boolean compileAcls)
+    {
+        this.compileAcls = compileAcls;
+    }
+
+    /**
+     * @param compiledAclMaxAuthorities the number of authorities interned for compiled ACLs at which the
+     *            interned ids are given out afresh and the compiled ACLs are cleared, so that the table of
+     *            authorities does not grow without bound
+     */
+    public void setCompiledAclMaxAuthorities(int compiledAclMaxAuthorities)
+    {
+        this.compiledAclMaxAuthorities = compiledAclMaxAuthorities;
+    }
+
+    /**
+     * @return the evaluator of compiled ACLs or <tt>null</tt> if ACLs are not compiled
+     */
+    private CompiledAclEvaluator getCompiledAclEvaluator()
+    {
+        if (!compileAcls || compiledAclCache == null)
+        {
+            return null;
+        }
+        CompiledAclEvaluator evaluator = compiledAclEvaluator;
+        if (evaluator == null)
+        {
+            synchronized (this)
+            {
+                evaluator = compiledAclEvaluator;
+                if (evaluator == null)
+                {
+                    evaluator = new CompiledAclEvaluator(this, compiledAclCache, compiledAclMaxAuthorities);
+                    compiledAclEvaluator = evaluator;
+                }
+            }
+        }
+        return evaluator;
+    }
     
     /**
      * Set the policy component
@@ -362,6 +445,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     public void onCreateChildAssociation(ChildAssociationRef childAssocRef)
     {
         accessCache.clear();
+        CompiledAclEvaluator.clearAuthorityBits();
     }
 
     /**
@@ -372,6 +456,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     public void beforeDeleteChildAssociation(ChildAssociationRef childAssocRef)
     {
         accessCache.clear();
+        CompiledAclEvaluator.clearAuthorityBits();
     }
 
     @Override
@@ -588,19 +673,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
         AccessControlListProperties properties = permissionsDaoComponent.getAccessControlListProperties(nodeRef);
         if ((properties != null) && (properties.getAclType() != null) && (properties.getAclType() != ACLType.OLD))
         {
-            QName typeQname = nodeService.getType(nodeRef);
-            Set<QName> aspectQNames = nodeService.getAspects(nodeRef);
-            PermissionContext context = new PermissionContext(typeQname);
-            context.getAspects().addAll(aspectQNames);
-            Authentication auth = AuthenticationUtil.getRunAsAuthentication();
-            if (auth != null)
-            {
-                String user = AuthenticationUtil.getRunAsUser();
-                for (String dynamicAuthority : getDynamicAuthorities(auth, nodeRef, perm))
-                {
-                    context.addDynamicAuthorityAssignment(user, dynamicAuthority);
-                }
-            }
+            PermissionContext context = getPermissionContext(nodeRef, perm);
             return hasPermission(properties.getId(), context, perm);
         }
 
@@ -675,6 +748,188 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
 
     }
 
+    /**
+     * Get the context in which the ACL of a node is evaluated: the type and aspects of the node and
+     * the dynamic authorities that the current user has for the node
+     */
+    private PermissionContext getPermissionContext(NodeRef nodeRef, PermissionReference perm)
+    {
+        QName typeQname = nodeService.getType(nodeRef);
+        Set<QName> aspectQNames = nodeService.getAspects(nodeRef);
+        PermissionContext context = new PermissionContext(typeQname);
+        context.getAspects().addAll(aspectQNames);
+        Authentication auth = AuthenticationUtil.getRunAsAuthentication();
+        if (auth != null)
+        {
+            String user = AuthenticationUtil.getRunAsUser();
+            for (String dynamicAuthority : getDynamicAuthorities(auth, nodeRef, perm))
+            {
+                context.addDynamicAuthorityAssignment(user, dynamicAuthority);
+            }
+        }
+        return context;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The nodes are loaded together and grouped by ACL.  Nodes with new-style ACLs are evaluated once
+     * for each distinct ACL, type, set of aspects and set of dynamic authorities in the batch, and only
+     * the dynamic authorities that the ACL or the global permissions refer to are resolved for each
+     * node.  Other nodes are checked one at a time.
+     */
+    @Override
+    @Extend(traitAPI = PermissionServiceTrait.class, extensionAPI = PermissionServiceExtension.class)
+    public Set<NodeRef> getPermittedNodes(Collection<NodeRef> nodeRefs, String perm)
+    {
+        Set<NodeRef> permitted = new HashSet<NodeRef>(nodeRefs.size() * 2);
+        PermissionReference permission = getPermissionReference(perm);
+        if (permission == null || AuthenticationUtil.getRunAsUser() == null || AuthenticationUtil.isRunAsUserTheSystemUser())
+        {
+            // There is no evaluation to share between the nodes
+            for (NodeRef nodeRef : nodeRefs)
+            {
+                if (hasPermission(nodeRef, permission) != AccessStatus.DENIED)
+                {
+                    permitted.add(nodeRef);
+                }
+            }
+            return permitted;
+        }
+        PermissionReference required = permission.equals(OLD_ALL_PERMISSIONS_REFERENCE) ? getAllPermissionReference() : permission;
+        String user = AuthenticationUtil.getRunAsUser();
+
+        // Load the nodes together, then group them by ACL
+        List<NodeRef> toLoad = new ArrayList<NodeRef>(nodeRefs.size());
+        for (NodeRef nodeRef : nodeRefs)
+        {
+            if (nodeRef != null && !isVersionNodeRef(nodeRef))
+            {
+                toLoad.add(tenantService.getName(nodeRef));
+            }
+        }
+        if (nodeBulkLoader != null && toLoad.size() > 1)
+        {
+            nodeBulkLoader.cacheNodes(toLoad);
+        }
+        Map<Long, List<NodeRef>> nodeRefsByAcl = new LinkedHashMap<Long, List<NodeRef>>();
+        for (NodeRef nodeRef : nodeRefs)
+        {
+            Long aclId = null;
+            if (nodeRef != null && !isVersionNodeRef(nodeRef) && nodeService.exists(nodeRef))
+            {
+                aclId = nodeService.getNodeAclId(nodeRef);
+            }
+            if (aclId == null)
+            {
+                if (hasPermission(nodeRef, permission) != AccessStatus.DENIED)
+                {
+                    permitted.add(nodeRef);
+                }
+                continue;
+            }
+            List<NodeRef> aclNodeRefs = nodeRefsByAcl.get(aclId);
+            if (aclNodeRefs == null)
+            {
+                aclNodeRefs = new ArrayList<NodeRef>();
+                nodeRefsByAcl.put(aclId, aclNodeRefs);
+            }
+            aclNodeRefs.add(nodeRef);
+        }
+
+        int evaluated = 0;
+        for (Map.Entry<Long, List<NodeRef>> entry : nodeRefsByAcl.entrySet())
+        {
+            AccessControlListProperties properties = aclDaoComponent.getAccessControlListProperties(entry.getKey());
+            if ((properties == null) || (properties.getAclType() == null) || (properties.getAclType() == ACLType.OLD))
+            {
+                for (NodeRef nodeRef : entry.getValue())
+                {
+                    if (hasPermission(nodeRef, permission) != AccessStatus.DENIED)
+                    {
+                        permitted.add(nodeRef);
+                    }
+                }
+                continue;
+            }
+            // Only the dynamic authorities that can make a difference to the ACL are resolved for each node
+            List<DynamicAuthority> aclDynamicAuthorities = getDynamicAuthorities(properties.getId(), required);
+            Map<List<Object>, AccessStatus> statusesByContext = new HashMap<List<Object>, AccessStatus>();
+            for (NodeRef nodeRef : entry.getValue())
+            {
+                NodeRef name = tenantService.getName(nodeRef);
+                PermissionContext context = new PermissionContext(nodeService.getType(name));
+                context.getAspects().addAll(nodeService.getAspects(name));
+                for (DynamicAuthority dynamicAuthority : aclDynamicAuthorities)
+                {
+                    if (dynamicAuthority.hasAuthority(name, user))
+                    {
+                        context.addDynamicAuthorityAssignment(user, dynamicAuthority.getAuthority());
+                    }
+                }
+                List<Object> key = Arrays.<Object>asList(
+                        context.getType(), context.getAspects(), context.getDynamicAuthorityAssignment());
+                AccessStatus status = statusesByContext.get(key);
+                if (status == null)
+                {
+                    status = hasPermission(properties.getId(), context, required);
+                    statusesByContext.put(key, status);
+                }
+                if (status != AccessStatus.DENIED)
+                {
+                    permitted.add(nodeRef);
+                }
+            }
+            evaluated += statusesByContext.size();
+        }
+        if (log.isDebugEnabled())
+        {
+            log.debug("Checked permission in bulk: \n" +
+                    "   permission: " + perm + "\n" +
+                    "   nodes:      " + nodeRefs.size() + "\n" +
+                    "   ACLs:       " + nodeRefsByAcl.size() + "\n" +
+                    "   evaluated:  " + evaluated + "\n" +
+                    "   permitted:  " + permitted.size());
+        }
+        return permitted;
+    }
+
+    /**
+     * Get the dynamic authorities that can change whether an ACL grants a permission: those that are
+     * required for the permission and that the entries of the ACL or the global permissions refer to
+     */
+    private List<DynamicAuthority> getDynamicAuthorities(Long aclId, PermissionReference required)
+    {
+        List<DynamicAuthority> aclDynamicAuthorities = new ArrayList<DynamicAuthority>();
+        if (dynamicAuthorities == null)
+        {
+            return aclDynamicAuthorities;
+        }
+        Set<String> referenced = new HashSet<String>();
+        referenced.add(AuthenticationUtil.getAdminRoleName());
+        AccessControlList acl = aclDaoComponent.getAccessControlList(aclId);
+        if (acl != null)
+        {
+            for (AccessControlEntry ace : acl.getEntries())
+            {
+                referenced.add(ace.getAuthority());
+            }
+        }
+        for (PermissionEntry pe : modelDAO.getGlobalPermissionEntries())
+        {
+            referenced.add(pe.getAuthority());
+        }
+        for (DynamicAuthority dynamicAuthority : dynamicAuthorities)
+        {
+            Set<PermissionReference> requiredFor = dynamicAuthority.requiredFor();
+            if (((requiredFor == null) || requiredFor.contains(required)) && referenced.contains(dynamicAuthority.getAuthority()))
+            {
+                aclDynamicAuthorities.add(dynamicAuthority);
+            }
+        }
+        return aclDynamicAuthorities;
+    }
+
     @Override
     @Extend(traitAPI = PermissionServiceTrait.class, extensionAPI = PermissionServiceExtension.class)
     public AccessStatus hasPermission(Long aclID, PermissionContext context, String permission)
@@ -1271,6 +1526,106 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
             return AccessStatus.ALLOWED;
         }
 
+        if (isForceHasPermission())
+        {
+            return hasPermission(nodeRef, PermissionService.READ);
+        }
+
+        Long aclID = nodeService.getNodeAclId(nodeRef);
+        if(aclID == null)
+        {
+            // ACLID is null - need to call default permissions evaluation
+            // This will end up calling the old-style ACL code that walks up the ACL tree
+            status = hasPermission(nodeRef, getPermissionReference(null, PermissionService.READ));
+        }
+        else
+        {
+            status = (canRead(aclID) == AccessStatus.ALLOWED ||
+                    adminRead() == AccessStatus.ALLOWED ||
+                    ownerRead(runAsUser, nodeRef) == AccessStatus.ALLOWED) ? AccessStatus.ALLOWED : AccessStatus.DENIED;
+        }
+
+        return status;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The readers of each distinct ACL in the batch are checked once.  The ownership of each node is
+     * still checked, for nodes that the ACL does not allow the user to read.
+     */
+    @Override
+    @Extend(traitAPI = PermissionServiceTrait.class, extensionAPI = PermissionServiceExtension.class)
+    public Set<NodeRef> getReadableNodes(Collection<NodeRef> nodeRefs)
+    {
+        String runAsUser = AuthenticationUtil.getRunAsUser();
+        if (runAsUser == null || AuthenticationUtil.isRunAsUserTheSystemUser())
+        {
+            Set<NodeRef> readable = new HashSet<NodeRef>(nodeRefs.size() * 2);
+            for (NodeRef nodeRef : nodeRefs)
+            {
+                if (hasReadPermission(nodeRef) != AccessStatus.DENIED)
+                {
+                    readable.add(nodeRef);
+                }
+            }
+            return readable;
+        }
+        if (isForceHasPermission())
+        {
+            return getPermittedNodes(nodeRefs, PermissionService.READ);
+        }
+
+        Set<NodeRef> readable = new HashSet<NodeRef>(nodeRefs.size() * 2);
+        Boolean adminRead = null;
+        Map<Long, AccessStatus> statusesByAcl = new HashMap<Long, AccessStatus>();
+        for (NodeRef nodeRef : nodeRefs)
+        {
+            if (nodeRef == null || !nodeService.exists(nodeRef))
+            {
+                readable.add(nodeRef);
+                continue;
+            }
+            Long aclID = nodeService.getNodeAclId(nodeRef);
+            if (aclID == null)
+            {
+                if (hasPermission(nodeRef, getPermissionReference(null, PermissionService.READ)) != AccessStatus.DENIED)
+                {
+                    readable.add(nodeRef);
+                }
+                continue;
+            }
+            AccessStatus status = statusesByAcl.get(aclID);
+            if (status == null)
+            {
+                status = canRead(aclID);
+                statusesByAcl.put(aclID, status);
+            }
+            if (status != AccessStatus.ALLOWED)
+            {
+                if (adminRead == null)
+                {
+                    adminRead = (adminRead() == AccessStatus.ALLOWED);
+                }
+                if (adminRead || ownerRead(runAsUser, nodeRef) == AccessStatus.ALLOWED)
+                {
+                    status = AccessStatus.ALLOWED;
+                }
+            }
+            if (status == AccessStatus.ALLOWED)
+            {
+                readable.add(nodeRef);
+            }
+        }
+        return readable;
+    }
+
+    /**
+     * Do dynamic authorities, other than those of the default permission model that grant full control
+     * or read permission, force read permission to be checked in full?
+     */
+    private boolean isForceHasPermission()
+    {
         // any dynamic authorities other than those defined in the default permissions model with full
         // control or read permission force hasPermission check
         Boolean forceHasPermission = (Boolean)AlfrescoTransactionSupport.getResource("forceHasPermission");
@@ -1293,27 +1648,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
             }
             AlfrescoTransactionSupport.bindResource("forceHasPermission", forceHasPermission);            
         }
-
-        if(forceHasPermission == Boolean.TRUE)
-        {
-            return hasPermission(nodeRef, PermissionService.READ);
-        }
-
-        Long aclID = nodeService.getNodeAclId(nodeRef);
-        if(aclID == null)
-        {
-            // ACLID is null - need to call default permissions evaluation
-            // This will end up calling the old-style ACL code that walks up the ACL tree
-            status = hasPermission(nodeRef, getPermissionReference(null, PermissionService.READ));
-        }
-        else
-        {
-            status = (canRead(aclID) == AccessStatus.ALLOWED ||
-                    adminRead() == AccessStatus.ALLOWED ||
-                    ownerRead(runAsUser, nodeRef) == AccessStatus.ALLOWED) ? AccessStatus.ALLOWED : AccessStatus.DENIED;
-        }
-
-        return status;
+        return forceHasPermission == Boolean.TRUE;
     }
 
     protected AccessStatus adminRead()
@@ -1412,7 +1747,8 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
         {
             return Collections.emptySet();
         }
-        Set<String> denied = readersDeniedCache.get(aclId);
+        // Keyed by the ACL properties, as the readers are, so that a new version of the ACL is a new key
+        Set<String> denied = readersDeniedCache.get((Serializable)acl.getProperties());
         if (denied != null)
         {
             return denied;
@@ -2132,6 +2468,12 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
                 return false;
             }
 
+            CompiledAclEvaluator evaluator = getCompiledAclEvaluator();
+            if (evaluator != null)
+            {
+                return evaluator.isAllowed(acl, required, granters, context, authorisations, anyDenyDenies);
+            }
+
             if(anyDenyDenies)
             {
                 Set<Pair<String, PermissionReference>> allowed = new HashSet<Pair<String, PermissionReference>>();
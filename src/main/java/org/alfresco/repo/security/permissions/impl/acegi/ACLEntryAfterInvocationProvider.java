@@ -28,6 +28,7 @@ package org.alfresco.repo.security.permissions.impl.acegi;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -94,6 +95,8 @@ public class ACLEntryAfterInvocationProvider implements AfterInvocationProvider,
     private int maxPermissionChecks;
 
     private long maxPermissionCheckTimeMillis;
+
+    private int bulkPermissionCheckSize = 1000;
     
     private Set<QName> unfilteredForClassQNames = new HashSet<QName>();
     
@@ -193,6 +196,17 @@ public class ACLEntryAfterInvocationProvider implements AfterInvocationProvider,
         this.maxPermissionCheckTimeMillis = maxPermissionCheckTimeMillis;
     }
 
+    /**
+     * Set the largest number of nodes to check together.  Nodes that are checked together are
+     * evaluated once for each distinct ACL.
+     * 
+     * @param bulkPermissionCheckSize int
+     */
+    public void setBulkPermissionCheckSize(int bulkPermissionCheckSize)
+    {
+        this.bulkPermissionCheckSize = bulkPermissionCheckSize;
+    }
+
     /**
      * Types and aspects for which we will abstain on voting if they are present.
      */
@@ -590,6 +604,8 @@ public class ACLEntryAfterInvocationProvider implements AfterInvocationProvider,
         }
 
         FilteringResultSet filteringResultSet = new FilteringResultSet(returnedObject);
+        Map<ConfigAttributeDefintion, BulkPermissionCheck> bulkChecks = null;
+        BulkPermissionCheck bulkReadCheck = null;
 
         // record the start time
         long startTimeMillis = System.currentTimeMillis();
@@ -609,6 +625,22 @@ public class ACLEntryAfterInvocationProvider implements AfterInvocationProvider,
             returnedObject.setBulkFetch(builkFetch);
         }
 
+        // Nodes are checked in batches, in the order of the results
+        List<NodeRef> nodeRefs = new ArrayList<NodeRef>(Math.min(returnedObject.length(), maxChecks));
+        for (int i = 0; i < returnedObject.length() && i < maxChecks; i++)
+        {
+            nodeRefs.add(returnedObject.getNodeRef(i));
+        }
+        long cutOffTimeMillis = getCutOffTimeMillis(startTimeMillis, maxCheckTime);
+        if (supportedDefinitions != null)
+        {
+            bulkChecks = getBulkPermissionChecks(supportedDefinitions, nodeRefs, cutOffTimeMillis);
+        }
+        else
+        {
+            bulkReadCheck = new BulkPermissionCheck(permissionService, null, nodeRefs, bulkPermissionCheckSize, cutOffTimeMillis);
+        }
+
         try
         {
             // Iterate over all the elements.
@@ -657,14 +689,13 @@ public class ACLEntryAfterInvocationProvider implements AfterInvocationProvider,
                         }
 
                         if (filteringResultSet.getIncluded(i) && (testNodeRef != null)
-                                && (permissionService.hasPermission(
-                                        testNodeRef, cad.required.toString()) == AccessStatus.DENIED))
+                                && (bulkChecks.get(cad).hasPermission(testNodeRef) == AccessStatus.DENIED))
                         {
                             filteringResultSet.setIncluded(i, false);
                         }
                     }
                 }
-                else  if (permissionService.hasReadPermission(nodeRef) == AccessStatus.DENIED)
+                else  if (bulkReadCheck.hasPermission(nodeRef) == AccessStatus.DENIED)
                     // If supportedDefinitions is not passed as parameter, permissionService is used to check permission on results.
                 {
                     filteringResultSet.setIncluded(i, false);
@@ -806,6 +837,19 @@ public class ACLEntryAfterInvocationProvider implements AfterInvocationProvider,
         
         // Keep values explicitly
         List<Object> keepValues = new ArrayList<Object>(returnedObject.size());
+
+        // Nodes are checked in batches, in the order of the values
+        List<NodeRef> nodeRefs = new ArrayList<NodeRef>(Math.min(returnedObject.size(), maxPermissionChecks));
+        for (Object value : returnedObject)
+        {
+            if (nodeRefs.size() >= maxPermissionChecks)
+            {
+                break;
+            }
+            nodeRefs.add(getNodeRef(value));
+        }
+        Map<ConfigAttributeDefintion, BulkPermissionCheck> bulkChecks = getBulkPermissionChecks(supportedDefinitions, nodeRefs,
+                getCutOffTimeMillis(startTimeMillis, maxPermissionCheckTimeMillis));
         
         for (Object nextObject : returnedObject)
         {
@@ -917,7 +961,7 @@ public class ACLEntryAfterInvocationProvider implements AfterInvocationProvider,
                     continue;                       // Continue to next ConfigAttributeDefintion
                 }
                 
-                if (allowed && (testNodeRef != null) && (permissionService.hasPermission(testNodeRef, cad.required.toString()) == AccessStatus.DENIED))
+                if (allowed && (testNodeRef != null) && (bulkChecks.get(cad).hasPermission(testNodeRef) == AccessStatus.DENIED))
                 {
                     allowed = false;
                     break;                          // No point evaluating more ConfigAttributeDefintions
@@ -968,6 +1012,14 @@ public class ACLEntryAfterInvocationProvider implements AfterInvocationProvider,
             return returnedObject;
         }
 
+        // Nodes are checked in batches, in the order of the values
+        List<NodeRef> nodeRefs = new ArrayList<NodeRef>(returnedObject.length);
+        for (Object value : returnedObject)
+        {
+            nodeRefs.add(getNodeRef(value));
+        }
+        Map<ConfigAttributeDefintion, BulkPermissionCheck> bulkChecks = getBulkPermissionChecks(supportedDefinitions, nodeRefs, Long.MAX_VALUE);
+
         for (int i = 0, l = returnedObject.length; i < l; i++)
         {
             Object current = returnedObject[i];
@@ -1041,7 +1093,7 @@ public class ACLEntryAfterInvocationProvider implements AfterInvocationProvider,
                     continue;
                 }
                 
-                if (incudedSet.get(i) && (testNodeRef != null) && (permissionService.hasPermission(testNodeRef, cad.required.toString()) == AccessStatus.DENIED))
+                if (incudedSet.get(i) && (testNodeRef != null) && (bulkChecks.get(cad).hasPermission(testNodeRef) == AccessStatus.DENIED))
                 {
                     incudedSet.set(i, false);
                 }
@@ -1064,6 +1116,73 @@ public class ACLEntryAfterInvocationProvider implements AfterInvocationProvider,
         }
     }
 
+    /**
+     * Get a check for each definition, which checks the given nodes in batches if the definition
+     * is for the nodes themselves.  The nodes of parents are checked one at a time.
+     */
+    private Map<ConfigAttributeDefintion, BulkPermissionCheck> getBulkPermissionChecks(List<ConfigAttributeDefintion> supportedDefinitions, List<NodeRef> nodeRefs,
+            long cutOffTimeMillis)
+    {
+        List<NodeRef> checkedNodeRefs = new ArrayList<NodeRef>(nodeRefs.size());
+        for (NodeRef nodeRef : nodeRefs)
+        {
+            if (nodeRef != null)
+            {
+                checkedNodeRefs.add(nodeRef);
+            }
+        }
+        Map<ConfigAttributeDefintion, BulkPermissionCheck> bulkChecks = new HashMap<ConfigAttributeDefintion, BulkPermissionCheck>(supportedDefinitions.size() * 2);
+        for (ConfigAttributeDefintion cad : supportedDefinitions)
+        {
+            List<NodeRef> cadNodeRefs = cad.typeString.equals(AFTER_ACL_NODE) ? checkedNodeRefs : Collections.<NodeRef>emptyList();
+            bulkChecks.put(cad, new BulkPermissionCheck(permissionService, cad.required.toString(), cadNodeRefs, bulkPermissionCheckSize, cutOffTimeMillis));
+        }
+        return bulkChecks;
+    }
+
+    /**
+     * Get the time after which permission checks that started at the given time are cut off
+     */
+    private static long getCutOffTimeMillis(long startTimeMillis, long maxCheckTimeMillis)
+    {
+        if (maxCheckTimeMillis >= Long.MAX_VALUE - startTimeMillis)
+        {
+            return Long.MAX_VALUE;
+        }
+        return startTimeMillis + maxCheckTimeMillis;
+    }
+
+    /**
+     * Get the node of a value that will be checked for {@link #AFTER_ACL_NODE}, if that needs no lookup
+     * 
+     * @return the node or <tt>null</tt>
+     */
+    @SuppressWarnings("rawtypes")
+    private NodeRef getNodeRef(Object value)
+    {
+        if (value instanceof NodeRef)
+        {
+            return (NodeRef) value;
+        }
+        else if (value instanceof ChildAssociationRef)
+        {
+            return ((ChildAssociationRef) value).getChildRef();
+        }
+        else if (value instanceof Pair && ((Pair) value).getSecond() instanceof NodeRef)
+        {
+            return (NodeRef) ((Pair) value).getSecond();
+        }
+        else if (value instanceof PermissionCheckValue)
+        {
+            return ((PermissionCheckValue) value).getNodeRef();
+        }
+        else if (value instanceof AssociationRef)
+        {
+            return ((AssociationRef) value).getTargetRef();
+        }
+        return null;
+    }
+
     public boolean supports(ConfigAttribute attribute)
     {
         if ((attribute.getAttribute() != null) && (attribute.getAttribute().startsWith(AFTER_ACL_NODE) || attribute.getAttribute().startsWith(AFTER_ACL_PARENT)))
@@ -0,0 +1,175 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.security.permissions.impl.acegi;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.alfresco.repo.security.permissions.PermissionServiceSPI;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.security.AccessStatus;
+import org.alfresco.service.cmr.security.PermissionService;
+
+/**
+ * Checks a permission for the nodes of a listing in batches, using the bulk checks of the
+ * {@link PermissionServiceSPI} so that the nodes of a batch that share an ACL are evaluated together.
+ * <p>
+ * The nodes are given up front, in the order in which they will be asked about.  When a node is first
+ * asked about, it is checked along with the nodes that follow it.  The batches start small and double
+ * in size up to the maximum, so that a caller that only needs the first few permitted nodes does not
+ * check the whole listing.  If a cut-off time is given, a batch is no larger than the time left allows
+ * at the rate measured for the earlier batches, and once the time is up the nodes are checked one at a
+ * time, so that the caller's own time limit is not overrun by a whole batch.  Nodes that were not given
+ * up front are checked one at a time, as are all nodes if the permission service has no bulk checks.
+ *
+ * @since 7.110
+ */
+class BulkPermissionCheck
+{
+    private static final int FIRST_BATCH_SIZE = 16;
+
+    private final PermissionService permissionService;
+    private final String permission;
+    private final List<NodeRef> nodeRefs;
+    private final int maxBatchSize;
+    private final long cutOffTimeMillis;
+    private final Set<NodeRef> given;
+    private final Set<NodeRef> unchecked;
+    private final Set<NodeRef> permitted = new HashSet<NodeRef>();
+    private int batchSize;
+    private int next;
+    private int checkedCount;
+    private long checkedMillis;
+
+    /**
+     * @param permissionService     the service to check with
+     * @param permission            the permission to check, or <tt>null</tt> to check read permission as
+     *                              {@link PermissionService#hasReadPermission(NodeRef)} does
+     * @param nodeRefs              the nodes that will be asked about, in order
+     * @param maxBatchSize          the largest number of nodes to check together
+     */
+    BulkPermissionCheck(PermissionService permissionService, String permission, List<NodeRef> nodeRefs, int maxBatchSize)
+    {
+        this(permissionService, permission, nodeRefs, maxBatchSize, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param permissionService     the service to check with
+     * @param permission            the permission to check, or <tt>null</tt> to check read permission as
+     *                              {@link PermissionService#hasReadPermission(NodeRef)} does
+     * @param nodeRefs              the nodes that will be asked about, in order
+     * @param maxBatchSize          the largest number of nodes to check together
+     * @param cutOffTimeMillis      the time after which the caller stops asking, or <tt>Long.MAX_VALUE</tt>
+     */
+    BulkPermissionCheck(PermissionService permissionService, String permission, List<NodeRef> nodeRefs, int maxBatchSize, long cutOffTimeMillis)
+    {
+        this.permissionService = permissionService;
+        this.permission = permission;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.batchSize = Math.min(FIRST_BATCH_SIZE, this.maxBatchSize);
+        this.cutOffTimeMillis = cutOffTimeMillis;
+        if (permissionService instanceof PermissionServiceSPI)
+        {
+            this.nodeRefs = nodeRefs;
+        }
+        else
+        {
+            this.nodeRefs = new ArrayList<NodeRef>(0);
+        }
+        this.given = new HashSet<NodeRef>(this.nodeRefs);
+        this.unchecked = new HashSet<NodeRef>(this.nodeRefs);
+    }
+
+    /**
+     * @return          Returns <tt>DENIED</tt> if the permission is denied for the node, otherwise <tt>ALLOWED</tt>
+     */
+    AccessStatus hasPermission(NodeRef nodeRef)
+    {
+        if (unchecked.contains(nodeRef))
+        {
+            checkUntil(nodeRef);
+        }
+        else if (!given.contains(nodeRef))
+        {
+            AccessStatus status = (permission == null)
+                    ? permissionService.hasReadPermission(nodeRef)
+                    : permissionService.hasPermission(nodeRef, permission);
+            return status == AccessStatus.DENIED ? AccessStatus.DENIED : AccessStatus.ALLOWED;
+        }
+        return permitted.contains(nodeRef) ? AccessStatus.ALLOWED : AccessStatus.DENIED;
+    }
+
+    /**
+     * Check batches of the nodes until the given node has been checked
+     */
+    private void checkUntil(NodeRef nodeRef)
+    {
+        PermissionServiceSPI bulkPermissionService = (PermissionServiceSPI) permissionService;
+        while (unchecked.contains(nodeRef))
+        {
+            long startMillis = System.currentTimeMillis();
+            int end = Math.min(nodeRefs.size(), next + getCheckableSize(startMillis));
+            List<NodeRef> batch = nodeRefs.subList(next, end);
+            Set<NodeRef> batchPermitted = (permission == null)
+                    ? bulkPermissionService.getReadableNodes(batch)
+                    : bulkPermissionService.getPermittedNodes(batch, permission);
+            permitted.addAll(batchPermitted);
+            for (NodeRef checked : batch)
+            {
+                unchecked.remove(checked);
+            }
+            next = end;
+            batchSize = Math.min(maxBatchSize, batchSize * 2);
+            checkedCount += batch.size();
+            checkedMillis += System.currentTimeMillis() - startMillis;
+        }
+    }
+
+    /**
+     * Get the number of nodes to check in the next batch: the batch size, reduced to the number of
+     * nodes that can be checked before the cut-off time at the rate measured so far
+     */
+    private int getCheckableSize(long nowMillis)
+    {
+        if (cutOffTimeMillis == Long.MAX_VALUE)
+        {
+            return batchSize;
+        }
+        long timeLeft = cutOffTimeMillis - nowMillis;
+        if (timeLeft <= 0)
+        {
+            return 1;
+        }
+        if (checkedMillis <= 0)
+        {
+            return batchSize;
+        }
+        double checkable = (double) timeLeft * checkedCount / checkedMillis;
+        return (int) Math.max(1, Math.min(batchSize, checkable));
+    }
+}
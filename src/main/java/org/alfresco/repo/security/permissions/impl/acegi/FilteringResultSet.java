@@ -26,6 +26,7 @@
 package org.alfresco.repo.security.permissions.impl.acegi;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.List;
 import java.util.ListIterator;
@@ -54,6 +55,9 @@ public class FilteringResultSet extends ACLEntryAfterInvocationProvider implemen
 
     private ResultSetMetaData resultSetMetaData;
 
+    /** The underlying positions of the included rows, worked out when first needed */
+    private int[] includedPositions;
+
     public FilteringResultSet(ResultSet unfiltered)
     {
         super();
@@ -76,6 +80,7 @@ public class FilteringResultSet extends ACLEntryAfterInvocationProvider implemen
     public void setIncluded(int i, boolean excluded)
     {
         inclusionMask.set(i, excluded);
+        includedPositions = null;
     }
 
     /* package */boolean getIncluded(int i)
@@ -90,24 +95,26 @@ public class FilteringResultSet extends ACLEntryAfterInvocationProvider implemen
 
     private int translateIndex(int n)
     {
-        if (n > length())
+        // Rows are usually read by index, one after another, so keep the positions rather than
+        // counting through the mask for each row
+        int[] positions = includedPositions;
+        if (positions == null)
         {
-            throw new IndexOutOfBoundsException();
-        }
-        int count = -1;
-        for (int i = 0, l = unfiltered.length(); i < l; i++)
-        {
-            if (inclusionMask.get(i))
-            {
-                count++;
-            }
-            if (count == n)
+            int l = unfiltered.length();
+            int[] found = new int[inclusionMask.cardinality()];
+            int count = 0;
+            for (int i = inclusionMask.nextSetBit(0); i >= 0 && i < l; i = inclusionMask.nextSetBit(i + 1))
             {
-                return i;
+                found[count++] = i;
             }
-
+            positions = (count == found.length) ? found : Arrays.copyOf(found, count);
+            includedPositions = positions;
+        }
+        if (n < 0 || n >= positions.length)
+        {
+            throw new IndexOutOfBoundsException();
         }
-        throw new IndexOutOfBoundsException();
+        return positions[n];
     }
 
     public NodeRef getNodeRef(int n)
@@ -25,6 +25,7 @@
  */
 package org.alfresco.repo.security.permissions.noop;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
@@ -218,6 +219,18 @@ public class PermissionServiceNOOPImpl implements PermissionServiceSPI
         return AccessStatus.ALLOWED;
     }
 
+    @Override
+    public Set<NodeRef> getPermittedNodes(Collection<NodeRef> nodeRefs, String perm)
+    {
+        return new HashSet<NodeRef>(nodeRefs);
+    }
+
+    @Override
+    public Set<NodeRef> getReadableNodes(Collection<NodeRef> nodeRefs)
+    {
+        return new HashSet<NodeRef>(nodeRefs);
+    }
+
     @Override
     public Set<String> getReaders(Long aclId)
     {
@@ -70,6 +70,21 @@ public interface SOLRTrackingComponent
      */
     public List<AclReaders> getAclsReaders(List<Long> aclIds);
     
+    /**
+     * Stream the ACL readers for the ACLs used by nodes in a range of ACL IDs, in ACL ID order.  This
+     * is intended for rebuilding the index, where the ACLs are visited in ranges rather than by ACL
+     * changeset.  The readers of each batch of ACLs are computed together.  The shared ACLs that the
+     * ACLs of a batch inherit from are given along with the batch, even if they are outside the range.
+     * 
+     * @param minAclId                  the minimum ACL ID - (inclusive and optional)
+     * @param maxAclId                  the maximum ACL ID - (exclusive and optional)
+     * @param maxResults                limit the number of ACLs in the range. 0 or Integer.MAX_VALUE does not limit the results
+     * @param callback                  a callback to receive the results
+     * 
+     * @since 7.110
+     */
+    public void getAclsReaders(Long minAclId, Long maxAclId, int maxResults, AclReadersQueryCallback callback);
+    
     /**
      * Get the transactions from either minTxnId or fromCommitTime, optionally limited to maxResults
      * 
@@ -144,6 +159,20 @@ public interface SOLRTrackingComponent
         boolean handleNodeMetaData(NodeMetaData nodeMetaData);
     }
 
+    /**
+     * The interface that will be used to give query results to the calling code.
+     */
+    public interface AclReadersQueryCallback
+    {
+        /**
+         * Handle the readers of an ACL.
+         * 
+         * @param aclReaders                the ACL readers
+         * @return                          Return <tt>true</tt> to continue processing rows or <tt>false</tt> to stop
+         */
+        boolean handleAclReaders(AclReaders aclReaders);
+    }
+
     /**
      * @return boolean
      */
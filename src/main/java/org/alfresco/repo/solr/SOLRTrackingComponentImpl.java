@@ -88,6 +88,9 @@ import org.alfresco.util.PropertyCheck;
  */
 public class SOLRTrackingComponentImpl implements SOLRTrackingComponent
 {
+    /** The number of ACLs whose readers are computed together when streaming a range of ACLs */
+    private static final int ACL_READERS_BATCH_SIZE = 512;
+
     private NodeDAO nodeDAO;
     private QNameDAO qnameDAO;
     private SOLRDAO solrDAO;
@@ -246,8 +249,10 @@ public class SOLRTrackingComponentImpl implements SOLRTrackingComponent
             aclDAO.setCheckAclConsistency();
 
             /*
-             * This is an N+1 query that should, in theory, make use of cached ACL readers data.
+             * Load the ACLs that are not cached together, so that the readers of each ACL are
+             * computed from the cache rather than with a query per ACL.
              */
+            aclDAO.cacheAccessControlLists(aclIds);
 
             Map<Long, String> aclChangeSetTenant = new HashMap<Long, String>(aclIds.size());
             
@@ -292,6 +297,52 @@ public class SOLRTrackingComponentImpl implements SOLRTrackingComponent
         }
     }
     
+    @Override
+    public void getAclsReaders(Long minAclId, Long maxAclId, int maxResults, AclReadersQueryCallback callback)
+    {
+        if (!enabled)
+        {
+            return;
+        }
+        boolean limited = (maxResults > 0 && maxResults < Integer.MAX_VALUE);
+        int remaining = maxResults;
+        Long fromAclId = minAclId;
+        while (!limited || remaining > 0)
+        {
+            int batchSize = limited ? Math.min(remaining, ACL_READERS_BATCH_SIZE) : ACL_READERS_BATCH_SIZE;
+            List<Acl> acls = solrDAO.getAclsByIdRange(fromAclId, maxAclId, batchSize);
+            if (acls.isEmpty())
+            {
+                return;
+            }
+
+            // Add the shared ACLs that the batch inherits from, as getAcls does
+            Set<Long> aclIds = new TreeSet<Long>();
+            for (Acl acl : acls)
+            {
+                aclIds.add(acl.getId());
+                if (acl.getInheritedId() != null)
+                {
+                    aclIds.add(acl.getInheritedId());
+                }
+            }
+            for (AclReaders aclReaders : getAclsReaders(new ArrayList<Long>(aclIds)))
+            {
+                if (!callback.handleAclReaders(aclReaders))
+                {
+                    return;
+                }
+            }
+
+            if (acls.size() < batchSize)
+            {
+                return;
+            }
+            remaining -= acls.size();
+            fromAclId = acls.get(acls.size() - 1).getId() + 1;
+        }
+    }
+    
     private String getTenant(long aclId, long aclChangeSetId)
     {
         String tenantDomain = getAclTenant(aclId);
@@ -33,7 +33,9 @@ import java.util.Map;
 import org.alfresco.repo.content.ContentLimitProvider;
 import org.alfresco.repo.content.ContentLimitProvider.NoLimitProvider;
 import org.alfresco.repo.content.ContentStore;
+import org.alfresco.repo.content.filestore.DeduplicatingFileContentStore;
 import org.alfresco.repo.content.filestore.FileContentStore;
+import org.alfresco.repo.content.filestore.FileContentSyncer;
 import org.alfresco.repo.content.filestore.FileContentUrlProvider;
 import org.springframework.context.ApplicationContext;
 
@@ -44,6 +46,8 @@ public class TenantRoutingFileContentStore extends AbstractTenantRoutingContentS
 {
     private ContentLimitProvider contentLimitProvider = new NoLimitProvider();
     private FileContentUrlProvider fileContentUrlProvider;
+    private boolean deduplicate;
+    private FileContentSyncer fileContentSyncer;
     
     /**
      * Sets a new {@link ContentLimitProvider} which will provide a maximum filesize for content.
@@ -61,6 +65,23 @@ public class TenantRoutingFileContentStore extends AbstractTenantRoutingContentS
         this.fileContentUrlProvider = fileContentUrlProvider;
     }
     
+    /**
+     * Keep only one copy of identical content using a {@link DeduplicatingFileContentStore}.
+     * Content already in the store remains readable when this is switched on.
+     */
+    public void setDeduplicate(boolean deduplicate)
+    {
+        this.deduplicate = deduplicate;
+    }
+    
+    /**
+     * Sets the {@link FileContentSyncer} that forces the content written to each tenant's store onto disk.
+     */
+    public void setFileContentSyncer(FileContentSyncer fileContentSyncer)
+    {
+        this.fileContentSyncer = fileContentSyncer;
+    }
+    
     protected ContentStore initContentStore(ApplicationContext ctx, String contentRoot)
     {
     	Map<String, Serializable> extendedEventParams = new HashMap<String, Serializable>();
@@ -69,7 +90,9 @@ public class TenantRoutingFileContentStore extends AbstractTenantRoutingContentS
     	    extendedEventParams.put("Tenant", tenantService.getCurrentUserDomain());
     	}
 
-        FileContentStore fileContentStore = new FileContentStore(ctx, new File(contentRoot), extendedEventParams);
+        FileContentStore fileContentStore = deduplicate ?
+                new DeduplicatingFileContentStore(ctx, new File(contentRoot), extendedEventParams) :
+                new FileContentStore(ctx, new File(contentRoot), extendedEventParams);
         
         // Set the content filesize limiter if there is one.
         if (this.contentLimitProvider != null)
@@ -81,6 +104,8 @@ public class TenantRoutingFileContentStore extends AbstractTenantRoutingContentS
         {
             fileContentStore.setFileContentUrlProvider(fileContentUrlProvider);
         }
+        
+        fileContentStore.setFileContentSyncer(fileContentSyncer);
         return fileContentStore;
     }
 }
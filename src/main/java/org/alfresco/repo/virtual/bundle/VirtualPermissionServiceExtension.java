@@ -26,6 +26,8 @@
 
 package org.alfresco.repo.virtual.bundle;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -422,6 +424,35 @@ public class VirtualPermissionServiceExtension extends
         return getTrait().hasReadPermission(nodeRef);
     }
 
+    @Override
+    public Set<NodeRef> getPermittedNodes(Collection<NodeRef> nodeRefs, String perm)
+    {
+        // Actual nodes are checked in bulk, virtual nodes one at a time
+        List<NodeRef> actualNodeRefs = new ArrayList<NodeRef>(nodeRefs.size());
+        Set<NodeRef> permitted = new HashSet<NodeRef>();
+        for (NodeRef nodeRef : nodeRefs)
+        {
+            if (nodeRef == null || Reference.fromNodeRef(nodeRef) == null)
+            {
+                actualNodeRefs.add(nodeRef);
+            }
+            else if (hasPermission(nodeRef,
+                                   perm) != AccessStatus.DENIED)
+            {
+                permitted.add(nodeRef);
+            }
+        }
+        permitted.addAll(getTrait().getPermittedNodes(actualNodeRefs,
+                                                      perm));
+        return permitted;
+    }
+
+    @Override
+    public Set<NodeRef> getReadableNodes(Collection<NodeRef> nodeRefs)
+    {
+        return getTrait().getReadableNodes(nodeRefs);
+    }
+
     @Override
     public Set<String> getReaders(Long aclId)
     {
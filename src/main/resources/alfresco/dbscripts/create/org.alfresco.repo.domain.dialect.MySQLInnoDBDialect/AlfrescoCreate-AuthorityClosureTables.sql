@@ -0,0 +1,81 @@
+--
+-- Title:      Create Authority Closure tables
+-- Database:   MySQL InnoDB
+-- Since:      V7.1 Schema 13004
+--
+-- Please contact support@alfresco.com if you need assistance with the upgrade.
+--
+
+CREATE TABLE alf_authority_closure
+(
+   ancestor_id BIGINT NOT NULL,
+   descendant_id BIGINT NOT NULL,
+   path_count BIGINT NOT NULL,
+   KEY fk_alf_authc_desc (descendant_id),
+   CONSTRAINT fk_alf_authc_anc FOREIGN KEY (ancestor_id) REFERENCES alf_node (id) ON DELETE CASCADE,
+   CONSTRAINT fk_alf_authc_desc FOREIGN KEY (descendant_id) REFERENCES alf_node (id) ON DELETE CASCADE,
+   PRIMARY KEY (ancestor_id, descendant_id)
+) ENGINE=InnoDB;
+
+--
+-- A single row, locked by membership changes before they read the closure, so that changes that could affect
+-- each other's rows are applied one after another
+--
+CREATE TABLE alf_authority_closure_lock
+(
+   id BIGINT NOT NULL,
+   PRIMARY KEY (id)
+) ENGINE=InnoDB;
+INSERT INTO alf_authority_closure_lock (id) VALUES (1);
+
+--
+-- Fill the table from the existing cm:member associations.  Each row counts the member paths from one
+-- authority down to another.  Each path carries the authorities it has visited and is not followed back into
+-- any of them, so a cycle of member associations adds no paths of its own.
+--
+INSERT INTO alf_authority_closure (ancestor_id, descendant_id, path_count)
+WITH RECURSIVE
+   member_assoc (parent_node_id, child_node_id) AS
+   (
+      SELECT
+         ca.parent_node_id, ca.child_node_id
+      FROM
+         alf_child_assoc ca
+         JOIN alf_qname q ON (q.id = ca.type_qname_id)
+         JOIN alf_namespace ns ON (ns.id = q.ns_id)
+      WHERE
+         ns.uri = 'http://www.alfresco.org/model/content/1.0'
+         AND q.local_name = 'member'
+   ),
+   member_path (ancestor_id, descendant_id, visited) AS
+   (
+      SELECT parent_node_id, child_node_id, CAST(CONCAT(',', parent_node_id, ',', child_node_id, ',') AS CHAR(4000)) FROM member_assoc
+      UNION ALL
+      SELECT
+         mp.ancestor_id, ma.child_node_id, CONCAT(mp.visited, ma.child_node_id, ',')
+      FROM
+         member_path mp
+         JOIN member_assoc ma ON (ma.parent_node_id = mp.descendant_id)
+      WHERE
+         LOCATE(CONCAT(',', ma.child_node_id, ','), mp.visited) = 0
+   )
+SELECT
+   ancestor_id, descendant_id, COUNT(*)
+FROM
+   member_path
+WHERE
+   ancestor_id <> descendant_id
+GROUP BY
+   ancestor_id, descendant_id;
+
+--
+-- Record script finish
+--
+DELETE FROM alf_applied_patch WHERE id = 'patch.db-V7.1-authority-closure';
+INSERT INTO alf_applied_patch
+  (id, description, fixes_from_schema, fixes_to_schema, applied_to_schema, target_schema, applied_on_date, applied_to_server, was_executed, succeeded, report)
+  VALUES
+  (
+    'patch.db-V7.1-authority-closure', 'Manually executed script upgrade V7.1: Authority Closure Tables',
+    0, 13003, -1, 13004, null, 'UNKNOWN', ${TRUE}, ${TRUE}, 'Script completed'
+  );
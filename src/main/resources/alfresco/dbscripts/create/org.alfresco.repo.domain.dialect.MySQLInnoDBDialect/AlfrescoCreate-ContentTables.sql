@@ -36,6 +36,7 @@ CREATE TABLE alf_content_url
    content_url_crc BIGINT NOT NULL,
    content_size BIGINT NOT NULL,
    orphan_time BIGINT NULL,
+   content_digest VARCHAR(160) NULL,
    UNIQUE INDEX idx_alf_conturl_cr (content_url_short, content_url_crc),
    INDEX idx_alf_conturl_ot (orphan_time),
    INDEX idx_alf_conturl_sz (content_size),
@@ -39,6 +39,7 @@ CREATE TABLE alf_content_url
    content_url_crc INT8 NOT NULL,
    content_size INT8 NOT NULL,
    orphan_time INT8 NULL,
+   content_digest VARCHAR(160) NULL,
    PRIMARY KEY (id)
 );
 CREATE UNIQUE INDEX idx_alf_conturl_cr ON alf_content_url (content_url_short, content_url_crc);
@@ -0,0 +1,27 @@
+--
+-- Title:      Create Inline Content tables
+-- Database:   PostgreSQL
+-- Since:      V7.1 Schema 13003
+--
+-- Please contact support@alfresco.com if you need assistance with the upgrade.
+--
+
+CREATE TABLE alf_content_url_inline
+(
+   content_url_id INT8 NOT NULL,
+   content_bytes BYTEA NOT NULL,
+   CONSTRAINT fk_alf_cont_inl_url FOREIGN KEY (content_url_id) REFERENCES alf_content_url (id) ON DELETE CASCADE,
+   PRIMARY KEY (content_url_id)
+);
+
+--
+-- Record script finish
+--
+DELETE FROM alf_applied_patch WHERE id = 'patch.db-V7.1-content-url-inline';
+INSERT INTO alf_applied_patch
+  (id, description, fixes_from_schema, fixes_to_schema, applied_to_schema, target_schema, applied_on_date, applied_to_server, was_executed, succeeded, report)
+  VALUES
+  (
+    'patch.db-V7.1-content-url-inline', 'Manually executed script upgrade V7.1: Inline Content Tables',
+    0, 13002, -1, 13003, null, 'UNKNOWN', ${TRUE}, ${TRUE}, 'Script completed'
+  );
@@ -0,0 +1,21 @@
+--
+-- Title:      Add the content digest to alf_content_url
+-- Database:   Generic
+-- Since:      V7.1 Schema 13002
+--
+-- Please contact support@alfresco.com if you need assistance with the upgrade.
+--
+
+ALTER TABLE alf_content_url ADD COLUMN content_digest VARCHAR(160) NULL;
+
+--
+-- Record script finish
+--
+DELETE FROM alf_applied_patch WHERE id = 'patch.db-V7.1-content-url-digest';
+INSERT INTO alf_applied_patch
+  (id, description, fixes_from_schema, fixes_to_schema, applied_to_schema, target_schema, applied_on_date, applied_to_server, was_executed, succeeded, report)
+  VALUES
+  (
+    'patch.db-V7.1-content-url-digest', 'Manually executed script upgrade V7.1: Add content digest column',
+    0, 13001, -1, 13002, null, 'UNKNOWN', ${TRUE}, ${TRUE}, 'Script completed'
+  );
\ No newline at end of file
@@ -45,9 +45,14 @@ import org.junit.runners.Suite;
     org.alfresco.filesys.repo.rules.ShuffleTest.class,
     org.alfresco.repo.admin.Log4JHierarchyInitTest.class,
     org.alfresco.repo.attributes.PropTablesCleanupJobTest.class,
+    org.alfresco.repo.cache.DefaultCacheEntrySizeEstimatorTest.class,
     org.alfresco.repo.cache.DefaultCacheFactoryTest.class,
     org.alfresco.repo.cache.DefaultSimpleCacheTest.class,
+    org.alfresco.repo.cache.OffHeapSimpleCacheTest.class,
+    org.alfresco.repo.cache.TenantPartitionedSimpleCacheTest.class,
+    org.alfresco.repo.cache.TinyLfuSimpleCacheTest.class,
     org.alfresco.repo.cache.lookup.EntityLookupCacheTest.class,
+    org.alfresco.repo.cache.snapshot.CacheKeySnapshotTest.class,
     org.alfresco.repo.calendar.CalendarHelpersTest.class,
     org.alfresco.repo.dictionary.RepoDictionaryDAOTest.class,
     org.alfresco.repo.forms.processor.node.FieldProcessorTest.class,
@@ -158,6 +163,13 @@ import org.junit.runners.Suite;
     org.alfresco.repo.audit.AuditableAnnotationTest.class,
     org.alfresco.repo.audit.PropertyAuditFilterTest.class,
     org.alfresco.repo.content.filestore.SpoofedTextContentReaderTest.class,
+    org.alfresco.repo.content.filestore.DeduplicatingFileContentStoreTest.class,
+    org.alfresco.repo.content.filestore.TieredFileContentStoreTest.class,
+    org.alfresco.repo.content.filestore.FileContentSyncerTest.class,
+    org.alfresco.repo.content.ContentReaderTransferTest.class,
+    org.alfresco.repo.content.InlineContentWriterTest.class,
+    org.alfresco.repo.content.ContentDigesterTest.class,
+    org.alfresco.repo.content.replication.AggregatingContentStoreHedgedReadTest.class,
     org.alfresco.repo.content.ContentDataTest.class,
     org.alfresco.service.cmr.repository.TransformationOptionLimitsTest.class,
     org.alfresco.service.cmr.repository.TransformationOptionPairTest.class,
@@ -168,7 +180,10 @@ import org.junit.runners.Suite;
     org.alfresco.repo.content.caching.quota.UnlimitedQuotaStrategyTest.class,
     org.alfresco.repo.content.caching.CachingContentStoreTest.class,
     org.alfresco.repo.content.caching.ContentCacheImplTest.class,
+    org.alfresco.repo.content.caching.BlockCachingContentReaderTest.class,
     org.alfresco.repo.domain.propval.PropertyTypeConverterTest.class,
+    org.alfresco.repo.domain.propval.CompactSerializableCodecTest.class,
+    org.alfresco.repo.domain.node.NodeCacheValueSerializerTest.class,
     org.alfresco.repo.search.MLAnaysisModeExpansionTest.class,
     org.alfresco.repo.search.DocumentNavigatorTest.class,
     org.alfresco.util.NumericEncodingTest.class,
@@ -178,6 +193,9 @@ import org.junit.runners.Suite;
     org.alfresco.repo.security.authentication.AlfrescoSSLSocketFactoryTest.class,
     org.alfresco.repo.security.authentication.AuthorizationTest.class,
     org.alfresco.repo.security.permissions.impl.acegi.FilteringResultSetTest.class,
+    org.alfresco.repo.security.permissions.impl.acegi.BulkPermissionCheckTest.class,
+    org.alfresco.repo.security.permissions.impl.CompiledAclEvaluatorTest.class,
+    org.alfresco.repo.security.authority.AuthorityClosureDAOTest.class,
     org.alfresco.repo.security.authentication.ChainingAuthenticationServiceTest.class,
     org.alfresco.repo.security.authentication.NameBasedUserNameGeneratorTest.class,
     org.alfresco.repo.version.common.VersionImplTest.class,
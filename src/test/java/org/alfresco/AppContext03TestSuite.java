@@ -45,6 +45,7 @@ import org.junit.runners.Suite;
 
     org.alfresco.RepositoryStartupTest.class,
     org.alfresco.repo.content.cleanup.ContentStoreCleanerTest.class,
+    org.alfresco.repo.content.verification.ContentStoreVerifierTest.class,
     org.alfresco.repo.content.RoutingContentServiceTest.class,
     org.alfresco.repo.exporter.ExporterComponentTest.class,
 
@@ -92,6 +92,26 @@ public class AbstractCacheFactoryTest
         assertEquals("value", cacheFactory.getProperty("the.cache.name", "nonEmpty", "default"));
     }
 
+    @Test
+    public void bytesPropertyMayHaveUnits()
+    {
+        assertEquals(42L, cacheFactory.getBytesProperty("the.cache.name", "noProperty", 42L));
+        properties.setProperty("the.cache.name.size", "1024");
+        assertEquals(1024L, cacheFactory.getBytesProperty("the.cache.name", "size", 0L));
+        properties.setProperty("the.cache.name.size", "64KB");
+        assertEquals(64L * 1024L, cacheFactory.getBytesProperty("the.cache.name", "size", 0L));
+        properties.setProperty("the.cache.name.size", "512MB");
+        assertEquals(512L * 1024L * 1024L, cacheFactory.getBytesProperty("the.cache.name", "size", 0L));
+        properties.setProperty("the.cache.name.size", " 2g ");
+        assertEquals(2L * 1024L * 1024L * 1024L, cacheFactory.getBytesProperty("the.cache.name", "size", 0L));
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void invalidBytesPropertyIsRejected()
+    {
+        properties.setProperty("the.cache.name.size", "lots");
+        cacheFactory.getBytesProperty("the.cache.name", "size", 0L);
+    }
     
     private static class CacheFactoryTestImpl extends AbstractCacheFactory<Integer, String>
     {
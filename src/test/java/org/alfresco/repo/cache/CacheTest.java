@@ -26,7 +26,11 @@
 package org.alfresco.repo.cache;
 
 import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 import javax.transaction.Status;
 import javax.transaction.UserTransaction;
@@ -157,6 +161,60 @@ public class CacheTest extends TestCase
         assertNull("Non-transactional remove didn't go to backing cache", TransactionalCache.getSharedCacheValue(backingCache, key, null));
     }
     
+    public void testTransactionalCacheGetAll() throws Throwable
+    {
+        TransactionalCache.putSharedCacheValue(backingCache, NEW_GLOBAL_ONE, NEW_GLOBAL_ONE, null);
+        TransactionalCache.putSharedCacheValue(backingCache, NEW_GLOBAL_TWO, NEW_GLOBAL_TWO, null);
+        TransactionalCache.putSharedCacheValue(backingCache, NEW_GLOBAL_THREE, NEW_GLOBAL_THREE, null);
+        
+        // no transaction
+        Map<String, Object> values = transactionalCache.getAll(Arrays.asList(NEW_GLOBAL_ONE, NEW_GLOBAL_TWO, "missing"));
+        assertEquals(2, values.size());
+        assertEquals(NEW_GLOBAL_TWO, values.get(NEW_GLOBAL_TWO));
+        
+        Map<String, Object> entries = new HashMap<String, Object>();
+        entries.put(UPDATE_TXN_THREE, "XXX");
+        entries.put(UPDATE_TXN_FOUR, "YYY");
+        transactionalCache.putAll(entries);
+        assertEquals("Backing cache not used for putAll when no transaction present", "YYY",
+                TransactionalCache.getSharedCacheValue(backingCache, UPDATE_TXN_FOUR, null));
+        
+        TransactionService transactionService = serviceRegistry.getTransactionService();
+        UserTransaction txn = transactionService.getUserTransaction();
+        try
+        {
+            txn.begin();
+            
+            transactionalCache.remove(NEW_GLOBAL_ONE);
+            transactionalCache.put(NEW_GLOBAL_TWO, "ZZZ");
+            transactionalCache.putAll(Collections.<String, Object>singletonMap(UPDATE_TXN_THREE, "XXX-updated"));
+            values = transactionalCache.getAll(Arrays.asList(NEW_GLOBAL_ONE, NEW_GLOBAL_TWO, NEW_GLOBAL_THREE, UPDATE_TXN_THREE));
+            assertFalse("Transactionally removed item returned", values.containsKey(NEW_GLOBAL_ONE));
+            assertEquals("Transactional update not returned", "ZZZ", values.get(NEW_GLOBAL_TWO));
+            assertEquals("Item not read from backing cache", NEW_GLOBAL_THREE, values.get(NEW_GLOBAL_THREE));
+            assertEquals("Transactional putAll not returned", "XXX-updated", values.get(UPDATE_TXN_THREE));
+            assertEquals("Item was put into backing cache", "XXX",
+                    TransactionalCache.getSharedCacheValue(backingCache, UPDATE_TXN_THREE, null));
+            
+            // Change the backing cache and ensure read-committed
+            TransactionalCache.putSharedCacheValue(backingCache, NEW_GLOBAL_THREE, NEW_GLOBAL_THREE + "-updated", null);
+            assertEquals("Read-committed not preserved", NEW_GLOBAL_THREE, transactionalCache.get(NEW_GLOBAL_THREE));
+            
+            txn.commit();
+        }
+        catch (Throwable e)
+        {
+            if (txn.getStatus() == Status.STATUS_ACTIVE)
+            {
+                txn.rollback();
+            }
+            throw e;
+        }
+        assertFalse("Item was not removed from backing cache", backingCache.contains(NEW_GLOBAL_ONE));
+        assertEquals("Item not updated in backing cache", "XXX-updated",
+                TransactionalCache.getSharedCacheValue(backingCache, UPDATE_TXN_THREE, null));
+    }
+    
     private static final String NEW_GLOBAL_ONE = "new_global_one";
     private static final String NEW_GLOBAL_TWO = "new_global_two";
     private static final String NEW_GLOBAL_THREE = "new_global_three";
@@ -1323,6 +1381,73 @@ public class CacheTest extends TestCase
         }
     }
     
+    public void testTransactionalCacheReadOnlyFastPath() throws Throwable
+    {
+        TransactionalCache.putSharedCacheValue(backingCache, "fast-path-1", "v1", null);
+        TransactionalCache.putSharedCacheValue(backingCache, "fast-path-2", "v2", null);
+        
+        RetryingTransactionHelper txnHelper = serviceRegistry.getTransactionService().getRetryingTransactionHelper();
+        // Make sure that there are statistics for the cache
+        txnHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+        {
+            @Override
+            public Void execute() throws Throwable
+            {
+                transactionalCache.get("fast-path-2");
+                return null;
+            }
+        }, false, true);
+        final long fastPathAtStart = cacheStats.count("transactionalCache", OpType.GET_READ_ONLY_FAST_PATH);
+        final long hitsAtStart = cacheStats.count("transactionalCache", OpType.GET_HIT);
+        final long missesAtStart = cacheStats.count("transactionalCache", OpType.GET_MISS);
+        
+        transactionalCache.setReadOnlyFastPath(true);
+        try
+        {
+            // Read-write transactions don't use the fast path
+            txnHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+            {
+                @Override
+                public Void execute() throws Throwable
+                {
+                    assertEquals("v1", transactionalCache.get("fast-path-1"));
+                    TransactionalCache.putSharedCacheValue(backingCache, "fast-path-1", "v1-updated", null);
+                    assertEquals("Read-committed not preserved", "v1", transactionalCache.get("fast-path-1"));
+                    return null;
+                }
+            }, false, true);
+            assertEquals(fastPathAtStart, cacheStats.count("transactionalCache", OpType.GET_READ_ONLY_FAST_PATH));
+            
+            txnHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+            {
+                @Override
+                public Void execute() throws Throwable
+                {
+                    assertEquals("v1-updated", transactionalCache.get("fast-path-1"));
+                    Map<String, Object> values = transactionalCache.getAll(Arrays.asList("fast-path-1", "fast-path-2", "fast-path-miss"));
+                    assertEquals(2, values.size());
+                    // Reads are not repeatable until the transaction writes to the cache
+                    TransactionalCache.putSharedCacheValue(backingCache, "fast-path-1", "v1-fast", null);
+                    assertEquals("v1-fast", transactionalCache.get("fast-path-1"));
+                    
+                    transactionalCache.put("fast-path-3", "v3");
+                    assertEquals("v1-fast", transactionalCache.get("fast-path-1"));
+                    TransactionalCache.putSharedCacheValue(backingCache, "fast-path-1", "v1-after-write", null);
+                    assertEquals("Read-committed not preserved after a write", "v1-fast", transactionalCache.get("fast-path-1"));
+                    return null;
+                }
+            }, true, true);
+            // 1 + 3 + 1 gets took the fast path and were also counted as hits and misses
+            assertEquals(fastPathAtStart + 5, cacheStats.count("transactionalCache", OpType.GET_READ_ONLY_FAST_PATH));
+            assertEquals(hitsAtStart + 1 + 4 + 1, cacheStats.count("transactionalCache", OpType.GET_HIT));
+            assertEquals(missesAtStart + 1, cacheStats.count("transactionalCache", OpType.GET_MISS));
+        }
+        finally
+        {
+            transactionalCache.setReadOnlyFastPath(false);
+        }
+    }
+    
     public void testTransactionalCacheStatsDisabled() throws Throwable
     {
         // add item to global cache
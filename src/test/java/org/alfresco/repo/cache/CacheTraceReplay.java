@@ -0,0 +1,170 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Replays a trace of cache keys against the non-clustered cache implementations and reports
+ * the hit ratio of each, to compare the eviction policies on a given access pattern.
+ * <p>
+ * Each key in the trace is read from the cache and, if it is missing, put into it, as is done
+ * by the DAO caches.  A trace file holds one key per line; blank lines and lines starting with
+ * <tt>#</tt> are ignored.  A trace can be recorded by logging the keys requested from a cache,
+ * e.g. the node IDs passed to the node DAO.  Without a trace file, a synthetic trace is used in
+ * which a skewed working set is interrupted by scans of keys that are used only once.
+ * <p>
+ * Usage:
+ * <pre>
+ *    CacheTraceReplay &lt;maxItems&gt; [&lt;trace file&gt;]
+ * </pre>
+ *
+ * @since 7.110
+ */
+public class CacheTraceReplay
+{
+    private static final int SYNTHETIC_LENGTH = 2000000;
+    private static final int SYNTHETIC_HOT_KEYS = 50000;
+    private static final int SYNTHETIC_SCAN_LENGTH = 100000;
+
+    private final List<String> trace;
+
+    public CacheTraceReplay(List<String> trace)
+    {
+        this.trace = trace;
+    }
+
+    /**
+     * Replay the trace against the cache
+     *
+     * @return the proportion of reads that found an entry
+     */
+    public double replay(SimpleCache<String, String> cache)
+    {
+        long hits = 0L;
+        for (String key : trace)
+        {
+            if (cache.get(key) != null)
+            {
+                hits++;
+            }
+            else
+            {
+                cache.put(key, key);
+            }
+        }
+        return trace.isEmpty() ? 0.0 : (double) hits / trace.size();
+    }
+
+    /**
+     * @return the caches to compare, keyed by the name of their policy
+     */
+    private static Map<String, SimpleCache<String, String>> createCaches(int maxItems)
+    {
+        Map<String, SimpleCache<String, String>> caches = new LinkedHashMap<String, SimpleCache<String, String>>();
+        caches.put("LRU", new DefaultSimpleCache<String, String>(maxItems, true, 0, 0, "replay.lru"));
+        caches.put("TinyLFU", new TinyLfuSimpleCache<String, String>(maxItems, 0, 0, "replay.tinyLfu"));
+        return caches;
+    }
+
+    private static List<String> readTrace(File file) throws IOException
+    {
+        List<String> trace = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+        try
+        {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                line = line.trim();
+                if (line.length() > 0 && !line.startsWith("#"))
+                {
+                    trace.add(line);
+                }
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+        return trace;
+    }
+
+    /**
+     * A working set with a Zipf-like skew, interrupted every so often by a scan
+     */
+    private static List<String> syntheticTrace()
+    {
+        Random random = new Random(42L);
+        List<String> trace = new ArrayList<String>(SYNTHETIC_LENGTH);
+        long scanKey = 0L;
+        while (trace.size() < SYNTHETIC_LENGTH)
+        {
+            for (int i = 0; i < SYNTHETIC_SCAN_LENGTH * 4; i++)
+            {
+                // The square of a uniform value favours the low keys
+                double skewed = random.nextDouble();
+                trace.add("hot-" + (int) (skewed * skewed * SYNTHETIC_HOT_KEYS));
+            }
+            for (int i = 0; i < SYNTHETIC_SCAN_LENGTH; i++)
+            {
+                trace.add("scan-" + scanKey++);
+            }
+        }
+        return trace;
+    }
+
+    public static void main(String ... args) throws Exception
+    {
+        if (args.length < 1 || args.length > 2)
+        {
+            System.out.println("Usage: CacheTraceReplay <maxItems> [<trace file>]");
+            System.exit(1);
+        }
+        int maxItems = Integer.parseInt(args[0]);
+        List<String> trace = (args.length > 1) ? readTrace(new File(args[1])) : syntheticTrace();
+        System.out.println("Replaying " + trace.size() + " keys against caches of " + maxItems + " entries");
+
+        CacheTraceReplay replay = new CacheTraceReplay(trace);
+        for (Map.Entry<String, SimpleCache<String, String>> entry : createCaches(maxItems).entrySet())
+        {
+            long start = System.nanoTime();
+            double hitRatio = replay.replay(entry.getValue());
+            long millis = (System.nanoTime() - start) / 1000000L;
+            System.out.println(String.format("%-10s hit ratio %6.2f%%  (%d ms)", entry.getKey(), hitRatio * 100.0, millis));
+        }
+    }
+}
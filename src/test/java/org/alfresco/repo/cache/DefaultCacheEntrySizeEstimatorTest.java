@@ -0,0 +1,105 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import static org.junit.Assert.*;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.cache.TransactionalCache.ValueHolder;
+import org.alfresco.repo.domain.node.NodeEntity;
+import org.alfresco.repo.domain.node.NodeVersionKey;
+import org.alfresco.service.cmr.repository.MLText;
+import org.alfresco.service.namespace.QName;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link DefaultCacheEntrySizeEstimator} class.
+ */
+public class DefaultCacheEntrySizeEstimatorTest
+{
+    private final DefaultCacheEntrySizeEstimator estimator = new DefaultCacheEntrySizeEstimator();
+
+    @Test
+    public void longerStringsAreLarger()
+    {
+        assertTrue(estimator.estimateSize(1L, "a much longer string value") > estimator.estimateSize(1L, "short"));
+    }
+
+    @Test
+    public void propertiesAreEstimatedByContent()
+    {
+        Map<QName, Serializable> small = new HashMap<QName, Serializable>();
+        small.put(ContentModel.PROP_NAME, "a");
+        Map<QName, Serializable> large = new HashMap<QName, Serializable>(small);
+        MLText title = new MLText();
+        title.addValue(Locale.ENGLISH, "A title that is quite a lot longer than the name");
+        title.addValue(Locale.FRENCH, "Un titre qui est beaucoup plus long que le nom");
+        large.put(ContentModel.PROP_TITLE, title);
+        large.put(ContentModel.PROP_DESCRIPTION, "A description");
+
+        NodeVersionKey key = new NodeVersionKey(1L, 1L);
+        long smallSize = estimator.estimateSize(key, small);
+        long largeSize = estimator.estimateSize(key, large);
+        assertTrue(smallSize > 0);
+        assertTrue(largeSize > smallSize + 2 * 90);
+    }
+
+    @Test
+    public void aspectsAreEstimatedByCount()
+    {
+        Set<QName> aspects = new HashSet<QName>();
+        aspects.add(ContentModel.ASPECT_AUDITABLE);
+        long oneAspect = estimator.estimateSize(1L, aspects);
+        aspects.add(ContentModel.ASPECT_TITLED);
+        assertTrue(estimator.estimateSize(1L, aspects) > oneAspect);
+    }
+
+    @Test
+    public void sharedCacheValuesAreUnwrapped()
+    {
+        NodeEntity node = new NodeEntity();
+        node.setUuid("0c5a4a27-6b5a-4d4c-bf55-8a7b0b1a7e42");
+        long nodeSize = estimator.estimateSize(1L, node);
+        DefaultSimpleCache<Long, ValueHolder<NodeEntity>> sharedCache = new DefaultSimpleCache<Long, ValueHolder<NodeEntity>>();
+        TransactionalCache.putSharedCacheValue(sharedCache, 1L, node, null);
+        long holderSize = estimator.estimateSize(1L, sharedCache.get(1L));
+        assertTrue(nodeSize > 0);
+        assertTrue(holderSize > nodeSize);
+    }
+
+    @Test
+    public void nullsAreCounted()
+    {
+        assertTrue(estimator.estimateSize(1L, null) > 0);
+    }
+}
@@ -62,6 +62,29 @@ public class DefaultCacheFactoryTest
         properties.setProperty("cache.withMaxIdle.maxItems", "0");
         properties.setProperty("cache.withMaxIdle.eviction-policy", "NONE");
         properties.setProperty("cache.withMaxIdle.maxIdleSeconds", "7");
+        // cache.offHeap
+        properties.setProperty("cache.offHeap.maxItems", "4"); // No effect
+        properties.setProperty("cache.offHeap.offHeap.maxBytes", "1048576");
+        properties.setProperty("cache.offHeap.offHeap.segments", "2");
+        properties.setProperty("cache.offHeap.timeToLiveSeconds", "6");
+        // cache.weighed
+        properties.setProperty("cache.weighed.maxItems", "4"); // No effect
+        properties.setProperty("cache.weighed.eviction-policy", "LRU"); // No effect
+        properties.setProperty("cache.weighed.maxBytes", "2MB");
+        properties.setProperty("cache.weighed.maxIdleSeconds", "7");
+        // cache.partitioned
+        properties.setProperty("cache.partitioned.maxItems", "1000");
+        properties.setProperty("cache.partitioned.tenantPartitioned", "true");
+        properties.setProperty("cache.partitioned.tenantPartitioned.minItems", "50");
+        properties.setProperty("cache.partitioned.tenantPartitioned.maxItems", "400");
+        // cache.tinyLfu
+        properties.setProperty("cache.tinyLfu.maxItems", "5000");
+        properties.setProperty("cache.tinyLfu.eviction-policy", "LRU"); // No effect
+        properties.setProperty("cache.tinyLfu.admission", "TinyLFU");
+        properties.setProperty("cache.tinyLfu.timeToLiveSeconds", "6");
+        // cache.unknownAdmission
+        properties.setProperty("cache.unknownAdmission.maxItems", "5000");
+        properties.setProperty("cache.unknownAdmission.admission", "MRU");
         
         cacheFactory.setProperties(properties);
     }
@@ -100,4 +123,52 @@ public class DefaultCacheFactoryTest
         assertEquals(0, cache.getTTLSecs());        
         assertEquals(7, cache.getMaxIdleSecs());        
     }
+    
+    @Test
+    public void canCreateOffHeapCache()
+    {
+        OffHeapSimpleCache<String, String> offHeapCache = (OffHeapSimpleCache<String, String>) cacheFactory.createCache("cache.offHeap");
+        assertEquals("cache.offHeap", offHeapCache.getCacheName());
+        assertEquals(1048576, offHeapCache.getMaxBytes());
+        assertEquals(2, offHeapCache.getSegmentCount());
+        assertEquals(6, offHeapCache.getTTLSecs());
+    }
+    
+    @Test
+    public void canCreateCacheBoundedByEstimatedSize()
+    {
+        cache = (DefaultSimpleCache<String, String>) cacheFactory.createCache("cache.weighed");
+        assertEquals("cache.weighed", cache.getCacheName());
+        assertTrue(cache.isUseMaxBytes());
+        assertFalse(cache.isUseMaxItems());
+        assertEquals(2 * 1024 * 1024, cache.getMaxBytes());
+        assertEquals(7, cache.getMaxIdleSecs());
+    }
+    
+    @Test
+    public void canCreateTenantPartitionedCache()
+    {
+        TenantPartitionedSimpleCache<String, String> partitioned =
+                    (TenantPartitionedSimpleCache<String, String>) cacheFactory.createCache("cache.partitioned");
+        assertEquals("cache.partitioned", partitioned.getCacheName());
+        assertEquals(1000, partitioned.getMaxItems());
+        assertEquals(50, partitioned.getTenantMinItems());
+        assertEquals(400, partitioned.getTenantMaxItems());
+    }
+    
+    @Test
+    public void canCreateTinyLfuCache()
+    {
+        TinyLfuSimpleCache<String, String> tinyLfu =
+                    (TinyLfuSimpleCache<String, String>) cacheFactory.createCache("cache.tinyLfu");
+        assertEquals("cache.tinyLfu", tinyLfu.getCacheName());
+        assertEquals(5000, tinyLfu.getMaxItems());
+        assertEquals(6, tinyLfu.getTTLSecs());
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownAdmissionPolicyIsRejected()
+    {
+        cacheFactory.createCache("cache.unknownAdmission");
+    }
 }
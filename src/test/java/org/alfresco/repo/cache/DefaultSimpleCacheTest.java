@@ -27,6 +27,11 @@ package org.alfresco.repo.cache;
 
 import static org.junit.Assert.*;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
 import org.junit.Test;
 
 /**
@@ -70,6 +75,26 @@ public class DefaultSimpleCacheTest extends SimpleCacheTestBase<DefaultSimpleCac
         assertTrue(cache.isUseMaxItems());
     }
     
+    @Test
+    public void getAllAndPutAll()
+    {
+        Map<Integer, String> entries = new HashMap<Integer, String>();
+        for (int i = 0; i < 50; i++)
+        {
+            entries.put(i, Integer.toString(i));
+        }
+        entries.put(50, null);
+        cache.putAll(entries);
+        assertEquals("7", cache.get(7));
+        assertTrue(cache.contains(50));
+        
+        Map<Integer, String> values = cache.getAll(Arrays.asList(7, 49, 50, 1000));
+        assertEquals(2, values.size());
+        assertEquals("7", values.get(7));
+        assertEquals("49", values.get(49));
+        assertTrue(cache.getAll(Collections.<Integer>emptyList()).isEmpty());
+    }
+    
     @Test
     public void defaultMaxItems()
     {
@@ -188,6 +213,49 @@ public class DefaultSimpleCacheTest extends SimpleCacheTestBase<DefaultSimpleCac
         assertNotEquals("1", cache.get(1));
     }
 
+    @Test
+    public void boundedByEstimatedSize()
+    {
+        DefaultSimpleCache<Integer, String> weighed = new DefaultSimpleCache<Integer, String>(
+                    64 * 1024, new DefaultCacheEntrySizeEstimator(), 0, 0, getClass().getName());
+        assertTrue(weighed.isUseMaxBytes());
+        assertFalse(weighed.isUseMaxItems());
+        assertEquals(64 * 1024, weighed.getMaxBytes());
+        assertEquals(0, weighed.getUsedBytes());
+        
+        weighed.put(1, "1");
+        long oneEntry = weighed.getUsedBytes();
+        assertTrue(oneEntry > 0);
+        // Replacing a value replaces its weight
+        weighed.put(1, "2");
+        assertEquals(oneEntry, weighed.getUsedBytes());
+        weighed.remove(1);
+        assertEquals(0, weighed.getUsedBytes());
+        
+        for (int i = 0; i < 10000; i++)
+        {
+            weighed.put(i, "value-" + i);
+        }
+        assertTrue(weighed.getSize() < 10000);
+        assertTrue(weighed.getUsedBytes() <= weighed.getMaxBytes());
+        assertEquals(10000, weighed.getSize() + weighed.getEvictionCount());
+        assertEquals("value-9999", weighed.get(9999));
+        
+        weighed.clear();
+        assertEquals(0, weighed.getUsedBytes());
+    }
+    
+    @Test
+    public void sizeNotTrackedByDefault()
+    {
+        cache.put(1, "1");
+        assertFalse(cache.isUseMaxBytes());
+        assertEquals(-1, cache.getUsedBytes());
+        assertEquals(-1, cache.getMaxBytes());
+        assertEquals(-1, cache.getEvictionCount());
+        assertEquals(1, cache.getSize());
+    }
+    
     private void sleep(long miliseconds)
     {
         try
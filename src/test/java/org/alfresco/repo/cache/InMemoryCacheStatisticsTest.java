@@ -27,8 +27,11 @@ package org.alfresco.repo.cache;
 
 import static org.junit.Assert.*;
 
+import java.io.Serializable;
+import java.util.Collections;
 import java.util.Map;
 
+import org.alfresco.repo.cache.TenantPartitionedSimpleCache.PartitionStats;
 import org.alfresco.repo.cache.TransactionStats.OpType;
 import org.junit.Before;
 import org.junit.Test;
@@ -229,4 +232,33 @@ public class InMemoryCacheStatisticsTest
         assertEquals(1, snapshot1.get(OpType.GET_HIT).getCount());
         assertEquals(1000, snapshot1.get(OpType.GET_HIT).getTotalTime(), 0.0d);
     }
+
+    @Test
+    public void tenantStatsAreKeptForPartitionedCaches()
+    {
+        TenantPartitionedSimpleCache<Serializable, String> partitioned =
+                    new TenantPartitionedSimpleCache<Serializable, String>(100, 10, 50, "partitioned");
+        partitioned.put(new TransactionalCache.CacheRegionKey("acme.com", 1), "one");
+        partitioned.get(new TransactionalCache.CacheRegionKey("acme.com", 1));
+        partitioned.get(new TransactionalCache.CacheRegionKey("acme.com", 2));
+        cacheStats.registerSizeStats("cache1", partitioned);
+        cacheStats.registerSizeStats("cache2", new DefaultSimpleCache<Serializable, String>(100, "cache2"));
+
+        assertEquals(Collections.singleton("cache1"), cacheStats.tenantPartitionedCacheNames());
+        PartitionStats acme = cacheStats.tenantStats("cache1").get("acme.com");
+        assertEquals(1, acme.getSize());
+        assertEquals(10, acme.getMinItems());
+        assertEquals(50, acme.getMaxItems());
+        assertEquals(1, acme.getHits());
+        assertEquals(1, acme.getMisses());
+        try
+        {
+            cacheStats.tenantStats("cache2");
+            fail("NoStatsForCache should have been thrown.");
+        }
+        catch(NoStatsForCache e)
+        {
+            // Good.
+        }
+    }
 }
@@ -0,0 +1,167 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import static org.junit.Assert.*;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.alfresco.repo.cache.lookup.CacheRegionKey;
+import org.alfresco.repo.cache.lookup.CacheRegionValueKey;
+import org.alfresco.repo.domain.node.NodeVersionKey;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link OffHeapSimpleCache} class.
+ */
+public class OffHeapSimpleCacheTest extends SimpleCacheTestBase<OffHeapSimpleCache<Integer, String>>
+{
+    @Override
+    protected OffHeapSimpleCache<Integer, String> createCache()
+    {
+        return new OffHeapSimpleCache<Integer, String>(1024 * 1024, 4, 0, 0, getClass().getName());
+    }
+
+    @Test
+    public void boundedByBytes()
+    {
+        OffHeapSimpleCache<Long, String> bounded = new OffHeapSimpleCache<Long, String>(4096, 1, 0, 0, getClass().getName());
+        for (long i = 0; i < 1000; i++)
+        {
+            bounded.put(i, "value-" + i);
+        }
+        assertTrue(bounded.getSize() < 1000);
+        assertTrue(bounded.getUsedBytes() <= bounded.getMaxBytes());
+        assertEquals(1000, bounded.getSize() + bounded.getEvictionCount());
+        // The most recent value is always present
+        assertEquals("value-999", bounded.get(999L));
+        assertNull(bounded.get(0L));
+    }
+
+    @Test
+    public void recentlyReadEntriesSurviveScans()
+    {
+        OffHeapSimpleCache<Long, String> bounded = new OffHeapSimpleCache<Long, String>(64 * 1024, 1, 0, 0, getClass().getName());
+        for (long i = 0; i < 10; i++)
+        {
+            bounded.put(i, "hot-" + i);
+        }
+        for (long i = 1000; i < 20000; i++)
+        {
+            bounded.put(i, "scan-" + i);
+            // Keep the hot set in use while scanning
+            assertEquals("hot-" + (i % 10), bounded.get(i % 10));
+        }
+        assertTrue(bounded.getEvictionCount() > 0);
+    }
+
+    @Test
+    public void compactKeyTypes()
+    {
+        OffHeapSimpleCache<Serializable, String> keyed = new OffHeapSimpleCache<Serializable, String>(1024 * 1024, 2, 0, 0, getClass().getName());
+        Serializable[] keys = new Serializable[] {
+                Long.valueOf(17L),
+                "a string key",
+                new CacheRegionKey("DEFAULT", Long.valueOf(17L)),
+                new CacheRegionValueKey("DEFAULT", "workspace://SpacesStore/abc"),
+                new TransactionalCache.CacheRegionKey("tenant.com", new CacheRegionKey("DEFAULT", Long.valueOf(17L))),
+                new NodeVersionKey(17L, 3L),
+                Integer.valueOf(17)
+        };
+        for (int i = 0; i < keys.length; i++)
+        {
+            keyed.put(keys[i], "value-" + i);
+        }
+        for (int i = 0; i < keys.length; i++)
+        {
+            assertEquals("value-" + i, keyed.get(keys[i]));
+        }
+        Collection<Serializable> cachedKeys = keyed.getKeys();
+        assertEquals(keys.length, cachedKeys.size());
+        for (Serializable key : keys)
+        {
+            assertTrue("Missing key: " + key, cachedKeys.contains(key));
+        }
+    }
+
+    @Test
+    public void getAllAndPutAll()
+    {
+        Map<Integer, String> entries = new HashMap<Integer, String>();
+        for (int i = 0; i < 50; i++)
+        {
+            entries.put(i, Integer.toString(i));
+        }
+        entries.put(50, null);
+        cache.putAll(entries);
+        assertEquals("7", cache.get(7));
+        assertTrue(cache.contains(50));
+    
+        Map<Integer, String> values = cache.getAll(Arrays.asList(7, 49, 50, 1000));
+        assertEquals(2, values.size());
+        assertEquals("7", values.get(7));
+        assertEquals("49", values.get(49));
+        assertTrue(cache.getAll(Collections.<Integer>emptyList()).isEmpty());
+    }
+
+    @Test
+    public void nullValues()
+    {
+        cache.put(1, null);
+        assertTrue(cache.contains(1));
+        assertNull(cache.get(1));
+    }
+
+    @Test
+    public void segmentCountIsPowerOfTwo()
+    {
+        cache = new OffHeapSimpleCache<Integer, String>(1024 * 1024, 5, 0, 0, getClass().getName());
+        assertEquals(8, cache.getSegmentCount());
+        assertEquals(1024 * 1024, cache.getMaxBytes());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void noNegativeMaxBytes()
+    {
+        cache = new OffHeapSimpleCache<Integer, String>(-1, 4, 0, 0, getClass().getName());
+    }
+
+    @Test
+    public void cachesCanHaveTTL() throws Exception
+    {
+        cache = new OffHeapSimpleCache<Integer, String>(1024 * 1024, 1, 1, 0, getClass().getName());
+        cache.put(1, "1");
+        assertEquals("1", cache.get(1));
+        Thread.sleep(2500L);
+        assertNull(cache.get(1));
+        assertEquals(0, cache.getSize());
+    }
+}
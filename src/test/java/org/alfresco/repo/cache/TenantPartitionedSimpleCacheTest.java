@@ -0,0 +1,143 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import static org.junit.Assert.*;
+
+import java.io.Serializable;
+import java.util.Map;
+
+import org.alfresco.repo.cache.TenantPartitionedSimpleCache.PartitionStats;
+import org.junit.Test;
+
+/**
+ * Tests for the {@link TenantPartitionedSimpleCache} class.
+ */
+public class TenantPartitionedSimpleCacheTest extends SimpleCacheTestBase<TenantPartitionedSimpleCache<Integer, String>>
+{
+    @Override
+    protected TenantPartitionedSimpleCache<Integer, String> createCache()
+    {
+        return new TenantPartitionedSimpleCache<Integer, String>(100, 10, 0, getClass().getName());
+    }
+
+    private static Serializable tenantKey(String tenantDomain, int key)
+    {
+        return new TransactionalCache.CacheRegionKey(tenantDomain, key);
+    }
+
+    @Test
+    public void busyTenantCannotEvictGuaranteedEntries()
+    {
+        TenantPartitionedSimpleCache<Serializable, String> partitioned =
+                    new TenantPartitionedSimpleCache<Serializable, String>(100, 20, 0, getClass().getName());
+        for (int i = 0; i < 20; i++)
+        {
+            partitioned.put(tenantKey("small.com", i), "small-" + i);
+        }
+        for (int i = 0; i < 1000; i++)
+        {
+            partitioned.put(tenantKey("busy.com", i), "busy-" + i);
+        }
+        assertEquals(100, partitioned.getSize());
+        for (int i = 0; i < 20; i++)
+        {
+            assertEquals("small-" + i, partitioned.get(tenantKey("small.com", i)));
+        }
+        // The busy tenant has the unused capacity and keeps its most recent entries
+        assertEquals("busy-999", partitioned.get(tenantKey("busy.com", 999)));
+        assertNull(partitioned.get(tenantKey("busy.com", 0)));
+        assertEquals(920, partitioned.getEvictionCount());
+
+        Map<String, PartitionStats> stats = partitioned.getPartitionStats();
+        assertEquals(20, stats.get("small.com").getSize());
+        assertEquals(20, stats.get("small.com").getHits());
+        assertEquals(0, stats.get("small.com").getEvictions());
+        assertEquals(80, stats.get("busy.com").getSize());
+        assertEquals(1, stats.get("busy.com").getMisses());
+        assertEquals(0.5, stats.get("busy.com").getHitRatio(), 0.001);
+    }
+
+    @Test
+    public void borrowedCapacityIsReturned()
+    {
+        TenantPartitionedSimpleCache<Serializable, String> partitioned =
+                    new TenantPartitionedSimpleCache<Serializable, String>(100, 20, 0, getClass().getName());
+        for (int i = 0; i < 100; i++)
+        {
+            partitioned.put(i, "default-" + i);
+        }
+        assertEquals(100, partitioned.getPartitionStats().get("").getSize());
+        // A new tenant takes capacity back from the tenant that borrowed it
+        for (int i = 0; i < 50; i++)
+        {
+            partitioned.put(tenantKey("new.com", i), "new-" + i);
+        }
+        Map<String, PartitionStats> stats = partitioned.getPartitionStats();
+        assertEquals(100, partitioned.getSize());
+        assertEquals(50, stats.get("new.com").getSize());
+        assertEquals(50, stats.get("").getSize());
+    }
+
+    @Test
+    public void tenantsAreBounded()
+    {
+        TenantPartitionedSimpleCache<Serializable, String> partitioned =
+                    new TenantPartitionedSimpleCache<Serializable, String>(100, 10, 30, getClass().getName());
+        for (int i = 0; i < 100; i++)
+        {
+            partitioned.put(tenantKey("busy.com", i), "busy-" + i);
+        }
+        assertEquals(30, partitioned.getSize());
+        assertEquals(30, partitioned.getTenantMaxItems());
+        // Recently used entries are kept
+        assertEquals("busy-70", partitioned.get(tenantKey("busy.com", 70)));
+        partitioned.put(tenantKey("busy.com", 100), "busy-100");
+        assertEquals("busy-70", partitioned.get(tenantKey("busy.com", 70)));
+        assertNull(partitioned.get(tenantKey("busy.com", 71)));
+    }
+
+    @Test
+    public void removeAndClearUpdateSize()
+    {
+        cache.put(1, "1");
+        cache.put(2, null);
+        assertTrue(cache.contains(2));
+        assertEquals(2, cache.getSize());
+        cache.remove(1);
+        cache.remove(1);
+        assertEquals(1, cache.getSize());
+        cache.clear();
+        assertEquals(0, cache.getSize());
+        assertTrue(cache.getKeys().isEmpty());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void mustBeBounded()
+    {
+        new TenantPartitionedSimpleCache<Integer, String>(0, 10, 0, getClass().getName());
+    }
+}
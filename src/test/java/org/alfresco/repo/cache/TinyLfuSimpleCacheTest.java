@@ -0,0 +1,143 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests for the {@link TinyLfuSimpleCache} class.
+ */
+public class TinyLfuSimpleCacheTest extends SimpleCacheTestBase<TinyLfuSimpleCache<Integer, String>>
+{
+    @Override
+    protected TinyLfuSimpleCache<Integer, String> createCache()
+    {
+        return new TinyLfuSimpleCache<Integer, String>(100, 0, 0, getClass().getName());
+    }
+
+    @Test
+    public void cacheIsBounded()
+    {
+        for (int i = 0; i < 1000; i++)
+        {
+            cache.put(i, "value-" + i);
+        }
+        assertEquals(100, cache.getSize());
+        assertEquals(100, cache.getKeys().size());
+        assertEquals(900, cache.getEvictionCount());
+    }
+
+    @Test
+    public void frequentlyUsedEntriesSurviveScan()
+    {
+        // Build up a working set that is read repeatedly
+        for (int round = 0; round < 5; round++)
+        {
+            for (int i = 0; i < 50; i++)
+            {
+                if (cache.get(i) == null)
+                {
+                    cache.put(i, "hot-" + i);
+                }
+            }
+        }
+        // A one-off scan of many more keys than the cache holds, while the working set is still in use
+        int hotMisses = 0;
+        for (int i = 1000; i < 11000; i++)
+        {
+            if (cache.get(i) == null)
+            {
+                cache.put(i, "scan-" + i);
+            }
+            if (cache.get(i % 50) == null)
+            {
+                hotMisses++;
+            }
+        }
+        assertEquals(0, hotMisses);
+        for (int i = 0; i < 50; i++)
+        {
+            assertEquals("hot-" + i, cache.get(i));
+        }
+        assertTrue(cache.getRejectionCount() > 0);
+        assertEquals(100, cache.getSize());
+    }
+
+    @Test
+    public void updatesReplaceValues()
+    {
+        cache.put(1, "a");
+        cache.put(1, "b");
+        assertEquals("b", cache.get(1));
+        assertEquals(1, cache.getSize());
+        cache.put(2, null);
+        assertTrue(cache.contains(2));
+        assertNull(cache.get(2));
+    }
+
+    @Test
+    public void entriesExpire() throws Exception
+    {
+        TinyLfuSimpleCache<Integer, String> expiring = new TinyLfuSimpleCache<Integer, String>(100, 1, 0, getClass().getName());
+        expiring.put(1, "a");
+        assertTrue(expiring.contains(1));
+        Thread.sleep(1100);
+        assertFalse(expiring.contains(1));
+        assertNull(expiring.get(1));
+        assertEquals(0, expiring.getSize());
+    }
+
+    @Test
+    public void bulkOperations()
+    {
+        Map<Integer, String> entries = new HashMap<Integer, String>();
+        entries.put(1, "a");
+        entries.put(2, "b");
+        cache.putAll(entries);
+        Map<Integer, String> found = cache.getAll(Arrays.asList(1, 2, 3));
+        assertEquals(entries, found);
+    }
+
+    @Test
+    public void largeCachesAreSegmented()
+    {
+        assertEquals(1, cache.getSegmentCount());
+        TinyLfuSimpleCache<Integer, String> large = new TinyLfuSimpleCache<Integer, String>(250000, 0, 0, getClass().getName());
+        assertEquals(16, large.getSegmentCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacityMustBePositive()
+    {
+        new TinyLfuSimpleCache<Integer, String>(0, 0, 0, getClass().getName());
+    }
+}
@@ -26,6 +26,9 @@
 package org.alfresco.repo.cache.lookup;
 
 import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -34,7 +37,7 @@ import junit.framework.TestCase;
 
 import org.alfresco.repo.cache.MemoryCache;
 import org.alfresco.repo.cache.SimpleCache;
-import org.alfresco.repo.cache.lookup.EntityLookupCache.EntityLookupCallbackDAO;
+import org.alfresco.repo.cache.lookup.EntityLookupCache.EntityLookupBatchCallbackDAO;
 import org.alfresco.repo.domain.control.ControlDAO;
 import org.alfresco.util.EqualsHelper;
 import org.alfresco.util.Pair;
@@ -51,12 +54,13 @@ import org.springframework.dao.DuplicateKeyException;
  * @author Derek Hulley
  * @since 3.2
  */
-public class EntityLookupCacheTest extends TestCase implements EntityLookupCallbackDAO<Long, Object, String>
+public class EntityLookupCacheTest extends TestCase implements EntityLookupBatchCallbackDAO<Long, Object, String>
 {
     SimpleCache<Long, Object> cache;
     private EntityLookupCache<Long, Object, String> entityLookupCacheA;
     private EntityLookupCache<Long, Object, String> entityLookupCacheB;
     private TreeMap<Long, String> database;
+    private List<List<Long>> findByKeysCalls;
     private ControlDAO controlDAO;
 
     @Override
@@ -66,6 +70,7 @@ public class EntityLookupCacheTest extends TestCase implements EntityLookupCallb
         entityLookupCacheA = new EntityLookupCache<Long, Object, String>(cache, "A", this);
         entityLookupCacheB = new EntityLookupCache<Long, Object, String>(cache, "B", this);
         database = new TreeMap<Long, String>();
+        findByKeysCalls = new ArrayList<List<Long>>();
         
         controlDAO = Mockito.mock(ControlDAO.class);
         Mockito.when(controlDAO.createSavepoint(Mockito.anyString())).thenReturn(Mockito.mock(Savepoint.class));
@@ -251,6 +256,36 @@ public class EntityLookupCacheTest extends TestCase implements EntityLookupCallb
         assertEquals(0, cache.getKeys().size());
     }
     
+    public void testGetByKeys() throws Exception
+    {
+        createValue(new TestValue("AAA"));
+        createValue(new TestValue("BBB"));
+        createValue(new TestValue("CCC"));
+        // Have one of them in the cache already
+        assertNotNull(entityLookupCacheA.getByKey(2L));
+        
+        List<Pair<Long, Object>> entityPairs = entityLookupCacheA.getByKeys(Arrays.asList(3L, 2L, 99L, 1L));
+        assertEquals(3, entityPairs.size());
+        assertEquals("Order of keys not kept", Long.valueOf(3L), entityPairs.get(0).getFirst());
+        assertEquals(new TestValue("BBB"), entityPairs.get(1).getSecond());
+        assertEquals("Order of keys not kept", Long.valueOf(1L), entityPairs.get(2).getFirst());
+        assertEquals("Misses must be resolved together", 1, findByKeysCalls.size());
+        assertEquals(Arrays.asList(3L, 99L, 1L), findByKeysCalls.get(0));
+        
+        // All of them are cached now, including the missing entity
+        entityPairs = entityLookupCacheA.getByKeys(Arrays.asList(1L, 2L, 3L, 99L));
+        assertEquals(3, entityPairs.size());
+        assertEquals("Cached entities must not be looked up", 1, findByKeysCalls.size());
+        assertNull(entityLookupCacheA.getByKey(99L));
+        assertEquals(new TestValue("CCC"), entityLookupCacheA.getValues(Arrays.asList(3L, 99L)).get(3L));
+        assertEquals(3, entityLookupCacheA.getValues(Arrays.asList(1L, 2L, 3L, 99L)).size());
+        // Lookups by value use what was cached
+        assertEquals(Long.valueOf(1L), entityLookupCacheA.getKey("AAA"));
+        
+        // Other regions are not affected
+        assertEquals(0, entityLookupCacheB.getValues(Arrays.asList(1L, 2L, 3L)).size());
+    }
+    
     public void testClear() throws Exception
     {
         TestValue valueOne = new TestValue(getName() + "-ONE");
@@ -315,6 +350,23 @@ public class EntityLookupCacheTest extends TestCase implements EntityLookupCallb
         return new Pair<Long, Object>(key, value);
     }
 
+    public List<Pair<Long, Object>> findByKeys(List<Long> keys)
+    {
+        assertFalse(keys.isEmpty());
+        findByKeysCalls.add(new ArrayList<Long>(keys));
+        
+        List<Pair<Long, Object>> entityPairs = new ArrayList<Pair<Long, Object>>(keys.size());
+        for (Long key : keys)
+        {
+            Pair<Long, Object> entityPair = findByKey(key);
+            if (entityPair != null)
+            {
+                entityPairs.add(entityPair);
+            }
+        }
+        return entityPairs;
+    }
+
     public Pair<Long, Object> findByValue(Object value)
     {
         assertTrue(value == null || value instanceof TestValue);
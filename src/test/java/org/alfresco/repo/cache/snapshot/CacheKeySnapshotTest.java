@@ -0,0 +1,348 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache.snapshot;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.repo.cache.DefaultSimpleCache;
+import org.alfresco.repo.cache.SimpleCache;
+import org.alfresco.repo.cache.TransactionalCache;
+import org.alfresco.repo.cache.lookup.CacheRegionKey;
+import org.alfresco.repo.cache.lookup.CacheRegionValueKey;
+import org.alfresco.repo.domain.node.NodeVersionKey;
+import org.alfresco.repo.domain.permissions.AclDAO;
+import org.alfresco.repo.domain.permissions.AclEntity;
+import org.alfresco.repo.node.NodeBulkLoader;
+import org.alfresco.repo.security.authority.AuthorityDAO;
+import org.alfresco.repo.tenant.TenantService;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.cmr.security.PermissionService;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Tests for the {@link CacheKeySnapshot} class and the cache key warmers.
+ */
+public class CacheKeySnapshotTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private RetryingTransactionHelper transactionHelper;
+    private File snapshotFile;
+
+    @SuppressWarnings("unchecked")
+    @Before
+    public void setUp() throws Exception
+    {
+        transactionHelper = mock(RetryingTransactionHelper.class);
+        when(transactionHelper.doInTransaction(any(RetryingTransactionCallback.class), anyBoolean(), anyBoolean())).thenAnswer(new Answer<Object>()
+        {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable
+            {
+                return ((RetryingTransactionCallback<Object>) invocation.getArguments()[0]).execute();
+            }
+        });
+        snapshotFile = new File(folder.getRoot(), "snapshot/cache-keys.snapshot");
+    }
+
+    private CacheKeySnapshot createSnapshot(CacheKeyWarmer... warmers)
+    {
+        CacheKeySnapshot snapshot = new CacheKeySnapshot();
+        snapshot.setEnabled(true);
+        snapshot.setSnapshotFile(snapshotFile.getPath());
+        snapshot.setBatchSize(3);
+        snapshot.setTransactionHelper(transactionHelper);
+        snapshot.setWarmers(Arrays.asList(warmers));
+        return snapshot;
+    }
+
+    private void waitForWarmUp(CacheKeySnapshot snapshot) throws InterruptedException
+    {
+        for (int i = 0; i < 100 && snapshot.getState().equals("WARMING"); i++)
+        {
+            Thread.sleep(50L);
+        }
+        assertEquals("COMPLETE", snapshot.getState());
+    }
+
+    @Test
+    public void saveAndRestore() throws Exception
+    {
+        TestWarmer saved = new TestWarmer("test", Arrays.asList("1", "2", "3", "4", "5", "6", "7"));
+        CacheKeySnapshot snapshot = createSnapshot(saved);
+        assertEquals(-1L, snapshot.getKeysSaved());
+        assertEquals(7L, snapshot.saveSnapshot());
+        assertEquals(7L, snapshot.getKeysSaved());
+        assertTrue(snapshotFile.exists());
+
+        TestWarmer restored = new TestWarmer("test", Collections.<String>emptyList());
+        TestWarmer unknown = new TestWarmer("unknown", Collections.<String>emptyList());
+        snapshot = createSnapshot(unknown, restored);
+        assertEquals(-1L, snapshot.getTimeToWarmMs());
+        snapshot.startWarming(CacheKeySnapshot.readSnapshot(snapshotFile));
+        waitForWarmUp(snapshot);
+
+        assertEquals(Arrays.asList(
+                Arrays.asList("1", "2", "3"),
+                Arrays.asList("4", "5", "6"),
+                Arrays.asList("7")), restored.batches);
+        assertTrue(unknown.batches.isEmpty());
+        assertEquals(7L, snapshot.getKeysToLoad());
+        assertEquals(7L, snapshot.getKeysLoaded());
+        assertEquals(0L, snapshot.getKeysFailed());
+        assertEquals(100, snapshot.getPercentComplete());
+        assertTrue(snapshot.getTimeToWarmMs() >= 0L);
+    }
+
+    @Test
+    public void failedBatchesAreCounted() throws Exception
+    {
+        TestWarmer saved = new TestWarmer("test", Arrays.asList("1", "2", "3", "4"));
+        createSnapshot(saved).saveSnapshot();
+
+        TestWarmer failing = new TestWarmer("test", Collections.<String>emptyList())
+        {
+            @Override
+            public void warmKeys(List<String> keys)
+            {
+                if (keys.contains("1"))
+                {
+                    throw new RuntimeException("Expected failure");
+                }
+                super.warmKeys(keys);
+            }
+        };
+        CacheKeySnapshot snapshot = createSnapshot(failing);
+        snapshot.startWarming(CacheKeySnapshot.readSnapshot(snapshotFile));
+        waitForWarmUp(snapshot);
+
+        assertEquals(Arrays.asList(Arrays.asList("4")), failing.batches);
+        assertEquals(4L, snapshot.getKeysLoaded());
+        assertEquals(3L, snapshot.getKeysFailed());
+    }
+
+    @Test
+    public void stopAfterCompletionKeepsState() throws Exception
+    {
+        TestWarmer saved = new TestWarmer("test", Arrays.asList("1", "2"));
+        createSnapshot(saved).saveSnapshot();
+
+        CacheKeySnapshot snapshot = createSnapshot(new TestWarmer("test", Collections.<String>emptyList()));
+        snapshot.startWarming(CacheKeySnapshot.readSnapshot(snapshotFile));
+        waitForWarmUp(snapshot);
+        snapshot.stopWarming();
+        assertEquals("COMPLETE", snapshot.getState());
+    }
+
+    @Test
+    public void stoppedByWarmingThread() throws Exception
+    {
+        TestWarmer saved = new TestWarmer("test", Arrays.asList("1", "2", "3", "4", "5", "6"));
+        createSnapshot(saved).saveSnapshot();
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        TestWarmer blocking = new TestWarmer("test", Collections.<String>emptyList())
+        {
+            @Override
+            public void warmKeys(List<String> keys)
+            {
+                started.countDown();
+                try
+                {
+                    release.await(10L, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                super.warmKeys(keys);
+            }
+        };
+        CacheKeySnapshot snapshot = createSnapshot(blocking);
+        snapshot.startWarming(CacheKeySnapshot.readSnapshot(snapshotFile));
+        assertTrue(started.await(10L, TimeUnit.SECONDS));
+
+        // The first batch outlasts the wait, so the warm-up is still in progress
+        snapshot.stopWarming();
+        assertEquals("WARMING", snapshot.getState());
+        release.countDown();
+        for (int i = 0; i < 100 && snapshot.getState().equals("WARMING"); i++)
+        {
+            Thread.sleep(50L);
+        }
+        assertEquals("STOPPED", snapshot.getState());
+        assertEquals(1, blocking.batches.size());
+        assertEquals(3L, snapshot.getKeysLoaded());
+    }
+
+    @Test
+    public void nodeKeysAreUnwrapped() throws Exception
+    {
+        SimpleCache<Serializable, Object> nodesCache = new DefaultSimpleCache<Serializable, Object>();
+        nodesCache.put(new CacheRegionKey("DEFAULT", 1L), "node");
+        nodesCache.put(new CacheRegionValueKey("DEFAULT", "value-key"), 1L);
+        nodesCache.put(new TransactionalCache.CacheRegionKey("tenant.com", new CacheRegionKey("DEFAULT", 3L)), "tenant node");
+        SimpleCache<Serializable, Object> propertiesCache = new DefaultSimpleCache<Serializable, Object>();
+        propertiesCache.put(new CacheRegionKey("PROPERTIES", new NodeVersionKey(1L, 1L)), "properties");
+        propertiesCache.put(new CacheRegionKey("PROPERTIES", new NodeVersionKey(2L, 5L)), "properties");
+
+        NodeCacheKeyWarmer warmer = new NodeCacheKeyWarmer();
+        warmer.setName("nodes");
+        warmer.setNodeBulkLoader(mock(NodeBulkLoader.class));
+        warmer.setCaches(Arrays.<SimpleCache<? extends Serializable, ?>>asList(nodesCache, propertiesCache));
+        warmer.afterPropertiesSet();
+
+        List<String> keys = warmer.getKeys(100);
+        assertEquals(2, keys.size());
+        assertEquals(new HashSet<String>(Arrays.asList("1", "2")), new HashSet<String>(keys));
+        assertEquals(1, warmer.getKeys(1).size());
+    }
+
+    @Test
+    public void userAuthorityKeysAreUnwrapped() throws Exception
+    {
+        SimpleCache<Serializable, Object> userAuthorityCache = new DefaultSimpleCache<Serializable, Object>();
+        userAuthorityCache.put("andy", Collections.singleton("GROUP_one"));
+        userAuthorityCache.put(new TransactionalCache.CacheRegionKey(TenantService.DEFAULT_DOMAIN, "lemur"), Collections.emptySet());
+        userAuthorityCache.put(new TransactionalCache.CacheRegionKey("tenant.com", "paul@tenant.com"), Collections.emptySet());
+
+        AuthorityDAO authorityDAO = mock(AuthorityDAO.class);
+        UserAuthorityCacheKeyWarmer warmer = new UserAuthorityCacheKeyWarmer();
+        warmer.setName("userAuthorities");
+        warmer.setAuthorityDAO(authorityDAO);
+        warmer.setCaches(Arrays.<SimpleCache<? extends Serializable, ?>>asList(userAuthorityCache));
+        warmer.afterPropertiesSet();
+
+        List<String> keys = warmer.getKeys(100);
+        assertEquals(new HashSet<String>(Arrays.asList("andy", "lemur")), new HashSet<String>(keys));
+
+        warmer.warmKeys(keys);
+        verify(authorityDAO).getContainingAuthorities(null, "andy", false);
+        verify(authorityDAO).getContainingAuthorities(null, "lemur", false);
+    }
+
+    @Test
+    public void readersKeysAreAclIds() throws Exception
+    {
+        SimpleCache<Serializable, Object> readersCache = new DefaultSimpleCache<Serializable, Object>();
+        for (long id = 1; id <= 3; id++)
+        {
+            AclEntity acl = new AclEntity();
+            acl.setId(id);
+            acl.setVersion(2L);
+            readersCache.put(acl, Collections.singleton("GROUP_EVERYONE"));
+        }
+
+        AclDAO aclDAO = mock(AclDAO.class);
+        PermissionService permissionService = mock(PermissionService.class);
+        ReadersCacheKeyWarmer warmer = new ReadersCacheKeyWarmer();
+        warmer.setName("readers");
+        warmer.setAclDAO(aclDAO);
+        warmer.setPermissionService(permissionService);
+        warmer.setCaches(Arrays.<SimpleCache<? extends Serializable, ?>>asList(readersCache));
+        warmer.afterPropertiesSet();
+
+        List<String> keys = warmer.getKeys(100);
+        assertEquals(new HashSet<String>(Arrays.asList("1", "2", "3")), new HashSet<String>(keys));
+
+        warmer.warmKeys(keys);
+        verify(aclDAO).cacheAccessControlLists(anyCollectionOf(Long.class));
+        verify(permissionService).getReaders(2L);
+        verify(permissionService).getReadersDenied(2L);
+    }
+
+    @Test
+    public void unreadableSnapshotIsRejected() throws Exception
+    {
+        assertTrue(snapshotFile.getParentFile().mkdirs());
+        assertTrue(snapshotFile.createNewFile());
+        try
+        {
+            CacheKeySnapshot.readSnapshot(snapshotFile);
+            fail("Expected an empty file to be rejected");
+        }
+        catch (IOException e)
+        {
+            // Expected
+        }
+    }
+
+    private static class TestWarmer implements CacheKeyWarmer
+    {
+        private final String name;
+        private final List<String> keys;
+        private final List<List<String>> batches = new ArrayList<List<String>>();
+
+        private TestWarmer(String name, List<String> keys)
+        {
+            this.name = name;
+            this.keys = keys;
+        }
+
+        @Override
+        public String getName()
+        {
+            return name;
+        }
+
+        @Override
+        public List<String> getKeys(int maxKeys)
+        {
+            return keys;
+        }
+
+        @Override
+        public void warmKeys(List<String> keys)
+        {
+            batches.add(new ArrayList<String>(keys));
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+import org.alfresco.repo.content.filestore.FileContentWriter;
+import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.util.TempFileProvider;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @see ContentDigester
+ */
+public class ContentDigesterTest
+{
+    private static final String CONTENT = "The quick brown fox jumps over the lazy dog";
+    private static final String CONTENT_DIGEST = "SHA-256:" + DigestUtils.sha256Hex(CONTENT);
+
+    private File file;
+    private FileContentWriter writer;
+
+    @Before
+    public void setUp()
+    {
+        file = TempFileProvider.createTempFile(getClass().getSimpleName(), ".txt");
+        writer = new FileContentWriter(file);
+    }
+
+    @After
+    public void tearDown()
+    {
+        file.delete();
+    }
+
+    @Test
+    public void contentIsNotDigestedByDefault()
+    {
+        writer.putContent(CONTENT);
+
+        assertNull(writer.getContentDigest());
+    }
+
+    @Test
+    public void contentIsDigestedAsItIsWritten()
+    {
+        writer.setDigestAlgorithm("SHA-256");
+        writer.putContent(CONTENT);
+
+        assertEquals(CONTENT_DIGEST, writer.getContentDigest());
+        assertEquals("SHA-256", ContentDigester.getAlgorithm(writer.getContentDigest()));
+    }
+
+    @Test
+    public void streamedContentIsDigested() throws Exception
+    {
+        writer.setDigestAlgorithm("SHA-256");
+        byte[] bytes = CONTENT.getBytes(StandardCharsets.UTF_8);
+        OutputStream os = writer.getContentOutputStream();
+        os.write(bytes, 0, 10);
+        os.write(bytes, 10, bytes.length - 10);
+        assertNull("The digest is only complete once the stream is closed", writer.getContentDigest());
+        os.close();
+
+        assertEquals(CONTENT_DIGEST, writer.getContentDigest());
+    }
+
+    @Test
+    public void contentWrittenOutOfOrderIsNotDigested() throws Exception
+    {
+        writer.setDigestAlgorithm("SHA-256");
+        byte[] bytes = CONTENT.getBytes(StandardCharsets.UTF_8);
+        FileChannel channel = writer.getFileChannel(true);
+        channel.write(ByteBuffer.wrap(bytes, 10, bytes.length - 10), 10L);
+        channel.write(ByteBuffer.wrap(bytes, 0, 10), 0L);
+        channel.close();
+
+        assertEquals(CONTENT, writer.getReader().getContentString());
+        assertNull(writer.getContentDigest());
+    }
+
+    @Test
+    public void unknownAlgorithmIsRejected()
+    {
+        try
+        {
+            writer.setDigestAlgorithm("NO-SUCH-DIGEST");
+            fail("Unknown digest algorithm was accepted");
+        }
+        catch (ContentIOException e)
+        {
+            // Expected
+        }
+    }
+
+    @Test
+    public void digestIsNotBoundOutsideOfTransaction()
+    {
+        ContentDigester.bindContentDigest("store://a/b/c.bin", CONTENT_DIGEST);
+
+        assertNull(ContentDigester.getBoundContentDigest("store://a/b/c.bin"));
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.util.Locale;
+
+import org.alfresco.opencmis.RangeInputStream;
+import org.alfresco.repo.content.filestore.FileContentReader;
+import org.alfresco.repo.content.filestore.FileContentWriter;
+import org.alfresco.repo.content.filestore.SpoofedTextContentReader;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.util.TempFileProvider;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.util.FileCopyUtils;
+
+/**
+ * Tests {@link AbstractContentReader#transferTo(java.nio.channels.WritableByteChannel, long, long)}
+ * for file-backed and other readers.
+ *
+ * @since 7.110
+ */
+public class ContentReaderTransferTest
+{
+    private static final String CONTENT = "The quick brown fox jumps over the lazy dog";
+
+    private File file;
+
+    @Before
+    public void setUp()
+    {
+        file = TempFileProvider.createTempFile("ContentReaderTransferTest", ".txt");
+        FileContentWriter writer = new FileContentWriter(file);
+        writer.putContent(CONTENT);
+    }
+
+    private String transfer(AbstractContentReader reader, long position, long count) throws Exception
+    {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        long transferred = reader.transferTo(Channels.newChannel(os), position, count);
+        assertEquals(os.size(), transferred);
+        return os.toString("UTF-8");
+    }
+
+    @Test
+    public void fileContentIsTransferred() throws Exception
+    {
+        assertEquals(CONTENT, transfer(new FileContentReader(file), 0L, -1L));
+        assertEquals("quick", transfer(new FileContentReader(file), 4L, 5L));
+        assertEquals("dog", transfer(new FileContentReader(file), 40L, 100L));
+        assertEquals("", transfer(new FileContentReader(file), 100L, -1L));
+    }
+
+    @Test
+    public void channelContentIsTransferred() throws Exception
+    {
+        String url = SpoofedTextContentReader.createContentUrl(Locale.ENGLISH, 12345L, 20000L);
+        String content = new SpoofedTextContentReader(url).getContentString();
+
+        assertEquals(content, transfer(new SpoofedTextContentReader(url), 0L, -1L));
+        assertEquals(content.substring(10000, 19000), transfer(new SpoofedTextContentReader(url), 10000L, 9000L));
+    }
+
+    @Test
+    public void readerIsClosedAfterTransfer() throws Exception
+    {
+        ContentReader reader = new FileContentReader(file);
+        transfer((AbstractContentReader) reader, 0L, -1L);
+        assertTrue(reader.isClosed());
+    }
+
+    @Test
+    public void contentIsCopiedToFile() throws Exception
+    {
+        File target = TempFileProvider.createTempFile("ContentReaderTransferTest", ".txt");
+        new FileContentReader(file).getContent(target);
+        assertEquals(CONTENT, new FileContentReader(target).getContentString());
+    }
+
+    @Test
+    public void rangeIsReadFromPositionedChannel() throws Exception
+    {
+        InputStream is = new RangeInputStream(new FileContentReader(file).getReadableChannel(), 16L, 3L);
+        assertEquals("fox", new String(FileCopyUtils.copyToByteArray(is), "UTF-8"));
+
+        String url = SpoofedTextContentReader.createContentUrl(Locale.ENGLISH, 12345L, 2000L);
+        String content = new SpoofedTextContentReader(url).getContentString();
+        is = new RangeInputStream(new SpoofedTextContentReader(url).getReadableChannel(), 100L, 50L);
+        assertEquals(content.substring(100, 150), new String(FileCopyUtils.copyToByteArray(is), "UTF-8"));
+    }
+}
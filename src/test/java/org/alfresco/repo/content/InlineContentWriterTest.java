@@ -0,0 +1,148 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+import org.alfresco.repo.content.cleanup.EagerContentStoreCleaner;
+import org.alfresco.repo.content.filestore.FileContentWriter;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.ContentWriter;
+import org.alfresco.util.TempFileProvider;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @see InlineContentWriter
+ * @see InlineContentReader
+ */
+public class InlineContentWriterTest
+{
+    private static final String CONTENT = "{\"quick\": \"brown fox\"}";
+
+    private ContentStore store;
+    private EagerContentStoreCleaner eagerContentStoreCleaner;
+
+    @Before
+    public void setUp()
+    {
+        store = mock(ContentStore.class);
+        eagerContentStoreCleaner = mock(EagerContentStoreCleaner.class);
+    }
+
+    private InlineContentWriter newWriter(int maxSize)
+    {
+        return new InlineContentWriter(store, new ContentContext(null, null), eagerContentStoreCleaner, maxSize);
+    }
+
+    @Test
+    public void smallContentIsHeldInMemory() throws Exception
+    {
+        InlineContentWriter writer = newWriter(InlineContentWriter.MAX_INLINE_SIZE);
+        String url = writer.getContentUrl();
+        assertTrue(InlineContentReader.isInlineContentUrl(url));
+        assertTrue(AbstractContentStore.isValidContentUrl(url));
+        assertNull(writer.getInlineContent());
+
+        writer.setEncoding("UTF-8");
+        writer.putContent(CONTENT);
+        assertEquals(url, writer.getContentUrl());
+        assertFalse("The URL must not hold the content", url.contains("brown"));
+        assertArrayEquals(CONTENT.getBytes("UTF-8"), writer.getInlineContent());
+        assertEquals(CONTENT.length(), writer.getSize());
+
+        ContentReader reader = writer.getReader();
+        assertTrue(reader.exists());
+        assertEquals(url, reader.getContentUrl());
+        assertEquals(CONTENT, reader.getContentString());
+        assertEquals(CONTENT, reader.getReader().getContentString());
+        verifyZeroInteractions(store, eagerContentStoreCleaner);
+    }
+
+    @Test
+    public void urlsAreUnique()
+    {
+        assertNotEquals(newWriter(0).getContentUrl(), newWriter(0).getContentUrl());
+        assertFalse(InlineContentReader.isInlineContentUrl("store://2019/10/16/12/30/abc.bin"));
+        assertFalse(InlineContentReader.isInlineContentUrl(null));
+    }
+
+    @Test
+    public void largestContentIsInlined()
+    {
+        byte[] content = new byte[InlineContentWriter.MAX_INLINE_SIZE];
+        new Random(42L).nextBytes(content);
+        InlineContentWriter writer = newWriter(InlineContentWriter.MAX_INLINE_SIZE);
+        writer.putContent(new ByteArrayInputStream(content));
+        assertArrayEquals(content, writer.getInlineContent());
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        writer.getReader().getContent(os);
+        assertArrayEquals(content, os.toByteArray());
+        verifyZeroInteractions(store);
+
+        try
+        {
+            newWriter(InlineContentWriter.MAX_INLINE_SIZE + 1);
+            fail("Content larger than the maximum must not be inlined");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // Expected
+        }
+    }
+
+    @Test
+    public void largerContentIsWrittenToStore() throws Exception
+    {
+        ContentWriter storeWriter = new FileContentWriter(TempFileProvider.createTempFile(getClass().getSimpleName(), ".bin"));
+        when(store.getWriter(any(ContentContext.class))).thenReturn(storeWriter);
+
+        InlineContentWriter writer = newWriter(10);
+        writer.setEncoding("UTF-8");
+        writer.putContent(CONTENT);
+        assertEquals(storeWriter.getContentUrl(), writer.getContentUrl());
+        assertNull(writer.getInlineContent());
+        assertEquals(CONTENT.length(), writer.getSize());
+        assertEquals(CONTENT, writer.getReader().getContentString());
+        verify(eagerContentStoreCleaner).registerNewContentUrl(storeWriter.getContentUrl());
+    }
+}
@@ -40,6 +40,7 @@ import junit.framework.TestCase;
 import org.alfresco.model.ContentModel;
 import org.alfresco.repo.content.filestore.FileContentWriter;
 import org.alfresco.repo.content.transform.ContentTransformer;
+import org.alfresco.repo.domain.contentdata.ContentDataDAO;
 import org.alfresco.repo.policy.JavaBehaviour;
 import org.alfresco.repo.policy.PolicyComponent;
 import org.alfresco.repo.security.authentication.AuthenticationComponent;
@@ -356,6 +357,42 @@ public class RoutingContentServiceTest extends TestCase
 		assertNull("No reader should yet be available for the node", reader);
 	}
 	
+    /**
+     * Tests that small content written to a node is held in the database rather than in the store
+     */
+    public void testInlineContent() throws Exception
+    {
+        ContentServiceImpl contentServiceImpl = (ContentServiceImpl) ctx.getBean("contentService");
+        contentServiceImpl.setInlineContentMaxSize(10);
+        try
+        {
+            ContentWriter writer = contentService.getWriter(contentNodeRef, ContentModel.PROP_CONTENT, true);
+            writer.setEncoding("UTF-8");
+            writer.putContent(SOME_CONTENT);
+            String contentUrl = writer.getContentUrl();
+            assertTrue("Writer should have an inline URL", InlineContentReader.isInlineContentUrl(contentUrl));
+            assertFalse("The URL must not hold the content", contentUrl.contains(SOME_CONTENT));
+            
+            ContentReader reader = contentService.getReader(contentNodeRef, ContentModel.PROP_CONTENT);
+            assertEquals(contentUrl, reader.getContentUrl());
+            assertEquals(SOME_CONTENT, reader.getContentString());
+            assertEquals(SOME_CONTENT, contentService.getRawReader(contentUrl).getContentString());
+            ContentDataDAO contentDataDAO = (ContentDataDAO) ctx.getBean("contentDataDAO");
+            assertEquals(SOME_CONTENT, new String(contentDataDAO.getContentUrlInline(contentUrl), "UTF-8"));
+            
+            // Larger content stays in the store
+            writer = contentService.getWriter(contentNodeRef, ContentModel.PROP_CONTENT, true);
+            writer.putContent("Content that is too large to inline");
+            assertFalse(InlineContentReader.isInlineContentUrl(writer.getContentUrl()));
+            assertFalse(InlineContentReader.isInlineContentUrl(
+                    contentService.getReader(contentNodeRef, ContentModel.PROP_CONTENT).getContentUrl()));
+        }
+        finally
+        {
+            contentServiceImpl.setInlineContentMaxSize(-1);
+        }
+    }
+    
 	private boolean policyFired = false;
     private boolean readPolicyFired = false;
     private boolean newContent = true;
@@ -0,0 +1,274 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.caching;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+
+import org.alfresco.opencmis.RangeInputStream;
+import org.alfresco.repo.cache.DefaultSimpleCache;
+import org.alfresco.repo.content.AbstractContentReader;
+import org.alfresco.repo.content.ContentStore;
+import org.alfresco.repo.content.caching.quota.QuotaManagerStrategy;
+import org.alfresco.repo.content.filestore.FileContentStore;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.ContentWriter;
+import org.alfresco.util.GUID;
+import org.alfresco.util.TempFileProvider;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.util.FileCopyUtils;
+
+/**
+ * Tests reading content through a {@link CachingContentStore} that caches content in blocks.
+ *
+ * @since 7.110
+ */
+public class BlockCachingContentReaderTest
+{
+    private static final int BLOCK_SIZE = 1024;
+
+    private File root;
+    private FileContentStore backingStore;
+    private ContentCacheImpl cache;
+    private CachingContentStore store;
+    private ApplicationEventPublisher eventPublisher;
+    private byte[] content;
+    private String url;
+
+    @Before
+    public void setUp()
+    {
+        root = new File(TempFileProvider.getTempDir(), "BlockCachingContentReaderTest-" + GUID.generate());
+        backingStore = new FileContentStore(mock(ApplicationContext.class), new File(root, "store"));
+        cache = new ContentCacheImpl();
+        cache.setCacheRoot(new File(root, "cache"));
+        cache.setMemoryStore(new DefaultSimpleCache<Key, String>(1000, "BlockCachingContentReaderTest"));
+        store = new CachingContentStore(backingStore, cache, false);
+        store.setBlockSize(BLOCK_SIZE);
+        eventPublisher = mock(ApplicationEventPublisher.class);
+        store.setApplicationEventPublisher(eventPublisher);
+
+        // Nine full blocks and a partial one
+        content = new byte[BLOCK_SIZE * 9 + 100];
+        new Random(42L).nextBytes(content);
+        ContentWriter writer = backingStore.getWriter(ContentStore.NEW_CONTENT_CONTEXT);
+        writer.putContent(new ByteArrayInputStream(content));
+        url = writer.getContentUrl();
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        FileUtils.deleteDirectory(root);
+    }
+
+    private byte[] readRange(ContentReader reader, long offset, long length) throws Exception
+    {
+        InputStream is = new RangeInputStream(reader.getReadableChannel(), offset, length);
+        return FileCopyUtils.copyToByteArray(is);
+    }
+
+    private boolean isBlockCached(long index)
+    {
+        return cache.contains(CachingContentStore.getBlockUrl(url, index));
+    }
+
+    private int countBlockTempFiles()
+    {
+        String[] names = TempFileProvider.getTempDir().list(new FilenameFilter()
+        {
+            @Override
+            public boolean accept(File dir, String name)
+            {
+                return name.startsWith("cached_block_");
+            }
+        });
+        return names.length;
+    }
+
+    private CachedContentBlocksReadEvent getLastEvent()
+    {
+        ArgumentCaptor<ApplicationEvent> captor = ArgumentCaptor.forClass(ApplicationEvent.class);
+        verify(eventPublisher, atLeastOnce()).publishEvent(captor.capture());
+        List<ApplicationEvent> events = captor.getAllValues();
+        return (CachedContentBlocksReadEvent) events.get(events.size() - 1);
+    }
+
+    @Test
+    public void rangeReadOnlyCachesBlocksRead() throws Exception
+    {
+        byte[] range = readRange(store.getReader(url), 5000L, 100L);
+
+        assertArrayEquals(Arrays.copyOfRange(content, 5000, 5100), range);
+        assertTrue(isBlockCached(4L));
+        assertFalse(isBlockCached(0L));
+        assertFalse(isBlockCached(5L));
+        CachedContentBlocksReadEvent event = getLastEvent();
+        assertEquals(url, event.getContentUrl());
+        assertEquals(0, event.getBlockHits());
+        assertEquals(1, event.getBlockMisses());
+    }
+
+    @Test
+    public void rangeAcrossBlocks() throws Exception
+    {
+        byte[] range = readRange(store.getReader(url), 2000L, 7000L);
+
+        assertArrayEquals(Arrays.copyOfRange(content, 2000, 9000), range);
+        assertFalse(isBlockCached(0L));
+        assertTrue(isBlockCached(1L));
+        assertTrue(isBlockCached(8L));
+        assertFalse(isBlockCached(9L));
+    }
+
+    @Test
+    public void cachedBlocksAreHits() throws Exception
+    {
+        assertArrayEquals(content, readRange(store.getReader(url), 0L, content.length));
+        assertEquals(0L, store.getBlockHits());
+        assertEquals(10L, store.getBlockMisses());
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        store.getReader(url).getContent(os);
+        assertArrayEquals(content, os.toByteArray());
+        assertEquals(10, getLastEvent().getBlockHits());
+        assertEquals(0, getLastEvent().getBlockMisses());
+    }
+
+    @Test
+    public void transferFromPosition() throws Exception
+    {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        long transferred = ((AbstractContentReader) store.getReader(url)).transferTo(Channels.newChannel(os), 9000L, -1L);
+
+        assertEquals(content.length - 9000, transferred);
+        assertArrayEquals(Arrays.copyOfRange(content, 9000, content.length), os.toByteArray());
+        assertFalse(isBlockCached(7L));
+        assertTrue(isBlockCached(9L));
+    }
+
+    @Test
+    public void nonSeekableBackingStore() throws Exception
+    {
+        backingStore.setAllowRandomAccess(false);
+
+        assertArrayEquals(Arrays.copyOfRange(content, 7000, 7100), readRange(store.getReader(url), 7000L, 100L));
+        assertArrayEquals(Arrays.copyOfRange(content, 100, 4000), readRange(store.getReader(url), 100L, 3900L));
+        assertFalse(isBlockCached(4L));
+        assertTrue(isBlockCached(6L));
+    }
+
+    @Test
+    public void remainingBlocksAreFilled() throws Exception
+    {
+        store.setBlockFillExecutor(new Executor()
+        {
+            @Override
+            public void execute(Runnable command)
+            {
+                command.run();
+            }
+        });
+
+        readRange(store.getReader(url), 5000L, 100L);
+
+        for (long index = 0L; index < 10L; index++)
+        {
+            assertTrue(isBlockCached(index));
+        }
+        assertFalse(isBlockCached(10L));
+    }
+
+    @Test
+    public void blocksOverQuotaAreNotLeftOnDisk() throws Exception
+    {
+        QuotaManagerStrategy quota = mock(QuotaManagerStrategy.class);
+        when(quota.beforeWritingCacheFile(anyLong())).thenReturn(false);
+        store.setQuota(quota);
+        store.setBlockFillExecutor(new Executor()
+        {
+            @Override
+            public void execute(Runnable command)
+            {
+                command.run();
+            }
+        });
+        int tempFiles = countBlockTempFiles();
+
+        assertArrayEquals(content, readRange(store.getReader(url), 0L, content.length));
+
+        assertFalse(isBlockCached(0L));
+        assertFalse(isBlockCached(9L));
+        assertEquals(tempFiles, countBlockTempFiles());
+    }
+
+    @Test
+    public void wholeCachedContentIsStillUsed() throws Exception
+    {
+        cache.put(url, backingStore.getReader(url));
+
+        assertArrayEquals(content, readRange(store.getReader(url), 0L, content.length));
+        assertFalse(isBlockCached(0L));
+    }
+
+    @Test
+    public void deleteRemovesBlocks() throws Exception
+    {
+        readRange(store.getReader(url), 0L, content.length);
+        assertTrue(isBlockCached(9L));
+
+        assertTrue(store.delete(url));
+
+        assertFalse(isBlockCached(0L));
+        assertFalse(isBlockCached(9L));
+        assertFalse(backingStore.exists(url));
+    }
+}
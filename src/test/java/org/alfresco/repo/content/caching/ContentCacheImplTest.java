@@ -28,13 +28,21 @@ package org.alfresco.repo.content.caching;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 
 import org.alfresco.repo.cache.SimpleCache;
 import org.alfresco.repo.content.caching.ContentCacheImpl.NumericFileNameComparator;
+import org.alfresco.repo.content.caching.HotContentTier.HotContent;
 import org.alfresco.repo.content.filestore.FileContentReader;
 import org.alfresco.repo.content.filestore.FileContentWriter;
 import org.alfresco.service.cmr.repository.ContentReader;
@@ -289,6 +297,140 @@ public class ContentCacheImplTest
         Mockito.verify(lookupTable).put(Key.forCacheFile(writer.getFile().getAbsolutePath()), url);
     }
     
+    @Test
+    public void smallContentIsReadFromMemory() throws IOException
+    {
+        contentCache.setHotTierMaxSizeMB(1L);
+        final String url = "store://content/thumbnail.bin";
+        File cacheFile = tempfile();
+        Files.write(cacheFile.toPath(), "Thumbnail".getBytes("UTF-8"));
+        Mockito.when(lookupTable.contains(Key.forUrl(url))).thenReturn(true);
+        Mockito.when(lookupTable.get(Key.forUrl(url))).thenReturn(cacheFile.getAbsolutePath());
+        
+        ContentReader reader = contentCache.getReader(url);
+        assertTrue("Content read once should be read from disk", reader instanceof FileContentReader);
+        assertEquals("Thumbnail", reader.getContentString());
+        assertEquals(0, contentCache.getHotTierCount());
+        assertEquals("Thumbnail", contentCache.getReader(url).getContentString());
+        assertTrue("Cache file should not be needed once in memory", cacheFile.delete());
+        reader = contentCache.getReader(url);
+        
+        assertEquals(url, reader.getContentUrl());
+        assertEquals("Thumbnail", reader.getContentString());
+        assertEquals(2L, contentCache.getHotTierMisses());
+        assertEquals(1L, contentCache.getHotTierHits());
+        assertEquals(9L, contentCache.getHotTierSizeBytes());
+        
+        // As done by the cleaner
+        contentCache.removeHotContent(cacheFile);
+        assertEquals(0, contentCache.getHotTierCount());
+        try
+        {
+            contentCache.getReader(url);
+            fail("Content should no longer be cached");
+        }
+        catch (CacheMissException e)
+        {
+            // Expected
+        }
+    }
+    
+    @Test
+    public void largeContentIsReadFromDisk() throws IOException
+    {
+        contentCache.setHotTierMaxSizeMB(1L);
+        contentCache.setHotTierMaxFileSizeKB(1L);
+        final String url = "store://content/large.bin";
+        File cacheFile = tempfile();
+        Files.write(cacheFile.toPath(), new byte[2048]);
+        Mockito.when(lookupTable.contains(Key.forUrl(url))).thenReturn(true);
+        Mockito.when(lookupTable.get(Key.forUrl(url))).thenReturn(cacheFile.getAbsolutePath());
+        
+        assertTrue(contentCache.getReader(url) instanceof FileContentReader);
+        assertEquals(0, contentCache.getHotTierCount());
+    }
+    
+    @Test
+    public void removedContentIsDroppedFromMemory() throws IOException
+    {
+        contentCache.setHotTierMaxSizeMB(1L);
+        final String url = "store://content/thumbnail.bin";
+        File cacheFile = tempfile();
+        Files.write(cacheFile.toPath(), "Thumbnail".getBytes("UTF-8"));
+        Mockito.when(lookupTable.contains(Key.forUrl(url))).thenReturn(true);
+        Mockito.when(lookupTable.get(Key.forUrl(url))).thenReturn(cacheFile.getAbsolutePath());
+        contentCache.getReader(url);
+        contentCache.getReader(url);
+        assertEquals(1, contentCache.getHotTierCount());
+        
+        contentCache.remove(url);
+        
+        assertEquals(0, contentCache.getHotTierCount());
+        assertEquals(0L, contentCache.getHotTierSizeBytes());
+    }
+    
+    @Test
+    public void contentInMemoryIsTransferredFromDisk() throws IOException
+    {
+        contentCache.setHotTierMaxSizeMB(1L);
+        final String url = "store://content/thumbnail.bin";
+        File cacheFile = tempfile();
+        Files.write(cacheFile.toPath(), "Thumbnail".getBytes("UTF-8"));
+        Mockito.when(lookupTable.contains(Key.forUrl(url))).thenReturn(true);
+        Mockito.when(lookupTable.get(Key.forUrl(url))).thenReturn(cacheFile.getAbsolutePath());
+        contentCache.getReader(url);
+        contentCache.getReader(url);
+        
+        ContentReader reader = contentCache.getReader(url);
+        assertTrue(reader instanceof HotContentReader);
+        FileChannel channel = reader.getFileChannel();
+        try
+        {
+            assertEquals(9L, channel.size());
+        }
+        finally
+        {
+            channel.close();
+        }
+        
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        long transferred = ((HotContentReader) contentCache.getReader(url)).transferTo(Channels.newChannel(os), 5L, -1L);
+        assertEquals(4L, transferred);
+        assertEquals("nail", os.toString("UTF-8"));
+    }
+    
+    @Test
+    public void hotTierAdmitsOnSecondRead()
+    {
+        HotContentTier hotTier = new HotContentTier(20L);
+        assertFalse(hotTier.admit("a"));
+        assertTrue(hotTier.admit("a"));
+        assertFalse("Admission should start again", hotTier.admit("a"));
+        
+        hotTier.remove("a");
+        assertFalse(hotTier.admit("a"));
+    }
+    
+    @Test
+    public void hotTierDropsLeastRecentlyRead()
+    {
+        HotContentTier hotTier = new HotContentTier(20L);
+        hotTier.put("a", new HotContent(new byte[8], 0L));
+        hotTier.put("b", new HotContent(new byte[8], 0L));
+        hotTier.get("a");
+        hotTier.put("c", new HotContent(new byte[8], 0L));
+        
+        assertNotNull(hotTier.get("a"));
+        assertNull(hotTier.get("b"));
+        assertNotNull(hotTier.get("c"));
+        assertEquals(16L, hotTier.getSizeBytes());
+        
+        // Larger than the whole tier
+        hotTier.put("d", new HotContent(new byte[21], 0L));
+        assertNull(hotTier.get("d"));
+        assertEquals(2, hotTier.getCount());
+    }
+    
     @Test
     public void compareNumericFileNames()
     {
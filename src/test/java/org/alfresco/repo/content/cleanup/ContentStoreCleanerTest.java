@@ -49,6 +49,7 @@ import org.alfresco.repo.lock.JobLockService;
 import org.alfresco.repo.security.authentication.AuthenticationUtil;
 import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
 import org.alfresco.service.ServiceRegistry;
+import org.alfresco.service.cmr.attributes.AttributeService;
 import org.alfresco.service.cmr.dictionary.DictionaryService;
 import org.alfresco.service.cmr.repository.ContentData;
 import org.alfresco.service.cmr.repository.ContentIOException;
@@ -383,6 +384,68 @@ public class ContentStoreCleanerTest extends TestCase
         assertTrue("Content listener was not called", deletedUrls.contains(reader.getContentUrl()));
     }
     
+    /**
+     * Orphans are deleted by several worker threads in small batches, and no checkpoint is left
+     * once the cleanup has completed.
+     */
+    public void testParallelRemoval() throws Exception
+    {
+        eagerCleaner.setEagerOrphanCleanup(false);
+        
+        final StoreRef storeRef = nodeService.createStore("test", getName() + "-" + GUID.generate());
+        RetryingTransactionCallback<List<String>> testCallback = new RetryingTransactionCallback<List<String>>()
+        {
+            public List<String> execute() throws Throwable
+            {
+                NodeRef rootNodeRef = nodeService.getRootNode(storeRef);
+                List<String> contentUrls = new ArrayList<String>(20);
+                for (int i = 0; i < 20; i++)
+                {
+                    Map<QName, Serializable> properties = new HashMap<QName, Serializable>(13);
+                    properties.put(ContentModel.PROP_NAME, (Serializable)("test-" + i + ".txt"));
+                    NodeRef contentNodeRef = nodeService.createNode(
+                            rootNodeRef,
+                            ContentModel.ASSOC_CHILDREN,
+                            ContentModel.ASSOC_CHILDREN,
+                            ContentModel.TYPE_CONTENT,
+                            properties).getChildRef();
+                    ContentWriter writer = contentService.getWriter(contentNodeRef, ContentModel.PROP_CONTENT, true);
+                    writer.setMimetype(MimetypeMap.MIMETYPE_TEXT_PLAIN);
+                    writer.putContent("CONTENT " + i);
+                    contentUrls.add(writer.getContentUrl());
+                    
+                    // Delete the node, bypassing archive
+                    nodeService.addAspect(contentNodeRef, ContentModel.ASPECT_TEMPORARY, null);
+                    nodeService.deleteNode(contentNodeRef);
+                }
+                return contentUrls;
+            }
+        };
+        List<String> contentUrls = transactionService.getRetryingTransactionHelper().doInTransaction(testCallback);
+        
+        // fire the cleaner
+        final AttributeService attributeService = (AttributeService) ctx.getBean("AttributeService");
+        cleaner.setAttributeService(attributeService);
+        cleaner.setWorkerThreads(4);
+        cleaner.setBatchSize(3);
+        cleaner.setProtectDays(0);
+        cleaner.execute();
+        
+        for (String contentUrl : contentUrls)
+        {
+            assertFalse("Unprotected content was not deleted", contentService.getRawReader(contentUrl).exists());
+            assertTrue("Content listener was not called", deletedUrls.contains(contentUrl));
+        }
+        Serializable checkpoint = transactionService.getRetryingTransactionHelper().doInTransaction(new RetryingTransactionCallback<Serializable>()
+        {
+            public Serializable execute() throws Throwable
+            {
+                return attributeService.getAttribute(".ContentStoreCleaner", "checkpoint");
+            }
+        }, true);
+        assertNull("Checkpoint should be removed once cleanup is complete", checkpoint);
+    }
+    
     /**
      * Test forced and immediate shredding of content
      * <p/>
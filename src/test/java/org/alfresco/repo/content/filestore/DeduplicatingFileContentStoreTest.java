@@ -0,0 +1,212 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.filestore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.Collections;
+
+import org.alfresco.repo.content.ContentContext;
+import org.alfresco.repo.content.ContentStore;
+import org.alfresco.repo.content.cleanup.FileWipingContentCleanerListener;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.ContentWriter;
+import org.alfresco.util.GUID;
+import org.alfresco.util.TempFileProvider;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * @see DeduplicatingFileContentStore
+ */
+public class DeduplicatingFileContentStoreTest
+{
+    private static final String CONTENT = "The quick brown fox jumps over the lazy dog";
+
+    private File root;
+    private DeduplicatingFileContentStore store;
+
+    @Before
+    public void setUp()
+    {
+        root = new File(TempFileProvider.getTempDir(), "DeduplicatingFileContentStoreTest-" + GUID.generate());
+        store = new DeduplicatingFileContentStore(mock(ApplicationContext.class), root);
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        FileUtils.deleteDirectory(root);
+    }
+
+    private String write(String content)
+    {
+        ContentWriter writer = store.getWriter(ContentStore.NEW_CONTENT_CONTEXT);
+        writer.putContent(content);
+        return writer.getContentUrl();
+    }
+
+    private Collection<File> getBlobs()
+    {
+        File blobs = new File(root, DeduplicatingFileContentStore.BLOB_DIRECTORY);
+        if (!blobs.exists())
+        {
+            return Collections.emptyList();
+        }
+        return FileUtils.listFiles(blobs, new String[] {"bin"}, true);
+    }
+
+    @Test
+    public void identicalContentIsStoredOnce()
+    {
+        String firstUrl = write(CONTENT);
+        String secondUrl = write(CONTENT);
+        String otherUrl = write("Something else");
+
+        assertNotEquals(firstUrl, secondUrl);
+        assertTrue(DeduplicatingFileContentStore.isDeduplicatedUrl(firstUrl));
+        assertEquals(CONTENT, store.getReader(firstUrl).getContentString());
+        assertEquals(CONTENT, store.getReader(secondUrl).getContentString());
+        assertEquals("Something else", store.getReader(otherUrl).getContentString());
+        assertEquals(CONTENT.length(), store.getReader(secondUrl).getSize());
+        assertEquals(2, getBlobs().size());
+    }
+
+    @Test
+    public void writerReadsBackContent()
+    {
+        ContentWriter writer = store.getWriter(ContentStore.NEW_CONTENT_CONTEXT);
+        writer.putContent(CONTENT);
+        assertEquals(CONTENT.length(), writer.getSize());
+        assertEquals(CONTENT, writer.getReader().getContentString());
+        assertEquals(writer.getContentUrl(), writer.getContentData().getContentUrl());
+    }
+
+    @Test
+    public void blobIsDeletedWithLastReference()
+    {
+        String firstUrl = write(CONTENT);
+        String secondUrl = write(CONTENT);
+
+        assertTrue(store.delete(firstUrl));
+        assertFalse(store.exists(firstUrl));
+        assertTrue(store.exists(secondUrl));
+        assertEquals(CONTENT, store.getReader(secondUrl).getContentString());
+        assertEquals(1, getBlobs().size());
+
+        assertTrue(store.delete(secondUrl));
+        assertFalse(store.exists(secondUrl));
+        assertFalse(store.getReader(secondUrl).exists());
+        assertEquals(0, getBlobs().size());
+        // Only the lock files remain
+        assertEquals(1, FileUtils.listFiles(new File(root, DeduplicatingFileContentStore.BLOB_DIRECTORY), null, true).size());
+    }
+
+    @Test
+    public void contentLookingLikeADigestIsNotALink() throws Exception
+    {
+        String linkedUrl = write(CONTENT);
+        String hash = DigestUtils.sha256Hex(CONTENT);
+
+        // Content at a deduplicated URL that was never moved to a blob, e.g. still being written
+        String url = linkedUrl.replace(".bin", "-unlinked.bin");
+        File file = store.makeFile(url);
+        Files.write(file.toPath(), hash.getBytes(StandardCharsets.US_ASCII));
+
+        assertEquals(hash, store.getReader(url).getContentString());
+        assertTrue(store.delete(url));
+        assertFalse(file.exists());
+        assertEquals(CONTENT, store.getReader(linkedUrl).getContentString());
+        assertEquals(1, getBlobs().size());
+    }
+
+    @Test
+    public void randomAccessWritesAreDeduplicated() throws Exception
+    {
+        String firstUrl = write(CONTENT);
+        ContentWriter writer = store.getWriter(ContentStore.NEW_CONTENT_CONTEXT);
+        FileChannel channel = writer.getFileChannel(true);
+        byte[] bytes = CONTENT.getBytes("UTF-8");
+        channel.write(ByteBuffer.wrap(bytes, 10, bytes.length - 10), 10);
+        channel.write(ByteBuffer.wrap(bytes, 0, 10), 0);
+        channel.close();
+
+        assertEquals(CONTENT, store.getReader(writer.getContentUrl()).getContentString());
+        assertEquals(1, getBlobs().size());
+        assertTrue(store.delete(firstUrl));
+        assertEquals(CONTENT, store.getReader(writer.getContentUrl()).getContentString());
+    }
+
+    @Test
+    public void specificAndExistingUrlsUsePlainFiles()
+    {
+        FileContentStore plainStore = new FileContentStore(mock(ApplicationContext.class), root);
+        ContentWriter plainWriter = plainStore.getWriter(ContentStore.NEW_CONTENT_CONTEXT);
+        plainWriter.putContent(CONTENT);
+        String existingUrl = plainWriter.getContentUrl();
+
+        String specificUrl = FileContentStore.createNewFileStoreUrl();
+        ContentWriter writer = store.getWriter(new ContentContext(null, specificUrl));
+        writer.putContent(CONTENT);
+
+        assertEquals(CONTENT, store.getReader(existingUrl).getContentString());
+        assertEquals(CONTENT, store.getReader(specificUrl).getContentString());
+        assertEquals(0, getBlobs().size());
+        assertTrue(store.delete(existingUrl));
+        assertFalse(store.exists(existingUrl));
+    }
+
+    @Test
+    public void sharedBlobsAreNotShredded() throws Exception
+    {
+        String firstUrl = write(CONTENT);
+        String secondUrl = write(CONTENT);
+        FileWipingContentCleanerListener listener = new FileWipingContentCleanerListener();
+
+        listener.beforeDelete(store, firstUrl);
+        store.delete(firstUrl);
+        ContentReader reader = store.getReader(secondUrl);
+        assertEquals(CONTENT, reader.getContentString());
+
+        listener.beforeDelete(store, secondUrl);
+        assertEquals(CONTENT.length(), reader.getSize());
+        assertFalse(CONTENT.equals(store.getReader(secondUrl).getContentString()));
+    }
+}
@@ -36,9 +36,11 @@ import org.alfresco.repo.content.ContentLimitProvider;
 import org.alfresco.repo.content.ContentLimitProvider.SimpleFixedLimitProvider;
 import org.alfresco.repo.content.ContentLimitViolationException;
 import org.alfresco.repo.content.ContentStore;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
 import org.alfresco.service.cmr.repository.ContentIOException;
 import org.alfresco.service.cmr.repository.ContentReader;
 import org.alfresco.service.cmr.repository.ContentWriter;
+import org.alfresco.service.transaction.TransactionService;
 import org.alfresco.test_category.OwnJVMTestsCategory;
 import org.alfresco.util.TempFileProvider;
 import org.junit.After;
@@ -348,6 +350,40 @@ public class FileContentStoreTest extends AbstractWritableContentStoreTest
         assertEquals(1024L, reader.getContentString().getBytes("UTF-8").length);
     }
     
+    /**
+     * Ensure that content written in write-behind mode is on disk by the time the transaction commits.
+     * 
+     * @since 7.110
+     */
+    @Test
+    public void testWriteBehindSync() throws Exception
+    {
+        final FileContentSyncer syncer = new FileContentSyncer();
+        syncer.setSyncMode(FileContentSyncer.SyncMode.WRITE_BEHIND);
+        syncer.setMaxDelayMs(100L);
+        syncer.init();
+        store.setFileContentSyncer(syncer);
+        try
+        {
+            TransactionService transactionService = (TransactionService) ctx.getBean("TransactionService");
+            String url = transactionService.getRetryingTransactionHelper().doInTransaction(new RetryingTransactionCallback<String>()
+            {
+                public String execute() throws Throwable
+                {
+                    ContentWriter writer = store.getWriter(ContentStore.NEW_CONTENT_CONTEXT);
+                    writer.putContent("Something");
+                    return writer.getContentUrl();
+                }
+            });
+            assertEquals(1L, syncer.getFilesSynced());
+            assertEquals("Something", store.getReader(url).getContentString());
+        }
+        finally
+        {
+            syncer.destroy();
+        }
+    }
+    
     private void assertDirExists(File root, String dir)
     {
         assertTrue("Directory [" + dir + "] should exist", new File(root, dir).exists());
@@ -0,0 +1,181 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.filestore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.alfresco.repo.content.ContentStore;
+import org.alfresco.repo.content.filestore.FileContentSyncer.SyncMode;
+import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentWriter;
+import org.alfresco.util.GUID;
+import org.alfresco.util.TempFileProvider;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * @see FileContentSyncer
+ */
+public class FileContentSyncerTest
+{
+    private static final String CONTENT = "The quick brown fox jumps over the lazy dog";
+
+    private File root;
+    private FileContentSyncer syncer;
+    private FileContentStore store;
+
+    @Before
+    public void setUp()
+    {
+        root = new File(TempFileProvider.getTempDir(), "FileContentSyncerTest-" + GUID.generate());
+        syncer = new FileContentSyncer();
+        store = new FileContentStore(mock(ApplicationContext.class), root);
+        store.setFileContentSyncer(syncer);
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        syncer.destroy();
+        FileUtils.deleteDirectory(root);
+    }
+
+    private String write(ContentStore store)
+    {
+        ContentWriter writer = store.getWriter(ContentStore.NEW_CONTENT_CONTEXT);
+        writer.putContent(CONTENT);
+        return writer.getContentUrl();
+    }
+
+    @Test
+    public void contentIsNotSyncedByDefault()
+    {
+        syncer.init();
+        String url = write(store);
+
+        assertEquals(CONTENT, store.getReader(url).getContentString());
+        assertEquals(0L, syncer.getFilesSynced());
+    }
+
+    @Test
+    public void contentIsSyncedOnClose()
+    {
+        syncer.setSyncMode(SyncMode.IMMEDIATE);
+        syncer.init();
+        write(store);
+        write(store);
+
+        assertEquals(2L, syncer.getFilesSynced());
+        assertEquals(0L, syncer.getBatchesSynced());
+    }
+
+    @Test
+    public void concurrentWritesAreSyncedInGroups() throws Exception
+    {
+        final int writers = 8;
+        syncer.setSyncMode(SyncMode.WRITE_BEHIND);
+        syncer.setMaxDelayMs(1000L);
+        syncer.setMaxBatchSize(writers);
+        syncer.init();
+
+        final CyclicBarrier barrier = new CyclicBarrier(writers);
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        try
+        {
+            List<Future<String>> urls = new ArrayList<Future<String>>();
+            for (int i = 0; i < writers; i++)
+            {
+                urls.add(executor.submit(new Callable<String>()
+                {
+                    public String call() throws Exception
+                    {
+                        barrier.await();
+                        return write(store);
+                    }
+                }));
+            }
+            for (Future<String> url : urls)
+            {
+                assertEquals(CONTENT, store.getReader(url.get()).getContentString());
+            }
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+
+        assertEquals(writers, syncer.getFilesSynced());
+        assertTrue("Writers should share groups: " + syncer.getBatchesSynced(), syncer.getBatchesSynced() < writers);
+    }
+
+    @Test
+    public void deduplicatedContentIsSynced()
+    {
+        syncer.setSyncMode(SyncMode.IMMEDIATE);
+        syncer.init();
+        DeduplicatingFileContentStore deduplicatingStore =
+                new DeduplicatingFileContentStore(mock(ApplicationContext.class), new File(root, "dedup"));
+        deduplicatingStore.setFileContentSyncer(syncer);
+        write(deduplicatingStore);
+        // The same content again shares the blob
+        write(deduplicatingStore);
+
+        // The link, the reference and the blob of each write
+        assertEquals(6L, syncer.getFilesSynced());
+    }
+
+    @Test
+    public void stoppedSyncerFailsWriter()
+    {
+        syncer.setSyncMode(SyncMode.WRITE_BEHIND);
+        syncer.init();
+        syncer.destroy();
+        try
+        {
+            write(store);
+            fail("Content must not be accepted without being synced");
+        }
+        catch (ContentIOException e)
+        {
+            // Expected
+        }
+    }
+}
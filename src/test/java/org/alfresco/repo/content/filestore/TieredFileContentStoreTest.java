@@ -0,0 +1,272 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.filestore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.FileTime;
+
+import org.alfresco.repo.content.ContentContext;
+import org.alfresco.repo.content.ContentExistsException;
+import org.alfresco.repo.content.ContentStore;
+import org.alfresco.service.cmr.repository.ContentWriter;
+import org.alfresco.util.GUID;
+import org.alfresco.util.TempFileProvider;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * @see TieredFileContentStore
+ */
+public class TieredFileContentStoreTest
+{
+    private static final String CONTENT = "The quick brown fox jumps over the lazy dog";
+    private static final long TWO_HOURS = 2L * 3600L * 1000L;
+
+    private File root;
+    private FileContentStore fastStore;
+    private FileContentStore slowStore;
+    private TieredFileContentStore store;
+
+    @Before
+    public void setUp()
+    {
+        root = new File(TempFileProvider.getTempDir(), "TieredFileContentStoreTest-" + GUID.generate());
+        fastStore = new FileContentStore(mock(ApplicationContext.class), new File(root, "fast"));
+        slowStore = new FileContentStore(mock(ApplicationContext.class), new File(root, "slow"));
+        store = new TieredFileContentStore();
+        store.setFastStore(fastStore);
+        store.setSlowStore(slowStore);
+        store.setColdAgeMinutes(60L);
+        store.setMinFileAgeMillis(0L);
+        store.init();
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        store.destroy();
+        FileUtils.deleteDirectory(root);
+    }
+
+    private String write(String content)
+    {
+        ContentWriter writer = store.getWriter(ContentStore.NEW_CONTENT_CONTEXT);
+        writer.putContent(content);
+        return writer.getContentUrl();
+    }
+
+    private void makeOld(String contentUrl) throws IOException
+    {
+        File file = fastStore.makeFile(contentUrl);
+        FileTime old = FileTime.fromMillis(System.currentTimeMillis() - TWO_HOURS);
+        Files.getFileAttributeView(file.toPath(), BasicFileAttributeView.class).setTimes(old, old, null);
+    }
+
+    private void restart()
+    {
+        store.destroy();
+        store = new TieredFileContentStore();
+        store.setFastStore(fastStore);
+        store.setSlowStore(slowStore);
+        store.setColdAgeMinutes(60L);
+        store.setMinFileAgeMillis(0L);
+        store.init();
+    }
+
+    @Test
+    public void newContentIsWrittenToFastTier()
+    {
+        String url = write(CONTENT);
+
+        assertTrue(fastStore.exists(url));
+        assertFalse(slowStore.exists(url));
+        assertEquals(CONTENT, store.getReader(url).getContentString());
+        assertEquals(1L, store.getFastTierHits());
+        assertEquals(0L, store.getSlowTierHits());
+    }
+
+    @Test
+    public void coldContentIsMigrated() throws Exception
+    {
+        String hotUrl = write(CONTENT);
+        String coldUrl = write("Something else");
+        makeOld(hotUrl);
+        makeOld(coldUrl);
+        store.getReader(hotUrl).getContentString();
+
+        assertEquals(1L, store.migrate());
+
+        // The fast copy is kept until the next migration
+        assertTrue(slowStore.exists(coldUrl));
+        assertTrue(fastStore.exists(coldUrl));
+        assertFalse(slowStore.exists(hotUrl));
+        assertEquals("Something else".length(), store.getBytesMigrated());
+
+        assertEquals(0L, store.migrate());
+
+        assertFalse(fastStore.exists(coldUrl));
+        assertTrue(fastStore.exists(hotUrl));
+        assertEquals("Something else", store.getReader(coldUrl).getContentString());
+        assertEquals(CONTENT, store.getReader(hotUrl).getContentString());
+        assertEquals(1L, store.getSlowTierHits());
+        assertEquals(1L, store.getFilesMigrated());
+    }
+
+    @Test
+    public void contentReadAgainIsKeptOnFastTier() throws Exception
+    {
+        String url = write(CONTENT);
+        makeOld(url);
+        assertEquals(1L, store.migrate());
+
+        store.getReader(url).getContentString();
+        assertEquals(0L, store.migrate());
+
+        assertTrue(fastStore.exists(url));
+        assertTrue(slowStore.exists(url));
+    }
+
+    @Test
+    public void accessTimesSurviveRestart() throws Exception
+    {
+        String url = write(CONTENT);
+        makeOld(url);
+        store.getReader(url).getContentString();
+
+        restart();
+
+        assertEquals(0L, store.migrate());
+        assertFalse(slowStore.exists(url));
+    }
+
+    @Test
+    public void largeContentIsMigrated()
+    {
+        store.setColdAgeMinutes(1000L);
+        store.setMaxFastFileSizeMB(1L);
+        String smallUrl = write(CONTENT);
+        ContentWriter writer = store.getWriter(ContentStore.NEW_CONTENT_CONTEXT);
+        writer.putContent(new ByteArrayInputStream(new byte[1024 * 1024 + 1]));
+        String largeUrl = writer.getContentUrl();
+
+        assertEquals(1L, store.migrate());
+
+        assertTrue(slowStore.exists(largeUrl));
+        assertFalse(slowStore.exists(smallUrl));
+        assertEquals(1024L * 1024L + 1L, store.getBytesMigrated());
+        assertEquals(1L, store.getLastMigrationFiles());
+        assertTrue(store.getLastMigrationDurationMs() >= 0L);
+    }
+
+    @Test
+    public void recentContentIsNotMigrated()
+    {
+        store.setColdAgeMinutes(0L);
+        store.setMinFileAgeMillis(60000L);
+        String url = write(CONTENT);
+
+        assertEquals(0L, store.migrate());
+        assertFalse(slowStore.exists(url));
+    }
+
+    @Test
+    public void incompleteCopyIsReplaced() throws Exception
+    {
+        String url = write(CONTENT);
+        makeOld(url);
+        File partial = slowStore.createNewFile(url);
+        FileUtils.writeStringToFile(partial, "The quick", "UTF-8");
+
+        assertEquals(1L, store.migrate());
+        assertEquals(CONTENT, slowStore.getReader(url).getContentString());
+    }
+
+    @Test
+    public void deleteRemovesContentFromBothTiers() throws Exception
+    {
+        String url = write(CONTENT);
+        makeOld(url);
+        store.migrate();
+        assertTrue(fastStore.exists(url));
+        assertTrue(slowStore.exists(url));
+
+        assertTrue(store.delete(url));
+
+        assertFalse(store.exists(url));
+        assertFalse(store.getReader(url).exists());
+        assertEquals(1L, store.getMisses());
+    }
+
+    @Test
+    public void hitRatios() throws Exception
+    {
+        String fastUrl = write(CONTENT);
+        String slowUrl = write("Something else");
+        makeOld(slowUrl);
+        store.migrate();
+        store.migrate();
+
+        store.getReader(fastUrl);
+        store.getReader(fastUrl);
+        store.getReader(slowUrl);
+        store.getReader(FileContentStore.createNewFileStoreUrl());
+
+        assertEquals(0.5, store.getFastTierHitRatio(), 0.0001);
+        assertEquals(0.25, store.getSlowTierHitRatio(), 0.0001);
+    }
+
+    @Test
+    public void specificUrlOnSlowTierIsInUse() throws Exception
+    {
+        String url = write(CONTENT);
+        makeOld(url);
+        store.migrate();
+        store.migrate();
+
+        try
+        {
+            store.getWriter(new ContentContext(null, url));
+            fail("Content URL in use on the slow tier must not be reused");
+        }
+        catch (ContentExistsException e)
+        {
+            // Expected
+        }
+    }
+}
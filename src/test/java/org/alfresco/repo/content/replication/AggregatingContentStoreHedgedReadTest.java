@@ -0,0 +1,223 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.replication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.repo.content.ContentStore;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Tests hedged reads across the stores of an {@link AggregatingContentStore}.
+ *
+ * @see AggregatingContentStore#setHedgeDelayMs(long)
+ */
+public class AggregatingContentStoreHedgedReadTest
+{
+    private static final String CONTENT_URL = "store://2021/1/1/0/0/hedged.bin";
+
+    private ContentStore primaryStore;
+    private ContentStore secondaryStore;
+    private ContentReader primaryReader;
+    private ContentReader secondaryReader;
+    private CountDownLatch primaryLatch;
+    private AggregatingContentStore aggregatingStore;
+
+    @Before
+    public void setUp()
+    {
+        primaryStore = mock(ContentStore.class);
+        secondaryStore = mock(ContentStore.class);
+        primaryReader = mock(ContentReader.class);
+        secondaryReader = mock(ContentReader.class);
+        when(primaryStore.getReader(CONTENT_URL)).thenReturn(primaryReader);
+        when(secondaryStore.getReader(CONTENT_URL)).thenReturn(secondaryReader);
+        primaryLatch = new CountDownLatch(0);
+
+        aggregatingStore = new AggregatingContentStore();
+        aggregatingStore.setPrimaryStore(primaryStore);
+        aggregatingStore.setSecondaryStores(Collections.singletonList(secondaryStore));
+        aggregatingStore.setHedgeDelayMs(50L);
+        aggregatingStore.init();
+    }
+
+    @After
+    public void tearDown()
+    {
+        primaryLatch.countDown();
+        aggregatingStore.destroy();
+    }
+
+    /**
+     * Make the primary store hang when asked for content, until the test finishes
+     */
+    private void hangPrimaryStore()
+    {
+        primaryLatch = new CountDownLatch(1);
+        when(primaryReader.exists()).thenAnswer(new Answer<Boolean>()
+        {
+            public Boolean answer(InvocationOnMock invocation) throws Throwable
+            {
+                primaryLatch.await(10L, TimeUnit.SECONDS);
+                return true;
+            }
+        });
+    }
+
+    @Test
+    public void slowPrimaryStoreIsHedged()
+    {
+        hangPrimaryStore();
+        when(secondaryReader.exists()).thenReturn(true);
+
+        long start = System.nanoTime();
+        ContentReader reader = aggregatingStore.getReader(CONTENT_URL);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertSame(secondaryReader, reader);
+        assertTrue("The read waited for the primary store: " + elapsedMs + "ms", elapsedMs < 5000L);
+        assertEquals(1L, aggregatingStore.getHedgedReads());
+        assertEquals(1L, aggregatingStore.getHedgedReadWins());
+    }
+
+    @Test
+    public void readsAreHedgedWithoutInit()
+    {
+        aggregatingStore.destroy();
+        aggregatingStore = new AggregatingContentStore();
+        aggregatingStore.setPrimaryStore(primaryStore);
+        aggregatingStore.setSecondaryStores(Collections.singletonList(secondaryStore));
+        aggregatingStore.setHedgeDelayMs(50L);
+        hangPrimaryStore();
+        when(secondaryReader.exists()).thenReturn(true);
+
+        assertSame(secondaryReader, aggregatingStore.getReader(CONTENT_URL));
+        assertEquals(1L, aggregatingStore.getHedgedReads());
+    }
+
+    @Test
+    public void slowPrimaryStoreIsAwaitedWhenNoOtherStoreHasContent()
+    {
+        when(primaryReader.exists()).thenAnswer(new Answer<Boolean>()
+        {
+            public Boolean answer(InvocationOnMock invocation) throws Throwable
+            {
+                Thread.sleep(200L);
+                return true;
+            }
+        });
+        when(secondaryReader.exists()).thenReturn(false);
+
+        assertSame(primaryReader, aggregatingStore.getReader(CONTENT_URL));
+        assertEquals(1L, aggregatingStore.getHedgedReads());
+        assertEquals(0L, aggregatingStore.getHedgedReadWins());
+    }
+
+    @Test
+    public void busyThreadsFallBackToReadingInTurn()
+    {
+        aggregatingStore.destroy();
+        aggregatingStore.setHedgedReadThreads(1);
+        aggregatingStore.init();
+        when(primaryReader.exists()).thenAnswer(new Answer<Boolean>()
+        {
+            public Boolean answer(InvocationOnMock invocation) throws Throwable
+            {
+                Thread.sleep(200L);
+                return false;
+            }
+        });
+        when(secondaryReader.exists()).thenReturn(true);
+
+        assertSame(secondaryReader, aggregatingStore.getReader(CONTENT_URL));
+        assertEquals(0L, aggregatingStore.getHedgedReads());
+    }
+
+    @Test
+    public void missingContentMovesStraightToTheNextStore()
+    {
+        when(primaryReader.exists()).thenReturn(false);
+        when(secondaryReader.exists()).thenReturn(true);
+
+        assertSame(secondaryReader, aggregatingStore.getReader(CONTENT_URL));
+        assertEquals(0L, aggregatingStore.getHedgedReads());
+    }
+
+    @Test
+    public void primaryReaderIsReturnedWhenNoStoreHasContent()
+    {
+        when(primaryReader.exists()).thenReturn(false);
+        when(secondaryReader.exists()).thenReturn(false);
+
+        assertSame(primaryReader, aggregatingStore.getReader(CONTENT_URL));
+    }
+
+    @Test
+    public void storesAreAskedInTurnWithoutHedgeDelay()
+    {
+        aggregatingStore.destroy();
+        aggregatingStore.setHedgeDelayMs(0L);
+        aggregatingStore.init();
+        when(primaryReader.exists()).thenReturn(false);
+        when(secondaryReader.exists()).thenReturn(true);
+
+        assertSame(secondaryReader, aggregatingStore.getReader(CONTENT_URL));
+        assertEquals(0L, aggregatingStore.getHedgedReads());
+        assertEquals(2, aggregatingStore.getReadLatencyHistograms().length);
+        assertTrue(aggregatingStore.getReadLatencyHistograms()[0].startsWith("primary: <"));
+    }
+
+    @Test
+    public void latenciesAreBucketedByPowersOfTwo()
+    {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 98; i++)
+        {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(500L));
+        }
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(3L));
+        histogram.record(TimeUnit.MINUTES.toNanos(1L));
+
+        assertEquals(100L, histogram.getCount());
+        assertEquals(1L, histogram.getPercentileMs(50.0));
+        assertEquals(4L, histogram.getPercentileMs(99.0));
+        assertEquals(Long.MAX_VALUE, histogram.getPercentileMs(100.0));
+        assertEquals("<1ms=98, <4ms=1, >=16384ms=1", histogram.toString());
+    }
+}
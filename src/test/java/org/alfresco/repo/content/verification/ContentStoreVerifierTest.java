@@ -0,0 +1,213 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.verification;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.content.ContentServiceImpl;
+import org.alfresco.repo.content.ContentStore;
+import org.alfresco.repo.content.MimetypeMap;
+import org.alfresco.repo.content.filestore.FileContentReader;
+import org.alfresco.repo.content.verification.ContentStoreVerifier.ContentVerificationResult;
+import org.alfresco.repo.domain.contentdata.ContentDataDAO;
+import org.alfresco.repo.domain.contentdata.ContentUrlEntity;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.ServiceRegistry;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.ContentService;
+import org.alfresco.service.cmr.repository.ContentWriter;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.util.ApplicationContextHelper;
+import org.alfresco.util.GUID;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * @see ContentStoreVerifier
+ */
+public class ContentStoreVerifierTest extends TestCase
+{
+    private static final String CONTENT = "The quick brown fox jumps over the lazy dog";
+
+    private ContentServiceImpl contentServiceImpl;
+    private ContentService contentService;
+    private NodeService nodeService;
+    private TransactionService transactionService;
+    private ContentDataDAO contentDataDAO;
+    private ContentStoreVerifier verifier;
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void setUp() throws Exception
+    {
+        ApplicationContext ctx = ApplicationContextHelper.getApplicationContext();
+        AuthenticationUtil.setRunAsUserSystem();
+
+        ServiceRegistry serviceRegistry = (ServiceRegistry) ctx.getBean("ServiceRegistry");
+        contentService = serviceRegistry.getContentService();
+        nodeService = serviceRegistry.getNodeService();
+        transactionService = serviceRegistry.getTransactionService();
+        contentDataDAO = (ContentDataDAO) ctx.getBean("contentDataDAO");
+        contentServiceImpl = (ContentServiceImpl) ctx.getBean("contentService");
+        contentServiceImpl.setContentDigestAlgorithm("SHA-256");
+
+        verifier = new ContentStoreVerifier();
+        verifier.setContentDataDAO(contentDataDAO);
+        verifier.setStores((List<ContentStore>) ctx.getBean("contentStoresToClean"));
+        verifier.setJobLockService(serviceRegistry.getJobLockService());
+        verifier.setTransactionService(transactionService);
+        verifier.init();
+    }
+
+    @Override
+    public void tearDown() throws Exception
+    {
+        contentServiceImpl.setContentDigestAlgorithm(null);
+        AuthenticationUtil.clearCurrentSecurityContext();
+    }
+
+    /**
+     * @return          Returns the URL of new content written to a new node
+     */
+    private String writeContent()
+    {
+        return transactionService.getRetryingTransactionHelper().doInTransaction(new RetryingTransactionCallback<String>()
+        {
+            public String execute() throws Throwable
+            {
+                StoreRef storeRef = nodeService.createStore("test", "ContentStoreVerifierTest-" + GUID.generate());
+                NodeRef rootNodeRef = nodeService.getRootNode(storeRef);
+                Map<QName, Serializable> properties = Collections.singletonMap(ContentModel.PROP_NAME, (Serializable) "test.txt");
+                NodeRef contentNodeRef = nodeService.createNode(
+                        rootNodeRef,
+                        ContentModel.ASSOC_CHILDREN,
+                        ContentModel.ASSOC_CHILDREN,
+                        ContentModel.TYPE_CONTENT,
+                        properties).getChildRef();
+                ContentWriter writer = contentService.getWriter(contentNodeRef, ContentModel.PROP_CONTENT, true);
+                writer.setMimetype(MimetypeMap.MIMETYPE_TEXT_PLAIN);
+                writer.setEncoding("UTF-8");
+                writer.putContent(CONTENT);
+                return writer.getContentUrl();
+            }
+        });
+    }
+
+    private ContentVerificationResult verify(final String contentUrl)
+    {
+        return transactionService.getRetryingTransactionHelper().doInTransaction(new RetryingTransactionCallback<ContentVerificationResult>()
+        {
+            public ContentVerificationResult execute() throws Throwable
+            {
+                ContentVerificationResult result = new ContentVerificationResult();
+                verifier.verify(contentDataDAO.getContentUrl(contentUrl), null, result);
+                return result;
+            }
+        });
+    }
+
+    /**
+     * Overwrite the content held in the file store
+     */
+    private void corrupt(String contentUrl, String content) throws Exception
+    {
+        ContentReader reader = contentService.getRawReader(contentUrl);
+        assertTrue("Test needs content in a file store: " + reader, reader instanceof FileContentReader);
+        File file = ((FileContentReader) reader).getFile();
+        FileOutputStream os = new FileOutputStream(file);
+        try
+        {
+            os.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        finally
+        {
+            os.close();
+        }
+    }
+
+    public void testDigestIsRecordedWithContentUrl() throws Exception
+    {
+        String contentUrl = writeContent();
+
+        ContentUrlEntity contentUrlEntity = contentDataDAO.getContentUrl(contentUrl);
+        assertEquals("SHA-256:" + DigestUtils.sha256Hex(CONTENT), contentUrlEntity.getContentDigest());
+    }
+
+    public void testIntactContentIsVerified() throws Exception
+    {
+        String contentUrl = writeContent();
+
+        ContentVerificationResult result = verify(contentUrl);
+        assertEquals(1L, result.getVerified());
+        assertEquals(CONTENT.length(), result.getBytesRead());
+    }
+
+    public void testAlteredContentIsDetected() throws Exception
+    {
+        String contentUrl = writeContent();
+        corrupt(contentUrl, CONTENT.toUpperCase());
+
+        ContentVerificationResult result = verify(contentUrl);
+        assertEquals(0L, result.getVerified());
+        assertEquals(1L, result.getDigestMismatches());
+    }
+
+    public void testTruncatedContentIsDetected() throws Exception
+    {
+        String contentUrl = writeContent();
+        corrupt(contentUrl, CONTENT.substring(0, 10));
+
+        ContentVerificationResult result = verify(contentUrl);
+        assertEquals(1L, result.getSizeMismatches());
+    }
+
+    public void testMissingDigestIsRecorded() throws Exception
+    {
+        contentServiceImpl.setContentDigestAlgorithm(null);
+        String contentUrl = writeContent();
+        assertNull(contentDataDAO.getContentUrl(contentUrl).getContentDigest());
+
+        verifier.setDigestAlgorithm("SHA-256");
+        ContentVerificationResult result = verify(contentUrl);
+        assertEquals(1L, result.getVerified());
+        assertEquals(1L, result.getDigestsRecorded());
+        assertEquals("SHA-256:" + DigestUtils.sha256Hex(CONTENT), contentDataDAO.getContentUrl(contentUrl).getContentDigest());
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.node;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.cache.OffHeapSimpleCache;
+import org.alfresco.repo.domain.propval.CompactSerializableCodec;
+import org.alfresco.repo.domain.qname.QNameDAO;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.Pair;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @see NodeCacheValueSerializer
+ */
+public class NodeCacheValueSerializerTest
+{
+    private NodeCacheValueSerializer serializer;
+    private OffHeapSimpleCache.ValueSerializer javaSerializer;
+
+    @Before
+    public void setUp()
+    {
+        QNameDAO qnameDAO = mock(QNameDAO.class);
+        when(qnameDAO.getQName(ContentModel.PROP_NAME)).thenReturn(new Pair<Long, QName>(7L, ContentModel.PROP_NAME));
+        when(qnameDAO.getQName(7L)).thenReturn(new Pair<Long, QName>(7L, ContentModel.PROP_NAME));
+        // The codec is not initialised, so that it is not given to the SerializableTypeHandler
+        CompactSerializableCodec codec = new CompactSerializableCodec();
+        codec.setQnameDAO(qnameDAO);
+        serializer = new NodeCacheValueSerializer();
+        serializer.setCodec(codec);
+        javaSerializer = new OffHeapSimpleCache.JavaValueSerializer();
+    }
+
+    private Object roundTrip(Object value)
+    {
+        return serializer.deserialize(serializer.serialize(value));
+    }
+
+    private static NodeEntity newNode()
+    {
+        StoreEntity store = new StoreEntity();
+        store.setId(6L);
+        store.setVersion(1L);
+        store.setProtocol("workspace");
+        store.setIdentifier("SpacesStore");
+        TransactionEntity txn = new TransactionEntity();
+        txn.setId(1234L);
+        txn.setChangeTxnId("a5c2f1a8-54a8-4b34-9b30-cf7bfd3b5b64");
+        AuditablePropertiesEntity auditableProperties = new AuditablePropertiesEntity();
+        auditableProperties.setAuditValues("admin", new Date(1565000000000L), true, 1000L);
+        NodeEntity node = new NodeEntity();
+        node.setId(1001L);
+        node.setVersion(3L);
+        node.setStore(store);
+        node.setUuid("0d3b26ff-c4c1-4680-8622-8608ea7ab4b2");
+        node.setTypeQNameId(24L);
+        node.setLocaleId(1L);
+        node.setAclId(5L);
+        node.setTransaction(txn);
+        node.setAuditableProperties(auditableProperties);
+        node.setShardKey("key");
+        node.setExplicitShardId(2);
+        return node;
+    }
+
+    private static void assertNodeEquals(NodeEntity expected, NodeEntity actual)
+    {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getVersion(), actual.getVersion());
+        assertEquals(expected.getStore().getId(), actual.getStore().getId());
+        assertEquals(expected.getStore().getStoreRef(), actual.getStore().getStoreRef());
+        assertEquals(expected.getNodeRef(), actual.getNodeRef());
+        assertEquals(expected.getTypeQNameId(), actual.getTypeQNameId());
+        assertEquals(expected.getLocaleId(), actual.getLocaleId());
+        assertEquals(expected.getAclId(), actual.getAclId());
+        assertEquals(expected.getTransaction().getId(), actual.getTransaction().getId());
+        assertEquals(expected.getTransaction().getChangeTxnId(), actual.getTransaction().getChangeTxnId());
+        assertEquals(expected.getAuditableProperties().toString(), actual.getAuditableProperties().toString());
+        assertEquals(expected.getShardKey(), actual.getShardKey());
+        assertEquals(expected.getExplicitShardId(), actual.getExplicitShardId());
+        assertEquals(expected.isLocked(), actual.isLocked());
+    }
+
+    @Test
+    public void nodeIsReadBackLocked()
+    {
+        NodeEntity node = newNode();
+        node.lock();
+        NodeEntity copy = (NodeEntity) roundTrip(node);
+        assertNodeEquals(node, copy);
+        try
+        {
+            copy.setAclId(6L);
+            fail("Node read from the cache must stay locked");
+        }
+        catch (IllegalStateException e)
+        {
+            // Expected
+        }
+        try
+        {
+            copy.getAuditableProperties().setAuditModifier("other");
+            fail("Auditable properties read from the cache must stay locked");
+        }
+        catch (IllegalStateException e)
+        {
+            // Expected
+        }
+    }
+
+    @Test
+    public void unlockedNodeIsReadBackUnlocked()
+    {
+        NodeEntity node = newNode();
+        node.setAuditableProperties(null);
+        node.getTransaction().setServer(new ServerEntity());
+        node.getTransaction().getServer().setId(3L);
+        node.getTransaction().getServer().setIpAddress("127.0.0.1");
+        NodeEntity copy = (NodeEntity) roundTrip(node);
+        assertNull(copy.getAuditableProperties());
+        assertEquals("127.0.0.1", copy.getTransaction().getServer().getIpAddress());
+        copy.setAclId(6L);
+    }
+
+    @Test
+    public void nodeWithRootNodeFallsBack()
+    {
+        NodeEntity root = newNode();
+        root.lock();
+        NodeEntity node = newNode();
+        node.getStore().setRootNode(root);
+        node.lock();
+        NodeEntity copy = (NodeEntity) roundTrip(node);
+        assertNodeEquals(node, copy);
+        assertEquals(root.getId(), copy.getStore().getRootNode().getId());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void unmodifiableCollectionsStayUnmodifiable()
+    {
+        Map<QName, Serializable> properties = new HashMap<QName, Serializable>();
+        properties.put(ContentModel.PROP_NAME, "Company Home");
+        properties.put(ContentModel.PROP_DESCRIPTION, null);
+        properties.put(ContentModel.PROP_SIZE_CURRENT, 12345L);
+        Map<QName, Serializable> propertiesCopy = (Map<QName, Serializable>) roundTrip(Collections.unmodifiableMap(properties));
+        assertEquals(properties, propertiesCopy);
+        try
+        {
+            propertiesCopy.put(ContentModel.PROP_TITLE, "title");
+            fail("Properties read from the cache must stay unmodifiable");
+        }
+        catch (UnsupportedOperationException e)
+        {
+            // Expected
+        }
+
+        Set<QName> aspects = new HashSet<QName>();
+        aspects.add(ContentModel.ASPECT_AUDITABLE);
+        aspects.add(ContentModel.ASPECT_TITLED);
+        Set<QName> aspectsCopy = (Set<QName>) roundTrip(Collections.unmodifiableSet(aspects));
+        assertEquals(aspects, aspectsCopy);
+        try
+        {
+            aspectsCopy.add(ContentModel.ASPECT_VERSIONABLE);
+            fail("Aspects read from the cache must stay unmodifiable");
+        }
+        catch (UnsupportedOperationException e)
+        {
+            // Expected
+        }
+    }
+
+    @Test
+    public void otherValues()
+    {
+        assertNull(roundTrip(null));
+        assertEquals(1001L, roundTrip(1001L));
+        assertEquals("@@VALUE_NOT_FOUND@@", roundTrip("@@VALUE_NOT_FOUND@@"));
+        HashMap<String, Integer> plain = new HashMap<String, Integer>();
+        plain.put("a", 1);
+        assertEquals(plain, roundTrip(plain));
+    }
+
+    @Test
+    public void smallerThanJavaSerialization()
+    {
+        NodeEntity node = newNode();
+        node.lock();
+        int compact = serializer.serialize(node).length;
+        int java = javaSerializer.serialize(node).length;
+        assertTrue("Node: compact " + compact + " bytes, Java " + java + " bytes", compact * 3 < java);
+
+        Map<QName, Serializable> properties = new HashMap<QName, Serializable>();
+        properties.put(ContentModel.PROP_NAME, "Company Home");
+        properties.put(ContentModel.PROP_SIZE_CURRENT, 12345L);
+        Map<QName, Serializable> unmodifiable = Collections.unmodifiableMap(properties);
+        compact = serializer.serialize(unmodifiable).length;
+        java = javaSerializer.serialize(unmodifiable).length;
+        assertTrue("Properties: compact " + compact + " bytes, Java " + java + " bytes", compact * 2 < java);
+    }
+}
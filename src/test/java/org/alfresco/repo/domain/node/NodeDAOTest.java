@@ -40,6 +40,7 @@ import org.alfresco.repo.cache.SimpleCache;
 import org.alfresco.repo.cache.TransactionalCache;
 import org.alfresco.repo.cache.TransactionalCache.ValueHolder;
 import org.alfresco.repo.domain.node.NodeDAO.NodeRefQueryCallback;
+import org.alfresco.repo.domain.permissions.AclDAO;
 import org.alfresco.repo.transaction.RetryingTransactionHelper;
 import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
 import org.alfresco.service.ServiceRegistry;
@@ -73,6 +74,8 @@ public class NodeDAOTest extends TestCase
     private TransactionService transactionService;
     private RetryingTransactionHelper txnHelper;
     private NodeDAO nodeDAO;
+    private AclDAO aclDAO;
+    private SimpleCache<Serializable, Object> aclSharedCache;
     private SimpleCache<Serializable, ValueHolder<Node>> rootNodesCache;    
     @SuppressWarnings("unchecked")
     @Override
@@ -86,6 +89,8 @@ public class NodeDAOTest extends TestCase
         txnHelper.setMaxRetryWaitMs(50);
         
         nodeDAO = (NodeDAO) ctx.getBean("nodeDAO");
+        aclDAO = (AclDAO) ctx.getBean("aclDAO");
+        aclSharedCache = (SimpleCache<Serializable, Object>) ctx.getBean("aclSharedCache");
         rootNodesCache = (SimpleCache<Serializable, ValueHolder<Node>>) ctx.getBean("node.rootNodesSharedCache");
     }
     
@@ -337,6 +342,57 @@ public class NodeDAOTest extends TestCase
         txnHelper.doInTransaction(callback, true);
     }
     
+    /**
+     * Check that prefetching parent associations and ACLs with the nodes gives the same
+     * results as loading them one at a time
+     */
+    public void testCacheNodesWithPrefetch() throws Throwable
+    {
+        Long minNodeId = nodeDAO.getMinNodeId();
+        final List<Long> nodeIds = new ArrayList<Long>(1000);
+        for (long i = 0; i < 1000; i++)
+        {
+            nodeIds.add(Long.valueOf(minNodeId.longValue() + i));
+        }
+        final boolean[] prefetch = new boolean[] {false};
+        RetryingTransactionCallback<List<Object>> callback = new RetryingTransactionCallback<List<Object>>()
+        {
+            public List<Object> execute() throws Throwable
+            {
+                nodeDAO.clear();
+                aclSharedCache.clear();
+                ((AbstractNodeDAOImpl) nodeDAO).setPrefetchParentAssocs(prefetch[0]);
+                ((AbstractNodeDAOImpl) nodeDAO).setPrefetchAcls(prefetch[0]);
+                nodeDAO.cacheNodesById(nodeIds);
+                List<Object> results = new ArrayList<Object>(nodeIds.size() * 2);
+                for (Long nodeId : nodeIds)
+                {
+                    if (!nodeDAO.exists(nodeId))
+                    {
+                        continue;
+                    }
+                    results.add(nodeDAO.getPrimaryParentAssoc(nodeId));
+                    Long aclId = nodeDAO.getNodeAclId(nodeId);
+                    // The entries do not implement equals
+                    results.add(aclId == null ? null : aclDAO.getAccessControlList(aclId).getEntries().toString());
+                }
+                return results;
+            }
+        };
+        try
+        {
+            List<Object> expected = txnHelper.doInTransaction(callback, true);
+            prefetch[0] = true;
+            List<Object> prefetched = txnHelper.doInTransaction(callback, true);
+            assertEquals("Prefetched parent associations or ACLs do not match. ", expected, prefetched);
+        }
+        finally
+        {
+            ((AbstractNodeDAOImpl) nodeDAO).setPrefetchParentAssocs(false);
+            ((AbstractNodeDAOImpl) nodeDAO).setPrefetchAcls(false);
+        }
+    }
+    
     /**
      * Ensure that the {@link NodeEntity} values cached as root nodes are valid instances.
      * <p/>
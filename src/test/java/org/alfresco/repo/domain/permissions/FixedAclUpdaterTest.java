@@ -27,10 +27,12 @@ package org.alfresco.repo.domain.permissions;
 
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 import org.alfresco.model.ContentModel;
 import org.alfresco.repo.domain.node.NodeDAO;
 import org.alfresco.repo.domain.node.NodeDAO.NodeRefQueryCallback;
+import org.alfresco.repo.domain.node.NodeIdAndAclId;
 import org.alfresco.repo.model.Repository;
 import org.alfresco.repo.security.authentication.AuthenticationUtil;
 import org.alfresco.repo.security.authentication.AuthenticationUtil.RunAsWork;
@@ -72,6 +74,7 @@ public class FixedAclUpdaterTest extends TestCase
     private PermissionsDaoComponent permissionsDaoComponent;
     private PermissionService permissionService;
     private NodeDAO nodeDAO;
+    private AclDAO aclDAO;
 
     @Override
     public void setUp() throws Exception
@@ -85,6 +88,7 @@ public class FixedAclUpdaterTest extends TestCase
         permissionsDaoComponent = (PermissionsDaoComponent) ctx.getBean("admPermissionsDaoComponent");
         permissionService = (PermissionService) ctx.getBean("permissionService");
         nodeDAO = (NodeDAO) ctx.getBean("nodeDAO");
+        aclDAO = (AclDAO) ctx.getBean("aclDAO");
 
         AuthenticationUtil.setFullyAuthenticatedUser(AuthenticationUtil.getSystemUserName());
 
@@ -226,6 +230,77 @@ public class FixedAclUpdaterTest extends TestCase
         }, false, true);
     }
 
+    @Test
+    public void testStreamingRunProcessesAllPendingNodes()
+    {
+        assertFalse("Streaming should be disabled by default", fixedAclUpdater.isStreaming());
+        fixedAclUpdater.setStreaming(true);
+        // partition the subtree into many small parts
+        fixedAclUpdater.setMaxItemBatchSize(2);
+        fixedAclUpdater.setStreamingExecutor(new Executor()
+        {
+            @Override
+            public void execute(Runnable command)
+            {
+                command.run();
+            }
+        });
+        try
+        {
+            // the run handed over when the transaction commits keeps going until the whole subtree is updated
+            txnHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+            {
+                @Override
+                public Void execute() throws Throwable
+                {
+                    permissionService.setInheritParentPermissions(folderNodeRef, false, true);
+                    return null;
+                }
+            }, false, true);
+            txnHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+            {
+                @Override
+                public Void execute() throws Throwable
+                {
+                    assertEquals("Not all nodes were processed", 0, getNodesCountWithPendingFixedAclAspect());
+                    Long folderId = nodeDAO.getNodePair(folderNodeRef).getFirst();
+                    Long sharedAclId = aclDAO.getInheritedAccessControlList(nodeDAO.getNodeAclId(folderId));
+                    assertEquals("Not all descendants inherit", 0, countNodesWithoutAcl(folderId, sharedAclId));
+                    return null;
+                }
+            }, false, true);
+        }
+        finally
+        {
+            fixedAclUpdater.setStreaming(false);
+            fixedAclUpdater.setMaxItemBatchSize(100);
+            fixedAclUpdater.setStreamingExecutor((Executor) ctx.getBean("fixedAclUpdaterStreamingExecutor"));
+        }
+
+        assertFalse(fixedAclUpdater.isRunning());
+        assertTrue(fixedAclUpdater.getPasses() > 0);
+        assertTrue(fixedAclUpdater.getNodesProcessed() > 0);
+        assertEquals(0, fixedAclUpdater.getNodesPending());
+        assertTrue(fixedAclUpdater.getRunTimeMs() >= 0);
+    }
+
+    /**
+     * Count the descendants of a node that do not have the given ACL
+     */
+    private int countNodesWithoutAcl(Long parentId, Long aclId)
+    {
+        int count = 0;
+        for (NodeIdAndAclId child : nodeDAO.getPrimaryChildrenAcls(parentId))
+        {
+            if (!aclId.equals(child.getAclId()))
+            {
+                count++;
+            }
+            count += countNodesWithoutAcl(child.getId(), aclId);
+        }
+        return count;
+    }
+
     private static class GetNodesCountWithAspectCallback implements NodeRefQueryCallback
     {
         int nodesNumber = 0;
@@ -0,0 +1,255 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.propval;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+
+import org.alfresco.ibatis.SerializableTypeHandler;
+import org.alfresco.repo.domain.qname.QNameDAO;
+import org.alfresco.service.cmr.repository.MLText;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.Pair;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @see CompactSerializableCodec
+ */
+public class CompactSerializableCodecTest
+{
+    private static final QName QNAME_PERSISTED = QName.createQName("http://www.alfresco.org/model/content/1.0", "name");
+    private static final QName QNAME_NEW = QName.createQName("http://www.alfresco.org/test/1.0", "new");
+
+    private CompactSerializableCodec codec;
+
+    @Before
+    public void setUp()
+    {
+        QNameDAO qnameDAO = mock(QNameDAO.class);
+        when(qnameDAO.getQName(QNAME_PERSISTED)).thenReturn(new Pair<Long, QName>(7L, QNAME_PERSISTED));
+        when(qnameDAO.getQName(7L)).thenReturn(new Pair<Long, QName>(7L, QNAME_PERSISTED));
+        codec = new CompactSerializableCodec();
+        codec.setQnameDAO(qnameDAO);
+    }
+
+    @After
+    public void tearDown()
+    {
+        SerializableTypeHandler.setSerializableCodec(null, false);
+    }
+
+    private byte[] encode(Serializable value) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.encode(value, out);
+        return out.toByteArray();
+    }
+
+    private Serializable roundTrip(Serializable value) throws IOException
+    {
+        return codec.decode(new ByteArrayInputStream(encode(value)));
+    }
+
+    private static byte[] javaSerialize(Serializable value) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(out);
+        oos.writeObject(value);
+        oos.close();
+        return out.toByteArray();
+    }
+
+    /**
+     * A map of the sort of values held in serializable properties
+     */
+    private static HashMap<Serializable, Serializable> createPropertyMap()
+    {
+        MLText mlText = new MLText();
+        mlText.put(Locale.ENGLISH, "Hello");
+        mlText.put(new Locale("de", "CH"), "Gr\u00fcezi");
+        ArrayList<Serializable> list = new ArrayList<Serializable>();
+        list.add("a");
+        list.add(null);
+        list.add(Integer.valueOf(-1));
+        HashSet<Serializable> set = new HashSet<Serializable>();
+        set.add(new NodeRef("workspace", "SpacesStore", "0f1b6c7e-7b4b-4bb0-a1ab-ddbbd9bd3e93"));
+
+        HashMap<Serializable, Serializable> map = new HashMap<Serializable, Serializable>();
+        map.put(QNAME_PERSISTED, "Document.txt");
+        map.put(QNAME_NEW, Long.MIN_VALUE);
+        map.put("maxLong", Long.MAX_VALUE);
+        map.put("int", Integer.MAX_VALUE);
+        map.put("float", 1.5f);
+        map.put("double", -2.25d);
+        map.put("true", Boolean.TRUE);
+        map.put("false", Boolean.FALSE);
+        map.put("null", null);
+        map.put("date", new Date(1571212800000L));
+        map.put("locale", Locale.FRANCE);
+        map.put("mlText", mlText);
+        map.put("list", list);
+        map.put("set", set);
+        return map;
+    }
+
+    @Test
+    public void valuesSurviveRoundTrip() throws Exception
+    {
+        HashMap<Serializable, Serializable> map = createPropertyMap();
+        Serializable decoded = roundTrip(map);
+        assertEquals(map, decoded);
+        assertEquals(HashMap.class, decoded.getClass());
+        assertEquals(MLText.class, ((HashMap<?, ?>) decoded).get("mlText").getClass());
+        assertNull(roundTrip(null));
+        assertEquals("", roundTrip(""));
+    }
+
+    @Test
+    public void loneSurrogatesSurviveRoundTrip() throws Exception
+    {
+        String[] values = new String[] {
+                "a\ud800b",
+                "\udc00",
+                "end\ud83d",
+                "\ud83d\ude00 pair then lone \ude00\ud83d",
+                "\u00e9\udbff\udbff\u20ac" };
+        for (String value : values)
+        {
+            assertEquals(value, roundTrip(value));
+        }
+        NodeRef nodeRef = new NodeRef("workspace", "SpacesStore", "id\udfff");
+        assertEquals(nodeRef, roundTrip(nodeRef));
+
+        // Well-formed strings, including supplementary characters, are still plain UTF-8
+        String wellFormed = "Gr\u00fcezi \ud83d\ude00";
+        byte[] utf8 = wellFormed.getBytes(StandardCharsets.UTF_8);
+        byte[] encoded = encode(wellFormed);
+        // Header, tag, a one-byte length and the UTF-8 bytes
+        assertEquals(4 + utf8.length, encoded.length);
+        assertEquals(wellFormed, roundTrip(wellFormed));
+    }
+
+    @Test
+    public void encodingIsSmallerThanJavaSerialization() throws Exception
+    {
+        HashMap<Serializable, Serializable> map = createPropertyMap();
+        int compact = encode(map).length;
+        int java = javaSerialize(map).length;
+        assertTrue("Compact encoding of " + compact + " bytes is not smaller than " + java, compact < java / 2);
+    }
+
+    @Test
+    public void otherTypesFallBackToJavaSerialization() throws Exception
+    {
+        ArrayList<Serializable> list = new ArrayList<Serializable>();
+        Timestamp timestamp = new Timestamp(1000L);
+        list.add(timestamp);
+        list.add(new Locale.Builder().setLanguage("sr").setScript("Latn").setRegion("RS").build());
+        Serializable decoded = roundTrip(list);
+        assertEquals(list, decoded);
+        assertEquals(Timestamp.class, ((ArrayList<?>) decoded).get(0).getClass());
+    }
+
+    @Test
+    public void persistedQNamesAreWrittenAsIds() throws Exception
+    {
+        byte[] persisted = encode(QNAME_PERSISTED);
+        byte[] notPersisted = encode(QNAME_NEW);
+        // Header, tag and a one-byte ID
+        assertEquals(4, persisted.length);
+        assertTrue(notPersisted.length > QNAME_NEW.getNamespaceURI().length());
+        assertEquals(QNAME_PERSISTED, roundTrip(QNAME_PERSISTED));
+        assertEquals(QNAME_NEW, roundTrip(QNAME_NEW));
+    }
+
+    @Test
+    public void copyIsIndependentOfOriginal()
+    {
+        CompactSerializableCodec noDAO = new CompactSerializableCodec();
+        HashMap<Serializable, Serializable> map = createPropertyMap();
+        @SuppressWarnings("unchecked")
+        HashMap<Serializable, Serializable> copy = (HashMap<Serializable, Serializable>) noDAO.copy(map);
+        assertEquals(map, copy);
+        assertNotSame(map.get("list"), copy.get("list"));
+        copy.put("extra", "value");
+        assertEquals(map.size() + 1, copy.size());
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedValueIsRejected() throws Exception
+    {
+        byte[] bytes = encode(createPropertyMap());
+        byte[] truncated = new byte[bytes.length - 3];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+        codec.decode(new ByteArrayInputStream(truncated));
+    }
+
+    @Test(expected = IOException.class)
+    public void unknownQNameIdIsRejected() throws Exception
+    {
+        byte[] bytes = encode(QNAME_PERSISTED);
+        CompactSerializableCodec otherCodec = new CompactSerializableCodec();
+        otherCodec.setQnameDAO(mock(QNameDAO.class));
+        otherCodec.decode(new ByteArrayInputStream(bytes));
+    }
+
+    @Test
+    public void typeHandlerReadsBothEncodings() throws Exception
+    {
+        HashMap<Serializable, Serializable> map = createPropertyMap();
+        codec.setWriteEnabled(false);
+        codec.init();
+        SerializableTypeHandler typeHandler = new SerializableTypeHandler();
+
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getBinaryStream("serializable_value")).thenReturn(new ByteArrayInputStream(javaSerialize(map)));
+        assertEquals(map, typeHandler.getResult(rs, "serializable_value"));
+
+        when(rs.getBinaryStream("serializable_value")).thenReturn(new ByteArrayInputStream(encode(map)));
+        assertEquals(map, typeHandler.getResult(rs, "serializable_value"));
+    }
+}
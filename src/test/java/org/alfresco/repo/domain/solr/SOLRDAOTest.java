@@ -120,6 +120,18 @@ public class SOLRDAOTest extends TestCase
         }, true);
     }
     
+    private List<Acl> getAclsByIdRange(final Long minAclId, final Long maxAclId, final int maxResults)
+    {
+        return transactionService.getRetryingTransactionHelper().doInTransaction(new RetryingTransactionCallback<List<Acl>>()
+        {
+            @Override
+            public List<Acl> execute() throws Throwable
+            {
+                return solrDAO.getAclsByIdRange(minAclId, maxAclId, maxResults);
+            }
+        }, true);
+    }
+    
     private List<Transaction> getTransactions(
             final Long minTxnId, final Long fromCommitTime,
             final Long maxTxnId, final Long toCommitTime,
@@ -287,6 +299,28 @@ public class SOLRDAOTest extends TestCase
         //assertEquals("Expected to page to exact number of results", aclCount, totalAclCount);
     }
     
+    public void testQueryAcls_ByIdRange()
+    {
+        List<Acl> acls = getAclsByIdRange(null, null, 50);
+        if (acls.size() < 3)
+        {
+            // Nothing to test: Very unlikely
+            return;
+        }
+        for (int i = 1; i < acls.size(); i++)
+        {
+            assertTrue("ACLs not in ID order", acls.get(i - 1).getId() < acls.get(i).getId());
+        }
+
+        // Page from the second ACL up to, but not including, the last one
+        Long minAclId = acls.get(1).getId();
+        Long maxAclId = acls.get(acls.size() - 1).getId();
+        List<Acl> range = getAclsByIdRange(minAclId, maxAclId, 50);
+        assertEquals(acls.size() - 2, range.size());
+        assertEquals(minAclId, range.get(0).getId());
+        assertEquals(acls.get(acls.size() - 2).getId(), range.get(range.size() - 1).getId());
+    }
+    
     private List<Long> toIds(List<AclChangeSet> aclChangeSets)
     {
         List<Long> ids = new ArrayList<Long>(aclChangeSets.size());
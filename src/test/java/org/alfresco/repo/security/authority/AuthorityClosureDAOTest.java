@@ -0,0 +1,840 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.security.authority;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.domain.node.NodeDAO;
+import org.alfresco.repo.domain.qname.QNameDAO;
+import org.alfresco.repo.tenant.TenantService;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.Pair;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.dao.ConcurrencyFailureException;
+
+/**
+ * @see AbstractAuthorityClosureDAO
+ */
+public class AuthorityClosureDAOTest
+{
+    private static final Long AUTHORITY_NAME_QNAME_ID = 1L;
+    private static final Long USER_NAME_QNAME_ID = 2L;
+    private static final Long MEMBER_QNAME_ID = 3L;
+    private static final Long CONTAINER_QNAME_ID = 4L;
+
+    private NodeDAO nodeDAO;
+    private InMemoryAuthorityClosureDAO closureDAO;
+    private long nextNodeId = 100L;
+
+    @Before
+    public void setUp()
+    {
+        nodeDAO = mock(NodeDAO.class);
+        QNameDAO qnameDAO = mock(QNameDAO.class);
+        when(qnameDAO.getQName(ContentModel.PROP_AUTHORITY_NAME)).thenReturn(new Pair<Long, QName>(AUTHORITY_NAME_QNAME_ID, ContentModel.PROP_AUTHORITY_NAME));
+        when(qnameDAO.getQName(ContentModel.PROP_USERNAME)).thenReturn(new Pair<Long, QName>(USER_NAME_QNAME_ID, ContentModel.PROP_USERNAME));
+        when(qnameDAO.getQName(ContentModel.ASSOC_MEMBER)).thenReturn(new Pair<Long, QName>(MEMBER_QNAME_ID, ContentModel.ASSOC_MEMBER));
+        when(qnameDAO.getQName(ContentModel.TYPE_AUTHORITY_CONTAINER)).thenReturn(new Pair<Long, QName>(CONTAINER_QNAME_ID, ContentModel.TYPE_AUTHORITY_CONTAINER));
+        TenantService tenantService = mock(TenantService.class);
+        when(tenantService.getName(any(NodeRef.class))).thenAnswer(new Answer<NodeRef>()
+        {
+            @Override
+            public NodeRef answer(InvocationOnMock invocation) throws Throwable
+            {
+                return (NodeRef) invocation.getArguments()[0];
+            }
+        });
+
+        closureDAO = new InMemoryAuthorityClosureDAO();
+        closureDAO.setNodeDAO(nodeDAO);
+        closureDAO.setQnameDAO(qnameDAO);
+        closureDAO.setTenantService(tenantService);
+    }
+
+    @Test
+    public void nestedGroupsContainTheUser()
+    {
+        NodeRef user = user("andy");
+        NodeRef inner = group("GROUP_inner");
+        NodeRef middle = group("GROUP_middle");
+        NodeRef outer = group("GROUP_outer");
+        closureDAO.addMember(inner, user);
+        closureDAO.addMember(middle, inner);
+        closureDAO.addMember(outer, middle);
+
+        assertEquals(names("GROUP_inner", "GROUP_middle", "GROUP_outer"), containing(user));
+        assertEquals(names("GROUP_middle", "GROUP_outer"), containing(inner));
+        assertEquals(names("andy"), users(outer));
+        assertEquals(names("andy"), users(middle));
+    }
+
+    @Test
+    public void groupWithUsersIsAddedBelowExistingGroups()
+    {
+        NodeRef andy = user("andy");
+        NodeRef bob = user("bob");
+        NodeRef inner = group("GROUP_inner");
+        NodeRef middle = group("GROUP_middle");
+        NodeRef outer = group("GROUP_outer");
+        closureDAO.addMember(inner, andy);
+        closureDAO.addMember(inner, bob);
+        closureDAO.addMember(outer, middle);
+
+        closureDAO.addMember(middle, inner);
+        assertEquals(names("GROUP_inner", "GROUP_middle", "GROUP_outer"), containing(andy));
+        assertEquals(names("GROUP_inner", "GROUP_middle", "GROUP_outer"), containing(bob));
+        assertEquals(names("andy", "bob"), users(outer));
+        // Two users and inner below both middle and outer, two users below inner and middle below outer
+        assertEquals(9, closureDAO.size());
+    }
+
+    @Test
+    public void userStaysInGroupWhileAnyPathRemains()
+    {
+        NodeRef user = user("andy");
+        NodeRef left = group("GROUP_left");
+        NodeRef right = group("GROUP_right");
+        NodeRef outer = group("GROUP_outer");
+        closureDAO.addMember(left, user);
+        closureDAO.addMember(right, user);
+        closureDAO.addMember(outer, left);
+        closureDAO.addMember(outer, right);
+        assertEquals(Long.valueOf(2L), closureDAO.getPathCount(outer, user));
+
+        closureDAO.removeMember(left, user);
+        assertEquals(names("GROUP_right", "GROUP_outer"), containing(user));
+        assertEquals(Long.valueOf(1L), closureDAO.getPathCount(outer, user));
+
+        closureDAO.removeMember(right, user);
+        assertTrue(containing(user).isEmpty());
+        assertTrue(users(outer).isEmpty());
+    }
+
+    @Test
+    public void removingEveryMembershipEmptiesTheClosure()
+    {
+        NodeRef user = user("andy");
+        NodeRef inner = group("GROUP_inner");
+        NodeRef middle = group("GROUP_middle");
+        NodeRef outer = group("GROUP_outer");
+        closureDAO.addMember(inner, user);
+        closureDAO.addMember(middle, inner);
+        closureDAO.addMember(outer, inner);
+        closureDAO.addMember(outer, middle);
+
+        closureDAO.removeMember(outer, middle);
+        closureDAO.removeMember(inner, user);
+        closureDAO.removeMember(middle, inner);
+        closureDAO.removeMember(outer, inner);
+        assertEquals(0, closureDAO.size());
+    }
+
+    @Test
+    public void cycleIsLeftOut()
+    {
+        NodeRef inner = group("GROUP_inner");
+        NodeRef outer = group("GROUP_outer");
+        closureDAO.addMember(outer, inner);
+
+        closureDAO.addMember(inner, outer);
+        closureDAO.addMember(inner, inner);
+        assertEquals(names("GROUP_outer"), containing(inner));
+        assertTrue(containing(outer).isEmpty());
+
+        assertFalse(closureDAO.removeMember(inner, outer));
+        assertEquals(names("GROUP_outer"), containing(inner));
+        assertTrue(closureDAO.removeMember(outer, inner));
+        assertEquals(0, closureDAO.size());
+    }
+
+    @Test
+    public void rowLeftWithNoPathsIsDeleted()
+    {
+        NodeRef user = user("andy");
+        NodeRef inner = group("GROUP_inner");
+        NodeRef outer = group("GROUP_outer");
+        closureDAO.addMember(inner, user);
+        closureDAO.addMember(outer, inner);
+        // As if another transaction had already taken the path away
+        closureDAO.rows.get(closureDAO.nodeIds.get(outer)).put(closureDAO.nodeIds.get(user), 0L);
+
+        closureDAO.removeMember(outer, inner);
+        assertEquals(names("GROUP_inner"), containing(user));
+        assertEquals(1, closureDAO.size());
+    }
+
+    @Test
+    public void verifyingAgreesWithTheMaintainedCounts()
+    {
+        NodeRef user = user("andy");
+        NodeRef left = group("GROUP_left");
+        NodeRef right = group("GROUP_right");
+        NodeRef outer = group("GROUP_outer");
+        member(left, user);
+        member(right, user);
+        member(outer, left);
+        member(outer, right);
+
+        assertEquals(0, verify());
+        assertEquals(Long.valueOf(2L), closureDAO.getPathCount(outer, user));
+    }
+
+    @Test
+    public void verifyingAddsMembershipThatWasNotRecorded()
+    {
+        NodeRef user = user("andy");
+        NodeRef inner = group("GROUP_inner");
+        NodeRef outer = group("GROUP_outer");
+        member(inner, user);
+        // As if added with the authority behaviours disabled
+        closureDAO.addMemberAssoc(outer, inner);
+
+        assertEquals(2, verify());
+        assertEquals(names("GROUP_inner", "GROUP_outer"), containing(user));
+        assertEquals(names("andy"), users(outer));
+        assertEquals(0, verify());
+    }
+
+    @Test
+    public void verifyingRemovesMembershipThatWasNotRecorded()
+    {
+        NodeRef user = user("andy");
+        NodeRef inner = group("GROUP_inner");
+        NodeRef outer = group("GROUP_outer");
+        member(inner, user);
+        member(outer, inner);
+        // As if removed with the authority behaviours disabled, leaving the user in no group at all
+        closureDAO.removeMemberAssoc(inner, user);
+
+        assertEquals(2, verify());
+        assertTrue(containing(user).isEmpty());
+        assertEquals(names("GROUP_outer"), containing(inner));
+        assertEquals(1, closureDAO.size());
+    }
+
+    @Test
+    public void verifyingLeavesOutCycles()
+    {
+        NodeRef inner = group("GROUP_inner");
+        NodeRef outer = group("GROUP_outer");
+        member(outer, inner);
+        closureDAO.addMemberAssoc(inner, outer);
+
+        verify();
+        // Each contains the other, but neither contains itself
+        assertEquals(names("GROUP_outer"), containing(inner));
+        assertEquals(names("GROUP_inner"), containing(outer));
+        assertEquals(2, closureDAO.size());
+    }
+
+    @Test(expected = ConcurrencyFailureException.class)
+    public void verifyingFailsWhenTheRowsChange()
+    {
+        final NodeRef user = user("andy");
+        final NodeRef inner = group("GROUP_inner");
+        member(inner, user);
+        final NodeRef outer = group("GROUP_outer");
+        closureDAO.duringVerify = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                member(outer, inner);
+            }
+        };
+        verify();
+    }
+
+    /**
+     * Adding the inner group to the outer one reads the user as being within the inner group, while removing the
+     * user reads nothing above the inner group.  Unless the changes are applied one after another, the outer group
+     * is left containing the user.
+     */
+    @Test
+    public void concurrentAddAndRemoveLeaveNoStalePaths() throws Exception
+    {
+        final NodeRef user = user("andy");
+        final NodeRef inner = group("GROUP_inner");
+        final NodeRef outer = group("GROUP_outer");
+        member(inner, user);
+
+        final CountDownLatch added = new CountDownLatch(1);
+        final CountDownLatch commit = new CountDownLatch(1);
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        Thread adding = startTransaction(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                closureDAO.addMember(outer, inner);
+                added.countDown();
+                await(commit);
+            }
+        }, errors);
+        assertTrue(added.await(10, TimeUnit.SECONDS));
+        Thread removing = startTransaction(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                closureDAO.removeMember(inner, user);
+            }
+        }, errors);
+        // Let the removal reach the lock before the addition commits
+        for (int i = 0; i < 100 && !closureDAO.closureLock.hasQueuedThreads(); i++)
+        {
+            Thread.sleep(100L);
+        }
+        assertTrue("The removal did not wait for the addition", closureDAO.closureLock.hasQueuedThreads());
+        commit.countDown();
+        adding.join(10000L);
+        removing.join(10000L);
+
+        assertEquals(Collections.emptyList(), errors);
+        assertTrue(containing(user).isEmpty());
+        assertTrue(users(outer).isEmpty());
+        assertEquals(names("GROUP_outer"), containing(inner));
+        assertEquals(1, closureDAO.size());
+    }
+
+    @Test
+    public void personMembershipChangesShareTheLock() throws Exception
+    {
+        final NodeRef andy = user("andy");
+        final NodeRef bob = user("bob");
+        final NodeRef left = group("GROUP_left");
+        final NodeRef right = group("GROUP_right");
+
+        final CountDownLatch added = new CountDownLatch(1);
+        final CountDownLatch commit = new CountDownLatch(1);
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        Thread addingAndy = startTransaction(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                closureDAO.addMember(left, andy);
+                added.countDown();
+                await(commit);
+            }
+        }, errors);
+        assertTrue(added.await(10, TimeUnit.SECONDS));
+        Thread addingBob = startTransaction(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                closureDAO.addMember(right, bob);
+            }
+        }, errors);
+        addingBob.join(10000L);
+        assertFalse("The person membership changes did not share the lock", addingBob.isAlive());
+        commit.countDown();
+        addingAndy.join(10000L);
+
+        assertEquals(Collections.emptyList(), errors);
+        assertEquals(names("GROUP_left"), containing(andy));
+        assertEquals(names("GROUP_right"), containing(bob));
+    }
+
+    @Test
+    public void unknownNodesAreIgnored()
+    {
+        NodeRef inner = group("GROUP_inner");
+        NodeRef missing = new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, "missing");
+        closureDAO.addMember(missing, inner);
+        closureDAO.removeMember(inner, missing);
+        assertEquals(0, closureDAO.size());
+        assertTrue(containing(missing).isEmpty());
+    }
+
+    /**
+     * @return              Returns the thread doing the work in a transaction, which is committed if the work succeeds
+     */
+    private Thread startTransaction(final Runnable work, final List<Throwable> errors)
+    {
+        Thread thread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                closureDAO.begin();
+                try
+                {
+                    work.run();
+                    closureDAO.commit();
+                }
+                catch (Throwable e)
+                {
+                    errors.add(e);
+                    closureDAO.end();
+                }
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static void await(CountDownLatch latch)
+    {
+        try
+        {
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        }
+        catch (InterruptedException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void member(NodeRef parentRef, NodeRef childRef)
+    {
+        closureDAO.addMemberAssoc(parentRef, childRef);
+        closureDAO.addMember(parentRef, childRef);
+    }
+
+    /**
+     * @return              Returns the number of rows corrected, working through the members a page at a time
+     */
+    private int verify()
+    {
+        int corrected = 0;
+        Long afterNodeId = null;
+        List<Long> nodeIds;
+        while (!(nodeIds = closureDAO.getMemberIds(afterNodeId, 2)).isEmpty())
+        {
+            corrected += closureDAO.verifyMembers(nodeIds);
+            afterNodeId = nodeIds.get(nodeIds.size() - 1);
+        }
+        return corrected;
+    }
+
+    private NodeRef user(String userName)
+    {
+        NodeRef nodeRef = node(userName);
+        closureDAO.userIds.add(closureDAO.nodeIds.get(nodeRef));
+        when(nodeDAO.getNodeType(closureDAO.nodeIds.get(nodeRef))).thenReturn(ContentModel.TYPE_PERSON);
+        return nodeRef;
+    }
+
+    private NodeRef group(String authorityName)
+    {
+        NodeRef nodeRef = node(authorityName);
+        when(nodeDAO.getNodeType(closureDAO.nodeIds.get(nodeRef))).thenReturn(ContentModel.TYPE_AUTHORITY_CONTAINER);
+        return nodeRef;
+    }
+
+    private NodeRef node(String name)
+    {
+        Long nodeId = nextNodeId++;
+        NodeRef nodeRef = new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, name);
+        when(nodeDAO.getNodePair(nodeRef)).thenReturn(new Pair<Long, NodeRef>(nodeId, nodeRef));
+        closureDAO.nodeIds.put(nodeRef, nodeId);
+        closureDAO.names.put(nodeId, name);
+        return nodeRef;
+    }
+
+    private Set<String> containing(NodeRef nodeRef)
+    {
+        return new HashSet<String>(closureDAO.getContainingAuthorityNames(nodeRef));
+    }
+
+    private Set<String> users(NodeRef nodeRef)
+    {
+        return new HashSet<String>(closureDAO.getContainedUserNames(nodeRef));
+    }
+
+    private static Set<String> names(String... names)
+    {
+        return new HashSet<String>(Arrays.asList(names));
+    }
+
+    /**
+     * Holds the closure rows in memory, by ancestor and then descendant.  A thread that {@link #begin() begins} a
+     * transaction keeps its changes to itself until it commits them, and sees the changes that other transactions
+     * have committed, as with the read committed isolation of the database.  Outside a transaction, changes are
+     * made to the rows directly and the closure is not locked.
+     */
+    private static class InMemoryAuthorityClosureDAO extends AbstractAuthorityClosureDAO
+    {
+        private final Map<Long, Map<Long, Long>> rows = new HashMap<Long, Map<Long, Long>>();
+        /** The changes to the path counts made by the transaction of each thread, by ancestor and then descendant */
+        private final ThreadLocal<Map<Long, Map<Long, Long>>> transaction = new ThreadLocal<Map<Long, Map<Long, Long>>>();
+        private final ReentrantReadWriteLock closureLock = new ReentrantReadWriteLock();
+        private final Map<NodeRef, Long> nodeIds = new HashMap<NodeRef, Long>();
+        private final Map<Long, String> names = new HashMap<Long, String>();
+        private final Set<Long> userIds = new HashSet<Long>();
+        /** The member associations, by child and then parent */
+        private final Map<Long, Set<Long>> memberAssocs = new HashMap<Long, Set<Long>>();
+        private Runnable duringVerify;
+
+        private void addMemberAssoc(NodeRef parentRef, NodeRef childRef)
+        {
+            Long childId = nodeIds.get(childRef);
+            if (!memberAssocs.containsKey(childId))
+            {
+                memberAssocs.put(childId, new HashSet<Long>());
+            }
+            memberAssocs.get(childId).add(nodeIds.get(parentRef));
+        }
+
+        private void removeMemberAssoc(NodeRef parentRef, NodeRef childRef)
+        {
+            memberAssocs.get(nodeIds.get(childRef)).remove(nodeIds.get(parentRef));
+        }
+
+        private void begin()
+        {
+            transaction.set(new HashMap<Long, Map<Long, Long>>());
+        }
+
+        private void commit()
+        {
+            synchronized (this)
+            {
+                for (Map.Entry<Long, Map<Long, Long>> ancestor : transaction.get().entrySet())
+                {
+                    for (Map.Entry<Long, Long> descendant : ancestor.getValue().entrySet())
+                    {
+                        addCount(rows, ancestor.getKey(), descendant.getKey(), descendant.getValue());
+                    }
+                }
+                removeEmptyRows(rows);
+            }
+            end();
+        }
+
+        /**
+         * Discard the changes of the transaction, unless they have been committed, and release the closure lock
+         */
+        private void end()
+        {
+            transaction.remove();
+            while (closureLock.getReadHoldCount() > 0)
+            {
+                closureLock.readLock().unlock();
+            }
+            while (closureLock.isWriteLockedByCurrentThread())
+            {
+                closureLock.writeLock().unlock();
+            }
+        }
+
+        /**
+         * @return          Returns the rows as seen by the current thread
+         */
+        private synchronized Map<Long, Map<Long, Long>> view()
+        {
+            Map<Long, Map<Long, Long>> changes = transaction.get();
+            if (changes == null)
+            {
+                return rows;
+            }
+            Map<Long, Map<Long, Long>> view = new HashMap<Long, Map<Long, Long>>();
+            for (Map.Entry<Long, Map<Long, Long>> ancestor : rows.entrySet())
+            {
+                view.put(ancestor.getKey(), new HashMap<Long, Long>(ancestor.getValue()));
+            }
+            for (Map.Entry<Long, Map<Long, Long>> ancestor : changes.entrySet())
+            {
+                for (Map.Entry<Long, Long> descendant : ancestor.getValue().entrySet())
+                {
+                    addCount(view, ancestor.getKey(), descendant.getKey(), descendant.getValue());
+                }
+            }
+            removeEmptyRows(view);
+            return view;
+        }
+
+        private static void addCount(Map<Long, Map<Long, Long>> rows, Long ancestorId, Long descendantId, long count)
+        {
+            Map<Long, Long> descendants = rows.get(ancestorId);
+            if (descendants == null)
+            {
+                descendants = new HashMap<Long, Long>();
+                rows.put(ancestorId, descendants);
+            }
+            Long current = descendants.get(descendantId);
+            descendants.put(descendantId, (current == null ? 0L : current) + count);
+        }
+
+        private static void removeEmptyRows(Map<Long, Map<Long, Long>> rows)
+        {
+            for (Iterator<Map<Long, Long>> ancestors = rows.values().iterator(); ancestors.hasNext(); )
+            {
+                Map<Long, Long> descendants = ancestors.next();
+                for (Iterator<Long> counts = descendants.values().iterator(); counts.hasNext(); )
+                {
+                    if (counts.next() <= 0)
+                    {
+                        counts.remove();
+                    }
+                }
+                if (descendants.isEmpty())
+                {
+                    ancestors.remove();
+                }
+            }
+        }
+
+        private int size()
+        {
+            int size = 0;
+            for (Map<Long, Long> descendants : rows.values())
+            {
+                size += descendants.size();
+            }
+            return size;
+        }
+
+        private Long getPathCount(NodeRef ancestorRef, NodeRef descendantRef)
+        {
+            Map<Long, Long> descendants = rows.get(nodeIds.get(ancestorRef));
+            return (descendants == null) ? null : descendants.get(nodeIds.get(descendantRef));
+        }
+
+        @Override
+        protected void lockClosure(boolean exclusive)
+        {
+            if (transaction.get() == null || closureLock.isWriteLockedByCurrentThread())
+            {
+                return;
+            }
+            if (exclusive)
+            {
+                if (closureLock.getReadHoldCount() > 0)
+                {
+                    // As the database would report the deadlock of two transactions upgrading their shared locks
+                    throw new ConcurrencyFailureException("The shared closure lock can't be upgraded");
+                }
+                closureLock.writeLock().lock();
+            }
+            else if (closureLock.getReadHoldCount() == 0)
+            {
+                closureLock.readLock().lock();
+            }
+        }
+
+        @Override
+        protected List<AuthorityClosureEntity> selectAncestors(Long descendantId)
+        {
+            List<AuthorityClosureEntity> result = new ArrayList<AuthorityClosureEntity>();
+            for (Map.Entry<Long, Map<Long, Long>> ancestor : view().entrySet())
+            {
+                Long pathCount = ancestor.getValue().get(descendantId);
+                if (pathCount != null)
+                {
+                    result.add(new AuthorityClosureEntity(ancestor.getKey(), descendantId, pathCount));
+                }
+            }
+            return result;
+        }
+
+        @Override
+        protected List<AuthorityClosureEntity> selectDescendants(Long ancestorId)
+        {
+            List<AuthorityClosureEntity> result = new ArrayList<AuthorityClosureEntity>();
+            Map<Long, Long> descendants = view().get(ancestorId);
+            if (descendants != null)
+            {
+                for (Map.Entry<Long, Long> descendant : descendants.entrySet())
+                {
+                    result.add(new AuthorityClosureEntity(ancestorId, descendant.getKey(), descendant.getValue()));
+                }
+            }
+            return result;
+        }
+
+        @Override
+        protected List<AuthorityClosureEntity> selectAncestorsOf(List<Long> descendantIds)
+        {
+            List<AuthorityClosureEntity> result = new ArrayList<AuthorityClosureEntity>();
+            for (Long descendantId : descendantIds)
+            {
+                result.addAll(selectAncestors(descendantId));
+            }
+            return result;
+        }
+
+        @Override
+        protected List<Long> selectMemberIds(Long memberQNameId, Long afterNodeId, int maxResults)
+        {
+            assertEquals(MEMBER_QNAME_ID, memberQNameId);
+            TreeSet<Long> memberIds = new TreeSet<Long>();
+            for (Map.Entry<Long, Set<Long>> member : memberAssocs.entrySet())
+            {
+                if (!member.getValue().isEmpty())
+                {
+                    memberIds.add(member.getKey());
+                }
+            }
+            for (Map<Long, Long> descendants : view().values())
+            {
+                memberIds.addAll(descendants.keySet());
+            }
+            List<Long> result = new ArrayList<Long>(memberIds.tailSet(afterNodeId, false));
+            return result.subList(0, Math.min(maxResults, result.size()));
+        }
+
+        @Override
+        protected List<AuthorityClosureEntity> selectMembers(Long memberQNameId, List<Long> nodeIds)
+        {
+            assertEquals(MEMBER_QNAME_ID, memberQNameId);
+            List<AuthorityClosureEntity> result = new ArrayList<AuthorityClosureEntity>();
+            for (Long nodeId : nodeIds)
+            {
+                if (memberAssocs.containsKey(nodeId))
+                {
+                    for (Long parentId : memberAssocs.get(nodeId))
+                    {
+                        result.add(new AuthorityClosureEntity(parentId, nodeId, 1L));
+                    }
+                }
+            }
+            return result;
+        }
+
+        @Override
+        protected List<AuthorityClosureEntity> selectContainerMembers(Long memberQNameId, Long containerQNameId)
+        {
+            assertEquals(CONTAINER_QNAME_ID, containerQNameId);
+            if (duringVerify != null)
+            {
+                duringVerify.run();
+                duringVerify = null;
+            }
+            List<Long> containerIds = new ArrayList<Long>(memberAssocs.keySet());
+            containerIds.removeAll(userIds);
+            return selectMembers(memberQNameId, containerIds);
+        }
+
+        @Override
+        protected synchronized void addPaths(List<AuthorityClosureEntity> added)
+        {
+            Map<Long, Map<Long, Long>> changes = transaction.get();
+            for (AuthorityClosureEntity row : added)
+            {
+                assertTrue(row.getPathCount() > 0);
+                addCount(changes == null ? rows : changes, row.getAncestorId(), row.getDescendantId(), row.getPathCount());
+            }
+        }
+
+        @Override
+        protected synchronized void removePaths(List<AuthorityClosureEntity> removed)
+        {
+            Map<Long, Map<Long, Long>> changes = transaction.get();
+            for (AuthorityClosureEntity row : removed)
+            {
+                if (changes != null)
+                {
+                    // The rows left with no paths are deleted when the transaction commits
+                    addCount(changes, row.getAncestorId(), row.getDescendantId(), -row.getPathCount());
+                    continue;
+                }
+                Map<Long, Long> descendants = rows.get(row.getAncestorId());
+                Long current = (descendants == null) ? null : descendants.get(row.getDescendantId());
+                if (current != null)
+                {
+                    descendants.put(row.getDescendantId(), current - row.getPathCount());
+                }
+            }
+        }
+
+        @Override
+        protected synchronized void deleteEmptyPaths(Long ancestorId, List<Long> descendantIds)
+        {
+            Map<Long, Long> descendants = rows.get(ancestorId);
+            if (descendants == null || transaction.get() != null)
+            {
+                return;
+            }
+            for (Long descendantId : descendantIds)
+            {
+                Long current = descendants.get(descendantId);
+                if (current != null && current <= 0)
+                {
+                    descendants.remove(descendantId);
+                }
+            }
+            if (descendants.isEmpty())
+            {
+                rows.remove(ancestorId);
+            }
+        }
+
+        @Override
+        protected List<String> selectAncestorNames(Long descendantId, Long authorityNameQNameId)
+        {
+            assertEquals(AUTHORITY_NAME_QNAME_ID, authorityNameQNameId);
+            List<String> result = new ArrayList<String>();
+            for (AuthorityClosureEntity row : selectAncestors(descendantId))
+            {
+                result.add(names.get(row.getAncestorId()));
+            }
+            return result;
+        }
+
+        @Override
+        protected List<String> selectDescendantNames(Long ancestorId, Long userNameQNameId)
+        {
+            assertEquals(USER_NAME_QNAME_ID, userNameQNameId);
+            List<String> result = new ArrayList<String>();
+            for (AuthorityClosureEntity row : selectDescendants(ancestorId))
+            {
+                if (userIds.contains(row.getDescendantId()))
+                {
+                    result.add(names.get(row.getDescendantId()));
+                }
+            }
+            return result;
+        }
+    }
+}
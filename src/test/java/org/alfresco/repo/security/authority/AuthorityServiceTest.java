@@ -1008,6 +1008,112 @@ public class AuthorityServiceTest extends TestCase
         assertTrue(pubAuthorityService.getContainedAuthorities(null, auth1, false).contains("andy"));
     }
 
+    /**
+     * Changes to the groups that contain a user are seen straight away, without the bridge table being brought
+     * up to date.
+     */
+    public void testUserAuthoritiesFollowGroupChanges()
+    {
+        personService.getPerson("andy");
+        String inner = pubAuthorityService.createAuthority(AuthorityType.GROUP, "inner");
+        String middle = pubAuthorityService.createAuthority(AuthorityType.GROUP, "middle");
+        String outer = pubAuthorityService.createAuthority(AuthorityType.GROUP, "outer");
+        pubAuthorityService.addAuthority(inner, "andy");
+        pubAuthorityService.addAuthority(middle, inner);
+
+        // The user's authorities are cached before each change
+        Set<String> authorities = pubAuthorityService.getContainingAuthorities(null, "andy", false);
+        assertTrue(authorities.contains(inner));
+        assertTrue(authorities.contains(middle));
+        assertFalse(authorities.contains(outer));
+        pubAuthorityService.addAuthority(outer, middle);
+        assertTrue(pubAuthorityService.getContainingAuthorities(null, "andy", false).contains(outer));
+        pubAuthorityService.removeAuthority(middle, inner);
+        authorities = pubAuthorityService.getContainingAuthorities(null, "andy", false);
+        assertTrue(authorities.contains(inner));
+        assertFalse(authorities.contains(middle));
+        assertFalse(authorities.contains(outer));
+
+        pubAuthorityService.addAuthority(middle, inner);
+        authorities = pubAuthorityService.getContainingAuthorities(null, "andy", false);
+        assertTrue(authorities.contains(middle));
+        assertTrue(authorities.contains(outer));
+
+        pubAuthorityService.deleteAuthority(middle);
+        authorities = pubAuthorityService.getContainingAuthorities(null, "andy", false);
+        assertTrue(authorities.contains(inner));
+        assertFalse(authorities.contains(middle));
+        assertFalse(authorities.contains(outer));
+    }
+
+    public void testUserAuthoritiesFollowGroupChangesWhenAddedInAnotherCase()
+    {
+        personService.getPerson("andy");
+        String inner = pubAuthorityService.createAuthority(AuthorityType.GROUP, "inner");
+        String outer = pubAuthorityService.createAuthority(AuthorityType.GROUP, "outer");
+        pubAuthorityService.addAuthority(inner, "ANDY");
+
+        // The cached authorities are held against the user name of the person, not the name the user was added with
+        assertTrue(pubAuthorityService.getContainingAuthorities(null, "andy", false).contains(inner));
+        pubAuthorityService.addAuthority(outer, inner);
+        assertTrue(pubAuthorityService.getContainingAuthorities(null, "andy", false).contains(outer));
+        pubAuthorityService.removeAuthority(outer, inner);
+        assertFalse(pubAuthorityService.getContainingAuthorities(null, "andy", false).contains(outer));
+    }
+
+    /**
+     * A user stays in a group while any path to it remains.
+     */
+    public void testUserAuthoritiesFollowGroupChangesWithSeveralPaths()
+    {
+        personService.getPerson("andy");
+        String inner = pubAuthorityService.createAuthority(AuthorityType.GROUP, "inner");
+        String left = pubAuthorityService.createAuthority(AuthorityType.GROUP, "left");
+        String right = pubAuthorityService.createAuthority(AuthorityType.GROUP, "right");
+        String outer = pubAuthorityService.createAuthority(AuthorityType.GROUP, "outer");
+        pubAuthorityService.addAuthority(inner, "andy");
+        pubAuthorityService.addAuthority(left, inner);
+        pubAuthorityService.addAuthority(right, inner);
+        pubAuthorityService.addAuthority(outer, left);
+        pubAuthorityService.addAuthority(outer, right);
+        assertTrue(pubAuthorityService.getContainingAuthorities(null, "andy", false).contains(outer));
+
+        AuthorityClosureDAO authorityClosureDAO = ctx.getBean("authorityClosureDAO", AuthorityClosureDAO.class);
+        NodeRef outerRef = pubAuthorityService.getAuthorityNodeRef(outer);
+        assertEquals(Collections.singletonList("andy"), authorityClosureDAO.getContainedUserNames(outerRef));
+
+        pubAuthorityService.removeAuthority(left, inner);
+        Set<String> authorities = pubAuthorityService.getContainingAuthorities(null, "andy", false);
+        assertFalse(authorities.contains(left));
+        assertTrue(authorities.contains(right));
+        assertTrue(authorities.contains(outer));
+
+        pubAuthorityService.deleteAuthority(right);
+        authorities = pubAuthorityService.getContainingAuthorities(null, "andy", false);
+        assertTrue(authorities.contains(inner));
+        assertFalse(authorities.contains(outer));
+        assertTrue(authorityClosureDAO.getContainedUserNames(outerRef).isEmpty());
+    }
+
+    /**
+     * Membership changed through the node service, rather than the authority service, is seen as well.
+     */
+    public void testUserAuthoritiesFollowMembershipChangedThroughNodeService()
+    {
+        personService.getPerson("andy");
+        String inner = pubAuthorityService.createAuthority(AuthorityType.GROUP, "inner");
+        String outer = pubAuthorityService.createAuthority(AuthorityType.GROUP, "outer");
+        pubAuthorityService.addAuthority(inner, "andy");
+        assertFalse(pubAuthorityService.getContainingAuthorities(null, "andy", false).contains(outer));
+
+        NodeRef innerRef = pubAuthorityService.getAuthorityNodeRef(inner);
+        NodeRef outerRef = pubAuthorityService.getAuthorityNodeRef(outer);
+        nodeService.addChild(outerRef, innerRef, ContentModel.ASSOC_MEMBER, QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, inner));
+        assertTrue(pubAuthorityService.getContainingAuthorities(null, "andy", false).contains(outer));
+        nodeService.removeChild(outerRef, innerRef);
+        assertFalse(pubAuthorityService.getContainingAuthorities(null, "andy", false).contains(outer));
+    }
+
     public void testGetAuthorityNodeRef()
     {
         String ADMIN_GROUP = "GROUP_ALFRESCO_ADMINISTRATORS";
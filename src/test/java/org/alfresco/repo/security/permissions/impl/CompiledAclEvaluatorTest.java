@@ -0,0 +1,322 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.security.permissions.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.cache.DefaultSimpleCache;
+import org.alfresco.repo.domain.permissions.AclDAO;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.security.permissions.ACEType;
+import org.alfresco.repo.security.permissions.ACLType;
+import org.alfresco.repo.security.permissions.AccessControlEntry;
+import org.alfresco.repo.security.permissions.PermissionReference;
+import org.alfresco.repo.security.permissions.SimpleAccessControlEntry;
+import org.alfresco.repo.security.permissions.SimpleAccessControlList;
+import org.alfresco.repo.security.permissions.SimpleAccessControlListProperties;
+import org.alfresco.service.cmr.security.AccessStatus;
+import org.alfresco.service.cmr.security.AuthorityService;
+import org.alfresco.service.cmr.security.PermissionContext;
+import org.alfresco.service.cmr.security.PermissionService;
+import org.alfresco.service.namespace.QName;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Checks that {@link CompiledAclEvaluator compiled ACLs} give the same answers as walking the
+ * entries of the ACLs.
+ *
+ * @see PermissionServiceImpl#setCompileAcls(boolean)
+ */
+public class CompiledAclEvaluatorTest
+{
+    private static final String USER = "compiled";
+    /** The owner, then the authorities that the user may have */
+    private static final String[] AUTHORITIES = new String[] {
+            PermissionService.OWNER_AUTHORITY, USER, PermissionService.ALL_AUTHORITIES,
+            "GROUP_a", "GROUP_b", "GROUP_c", "GROUP_d", "GROUP_e" };
+
+    private static final PermissionReference READ = permission(PermissionService.READ);
+    private static final PermissionReference WRITE = permission(PermissionService.WRITE);
+    private static final PermissionReference COORDINATOR = permission(PermissionService.COORDINATOR);
+    private static final PermissionReference ALL = PermissionServiceImpl.OLD_ALL_PERMISSIONS_REFERENCE;
+    private static final PermissionReference[] PERMISSIONS = new PermissionReference[] {
+            READ, WRITE, COORDINATOR, ALL };
+
+    private Set<String> userAuthorities;
+    private Map<Long, SimpleAccessControlList> acls;
+    private PermissionServiceImpl walkingService;
+    private PermissionServiceImpl compilingService;
+    private DefaultSimpleCache<Serializable, CompiledAcl> compiledAclCache;
+
+    private static PermissionReference permission(String name)
+    {
+        return SimplePermissionReference.getPermissionReference(QName.createQName("", name), name);
+    }
+
+    @Before
+    public void setUp()
+    {
+        ModelDAO modelDAO = mock(ModelDAO.class);
+        for (PermissionReference permission : PERMISSIONS)
+        {
+            when(modelDAO.getPermissionReference((QName) isNull(), eq(permission.getName()))).thenReturn(permission);
+            when(modelDAO.checkPermission(permission)).thenReturn(true);
+            when(modelDAO.getGranteePermissions(permission)).thenReturn(Collections.<PermissionReference>emptySet());
+        }
+        // Coordinator grants read and write
+        when(modelDAO.getGrantingPermissions(READ)).thenReturn(new HashSet<PermissionReference>(Arrays.asList(READ, COORDINATOR)));
+        when(modelDAO.getGrantingPermissions(WRITE)).thenReturn(new HashSet<PermissionReference>(Arrays.asList(WRITE, COORDINATOR)));
+        when(modelDAO.getGrantingPermissions(COORDINATOR)).thenReturn(Collections.singleton(COORDINATOR));
+        when(modelDAO.getGrantingPermissions(ALL)).thenReturn(Collections.singleton(ALL));
+        when(modelDAO.getGranteePermissions(COORDINATOR)).thenReturn(new HashSet<PermissionReference>(Arrays.asList(READ, WRITE)));
+        when(modelDAO.getAllPermissions(any(QName.class), any(Set.class))).thenAnswer(new Answer<Set<PermissionReference>>()
+        {
+            public Set<PermissionReference> answer(InvocationOnMock invocation) throws Throwable
+            {
+                return new HashSet<PermissionReference>(Arrays.asList(READ, WRITE, COORDINATOR));
+            }
+        });
+
+        userAuthorities = new HashSet<String>();
+        AuthorityService authorityService = mock(AuthorityService.class);
+        when(authorityService.getAuthoritiesForUser(anyString())).thenAnswer(new Answer<Set<String>>()
+        {
+            public Set<String> answer(InvocationOnMock invocation) throws Throwable
+            {
+                return new HashSet<String>(userAuthorities);
+            }
+        });
+
+        acls = new HashMap<Long, SimpleAccessControlList>();
+        AclDAO aclDAO = mock(AclDAO.class);
+        when(aclDAO.getAccessControlList(any(Long.class))).thenAnswer(new Answer<SimpleAccessControlList>()
+        {
+            public SimpleAccessControlList answer(InvocationOnMock invocation) throws Throwable
+            {
+                return acls.get(invocation.getArguments()[0]);
+            }
+        });
+
+        walkingService = new PermissionServiceImpl();
+        walkingService.setModelDAO(modelDAO);
+        walkingService.setAuthorityService(authorityService);
+        walkingService.setAclDAO(aclDAO);
+
+        compiledAclCache = new DefaultSimpleCache<Serializable, CompiledAcl>();
+        compilingService = new PermissionServiceImpl();
+        compilingService.setModelDAO(modelDAO);
+        compilingService.setAuthorityService(authorityService);
+        compilingService.setAclDAO(aclDAO);
+        compilingService.setCompiledAclCache(compiledAclCache);
+        compilingService.setCompileAcls(true);
+
+        AuthenticationUtil.setFullyAuthenticatedUser(USER);
+        TransactionSynchronizationManager.initSynchronization();
+    }
+
+    @After
+    public void tearDown()
+    {
+        // Unbind the transaction resources, which are not cleared with the synchronizations
+        for (Object key : new ArrayList<Object>(TransactionSynchronizationManager.getResourceMap().keySet()))
+        {
+            TransactionSynchronizationManager.unbindResource(key);
+        }
+        TransactionSynchronizationManager.clear();
+        AuthenticationUtil.clearCurrentSecurityContext();
+    }
+
+    private SimpleAccessControlList putAcl(long id, long version, List<AccessControlEntry> entries)
+    {
+        SimpleAccessControlListProperties properties = new SimpleAccessControlListProperties();
+        properties.setId(id);
+        properties.setAclVersion(version);
+        properties.setAclType(ACLType.DEFINING);
+        properties.setInherits(true);
+        SimpleAccessControlList acl = new SimpleAccessControlList();
+        acl.setEntries(entries);
+        acl.setProperties(properties);
+        acls.put(id, acl);
+        return acl;
+    }
+
+    private static AccessControlEntry entry(String authority, PermissionReference permission, AccessStatus status)
+    {
+        SimpleAccessControlEntry entry = new SimpleAccessControlEntry();
+        entry.setAccessStatus(status);
+        entry.setAceType(ACEType.ALL);
+        entry.setAuthority(authority);
+        entry.setPermission(permission);
+        entry.setPosition(0);
+        return entry;
+    }
+
+    private PermissionContext newContext(boolean owner)
+    {
+        PermissionContext context = new PermissionContext(ContentModel.TYPE_CONTENT);
+        if (owner)
+        {
+            context.addDynamicAuthorityAssignment(USER, PermissionService.OWNER_AUTHORITY);
+        }
+        return context;
+    }
+
+    private void assertSameAnswers(Long aclId, PermissionContext context, String message)
+    {
+        for (String permission : new String[] { PermissionService.READ, PermissionService.WRITE, PermissionService.COORDINATOR })
+        {
+            assertEquals(
+                    message + " " + permission,
+                    walkingService.hasPermission(aclId, context, permission),
+                    compilingService.hasPermission(aclId, context, permission));
+        }
+    }
+
+    @Test
+    public void randomAclsGiveTheSameAnswers()
+    {
+        Random random = new Random(42L);
+        AccessStatus[] statuses = new AccessStatus[] { AccessStatus.ALLOWED, AccessStatus.DENIED };
+        for (long id = 1L; id <= 500L; id++)
+        {
+            List<AccessControlEntry> entries = new ArrayList<AccessControlEntry>();
+            int size = 1 + random.nextInt(8);
+            for (int i = 0; i < size; i++)
+            {
+                entries.add(entry(
+                        AUTHORITIES[random.nextInt(AUTHORITIES.length)],
+                        PERMISSIONS[random.nextInt(PERMISSIONS.length)],
+                        statuses[random.nextInt(statuses.length)]));
+            }
+            putAcl(id, 1L, entries);
+
+            userAuthorities.clear();
+            for (int i = 1; i < AUTHORITIES.length; i++)
+            {
+                if (random.nextBoolean())
+                {
+                    userAuthorities.add(AUTHORITIES[i]);
+                }
+            }
+            boolean owner = random.nextBoolean();
+            CompiledAclEvaluator.clearAuthorityBits();
+            for (boolean anyDenyDenies : new boolean[] { true, false })
+            {
+                walkingService.anyDenyDenies = anyDenyDenies;
+                compilingService.anyDenyDenies = anyDenyDenies;
+                assertSameAnswers(id, newContext(owner), entries + " " + userAuthorities + " owner=" + owner + " anyDenyDenies=" + anyDenyDenies);
+            }
+        }
+    }
+
+    @Test
+    public void earlierDenyMasksLaterAllow()
+    {
+        userAuthorities.add("GROUP_a");
+        putAcl(1L, 1L, Arrays.asList(
+                entry("GROUP_a", COORDINATOR, AccessStatus.DENIED),
+                entry("GROUP_a", READ, AccessStatus.ALLOWED),
+                entry("GROUP_b", READ, AccessStatus.ALLOWED)));
+
+        compilingService.anyDenyDenies = false;
+        assertEquals(AccessStatus.DENIED, compilingService.hasPermission(1L, newContext(false), PermissionService.READ));
+        userAuthorities.add("GROUP_b");
+        CompiledAclEvaluator.clearAuthorityBits();
+        assertEquals(AccessStatus.ALLOWED, compilingService.hasPermission(1L, newContext(false), PermissionService.READ));
+    }
+
+    @Test
+    public void dynamicAuthoritiesDependOnTheContext()
+    {
+        putAcl(1L, 1L, Collections.singletonList(entry(PermissionService.OWNER_AUTHORITY, WRITE, AccessStatus.ALLOWED)));
+
+        assertEquals(AccessStatus.ALLOWED, compilingService.hasPermission(1L, newContext(true), PermissionService.WRITE));
+        assertEquals(AccessStatus.DENIED, compilingService.hasPermission(1L, newContext(false), PermissionService.WRITE));
+    }
+
+    @Test
+    public void fullAuthorityTableIsStartedAfresh()
+    {
+        compilingService.setCompiledAclMaxAuthorities(4);
+        for (long id = 1L; id <= 20L; id++)
+        {
+            String group = "GROUP_x" + id;
+            if (id % 2 == 0)
+            {
+                userAuthorities.add(group);
+            }
+            putAcl(id, 1L, Arrays.asList(
+                    entry(group, READ, AccessStatus.ALLOWED),
+                    entry("GROUP_a", WRITE, AccessStatus.ALLOWED)));
+        }
+        for (int pass = 0; pass < 2; pass++)
+        {
+            for (long id = 1L; id <= 20L; id++)
+            {
+                assertSameAnswers(id, newContext(false), "ACL " + id + " pass " + pass);
+            }
+        }
+        assertTrue("Compiled ACLs were not cleared", compiledAclCache.getKeys().size() < 20);
+    }
+
+    @Test
+    public void newAclVersionIsCompiledAgain()
+    {
+        userAuthorities.add("GROUP_a");
+        putAcl(1L, 1L, Collections.singletonList(entry("GROUP_a", READ, AccessStatus.ALLOWED)));
+        assertEquals(AccessStatus.ALLOWED, compilingService.hasPermission(1L, newContext(false), PermissionService.READ));
+        assertEquals(AccessStatus.ALLOWED, compilingService.hasPermission(1L, newContext(false), PermissionService.READ));
+        assertEquals(1, compiledAclCache.getKeys().size());
+
+        putAcl(1L, 2L, Collections.singletonList(entry("GROUP_b", READ, AccessStatus.ALLOWED)));
+        assertEquals(AccessStatus.DENIED, compilingService.hasPermission(1L, newContext(false), PermissionService.READ));
+        assertEquals(2, compiledAclCache.getKeys().size());
+    }
+}
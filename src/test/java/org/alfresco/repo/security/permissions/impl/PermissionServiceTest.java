@@ -1975,6 +1975,52 @@ public class PermissionServiceTest extends AbstractPermissionTest
         runAs("andy");
     }
 
+    public void testBulkChecksMatchSingleChecks()
+    {
+        runAs(AuthenticationUtil.getAdminUserName());
+
+        List<NodeRef> nodeRefs = new ArrayList<NodeRef>();
+        for (int i = 0; i < 6; i++)
+        {
+            nodeRefs.add(nodeService.createNode(rootNodeRef, ContentModel.ASSOC_CHILDREN, QName.createQName("{namespace}n" + i), ContentModel.TYPE_FOLDER).getChildRef());
+        }
+        permissionService.setPermission(allowAndyRead);
+        permissionService.setInheritParentPermissions(nodeRefs.get(1), false);
+        permissionService.setInheritParentPermissions(nodeRefs.get(2), false);
+        permissionService.setPermission(nodeRefs.get(2), "lemur", PermissionService.WRITE, true);
+        nodeService.setProperty(nodeRefs.get(3), ContentModel.PROP_OWNER, "lemur");
+        permissionService.setPermission(rootNodeRef, PermissionService.OWNER_AUTHORITY, PermissionService.WRITE, true);
+        permissionService.setPermission(nodeRefs.get(4), "andy", PermissionService.READ, false);
+        nodeRefs.add(rootNodeRef);
+
+        String[] permissions = new String[] { PermissionService.READ, PermissionService.WRITE, PermissionService.DELETE };
+        for (String authority : new String[] { "andy", "lemur" })
+        {
+            runAs(authority);
+            for (String permission : permissions)
+            {
+                Set<NodeRef> permitted = permissionService.getPermittedNodes(nodeRefs, permission);
+                for (NodeRef nodeRef : nodeRefs)
+                {
+                    boolean expected = permissionService.hasPermission(nodeRef, permission) != AccessStatus.DENIED;
+                    assertEquals(authority + " " + permission + " " + nodeRef, expected, permitted.contains(nodeRef));
+                }
+            }
+            Set<NodeRef> readable = permissionService.getReadableNodes(nodeRefs);
+            for (NodeRef nodeRef : nodeRefs)
+            {
+                boolean expected = permissionService.hasReadPermission(nodeRef) != AccessStatus.DENIED;
+                assertEquals(authority + " read " + nodeRef, expected, readable.contains(nodeRef));
+            }
+        }
+
+        runAs("andy");
+        Set<NodeRef> readable = permissionService.getReadableNodes(nodeRefs);
+        assertTrue(readable.contains(nodeRefs.get(0)));
+        assertFalse(readable.contains(nodeRefs.get(1)));
+        assertFalse(readable.contains(nodeRefs.get(4)));
+    }
+
     public void testSimplePermissionSimpleInheritance()
     {
         runAs(AuthenticationUtil.getAdminUserName());
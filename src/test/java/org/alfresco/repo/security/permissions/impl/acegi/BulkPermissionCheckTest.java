@@ -0,0 +1,194 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2019 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software.
+ * If the software was purchased under a paid Alfresco license, the terms of
+ * the paid license agreement will prevail.  Otherwise, the software is
+ * provided under the following open source license terms:
+ *
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.security.permissions.impl.acegi;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.alfresco.repo.security.permissions.PermissionServiceSPI;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.cmr.security.AccessStatus;
+import org.alfresco.service.cmr.security.PermissionService;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Unit tests for {@link BulkPermissionCheck}.  Every other node of the listing is permitted.
+ */
+public class BulkPermissionCheckTest
+{
+    private static final StoreRef STORE_REF = new StoreRef("protocol", "test");
+
+    private PermissionServiceSPI permissionService;
+    private List<NodeRef> nodeRefs;
+    private Set<NodeRef> permitted;
+    private List<Integer> batchSizes;
+
+    @Before
+    public void setUp()
+    {
+        nodeRefs = new ArrayList<NodeRef>();
+        permitted = new HashSet<NodeRef>();
+        for (int i = 0; i < 100; i++)
+        {
+            NodeRef nodeRef = new NodeRef(STORE_REF, "n" + i);
+            nodeRefs.add(nodeRef);
+            if (i % 2 == 0)
+            {
+                permitted.add(nodeRef);
+            }
+        }
+        batchSizes = new ArrayList<Integer>();
+
+        Answer<Set<NodeRef>> bulkAnswer = new Answer<Set<NodeRef>>()
+        {
+            @SuppressWarnings("unchecked")
+            @Override
+            public Set<NodeRef> answer(InvocationOnMock invocation) throws Throwable
+            {
+                Collection<NodeRef> batch = (Collection<NodeRef>) invocation.getArguments()[0];
+                batchSizes.add(batch.size());
+                Set<NodeRef> result = new HashSet<NodeRef>(batch);
+                result.retainAll(permitted);
+                return result;
+            }
+        };
+        Answer<AccessStatus> singleAnswer = new Answer<AccessStatus>()
+        {
+            @Override
+            public AccessStatus answer(InvocationOnMock invocation) throws Throwable
+            {
+                return permitted.contains(invocation.getArguments()[0]) ? AccessStatus.ALLOWED : AccessStatus.DENIED;
+            }
+        };
+
+        permissionService = mock(PermissionServiceSPI.class);
+        when(permissionService.getPermittedNodes(anyCollectionOf(NodeRef.class), eq(PermissionService.WRITE))).thenAnswer(bulkAnswer);
+        when(permissionService.getReadableNodes(anyCollectionOf(NodeRef.class))).thenAnswer(bulkAnswer);
+        when(permissionService.hasPermission(any(NodeRef.class), eq(PermissionService.WRITE))).thenAnswer(singleAnswer);
+        when(permissionService.hasReadPermission(any(NodeRef.class))).thenAnswer(singleAnswer);
+    }
+
+    @Test
+    public void testResultsMatchSingleChecks()
+    {
+        BulkPermissionCheck check = new BulkPermissionCheck(permissionService, PermissionService.WRITE, nodeRefs, 1000);
+        for (int i = 0; i < nodeRefs.size(); i++)
+        {
+            AccessStatus expected = (i % 2 == 0) ? AccessStatus.ALLOWED : AccessStatus.DENIED;
+            assertEquals("Node " + i, expected, check.hasPermission(nodeRefs.get(i)));
+        }
+        verify(permissionService, never()).hasPermission(any(NodeRef.class), eq(PermissionService.WRITE));
+    }
+
+    @Test
+    public void testBatchesDoubleUpToMaximum()
+    {
+        BulkPermissionCheck check = new BulkPermissionCheck(permissionService, null, nodeRefs, 40);
+        for (NodeRef nodeRef : nodeRefs)
+        {
+            check.hasPermission(nodeRef);
+        }
+        List<Integer> expected = new ArrayList<Integer>();
+        expected.add(16);
+        expected.add(32);
+        expected.add(40);
+        expected.add(12);
+        assertEquals(expected, batchSizes);
+        verify(permissionService, never()).hasReadPermission(any(NodeRef.class));
+    }
+
+    @Test
+    public void testOnlyChecksAsFarAsAsked()
+    {
+        BulkPermissionCheck check = new BulkPermissionCheck(permissionService, null, nodeRefs, 1000);
+        check.hasPermission(nodeRefs.get(0));
+        check.hasPermission(nodeRefs.get(15));
+        assertEquals(1, batchSizes.size());
+
+        // Skipping ahead checks the batches in between
+        assertEquals(AccessStatus.ALLOWED, check.hasPermission(nodeRefs.get(60)));
+        assertEquals(3, batchSizes.size());
+        assertEquals(AccessStatus.DENIED, check.hasPermission(nodeRefs.get(47)));
+        assertEquals(3, batchSizes.size());
+    }
+
+    @Test
+    public void testChecksOneAtATimeOnceTimeIsUp()
+    {
+        BulkPermissionCheck check = new BulkPermissionCheck(permissionService, null, nodeRefs, 1000, System.currentTimeMillis() - 1);
+        for (int i = 0; i < 5; i++)
+        {
+            AccessStatus expected = (i % 2 == 0) ? AccessStatus.ALLOWED : AccessStatus.DENIED;
+            assertEquals("Node " + i, expected, check.hasPermission(nodeRefs.get(i)));
+        }
+        List<Integer> expected = new ArrayList<Integer>();
+        for (int i = 0; i < 5; i++)
+        {
+            expected.add(1);
+        }
+        assertEquals(expected, batchSizes);
+    }
+
+    @Test
+    public void testNodesNotGivenAreCheckedSingly()
+    {
+        BulkPermissionCheck check = new BulkPermissionCheck(permissionService, null, nodeRefs.subList(0, 10), 1000);
+        NodeRef other = nodeRefs.get(50);
+        assertEquals(AccessStatus.ALLOWED, check.hasPermission(other));
+        verify(permissionService, times(1)).hasReadPermission(other);
+        assertEquals(0, batchSizes.size());
+    }
+
+    @Test
+    public void testServiceWithoutBulkChecks()
+    {
+        PermissionService plainService = mock(PermissionService.class);
+        when(plainService.hasPermission(any(NodeRef.class), eq(PermissionService.WRITE))).thenReturn(AccessStatus.UNDETERMINED);
+        BulkPermissionCheck check = new BulkPermissionCheck(plainService, PermissionService.WRITE, nodeRefs, 1000);
+        for (NodeRef nodeRef : nodeRefs)
+        {
+            assertEquals(AccessStatus.ALLOWED, check.hasPermission(nodeRef));
+        }
+        verify(plainService, times(nodeRefs.size())).hasPermission(any(NodeRef.class), eq(PermissionService.WRITE));
+    }
+}
@@ -45,6 +45,7 @@ import org.alfresco.repo.domain.node.NodeDAO;
 import org.alfresco.repo.domain.qname.QNameDAO;
 import org.alfresco.repo.node.db.DbNodeServiceImpl;
 import org.alfresco.repo.security.authentication.AuthenticationComponent;
+import org.alfresco.repo.solr.SOLRTrackingComponent.AclReadersQueryCallback;
 import org.alfresco.repo.solr.SOLRTrackingComponent.NodeMetaDataQueryCallback;
 import org.alfresco.repo.solr.SOLRTrackingComponent.NodeQueryCallback;
 import org.alfresco.repo.transaction.RetryingTransactionHelper;
@@ -142,6 +143,38 @@ public class SOLRTrackingComponentTest extends BaseSpringTest
 
     }
 
+    @Test
+    public void testGetAclsReadersByRange()
+    {
+        final List<AclReaders> streamed = getAclsReaders(null, null, 100, Integer.MAX_VALUE);
+        assertFalse("Expected some ACLs to be used by nodes", streamed.isEmpty());
+
+        // The streamed readers match the readers for the same ACLs by ID
+        final List<Long> aclIds = new ArrayList<Long>(streamed.size());
+        for (AclReaders aclReaders : streamed)
+        {
+            aclIds.add(aclReaders.getAclId());
+        }
+        List<AclReaders> byId = txnHelper.doInTransaction(new RetryingTransactionCallback<List<AclReaders>>()
+        {
+            @Override
+            public List<AclReaders> execute() throws Throwable
+            {
+                return solrTrackingComponent.getAclsReaders(aclIds);
+            }
+        }, true);
+        assertEquals(streamed.size(), byId.size());
+        for (int i = 0; i < streamed.size(); i++)
+        {
+            assertEquals(byId.get(i).getAclId(), streamed.get(i).getAclId());
+            assertEquals(byId.get(i).getReaders(), streamed.get(i).getReaders());
+            assertEquals(byId.get(i).getDenied(), streamed.get(i).getDenied());
+        }
+
+        // The callback can stop the stream
+        assertEquals(1, getAclsReaders(null, null, 100, 1).size());
+    }
+
     // This test is no longer valid as we may or may include shared acls not linked to defining ones
     // If they are not linked to a node they will be counted wring ...
 
@@ -263,6 +296,34 @@ public class SOLRTrackingComponentTest extends BaseSpringTest
         return transactionService.getRetryingTransactionHelper().doInTransaction(callback, true);
     }
 
+    /**
+     * Call {@link SOLRTrackingComponent#getAclsReaders(Long, Long, int, SOLRTrackingComponent.AclReadersQueryCallback)}
+     * in a transaction, stopping after the given number of ACL readers
+     */
+    private List<AclReaders> getAclsReaders(final Long minAclId, final Long maxAclId, final int maxResults, final int stopAfter)
+    {
+        final List<AclReaders> results = new ArrayList<AclReaders>();
+        txnHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+        {
+            @Override
+            public Void execute() throws Throwable
+            {
+                results.clear();
+                solrTrackingComponent.getAclsReaders(minAclId, maxAclId, maxResults, new AclReadersQueryCallback()
+                {
+                    @Override
+                    public boolean handleAclReaders(AclReaders aclReaders)
+                    {
+                        results.add(aclReaders);
+                        return results.size() < stopAfter;
+                    }
+                });
+                return null;
+            }
+        }, true);
+        return results;
+    }
+
     /**
      * Call {@link SOLRTrackingComponent#getAclChangeSets(Long, Long, Long, Long, int)} in a transaction
      */